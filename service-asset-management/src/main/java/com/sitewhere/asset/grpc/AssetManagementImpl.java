@@ -513,14 +513,18 @@ public class AssetManagementImpl extends AssetManagementGrpc.AssetManagementImpl
 	    StreamObserver<GGetAssetModuleAssetsByCriteriaResponse> responseObserver) {
 	try {
 	    GrpcUtils.logServerMethodEntry(AssetManagementGrpc.METHOD_GET_ASSET_MODULE_ASSETS_BY_CRITERIA);
-	    List<? extends IAsset> apiResult = getAssetResolver().getAssetModuleManagement()
-		    .searchAssetModule(request.getModuleId(), request.getCriteria());
+	    ISearchResults<IAsset> apiResult = getAssetResolver().getAssetModuleManagement().searchAssetModule(
+		    request.getModuleId(), request.getCriteria(),
+		    CommonModelConverter.asApiSearchCriteria(request.getPaging()));
 
 	    GGetAssetModuleAssetsByCriteriaResponse.Builder response = GGetAssetModuleAssetsByCriteriaResponse
 		    .newBuilder();
-	    for (IAsset api : apiResult) {
-		response.addAsset(AssetModelConverter.asGrpcGenericAsset(api));
+	    GAssetSearchResults.Builder results = GAssetSearchResults.newBuilder();
+	    for (IAsset api : apiResult.getResults()) {
+		results.addAssets(AssetModelConverter.asGrpcGenericAsset(api));
 	    }
+	    results.setCount(apiResult.getNumResults());
+	    response.setResults(results.build());
 	    responseObserver.onNext(response.build());
 	    responseObserver.onCompleted();
 	} catch (Throwable e) {
@@ -11,6 +11,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.sitewhere.asset.AssetManagementDecorator;
+import com.sitewhere.asset.spi.modules.IAssetModule;
 import com.sitewhere.asset.spi.modules.IAssetModuleManager;
 import com.sitewhere.server.lifecycle.LifecycleProgressContext;
 import com.sitewhere.server.lifecycle.LifecycleProgressMonitor;
@@ -204,23 +205,42 @@ public class AssetManagementTriggers extends AssetManagementDecorator {
     @Override
     public IAsset deleteAsset(String categoryId, String assetId) throws SiteWhereException {
 	IAsset asset = super.deleteAsset(categoryId, assetId);
-	refreshAssetModule(categoryId, asset);
+	IAssetModule<?> module = getStartedModule(categoryId);
+	if ((module != null) && (asset != null)) {
+	    module.removeAsset(asset.getId());
+	}
 	return asset;
     }
 
     /**
-     * Push an updated asset to its associated asset module.
+     * Push an updated asset to its associated asset module. Only the changed
+     * asset is updated rather than reloading the whole module.
      * 
      * @param categoryId
      * @param asset
      * @throws SiteWhereException
      */
+    @SuppressWarnings("unchecked")
     protected <T extends IAsset> void refreshAssetModule(String categoryId, T asset) throws SiteWhereException {
+	IAssetModule<?> module = getStartedModule(categoryId);
+	if ((module != null) && (asset != null)) {
+	    ((IAssetModule<T>) module).putAsset(asset.getId(), asset);
+	}
+    }
+
+    /**
+     * Get the module for a category if the module manager is started.
+     * 
+     * @param categoryId
+     * @return
+     * @throws SiteWhereException
+     */
+    protected IAssetModule<?> getStartedModule(String categoryId) throws SiteWhereException {
 	IAssetModuleManager manager = getAssetModuleManager();
 	if ((manager != null) && (manager.getLifecycleStatus() == LifecycleStatus.Started)) {
-	    manager.getModule(categoryId).refresh(new LifecycleProgressMonitor(
-		    new LifecycleProgressContext(1, "Refresh asset module."), getMicroservice()));
+	    return manager.getModule(categoryId);
 	}
+	return null;
     }
 
     public IAssetModuleManager getAssetModuleManager() {
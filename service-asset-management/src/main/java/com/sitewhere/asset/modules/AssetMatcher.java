@@ -46,6 +46,33 @@ public class AssetMatcher {
 	return false;
     }
 
+    /**
+     * Get values of the fields that are searched for an asset of the given type.
+     * Must be kept in line with the type-specific match methods since
+     * {@link AssetSearchIndex} uses it to index assets.
+     * 
+     * @param type
+     * @param asset
+     * @return
+     */
+    public String[] getSearchFields(AssetType type, IAsset asset) {
+	switch (type) {
+	case Device:
+	case Hardware: {
+	    IHardwareAsset hardware = (IHardwareAsset) asset;
+	    return new String[] { hardware.getName(), hardware.getDescription(), hardware.getId() };
+	}
+	case Person: {
+	    IPersonAsset person = (IPersonAsset) asset;
+	    return new String[] { person.getName(), person.getEmailAddress(), person.getUserName(), person.getId() };
+	}
+	case Location: {
+	    return new String[] { asset.getName() };
+	}
+	}
+	return new String[0];
+    }
+
     /**
      * Indicates if hardware asset matches the given criteria.
      * 
@@ -23,6 +23,8 @@ import com.sitewhere.spi.asset.IAsset;
 import com.sitewhere.spi.asset.IAssetModuleDescriptor;
 import com.sitewhere.spi.asset.IAssetModuleManagement;
 import com.sitewhere.spi.asset.IAssetReference;
+import com.sitewhere.spi.search.ISearchCriteria;
+import com.sitewhere.spi.search.ISearchResults;
 
 /**
  * Adapter that wraps an {@link IAssetModuleManager} to provide the
@@ -85,12 +87,13 @@ public class AssetModuleManagementAdapter extends TenantEngineLifecycleComponent
     /*
      * @see
      * com.sitewhere.spi.asset.IAssetModuleManagement#searchAssetModule(java.lang.
-     * String, java.lang.String)
+     * String, java.lang.String, com.sitewhere.spi.search.ISearchCriteria)
      */
     @Override
     @SuppressWarnings("unchecked")
-    public List<IAsset> searchAssetModule(String moduleId, String criteria) throws SiteWhereException {
-	return (List<IAsset>) getAssetModuleManager().search(moduleId, criteria);
+    public ISearchResults<IAsset> searchAssetModule(String moduleId, String criteria, ISearchCriteria paging)
+	    throws SiteWhereException {
+	return (ISearchResults<IAsset>) getAssetModuleManager().search(moduleId, criteria, paging);
     }
 
     /*
@@ -28,6 +28,8 @@ import com.sitewhere.spi.asset.IAssetCategory;
 import com.sitewhere.spi.asset.IAssetManagement;
 import com.sitewhere.spi.error.ErrorCode;
 import com.sitewhere.spi.error.ErrorLevel;
+import com.sitewhere.spi.search.ISearchCriteria;
+import com.sitewhere.spi.search.ISearchResults;
 import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
 
@@ -162,14 +164,13 @@ public class AssetModuleManager extends TenantEngineLifecycleComponent implement
      * (non-Javadoc)
      * 
      * @see com.sitewhere.spi.asset.IAssetModuleManager#search(java.lang.String,
-     * java.lang.String)
+     * java.lang.String, com.sitewhere.spi.search.ISearchCriteria)
      */
-    public List<? extends IAsset> search(String assetModuleId, String criteria) throws SiteWhereException {
+    public ISearchResults<? extends IAsset> search(String assetModuleId, String criteria, ISearchCriteria paging)
+	    throws SiteWhereException {
 	IAssetModule<?> match = getModule(assetModuleId);
 	if (match != null) {
-	    List<? extends IAsset> results = match.search(criteria);
-	    Collections.sort(results);
-	    return results;
+	    return match.search(criteria, paging);
 	}
 	throw new SiteWhereSystemException(ErrorCode.InvalidAssetCategoryId, ErrorLevel.ERROR);
     }
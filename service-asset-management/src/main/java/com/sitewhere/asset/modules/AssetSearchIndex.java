@@ -0,0 +1,482 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.asset.modules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.sitewhere.rest.model.search.Pager;
+import com.sitewhere.rest.model.search.SearchResults;
+import com.sitewhere.spi.asset.AssetType;
+import com.sitewhere.spi.asset.IAsset;
+import com.sitewhere.spi.search.ISearchCriteria;
+import com.sitewhere.spi.search.ISearchResults;
+
+/**
+ * In-memory index of the assets for a module. The fields that
+ * {@link AssetMatcher} searches are normalized once when an asset is added and
+ * every three character sequence of each field is posted to the asset. Queries
+ * of three or more characters only examine assets that contain all of the
+ * query's trigrams, then confirm the match against the normalized fields so
+ * that results are the same as {@link AssetMatcher#isMatch}. Shorter queries
+ * scan the normalized fields without further allocation.
+ *
+ * Matches are ranked by how well the best field matches (exact, prefix, word
+ * prefix, anywhere) and then by asset name.
+ *
+ * @author Derek
+ */
+public class AssetSearchIndex<T extends IAsset> {
+
+    /** Length of indexed character sequences */
+    private static final int GRAM_LENGTH = 3;
+
+    /** Rank for field equal to query */
+    private static final int RANK_EXACT = 0;
+
+    /** Rank for field starting with query */
+    private static final int RANK_PREFIX = 1;
+
+    /** Rank for word in field starting with query */
+    private static final int RANK_WORD_PREFIX = 2;
+
+    /** Rank for query anywhere in field */
+    private static final int RANK_CONTAINS = 3;
+
+    /** Orders ranked matches */
+    private static final Comparator<RankedEntry<?>> RANKING = new Comparator<RankedEntry<?>>() {
+
+	@Override
+	public int compare(RankedEntry<?> o1, RankedEntry<?> o2) {
+	    if (o1.getRank() != o2.getRank()) {
+		return Integer.compare(o1.getRank(), o2.getRank());
+	    }
+	    return o1.getEntry().compareTo(o2.getEntry());
+	}
+    };
+
+    /** Type of assets in index */
+    private AssetType assetType;
+
+    /** Provides searchable fields */
+    private AssetMatcher matcher;
+
+    /** Entries indexed by asset id */
+    private Map<String, Entry<T>> entriesById = new HashMap<String, Entry<T>>();
+
+    /** Entries indexed by trigram */
+    private Map<String, Set<Entry<T>>> postings = new HashMap<String, Set<Entry<T>>>();
+
+    /** Guards entries and postings */
+    private ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public AssetSearchIndex(AssetType assetType, AssetMatcher matcher) {
+	this.assetType = assetType;
+	this.matcher = matcher;
+    }
+
+    /**
+     * Get an asset by id.
+     *
+     * @param id
+     * @return
+     */
+    public T get(String id) {
+	lock.readLock().lock();
+	try {
+	    Entry<T> entry = entriesById.get(id);
+	    return (entry != null) ? entry.getAsset() : null;
+	} finally {
+	    lock.readLock().unlock();
+	}
+    }
+
+    /**
+     * Get number of assets in the index.
+     *
+     * @return
+     */
+    public int size() {
+	lock.readLock().lock();
+	try {
+	    return entriesById.size();
+	} finally {
+	    lock.readLock().unlock();
+	}
+    }
+
+    /**
+     * Add or replace an asset. If the searchable fields have not changed, the
+     * asset is swapped in place without touching the postings.
+     *
+     * @param id
+     * @param asset
+     * @return true if postings were updated
+     */
+    public boolean put(String id, T asset) {
+	String[] fields = normalize(matcher.getSearchFields(assetType, asset));
+	lock.writeLock().lock();
+	try {
+	    Entry<T> existing = entriesById.get(id);
+	    if ((existing != null) && Arrays.equals(existing.getFields(), fields)) {
+		existing.setAsset(asset);
+		return false;
+	    }
+	    Entry<T> entry = new Entry<T>(id, asset, fields);
+	    unindex(entriesById.put(id, entry));
+	    index(entry);
+	    return true;
+	} finally {
+	    lock.writeLock().unlock();
+	}
+    }
+
+    /**
+     * Remove an asset.
+     *
+     * @param id
+     */
+    public void remove(String id) {
+	lock.writeLock().lock();
+	try {
+	    unindex(entriesById.remove(id));
+	} finally {
+	    lock.writeLock().unlock();
+	}
+    }
+
+    /**
+     * Bring the index in line with the given assets. Assets that are missing
+     * are removed and assets with new or changed searchable fields are indexed.
+     * The index is never cleared, so searches running during a refresh see a
+     * complete index.
+     *
+     * @param assets
+     * @return number of assets indexed or removed
+     */
+    public int update(Collection<T> assets) {
+	Map<String, T> latest = new HashMap<String, T>();
+	for (T asset : assets) {
+	    latest.put(asset.getId(), asset);
+	}
+	int changes = 0;
+	List<String> removed = new ArrayList<String>();
+	lock.readLock().lock();
+	try {
+	    for (String id : entriesById.keySet()) {
+		if (!latest.containsKey(id)) {
+		    removed.add(id);
+		}
+	    }
+	} finally {
+	    lock.readLock().unlock();
+	}
+	for (String id : removed) {
+	    remove(id);
+	    changes++;
+	}
+	for (T asset : latest.values()) {
+	    if (put(asset.getId(), asset)) {
+		changes++;
+	    }
+	}
+	return changes;
+    }
+
+    /**
+     * Find assets with a searchable field containing the criteria (ignoring case)
+     * and return the requested page of ranked results.
+     *
+     * @param criteria
+     * @param paging
+     * @return
+     */
+    public ISearchResults<T> search(String criteria, ISearchCriteria paging) {
+	String query = criteria.toLowerCase();
+	List<RankedEntry<T>> matches = new ArrayList<RankedEntry<T>>();
+	lock.readLock().lock();
+	try {
+	    for (Entry<T> entry : getCandidates(query)) {
+		int rank = rank(entry, query);
+		if (rank >= 0) {
+		    matches.add(new RankedEntry<T>(entry, rank));
+		}
+	    }
+	} finally {
+	    lock.readLock().unlock();
+	}
+	Collections.sort(matches, RANKING);
+
+	Pager<T> pager = new Pager<T>(paging);
+	for (RankedEntry<T> match : matches) {
+	    pager.process(match.getEntry().getAsset());
+	}
+	return new SearchResults<T>(pager.getResults(), pager.getTotal());
+    }
+
+    /**
+     * Get entries that may match a query. Must be called with read lock held.
+     *
+     * @param query
+     * @return
+     */
+    protected Collection<Entry<T>> getCandidates(String query) {
+	if (query.length() < GRAM_LENGTH) {
+	    return entriesById.values();
+	}
+	List<Set<Entry<T>>> lists = new ArrayList<Set<Entry<T>>>();
+	for (String gram : grams(query)) {
+	    Set<Entry<T>> posting = postings.get(gram);
+	    if (posting == null) {
+		return Collections.emptyList();
+	    }
+	    lists.add(posting);
+	}
+	Collections.sort(lists, new Comparator<Set<Entry<T>>>() {
+
+	    @Override
+	    public int compare(Set<Entry<T>> o1, Set<Entry<T>> o2) {
+		return Integer.compare(o1.size(), o2.size());
+	    }
+	});
+	List<Entry<T>> candidates = new ArrayList<Entry<T>>();
+	for (Entry<T> entry : lists.get(0)) {
+	    boolean all = true;
+	    for (int i = 1; i < lists.size(); i++) {
+		if (!lists.get(i).contains(entry)) {
+		    all = false;
+		    break;
+		}
+	    }
+	    if (all) {
+		candidates.add(entry);
+	    }
+	}
+	return candidates;
+    }
+
+    /**
+     * Rank how well the best field of an entry matches a query. Returns -1 if no
+     * field contains the query.
+     *
+     * @param entry
+     * @param query
+     * @return
+     */
+    protected static int rank(Entry<?> entry, String query) {
+	int best = -1;
+	for (String field : entry.getFields()) {
+	    if (field == null) {
+		continue;
+	    }
+	    int index = field.indexOf(query);
+	    if (index == -1) {
+		continue;
+	    }
+	    int rank;
+	    if (index == 0) {
+		rank = (field.length() == query.length()) ? RANK_EXACT : RANK_PREFIX;
+	    } else {
+		rank = isWordPrefix(field, query) ? RANK_WORD_PREFIX : RANK_CONTAINS;
+	    }
+	    if ((best == -1) || (rank < best)) {
+		best = rank;
+	    }
+	}
+	return best;
+    }
+
+    /**
+     * Indicates whether any word in the field starts with the query.
+     *
+     * @param field
+     * @param query
+     * @return
+     */
+    protected static boolean isWordPrefix(String field, String query) {
+	int index = field.indexOf(query);
+	while (index > 0) {
+	    if (!Character.isLetterOrDigit(field.charAt(index - 1))) {
+		return true;
+	    }
+	    index = field.indexOf(query, index + 1);
+	}
+	return index == 0;
+    }
+
+    /**
+     * Add entry to postings. Must be called with write lock held.
+     *
+     * @param entry
+     */
+    protected void index(Entry<T> entry) {
+	for (String gram : entry.getGrams()) {
+	    Set<Entry<T>> posting = postings.get(gram);
+	    if (posting == null) {
+		posting = new HashSet<Entry<T>>();
+		postings.put(gram, posting);
+	    }
+	    posting.add(entry);
+	}
+    }
+
+    /**
+     * Remove entry from postings. Must be called with write lock held.
+     *
+     * @param entry
+     */
+    protected void unindex(Entry<T> entry) {
+	if (entry == null) {
+	    return;
+	}
+	for (String gram : entry.getGrams()) {
+	    Set<Entry<T>> posting = postings.get(gram);
+	    if (posting != null) {
+		posting.remove(entry);
+		if (posting.isEmpty()) {
+		    postings.remove(gram);
+		}
+	    }
+	}
+    }
+
+    /**
+     * Normalize fields the same way {@link AssetMatcher} compares them.
+     *
+     * @param fields
+     * @return
+     */
+    protected static String[] normalize(String[] fields) {
+	String[] normalized = new String[fields.length];
+	for (int i = 0; i < fields.length; i++) {
+	    normalized[i] = (fields[i] != null) ? fields[i].trim().toLowerCase() : null;
+	}
+	return normalized;
+    }
+
+    /**
+     * Get distinct trigrams in a value.
+     *
+     * @param value
+     * @return
+     */
+    protected static Set<String> grams(String value) {
+	Set<String> grams = new HashSet<String>();
+	for (int i = 0; i + GRAM_LENGTH <= value.length(); i++) {
+	    grams.add(value.substring(i, i + GRAM_LENGTH));
+	}
+	return grams;
+    }
+
+    /**
+     * Indexed asset with normalized search fields.
+     *
+     * @author Derek
+     */
+    private static class Entry<T extends IAsset> implements Comparable<Entry<T>> {
+
+	/** Asset id */
+	private String id;
+
+	/** Asset (replaced under write lock) */
+	private volatile T asset;
+
+	/** Normalized search fields */
+	private String[] fields;
+
+	public Entry(String id, T asset, String[] fields) {
+	    this.id = id;
+	    this.asset = asset;
+	    this.fields = fields;
+	}
+
+	/**
+	 * Get distinct trigrams across all fields.
+	 *
+	 * @return
+	 */
+	public Set<String> getGrams() {
+	    Set<String> all = new HashSet<String>();
+	    for (String field : fields) {
+		if (field != null) {
+		    all.addAll(grams(field));
+		}
+	    }
+	    return all;
+	}
+
+	/*
+	 * @see java.lang.Comparable#compareTo(java.lang.Object)
+	 */
+	@Override
+	public int compareTo(Entry<T> other) {
+	    String name = asset.getName();
+	    String otherName = other.getAsset().getName();
+	    if ((name != null) && (otherName != null) && !name.equals(otherName)) {
+		return name.compareTo(otherName);
+	    }
+	    if ((name == null) != (otherName == null)) {
+		return (name == null) ? 1 : -1;
+	    }
+	    return String.valueOf(id).compareTo(String.valueOf(other.getId()));
+	}
+
+	public String getId() {
+	    return id;
+	}
+
+	public T getAsset() {
+	    return asset;
+	}
+
+	public void setAsset(T asset) {
+	    this.asset = asset;
+	}
+
+	public String[] getFields() {
+	    return fields;
+	}
+    }
+
+    /**
+     * Entry with rank for a query.
+     *
+     * @author Derek
+     */
+    private static class RankedEntry<T extends IAsset> {
+
+	/** Matched entry */
+	private Entry<T> entry;
+
+	/** Rank for query */
+	private int rank;
+
+	public RankedEntry(Entry<T> entry, int rank) {
+	    this.entry = entry;
+	    this.rank = rank;
+	}
+
+	public Entry<T> getEntry() {
+	    return entry;
+	}
+
+	public int getRank() {
+	    return rank;
+	}
+    }
+}
@@ -8,14 +8,13 @@
 package com.sitewhere.asset.modules.datastore;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.sitewhere.asset.modules.AssetMatcher;
+import com.sitewhere.asset.modules.AssetSearchIndex;
 import com.sitewhere.asset.spi.modules.IAssetModule;
 import com.sitewhere.rest.model.command.CommandResponse;
 import com.sitewhere.rest.model.search.SearchCriteria;
@@ -27,6 +26,7 @@ import com.sitewhere.spi.asset.IAssetCategory;
 import com.sitewhere.spi.asset.IAssetManagement;
 import com.sitewhere.spi.command.CommandResult;
 import com.sitewhere.spi.command.ICommandResponse;
+import com.sitewhere.spi.search.ISearchCriteria;
 import com.sitewhere.spi.search.ISearchResults;
 import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
@@ -45,22 +45,26 @@ public abstract class DataStoreAssetModule<T extends IAsset> extends TenantEngin
     /** Static logger instance */
     private static Logger LOGGER = LogManager.getLogger();
 
+    /** Number of assets loaded from the datastore per page */
+    private static final int RELOAD_PAGE_SIZE = 1000;
+
     /** Asset category */
     private IAssetCategory category;
 
     /** Asset management */
     private IAssetManagement assetManagement;
 
-    /** Asset store for category */
-    protected Map<String, T> assets = new HashMap<String, T>();
-
     /** Matcher used for searches */
     protected AssetMatcher matcher = new AssetMatcher();
 
+    /** Indexed asset store for category */
+    protected AssetSearchIndex<T> assets;
+
     public DataStoreAssetModule(IAssetCategory category, IAssetManagement assetManagement) {
 	super(LifecycleComponentType.AssetModule);
 	this.category = category;
 	this.assetManagement = assetManagement;
+	this.assets = new AssetSearchIndex<T>(category.getAssetType(), matcher);
     }
 
     /*
@@ -113,19 +117,28 @@ public abstract class DataStoreAssetModule<T extends IAsset> extends TenantEngin
     }
 
     /**
-     * Reload asset data for module.
+     * Reload asset data for module. Assets are read from the datastore a page at
+     * a time and the index is updated with the differences rather than rebuilt.
      * 
      * @throws SiteWhereException
      */
     @SuppressWarnings("unchecked")
     public void reloadAssetData() throws SiteWhereException {
-	ISearchResults<IAsset> matches = getAssetManagement().listAssets(category.getId(), SearchCriteria.ALL);
-	assets.clear();
-
-	LOGGER.debug("Adding " + matches.getNumResults() + " assets from datastore.");
-	for (IAsset asset : matches.getResults()) {
-	    assets.put(asset.getId(), (T) asset);
+	List<T> latest = new ArrayList<T>();
+	int page = 1;
+	while (true) {
+	    ISearchResults<IAsset> matches = getAssetManagement().listAssets(category.getId(),
+		    new SearchCriteria(page, RELOAD_PAGE_SIZE));
+	    for (IAsset asset : matches.getResults()) {
+		latest.add((T) asset);
+	    }
+	    if (matches.getResults().size() < RELOAD_PAGE_SIZE) {
+		break;
+	    }
+	    page++;
 	}
+	int changes = assets.update(latest);
+	LOGGER.debug("Loaded " + latest.size() + " assets from datastore with " + changes + " changes to index.");
     }
 
     /*
@@ -180,16 +193,11 @@ public abstract class DataStoreAssetModule<T extends IAsset> extends TenantEngin
      * Search assets based on criteria.
      * 
      * @param criteria
+     * @param paging
      * @return
      */
-    protected List<T> doSearch(String criteria) {
-	List<T> results = new ArrayList<T>();
-	for (T asset : assets.values()) {
-	    if (matcher.isMatch(getCategory().getAssetType(), asset, criteria)) {
-		results.add(asset);
-	    }
-	}
-	return results;
+    protected ISearchResults<T> doSearch(String criteria, ISearchCriteria paging) {
+	return assets.search(criteria, paging);
     }
 
     /**
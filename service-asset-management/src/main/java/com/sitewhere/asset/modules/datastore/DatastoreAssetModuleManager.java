@@ -26,6 +26,7 @@ import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.asset.IAsset;
 import com.sitewhere.spi.asset.IAssetCategory;
 import com.sitewhere.spi.asset.IAssetManagement;
+import com.sitewhere.spi.search.ISearchCriteria;
 import com.sitewhere.spi.search.ISearchResults;
 import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
@@ -191,14 +192,13 @@ public class DatastoreAssetModuleManager extends TenantEngineLifecycleComponent
      * (non-Javadoc)
      * 
      * @see com.sitewhere.spi.asset.IAssetModuleManager#search(java.lang.String,
-     * java.lang.String)
+     * java.lang.String, com.sitewhere.spi.search.ISearchCriteria)
      */
     @Override
-    public List<? extends IAsset> search(String assetModuleId, String criteria) throws SiteWhereException {
+    public ISearchResults<? extends IAsset> search(String assetModuleId, String criteria, ISearchCriteria paging)
+	    throws SiteWhereException {
 	IAssetModule<?> match = assertAssetModule(assetModuleId);
-	List<? extends IAsset> results = match.search(criteria);
-	Collections.sort(results);
-	return results;
+	return match.search(criteria, paging);
     }
 
     /**
@@ -7,13 +7,13 @@
  */
 package com.sitewhere.asset.modules.datastore;
 
-import java.util.List;
-
 import com.sitewhere.asset.spi.modules.IAssetModule;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.asset.IAssetCategory;
 import com.sitewhere.spi.asset.IAssetManagement;
 import com.sitewhere.spi.asset.ILocationAsset;
+import com.sitewhere.spi.search.ISearchCriteria;
+import com.sitewhere.spi.search.ISearchResults;
 
 /**
  * Implementation of {@link IAssetModule} that loads location assets from a
@@ -64,10 +64,11 @@ public class LocationAssetModule extends DataStoreAssetModule<ILocationAsset> im
     /*
      * (non-Javadoc)
      * 
-     * @see com.sitewhere.spi.asset.IAssetModule#search(java.lang.String)
+     * @see com.sitewhere.spi.asset.IAssetModule#search(java.lang.String,
+     * com.sitewhere.spi.search.ISearchCriteria)
      */
     @Override
-    public List<ILocationAsset> search(String criteria) throws SiteWhereException {
-	return doSearch(criteria);
+    public ISearchResults<ILocationAsset> search(String criteria, ISearchCriteria paging) throws SiteWhereException {
+	return doSearch(criteria, paging);
     }
 }
\ No newline at end of file
@@ -9,10 +9,8 @@ package com.sitewhere.asset.modules.wso2.scim;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
@@ -40,6 +38,7 @@ import org.springframework.web.client.RestTemplate;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.sitewhere.asset.modules.AssetMatcher;
+import com.sitewhere.asset.modules.AssetSearchIndex;
 import com.sitewhere.asset.spi.modules.IAssetModule;
 import com.sitewhere.rest.model.asset.PersonAsset;
 import com.sitewhere.rest.model.command.CommandResponse;
@@ -48,6 +47,8 @@ import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.asset.AssetType;
 import com.sitewhere.spi.command.CommandResult;
 import com.sitewhere.spi.command.ICommandResponse;
+import com.sitewhere.spi.search.ISearchCriteria;
+import com.sitewhere.spi.search.ISearchResults;
 import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
 
@@ -100,12 +101,12 @@ public class Wso2ScimAssetModule extends LifecycleComponent implements IAssetMod
     /** Use Spring RestTemplate to send requests */
     private RestTemplate client;
 
-    /** Cached asset map */
-    private Map<String, PersonAsset> assetCache = new HashMap<String, PersonAsset>();
-
     /** Matcher used for searches */
     protected AssetMatcher matcher = new AssetMatcher();
 
+    /** Cached assets indexed for search */
+    private AssetSearchIndex<PersonAsset> assetCache = new AssetSearchIndex<PersonAsset>(AssetType.Person, matcher);
+
     public Wso2ScimAssetModule() {
 	super(LifecycleComponentType.AssetModule);
     }
@@ -223,21 +224,11 @@ public class Wso2ScimAssetModule extends LifecycleComponent implements IAssetMod
     /*
      * (non-Javadoc)
      * 
-     * @see com.sitewhere.spi.asset.IAssetModule#search(java.lang.String)
+     * @see com.sitewhere.spi.asset.IAssetModule#search(java.lang.String,
+     * com.sitewhere.spi.search.ISearchCriteria)
      */
-    public List<PersonAsset> search(String criteria) throws SiteWhereException {
-	criteria = criteria.toLowerCase();
-	List<PersonAsset> results = new ArrayList<PersonAsset>();
-	if (criteria.length() == 0) {
-	    results.addAll(assetCache.values());
-	    return results;
-	}
-	for (PersonAsset asset : assetCache.values()) {
-	    if (matcher.isPersonMatch(asset, criteria)) {
-		results.add(asset);
-	    }
-	}
-	return results;
+    public ISearchResults<PersonAsset> search(String criteria, ISearchCriteria paging) throws SiteWhereException {
+	return assetCache.search(criteria, paging);
     }
 
     /*
@@ -270,15 +261,14 @@ public class Wso2ScimAssetModule extends LifecycleComponent implements IAssetMod
     }
 
     /**
-     * Make remote call to list all user assets, then parse and cache them.
+     * Make remote call to list all user assets, then parse them and apply the
+     * differences to the cache.
      * 
      * @throws SiteWhereException
      */
     protected ICommandResponse cacheAssetData() throws SiteWhereException {
-	assetCache.clear();
-
 	LOGGER.info("Caching search data.");
-	int totalAssets = 0;
+	List<PersonAsset> latest = new ArrayList<PersonAsset>();
 	long startTime = System.currentTimeMillis();
 	JsonNode json = doGet(getScimUsersUrl(), JsonNode.class);
 	try {
@@ -291,15 +281,14 @@ public class Wso2ScimAssetModule extends LifecycleComponent implements IAssetMod
 	    Iterator<JsonNode> it = resources.elements();
 	    while (it.hasNext()) {
 		JsonNode resource = it.next();
-		PersonAsset asset = parse(resource);
-		assetCache.put(asset.getId(), asset);
-		totalAssets++;
+		latest.add(parse(resource));
 	    }
 	} catch (IOException e) {
 	    throw new SiteWhereException("Unable to read asset response.", e);
 	}
+	int changes = assetCache.update(latest);
 	long totalTime = System.currentTimeMillis() - startTime;
-	String message = "Cached " + totalAssets + " assets in " + totalTime + "ms.";
+	String message = "Cached " + latest.size() + " assets (" + changes + " changed) in " + totalTime + "ms.";
 	LOGGER.info(message);
 	return new CommandResponse(CommandResult.Successful, message);
     }
@@ -7,12 +7,12 @@
  */
 package com.sitewhere.asset.spi.modules;
 
-import java.util.List;
-
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.asset.IAsset;
 import com.sitewhere.spi.asset.IAssetCategory;
 import com.sitewhere.spi.command.ICommandResponse;
+import com.sitewhere.spi.search.ISearchCriteria;
+import com.sitewhere.spi.search.ISearchResults;
 import com.sitewhere.spi.server.lifecycle.ILifecycleComponent;
 import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 
@@ -50,13 +50,15 @@ public interface IAssetModule<T extends IAsset> extends ILifecycleComponent, IAs
     public void removeAsset(String id) throws SiteWhereException;
 
     /**
-     * Search for all assets of a given type that meet the criteria.
+     * Search for assets of a given type that meet the criteria. Results are
+     * ranked by how closely they match and paged.
      * 
      * @param criteria
+     * @param paging
      * @return
      * @throws SiteWhereException
      */
-    public List<T> search(String criteria) throws SiteWhereException;
+    public ISearchResults<T> search(String criteria, ISearchCriteria paging) throws SiteWhereException;
 
     /**
      * Refresh any cached data in the module.
@@ -13,6 +13,8 @@ import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.asset.IAsset;
 import com.sitewhere.spi.asset.IAssetCategory;
 import com.sitewhere.spi.asset.IAssetManagement;
+import com.sitewhere.spi.search.ISearchCriteria;
+import com.sitewhere.spi.search.ISearchResults;
 import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 import com.sitewhere.spi.server.lifecycle.ITenantEngineLifecycleComponent;
 
@@ -96,12 +98,15 @@ public interface IAssetModuleManager extends ITenantEngineLifecycleComponent {
     public IAsset getAssetById(String assetModuleId, String id) throws SiteWhereException;
 
     /**
-     * Search an asset module for assets matching the given criteria.
+     * Search an asset module for assets matching the given criteria. Results are
+     * ranked by how closely they match and paged.
      * 
      * @param assetModuleId
      * @param criteria
+     * @param paging
      * @return
      * @throws SiteWhereException
      */
-    public List<? extends IAsset> search(String assetModuleId, String criteria) throws SiteWhereException;
+    public ISearchResults<? extends IAsset> search(String assetModuleId, String criteria, ISearchCriteria paging)
+	    throws SiteWhereException;
 }
\ No newline at end of file
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.asset.modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sitewhere.rest.model.asset.HardwareAsset;
+import com.sitewhere.rest.model.asset.PersonAsset;
+import com.sitewhere.rest.model.search.SearchCriteria;
+import com.sitewhere.spi.asset.AssetType;
+import com.sitewhere.spi.asset.IAsset;
+import com.sitewhere.spi.search.ISearchResults;
+
+public class AssetSearchIndexTest {
+
+    /** Queries of every length, case and surrounding whitespace */
+    private static final List<String> QUERIES = Arrays.asList("", " ", "a", "E", "7", "-", "ac", "ME", "e ", " w",
+	    "acm", "ACM", "Acme", "me ", " wi", "idg", "widget", "WIDGET 7", "gadget", "acme widget", " acme",
+	    "sensor-01", "SENSOR", "example.com", "@EXAMPLE", "jdoe", "John Doe", "doe ", "zzz", "hw-1", "hw-12",
+	    "p-3", "Building", " building a ", "lobby");
+
+    /** Used for comparing against index results */
+    private AssetMatcher matcher = new AssetMatcher();
+
+    /** Assets expected in hardware index */
+    private Map<String, HardwareAsset> hardware = new HashMap<String, HardwareAsset>();
+
+    /** Assets expected in person index */
+    private Map<String, PersonAsset> people = new HashMap<String, PersonAsset>();
+
+    /** Hardware index */
+    private AssetSearchIndex<HardwareAsset> hardwareIndex;
+
+    /** Person index */
+    private AssetSearchIndex<PersonAsset> personIndex;
+
+    @Before
+    public void setUp() {
+	this.hardwareIndex = new AssetSearchIndex<HardwareAsset>(AssetType.Hardware, matcher);
+	this.personIndex = new AssetSearchIndex<PersonAsset>(AssetType.Person, matcher);
+
+	putHardware("hw-1", "Acme Widget 7", "Widget made by ACME");
+	putHardware("hw-2", "  acme gadget  ", null);
+	putHardware("hw-3", "SENSOR-01", "Temperature sensor");
+	putHardware("hw-4", null, "  Unnamed widget ");
+	putHardware("hw-5", "Widget", "");
+	putHardware("hw-12", "Building A Lobby Panel", "Panel in building a lobby");
+	putHardware("hw-13", "ac", "e");
+	putHardware("hw-14", null, null);
+
+	putPerson("p-1", "John Doe", "jdoe@example.com", "jdoe");
+	putPerson("p-2", " Jane Doe ", null, "JANE");
+	putPerson("p-3", null, "OPS@EXAMPLE.COM", null);
+	putPerson("p-4", "Acme Support", "support@acme.example.com", "acme-support");
+    }
+
+    @Test
+    public void testMatchesAssetMatcher() throws Exception {
+	assertAllQueriesMatch();
+    }
+
+    @Test
+    public void testShortQueriesMatchAssetMatcher() throws Exception {
+	for (String query : QUERIES) {
+	    if (query.length() < 3) {
+		assertMatches(query);
+	    }
+	}
+	assertEquals(hardware.size(), search(hardwareIndex, "").size());
+    }
+
+    @Test
+    public void testCaseIgnored() throws Exception {
+	assertEquals(search(hardwareIndex, "acme widget"), search(hardwareIndex, "ACME WIDGET"));
+	assertEquals(search(personIndex, "jane"), search(personIndex, "Jane"));
+	assertTrue(search(personIndex, "ops@example").contains("p-3"));
+    }
+
+    @Test
+    public void testSurroundingWhitespace() throws Exception {
+	// Fields are trimmed before comparing, queries are not.
+	assertTrue(search(hardwareIndex, "acme gadget").contains("hw-2"));
+	assertFalse(search(hardwareIndex, " acme gadget").contains("hw-2"));
+	assertFalse(search(hardwareIndex, "gadget ").contains("hw-2"));
+	assertTrue(search(hardwareIndex, "widget").contains("hw-4"));
+	assertFalse(search(hardwareIndex, "unnamed widget ").contains("hw-4"));
+	assertAllQueriesMatch();
+    }
+
+    @Test
+    public void testNullFields() throws Exception {
+	assertTrue(search(hardwareIndex, "hw-14").contains("hw-14"));
+	assertFalse(search(hardwareIndex, "widget").contains("hw-14"));
+	assertTrue(search(personIndex, "ops").contains("p-3"));
+	assertAllQueriesMatch();
+    }
+
+    @Test
+    public void testUpdatedAssets() throws Exception {
+	putHardware("hw-1", "Zeta Sprocket", null);
+	assertFalse(search(hardwareIndex, "widget 7").contains("hw-1"));
+	assertTrue(search(hardwareIndex, "sprocket").contains("hw-1"));
+
+	// Changing fields that are not searched keeps the new asset.
+	HardwareAsset moved = copy(hardware.get("hw-3"));
+	moved.setImageUrl("http://example.com/sensor.png");
+	hardware.put("hw-3", moved);
+	assertFalse(hardwareIndex.put("hw-3", moved));
+	assertTrue(hardwareIndex.get("hw-3") == moved);
+
+	putPerson("p-2", "Jane Roe", "jane@example.com", "jroe");
+	assertFalse(search(personIndex, "doe").contains("p-2"));
+	assertAllQueriesMatch();
+    }
+
+    @Test
+    public void testRemovedAssets() throws Exception {
+	hardware.remove("hw-5");
+	hardwareIndex.remove("hw-5");
+	people.remove("p-1");
+	personIndex.remove("p-1");
+	assertFalse(search(hardwareIndex, "widget").contains("hw-5"));
+	assertFalse(search(personIndex, "jdoe").contains("p-1"));
+	assertAllQueriesMatch();
+    }
+
+    @Test
+    public void testUpdateFromCollection() throws Exception {
+	hardware.remove("hw-2");
+	HardwareAsset renamed = copy(hardware.get("hw-3"));
+	renamed.setName("Humidity Probe");
+	hardware.put("hw-3", renamed);
+	HardwareAsset added = new HardwareAsset();
+	added.setId("hw-20");
+	added.setName("Acme Probe");
+	hardware.put("hw-20", added);
+
+	assertEquals(3, hardwareIndex.update(new ArrayList<HardwareAsset>(hardware.values())));
+	assertEquals(hardware.size(), hardwareIndex.size());
+	assertEquals(0, hardwareIndex.update(new ArrayList<HardwareAsset>(hardware.values())));
+	assertAllQueriesMatch();
+    }
+
+    /**
+     * Assert that every query returns the same assets from both indexes as a
+     * scan with {@link AssetMatcher#isMatch}.
+     */
+    protected void assertAllQueriesMatch() {
+	for (String query : QUERIES) {
+	    assertMatches(query);
+	}
+    }
+
+    /**
+     * Assert that a query returns the same assets from both indexes as a scan
+     * with {@link AssetMatcher#isMatch}.
+     *
+     * @param query
+     */
+    protected void assertMatches(String query) {
+	assertEquals("Hardware query '" + query + "'", scan(AssetType.Hardware, hardware, query),
+		search(hardwareIndex, query));
+	assertEquals("Person query '" + query + "'", scan(AssetType.Person, people, query),
+		search(personIndex, query));
+    }
+
+    /**
+     * Get ids of assets the matcher accepts for a query.
+     *
+     * @param type
+     * @param assets
+     * @param query
+     * @return
+     */
+    protected Set<String> scan(AssetType type, Map<String, ? extends IAsset> assets, String query) {
+	Set<String> ids = new TreeSet<String>();
+	for (IAsset asset : assets.values()) {
+	    if (matcher.isMatch(type, asset, query)) {
+		ids.add(asset.getId());
+	    }
+	}
+	return ids;
+    }
+
+    /**
+     * Get ids of all assets the index returns for a query, checking that the
+     * total agrees with the results.
+     *
+     * @param index
+     * @param query
+     * @return
+     */
+    protected static Set<String> search(AssetSearchIndex<? extends IAsset> index, String query) {
+	ISearchResults<? extends IAsset> results = index.search(query, new SearchCriteria(1, 0));
+	Set<String> ids = new TreeSet<String>();
+	for (IAsset asset : results.getResults()) {
+	    ids.add(asset.getId());
+	}
+	assertEquals(results.getNumResults(), ids.size());
+	return ids;
+    }
+
+    /**
+     * Add or replace a hardware asset.
+     *
+     * @param id
+     * @param name
+     * @param description
+     */
+    protected void putHardware(String id, String name, String description) {
+	HardwareAsset asset = new HardwareAsset();
+	asset.setId(id);
+	asset.setName(name);
+	asset.setDescription(description);
+	hardware.put(id, asset);
+	hardwareIndex.put(id, asset);
+    }
+
+    /**
+     * Add or replace a person asset.
+     *
+     * @param id
+     * @param name
+     * @param emailAddress
+     * @param userName
+     */
+    protected void putPerson(String id, String name, String emailAddress, String userName) {
+	PersonAsset asset = new PersonAsset();
+	asset.setId(id);
+	asset.setName(name);
+	asset.setEmailAddress(emailAddress);
+	asset.setUserName(userName);
+	people.put(id, asset);
+	personIndex.put(id, asset);
+    }
+
+    /**
+     * Copy searched fields of a hardware asset.
+     *
+     * @param asset
+     * @return
+     */
+    protected static HardwareAsset copy(HardwareAsset asset) {
+	HardwareAsset copy = new HardwareAsset();
+	copy.setId(asset.getId());
+	copy.setName(asset.getName());
+	copy.setDescription(asset.getDescription());
+	return copy;
+    }
+}
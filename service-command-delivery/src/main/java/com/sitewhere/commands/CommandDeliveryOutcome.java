@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.commands;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.UUID;
+
+import com.sitewhere.commands.spi.CommandDeliveryStatus;
+import com.sitewhere.commands.spi.ICommandDeliveryOutcome;
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.command.IDeviceCommandExecution;
+
+/**
+ * Model object for {@link ICommandDeliveryOutcome}.
+ * 
+ * @author Derek
+ */
+public class CommandDeliveryOutcome implements ICommandDeliveryOutcome, Serializable {
+
+    /** Serial version UID */
+    private static final long serialVersionUID = -2390941587046313374L;
+
+    /** Command invocation id */
+    private String invocationId;
+
+    /** Device assignment id */
+    private UUID deviceAssignmentId;
+
+    /** Indicates a system command */
+    private boolean systemCommand;
+
+    /** Delivery destination */
+    private String destination;
+
+    /** Delivery status */
+    private CommandDeliveryStatus status;
+
+    /** Number of delivery attempts */
+    private int attempts = 1;
+
+    /** Outcome details */
+    private String message;
+
+    /** Date outcome was determined */
+    private Date outcomeDate;
+
+    /**
+     * Create an outcome for a command or system command delivery.
+     * 
+     * @param assignment
+     * @param execution
+     *            execution for commands or null for system commands
+     * @param destination
+     * @param status
+     * @param message
+     * @return
+     */
+    public static CommandDeliveryOutcome create(IDeviceAssignment assignment, IDeviceCommandExecution execution,
+	    String destination, CommandDeliveryStatus status, String message) {
+	CommandDeliveryOutcome outcome = new CommandDeliveryOutcome();
+	if ((execution != null) && (execution.getInvocation() != null)) {
+	    outcome.setInvocationId(execution.getInvocation().getId());
+	}
+	outcome.setDeviceAssignmentId((assignment != null) ? assignment.getId() : null);
+	outcome.setSystemCommand(execution == null);
+	outcome.setDestination(destination);
+	outcome.setStatus(status);
+	outcome.setMessage(message);
+	outcome.setOutcomeDate(new Date());
+	return outcome;
+    }
+
+    /*
+     * @see com.sitewhere.commands.spi.ICommandDeliveryOutcome#getInvocationId()
+     */
+    @Override
+    public String getInvocationId() {
+	return invocationId;
+    }
+
+    public void setInvocationId(String invocationId) {
+	this.invocationId = invocationId;
+    }
+
+    /*
+     * @see
+     * com.sitewhere.commands.spi.ICommandDeliveryOutcome#getDeviceAssignmentId()
+     */
+    @Override
+    public UUID getDeviceAssignmentId() {
+	return deviceAssignmentId;
+    }
+
+    public void setDeviceAssignmentId(UUID deviceAssignmentId) {
+	this.deviceAssignmentId = deviceAssignmentId;
+    }
+
+    /*
+     * @see com.sitewhere.commands.spi.ICommandDeliveryOutcome#isSystemCommand()
+     */
+    @Override
+    public boolean isSystemCommand() {
+	return systemCommand;
+    }
+
+    public void setSystemCommand(boolean systemCommand) {
+	this.systemCommand = systemCommand;
+    }
+
+    /*
+     * @see com.sitewhere.commands.spi.ICommandDeliveryOutcome#getDestination()
+     */
+    @Override
+    public String getDestination() {
+	return destination;
+    }
+
+    public void setDestination(String destination) {
+	this.destination = destination;
+    }
+
+    /*
+     * @see com.sitewhere.commands.spi.ICommandDeliveryOutcome#getStatus()
+     */
+    @Override
+    public CommandDeliveryStatus getStatus() {
+	return status;
+    }
+
+    public void setStatus(CommandDeliveryStatus status) {
+	this.status = status;
+    }
+
+    /*
+     * @see com.sitewhere.commands.spi.ICommandDeliveryOutcome#getAttempts()
+     */
+    @Override
+    public int getAttempts() {
+	return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+	this.attempts = attempts;
+    }
+
+    /*
+     * @see com.sitewhere.commands.spi.ICommandDeliveryOutcome#getMessage()
+     */
+    @Override
+    public String getMessage() {
+	return message;
+    }
+
+    public void setMessage(String message) {
+	this.message = message;
+    }
+
+    /*
+     * @see com.sitewhere.commands.spi.ICommandDeliveryOutcome#getOutcomeDate()
+     */
+    @Override
+    public Date getOutcomeDate() {
+	return outcomeDate;
+    }
+
+    public void setOutcomeDate(Date outcomeDate) {
+	this.outcomeDate = outcomeDate;
+    }
+}
@@ -14,6 +14,7 @@ import com.sitewhere.commands.spi.ICommandDestinationsManager;
 import com.sitewhere.server.lifecycle.TenantEngineLifecycleComponent;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.microservice.kafka.payload.IEnrichedEventPayload;
+import com.sitewhere.spi.microservice.kafka.payload.ISystemCommandPayload;
 
 /**
  * Default {@link ICommandDestinationsManager} implementation.
@@ -42,4 +43,15 @@ public class CommandDestinationsManager extends TenantEngineLifecycleComponent i
     public void processCommandInvocation(IEnrichedEventPayload payload) throws SiteWhereException {
 	getLogger().info("Command destinations manager received a command invocation.");
     }
+
+    /*
+     * @see com.sitewhere.commands.spi.ICommandDestinationsManager#
+     * processSystemCommand(com.sitewhere.spi.microservice.kafka.payload.
+     * ISystemCommandPayload)
+     */
+    @Override
+    public void processSystemCommand(ISystemCommandPayload payload) throws SiteWhereException {
+	getLogger().info("Command destinations manager received a " + payload.getCommand().getType()
+		+ " system command for " + payload.getHardwareId() + ".");
+    }
 }
\ No newline at end of file
@@ -7,13 +7,36 @@
  */
 package com.sitewhere.commands.destination.coap;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.eclipse.californium.core.CoapClient;
-import org.eclipse.californium.core.CoapResponse;
+import org.eclipse.californium.core.coap.CoAP.ResponseCode;
 import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.coap.MessageObserverAdapter;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.coap.Response;
+import org.eclipse.californium.core.network.CoapEndpoint;
+import org.eclipse.californium.core.network.config.NetworkConfig;
 
+import com.sitewhere.commands.CommandDeliveryOutcome;
+import com.sitewhere.commands.spi.CommandDeliveryStatus;
 import com.sitewhere.commands.spi.ICommandDeliveryProvider;
+import com.sitewhere.commands.spi.microservice.ICommandDeliveryTenantEngine;
 import com.sitewhere.server.lifecycle.TenantEngineLifecycleComponent;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.IDeviceAssignment;
@@ -23,9 +46,16 @@ import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
 
 /**
- * Delivers commands via CoAP by creating a client request to send command data
- * to the remote device.
- * 
+ * Delivers commands via CoAP by sending confirmable requests with command data
+ * to the remote device. Requests are sent asynchronously from a single shared
+ * endpoint so that slow or unreachable devices do not block the thread
+ * delivering commands. The number of outstanding requests for each destination
+ * is bounded. Further commands for a busy destination wait in a bounded queue
+ * and are sent as earlier requests complete, so only commands that overflow the
+ * queue fail. The outcome of each command is published once the device
+ * answers, the request times out, it can not be sent or the provider is
+ * stopped. Destinations are only tracked while they have requests outstanding.
+ *
  * @author Derek
  */
 public class CoapCommandDeliveryProvider extends TenantEngineLifecycleComponent
@@ -34,34 +64,118 @@ public class CoapCommandDeliveryProvider extends TenantEngineLifecycleComponent
     /** Static logger instance */
     private static Logger LOGGER = LogManager.getLogger();
 
+    /** Default time to wait for an ACK before first retransmission */
+    private static final int DEFAULT_ACK_TIMEOUT_MS = 2000;
+
+    /** Default number of retransmissions before giving up */
+    private static final int DEFAULT_MAX_RETRANSMIT = 4;
+
+    /** Default time to wait for a response to a request */
+    private static final long DEFAULT_RESPONSE_TIMEOUT_MS = 60 * 1000;
+
+    /** Default max number of outstanding requests for a destination */
+    private static final int DEFAULT_MAX_OUTSTANDING_PER_DESTINATION = 4;
+
+    /** Default max number of requests waiting to be sent to a destination */
+    private static final int DEFAULT_MAX_QUEUED_PER_DESTINATION = 100;
+
+    /** Time to wait for an ACK before first retransmission */
+    private int ackTimeoutMs = DEFAULT_ACK_TIMEOUT_MS;
+
+    /** Number of retransmissions before giving up */
+    private int maxRetransmit = DEFAULT_MAX_RETRANSMIT;
+
+    /** Time to wait for a response to a request */
+    private long responseTimeoutMs = DEFAULT_RESPONSE_TIMEOUT_MS;
+
+    /** Max number of outstanding requests for a destination */
+    private int maxOutstandingPerDestination = DEFAULT_MAX_OUTSTANDING_PER_DESTINATION;
+
+    /** Max number of requests waiting to be sent to a destination */
+    private int maxQueuedPerDestination = DEFAULT_MAX_QUEUED_PER_DESTINATION;
+
+    /** Shared endpoint used for all requests */
+    private volatile CoapEndpoint endpoint;
+
+    /** Cancels requests that do not get a response in time */
+    private ScheduledExecutorService timeouts;
+
+    /** Outstanding and queued requests indexed by destination host and port */
+    private Map<String, DestinationState> destinations = new HashMap<String, DestinationState>();
+
+    /** Requests that have been sent and not completed */
+    private Set<DeliveryObserver> inFlight = ConcurrentHashMap.newKeySet();
+
     public CoapCommandDeliveryProvider() {
 	super(LifecycleComponentType.CommandDeliveryProvider);
     }
 
     /*
      * (non-Javadoc)
-     * 
+     *
      * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#start(com.
      * sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor)
      */
     @Override
     public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	NetworkConfig config = new NetworkConfig();
+	config.setInt(NetworkConfig.Keys.ACK_TIMEOUT, getAckTimeoutMs());
+	config.setInt(NetworkConfig.Keys.MAX_RETRANSMIT, getMaxRetransmit());
+	this.endpoint = new CoapEndpoint(config);
+	try {
+	    endpoint.start();
+	} catch (IOException e) {
+	    throw new SiteWhereException("Unable to start CoAP endpoint for command delivery.", e);
+	}
+	this.timeouts = Executors.newSingleThreadScheduledExecutor(new CoapTimeoutThreadFactory());
+	getLogger().info("Started CoAP command delivery endpoint at " + endpoint.getAddress() + ".");
     }
 
     /*
      * (non-Javadoc)
-     * 
+     *
      * @see
      * com.sitewhere.spi.server.lifecycle.ILifecycleComponent#stop(com.sitewhere
      * .spi.server.lifecycle.ILifecycleProgressMonitor)
      */
     @Override
     public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	CoapEndpoint current = endpoint;
+	endpoint = null;
+
+	// Publish outcomes for everything not yet completed before shutting down.
+	List<PendingDelivery> queued = new ArrayList<PendingDelivery>();
+	synchronized (destinations) {
+	    for (DestinationState state : destinations.values()) {
+		queued.addAll(state.getQueued());
+		state.getQueued().clear();
+	    }
+	}
+	for (PendingDelivery pending : queued) {
+	    publishOutcome(pending.outcome(CommandDeliveryStatus.Failed, "Provider stopped before request was sent."));
+	}
+	for (DeliveryObserver observer : new ArrayList<DeliveryObserver>(inFlight)) {
+	    observer.complete(CommandDeliveryStatus.Failed, "Provider stopped before device responded.");
+	}
+	if (!queued.isEmpty() || !inFlight.isEmpty()) {
+	    getLogger().info("Stopped CoAP command delivery with " + queued.size() + " queued requests.");
+	}
+
+	if (current != null) {
+	    current.destroy();
+	}
+	if (timeouts != null) {
+	    timeouts.shutdownNow();
+	    timeouts = null;
+	}
+	synchronized (destinations) {
+	    destinations.clear();
+	}
     }
 
     /*
      * (non-Javadoc)
-     * 
+     *
      * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#getLogger()
      */
     @Override
@@ -71,7 +185,7 @@ public class CoapCommandDeliveryProvider extends TenantEngineLifecycleComponent
 
     /*
      * (non-Javadoc)
-     * 
+     *
      * @see
      * com.sitewhere.spi.device.communication.ICommandDeliveryProvider#deliver(
      * com. sitewhere.spi.device.IDeviceNestingContext,
@@ -82,25 +196,12 @@ public class CoapCommandDeliveryProvider extends TenantEngineLifecycleComponent
     @Override
     public void deliver(IDeviceNestingContext nested, IDeviceAssignment assignment, IDeviceCommandExecution execution,
 	    byte[] encoded, CoapParameters parameters) throws SiteWhereException {
-	CoapClient client = createCoapClient(parameters);
-	CoapResponse response = null;
-	LOGGER.info(parameters.toString());
-	LOGGER.info("Delivering command as " + parameters.getMethod().toUpperCase() + " to " + client.getURI());
-	if ("put".equalsIgnoreCase(parameters.getMethod())) {
-	    response = client.put(encoded, MediaTypeRegistry.APPLICATION_JSON);
-	} else {
-	    response = client.post(encoded, MediaTypeRegistry.APPLICATION_JSON);
-	}
-	if (response != null) {
-	    LOGGER.info("Response from delivering command: " + response.getResponseText());
-	} else {
-	    LOGGER.info("No response from delivering command.");
-	}
+	send(assignment, execution, encoded, parameters);
     }
 
     /*
      * (non-Javadoc)
-     * 
+     *
      * @see com.sitewhere.spi.device.communication.ICommandDeliveryProvider#
      * deliverSystemCommand(com.sitewhere.spi.device.IDeviceNestingContext,
      * com.sitewhere.spi.device.IDeviceAssignment, java.lang.Object,
@@ -109,31 +210,422 @@ public class CoapCommandDeliveryProvider extends TenantEngineLifecycleComponent
     @Override
     public void deliverSystemCommand(IDeviceNestingContext nested, IDeviceAssignment assignment, byte[] encoded,
 	    CoapParameters parameters) throws SiteWhereException {
-	CoapClient client = createCoapClient(parameters);
-	CoapResponse response = null;
-	LOGGER.info(parameters.toString());
-	LOGGER.info("Delivering system command as " + parameters.getMethod().toUpperCase() + " to " + client.getURI());
-	if ("put".equalsIgnoreCase(parameters.getMethod())) {
-	    response = client.put(encoded, MediaTypeRegistry.APPLICATION_JSON);
-	} else {
-	    response = client.post(encoded, MediaTypeRegistry.APPLICATION_JSON);
+	send(assignment, null, encoded, parameters);
+    }
+
+    /**
+     * Send a request without waiting for the response. If the destination
+     * already has the maximum number of outstanding requests, the request is
+     * queued and sent once an earlier request completes. If the queue is full,
+     * a failed outcome is published.
+     *
+     * @param assignment
+     * @param execution
+     *            command execution or null for system commands
+     * @param encoded
+     * @param parameters
+     * @throws SiteWhereException
+     */
+    protected void send(IDeviceAssignment assignment, IDeviceCommandExecution execution, byte[] encoded,
+	    CoapParameters parameters) throws SiteWhereException {
+	if (endpoint == null) {
+	    throw new SiteWhereException("CoAP command delivery provider is not started.");
+	}
+	PendingDelivery pending = new PendingDelivery(assignment, execution, encoded, parameters);
+	boolean sendNow = false;
+	boolean rejected = false;
+	synchronized (destinations) {
+	    DestinationState state = destinations.get(pending.getDestination());
+	    if (state == null) {
+		state = new DestinationState();
+		destinations.put(pending.getDestination(), state);
+	    }
+	    if (state.getOutstanding() < getMaxOutstandingPerDestination()) {
+		state.setOutstanding(state.getOutstanding() + 1);
+		sendNow = true;
+	    } else if (state.getQueued().size() < getMaxQueuedPerDestination()) {
+		state.getQueued().add(pending);
+	    } else {
+		rejected = true;
+	    }
+	}
+	if (sendNow) {
+	    dispatch(pending);
+	} else if (rejected) {
+	    getLogger().warn("Too many queued CoAP requests for " + pending.getUri() + ". Command not delivered.");
+	    publishOutcome(
+		    pending.outcome(CommandDeliveryStatus.Failed, "Too many queued requests for destination."));
+	}
+    }
+
+    /**
+     * Send a request for which an outstanding slot has been reserved. Requests
+     * that waited in the queue longer than the response timeout are expired
+     * without being sent.
+     *
+     * @param pending
+     */
+    protected void dispatch(PendingDelivery pending) {
+	DeliveryObserver observer = new DeliveryObserver(pending);
+	inFlight.add(observer);
+	CoapEndpoint current = endpoint;
+	if (current == null) {
+	    observer.complete(CommandDeliveryStatus.Failed, "Provider stopped before request was sent.");
+	    return;
+	}
+	if ((System.currentTimeMillis() - pending.getQueuedAt()) > getResponseTimeoutMs()) {
+	    observer.complete(CommandDeliveryStatus.Expired,
+		    "Request not sent within " + getResponseTimeoutMs() + "ms.");
+	    return;
+	}
+	String uri = pending.getUri();
+	try {
+	    Request request = "put".equalsIgnoreCase(pending.getParameters().getMethod()) ? Request.newPut()
+		    : Request.newPost();
+	    request.setURI(uri);
+	    request.setPayload(pending.getEncoded());
+	    request.getOptions().setContentFormat(MediaTypeRegistry.APPLICATION_JSON);
+	    request.addMessageObserver(observer);
+	    observer.setTimeout(timeouts.schedule(new Runnable() {
+
+		@Override
+		public void run() {
+		    request.cancel();
+		}
+	    }, getResponseTimeoutMs(), TimeUnit.MILLISECONDS));
+	    if (getLogger().isDebugEnabled()) {
+		getLogger().debug("Delivering " + ((pending.getExecution() == null) ? "system command" : "command")
+			+ " as " + request.getCode() + " to " + uri);
+	    }
+	    current.sendRequest(request);
+	} catch (RuntimeException e) {
+	    getLogger().error("Unable to send CoAP request to " + uri + ".", e);
+	    observer.onSendError(e);
 	}
-	if (response != null) {
-	    LOGGER.info("Response from delivering system command: " + response.getResponseText());
-	} else {
-	    LOGGER.info("No response from delivering system command.");
+    }
+
+    /**
+     * Publish a delivery outcome. Failures are logged rather than thrown since
+     * outcomes are usually published from CoAP callback threads.
+     *
+     * @param outcome
+     */
+    protected void publishOutcome(CommandDeliveryOutcome outcome) {
+	try {
+	    ((ICommandDeliveryTenantEngine) getTenantEngine()).getCommandDeliveryOutcomesProducer()
+		    .sendOutcome(outcome);
+	} catch (Throwable t) {
+	    getLogger().error("Unable to publish command delivery outcome.", t);
+	}
+    }
+
+    /**
+     * Release an outstanding request for a destination. If requests are queued
+     * for the destination, the slot is handed to the next one, which is then
+     * sent. The entry is removed once nothing is outstanding or queued so that
+     * destinations that are no longer used do not accumulate.
+     *
+     * @param destination
+     */
+    protected void release(String destination) {
+	PendingDelivery next = null;
+	synchronized (destinations) {
+	    DestinationState state = destinations.get(destination);
+	    if (state == null) {
+		return;
+	    }
+	    next = state.getQueued().poll();
+	    if (next == null) {
+		state.setOutstanding(state.getOutstanding() - 1);
+		if (state.getOutstanding() <= 0) {
+		    destinations.remove(destination);
+		}
+	    }
+	}
+	if (next != null) {
+	    dispatch(next);
+	}
+    }
+
+    /**
+     * Get number of destinations with outstanding requests.
+     *
+     * @return
+     */
+    public int getOutstandingDestinationCount() {
+	synchronized (destinations) {
+	    return destinations.size();
 	}
     }
 
     /**
-     * Create a CoAP client based on extracted parameters.
-     * 
+     * Get key used to track outstanding requests for a destination.
+     *
+     * @param parameters
+     * @return
+     */
+    protected String getDestination(CoapParameters parameters) {
+	return parameters.getHostname() + ":" + parameters.getPort();
+    }
+
+    /**
+     * Get request URI based on extracted parameters.
+     *
      * @param parameters
      * @return
      */
-    protected CoapClient createCoapClient(CoapParameters parameters) {
-	return new CoapClient(
-		"coap://" + parameters.getHostname() + ":" + parameters.getPort() + "/" + parameters.getUrl());
+    protected String getUri(CoapParameters parameters) {
+	return "coap://" + parameters.getHostname() + ":" + parameters.getPort() + "/" + parameters.getUrl();
+    }
 
+    public int getAckTimeoutMs() {
+	return ackTimeoutMs;
+    }
+
+    public void setAckTimeoutMs(int ackTimeoutMs) {
+	this.ackTimeoutMs = ackTimeoutMs;
+    }
+
+    public int getMaxRetransmit() {
+	return maxRetransmit;
+    }
+
+    public void setMaxRetransmit(int maxRetransmit) {
+	this.maxRetransmit = maxRetransmit;
+    }
+
+    public long getResponseTimeoutMs() {
+	return responseTimeoutMs;
+    }
+
+    public void setResponseTimeoutMs(long responseTimeoutMs) {
+	this.responseTimeoutMs = responseTimeoutMs;
+    }
+
+    public int getMaxOutstandingPerDestination() {
+	return maxOutstandingPerDestination;
+    }
+
+    public void setMaxOutstandingPerDestination(int maxOutstandingPerDestination) {
+	this.maxOutstandingPerDestination = maxOutstandingPerDestination;
+    }
+
+    public int getMaxQueuedPerDestination() {
+	return maxQueuedPerDestination;
+    }
+
+    public void setMaxQueuedPerDestination(int maxQueuedPerDestination) {
+	this.maxQueuedPerDestination = maxQueuedPerDestination;
+    }
+
+    /**
+     * Command waiting to be sent to a destination.
+     *
+     * @author Derek
+     */
+    protected class PendingDelivery {
+
+	/** Assignment command is sent to */
+	private IDeviceAssignment assignment;
+
+	/** Command execution or null for system commands */
+	private IDeviceCommandExecution execution;
+
+	/** Encoded command */
+	private byte[] encoded;
+
+	/** Delivery parameters */
+	private CoapParameters parameters;
+
+	/** Request URI */
+	private String uri;
+
+	/** Destination host and port */
+	private String destination;
+
+	/** Time command was accepted for delivery */
+	private long queuedAt = System.currentTimeMillis();
+
+	public PendingDelivery(IDeviceAssignment assignment, IDeviceCommandExecution execution, byte[] encoded,
+		CoapParameters parameters) {
+	    this.assignment = assignment;
+	    this.execution = execution;
+	    this.encoded = encoded;
+	    this.parameters = parameters;
+	    this.uri = getUri(parameters);
+	    this.destination = getDestination(parameters);
+	}
+
+	/**
+	 * Create delivery outcome for the command.
+	 *
+	 * @param status
+	 * @param message
+	 * @return
+	 */
+	public CommandDeliveryOutcome outcome(CommandDeliveryStatus status, String message) {
+	    return CommandDeliveryOutcome.create(assignment, execution, uri, status, message);
+	}
+
+	public IDeviceCommandExecution getExecution() {
+	    return execution;
+	}
+
+	public byte[] getEncoded() {
+	    return encoded;
+	}
+
+	public CoapParameters getParameters() {
+	    return parameters;
+	}
+
+	public String getUri() {
+	    return uri;
+	}
+
+	public String getDestination() {
+	    return destination;
+	}
+
+	public long getQueuedAt() {
+	    return queuedAt;
+	}
+    }
+
+    /**
+     * Outstanding count and queued requests for a destination. Guarded by the
+     * lock on the destination map.
+     *
+     * @author Derek
+     */
+    private static class DestinationState {
+
+	/** Number of requests sent and not completed */
+	private int outstanding;
+
+	/** Requests waiting for an outstanding request to complete */
+	private Deque<PendingDelivery> queued = new ArrayDeque<PendingDelivery>();
+
+	public int getOutstanding() {
+	    return outstanding;
+	}
+
+	public void setOutstanding(int outstanding) {
+	    this.outstanding = outstanding;
+	}
+
+	public Deque<PendingDelivery> getQueued() {
+	    return queued;
+	}
+    }
+
+    /**
+     * Completes a single request by releasing its permit and publishing the
+     * outcome exactly once.
+     *
+     * @author Derek
+     */
+    private class DeliveryObserver extends MessageObserverAdapter {
+
+	/** Command being delivered */
+	private PendingDelivery pending;
+
+	/** Scheduled response timeout */
+	private volatile ScheduledFuture<?> timeout;
+
+	/** Indicates request has completed */
+	private AtomicBoolean completed = new AtomicBoolean();
+
+	public DeliveryObserver(PendingDelivery pending) {
+	    this.pending = pending;
+	}
+
+	/*
+	 * @see org.eclipse.californium.core.coap.MessageObserverAdapter#onResponse(
+	 * org.eclipse.californium.core.coap.Response)
+	 */
+	@Override
+	public void onResponse(Response response) {
+	    if (ResponseCode.isSuccess(response.getCode())) {
+		complete(CommandDeliveryStatus.Delivered, "Device responded with " + response.getCode() + ".");
+	    } else {
+		complete(CommandDeliveryStatus.Failed, "Device responded with " + response.getCode() + ".");
+	    }
+	}
+
+	/*
+	 * @see org.eclipse.californium.core.coap.MessageObserverAdapter#onTimeout()
+	 */
+	@Override
+	public void onTimeout() {
+	    complete(CommandDeliveryStatus.Expired,
+		    "No acknowledgement after " + getMaxRetransmit() + " retransmissions.");
+	}
+
+	/*
+	 * @see org.eclipse.californium.core.coap.MessageObserverAdapter#onCancel()
+	 */
+	@Override
+	public void onCancel() {
+	    complete(CommandDeliveryStatus.Expired, "No response within " + getResponseTimeoutMs() + "ms.");
+	}
+
+	/*
+	 * @see org.eclipse.californium.core.coap.MessageObserverAdapter#onReject()
+	 */
+	@Override
+	public void onReject() {
+	    complete(CommandDeliveryStatus.Failed, "Request rejected by device.");
+	}
+
+	/**
+	 * Called when a request could not be sent. Invoked by the provider for
+	 * errors raised while building or handing off the request, and by
+	 * Californium releases whose message observers report send errors.
+	 *
+	 * @param error
+	 */
+	public void onSendError(Throwable error) {
+	    complete(CommandDeliveryStatus.Failed, "Unable to send request: " + error.getMessage());
+	}
+
+	/**
+	 * Release outstanding request and publish outcome if not already
+	 * completed.
+	 *
+	 * @param status
+	 * @param message
+	 */
+	protected void complete(CommandDeliveryStatus status, String message) {
+	    if (!completed.compareAndSet(false, true)) {
+		return;
+	    }
+	    inFlight.remove(this);
+	    ScheduledFuture<?> current = timeout;
+	    if (current != null) {
+		current.cancel(false);
+	    }
+	    if (getLogger().isDebugEnabled()) {
+		getLogger().debug(
+			"CoAP delivery to " + pending.getUri() + " completed with " + status + ". " + message);
+	    }
+	    publishOutcome(pending.outcome(status, message));
+	    release(pending.getDestination());
+	}
+
+	public void setTimeout(ScheduledFuture<?> timeout) {
+	    this.timeout = timeout;
+	    if (completed.get()) {
+		timeout.cancel(false);
+	    }
+	}
+    }
+
+    /** Used for naming CoAP response timeout thread */
+    private class CoapTimeoutThreadFactory implements ThreadFactory {
+
+	public Thread newThread(Runnable r) {
+	    return new Thread(r, "CoAP Command Timeouts");
+	}
     }
-}
\ No newline at end of file
+}
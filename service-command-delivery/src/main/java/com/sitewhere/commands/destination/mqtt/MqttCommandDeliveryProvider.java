@@ -7,13 +7,27 @@
  */
 package com.sitewhere.commands.destination.mqtt;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.fusesource.hawtdispatch.ShutdownException;
+import org.fusesource.mqtt.client.Callback;
 import org.fusesource.mqtt.client.FutureConnection;
 import org.fusesource.mqtt.client.QoS;
 
+import com.sitewhere.commands.CommandDeliveryOutcome;
+import com.sitewhere.commands.spi.CommandDeliveryStatus;
 import com.sitewhere.commands.spi.ICommandDeliveryProvider;
+import com.sitewhere.commands.spi.microservice.ICommandDeliveryTenantEngine;
 import com.sitewhere.communication.mqtt.MqttLifecycleComponent;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.IDeviceAssignment;
@@ -25,8 +39,16 @@ import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
 /**
  * Implementation of {@link ICommandDeliveryProvider} that publishes commands to
  * an MQTT topic so that they can be processed asynchronously by a device
- * listening on the topic.
- * 
+ * listening on the topic. The number of publishes awaiting acknowledgement
+ * from the broker is bounded, and delivery blocks while the window is full so
+ * that a stalled broker slows down the consumer instead of filling memory.
+ * Failed publishes are retried with backoff, reconnecting if the connection
+ * was lost, and the outcome of each delivery is published once known. A
+ * publish keeps its place in the window until the client reports the publish
+ * as finished. If it expires while still pending, the connection it was sent
+ * on is killed so unacknowledged publishes can not pile up during a broker
+ * stall.
+ *
  * @author Derek
  */
 public class MqttCommandDeliveryProvider extends MqttLifecycleComponent
@@ -35,8 +57,41 @@ public class MqttCommandDeliveryProvider extends MqttLifecycleComponent
     /** Static logger instance */
     private static Logger LOGGER = LogManager.getLogger();
 
+    /** Default max number of unacknowledged publishes */
+    private static final int DEFAULT_MAX_IN_FLIGHT = 100;
+
+    /** Default max number of publish attempts */
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    /** Default delay before first retry */
+    private static final long DEFAULT_RETRY_BACKOFF_MS = 1000;
+
+    /** Default time allowed for a delivery to be acknowledged */
+    private static final long DEFAULT_DELIVERY_TIMEOUT_MS = 60 * 1000;
+
     /** Shared MQTT connection */
-    private FutureConnection connection;
+    private volatile FutureConnection connection;
+
+    /** Max number of unacknowledged publishes */
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+    /** Max number of publish attempts */
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    /** Delay before first retry (doubled for each later retry) */
+    private long retryBackoffMs = DEFAULT_RETRY_BACKOFF_MS;
+
+    /** Time allowed for a delivery to be acknowledged */
+    private long deliveryTimeoutMs = DEFAULT_DELIVERY_TIMEOUT_MS;
+
+    /** Permits for unacknowledged publishes */
+    private Semaphore inFlight;
+
+    /** Publishes holding a permit */
+    private Set<PendingPublish> pending = ConcurrentHashMap.newKeySet();
+
+    /** Schedules retries and delivery timeouts */
+    private ScheduledExecutorService scheduler;
 
     public MqttCommandDeliveryProvider() {
 	super(LifecycleComponentType.CommandDeliveryProvider);
@@ -44,7 +99,7 @@ public class MqttCommandDeliveryProvider extends MqttLifecycleComponent
 
     /*
      * (non-Javadoc)
-     * 
+     *
      * @see
      * com.sitewhere.device.communication.mqtt.MqttLifecycleComponent#start(com.
      * sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor)
@@ -53,6 +108,9 @@ public class MqttCommandDeliveryProvider extends MqttLifecycleComponent
     public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
 	super.start(monitor);
 
+	this.inFlight = new Semaphore(getMaxInFlight());
+	this.scheduler = Executors.newSingleThreadScheduledExecutor(new MqttDeliveryThreadFactory());
+
 	LOGGER.info("Connecting to MQTT broker at '" + getHostname() + ":" + getPort() + "'...");
 	connection = getConnection();
 	LOGGER.info("Connected to MQTT broker.");
@@ -60,7 +118,7 @@ public class MqttCommandDeliveryProvider extends MqttLifecycleComponent
 
     /*
      * (non-Javadoc)
-     * 
+     *
      * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#getLogger()
      */
     @Override
@@ -70,13 +128,20 @@ public class MqttCommandDeliveryProvider extends MqttLifecycleComponent
 
     /*
      * (non-Javadoc)
-     * 
+     *
      * @see
      * com.sitewhere.device.communication.mqtt.MqttLifecycleComponent#stop(com.
      * sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor)
      */
     @Override
     public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	if (scheduler != null) {
+	    scheduler.shutdownNow();
+	}
+	for (PendingPublish publish : pending) {
+	    publish.complete(CommandDeliveryStatus.Failed, "Provider stopped before publish was acknowledged.");
+	    publish.releasePermit();
+	}
 	if (connection != null) {
 	    try {
 		connection.disconnect().await();
@@ -92,7 +157,7 @@ public class MqttCommandDeliveryProvider extends MqttLifecycleComponent
 
     /*
      * (non-Javadoc)
-     * 
+     *
      * @see
      * com.sitewhere.spi.device.communication.ICommandDeliveryProvider#deliver(
      * com. sitewhere .spi.device.IDeviceNestingContext,
@@ -103,18 +168,13 @@ public class MqttCommandDeliveryProvider extends MqttLifecycleComponent
     @Override
     public void deliver(IDeviceNestingContext nested, IDeviceAssignment assignment, IDeviceCommandExecution execution,
 	    byte[] encoded, MqttParameters params) throws SiteWhereException {
-	try {
-	    LOGGER.debug("About to publish command message to topic: " + params.getCommandTopic());
-	    connection.publish(params.getCommandTopic(), encoded, QoS.AT_LEAST_ONCE, false);
-	    LOGGER.debug("Command published.");
-	} catch (Exception e) {
-	    throw new SiteWhereException("Unable to publish command to MQTT topic.", e);
-	}
+	LOGGER.debug("About to publish command message to topic: " + params.getCommandTopic());
+	send(new PendingPublish(assignment, execution, params.getCommandTopic(), encoded));
     }
 
     /*
      * (non-Javadoc)
-     * 
+     *
      * @see com.sitewhere.spi.device.communication.ICommandDeliveryProvider#
      * deliverSystemCommand (com.sitewhere.spi.device.IDeviceNestingContext,
      * com.sitewhere.spi.device.IDeviceAssignment, java.lang.Object,
@@ -123,12 +183,310 @@ public class MqttCommandDeliveryProvider extends MqttLifecycleComponent
     @Override
     public void deliverSystemCommand(IDeviceNestingContext nested, IDeviceAssignment assignment, byte[] encoded,
 	    MqttParameters params) throws SiteWhereException {
+	LOGGER.debug("About to publish system message to topic: " + params.getSystemTopic());
+	send(new PendingPublish(assignment, null, params.getSystemTopic(), encoded));
+    }
+
+    /**
+     * Wait for room in the in-flight window, then start publishing. If no room
+     * becomes available before the delivery timeout, the delivery expires
+     * without being sent.
+     *
+     * @param publish
+     * @throws SiteWhereException
+     */
+    protected void send(PendingPublish publish) throws SiteWhereException {
+	if (scheduler == null) {
+	    throw new SiteWhereException("MQTT command delivery provider is not started.");
+	}
+	try {
+	    if (!inFlight.tryAcquire(getDeliveryTimeoutMs(), TimeUnit.MILLISECONDS)) {
+		LOGGER.warn("MQTT in-flight window stayed full. Command for '" + publish.getTopic() + "' expired.");
+		publishOutcome(CommandDeliveryOutcome.create(publish.getAssignment(), publish.getExecution(),
+			publish.getTopic(), CommandDeliveryStatus.Expired, "In-flight window stayed full."));
+		return;
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new SiteWhereException("Interrupted while waiting to publish command.", e);
+	}
+	pending.add(publish);
+	publish.setTimeout(scheduler.schedule(new Runnable() {
+
+	    @Override
+	    public void run() {
+		publish.expire();
+	    }
+	}, getDeliveryTimeoutMs(), TimeUnit.MILLISECONDS));
+	publish.attempt();
+    }
+
+    /**
+     * Reconnect to the broker if the shared connection has been lost.
+     *
+     * @throws SiteWhereException
+     */
+    protected synchronized void ensureConnected() throws SiteWhereException {
+	if ((connection != null) && connection.isConnected()) {
+	    return;
+	}
+	LOGGER.info("Reconnecting to MQTT broker at '" + getHostname() + ":" + getPort() + "'...");
+	if (connection != null) {
+	    try {
+		connection.kill().await(1, TimeUnit.SECONDS);
+	    } catch (Exception e) {
+		LOGGER.debug("Error killing lost MQTT connection.", e);
+	    }
+	}
+	connection = getConnection();
+	LOGGER.info("Reconnected to MQTT broker.");
+    }
+
+    /**
+     * Kill a connection with a publish that was never resolved, so that
+     * publishes stuck on it stop counting against the broker. The next attempt
+     * reconnects. Has no effect if the connection was already replaced.
+     *
+     * @param stalled
+     */
+    protected synchronized void killConnection(FutureConnection stalled) {
+	if ((stalled == null) || (stalled != connection)) {
+	    return;
+	}
+	LOGGER.warn("Killing MQTT connection with unacknowledged publishes.");
+	connection = null;
 	try {
-	    LOGGER.debug("About to publish system message to topic: " + params.getSystemTopic());
-	    connection.publish(params.getSystemTopic(), encoded, QoS.AT_LEAST_ONCE, false);
-	    LOGGER.debug("Command published.");
+	    stalled.kill().await(1, TimeUnit.SECONDS);
 	} catch (Exception e) {
-	    throw new SiteWhereException("Unable to publish command to MQTT topic.", e);
+	    LOGGER.debug("Error killing stalled MQTT connection.", e);
+	}
+    }
+
+    /**
+     * Publish a delivery outcome. Failures are logged rather than thrown since
+     * outcomes are usually published from MQTT callback threads.
+     *
+     * @param outcome
+     */
+    protected void publishOutcome(CommandDeliveryOutcome outcome) {
+	try {
+	    ((ICommandDeliveryTenantEngine) getTenantEngine()).getCommandDeliveryOutcomesProducer()
+		    .sendOutcome(outcome);
+	} catch (Throwable t) {
+	    LOGGER.error("Unable to publish command delivery outcome.", t);
+	}
+    }
+
+    public int getMaxInFlight() {
+	return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+	this.maxInFlight = maxInFlight;
+    }
+
+    public int getMaxAttempts() {
+	return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+	this.maxAttempts = maxAttempts;
+    }
+
+    public long getRetryBackoffMs() {
+	return retryBackoffMs;
+    }
+
+    public void setRetryBackoffMs(long retryBackoffMs) {
+	this.retryBackoffMs = retryBackoffMs;
+    }
+
+    public long getDeliveryTimeoutMs() {
+	return deliveryTimeoutMs;
+    }
+
+    public void setDeliveryTimeoutMs(long deliveryTimeoutMs) {
+	this.deliveryTimeoutMs = deliveryTimeoutMs;
+    }
+
+    /**
+     * Publish that holds an in-flight permit until the client resolves it or the
+     * connection it was sent on is killed. The outcome is published once, when
+     * the publish is acknowledged, fails after the last attempt or expires.
+     *
+     * @author Derek
+     */
+    protected class PendingPublish implements Callback<Void> {
+
+	/** Assignment command is delivered to */
+	private IDeviceAssignment assignment;
+
+	/** Command execution or null for system commands */
+	private IDeviceCommandExecution execution;
+
+	/** Topic to publish to */
+	private String topic;
+
+	/** Encoded command */
+	private byte[] payload;
+
+	/** Number of attempts so far */
+	private volatile int attempts;
+
+	/** Scheduled delivery timeout */
+	private volatile ScheduledFuture<?> timeout;
+
+	/** Indicates delivery has completed */
+	private AtomicBoolean completed = new AtomicBoolean();
+
+	/** Indicates in-flight permit has been released */
+	private AtomicBoolean released = new AtomicBoolean();
+
+	/** Connection of the attempt awaiting a result or null if none */
+	private volatile FutureConnection pendingOn;
+
+	public PendingPublish(IDeviceAssignment assignment, IDeviceCommandExecution execution, String topic,
+		byte[] payload) {
+	    this.assignment = assignment;
+	    this.execution = execution;
+	    this.topic = topic;
+	    this.payload = payload;
+	}
+
+	/**
+	 * Issue a publish attempt. Completion is handled by callbacks.
+	 */
+	public void attempt() {
+	    if (completed.get()) {
+		releasePermit();
+		return;
+	    }
+	    attempts++;
+	    try {
+		ensureConnected();
+		FutureConnection current = connection;
+		pendingOn = current;
+		current.publish(topic, payload, QoS.AT_LEAST_ONCE, false).then(this);
+	    } catch (Throwable t) {
+		onFailure(t);
+	    }
+	}
+
+	/*
+	 * @see org.fusesource.mqtt.client.Callback#onSuccess(java.lang.Object)
+	 */
+	@Override
+	public void onSuccess(Void value) {
+	    pendingOn = null;
+	    complete(CommandDeliveryStatus.Delivered, "Acknowledged by broker.");
+	    releasePermit();
+	}
+
+	/*
+	 * @see org.fusesource.mqtt.client.Callback#onFailure(java.lang.Throwable)
+	 */
+	@Override
+	public void onFailure(Throwable t) {
+	    pendingOn = null;
+	    if (completed.get()) {
+		releasePermit();
+		return;
+	    }
+	    if (attempts >= getMaxAttempts()) {
+		complete(CommandDeliveryStatus.Failed,
+			"Publish failed after " + attempts + " attempts: " + t.getMessage());
+		releasePermit();
+		return;
+	    }
+	    long delay = getRetryBackoffMs() << (attempts - 1);
+	    LOGGER.warn("Publish to '" + topic + "' failed (attempt " + attempts + "). Retrying in " + delay + "ms.");
+	    try {
+		scheduler.schedule(new Runnable() {
+
+		    @Override
+		    public void run() {
+			attempt();
+		    }
+		}, delay, TimeUnit.MILLISECONDS);
+	    } catch (Throwable e) {
+		complete(CommandDeliveryStatus.Failed, "Unable to schedule retry: " + e.getMessage());
+		releasePermit();
+	    }
+	}
+
+	/**
+	 * Called when the delivery timeout elapses. The outcome is published as
+	 * expired. If an attempt is still unresolved, its connection is killed
+	 * before the permit is released. Otherwise the permit is released now and
+	 * any scheduled retry does nothing.
+	 */
+	public void expire() {
+	    complete(CommandDeliveryStatus.Expired, "Not acknowledged within " + getDeliveryTimeoutMs() + "ms.");
+	    FutureConnection stalled = pendingOn;
+	    if (stalled != null) {
+		killConnection(stalled);
+	    }
+	    releasePermit();
+	}
+
+	/**
+	 * Publish outcome if not already completed. Does not release the permit.
+	 *
+	 * @param status
+	 * @param message
+	 */
+	public void complete(CommandDeliveryStatus status, String message) {
+	    if (!completed.compareAndSet(false, true)) {
+		return;
+	    }
+	    ScheduledFuture<?> current = timeout;
+	    if (current != null) {
+		current.cancel(false);
+	    }
+	    CommandDeliveryOutcome outcome = CommandDeliveryOutcome.create(assignment, execution, topic, status,
+		    message);
+	    outcome.setAttempts(attempts);
+	    if (LOGGER.isDebugEnabled()) {
+		LOGGER.debug("MQTT delivery to '" + topic + "' completed with " + status + ". " + message);
+	    }
+	    publishOutcome(outcome);
+	}
+
+	/**
+	 * Return the in-flight permit if still held.
+	 */
+	public void releasePermit() {
+	    if (released.compareAndSet(false, true)) {
+		pending.remove(this);
+		inFlight.release();
+	    }
+	}
+
+	public IDeviceAssignment getAssignment() {
+	    return assignment;
+	}
+
+	public IDeviceCommandExecution getExecution() {
+	    return execution;
+	}
+
+	public String getTopic() {
+	    return topic;
+	}
+
+	public void setTimeout(ScheduledFuture<?> timeout) {
+	    this.timeout = timeout;
+	    if (completed.get()) {
+		timeout.cancel(false);
+	    }
+	}
+    }
+
+    /** Used for naming MQTT delivery retry thread */
+    private class MqttDeliveryThreadFactory implements ThreadFactory {
+
+	public Thread newThread(Runnable r) {
+	    return new Thread(r, "MQTT Command Delivery Retries");
 	}
     }
-}
\ No newline at end of file
+}
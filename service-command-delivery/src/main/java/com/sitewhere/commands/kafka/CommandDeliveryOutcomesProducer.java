@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.commands.kafka;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sitewhere.commands.spi.ICommandDeliveryOutcome;
+import com.sitewhere.commands.spi.kafka.ICommandDeliveryOutcomesProducer;
+import com.sitewhere.common.MarshalUtils;
+import com.sitewhere.microservice.kafka.MicroserviceKafkaProducer;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.microservice.IMicroservice;
+
+/**
+ * Kafka producer that sends command delivery outcomes to a topic. Outcomes are
+ * keyed by assignment so that outcomes for an assignment stay in order.
+ * 
+ * @author Derek
+ */
+public class CommandDeliveryOutcomesProducer extends MicroserviceKafkaProducer
+	implements ICommandDeliveryOutcomesProducer {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    public CommandDeliveryOutcomesProducer(IMicroservice microservice) {
+	super(microservice);
+    }
+
+    /*
+     * @see com.sitewhere.commands.spi.kafka.ICommandDeliveryOutcomesProducer#
+     * sendOutcome(com.sitewhere.commands.spi.ICommandDeliveryOutcome)
+     */
+    @Override
+    public void sendOutcome(ICommandDeliveryOutcome outcome) throws SiteWhereException {
+	String key = (outcome.getDeviceAssignmentId() != null) ? outcome.getDeviceAssignmentId().toString() : null;
+	send(key, MarshalUtils.marshalJson(outcome));
+    }
+
+    /*
+     * @see com.sitewhere.spi.microservice.kafka.IMicroserviceKafkaProducer#
+     * getTargetTopicName()
+     */
+    @Override
+    public String getTargetTopicName() throws SiteWhereException {
+	return getMicroservice().getKafkaTopicNaming().getCommandDeliveryOutcomesTopic(getTenantEngine().getTenant());
+    }
+
+    /*
+     * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#getLogger()
+     */
+    @Override
+    public Logger getLogger() {
+	return LOGGER;
+    }
+}
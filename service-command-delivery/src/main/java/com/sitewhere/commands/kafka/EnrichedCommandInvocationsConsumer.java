@@ -9,6 +9,7 @@ package com.sitewhere.commands.kafka;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Properties;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -16,6 +17,7 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -35,7 +37,10 @@ import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 
 /**
  * Consumes command invocations from a well-known Kafka topic and makes them
- * available to the command destinations manager.
+ * available to the command destinations manager. Invocations are processed by
+ * a fixed pool of threads. When too many are pending, the consumer pauses its
+ * partitions rather than blocking the polling thread, so slow delivery does
+ * not cause the consumer to be removed from its group.
  * 
  * @author Derek
  */
@@ -54,9 +59,18 @@ public class EnrichedCommandInvocationsConsumer extends MicroserviceKafkaConsume
     /** Number of threads processing command invocations */
     private static final int CONCURRENT_EVENT_PROCESSING_THREADS = 5;
 
+    /** Number of pending invocations at which partitions are paused */
+    private static final int MAX_PENDING_INVOCATIONS = 100;
+
+    /** Max records per poll (bounds how far pending count can overshoot) */
+    private static final int MAX_POLL_RECORDS = 50;
+
     /** Executor */
     private ExecutorService executor;
 
+    /** Invocations handed to executor that have not finished processing */
+    private AtomicInteger pending = new AtomicInteger();
+
     public EnrichedCommandInvocationsConsumer(CommandDeliveryTenantEngine tenantEngine) {
 	super(tenantEngine.getMicroservice(), tenantEngine);
     }
@@ -100,8 +114,12 @@ public class EnrichedCommandInvocationsConsumer extends MicroserviceKafkaConsume
     @Override
     public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
 	super.start(monitor);
-	executor = Executors.newFixedThreadPool(CONCURRENT_EVENT_PROCESSING_THREADS,
-		new CommandInvocationProcessorThreadFactory());
+
+	// Shared consumer workers process records directly.
+	if (!isSharedMode()) {
+	    executor = Executors.newFixedThreadPool(CONCURRENT_EVENT_PROCESSING_THREADS,
+		    new CommandInvocationProcessorThreadFactory());
+	}
     }
 
     /*
@@ -130,7 +148,61 @@ public class EnrichedCommandInvocationsConsumer extends MicroserviceKafkaConsume
      */
     @Override
     public void received(String key, byte[] message) throws SiteWhereException {
-	executor.execute(new CommandInvocationProcessor(getTenantEngine(), message));
+	Runnable processor = createProcessor(message);
+	if (isSharedMode()) {
+	    processor.run();
+	    return;
+	}
+	pending.incrementAndGet();
+	executor.execute(new Runnable() {
+
+	    @Override
+	    public void run() {
+		try {
+		    processor.run();
+		} finally {
+		    pending.decrementAndGet();
+		}
+	    }
+	});
+    }
+
+    /*
+     * @see com.sitewhere.microservice.kafka.MicroserviceKafkaConsumer#canAccept()
+     */
+    @Override
+    protected boolean canAccept() {
+	return pending.get() < MAX_PENDING_INVOCATIONS;
+    }
+
+    /*
+     * @see com.sitewhere.microservice.kafka.MicroserviceKafkaConsumer#
+     * buildConfiguration()
+     */
+    @Override
+    protected Properties buildConfiguration() throws SiteWhereException {
+	Properties config = super.buildConfiguration();
+	config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, MAX_POLL_RECORDS);
+	return config;
+    }
+
+    /**
+     * Create processor that handles an encoded command invocation.
+     * 
+     * @param message
+     * @return
+     */
+    protected Runnable createProcessor(byte[] message) {
+	return new CommandInvocationProcessor(getTenantEngine(), message);
+    }
+
+    /**
+     * Get number of invocations waiting for or being processed.
+     * 
+     * @return
+     */
+    public int getPendingCount() {
+	return pending.get();
     }
 
     /*
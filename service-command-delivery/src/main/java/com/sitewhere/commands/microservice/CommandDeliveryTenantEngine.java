@@ -10,9 +10,13 @@ package com.sitewhere.commands.microservice;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.sitewhere.commands.kafka.CommandDeliveryOutcomesProducer;
 import com.sitewhere.commands.kafka.EnrichedCommandInvocationsConsumer;
+import com.sitewhere.commands.kafka.SystemCommandsConsumer;
 import com.sitewhere.commands.spi.ICommandDestinationsManager;
+import com.sitewhere.commands.spi.kafka.ICommandDeliveryOutcomesProducer;
 import com.sitewhere.commands.spi.kafka.IEnrichedCommandInvocationsConsumer;
+import com.sitewhere.commands.spi.kafka.ISystemCommandsConsumer;
 import com.sitewhere.commands.spi.microservice.ICommandDeliveryTenantEngine;
 import com.sitewhere.microservice.multitenant.MicroserviceTenantEngine;
 import com.sitewhere.server.lifecycle.CompositeLifecycleStep;
@@ -42,6 +46,12 @@ public class CommandDeliveryTenantEngine extends MicroserviceTenantEngine implem
     /** Kafka consumer for enriched command invocations */
     private IEnrichedCommandInvocationsConsumer enrichedCommandInvocationsConsumer;
 
+    /** Kafka consumer for system commands */
+    private ISystemCommandsConsumer systemCommandsConsumer;
+
+    /** Kafka producer for command delivery outcomes */
+    private ICommandDeliveryOutcomesProducer commandDeliveryOutcomesProducer;
+
     public CommandDeliveryTenantEngine(IMultitenantMicroservice<?> microservice, ITenant tenant) {
 	super(microservice, tenant);
     }
@@ -54,10 +64,21 @@ public class CommandDeliveryTenantEngine extends MicroserviceTenantEngine implem
     @Override
     public void tenantInitialize(ILifecycleProgressMonitor monitor) throws SiteWhereException {
 	this.enrichedCommandInvocationsConsumer = new EnrichedCommandInvocationsConsumer(this);
+	this.systemCommandsConsumer = new SystemCommandsConsumer(this);
+	this.commandDeliveryOutcomesProducer = new CommandDeliveryOutcomesProducer(getMicroservice());
 
 	// Load configured registration manager.
 	this.commandDestinationsManager = (ICommandDestinationsManager) getModuleContext()
 		.getBean(CommandDestinationsBeans.BEAN_COMMAND_DESTINATIONS_MANAGER);
+
+	// Create step that will initialize components.
+	ICompositeLifecycleStep init = new CompositeLifecycleStep("Initialize " + getComponentName());
+
+	// Initialize command delivery outcomes producer.
+	init.addInitializeStep(this, getCommandDeliveryOutcomesProducer(), true);
+
+	// Execute initialization steps.
+	init.execute(monitor);
     }
 
     /*
@@ -69,12 +90,18 @@ public class CommandDeliveryTenantEngine extends MicroserviceTenantEngine implem
 	// Create step that will start components.
 	ICompositeLifecycleStep start = new CompositeLifecycleStep("Start " + getComponentName());
 
+	// Start command delivery outcomes producer.
+	start.addStartStep(this, getCommandDeliveryOutcomesProducer(), true);
+
 	// Start command destinations manager.
 	start.addStartStep(this, getCommandDestinationsManager(), true);
 
 	// Start command invocations consumer.
 	start.addStartStep(this, getEnrichedCommandInvocationsConsumer(), true);
 
+	// Start system commands consumer.
+	start.addStartStep(this, getSystemCommandsConsumer(), true);
+
 	// Execute startup steps.
 	start.execute(monitor);
     }
@@ -100,9 +127,15 @@ public class CommandDeliveryTenantEngine extends MicroserviceTenantEngine implem
 	// Stop command invocations consumer.
 	stop.addStopStep(this, getEnrichedCommandInvocationsConsumer());
 
+	// Stop system commands consumer.
+	stop.addStopStep(this, getSystemCommandsConsumer());
+
 	// Stop command destinations manager.
 	stop.addStopStep(this, getCommandDestinationsManager());
 
+	// Stop command delivery outcomes producer.
+	stop.addStopStep(this, getCommandDeliveryOutcomesProducer());
+
 	// Execute shutdown steps.
 	stop.execute(monitor);
     }
@@ -134,6 +167,32 @@ public class CommandDeliveryTenantEngine extends MicroserviceTenantEngine implem
 	this.enrichedCommandInvocationsConsumer = enrichedCommandInvocationsConsumer;
     }
 
+    /*
+     * @see com.sitewhere.commands.spi.microservice.ICommandDeliveryTenantEngine#
+     * getSystemCommandsConsumer()
+     */
+    @Override
+    public ISystemCommandsConsumer getSystemCommandsConsumer() {
+	return systemCommandsConsumer;
+    }
+
+    public void setSystemCommandsConsumer(ISystemCommandsConsumer systemCommandsConsumer) {
+	this.systemCommandsConsumer = systemCommandsConsumer;
+    }
+
+    /*
+     * @see com.sitewhere.commands.spi.microservice.ICommandDeliveryTenantEngine#
+     * getCommandDeliveryOutcomesProducer()
+     */
+    @Override
+    public ICommandDeliveryOutcomesProducer getCommandDeliveryOutcomesProducer() {
+	return commandDeliveryOutcomesProducer;
+    }
+
+    public void setCommandDeliveryOutcomesProducer(ICommandDeliveryOutcomesProducer commandDeliveryOutcomesProducer) {
+	this.commandDeliveryOutcomesProducer = commandDeliveryOutcomesProducer;
+    }
+
     /*
      * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#getLogger()
      */
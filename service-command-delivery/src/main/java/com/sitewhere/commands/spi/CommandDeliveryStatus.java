@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.commands.spi;
+
+/**
+ * Enumerates possible outcomes of delivering a command to a device.
+ * 
+ * @author Derek
+ */
+public enum CommandDeliveryStatus {
+
+    /** Command was accepted by the device or transport */
+    Delivered,
+
+    /** Command could not be delivered */
+    Failed,
+
+    /** No answer was received before delivery timed out */
+    Expired;
+}
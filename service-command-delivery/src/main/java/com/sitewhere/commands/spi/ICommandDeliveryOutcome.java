@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.commands.spi;
+
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Result of delivering a command or system command to a device.
+ * 
+ * @author Derek
+ */
+public interface ICommandDeliveryOutcome {
+
+    /**
+     * Get id of command invocation event. Null for system commands.
+     * 
+     * @return
+     */
+    public String getInvocationId();
+
+    /**
+     * Get id of device assignment command was delivered to.
+     * 
+     * @return
+     */
+    public UUID getDeviceAssignmentId();
+
+    /**
+     * Indicates whether a system command was delivered.
+     * 
+     * @return
+     */
+    public boolean isSystemCommand();
+
+    /**
+     * Get destination the command was sent to (URI, topic, etc).
+     * 
+     * @return
+     */
+    public String getDestination();
+
+    /**
+     * Get delivery status.
+     * 
+     * @return
+     */
+    public CommandDeliveryStatus getStatus();
+
+    /**
+     * Get number of delivery attempts.
+     * 
+     * @return
+     */
+    public int getAttempts();
+
+    /**
+     * Get message with details of outcome.
+     * 
+     * @return
+     */
+    public String getMessage();
+
+    /**
+     * Get date outcome was determined.
+     * 
+     * @return
+     */
+    public Date getOutcomeDate();
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.commands.spi.kafka;
+
+import com.sitewhere.commands.spi.ICommandDeliveryOutcome;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.microservice.kafka.IMicroserviceKafkaProducer;
+
+/**
+ * Kafka producer that reports outcomes of command deliveries.
+ * 
+ * @author Derek
+ */
+public interface ICommandDeliveryOutcomesProducer extends IMicroserviceKafkaProducer {
+
+    /**
+     * Send a delivery outcome to the outcomes topic.
+     * 
+     * @param outcome
+     * @throws SiteWhereException
+     */
+    public void sendOutcome(ICommandDeliveryOutcome outcome) throws SiteWhereException;
+}
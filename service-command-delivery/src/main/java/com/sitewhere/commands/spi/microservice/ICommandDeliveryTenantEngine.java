@@ -8,7 +8,9 @@
 package com.sitewhere.commands.spi.microservice;
 
 import com.sitewhere.commands.spi.ICommandDestinationsManager;
+import com.sitewhere.commands.spi.kafka.ICommandDeliveryOutcomesProducer;
 import com.sitewhere.commands.spi.kafka.IEnrichedCommandInvocationsConsumer;
+import com.sitewhere.commands.spi.kafka.ISystemCommandsConsumer;
 import com.sitewhere.spi.microservice.multitenant.IMicroserviceTenantEngine;
 
 /**
@@ -32,4 +34,18 @@ public interface ICommandDeliveryTenantEngine extends IMicroserviceTenantEngine
      * @return
      */
     public IEnrichedCommandInvocationsConsumer getEnrichedCommandInvocationsConsumer();
+
+    /**
+     * Get Kafka consumer for system commands.
+     * 
+     * @return
+     */
+    public ISystemCommandsConsumer getSystemCommandsConsumer();
+
+    /**
+     * Get Kafka producer for command delivery outcomes.
+     * 
+     * @return
+     */
+    public ICommandDeliveryOutcomesProducer getCommandDeliveryOutcomesProducer();
 }
\ No newline at end of file
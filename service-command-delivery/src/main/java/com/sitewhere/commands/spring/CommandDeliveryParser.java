@@ -214,6 +214,26 @@ public class CommandDeliveryParser extends AbstractBeanDefinitionParser {
 	    mqtt.addPropertyValue("keyStorePassword", trustStorePassword.getValue());
 	}
 
+	Attr maxInFlight = element.getAttributeNode("maxInFlight");
+	if (maxInFlight != null) {
+	    mqtt.addPropertyValue("maxInFlight", maxInFlight.getValue());
+	}
+
+	Attr maxAttempts = element.getAttributeNode("maxAttempts");
+	if (maxAttempts != null) {
+	    mqtt.addPropertyValue("maxAttempts", maxAttempts.getValue());
+	}
+
+	Attr retryBackoffMs = element.getAttributeNode("retryBackoffMs");
+	if (retryBackoffMs != null) {
+	    mqtt.addPropertyValue("retryBackoffMs", retryBackoffMs.getValue());
+	}
+
+	Attr deliveryTimeoutMs = element.getAttributeNode("deliveryTimeoutMs");
+	if (deliveryTimeoutMs != null) {
+	    mqtt.addPropertyValue("deliveryTimeoutMs", deliveryTimeoutMs.getValue());
+	}
+
 	return mqtt.getBeanDefinition();
     }
 
@@ -249,14 +269,35 @@ public class CommandDeliveryParser extends AbstractBeanDefinitionParser {
     }
 
     /**
-     * Create MQTT command delivery provider from XML element.
+     * Create CoAP command delivery provider from XML element.
      * 
      * @param element
      * @return
      */
     protected AbstractBeanDefinition createCoapDeliveryProvider(Element element) {
-	BeanDefinitionBuilder mqtt = BeanDefinitionBuilder.rootBeanDefinition(CoapCommandDeliveryProvider.class);
-	return mqtt.getBeanDefinition();
+	BeanDefinitionBuilder coap = BeanDefinitionBuilder.rootBeanDefinition(CoapCommandDeliveryProvider.class);
+
+	Attr ackTimeoutMs = element.getAttributeNode("ackTimeoutMs");
+	if (ackTimeoutMs != null) {
+	    coap.addPropertyValue("ackTimeoutMs", ackTimeoutMs.getValue());
+	}
+
+	Attr maxRetransmit = element.getAttributeNode("maxRetransmit");
+	if (maxRetransmit != null) {
+	    coap.addPropertyValue("maxRetransmit", maxRetransmit.getValue());
+	}
+
+	Attr responseTimeoutMs = element.getAttributeNode("responseTimeoutMs");
+	if (responseTimeoutMs != null) {
+	    coap.addPropertyValue("responseTimeoutMs", responseTimeoutMs.getValue());
+	}
+
+	Attr maxOutstandingPerDestination = element.getAttributeNode("maxOutstandingPerDestination");
+	if (maxOutstandingPerDestination != null) {
+	    coap.addPropertyValue("maxOutstandingPerDestination", maxOutstandingPerDestination.getValue());
+	}
+
+	return coap.getBeanDefinition();
     }
 
     /**
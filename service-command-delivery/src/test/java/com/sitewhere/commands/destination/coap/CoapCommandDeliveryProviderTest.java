@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.commands.destination.coap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.californium.core.CoapResource;
+import org.eclipse.californium.core.CoapServer;
+import org.eclipse.californium.core.coap.CoAP.ResponseCode;
+import org.eclipse.californium.core.coap.EmptyMessage;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.coap.Response;
+import org.eclipse.californium.core.network.CoapEndpoint;
+import org.eclipse.californium.core.network.config.NetworkConfig;
+import org.eclipse.californium.core.network.interceptors.MessageInterceptor;
+import org.eclipse.californium.core.server.resources.CoapExchange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sitewhere.commands.CommandDeliveryOutcome;
+import com.sitewhere.commands.spi.CommandDeliveryStatus;
+
+public class CoapCommandDeliveryProviderTest {
+
+    /** Time allowed for all outcomes of a test to be published */
+    private static final long OUTCOME_WAIT_MS = 15 * 1000;
+
+    /** Resource commands are delivered to */
+    private static final String RESOURCE = "commands";
+
+    /** Delays responses from the device resource */
+    private ScheduledExecutorService responder;
+
+    /** Simulated device */
+    private CoapServer server;
+
+    /** Port simulated device listens on */
+    private int port;
+
+    /** Delay before device responds */
+    private volatile long responseDelayMs;
+
+    /** Number of requests being handled by device */
+    private AtomicInteger active = new AtomicInteger();
+
+    /** Max number of requests handled by device at once */
+    private AtomicInteger maxActive = new AtomicInteger();
+
+    /** Number of requests handled by device */
+    private AtomicInteger handled = new AtomicInteger();
+
+    /** Indicates whether the first transmission of each request is dropped */
+    private volatile boolean lossy;
+
+    /** Provider being tested */
+    private TestProvider provider;
+
+    @Before
+    public void setUp() throws Exception {
+	this.responder = Executors.newSingleThreadScheduledExecutor();
+	NetworkConfig config = new NetworkConfig();
+	CoapEndpoint endpoint = new CoapEndpoint(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), config);
+	endpoint.addInterceptor(new LossyInterceptor());
+	this.server = new CoapServer(config);
+	server.addEndpoint(endpoint);
+	server.add(new DeviceResource());
+	server.start();
+	this.port = endpoint.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+	if (provider != null) {
+	    provider.stop(null);
+	}
+	server.destroy();
+	responder.shutdownNow();
+    }
+
+    @Test
+    public void testQueuedRequestsSentAsSlotsFree() throws Exception {
+	responseDelayMs = 200;
+	startProvider(2, 100, 500, 4);
+	for (int i = 0; i < 6; i++) {
+	    provider.deliverSystemCommand(null, null, command(i), parameters(port));
+	}
+	List<CommandDeliveryOutcome> outcomes = awaitOutcomes(6);
+	assertEquals(6, count(outcomes, CommandDeliveryStatus.Delivered));
+	assertEquals(6, handled.get());
+	assertTrue("Device saw " + maxActive.get() + " concurrent requests.", maxActive.get() <= 2);
+	assertEquals(0, provider.getOutstandingDestinationCount());
+    }
+
+    @Test
+    public void testQueueOverflowFails() throws Exception {
+	responseDelayMs = 500;
+	startProvider(1, 2, 500, 4);
+	for (int i = 0; i < 5; i++) {
+	    provider.deliverSystemCommand(null, null, command(i), parameters(port));
+	}
+	List<CommandDeliveryOutcome> outcomes = awaitOutcomes(5);
+	assertEquals(CommandDeliveryStatus.Failed, outcomes.get(0).getStatus());
+	assertEquals(CommandDeliveryStatus.Failed, outcomes.get(1).getStatus());
+	assertEquals(3, count(outcomes, CommandDeliveryStatus.Delivered));
+	assertEquals(3, handled.get());
+    }
+
+    @Test
+    public void testLossyDestinationDelivered() throws Exception {
+	lossy = true;
+	startProvider(2, 100, 200, 4);
+	for (int i = 0; i < 4; i++) {
+	    provider.deliverSystemCommand(null, null, command(i), parameters(port));
+	}
+	List<CommandDeliveryOutcome> outcomes = awaitOutcomes(4);
+	assertEquals(4, count(outcomes, CommandDeliveryStatus.Delivered));
+	assertEquals(4, handled.get());
+    }
+
+    @Test
+    public void testUnreachableDestinationExpires() throws Exception {
+	int unused;
+	try (DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+	    unused = socket.getLocalPort();
+	}
+	startProvider(1, 100, 100, 1);
+	for (int i = 0; i < 3; i++) {
+	    provider.deliverSystemCommand(null, null, command(i), parameters(unused));
+	}
+	List<CommandDeliveryOutcome> outcomes = awaitOutcomes(3);
+	assertEquals(3, count(outcomes, CommandDeliveryStatus.Expired));
+	assertEquals(0, provider.getOutstandingDestinationCount());
+    }
+
+    @Test
+    public void testStopPublishesOutcomes() throws Exception {
+	responseDelayMs = 10 * 1000;
+	startProvider(1, 100, 500, 4);
+	for (int i = 0; i < 3; i++) {
+	    provider.deliverSystemCommand(null, null, command(i), parameters(port));
+	}
+	waitForHandled(1);
+	provider.stop(null);
+	List<CommandDeliveryOutcome> outcomes = awaitOutcomes(3);
+	assertEquals(3, count(outcomes, CommandDeliveryStatus.Failed));
+	assertNull(provider.outcomes.poll(500, TimeUnit.MILLISECONDS));
+	assertEquals(0, provider.getOutstandingDestinationCount());
+	provider = null;
+    }
+
+    /**
+     * Create and start provider under test.
+     *
+     * @param maxOutstanding
+     * @param maxQueued
+     * @param ackTimeoutMs
+     * @param maxRetransmit
+     * @throws Exception
+     */
+    protected void startProvider(int maxOutstanding, int maxQueued, int ackTimeoutMs, int maxRetransmit)
+	    throws Exception {
+	this.provider = new TestProvider();
+	provider.setMaxOutstandingPerDestination(maxOutstanding);
+	provider.setMaxQueuedPerDestination(maxQueued);
+	provider.setAckTimeoutMs(ackTimeoutMs);
+	provider.setMaxRetransmit(maxRetransmit);
+	provider.setResponseTimeoutMs(OUTCOME_WAIT_MS);
+	provider.start(null);
+    }
+
+    /**
+     * Wait for a number of outcomes to be published.
+     *
+     * @param expected
+     * @return
+     * @throws InterruptedException
+     */
+    protected List<CommandDeliveryOutcome> awaitOutcomes(int expected) throws InterruptedException {
+	List<CommandDeliveryOutcome> outcomes = new ArrayList<CommandDeliveryOutcome>();
+	long deadline = System.currentTimeMillis() + OUTCOME_WAIT_MS;
+	while (outcomes.size() < expected) {
+	    CommandDeliveryOutcome outcome = provider.outcomes.poll(deadline - System.currentTimeMillis(),
+		    TimeUnit.MILLISECONDS);
+	    assertNotNull("Only " + outcomes.size() + " of " + expected + " outcomes published.", outcome);
+	    outcomes.add(outcome);
+	}
+	return outcomes;
+    }
+
+    /**
+     * Wait until device has started handling a number of requests.
+     *
+     * @param expected
+     * @throws InterruptedException
+     */
+    protected void waitForHandled(int expected) throws InterruptedException {
+	long deadline = System.currentTimeMillis() + OUTCOME_WAIT_MS;
+	while ((handled.get() < expected) && (System.currentTimeMillis() < deadline)) {
+	    Thread.sleep(20);
+	}
+	assertEquals(expected, handled.get());
+    }
+
+    /**
+     * Count outcomes with a given status.
+     *
+     * @param outcomes
+     * @param status
+     * @return
+     */
+    protected static int count(List<CommandDeliveryOutcome> outcomes, CommandDeliveryStatus status) {
+	int count = 0;
+	for (CommandDeliveryOutcome outcome : outcomes) {
+	    if (outcome.getStatus() == status) {
+		count++;
+	    }
+	}
+	return count;
+    }
+
+    /**
+     * Create parameters for delivering to the simulated device.
+     *
+     * @param port
+     * @return
+     */
+    protected static CoapParameters parameters(int port) {
+	CoapParameters parameters = new CoapParameters();
+	parameters.setHostname("127.0.0.1");
+	parameters.setPort(port);
+	parameters.setUrl(RESOURCE);
+	parameters.setMethod("post");
+	return parameters;
+    }
+
+    /**
+     * Create encoded command payload.
+     *
+     * @param index
+     * @return
+     */
+    protected static byte[] command(int index) {
+	return ("{\"command\":" + index + "}").getBytes();
+    }
+
+    /**
+     * Provider that records outcomes instead of sending them to Kafka.
+     *
+     * @author Derek
+     */
+    private static class TestProvider extends CoapCommandDeliveryProvider {
+
+	/** Published outcomes */
+	private BlockingQueue<CommandDeliveryOutcome> outcomes = new LinkedBlockingQueue<CommandDeliveryOutcome>();
+
+	/*
+	 * @see com.sitewhere.commands.destination.coap.CoapCommandDeliveryProvider#
+	 * publishOutcome(com.sitewhere.commands.CommandDeliveryOutcome)
+	 */
+	@Override
+	protected void publishOutcome(CommandDeliveryOutcome outcome) {
+	    outcomes.add(outcome);
+	}
+    }
+
+    /**
+     * Device resource that acknowledges requests right away and responds after
+     * the configured delay.
+     *
+     * @author Derek
+     */
+    private class DeviceResource extends CoapResource {
+
+	public DeviceResource() {
+	    super(RESOURCE);
+	}
+
+	/*
+	 * @see org.eclipse.californium.core.CoapResource#handlePOST(org.eclipse.
+	 * californium.core.server.resources.CoapExchange)
+	 */
+	@Override
+	public void handlePOST(CoapExchange exchange) {
+	    handled.incrementAndGet();
+	    int current = active.incrementAndGet();
+	    maxActive.accumulateAndGet(current, Math::max);
+	    if (responseDelayMs <= 0) {
+		active.decrementAndGet();
+		exchange.respond(ResponseCode.CHANGED);
+		return;
+	    }
+	    exchange.accept();
+	    responder.schedule(new Runnable() {
+
+		@Override
+		public void run() {
+		    active.decrementAndGet();
+		    exchange.respond(ResponseCode.CHANGED);
+		}
+	    }, responseDelayMs, TimeUnit.MILLISECONDS);
+	}
+    }
+
+    /**
+     * Drops the first transmission of each request when the device is lossy so
+     * that requests are only handled after a retransmission.
+     *
+     * @author Derek
+     */
+    private class LossyInterceptor implements MessageInterceptor {
+
+	/** Message ids of requests that have been dropped once */
+	private Set<Integer> dropped = ConcurrentHashMap.newKeySet();
+
+	@Override
+	public void receiveRequest(Request request) {
+	    if (lossy && dropped.add(request.getMID())) {
+		request.setCanceled(true);
+	    }
+	}
+
+	@Override
+	public void sendRequest(Request request) {
+	}
+
+	@Override
+	public void sendResponse(Response response) {
+	}
+
+	@Override
+	public void sendEmptyMessage(EmptyMessage message) {
+	}
+
+	@Override
+	public void receiveResponse(Response response) {
+	}
+
+	@Override
+	public void receiveEmptyMessage(EmptyMessage message) {
+	}
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.commands.kafka;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.zookeeper.server.NIOServerCnxnFactory;
+import org.apache.zookeeper.server.ServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sitewhere.commands.microservice.CommandDeliveryTenantEngine;
+import com.sitewhere.microservice.instance.InstanceSettings;
+import com.sitewhere.rest.model.tenant.Tenant;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.microservice.multitenant.IMultitenantMicroservice;
+
+import kafka.server.KafkaServerStartable;
+
+/**
+ * Runs {@link EnrichedCommandInvocationsConsumer} against an embedded broker
+ * with processing that takes much longer in total than the max poll interval.
+ * The consumer must keep polling (with its partitions paused) so that it stays
+ * in the group and processes every record exactly once.
+ *
+ * @author Derek
+ */
+public class EnrichedCommandInvocationsConsumerTest {
+
+    /** Topic used for test */
+    private static final String TOPIC = "test-enriched-command-invocations";
+
+    /** Number of records produced */
+    private static final int RECORD_COUNT = 400;
+
+    /** Time taken to process each record */
+    private static final long PROCESSING_TIME_MS = 50;
+
+    /** Max poll interval for consumer (well under total processing time) */
+    private static final int MAX_POLL_INTERVAL_MS = 2000;
+
+    /** Embedded ZooKeeper */
+    private static ServerCnxnFactory zookeeper;
+
+    /** Embedded Kafka broker */
+    private static KafkaServerStartable kafka;
+
+    /** Broker address */
+    private static String bootstrapServers;
+
+    @BeforeClass
+    public static void startBroker() throws Exception {
+	File zkDir = Files.createTempDirectory("zookeeper").toFile();
+	zookeeper = NIOServerCnxnFactory.createFactory(new InetSocketAddress("localhost", 0), 100);
+	zookeeper.startup(new ZooKeeperServer(zkDir, zkDir, 500));
+
+	int port;
+	try (ServerSocket socket = new ServerSocket(0)) {
+	    port = socket.getLocalPort();
+	}
+	bootstrapServers = "localhost:" + port;
+	Properties props = new Properties();
+	props.put("broker.id", "0");
+	props.put("zookeeper.connect", "localhost:" + zookeeper.getLocalPort());
+	props.put("listeners", "PLAINTEXT://" + bootstrapServers);
+	props.put("log.dirs", Files.createTempDirectory("kafka").toFile().getAbsolutePath());
+	props.put("num.partitions", "1");
+	props.put("offsets.topic.replication.factor", "1");
+	props.put("offsets.topic.num.partitions", "1");
+	props.put("group.initial.rebalance.delay.ms", "0");
+	props.put("group.min.session.timeout.ms", "1000");
+	kafka = KafkaServerStartable.fromProps(props);
+	kafka.startup();
+    }
+
+    @AfterClass
+    public static void stopBroker() {
+	if (kafka != null) {
+	    kafka.shutdown();
+	    kafka.awaitShutdown();
+	}
+	if (zookeeper != null) {
+	    zookeeper.shutdown();
+	}
+    }
+
+    @Test
+    public void testSlowProcessingKeepsConsumerInGroup() throws Exception {
+	Properties producerConfig = new Properties();
+	producerConfig.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+	producerConfig.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+	producerConfig.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+	try (KafkaProducer<String, byte[]> producer = new KafkaProducer<>(producerConfig)) {
+	    for (int i = 0; i < RECORD_COUNT; i++) {
+		producer.send(new ProducerRecord<String, byte[]>(TOPIC, String.valueOf(i), String.valueOf(i).getBytes()))
+			.get();
+	    }
+	}
+
+	Set<String> processed = ConcurrentHashMap.newKeySet();
+	AtomicInteger duplicates = new AtomicInteger();
+	AtomicInteger maxPending = new AtomicInteger();
+	TestConsumer consumer = new TestConsumer(processed, duplicates, maxPending);
+	consumer.start(null);
+	try {
+	    long deadline = System.currentTimeMillis() + 60000;
+	    while ((processed.size() < RECORD_COUNT) && (System.currentTimeMillis() < deadline)) {
+		Thread.sleep(50);
+	    }
+	    // Allow the last offsets to be committed.
+	    Thread.sleep(500);
+	} finally {
+	    consumer.stop(null);
+	}
+
+	assertEquals(RECORD_COUNT, processed.size());
+	assertEquals(0, duplicates.get());
+	assertTrue("Pending invocations reached " + maxPending.get(), maxPending.get() <= 150);
+	OffsetAndMetadata committed = getCommittedOffset(consumer.getConsumerGroupId());
+	assertNotNull(committed);
+	assertEquals(RECORD_COUNT, committed.offset());
+    }
+
+    /**
+     * Read offset committed by a consumer group.
+     *
+     * @param groupId
+     * @return
+     */
+    protected OffsetAndMetadata getCommittedOffset(String groupId) {
+	Properties config = new Properties();
+	config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+	config.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+	config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+	config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+	try (KafkaConsumer<String, byte[]> reader = new KafkaConsumer<>(config)) {
+	    return reader.committed(new TopicPartition(TOPIC, 0));
+	}
+    }
+
+    /**
+     * Create microservice that only provides instance settings.
+     *
+     * @return
+     */
+    protected static IMultitenantMicroservice<?> createMicroservice() {
+	InstanceSettings settings = new InstanceSettings();
+	settings.setKafkaBootstrapServers(bootstrapServers);
+	return (IMultitenantMicroservice<?>) Proxy.newProxyInstance(
+		EnrichedCommandInvocationsConsumerTest.class.getClassLoader(),
+		new Class<?>[] { IMultitenantMicroservice.class }, (proxy, method, args) -> {
+		    if ("getInstanceSettings".equals(method.getName())) {
+			return settings;
+		    }
+		    if ("toString".equals(method.getName())) {
+			return "Test microservice";
+		    }
+		    if ("hashCode".equals(method.getName())) {
+			return System.identityHashCode(proxy);
+		    }
+		    if ("equals".equals(method.getName())) {
+			return proxy == args[0];
+		    }
+		    return null;
+		});
+    }
+
+    /**
+     * Consumer reading from the test topic with processing replaced by a delay.
+     *
+     * @author Derek
+     */
+    private static class TestConsumer extends EnrichedCommandInvocationsConsumer {
+
+	/** Keys of processed records */
+	private Set<String> processed;
+
+	/** Number of records processed more than once */
+	private AtomicInteger duplicates;
+
+	/** Largest pending count seen */
+	private AtomicInteger maxPending;
+
+	public TestConsumer(Set<String> processed, AtomicInteger duplicates, AtomicInteger maxPending) {
+	    super(createTenantEngine());
+	    this.processed = processed;
+	    this.duplicates = duplicates;
+	    this.maxPending = maxPending;
+	}
+
+	/**
+	 * Create tenant engine used to construct the consumer.
+	 *
+	 * @return
+	 */
+	protected static CommandDeliveryTenantEngine createTenantEngine() {
+	    Tenant tenant = new Tenant();
+	    tenant.setId("test");
+	    return new CommandDeliveryTenantEngine(createMicroservice(), tenant);
+	}
+
+	/*
+	 * @see com.sitewhere.commands.kafka.EnrichedCommandInvocationsConsumer#
+	 * getConsumerGroupId()
+	 */
+	@Override
+	public String getConsumerGroupId() throws SiteWhereException {
+	    return "test-enriched-command-invocations-group";
+	}
+
+	/*
+	 * @see com.sitewhere.commands.kafka.EnrichedCommandInvocationsConsumer#
+	 * getSourceTopicNames()
+	 */
+	@Override
+	public List<String> getSourceTopicNames() throws SiteWhereException {
+	    return Collections.singletonList(TOPIC);
+	}
+
+	/*
+	 * @see com.sitewhere.commands.kafka.EnrichedCommandInvocationsConsumer#
+	 * buildConfiguration()
+	 */
+	@Override
+	protected Properties buildConfiguration() throws SiteWhereException {
+	    Properties config = super.buildConfiguration();
+	    config.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+	    config.put(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, MAX_POLL_INTERVAL_MS);
+	    config.put(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, MAX_POLL_INTERVAL_MS);
+	    config.put(ConsumerConfig.HEARTBEAT_INTERVAL_MS_CONFIG, 500);
+	    return config;
+	}
+
+	/*
+	 * @see com.sitewhere.commands.kafka.EnrichedCommandInvocationsConsumer#
+	 * createProcessor(byte[])
+	 */
+	@Override
+	protected Runnable createProcessor(byte[] message) {
+	    maxPending.accumulateAndGet(getPendingCount() + 1, Math::max);
+	    String key = new String(message);
+	    return new Runnable() {
+
+		@Override
+		public void run() {
+		    try {
+			TimeUnit.MILLISECONDS.sleep(PROCESSING_TIME_MS);
+		    } catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		    }
+		    if (!processed.add(key)) {
+			duplicates.incrementAndGet();
+		    }
+		}
+	    };
+	}
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.grpc;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sitewhere.grpc.client.GrpcUtils;
+import com.sitewhere.grpc.model.converter.DeviceModelConverter;
+import com.sitewhere.grpc.service.DeviceManagementGrpc;
+import com.sitewhere.grpc.service.GCreateDevicesRequest;
+import com.sitewhere.grpc.service.GCreateDevicesResponse;
+import com.sitewhere.rest.model.device.DeviceBulkCreateResponse;
+import com.sitewhere.spi.device.IDeviceBulkCreateResponse;
+import com.sitewhere.spi.device.IDeviceManagement;
+import com.sitewhere.spi.device.request.IDeviceBulkCreateRequest;
+
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Handles the inbound side of a bulk device create stream. Each message is a
+ * batch that is persisted as it arrives so the client never has to hold the
+ * full device list in a single request. Results for all batches are merged,
+ * with error indexes relative to the start of the stream, and returned once
+ * the client completes the stream.
+ *
+ * @author Derek
+ */
+public class DeviceBulkCreateStreamObserver implements StreamObserver<GCreateDevicesRequest> {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Device management persistence */
+    private IDeviceManagement deviceManagement;
+
+    /** Observer used to send final response */
+    private StreamObserver<GCreateDevicesResponse> responseObserver;
+
+    /** Merged results for all batches */
+    private DeviceBulkCreateResponse results = new DeviceBulkCreateResponse();
+
+    /** Number of rows received so far */
+    private int offset;
+
+    /** Indicates stream was terminated due to an error */
+    private boolean failed;
+
+    public DeviceBulkCreateStreamObserver(IDeviceManagement deviceManagement,
+	    StreamObserver<GCreateDevicesResponse> responseObserver) {
+	this.deviceManagement = deviceManagement;
+	this.responseObserver = responseObserver;
+    }
+
+    /*
+     * @see io.grpc.stub.StreamObserver#onNext(java.lang.Object)
+     */
+    @Override
+    public void onNext(GCreateDevicesRequest request) {
+	if (failed) {
+	    return;
+	}
+	try {
+	    IDeviceBulkCreateRequest batch = DeviceModelConverter.asApiDeviceBulkCreateRequest(request.getRequest());
+	    IDeviceBulkCreateResponse response = getDeviceManagement().createDevices(batch);
+	    results.merge(response, offset);
+	    offset += batch.getDevices().size();
+	    LOGGER.debug("Processed bulk device batch. " + offset + " rows received so far.");
+	} catch (Throwable e) {
+	    failed = true;
+	    GrpcUtils.handleServerMethodException(DeviceManagementGrpc.METHOD_CREATE_DEVICES, e, responseObserver);
+	}
+    }
+
+    /*
+     * @see io.grpc.stub.StreamObserver#onError(java.lang.Throwable)
+     */
+    @Override
+    public void onError(Throwable t) {
+	LOGGER.warn("Bulk device create stream terminated by client after " + offset + " rows.", t);
+    }
+
+    /*
+     * @see io.grpc.stub.StreamObserver#onCompleted()
+     */
+    @Override
+    public void onCompleted() {
+	if (failed) {
+	    return;
+	}
+	try {
+	    GCreateDevicesResponse.Builder response = GCreateDevicesResponse.newBuilder();
+	    response.setResponse(DeviceModelConverter.asGrpcDeviceBulkCreateResponse(results));
+	    responseObserver.onNext(response.build());
+	    responseObserver.onCompleted();
+	} catch (Throwable e) {
+	    GrpcUtils.handleServerMethodException(DeviceManagementGrpc.METHOD_CREATE_DEVICES, e, responseObserver);
+	}
+    }
+
+    public IDeviceManagement getDeviceManagement() {
+	return deviceManagement;
+    }
+
+    public void setDeviceManagement(IDeviceManagement deviceManagement) {
+	this.deviceManagement = deviceManagement;
+    }
+}
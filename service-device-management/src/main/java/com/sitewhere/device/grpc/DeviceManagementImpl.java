@@ -526,6 +526,18 @@ public class DeviceManagementImpl extends DeviceManagementGrpc.DeviceManagementI
 	}
     }
 
+    /*
+     * @see
+     * com.sitewhere.grpc.service.DeviceManagementGrpc.DeviceManagementImplBase#
+     * createDevices(io.grpc.stub.StreamObserver)
+     */
+    @Override
+    public StreamObserver<GCreateDevicesRequest> createDevices(
+	    StreamObserver<GCreateDevicesResponse> responseObserver) {
+	GrpcUtils.logServerMethodEntry(DeviceManagementGrpc.METHOD_CREATE_DEVICES);
+	return new DeviceBulkCreateStreamObserver(getDeviceManagement(), responseObserver);
+    }
+
     /*
      * @see
      * com.sitewhere.grpc.service.DeviceManagementGrpc.DeviceManagementImplBase#
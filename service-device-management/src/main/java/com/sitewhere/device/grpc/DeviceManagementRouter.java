@@ -275,6 +275,17 @@ public class DeviceManagementRouter extends DeviceManagementGrpc.DeviceManagemen
 	getTenantImplementation().createDevice(request, responseObserver);
     }
 
+    /*
+     * @see
+     * com.sitewhere.grpc.service.DeviceManagementGrpc.DeviceManagementImplBase#
+     * createDevices(io.grpc.stub.StreamObserver)
+     */
+    @Override
+    public StreamObserver<GCreateDevicesRequest> createDevices(
+	    StreamObserver<GCreateDevicesResponse> responseObserver) {
+	return getTenantImplementation().createDevices(responseObserver);
+    }
+
     /*
      * @see
      * com.sitewhere.grpc.service.DeviceManagementGrpc.DeviceManagementImplBase#
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.persistence.hbase;
+
+/**
+ * Indicates which device property a secondary index row is keyed by.
+ * 
+ * @author Derek
+ */
+public enum DeviceIndexType {
+
+    /** Devices by device type */
+    DeviceType((byte) 0x00),
+
+    /** Devices by site */
+    Site((byte) 0x01),
+
+    /** Devices without a current assignment */
+    Unassigned((byte) 0x02);
+
+    /** Type indicator */
+    private byte type;
+
+    /**
+     * Create a unique id type with the given byte value.
+     * 
+     * @param type
+     */
+    private DeviceIndexType(byte type) {
+	this.type = type;
+    }
+
+    /**
+     * Get the record type indicator.
+     * 
+     * @return
+     */
+    public byte getType() {
+	return type;
+    }
+}
\ No newline at end of file
@@ -24,7 +24,10 @@ public enum DeviceRecordType {
     DeviceGroup((byte) 0x02),
 
     /** Batch operation record */
-    BatchOperation((byte) 0x03);
+    BatchOperation((byte) 0x03),
+
+    /** Device secondary index record */
+    DeviceIndex((byte) 0x04);
 
     /** Type indicator */
     private byte type;
@@ -12,6 +12,7 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Get;
@@ -20,6 +21,10 @@ import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -28,8 +33,10 @@ import com.sitewhere.device.persistence.DeviceManagementPersistence;
 import com.sitewhere.hbase.IHBaseContext;
 import com.sitewhere.hbase.ISiteWhereHBase;
 import com.sitewhere.hbase.common.HBaseUtils;
+import com.sitewhere.hbase.common.ScanPageWindow;
 import com.sitewhere.hbase.encoder.PayloadMarshalerResolver;
 import com.sitewhere.rest.model.device.Device;
+import com.sitewhere.rest.model.device.Site;
 import com.sitewhere.rest.model.search.Pager;
 import com.sitewhere.rest.model.search.SearchResults;
 import com.sitewhere.spi.SiteWhereException;
@@ -65,6 +72,9 @@ public class HBaseDevice {
     /** Column qualifier for current device assignment */
     public static final byte[] CURRENT_ASSIGNMENT = "assn".getBytes();
 
+    /** Value of deleted marker qualifier */
+    public static final byte[] DELETED_MARKER = { (byte) 0x01 };
+
     /**
      * Create a new device.
      * 
@@ -111,86 +121,347 @@ public class HBaseDevice {
     }
 
     /**
-     * List devices that meet the given criteria.
+     * List devices that meet the given criteria. The scan stops once the
+     * requested page has been filled, so the total is the number of matches
+     * found up to that point. Until index rows have been built for existing
+     * devices, primary device rows are scanned instead.
      * 
      * @param context
      * @param includeDeleted
      * @param criteria
+     * @param indexed
      * @return
      * @throws SiteWhereException
      */
     public static SearchResults<IDevice> listDevices(IHBaseContext context, boolean includeDeleted,
-	    IDeviceSearchCriteria criteria) throws SiteWhereException {
-	Pager<IDevice> matches = getFilteredDevices(context, includeDeleted, criteria);
-	return new SearchResults<IDevice>(matches.getResults(), matches.getTotal());
+	    IDeviceSearchCriteria criteria, boolean indexed) throws SiteWhereException {
+	// Resolve tokens to the ids stored with each device.
+	UUID deviceTypeId = null;
+	if (criteria.getDeviceTypeToken() != null) {
+	    deviceTypeId = HBaseDeviceType.assertDeviceType(context, criteria.getDeviceTypeToken()).getId();
+	}
+	UUID siteId = null;
+	if (criteria.getSiteToken() != null) {
+	    Site site = HBaseSite.getSiteByToken(context, criteria.getSiteToken());
+	    if (site == null) {
+		throw new SiteWhereSystemException(ErrorCode.InvalidSiteToken, ErrorLevel.ERROR);
+	    }
+	    siteId = site.getId();
+	}
+
+	Table devices = null;
+	try {
+	    devices = getDeviceTableInterface(context);
+	    ScanPageWindow window = new ScanPageWindow(criteria);
+	    List<IDevice> results;
+	    if ((criteria.getHardwareIds() != null) && (!criteria.getHardwareIds().isEmpty())) {
+		results = getDeviceRows(context, devices, window, criteria.getHardwareIds(), includeDeleted,
+			deviceTypeId, siteId, criteria.isExcludeAssigned());
+	    } else if (includeDeleted || !indexed) {
+		results = scanDeviceRows(devices, window, includeDeleted, deviceTypeId, siteId,
+			criteria.isExcludeAssigned(), indexed);
+	    } else if (deviceTypeId != null) {
+		byte[] prefix = HBaseDeviceIndex.getIndexPrefix(DeviceIndexType.DeviceType, deviceTypeId);
+		results = scanDeviceIndex(devices, window, prefix, null, siteId, criteria.isExcludeAssigned());
+	    } else if (siteId != null) {
+		byte[] prefix = HBaseDeviceIndex.getIndexPrefix(DeviceIndexType.Site, siteId);
+		results = scanDeviceIndex(devices, window, prefix, null, null, criteria.isExcludeAssigned());
+	    } else if (criteria.isExcludeAssigned()) {
+		byte[] prefix = HBaseDeviceIndex.getIndexPrefix(DeviceIndexType.Unassigned, null);
+		results = scanDeviceIndex(devices, window, prefix, null, null, false);
+	    } else {
+		results = scanDeviceRows(devices, window, false, null, null, false, true);
+	    }
+	    return new SearchResults<IDevice>(results, window.getMatched());
+	} finally {
+	    HBaseUtils.closeCleanly(devices);
+	}
     }
 
     /**
-     * Get a list of devices filtered with certain criteria.
+     * Load primary rows for a list of hardware ids with a single batched get and
+     * check them against the remaining conditions.
      * 
      * @param context
+     * @param devices
+     * @param window
+     * @param hardwareIds
      * @param includeDeleted
-     * @param criteria
+     * @param deviceTypeId
+     * @param siteId
+     * @param excludeAssigned
      * @return
      * @throws SiteWhereException
      */
-    protected static Pager<IDevice> getFilteredDevices(IHBaseContext context, boolean includeDeleted,
-	    IDeviceSearchCriteria criteria) throws SiteWhereException {
-	Table devices = null;
-	ResultScanner scanner = null;
+    protected static List<IDevice> getDeviceRows(IHBaseContext context, Table devices, ScanPageWindow window,
+	    List<String> hardwareIds, boolean includeDeleted, UUID deviceTypeId, UUID siteId, boolean excludeAssigned)
+	    throws SiteWhereException {
+	List<Get> batch = new ArrayList<Get>();
+	for (String hardwareId : hardwareIds) {
+	    Long deviceId = context.getDeviceIdManager().getDeviceKeys().getValue(hardwareId);
+	    if (deviceId != null) {
+		Get get = new Get(getDeviceRowKey(deviceId));
+		HBaseUtils.addPayloadFields(get);
+		HBaseDeviceIndex.addIndexedColumns(get);
+		batch.add(get);
+	    }
+	}
+	List<IDevice> results = new ArrayList<IDevice>();
+	if (batch.isEmpty()) {
+	    return results;
+	}
+	try {
+	    for (Result row : devices.get(batch)) {
+		if (row.isEmpty()) {
+		    continue;
+		}
+		if (!includeDeleted && row.containsColumn(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.DELETED)) {
+		    continue;
+		}
+		if (!isMatch(row, deviceTypeId, siteId, excludeAssigned) || !window.accept()) {
+		    continue;
+		}
+		IDevice device = decodeDevice(row);
+		if (device != null) {
+		    results.add(device);
+		}
+		if (window.isFilled()) {
+		    break;
+		}
+	    }
+	    return results;
+	} catch (IOException e) {
+	    throw new SiteWhereException("Error loading device rows by hardware id.", e);
+	}
+    }
 
+    /**
+     * Walk the rows of a device index. Conditions not answered by the index are
+     * checked against the indexed columns of the primary row, so payloads are
+     * only decoded for devices in the requested page.
+     * 
+     * @param devices
+     * @param window
+     * @param indexPrefix
+     * @param deviceTypeId
+     * @param siteId
+     * @param excludeAssigned
+     * @return
+     * @throws SiteWhereException
+     */
+    protected static List<IDevice> scanDeviceIndex(Table devices, ScanPageWindow window, byte[] indexPrefix,
+	    UUID deviceTypeId, UUID siteId, boolean excludeAssigned) throws SiteWhereException {
+	boolean exact = (deviceTypeId == null) && (siteId == null) && !excludeAssigned;
+	List<IDevice> results = new ArrayList<IDevice>();
+	ResultScanner scanner = null;
 	try {
-	    devices = getDeviceTableInterface(context);
 	    Scan scan = new Scan();
-	    scan.setStartRow(new byte[] { DeviceRecordType.Device.getType() });
-	    scan.setStopRow(new byte[] { DeviceRecordType.DeviceSpecification.getType() });
+	    scan.setRowPrefixFilter(indexPrefix);
+	    scan.setFilter(new KeyOnlyFilter());
+	    window.configure(scan);
 	    scanner = devices.getScanner(scan);
 
-	    Pager<IDevice> pager = new Pager<IDevice>(criteria);
+	    List<Get> batch = new ArrayList<Get>();
 	    for (Result result : scanner) {
-		boolean shouldAdd = true;
-		byte[] payload = result.getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD);
-		byte[] deleted = result.getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.DELETED);
-		byte[] currAssn = result.getValue(ISiteWhereHBase.FAMILY_ID, CURRENT_ASSIGNMENT);
-
-		if ((deleted != null) && (!includeDeleted)) {
-		    shouldAdd = false;
+		byte[] primary = HBaseDeviceIndex.getDeviceRowKey(result.getRow());
+		if (exact) {
+		    // Index row alone decides the match.
+		    if (window.accept()) {
+			Get get = new Get(primary);
+			HBaseUtils.addPayloadFields(get);
+			batch.add(get);
+		    }
+		} else {
+		    Get get = new Get(primary);
+		    HBaseUtils.addPayloadFields(get);
+		    HBaseDeviceIndex.addIndexedColumns(get);
+		    batch.add(get);
+		}
+		if (batch.size() >= scan.getCaching()) {
+		    processDeviceRows(devices.get(batch), window, exact, deviceTypeId, siteId, excludeAssigned,
+			    results);
+		    batch.clear();
 		}
-		if ((currAssn != null) && (criteria.isExcludeAssigned())) {
-		    shouldAdd = false;
+		if (window.isFilled()) {
+		    break;
 		}
+	    }
+	    if (!batch.isEmpty()) {
+		processDeviceRows(devices.get(batch), window, exact, deviceTypeId, siteId, excludeAssigned,
+			results);
+	    }
+	    return results;
+	} catch (IOException e) {
+	    throw new SiteWhereException("Error scanning device index rows.", e);
+	} finally {
+	    if (scanner != null) {
+		scanner.close();
+	    }
+	}
+    }
 
-		if ((shouldAdd) && (payload != null)) {
-		    Device device = context.getPayloadMarshaler().decodeDevice(payload);
+    /**
+     * Check rows loaded for index matches and decode those in the page.
+     * 
+     * @param rows
+     * @param window
+     * @param accepted
+     * @param deviceTypeId
+     * @param siteId
+     * @param excludeAssigned
+     * @param results
+     * @throws SiteWhereException
+     */
+    protected static void processDeviceRows(Result[] rows, ScanPageWindow window, boolean accepted,
+	    UUID deviceTypeId, UUID siteId, boolean excludeAssigned, List<IDevice> results) throws SiteWhereException {
+	for (Result row : rows) {
+	    if (row.isEmpty()) {
+		continue;
+	    }
+	    if (!accepted) {
+		if (row.containsColumn(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.DELETED)
+			|| !isMatch(row, deviceTypeId, siteId, excludeAssigned) || !window.accept()) {
+		    continue;
+		}
+	    }
+	    IDevice device = decodeDevice(row);
+	    if (device != null) {
+		results.add(device);
+	    }
+	}
+    }
 
-		    // Filter by device type.
-		    if (criteria.getDeviceTypeToken() != null) {
-			if (!criteria.getDeviceTypeToken().equals(device.getDeviceTypeId())) {
-			    continue;
-			}
-		    }
+    /**
+     * Scan primary device rows, using server-side filters for deleted state, site
+     * and device type. The device type filter is only used once index rows have
+     * been built, since the rebuild also fills in the device type column for
+     * devices saved before it existed.
+     * 
+     * @param devices
+     * @param window
+     * @param includeDeleted
+     * @param deviceTypeId
+     * @param siteId
+     * @param excludeAssigned
+     * @param indexed
+     * @return
+     * @throws SiteWhereException
+     */
+    protected static List<IDevice> scanDeviceRows(Table devices, ScanPageWindow window, boolean includeDeleted,
+	    UUID deviceTypeId, UUID siteId, boolean excludeAssigned, boolean indexed) throws SiteWhereException {
+	List<IDevice> results = new ArrayList<IDevice>();
+	ResultScanner scanner = null;
+	try {
+	    Scan scan = new Scan();
+	    scan.setStartRow(new byte[] { DeviceRecordType.Device.getType() });
+	    scan.setStopRow(new byte[] { DeviceRecordType.DeviceSpecification.getType() });
+	    FilterList filters = new FilterList(FilterList.Operator.MUST_PASS_ALL);
+	    if (!includeDeleted) {
+		filters.addFilter(getColumnFilter(ISiteWhereHBase.DELETED, CompareOp.NOT_EQUAL, DELETED_MARKER, false));
+	    }
+	    if ((deviceTypeId != null) && indexed) {
+		filters.addFilter(getColumnFilter(HBaseDeviceIndex.CURRENT_DEVICE_TYPE, CompareOp.EQUAL,
+			HBaseDeviceIndex.getUuidValue(deviceTypeId), true));
+	    }
+	    if (siteId != null) {
+		filters.addFilter(
+			getColumnFilter(CURRENT_SITE, CompareOp.EQUAL, HBaseDeviceIndex.getUuidValue(siteId), true));
+	    }
+	    if (!filters.getFilters().isEmpty()) {
+		scan.setFilter(filters);
+	    }
+	    window.configure(scan);
+	    scanner = devices.getScanner(scan);
 
-		    // Filter by site.
-		    if (criteria.getSiteToken() != null) {
-			if (!criteria.getSiteToken().equals(device.getSiteId())) {
-			    continue;
-			}
+	    for (Result result : scanner) {
+		if (!isMatch(result, indexed ? null : deviceTypeId, null, excludeAssigned)) {
+		    continue;
+		}
+		if (window.accept()) {
+		    IDevice device = decodeDevice(result);
+		    if (device != null) {
+			results.add(device);
 		    }
-
-		    pager.process(device);
+		}
+		if (window.isFilled()) {
+		    break;
 		}
 	    }
-	    return pager;
+	    return results;
 	} catch (IOException e) {
 	    throw new SiteWhereException("Error scanning device rows.", e);
 	} finally {
 	    if (scanner != null) {
 		scanner.close();
 	    }
-	    HBaseUtils.closeCleanly(devices);
 	}
     }
 
+    /**
+     * Indicates whether the indexed columns of a device row match the given
+     * conditions. Rows saved before the device type column was added are checked
+     * against the decoded payload.
+     * 
+     * @param row
+     * @param deviceTypeId
+     * @param siteId
+     * @param excludeAssigned
+     * @return
+     * @throws SiteWhereException
+     */
+    protected static boolean isMatch(Result row, UUID deviceTypeId, UUID siteId, boolean excludeAssigned)
+	    throws SiteWhereException {
+	if (deviceTypeId != null) {
+	    UUID current = HBaseDeviceIndex.getUuid(row, HBaseDeviceIndex.CURRENT_DEVICE_TYPE);
+	    if (current == null) {
+		IDevice device = decodeDevice(row);
+		current = (device != null) ? device.getDeviceTypeId() : null;
+	    }
+	    if (!deviceTypeId.equals(current)) {
+		return false;
+	    }
+	}
+	if ((siteId != null) && !siteId.equals(HBaseDeviceIndex.getUuid(row, CURRENT_SITE))) {
+	    return false;
+	}
+	if (excludeAssigned && row.containsColumn(ISiteWhereHBase.FAMILY_ID, CURRENT_ASSIGNMENT)) {
+	    return false;
+	}
+	return true;
+    }
+
+    /**
+     * Create a filter on a single column value.
+     * 
+     * @param qualifier
+     * @param op
+     * @param value
+     * @param filterIfMissing
+     * @return
+     */
+    protected static SingleColumnValueFilter getColumnFilter(byte[] qualifier, CompareOp op, byte[] value,
+	    boolean filterIfMissing) {
+	SingleColumnValueFilter filter = new SingleColumnValueFilter(ISiteWhereHBase.FAMILY_ID, qualifier, op, value);
+	filter.setFilterIfMissing(filterIfMissing);
+	return filter;
+    }
+
+    /**
+     * Decode the device payload from a row.
+     * 
+     * @param result
+     * @return
+     * @throws SiteWhereException
+     */
+    protected static Device decodeDevice(Result result) throws SiteWhereException {
+	byte[] type = result.getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD_TYPE);
+	byte[] payload = result.getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD);
+	if ((type == null) || (payload == null)) {
+	    return null;
+	}
+	return PayloadMarshalerResolver.getInstance().getMarshaler(type).decodeDevice(payload);
+    }
+
     /**
      * Save the payload for a device.
      * 
@@ -210,10 +481,23 @@ public class HBaseDevice {
 	Table devices = null;
 	try {
 	    devices = getDeviceTableInterface(context);
+	    Result before = getIndexedColumns(devices, primary);
 	    Put put = new Put(primary);
 	    HBaseUtils.addPayloadFields(context.getPayloadMarshaler().getEncoding(), put, payload);
-	    put.addColumn(ISiteWhereHBase.FAMILY_ID, CURRENT_SITE, Bytes.toBytes(device.getSiteId().toString()));
+	    if (device.getSiteId() != null) {
+		put.addColumn(ISiteWhereHBase.FAMILY_ID, CURRENT_SITE,
+			HBaseDeviceIndex.getUuidValue(device.getSiteId()));
+	    }
+	    if (device.getDeviceTypeId() != null) {
+		put.addColumn(ISiteWhereHBase.FAMILY_ID, HBaseDeviceIndex.CURRENT_DEVICE_TYPE,
+			HBaseDeviceIndex.getUuidValue(device.getDeviceTypeId()));
+	    }
 	    devices.put(put);
+
+	    List<byte[]> current = HBaseDeviceIndex.getIndexRowKeys(value, device.getDeviceTypeId(),
+		    device.getSiteId(), before.containsColumn(ISiteWhereHBase.FAMILY_ID, CURRENT_ASSIGNMENT),
+		    before.containsColumn(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.DELETED));
+	    HBaseDeviceIndex.updateIndexRows(devices, HBaseDeviceIndex.getIndexRowKeys(value, before), current);
 	} catch (IOException e) {
 	    throw new SiteWhereException("Unable to put device data.", e);
 	} finally {
@@ -286,28 +570,35 @@ public class HBaseDevice {
 	    context.getDeviceIdManager().getDeviceKeys().delete(device.getHardwareId());
 	    Table devices = null;
 	    try {
-		Delete delete = new Delete(primary);
 		devices = getDeviceTableInterface(context);
+		Result before = getIndexedColumns(devices, primary);
+		Delete delete = new Delete(primary);
 		devices.delete(delete);
+		HBaseDeviceIndex.updateIndexRows(devices, HBaseDeviceIndex.getIndexRowKeys(deviceId, before),
+			new ArrayList<byte[]>());
 	    } catch (IOException e) {
 		throw new SiteWhereException("Unable to delete device.", e);
 	    } finally {
 		HBaseUtils.closeCleanly(devices);
 	    }
 	} else {
-	    byte[] marker = { (byte) 0x01 };
 	    DeviceManagementPersistence.setUpdatedEntityMetadata(existing);
 	    byte[] updated = context.getPayloadMarshaler().encodeDevice(existing);
 
 	    Table devices = null;
 	    try {
 		devices = getDeviceTableInterface(context);
+		Result before = getIndexedColumns(devices, primary);
 		Put put = new Put(primary);
 		put.addColumn(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD_TYPE,
 			context.getPayloadMarshaler().getEncoding().getIndicator());
 		put.addColumn(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD, updated);
-		put.addColumn(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.DELETED, marker);
+		put.addColumn(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.DELETED, DELETED_MARKER);
 		devices.put(put);
+
+		// Deleted devices are not indexed.
+		HBaseDeviceIndex.updateIndexRows(devices, HBaseDeviceIndex.getIndexRowKeys(deviceId, before),
+			new ArrayList<byte[]>());
 	    } catch (IOException e) {
 		throw new SiteWhereException("Unable to set deleted flag for device.", e);
 	    } finally {
@@ -383,11 +674,13 @@ public class HBaseDevice {
 	Table devices = null;
 	try {
 	    devices = getDeviceTableInterface(context);
+	    Result before = getIndexedColumns(devices, primary);
 	    Put put = new Put(primary);
 	    HBaseUtils.addPayloadFields(context.getPayloadMarshaler().getEncoding(), put, payload);
 	    put.addColumn(ISiteWhereHBase.FAMILY_ID, CURRENT_ASSIGNMENT, assignmentToken.getBytes());
 	    put.addColumn(ISiteWhereHBase.FAMILY_ID, assnHistory, assignmentToken.getBytes());
 	    devices.put(put);
+	    updateAssignedIndex(devices, deviceId, before, true);
 	} catch (IOException e) {
 	    throw new SiteWhereException("Unable to set device assignment.", e);
 	} finally {
@@ -416,6 +709,7 @@ public class HBaseDevice {
 	Table devices = null;
 	try {
 	    devices = getDeviceTableInterface(context);
+	    Result before = getIndexedColumns(devices, primary);
 	    Put put = new Put(primary);
 	    put.addColumn(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD_TYPE,
 		    context.getPayloadMarshaler().getEncoding().getIndicator());
@@ -424,6 +718,7 @@ public class HBaseDevice {
 	    Delete delete = new Delete(primary);
 	    delete.addColumn(ISiteWhereHBase.FAMILY_ID, CURRENT_ASSIGNMENT);
 	    devices.delete(delete);
+	    updateAssignedIndex(devices, deviceId, before, false);
 	} catch (IOException e) {
 	    throw new SiteWhereException("Unable to remove device assignment.", e);
 	} finally {
@@ -431,6 +726,38 @@ public class HBaseDevice {
 	}
     }
 
+    /**
+     * Load the columns used to compute index rows for a device.
+     * 
+     * @param devices
+     * @param primary
+     * @return
+     * @throws IOException
+     */
+    protected static Result getIndexedColumns(Table devices, byte[] primary) throws IOException {
+	Get get = new Get(primary);
+	HBaseDeviceIndex.addIndexedColumns(get);
+	return devices.get(get);
+    }
+
+    /**
+     * Update index rows after the assigned state of a device changes.
+     * 
+     * @param devices
+     * @param deviceId
+     * @param before
+     * @param assigned
+     * @throws SiteWhereException
+     */
+    protected static void updateAssignedIndex(Table devices, Long deviceId, Result before, boolean assigned)
+	    throws SiteWhereException {
+	List<byte[]> current = HBaseDeviceIndex.getIndexRowKeys(deviceId,
+		HBaseDeviceIndex.getUuid(before, HBaseDeviceIndex.CURRENT_DEVICE_TYPE),
+		HBaseDeviceIndex.getUuid(before, CURRENT_SITE), assigned,
+		before.containsColumn(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.DELETED));
+	HBaseDeviceIndex.updateIndexRows(devices, HBaseDeviceIndex.getIndexRowKeys(deviceId, before), current);
+    }
+
     /**
      * Get the assignment history for a device.
      * 
@@ -9,13 +9,18 @@ package com.sitewhere.device.persistence.hbase;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.client.Table;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.logging.log4j.LogManager;
@@ -56,6 +61,13 @@ public class HBaseDeviceAssignment {
     /** Qualifier for assignment status */
     public static final byte[] ASSIGNMENT_STATUS = Bytes.toBytes("status");
 
+    /** Row key for status index state (sorts after all status index rows) */
+    public static final byte[] STATUS_INDEX_STATE_ROW = { (byte) 0xff, (byte) 0xff,
+	    SiteRecordType.AssignmentStatusIndex.getType(), (byte) 0xff };
+
+    /** Number of rows read and written per batch when rebuilding status index */
+    private static final int STATUS_INDEX_REBUILD_BATCH_SIZE = 1000;
+
     /** Qualifier for assignment state */
     public static final byte[] ASSIGNMENT_STATE = Bytes.toBytes("state");
 
@@ -112,6 +124,7 @@ public class HBaseDeviceAssignment {
 	    put.addColumn(ISiteWhereHBase.FAMILY_ID, ASSIGNMENT_STATUS,
 		    DeviceAssignmentStatus.Active.name().getBytes());
 	    sites.put(put);
+	    updateStatusIndex(sites, assnKey, null, DeviceAssignmentStatus.Active);
 	} catch (IOException e) {
 	    throw new SiteWhereException("Unable to create device assignment.", e);
 	} finally {
@@ -251,6 +264,7 @@ public class HBaseDeviceAssignment {
     public static DeviceAssignment updateDeviceAssignmentStatus(IHBaseContext context, IDeviceAssignment assn,
 	    DeviceAssignmentStatus status) throws SiteWhereException {
 	DeviceAssignment updated = getDeviceAssignment(context, assn);
+	DeviceAssignmentStatus previous = updated.getStatus();
 	updated.setStatus(status);
 	Persistence.setUpdatedEntityMetadata(updated);
 
@@ -265,6 +279,7 @@ public class HBaseDeviceAssignment {
 	    HBaseUtils.addPayloadFields(context.getPayloadMarshaler().getEncoding(), put, payload);
 	    put.addColumn(ISiteWhereHBase.FAMILY_ID, ASSIGNMENT_STATUS, status.name().getBytes());
 	    sites.put(put);
+	    updateStatusIndex(sites, assnKey, previous, status);
 	} catch (IOException e) {
 	    throw new SiteWhereException("Unable to update device assignment status.", e);
 	} finally {
@@ -284,6 +299,7 @@ public class HBaseDeviceAssignment {
     public static DeviceAssignment endDeviceAssignment(IHBaseContext context, IDeviceAssignment assn)
 	    throws SiteWhereException {
 	DeviceAssignment updated = getDeviceAssignment(context, assn);
+	DeviceAssignmentStatus previous = updated.getStatus();
 	updated.setStatus(DeviceAssignmentStatus.Released);
 	updated.setReleasedDate(new Date());
 	DeviceManagementPersistence.setUpdatedEntityMetadata(updated);
@@ -304,6 +320,7 @@ public class HBaseDeviceAssignment {
 	    put.addColumn(ISiteWhereHBase.FAMILY_ID, ASSIGNMENT_STATUS,
 		    DeviceAssignmentStatus.Released.name().getBytes());
 	    sites.put(put);
+	    updateStatusIndex(sites, assnKey, previous, DeviceAssignmentStatus.Released);
 	} catch (IOException e) {
 	    throw new SiteWhereException("Unable to update device assignment status.", e);
 	} finally {
@@ -345,6 +362,7 @@ public class HBaseDeviceAssignment {
 		Delete delete = new Delete(primary);
 		sites = getSitesTableInterface(context);
 		sites.delete(delete);
+		updateStatusIndex(sites, assnKey, existing.getStatus(), null);
 	    } catch (IOException e) {
 		throw new SiteWhereException("Unable to delete device.", e);
 	    } finally {
@@ -363,6 +381,9 @@ public class HBaseDeviceAssignment {
 		put.addColumn(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD, updated);
 		put.addColumn(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.DELETED, marker);
 		sites.put(put);
+
+		// Deleted assignments are not indexed.
+		updateStatusIndex(sites, assnKey, existing.getStatus(), null);
 	    } catch (IOException e) {
 		throw new SiteWhereException("Unable to set deleted flag for device assignment.", e);
 	    } finally {
@@ -411,6 +432,183 @@ public class HBaseDeviceAssignment {
 	return rowkey.array();
     }
 
+    /**
+     * Get the prefix shared by status index rows for assignments in a site with
+     * the given status. Status is stored by ordinal.
+     * 
+     * @param siteId
+     * @param status
+     * @return
+     */
+    public static byte[] getStatusIndexPrefix(Long siteId, DeviceAssignmentStatus status) {
+	byte[] sid = HBaseSite.getSiteIdentifier(siteId);
+	ByteBuffer rowkey = ByteBuffer.allocate(sid.length + 2);
+	rowkey.put(sid);
+	rowkey.put(SiteRecordType.AssignmentStatusIndex.getType());
+	rowkey.put((byte) status.ordinal());
+	return rowkey.array();
+    }
+
+    /**
+     * Get status index row key for an assignment.
+     * 
+     * @param assnKey
+     * @param status
+     * @return
+     */
+    public static byte[] getStatusIndexRowKey(byte[] assnKey, DeviceAssignmentStatus status) {
+	int sidLength = HBaseSite.SITE_IDENTIFIER_LENGTH;
+	ByteBuffer rowkey = ByteBuffer.allocate(assnKey.length + 1);
+	rowkey.put(assnKey, 0, sidLength);
+	rowkey.put(SiteRecordType.AssignmentStatusIndex.getType());
+	rowkey.put((byte) status.ordinal());
+	rowkey.put(assnKey, sidLength + 1, assnKey.length - sidLength - 1);
+	return rowkey.array();
+    }
+
+    /**
+     * Get the assignment key referenced by a status index row.
+     * 
+     * @param indexRow
+     * @return
+     */
+    public static byte[] getAssignmentKeyFromStatusIndex(byte[] indexRow) {
+	int sidLength = HBaseSite.SITE_IDENTIFIER_LENGTH;
+	ByteBuffer assnKey = ByteBuffer.allocate(indexRow.length - 1);
+	assnKey.put(indexRow, 0, sidLength);
+	assnKey.put(SiteRecordType.Assignment.getType());
+	assnKey.put(indexRow, sidLength + 2, indexRow.length - sidLength - 2);
+	return assnKey.array();
+    }
+
+    /**
+     * Move the status index row for an assignment. Either status may be null to
+     * only add or only remove a row.
+     * 
+     * @param sites
+     * @param assnKey
+     * @param previous
+     * @param current
+     * @throws IOException
+     */
+    protected static void updateStatusIndex(Table sites, byte[] assnKey, DeviceAssignmentStatus previous,
+	    DeviceAssignmentStatus current) throws IOException {
+	if (previous == current) {
+	    return;
+	}
+	if (previous != null) {
+	    sites.delete(new Delete(getStatusIndexRowKey(assnKey, previous)));
+	}
+	if (current != null) {
+	    Put put = new Put(getStatusIndexRowKey(assnKey, current));
+	    put.addColumn(ISiteWhereHBase.FAMILY_ID, HBaseDeviceIndex.INDEX_MARKER, new byte[0]);
+	    sites.put(put);
+	}
+    }
+
+    /**
+     * Indicates whether status index rows have been built for all assignments.
+     * 
+     * @param sites
+     * @return
+     * @throws SiteWhereException
+     */
+    public static boolean isStatusIndexBuilt(Table sites) throws SiteWhereException {
+	try {
+	    return sites.exists(new Get(STATUS_INDEX_STATE_ROW));
+	} catch (IOException e) {
+	    throw new SiteWhereException("Unable to read assignment status index state.", e);
+	}
+    }
+
+    /**
+     * Write status index rows for every assignment that is not deleted and then
+     * record that the index has been built. Assignments saved before the status
+     * column was added have their status copied from the decoded payload. This
+     * should run before the tenant handles requests. Running it again only
+     * rewrites the same rows.
+     * 
+     * @param sites
+     * @return number of assignments scanned
+     * @throws SiteWhereException
+     */
+    public static long rebuildStatusIndex(Table sites) throws SiteWhereException {
+	ResultScanner scanner = null;
+	try {
+	    Scan scan = new Scan();
+	    scan.setFilter(HBaseSite.getAssignmentRowFilter());
+	    scan.addColumn(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD_TYPE);
+	    scan.addColumn(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD);
+	    scan.addColumn(ISiteWhereHBase.FAMILY_ID, ASSIGNMENT_STATUS);
+	    scan.addColumn(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.DELETED);
+	    scan.setCaching(STATUS_INDEX_REBUILD_BATCH_SIZE);
+	    scanner = sites.getScanner(scan);
+
+	    long count = 0;
+	    List<Put> puts = new ArrayList<Put>();
+	    for (Result row : scanner) {
+		byte[] primary = row.getRow();
+		if (primary[HBaseSite.SITE_IDENTIFIER_LENGTH] != SiteRecordType.Assignment.getType()) {
+		    continue;
+		}
+		count++;
+		if (Bytes.equals(HBaseDevice.DELETED_MARKER,
+			row.getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.DELETED))) {
+		    continue;
+		}
+		DeviceAssignmentStatus status = getStatus(row);
+		if (status == null) {
+		    continue;
+		}
+		byte[] assnKey = Arrays.copyOf(primary, primary.length - 1);
+		if (!row.containsColumn(ISiteWhereHBase.FAMILY_ID, ASSIGNMENT_STATUS)) {
+		    Put put = new Put(primary);
+		    put.addColumn(ISiteWhereHBase.FAMILY_ID, ASSIGNMENT_STATUS, status.name().getBytes());
+		    puts.add(put);
+		}
+		Put put = new Put(getStatusIndexRowKey(assnKey, status));
+		put.addColumn(ISiteWhereHBase.FAMILY_ID, HBaseDeviceIndex.INDEX_MARKER, new byte[0]);
+		puts.add(put);
+		if (puts.size() >= STATUS_INDEX_REBUILD_BATCH_SIZE) {
+		    sites.put(puts);
+		    puts.clear();
+		}
+	    }
+	    if (!puts.isEmpty()) {
+		sites.put(puts);
+	    }
+
+	    Put state = new Put(STATUS_INDEX_STATE_ROW);
+	    state.addColumn(ISiteWhereHBase.FAMILY_ID, HBaseDeviceIndex.INDEX_BUILT,
+		    Bytes.toBytes(System.currentTimeMillis()));
+	    sites.put(state);
+	    return count;
+	} catch (IOException e) {
+	    throw new SiteWhereException("Unable to rebuild assignment status index rows.", e);
+	} finally {
+	    if (scanner != null) {
+		scanner.close();
+	    }
+	}
+    }
+
+    /**
+     * Get the status of an assignment row, falling back to the decoded payload
+     * for rows saved before the status column was added.
+     * 
+     * @param row
+     * @return
+     * @throws SiteWhereException
+     */
+    public static DeviceAssignmentStatus getStatus(Result row) throws SiteWhereException {
+	byte[] value = row.getValue(ISiteWhereHBase.FAMILY_ID, ASSIGNMENT_STATUS);
+	if (value != null) {
+	    return DeviceAssignmentStatus.valueOf(Bytes.toString(value));
+	}
+	DeviceAssignment assignment = HBaseSite.decodeAssignment(row);
+	return (assignment != null) ? assignment.getStatus() : null;
+    }
+
     /**
      * Truncate assignment id value to expected length. This will be a subset of the
      * full 8-bit long value.
@@ -27,9 +27,9 @@ import com.sitewhere.hbase.IHBaseContext;
 import com.sitewhere.hbase.ISiteWhereHBase;
 import com.sitewhere.hbase.common.DeleteRecord;
 import com.sitewhere.hbase.common.HBaseUtils;
+import com.sitewhere.hbase.common.ScanPageWindow;
 import com.sitewhere.hbase.encoder.PayloadMarshalerResolver;
 import com.sitewhere.rest.model.device.group.DeviceGroupElement;
-import com.sitewhere.rest.model.search.Pager;
 import com.sitewhere.rest.model.search.SearchResults;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.group.IDeviceGroup;
@@ -268,18 +268,24 @@ public class HBaseDeviceGroupElement {
 	    Scan scan = new Scan();
 	    scan.setStartRow(primary);
 	    scan.setStopRow(after);
+	    ScanPageWindow window = new ScanPageWindow(criteria);
+	    window.configure(scan);
 	    scanner = table.getScanner(scan);
 
-	    Pager<IDeviceGroupElement> pager = new Pager<IDeviceGroupElement>(criteria);
+	    // Only decode elements in the page and stop once it is filled.
+	    List<IDeviceGroupElement> results = new ArrayList<IDeviceGroupElement>();
 	    for (Result result : scanner) {
 		byte[] type = result.getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD_TYPE);
 		byte[] payload = result.getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD);
-		if ((type != null) && (payload != null)) {
-		    pager.process(PayloadMarshalerResolver.getInstance().getMarshaler(type)
+		if ((type != null) && (payload != null) && window.accept()) {
+		    results.add(PayloadMarshalerResolver.getInstance().getMarshaler(type)
 			    .decodeDeviceGroupElement(payload));
 		}
+		if (window.isFilled()) {
+		    break;
+		}
 	    }
-	    return new SearchResults<IDeviceGroupElement>(pager.getResults());
+	    return new SearchResults<IDeviceGroupElement>(results, window.getMatched());
 	} catch (IOException e) {
 	    throw new SiteWhereException("Error scanning device group element rows.", e);
 	} finally {
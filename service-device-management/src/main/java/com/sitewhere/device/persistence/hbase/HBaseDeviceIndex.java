@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.persistence.hbase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.sitewhere.hbase.ISiteWhereHBase;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDevice;
+
+/**
+ * Maintains secondary index rows in the devices table so that devices can be
+ * listed by device type, by site or by lack of a current assignment without
+ * scanning every device row. Index rows are keyed by the index type, the
+ * indexed value and the device identifier, so matching devices are found with
+ * a prefix scan. Deleted devices are not indexed. A state row records that
+ * index rows have been built for devices saved before indexing was added.
+ *
+ * @author Derek
+ */
+public class HBaseDeviceIndex {
+
+    /** Column qualifier for index row marker */
+    public static final byte[] INDEX_MARKER = Bytes.toBytes("i");
+
+    /** Column qualifier for current device type */
+    public static final byte[] CURRENT_DEVICE_TYPE = Bytes.toBytes("type");
+
+    /** Column qualifier for time index rows were built */
+    public static final byte[] INDEX_BUILT = Bytes.toBytes("built");
+
+    /** Row key for index state (sorts after all index types) */
+    public static final byte[] INDEX_STATE_ROW = { DeviceRecordType.DeviceIndex.getType(), (byte) 0xff };
+
+    /** Length of a UUID in bytes */
+    public static final int UUID_LENGTH = 16;
+
+    /** Number of rows read and written per batch when rebuilding */
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    /**
+     * Get the prefix shared by all index rows of a given type and value. Value
+     * may be null for index types that do not have one.
+     *
+     * @param type
+     * @param value
+     * @return
+     */
+    public static byte[] getIndexPrefix(DeviceIndexType type, UUID value) {
+	ByteBuffer buffer = ByteBuffer.allocate(2 + ((value != null) ? UUID_LENGTH : 0));
+	buffer.put(DeviceRecordType.DeviceIndex.getType());
+	buffer.put(type.getType());
+	if (value != null) {
+	    buffer.putLong(value.getMostSignificantBits());
+	    buffer.putLong(value.getLeastSignificantBits());
+	}
+	return buffer.array();
+    }
+
+    /**
+     * Get the index row key for a device.
+     *
+     * @param type
+     * @param value
+     * @param deviceId
+     * @return
+     */
+    public static byte[] getIndexRowKey(DeviceIndexType type, UUID value, Long deviceId) {
+	byte[] prefix = getIndexPrefix(type, value);
+	byte[] identifier = HBaseDevice.getTruncatedIdentifier(deviceId);
+	ByteBuffer buffer = ByteBuffer.allocate(prefix.length + identifier.length);
+	buffer.put(prefix);
+	buffer.put(identifier);
+	return buffer.array();
+    }
+
+    /**
+     * Get the primary device row key referenced by an index row.
+     *
+     * @param indexRow
+     * @return
+     */
+    public static byte[] getDeviceRowKey(byte[] indexRow) {
+	ByteBuffer buffer = ByteBuffer.allocate(HBaseDevice.DEVICE_IDENTIFIER_LENGTH + 1);
+	buffer.put(DeviceRecordType.Device.getType());
+	buffer.put(indexRow, indexRow.length - HBaseDevice.DEVICE_IDENTIFIER_LENGTH,
+		HBaseDevice.DEVICE_IDENTIFIER_LENGTH);
+	return buffer.array();
+    }
+
+    /**
+     * Get the device id encoded in a primary device row key. Only the truncated
+     * identifier is stored, so the result maps to the same row and index keys
+     * as the original id.
+     *
+     * @param primary
+     * @return
+     */
+    public static Long getDeviceId(byte[] primary) {
+	return Bytes.toInt(primary, 1) & 0xffffffffL;
+    }
+
+    /**
+     * Get keys for all index rows that should exist for a device in the given
+     * state.
+     *
+     * @param deviceId
+     * @param deviceTypeId
+     * @param siteId
+     * @param assigned
+     * @param deleted
+     * @return
+     */
+    public static List<byte[]> getIndexRowKeys(Long deviceId, UUID deviceTypeId, UUID siteId, boolean assigned,
+	    boolean deleted) {
+	List<byte[]> keys = new ArrayList<byte[]>();
+	if (deleted) {
+	    return keys;
+	}
+	if (deviceTypeId != null) {
+	    keys.add(getIndexRowKey(DeviceIndexType.DeviceType, deviceTypeId, deviceId));
+	}
+	if (siteId != null) {
+	    keys.add(getIndexRowKey(DeviceIndexType.Site, siteId, deviceId));
+	}
+	if (!assigned) {
+	    keys.add(getIndexRowKey(DeviceIndexType.Unassigned, null, deviceId));
+	}
+	return keys;
+    }
+
+    /**
+     * Get keys for all index rows that currently exist for a device based on the
+     * indexed columns of its primary row.
+     *
+     * @param deviceId
+     * @param row
+     * @return
+     */
+    public static List<byte[]> getIndexRowKeys(Long deviceId, Result row) {
+	if (row.isEmpty()) {
+	    return new ArrayList<byte[]>();
+	}
+	return getIndexRowKeys(deviceId, getUuid(row, CURRENT_DEVICE_TYPE), getUuid(row, HBaseDevice.CURRENT_SITE),
+		row.containsColumn(ISiteWhereHBase.FAMILY_ID, HBaseDevice.CURRENT_ASSIGNMENT),
+		row.containsColumn(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.DELETED));
+    }
+
+    /**
+     * Add columns needed to compute index rows for a device to a get.
+     *
+     * @param get
+     */
+    public static void addIndexedColumns(Get get) {
+	get.addColumn(ISiteWhereHBase.FAMILY_ID, CURRENT_DEVICE_TYPE);
+	get.addColumn(ISiteWhereHBase.FAMILY_ID, HBaseDevice.CURRENT_SITE);
+	get.addColumn(ISiteWhereHBase.FAMILY_ID, HBaseDevice.CURRENT_ASSIGNMENT);
+	get.addColumn(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.DELETED);
+    }
+
+    /**
+     * Add rows that are in the current set but not the previous one and remove
+     * rows that are in the previous set but not the current one.
+     *
+     * @param devices
+     * @param previous
+     * @param current
+     * @throws SiteWhereException
+     */
+    public static void updateIndexRows(Table devices, List<byte[]> previous, List<byte[]> current)
+	    throws SiteWhereException {
+	try {
+	    List<Delete> deletes = new ArrayList<Delete>();
+	    for (byte[] key : previous) {
+		if (!contains(current, key)) {
+		    deletes.add(new Delete(key));
+		}
+	    }
+	    List<Put> puts = new ArrayList<Put>();
+	    for (byte[] key : current) {
+		if (!contains(previous, key)) {
+		    Put put = new Put(key);
+		    put.addColumn(ISiteWhereHBase.FAMILY_ID, INDEX_MARKER, new byte[0]);
+		    puts.add(put);
+		}
+	    }
+	    if (!deletes.isEmpty()) {
+		devices.delete(deletes);
+	    }
+	    if (!puts.isEmpty()) {
+		devices.put(puts);
+	    }
+	} catch (IOException e) {
+	    throw new SiteWhereException("Unable to update device index rows.", e);
+	}
+    }
+
+    /**
+     * Indicates whether index rows have been built for all devices.
+     *
+     * @param devices
+     * @return
+     * @throws SiteWhereException
+     */
+    public static boolean isIndexBuilt(Table devices) throws SiteWhereException {
+	try {
+	    return devices.exists(new Get(INDEX_STATE_ROW));
+	} catch (IOException e) {
+	    throw new SiteWhereException("Unable to read device index state.", e);
+	}
+    }
+
+    /**
+     * Write index rows for every device and then record that the index has been
+     * built. Devices saved before indexing was added do not have the device type
+     * column, so it is copied from the decoded payload. Rows are written for the
+     * state read by the scan, so this should run before the tenant handles
+     * requests. Running it again only rewrites the same rows.
+     *
+     * @param devices
+     * @return number of devices scanned
+     * @throws SiteWhereException
+     */
+    public static long rebuildIndex(Table devices) throws SiteWhereException {
+	ResultScanner scanner = null;
+	try {
+	    Scan scan = new Scan();
+	    scan.setStartRow(new byte[] { DeviceRecordType.Device.getType() });
+	    scan.setStopRow(new byte[] { DeviceRecordType.DeviceSpecification.getType() });
+	    scan.addColumn(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD_TYPE);
+	    scan.addColumn(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD);
+	    scan.addColumn(ISiteWhereHBase.FAMILY_ID, CURRENT_DEVICE_TYPE);
+	    scan.addColumn(ISiteWhereHBase.FAMILY_ID, HBaseDevice.CURRENT_SITE);
+	    scan.addColumn(ISiteWhereHBase.FAMILY_ID, HBaseDevice.CURRENT_ASSIGNMENT);
+	    scan.addColumn(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.DELETED);
+	    scan.setCaching(REBUILD_BATCH_SIZE);
+	    scanner = devices.getScanner(scan);
+
+	    long count = 0;
+	    List<Put> puts = new ArrayList<Put>();
+	    for (Result row : scanner) {
+		UUID deviceTypeId = getUuid(row, CURRENT_DEVICE_TYPE);
+		if (deviceTypeId == null) {
+		    IDevice device = HBaseDevice.decodeDevice(row);
+		    if ((device != null) && (device.getDeviceTypeId() != null)) {
+			deviceTypeId = device.getDeviceTypeId();
+			Put put = new Put(row.getRow());
+			put.addColumn(ISiteWhereHBase.FAMILY_ID, CURRENT_DEVICE_TYPE, getUuidValue(deviceTypeId));
+			puts.add(put);
+		    }
+		}
+		List<byte[]> keys = getIndexRowKeys(getDeviceId(row.getRow()), deviceTypeId,
+			getUuid(row, HBaseDevice.CURRENT_SITE),
+			row.containsColumn(ISiteWhereHBase.FAMILY_ID, HBaseDevice.CURRENT_ASSIGNMENT),
+			row.containsColumn(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.DELETED));
+		for (byte[] key : keys) {
+		    Put put = new Put(key);
+		    put.addColumn(ISiteWhereHBase.FAMILY_ID, INDEX_MARKER, new byte[0]);
+		    puts.add(put);
+		}
+		if (puts.size() >= REBUILD_BATCH_SIZE) {
+		    devices.put(puts);
+		    puts.clear();
+		}
+		count++;
+	    }
+	    if (!puts.isEmpty()) {
+		devices.put(puts);
+	    }
+
+	    Put state = new Put(INDEX_STATE_ROW);
+	    state.addColumn(ISiteWhereHBase.FAMILY_ID, INDEX_BUILT, Bytes.toBytes(System.currentTimeMillis()));
+	    devices.put(state);
+	    return count;
+	} catch (IOException e) {
+	    throw new SiteWhereException("Unable to rebuild device index rows.", e);
+	} finally {
+	    if (scanner != null) {
+		scanner.close();
+	    }
+	}
+    }
+
+    /**
+     * Get a UUID stored as a string column value.
+     *
+     * @param row
+     * @param qualifier
+     * @return
+     */
+    public static UUID getUuid(Result row, byte[] qualifier) {
+	byte[] value = row.getValue(ISiteWhereHBase.FAMILY_ID, qualifier);
+	return (value != null) ? UUID.fromString(Bytes.toString(value)) : null;
+    }
+
+    /**
+     * Get the column value used to store a UUID.
+     *
+     * @param value
+     * @return
+     */
+    public static byte[] getUuidValue(UUID value) {
+	return Bytes.toBytes(value.toString());
+    }
+
+    /**
+     * Indicates whether a list of keys contains the given key.
+     *
+     * @param keys
+     * @param key
+     * @return
+     */
+    protected static boolean contains(List<byte[]> keys, byte[] key) {
+	for (byte[] existing : keys) {
+	    if (Bytes.equals(existing, key)) {
+		return true;
+	    }
+	}
+	return false;
+    }
+}
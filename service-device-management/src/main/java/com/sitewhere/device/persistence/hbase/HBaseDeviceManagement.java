@@ -11,6 +11,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
+import org.apache.hadoop.hbase.client.Table;
 import org.apache.hadoop.hbase.regionserver.BloomType;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -20,9 +21,13 @@ import com.sitewhere.hbase.DeviceIdManager;
 import com.sitewhere.hbase.HBaseContext;
 import com.sitewhere.hbase.ISiteWhereHBase;
 import com.sitewhere.hbase.ISiteWhereHBaseClient;
+import com.sitewhere.hbase.common.HBaseUtils;
 import com.sitewhere.hbase.common.SiteWhereTables;
 import com.sitewhere.hbase.encoder.IPayloadMarshaler;
+import com.sitewhere.rest.model.device.DeviceBulkCreateError;
+import com.sitewhere.rest.model.device.DeviceBulkCreateResponse;
 import com.sitewhere.rest.model.device.Site;
+import com.sitewhere.rest.model.device.request.DeviceAssignmentCreateRequest;
 import com.sitewhere.rest.model.search.SearchResults;
 import com.sitewhere.server.lifecycle.TenantEngineLifecycleComponent;
 import com.sitewhere.spi.SiteWhereException;
@@ -30,6 +35,7 @@ import com.sitewhere.spi.asset.IAssetReference;
 import com.sitewhere.spi.device.DeviceAssignmentStatus;
 import com.sitewhere.spi.device.IDevice;
 import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceBulkCreateResponse;
 import com.sitewhere.spi.device.IDeviceElementMapping;
 import com.sitewhere.spi.device.IDeviceManagement;
 import com.sitewhere.spi.device.IDeviceStatus;
@@ -41,6 +47,7 @@ import com.sitewhere.spi.device.event.request.IDeviceStreamCreateRequest;
 import com.sitewhere.spi.device.group.IDeviceGroup;
 import com.sitewhere.spi.device.group.IDeviceGroupElement;
 import com.sitewhere.spi.device.request.IDeviceAssignmentCreateRequest;
+import com.sitewhere.spi.device.request.IDeviceBulkCreateRequest;
 import com.sitewhere.spi.device.request.IDeviceCommandCreateRequest;
 import com.sitewhere.spi.device.request.IDeviceCreateRequest;
 import com.sitewhere.spi.device.request.IDeviceGroupCreateRequest;
@@ -80,6 +87,12 @@ public class HBaseDeviceManagement extends TenantEngineLifecycleComponent implem
     /** Device id manager */
     private DeviceIdManager deviceIdManager;
 
+    /** Indicates whether device index rows exist for all devices */
+    private volatile boolean deviceIndexBuilt;
+
+    /** Indicates whether assignment status index rows have been built */
+    private volatile boolean assignmentStatusIndexBuilt;
+
     public HBaseDeviceManagement() {
 	super(LifecycleComponentType.DataStore);
     }
@@ -104,6 +117,9 @@ public class HBaseDeviceManagement extends TenantEngineLifecycleComponent implem
 	deviceIdManager = new DeviceIdManager();
 	deviceIdManager.load(context);
 	context.setDeviceIdManager(deviceIdManager);
+
+	ensureDeviceIndexBuilt();
+	ensureAssignmentStatusIndexBuilt();
     }
 
     /*
@@ -128,6 +144,54 @@ public class HBaseDeviceManagement extends TenantEngineLifecycleComponent implem
 	SiteWhereTables.assureTenantTable(context, ISiteWhereHBase.STREAMS_TABLE_NAME, BloomType.ROW);
     }
 
+    /**
+     * Build index rows for devices saved before device indexes were added. If the
+     * rebuild fails, device listings scan device rows and the rebuild is tried
+     * again on the next start.
+     * 
+     * @throws SiteWhereException
+     */
+    protected void ensureDeviceIndexBuilt() throws SiteWhereException {
+	Table devices = null;
+	try {
+	    devices = HBaseDevice.getDeviceTableInterface(context);
+	    if (!HBaseDeviceIndex.isIndexBuilt(devices)) {
+		getLogger().info("Building device index rows for existing devices.");
+		long count = HBaseDeviceIndex.rebuildIndex(devices);
+		getLogger().info("Built device index rows for " + count + " devices.");
+	    }
+	    setDeviceIndexBuilt(true);
+	} catch (SiteWhereException e) {
+	    getLogger().error("Unable to build device index rows. Device listings will scan device rows.", e);
+	} finally {
+	    HBaseUtils.closeCleanly(devices);
+	}
+    }
+
+    /**
+     * Build status index rows for assignments saved before the status index was
+     * added. If the rebuild fails, assignment listings by status scan assignment
+     * rows and the rebuild is tried again on the next start.
+     * 
+     * @throws SiteWhereException
+     */
+    protected void ensureAssignmentStatusIndexBuilt() throws SiteWhereException {
+	Table sites = null;
+	try {
+	    sites = HBaseSite.getSitesTableInterface(context);
+	    if (!HBaseDeviceAssignment.isStatusIndexBuilt(sites)) {
+		getLogger().info("Building status index rows for existing device assignments.");
+		long count = HBaseDeviceAssignment.rebuildStatusIndex(sites);
+		getLogger().info("Built status index rows for " + count + " device assignments.");
+	    }
+	    setAssignmentStatusIndexBuilt(true);
+	} catch (SiteWhereException e) {
+	    getLogger().error("Unable to build assignment status index rows. Assignment listings will scan rows.", e);
+	} finally {
+	    HBaseUtils.closeCleanly(sites);
+	}
+    }
+
     /*
      * @see
      * com.sitewhere.spi.device.IDeviceManagement#createDeviceType(com.sitewhere.spi
@@ -319,6 +383,39 @@ public class HBaseDeviceManagement extends TenantEngineLifecycleComponent implem
 	return HBaseDevice.createDevice(context, device);
     }
 
+    /*
+     * @see
+     * com.sitewhere.spi.device.IDeviceManagement#createDevices(com.sitewhere.spi.
+     * device.request.IDeviceBulkCreateRequest)
+     */
+    @Override
+    public IDeviceBulkCreateResponse createDevices(IDeviceBulkCreateRequest request) throws SiteWhereException {
+	DeviceBulkCreateResponse response = new DeviceBulkCreateResponse();
+	List<IDeviceCreateRequest> rows = request.getDevices();
+	for (int i = 0; i < rows.size(); i++) {
+	    IDeviceCreateRequest row = rows.get(i);
+	    try {
+		IDevice existing = request.isUpdateExisting() ? getDeviceByHardwareId(row.getHardwareId()) : null;
+		if (existing != null) {
+		    updateDevice(existing.getId(), row);
+		    response.setUpdatedCount(response.getUpdatedCount() + 1);
+		    continue;
+		}
+		IDevice created = createDevice(row);
+		response.setCreatedCount(response.getCreatedCount() + 1);
+		if (request.getAssignmentTemplate() != null) {
+		    DeviceAssignmentCreateRequest assignment = DeviceAssignmentCreateRequest
+			    .copy(request.getAssignmentTemplate(), created.getHardwareId());
+		    createDeviceAssignment(assignment);
+		    response.setAssignmentsCreated(response.getAssignmentsCreated() + 1);
+		}
+	    } catch (SiteWhereException e) {
+		response.getErrors().add(new DeviceBulkCreateError(i, row.getHardwareId(), e.getMessage()));
+	    }
+	}
+	return response;
+    }
+
     /*
      * @see com.sitewhere.spi.device.IDeviceManagement#getDevice(java.util.UUID)
      */
@@ -372,7 +469,7 @@ public class HBaseDeviceManagement extends TenantEngineLifecycleComponent implem
     @Override
     public SearchResults<IDevice> listDevices(boolean includeDeleted, IDeviceSearchCriteria criteria)
 	    throws SiteWhereException {
-	return HBaseDevice.listDevices(context, includeDeleted, criteria);
+	return HBaseDevice.listDevices(context, includeDeleted, criteria, isDeviceIndexBuilt());
     }
 
     /*
@@ -505,7 +602,7 @@ public class HBaseDeviceManagement extends TenantEngineLifecycleComponent implem
     public SearchResults<IDeviceAssignment> getDeviceAssignmentsForSite(UUID siteId, IAssignmentSearchCriteria criteria)
 	    throws SiteWhereException {
 	ISite site = getSite(siteId);
-	return HBaseSite.listDeviceAssignmentsForSite(context, site, criteria);
+	return HBaseSite.listDeviceAssignmentsForSite(context, site, criteria, isAssignmentStatusIndexBuilt());
     }
 
     /*
@@ -819,4 +916,20 @@ public class HBaseDeviceManagement extends TenantEngineLifecycleComponent implem
     public void setPayloadMarshaler(IPayloadMarshaler payloadMarshaler) {
 	this.payloadMarshaler = payloadMarshaler;
     }
+
+    public boolean isDeviceIndexBuilt() {
+	return deviceIndexBuilt;
+    }
+
+    public void setDeviceIndexBuilt(boolean deviceIndexBuilt) {
+	this.deviceIndexBuilt = deviceIndexBuilt;
+    }
+
+    public boolean isAssignmentStatusIndexBuilt() {
+	return assignmentStatusIndexBuilt;
+    }
+
+    public void setAssignmentStatusIndexBuilt(boolean assignmentStatusIndexBuilt) {
+	this.assignmentStatusIndexBuilt = assignmentStatusIndexBuilt;
+    }
 }
\ No newline at end of file
@@ -9,6 +9,9 @@ package com.sitewhere.device.persistence.hbase;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
 
 import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Get;
@@ -21,8 +24,11 @@ import org.apache.hadoop.hbase.client.Table;
 import org.apache.hadoop.hbase.filter.BinaryPrefixComparator;
 import org.apache.hadoop.hbase.filter.ByteArrayComparable;
 import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
 import org.apache.hadoop.hbase.filter.RegexStringComparator;
 import org.apache.hadoop.hbase.filter.RowFilter;
+import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -31,6 +37,7 @@ import com.sitewhere.device.persistence.DeviceManagementPersistence;
 import com.sitewhere.hbase.IHBaseContext;
 import com.sitewhere.hbase.ISiteWhereHBase;
 import com.sitewhere.hbase.common.HBaseUtils;
+import com.sitewhere.hbase.common.ScanPageWindow;
 import com.sitewhere.hbase.encoder.PayloadMarshalerResolver;
 import com.sitewhere.rest.model.device.DeviceAssignment;
 import com.sitewhere.rest.model.device.Site;
@@ -41,6 +48,7 @@ import com.sitewhere.rest.model.search.SearchResults;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.SiteWhereSystemException;
 import com.sitewhere.spi.asset.IAssetReference;
+import com.sitewhere.spi.device.DeviceAssignmentStatus;
 import com.sitewhere.spi.device.IDeviceAssignment;
 import com.sitewhere.spi.device.ISite;
 import com.sitewhere.spi.device.IZone;
@@ -198,23 +206,26 @@ public class HBaseSite {
      */
     public static SearchResults<ISite> listSites(IHBaseContext context, ISearchCriteria criteria)
 	    throws SiteWhereException {
-	RegexStringComparator comparator = new RegexStringComparator(REGEX_SITE);
-	Pager<ISite> pager = getFilteredSiteRows(context, false, criteria, comparator, null, null, Site.class,
-		ISite.class);
-	return new SearchResults<ISite>(pager.getResults());
+	RegexStringComparator comparator = new RegexStringComparator(REGEX_SITE, Pattern.DOTALL);
+	return getFilteredSiteRows(context, false, criteria, comparator, null, null, Site.class, ISite.class);
     }
 
     /**
-     * List device assignments for a given site.
+     * List device assignments for a given site. Assignments with a given status
+     * are found through the status index once it has been built. Until then the
+     * assignment rows are scanned and filtered by status. The scan stops once the
+     * requested page has been filled, so the total is the number of matches found
+     * up to that point.
      * 
      * @param context
      * @param site
      * @param criteria
+     * @param statusIndexBuilt
      * @return
      * @throws SiteWhereException
      */
     public static SearchResults<IDeviceAssignment> listDeviceAssignmentsForSite(IHBaseContext context, ISite site,
-	    IAssignmentSearchCriteria criteria) throws SiteWhereException {
+	    IAssignmentSearchCriteria criteria, boolean statusIndexBuilt) throws SiteWhereException {
 	Table sites = null;
 	ResultScanner scanner = null;
 	try {
@@ -222,42 +233,68 @@ public class HBaseSite {
 	    if (siteId == null) {
 		throw new SiteWhereSystemException(ErrorCode.InvalidSiteToken, ErrorLevel.ERROR);
 	    }
-	    byte[] assnPrefix = getAssignmentRowKey(siteId);
-	    byte[] after = getAfterAssignmentRowKey(siteId);
-
 	    sites = getSitesTableInterface(context);
-
-	    Scan scan = new Scan();
-	    scan.setStartRow(assnPrefix);
-	    scan.setStopRow(after);
-	    scanner = sites.getScanner(scan);
-
-	    Pager<IDeviceAssignment> pager = new Pager<IDeviceAssignment>(criteria);
-	    for (Result result : scanner) {
-		// TODO: This is inefficient. There should be a filter on the
-		// scanner instead.
-		if (result.getRow()[7] != DeviceAssignmentRecordType.DeviceAssignment.getType()) {
-		    continue;
+	    ScanPageWindow window = new ScanPageWindow(criteria);
+	    List<IDeviceAssignment> results = new ArrayList<IDeviceAssignment>();
+
+	    if ((criteria.getStatus() != null) && statusIndexBuilt) {
+		Scan scan = new Scan();
+		scan.setRowPrefixFilter(HBaseDeviceAssignment.getStatusIndexPrefix(siteId, criteria.getStatus()));
+		scan.setFilter(new KeyOnlyFilter());
+		window.configure(scan);
+		scanner = sites.getScanner(scan);
+
+		// Only load assignment rows that fall in the page.
+		List<Get> gets = new ArrayList<Get>();
+		for (Result result : scanner) {
+		    if (window.accept()) {
+			byte[] assnKey = HBaseDeviceAssignment.getAssignmentKeyFromStatusIndex(result.getRow());
+			Get get = new Get(HBaseDeviceAssignment.getPrimaryRowkey(assnKey));
+			HBaseUtils.addPayloadFields(get);
+			gets.add(get);
+		    }
+		    if (window.isFilled()) {
+			break;
+		    }
 		}
-		byte[] type = result.getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD_TYPE);
-		byte[] payload = result.getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD);
-		byte[] state = result.getValue(ISiteWhereHBase.FAMILY_ID, HBaseDeviceAssignment.ASSIGNMENT_STATE);
-
-		if ((type != null) && (payload != null)) {
-		    DeviceAssignment assignment = (DeviceAssignment) PayloadMarshalerResolver.getInstance()
-			    .getMarshaler(type).decode(payload, DeviceAssignment.class);
-		    if (state != null) {
-			// DeviceAssignmentState assnState =
-			// PayloadMarshalerResolver.getInstance().getMarshaler(type)
-			// .decodeDeviceAssignmentState(state);
-			// assignment.setState(assnState);
+		for (Result result : sites.get(gets)) {
+		    DeviceAssignment assignment = decodeAssignment(result);
+		    if (assignment != null) {
+			results.add(assignment);
 		    }
-		    if ((criteria.getStatus() == null) || (criteria.getStatus().equals(assignment.getStatus()))) {
-			pager.process(assignment);
+		}
+	    } else {
+		Scan scan = new Scan();
+		scan.setStartRow(getAssignmentRowKey(siteId));
+		scan.setStopRow(getAfterAssignmentRowKey(siteId));
+		FilterList filters = new FilterList(FilterList.Operator.MUST_PASS_ALL);
+		filters.addFilter(getAssignmentRowFilter());
+		filters.addFilter(getNotDeletedFilter());
+		if (criteria.getStatus() != null) {
+		    filters.addFilter(getStatusFilter(criteria.getStatus()));
+		}
+		scan.setFilter(filters);
+		window.configure(scan);
+		scanner = sites.getScanner(scan);
+
+		for (Result result : scanner) {
+		    // Rows without the status column pass the filter, so check payload.
+		    if ((criteria.getStatus() != null)
+			    && (HBaseDeviceAssignment.getStatus(result) != criteria.getStatus())) {
+			continue;
+		    }
+		    if (window.accept()) {
+			DeviceAssignment assignment = decodeAssignment(result);
+			if (assignment != null) {
+			    results.add(assignment);
+			}
+		    }
+		    if (window.isFilled()) {
+			break;
 		    }
 		}
 	    }
-	    return new SearchResults<IDeviceAssignment>(pager.getResults(), pager.getTotal());
+	    return new SearchResults<IDeviceAssignment>(results, window.getMatched());
 	} catch (IOException e) {
 	    throw new SiteWhereException("Error scanning site rows.", e);
 	} finally {
@@ -268,6 +305,57 @@ public class HBaseSite {
 	}
     }
 
+    /**
+     * Decode the device assignment payload from a row.
+     * 
+     * @param result
+     * @return
+     * @throws SiteWhereException
+     */
+    protected static DeviceAssignment decodeAssignment(Result result) throws SiteWhereException {
+	byte[] type = result.getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD_TYPE);
+	byte[] payload = result.getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD);
+	if ((type == null) || (payload == null)) {
+	    return null;
+	}
+	return PayloadMarshalerResolver.getInstance().getMarshaler(type).decode(payload, DeviceAssignment.class);
+    }
+
+    /**
+     * Get a filter that only passes primary assignment rows.
+     * 
+     * @return
+     */
+    protected static RowFilter getAssignmentRowFilter() {
+	return new RowFilter(CompareOp.EQUAL, new RegexStringComparator(REGEX_ASSIGNMENT, Pattern.DOTALL));
+    }
+
+    /**
+     * Get a filter that excludes assignment rows with a different status. Rows
+     * saved before the status column was added are passed.
+     * 
+     * @param status
+     * @return
+     */
+    protected static SingleColumnValueFilter getStatusFilter(DeviceAssignmentStatus status) {
+	SingleColumnValueFilter filter = new SingleColumnValueFilter(ISiteWhereHBase.FAMILY_ID,
+		HBaseDeviceAssignment.ASSIGNMENT_STATUS, CompareOp.EQUAL, status.name().getBytes());
+	filter.setFilterIfMissing(false);
+	return filter;
+    }
+
+    /**
+     * Get a filter that excludes rows marked as deleted.
+     * 
+     * @return
+     */
+    protected static SingleColumnValueFilter getNotDeletedFilter() {
+	SingleColumnValueFilter filter = new SingleColumnValueFilter(ISiteWhereHBase.FAMILY_ID,
+		ISiteWhereHBase.DELETED, CompareOp.NOT_EQUAL, HBaseDevice.DELETED_MARKER);
+	filter.setFilterIfMissing(false);
+	return filter;
+    }
+
     /**
      * List device assignments for a site that have state attached and have a last
      * interaction date within a given date range. TODO: This is not efficient since
@@ -296,15 +384,11 @@ public class HBaseSite {
 	    Scan scan = new Scan();
 	    scan.setStartRow(assnPrefix);
 	    scan.setStopRow(after);
+	    scan.setFilter(getAssignmentRowFilter());
 	    scanner = sites.getScanner(scan);
 
 	    Pager<IDeviceAssignment> pager = new Pager<IDeviceAssignment>(criteria);
 	    for (Result result : scanner) {
-		// TODO: This is inefficient. There should be a filter on the
-		// scanner instead.
-		if (result.getRow()[7] != DeviceAssignmentRecordType.DeviceAssignment.getType()) {
-		    continue;
-		}
 		byte[] type = result.getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD_TYPE);
 		byte[] payload = result.getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD);
 		byte[] state = result.getValue(ISiteWhereHBase.FAMILY_ID, HBaseDeviceAssignment.ASSIGNMENT_STATE);
@@ -372,16 +456,11 @@ public class HBaseSite {
 	    Scan scan = new Scan();
 	    scan.setStartRow(assnPrefix);
 	    scan.setStopRow(after);
+	    scan.setFilter(getAssignmentRowFilter());
 	    scanner = sites.getScanner(scan);
 
 	    Pager<IDeviceAssignment> pager = new Pager<IDeviceAssignment>(criteria);
 	    for (Result result : scanner) {
-		// TODO: This is inefficient. There should be a filter on the
-		// scanner
-		// instead.
-		if (result.getRow()[7] != DeviceAssignmentRecordType.DeviceAssignment.getType()) {
-		    continue;
-		}
 		byte[] type = result.getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD_TYPE);
 		byte[] payload = result.getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD);
 		byte[] state = result.getValue(ISiteWhereHBase.FAMILY_ID, HBaseDeviceAssignment.ASSIGNMENT_STATE);
@@ -468,14 +547,10 @@ public class HBaseSite {
 	    Scan scan = new Scan();
 	    scan.setStartRow(assnPrefix);
 	    scan.setStopRow(after);
+	    scan.setFilter(getAssignmentRowFilter());
 	    scanner = sites.getScanner(scan);
 
 	    for (Result result : scanner) {
-		// TODO: This is inefficient. There should be a filter on the
-		// scanner instead.
-		if (result.getRow()[7] != DeviceAssignmentRecordType.DeviceAssignment.getType()) {
-		    continue;
-		}
 		byte[] payloadType = result.getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD_TYPE);
 		byte[] payload = result.getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD);
 
@@ -519,13 +594,12 @@ public class HBaseSite {
 	byte[] zonePrefix = getZoneRowKey(siteId);
 	byte[] after = getAssignmentRowKey(siteId);
 	BinaryPrefixComparator comparator = new BinaryPrefixComparator(zonePrefix);
-	Pager<IZone> pager = getFilteredSiteRows(context, false, criteria, comparator, zonePrefix, after, Zone.class,
-		IZone.class);
-	return new SearchResults<IZone>(pager.getResults());
+	return getFilteredSiteRows(context, false, criteria, comparator, zonePrefix, after, Zone.class, IZone.class);
     }
 
     /**
-     * Get filtered results from the Site table.
+     * Get filtered results from the Site table. Deleted rows are excluded on the
+     * server and the scan stops once the requested page has been filled.
      * 
      * @param context
      * @param includeDeleted
@@ -538,14 +612,18 @@ public class HBaseSite {
      * @throws SiteWhereException
      */
     @SuppressWarnings("unchecked")
-    protected static <T, I> Pager<I> getFilteredSiteRows(IHBaseContext context, boolean includeDeleted,
+    protected static <T, I> SearchResults<I> getFilteredSiteRows(IHBaseContext context, boolean includeDeleted,
 	    ISearchCriteria criteria, ByteArrayComparable comparator, byte[] startRow, byte[] stopRow, Class<T> type,
 	    Class<I> iface) throws SiteWhereException {
 	Table sites = null;
 	ResultScanner scanner = null;
 	try {
 	    sites = getSitesTableInterface(context);
-	    RowFilter matcher = new RowFilter(CompareOp.EQUAL, comparator);
+	    FilterList filters = new FilterList(FilterList.Operator.MUST_PASS_ALL);
+	    filters.addFilter(new RowFilter(CompareOp.EQUAL, comparator));
+	    if (!includeDeleted) {
+		filters.addFilter(getNotDeletedFilter());
+	    }
 	    Scan scan = new Scan();
 	    if (startRow != null) {
 		scan.setStartRow(startRow);
@@ -553,26 +631,24 @@ public class HBaseSite {
 	    if (stopRow != null) {
 		scan.setStopRow(stopRow);
 	    }
-	    scan.setFilter(matcher);
+	    scan.setFilter(filters);
+	    ScanPageWindow window = new ScanPageWindow(criteria);
+	    window.configure(scan);
 	    scanner = sites.getScanner(scan);
 
-	    Pager<I> pager = new Pager<I>(criteria);
+	    List<I> results = new ArrayList<I>();
 	    for (Result result : scanner) {
-		boolean shouldAdd = true;
 		byte[] payloadType = result.getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD_TYPE);
 		byte[] payload = result.getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.PAYLOAD);
-		byte[] deleted = result.getValue(ISiteWhereHBase.FAMILY_ID, ISiteWhereHBase.DELETED);
-
-		if ((deleted != null) && (!includeDeleted)) {
-		    shouldAdd = false;
-		}
-
-		if ((shouldAdd) && (payloadType != null) && (payload != null)) {
-		    pager.process(
+		if ((payloadType != null) && (payload != null) && window.accept()) {
+		    results.add(
 			    (I) PayloadMarshalerResolver.getInstance().getMarshaler(payloadType).decode(payload, type));
 		}
+		if (window.isFilled()) {
+		    break;
+		}
 	    }
-	    return pager;
+	    return new SearchResults<I>(results, window.getMatched());
 	} catch (IOException e) {
 	    throw new SiteWhereException("Error scanning site rows.", e);
 	} finally {
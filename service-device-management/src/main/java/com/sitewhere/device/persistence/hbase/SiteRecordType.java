@@ -24,7 +24,10 @@ public enum SiteRecordType {
     Assignment((byte) 0x02),
 
     /** End marker for scan ranges */
-    End((byte) 0x03);
+    End((byte) 0x03),
+
+    /** Assignment status index record */
+    AssignmentStatusIndex((byte) 0x04);
 
     /** Type indicator */
     private byte type;
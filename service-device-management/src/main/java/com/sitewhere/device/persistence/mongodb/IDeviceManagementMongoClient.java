@@ -10,6 +10,7 @@ package com.sitewhere.device.persistence.mongodb;
 import org.bson.Document;
 
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
 import com.sitewhere.spi.SiteWhereException;
 
 /**
@@ -52,6 +53,14 @@ public interface IDeviceManagementMongoClient {
     /** Default collection name for SiteWhere device streams data */
     public static final String DEFAULT_DEVICE_STREAM_DATA_COLLECTION_NAME = "streamdata";
 
+    /**
+     * Get database that contains the collections.
+     * 
+     * @return
+     * @throws SiteWhereException
+     */
+    public MongoDatabase getDatabase() throws SiteWhereException;
+
     /**
      * Collection for device types.
      * 
@@ -9,6 +9,7 @@ package com.sitewhere.device.persistence.mongodb;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -18,17 +19,27 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.bson.Document;
 
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoTimeoutException;
+import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.result.DeleteResult;
 import com.sitewhere.device.persistence.DeviceManagementPersistence;
 import com.sitewhere.mongodb.IMongoConverterLookup;
 import com.sitewhere.mongodb.MongoPersistence;
+import com.sitewhere.mongodb.MongoQueryPlanVerifier;
 import com.sitewhere.mongodb.common.MongoSiteWhereEntity;
 import com.sitewhere.rest.model.device.Device;
+import com.sitewhere.rest.model.device.DeviceBulkCreateError;
+import com.sitewhere.rest.model.device.DeviceBulkCreateResponse;
 import com.sitewhere.rest.model.device.DeviceAssignment;
 import com.sitewhere.rest.model.device.DeviceStatus;
 import com.sitewhere.rest.model.device.DeviceType;
@@ -46,6 +57,7 @@ import com.sitewhere.spi.asset.IAssetReference;
 import com.sitewhere.spi.device.DeviceAssignmentStatus;
 import com.sitewhere.spi.device.IDevice;
 import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceBulkCreateResponse;
 import com.sitewhere.spi.device.IDeviceElementMapping;
 import com.sitewhere.spi.device.IDeviceManagement;
 import com.sitewhere.spi.device.IDeviceStatus;
@@ -57,6 +69,7 @@ import com.sitewhere.spi.device.event.request.IDeviceStreamCreateRequest;
 import com.sitewhere.spi.device.group.IDeviceGroup;
 import com.sitewhere.spi.device.group.IDeviceGroupElement;
 import com.sitewhere.spi.device.request.IDeviceAssignmentCreateRequest;
+import com.sitewhere.spi.device.request.IDeviceBulkCreateRequest;
 import com.sitewhere.spi.device.request.IDeviceCommandCreateRequest;
 import com.sitewhere.spi.device.request.IDeviceCreateRequest;
 import com.sitewhere.spi.device.request.IDeviceGroupCreateRequest;
@@ -111,6 +124,9 @@ public class MongoDeviceManagement extends TenantEngineLifecycleComponent implem
     public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
 	// Ensure that collection indexes exist.
 	ensureIndexes();
+
+	// Report query shapes that are not supported by an index.
+	verifyQueryPlans();
     }
 
     /*
@@ -143,6 +159,13 @@ public class MongoDeviceManagement extends TenantEngineLifecycleComponent implem
 	getMongoClient().getDeviceStatusesCollection().createIndex(
 		new Document(MongoDeviceStatus.PROP_DEVICE_TYPE_ID, 1).append(MongoDeviceStatus.PROP_CODE, 1),
 		new IndexOptions().unique(true));
+	getMongoClient().getDeviceTypesCollection().createIndex(
+		new Document(MongoSiteWhereEntity.PROP_DELETED, 1).append(MongoSiteWhereEntity.PROP_CREATED_DATE, -1),
+		background());
+	getMongoClient().getDeviceCommandsCollection()
+		.createIndex(new Document(MongoDeviceCommand.PROP_DEVICE_TYPE_ID, 1)
+			.append(MongoSiteWhereEntity.PROP_DELETED, 1).append(MongoDeviceCommand.PROP_NAME, 1),
+			background());
 
 	// Devices.
 	getMongoClient().getDevicesCollection().createIndex(new Document(MongoDevice.PROP_ID, 1),
@@ -150,6 +173,17 @@ public class MongoDeviceManagement extends TenantEngineLifecycleComponent implem
 	getMongoClient().getDevicesCollection().createIndex(new Document(MongoDevice.PROP_HARDWARE_ID, 1),
 		new IndexOptions().unique(true));
 
+	// Device list filters on deleted plus one optional equality field and
+	// sorts by created date (which is also used for range filters).
+	getMongoClient().getDevicesCollection().createIndex(
+		new Document(MongoSiteWhereEntity.PROP_DELETED, 1).append(MongoSiteWhereEntity.PROP_CREATED_DATE, -1),
+		background());
+	for (String field : new String[] { MongoDevice.PROP_DEVICE_TYPE_ID, MongoDevice.PROP_SITE_ID,
+		MongoDevice.PROP_ASSIGNMENT_ID }) {
+	    getMongoClient().getDevicesCollection().createIndex(new Document(MongoSiteWhereEntity.PROP_DELETED, 1)
+		    .append(field, 1).append(MongoSiteWhereEntity.PROP_CREATED_DATE, -1), background());
+	}
+
 	// Device assignments.
 	getMongoClient().getDeviceAssignmentsCollection().createIndex(new Document(MongoDeviceAssignment.PROP_ID, 1),
 		new IndexOptions().unique(true));
@@ -159,6 +193,32 @@ public class MongoDeviceManagement extends TenantEngineLifecycleComponent implem
 		.createIndex(new Document(MongoDeviceAssignment.PROP_SITE_ID, 1)
 			.append(MongoDeviceAssignment.PROP_ASSET_REFERENCE, 1)
 			.append(MongoDeviceAssignment.PROP_STATUS, 1));
+	getMongoClient().getDeviceAssignmentsCollection()
+		.createIndex(new Document(MongoDeviceAssignment.PROP_DEVICE_ID, 1)
+			.append(MongoDeviceAssignment.PROP_ACTIVE_DATE, -1), background());
+	getMongoClient().getDeviceAssignmentsCollection().createIndex(
+		new Document(MongoDeviceAssignment.PROP_SITE_ID, 1).append(MongoDeviceAssignment.PROP_ACTIVE_DATE, -1),
+		background());
+	getMongoClient().getDeviceAssignmentsCollection()
+		.createIndex(new Document(MongoDeviceAssignment.PROP_SITE_ID, 1)
+			.append(MongoDeviceAssignment.PROP_STATUS, 1)
+			.append(MongoDeviceAssignment.PROP_ACTIVE_DATE, -1), background());
+	getMongoClient().getDeviceAssignmentsCollection()
+		.createIndex(new Document(MongoDeviceAssignment.PROP_ASSET_REFERENCE, 1)
+			.append(MongoDeviceAssignment.PROP_ACTIVE_DATE, -1), background());
+
+	// Device streams.
+	getMongoClient().getStreamsCollection().createIndex(new Document(MongoDeviceStream.PROP_ASSIGNMENT_ID, 1)
+		.append(MongoSiteWhereEntity.PROP_CREATED_DATE, -1), background());
+	getMongoClient().getStreamsCollection().createIndex(new Document(MongoDeviceStream.PROP_ASSIGNMENT_ID, 1)
+		.append(MongoDeviceStream.PROP_STREAM_ID, 1), background());
+
+	// Zones.
+	getMongoClient().getZonesCollection().createIndex(new Document(MongoZone.PROP_ID, 1), background());
+	getMongoClient().getZonesCollection().createIndex(new Document(MongoZone.PROP_TOKEN, 1), background());
+	getMongoClient().getZonesCollection().createIndex(
+		new Document(MongoZone.PROP_SITE_ID, 1).append(MongoSiteWhereEntity.PROP_CREATED_DATE, -1),
+		background());
 
 	// Device group indexes.
 	getMongoClient().getDeviceGroupsCollection().createIndex(new Document(MongoDeviceGroup.PROP_ID, 1),
@@ -166,10 +226,77 @@ public class MongoDeviceManagement extends TenantEngineLifecycleComponent implem
 	getMongoClient().getDeviceGroupsCollection().createIndex(new Document(MongoDeviceGroup.PROP_TOKEN, 1),
 		new IndexOptions().unique(true));
 	getMongoClient().getDeviceGroupsCollection().createIndex(new Document(MongoDeviceGroup.PROP_ROLES, 1));
+	getMongoClient().getDeviceGroupsCollection().createIndex(
+		new Document(MongoSiteWhereEntity.PROP_DELETED, 1).append(MongoSiteWhereEntity.PROP_CREATED_DATE, -1),
+		background());
+	getMongoClient().getDeviceGroupsCollection()
+		.createIndex(new Document(MongoDeviceGroup.PROP_ROLES, 1).append(MongoSiteWhereEntity.PROP_DELETED, 1)
+			.append(MongoSiteWhereEntity.PROP_CREATED_DATE, -1), background());
 	getMongoClient().getGroupElementsCollection().createIndex(new Document(MongoDeviceGroupElement.PROP_GROUP_ID, 1)
 		.append(MongoDeviceGroupElement.PROP_TYPE, 1).append(MongoDeviceGroupElement.PROP_ELEMENT_ID, 1));
 	getMongoClient().getGroupElementsCollection().createIndex(
 		new Document(MongoDeviceGroupElement.PROP_GROUP_ID, 1).append(MongoDeviceGroupElement.PROP_ROLES, 1));
+	getMongoClient().getGroupElementsCollection().createIndex(
+		new Document(MongoDeviceGroupElement.PROP_GROUP_ID, 1).append(MongoDeviceGroupElement.PROP_INDEX, 1),
+		background());
+    }
+
+    /**
+     * Options for secondary indexes. These are built in the background so that
+     * adding them to a large existing collection does not block the tenant.
+     * 
+     * @return
+     */
+    protected static IndexOptions background() {
+	return new IndexOptions().background(true);
+    }
+
+    /**
+     * Explain representative list queries and log any that still scan a
+     * collection or sort in memory.
+     * 
+     * @throws SiteWhereException
+     */
+    protected void verifyQueryPlans() throws SiteWhereException {
+	MongoQueryPlanVerifier verifier = new MongoQueryPlanVerifier(getMongoClient().getDatabase());
+	UUID sample = UUID.randomUUID();
+	Document byCreated = new Document(MongoSiteWhereEntity.PROP_CREATED_DATE, -1);
+	Document byActive = new Document(MongoDeviceAssignment.PROP_ACTIVE_DATE, -1);
+
+	MongoCollection<Document> devices = getMongoClient().getDevicesCollection();
+	verifier.verify("List devices", devices, new Document(MongoSiteWhereEntity.PROP_DELETED, false), byCreated);
+	verifier.verify("List devices by type", devices, new Document(MongoSiteWhereEntity.PROP_DELETED, false)
+		.append(MongoDevice.PROP_DEVICE_TYPE_ID, sample), byCreated);
+	verifier.verify("List devices by site", devices,
+		new Document(MongoSiteWhereEntity.PROP_DELETED, false).append(MongoDevice.PROP_SITE_ID, sample),
+		byCreated);
+	verifier.verify("List unassigned devices", devices,
+		new Document(MongoSiteWhereEntity.PROP_DELETED, false).append(MongoDevice.PROP_ASSIGNMENT_ID, null),
+		byCreated);
+
+	MongoCollection<Document> assignments = getMongoClient().getDeviceAssignmentsCollection();
+	verifier.verify("List assignments for device", assignments,
+		new Document(MongoDeviceAssignment.PROP_DEVICE_ID, sample), byActive);
+	verifier.verify("List assignments for site", assignments,
+		new Document(MongoDeviceAssignment.PROP_SITE_ID, sample), byActive);
+	verifier.verify("List assignments for site by status", assignments,
+		new Document(MongoDeviceAssignment.PROP_SITE_ID, sample).append(MongoDeviceAssignment.PROP_STATUS,
+			DeviceAssignmentStatus.Active.name()),
+		byActive);
+
+	verifier.verify("List device streams", getMongoClient().getStreamsCollection(),
+		new Document(MongoDeviceStream.PROP_ASSIGNMENT_ID, sample), byCreated);
+	verifier.verify("List zones", getMongoClient().getZonesCollection(),
+		new Document(MongoZone.PROP_SITE_ID, sample), byCreated);
+	verifier.verify("List device group elements", getMongoClient().getGroupElementsCollection(),
+		new Document(MongoDeviceGroupElement.PROP_GROUP_ID, sample),
+		new Document(MongoDeviceGroupElement.PROP_INDEX, 1));
+
+	if (verifier.getProblems().isEmpty()) {
+	    getLogger().info("All device management list queries are supported by indexes.");
+	} else {
+	    getLogger().warn(verifier.getProblems().size() + " device management queries are not fully indexed.");
+	}
     }
 
     /*
@@ -639,6 +766,200 @@ public class MongoDeviceManagement extends TenantEngineLifecycleComponent implem
 	return newDevice;
     }
 
+    /*
+     * @see
+     * com.sitewhere.spi.device.IDeviceManagement#createDevices(com.sitewhere.spi.
+     * device.request.IDeviceBulkCreateRequest)
+     */
+    @Override
+    public IDeviceBulkCreateResponse createDevices(IDeviceBulkCreateRequest request) throws SiteWhereException {
+	DeviceBulkCreateResponse response = new DeviceBulkCreateResponse();
+	List<IDeviceCreateRequest> rows = request.getDevices();
+	MongoCollection<Document> devices = getMongoClient().getDevicesCollection();
+
+	// Look up existing devices with a single query when updating.
+	Map<String, Document> existing = new HashMap<String, Document>();
+	if (request.isUpdateExisting()) {
+	    List<String> hardwareIds = new ArrayList<String>();
+	    for (IDeviceCreateRequest row : rows) {
+		hardwareIds.add(row.getHardwareId());
+	    }
+	    Document query = new Document(MongoDevice.PROP_HARDWARE_ID, new Document("$in", hardwareIds));
+	    for (Document match : devices.find(query)) {
+		existing.put((String) match.get(MongoDevice.PROP_HARDWARE_ID), match);
+	    }
+	}
+
+	// Validate rows and build writes. Tokens are resolved once per batch.
+	Map<String, ISite> sites = new HashMap<String, ISite>();
+	Map<String, IDeviceType> deviceTypes = new HashMap<String, IDeviceType>();
+	List<WriteModel<Document>> writes = new ArrayList<WriteModel<Document>>();
+	List<Integer> writeRows = new ArrayList<Integer>();
+	List<Device> created = new ArrayList<Device>();
+	for (int i = 0; i < rows.size(); i++) {
+	    IDeviceCreateRequest row = rows.get(i);
+	    try {
+		ISite site = resolveSite(sites, row.getSiteToken());
+		IDeviceType deviceType = resolveDeviceType(deviceTypes, row.getDeviceTypeToken());
+		Document match = existing.get(row.getHardwareId());
+		if (match != null) {
+		    Device device = MongoDevice.fromDocument(match);
+		    DeviceManagementPersistence.deviceUpdateLogic(row, site, deviceType, null, device);
+		    Document query = new Document(MongoDevice.PROP_ID, device.getId());
+		    Document updated = new Document("$set", MongoDevice.toDocument(device));
+		    writes.add(new UpdateOneModel<Document>(query, updated));
+		    created.add(null);
+		} else {
+		    Device device = DeviceManagementPersistence.deviceCreateLogic(row, site, deviceType);
+		    writes.add(new InsertOneModel<Document>(MongoDevice.toDocument(device)));
+		    created.add(device);
+		}
+		writeRows.add(i);
+	    } catch (SiteWhereException e) {
+		response.getErrors().add(new DeviceBulkCreateError(i, row.getHardwareId(), getBulkErrorMessage(e)));
+	    }
+	}
+
+	// Unordered write so a failed row does not stop the rest of the batch.
+	Map<Integer, String> failed = bulkWrite(devices, writes, ErrorCode.DuplicateHardwareId);
+	List<Device> assignable = new ArrayList<Device>();
+	for (int i = 0; i < writes.size(); i++) {
+	    int row = writeRows.get(i);
+	    if (failed.containsKey(i)) {
+		response.getErrors().add(new DeviceBulkCreateError(row, rows.get(row).getHardwareId(), failed.get(i)));
+	    } else if (created.get(i) == null) {
+		response.setUpdatedCount(response.getUpdatedCount() + 1);
+	    } else {
+		response.setCreatedCount(response.getCreatedCount() + 1);
+		assignable.add(created.get(i));
+	    }
+	}
+
+	// Optionally create an assignment for each new device.
+	if ((request.getAssignmentTemplate() != null) && (!assignable.isEmpty())) {
+	    response.setAssignmentsCreated(createBulkAssignments(request.getAssignmentTemplate(), assignable));
+	}
+
+	response.getErrors().sort((a, b) -> Integer.compare(a.getIndex(), b.getIndex()));
+	return response;
+    }
+
+    /**
+     * Create assignments based on a template for newly created devices and
+     * update the devices to reference them.
+     * 
+     * @param template
+     * @param devices
+     * @return
+     * @throws SiteWhereException
+     */
+    protected int createBulkAssignments(IDeviceAssignmentCreateRequest template, List<Device> devices)
+	    throws SiteWhereException {
+	List<WriteModel<Document>> inserts = new ArrayList<WriteModel<Document>>();
+	List<DeviceAssignment> assignments = new ArrayList<DeviceAssignment>();
+	for (Device device : devices) {
+	    DeviceAssignment assignment = DeviceManagementPersistence.deviceAssignmentCreateLogic(template, device);
+	    assignment.setToken(UUID.randomUUID().toString());
+	    inserts.add(new InsertOneModel<Document>(MongoDeviceAssignment.toDocument(assignment)));
+	    assignments.add(assignment);
+	}
+	Map<Integer, String> failed = bulkWrite(getMongoClient().getDeviceAssignmentsCollection(), inserts,
+		ErrorCode.DuplicateDeviceAssignment);
+
+	// Point devices at the assignments that were stored.
+	List<WriteModel<Document>> updates = new ArrayList<WriteModel<Document>>();
+	for (int i = 0; i < assignments.size(); i++) {
+	    if (!failed.containsKey(i)) {
+		DeviceAssignment assignment = assignments.get(i);
+		Document query = new Document(MongoDevice.PROP_ID, assignment.getDeviceId());
+		Document pointer = new Document(MongoDevice.PROP_ASSIGNMENT_ID, assignment.getId());
+		updates.add(new UpdateOneModel<Document>(query, new Document("$set", pointer)));
+	    }
+	}
+	bulkWrite(getMongoClient().getDevicesCollection(), updates, null);
+	return updates.size();
+    }
+
+    /**
+     * Execute an unordered bulk write and return error messages indexed by the
+     * position of the failed write.
+     * 
+     * @param collection
+     * @param writes
+     * @param duplicate
+     * @return
+     * @throws SiteWhereException
+     */
+    protected Map<Integer, String> bulkWrite(MongoCollection<Document> collection, List<WriteModel<Document>> writes,
+	    ErrorCode duplicate) throws SiteWhereException {
+	Map<Integer, String> failed = new HashMap<Integer, String>();
+	if (writes.isEmpty()) {
+	    return failed;
+	}
+	try {
+	    collection.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+	} catch (MongoBulkWriteException e) {
+	    for (BulkWriteError error : e.getWriteErrors()) {
+		boolean isDuplicate = (duplicate != null) && (error.getCategory() == ErrorCategory.DUPLICATE_KEY);
+		failed.put(error.getIndex(), isDuplicate ? duplicate.getMessage() : error.getMessage());
+	    }
+	} catch (MongoTimeoutException e) {
+	    throw new SiteWhereException("Connection to MongoDB lost.", e);
+	}
+	return failed;
+    }
+
+    /**
+     * Resolve a site by token, caching the result for the rest of a batch.
+     * 
+     * @param cache
+     * @param token
+     * @return
+     * @throws SiteWhereException
+     */
+    protected ISite resolveSite(Map<String, ISite> cache, String token) throws SiteWhereException {
+	if (!cache.containsKey(token)) {
+	    cache.put(token, getSiteByToken(token));
+	}
+	ISite site = cache.get(token);
+	if (site == null) {
+	    throw new SiteWhereSystemException(ErrorCode.InvalidSiteToken, ErrorLevel.ERROR);
+	}
+	return site;
+    }
+
+    /**
+     * Resolve a device type by token, caching the result for the rest of a batch.
+     * 
+     * @param cache
+     * @param token
+     * @return
+     * @throws SiteWhereException
+     */
+    protected IDeviceType resolveDeviceType(Map<String, IDeviceType> cache, String token) throws SiteWhereException {
+	if (!cache.containsKey(token)) {
+	    cache.put(token, getDeviceTypeByToken(token));
+	}
+	IDeviceType deviceType = cache.get(token);
+	if (deviceType == null) {
+	    throw new SiteWhereSystemException(ErrorCode.InvalidDeviceTypeToken, ErrorLevel.ERROR);
+	}
+	return deviceType;
+    }
+
+    /**
+     * Get message reported for a row that failed validation.
+     * 
+     * @param e
+     * @return
+     */
+    protected static String getBulkErrorMessage(SiteWhereException e) {
+	if (e instanceof SiteWhereSystemException) {
+	    return ((SiteWhereSystemException) e).getCode().getMessage();
+	}
+	return e.getMessage();
+    }
+
     /*
      * @see com.sitewhere.spi.device.IDeviceManagement#updateDevice(java.util.UUID,
      * com.sitewhere.spi.device.request.IDeviceCreateRequest)
@@ -754,6 +1075,11 @@ public class MongoDeviceManagement extends TenantEngineLifecycleComponent implem
 	    dbCriteria.put(MongoDevice.PROP_SITE_ID, site.getId());
 	}
 
+	// Add hardware id filter if specified.
+	if ((criteria.getHardwareIds() != null) && (!criteria.getHardwareIds().isEmpty())) {
+	    dbCriteria.put(MongoDevice.PROP_HARDWARE_ID, new Document("$in", criteria.getHardwareIds()));
+	}
+
 	Document sort = new Document(MongoSiteWhereEntity.PROP_CREATED_DATE, -1);
 	return MongoPersistence.search(IDevice.class, devices, dbCriteria, sort, criteria, LOOKUP);
     }
@@ -7,37 +7,69 @@
  */
 package com.sitewhere.registration;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.sitewhere.common.MarshalUtils;
+import com.sitewhere.grpc.model.marshaling.KafkaModelMarshaler;
+import com.sitewhere.microservice.security.SystemUserRunnable;
 import com.sitewhere.registration.spi.IRegistrationManager;
 import com.sitewhere.registration.spi.microservice.IDeviceRegistrationMicroservice;
+import com.sitewhere.registration.spi.microservice.IDeviceRegistrationTenantEngine;
 import com.sitewhere.rest.model.device.DeviceElementMapping;
 import com.sitewhere.rest.model.device.command.DeviceMappingAckCommand;
 import com.sitewhere.rest.model.device.command.RegistrationAckCommand;
 import com.sitewhere.rest.model.device.command.RegistrationFailureCommand;
+import com.sitewhere.rest.model.device.event.request.DeviceRegistrationRequest;
 import com.sitewhere.rest.model.device.request.DeviceAssignmentCreateRequest;
+import com.sitewhere.rest.model.device.request.DeviceBulkCreateRequest;
 import com.sitewhere.rest.model.device.request.DeviceCreateRequest;
+import com.sitewhere.rest.model.microservice.kafka.payload.SystemCommandPayload;
+import com.sitewhere.rest.model.search.device.DeviceSearchCriteria;
 import com.sitewhere.server.lifecycle.TenantEngineLifecycleComponent;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.DeviceAssignmentType;
 import com.sitewhere.spi.device.IDevice;
+import com.sitewhere.spi.device.IDeviceBulkCreateError;
+import com.sitewhere.spi.device.IDeviceBulkCreateResponse;
 import com.sitewhere.spi.device.IDeviceManagement;
 import com.sitewhere.spi.device.IDeviceType;
 import com.sitewhere.spi.device.ISite;
 import com.sitewhere.spi.device.command.DeviceMappingResult;
+import com.sitewhere.spi.device.command.ISystemCommand;
 import com.sitewhere.spi.device.command.RegistrationFailureReason;
 import com.sitewhere.spi.device.command.RegistrationSuccessReason;
 import com.sitewhere.spi.device.event.request.IDeviceMappingCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceRegistrationRequest;
+import com.sitewhere.spi.device.event.request.IDeviceStateChangeCreateRequest;
+import com.sitewhere.spi.device.event.state.StateChangeCategory;
+import com.sitewhere.spi.device.event.state.StateChangeType;
 import com.sitewhere.spi.microservice.kafka.payload.IInboundEventPayload;
 import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
 
 /**
- * Base logic for {@link IRegistrationManager} implementations.
+ * Base logic for {@link IRegistrationManager} implementations. Registrations
+ * and events for unregistered devices are collected per hardware id for a
+ * short window so that bursts of registrations result in bulk device creation
+ * rather than a round trip per device.
  * 
  * @author Derek
  */
@@ -46,6 +78,21 @@ public class DefaultRegistrationManager extends TenantEngineLifecycleComponent i
     /** Static logger instance */
     private static Logger LOGGER = LogManager.getLogger();
 
+    /** Default time registrations are collected before processing */
+    private static final long DEFAULT_BATCH_WINDOW_MS = 500;
+
+    /** Default number of pending devices that forces early processing */
+    private static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+
+    /** Default number of events held per device waiting on registration */
+    private static final int DEFAULT_MAX_EVENTS_PER_DEVICE = 100;
+
+    /** Default number of pending devices at which callers are blocked */
+    private static final int DEFAULT_MAX_PENDING_DEVICES = 10000;
+
+    /** Default number of attempts to process a registration before dropping it */
+    private static final int DEFAULT_MAX_FLUSH_ATTEMPTS = 5;
+
     /** Indicates if new devices can register with the system */
     private boolean allowNewDevices = true;
 
@@ -61,6 +108,30 @@ public class DefaultRegistrationManager extends TenantEngineLifecycleComponent i
     /** Site used for automatic assignment */
     private ISite autoAssignSite;
 
+    /** Time in milliseconds registrations are collected before processing */
+    private long batchWindowMs = DEFAULT_BATCH_WINDOW_MS;
+
+    /** Number of pending devices that forces a batch to be processed early */
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+    /** Maximum number of events held per device while waiting on registration */
+    private int maxEventsPerDevice = DEFAULT_MAX_EVENTS_PER_DEVICE;
+
+    /** Number of pending devices at which callers are blocked */
+    private int maxPendingDevices = DEFAULT_MAX_PENDING_DEVICES;
+
+    /** Number of attempts to process a registration before dropping it */
+    private int maxFlushAttempts = DEFAULT_MAX_FLUSH_ATTEMPTS;
+
+    /** Pending registrations indexed by hardware id */
+    private Map<String, PendingRegistration> pending = new LinkedHashMap<String, PendingRegistration>();
+
+    /** Processes batches of pending registrations */
+    private ScheduledExecutorService flusher;
+
+    /** Indicates an immediate flush is already queued */
+    private AtomicBoolean flushRequested = new AtomicBoolean();
+
     public DefaultRegistrationManager() {
 	super(LifecycleComponentType.RegistrationManager);
     }
@@ -74,28 +145,383 @@ public class DefaultRegistrationManager extends TenantEngineLifecycleComponent i
      */
     @Override
     public void handleDeviceRegistration(IDeviceRegistrationRequest request) throws SiteWhereException {
-	LOGGER.debug("Handling device registration request.");
-	IDevice device = getDeviceManagement().getDeviceByHardwareId(request.getHardwareId());
-	IDeviceType deviceType = getDeviceTypeFor(request);
-	ISite deviceSite = getSiteFor(request);
+	LOGGER.debug("Queueing device registration request for " + request.getHardwareId() + ".");
+	boolean full;
+	synchronized (pending) {
+	    awaitCapacity(request.getHardwareId());
+	    getPendingRegistration(request.getHardwareId()).setRequest(request);
+	    full = pending.size() >= getMaxBatchSize();
+	}
+	if (full) {
+	    requestFlush();
+	}
+    }
+
+    /*
+     * @see com.sitewhere.registration.spi.IRegistrationManager#
+     * handleUnregisteredDeviceEvent(com.sitewhere.spi.microservice.kafka.payload.
+     * IInboundEventPayload)
+     */
+    @Override
+    public void handleUnregisteredDeviceEvent(IInboundEventPayload payload) throws SiteWhereException {
+	IDeviceRegistrationRequest registration = asRegistrationRequest(payload);
+	if (registration != null) {
+	    handleDeviceRegistration(registration);
+	    return;
+	}
+	boolean full;
+	synchronized (pending) {
+	    awaitCapacity(payload.getHardwareId());
+	    getPendingRegistration(payload.getHardwareId()).addEvent(payload, getMaxEventsPerDevice());
+	    full = pending.size() >= getMaxBatchSize();
+	}
+	if (full) {
+	    requestFlush();
+	}
+    }
+
+    /**
+     * Get pending registration for a hardware id, creating it if necessary.
+     * Caller must hold the lock on the pending map.
+     * 
+     * @param hardwareId
+     * @return
+     */
+    protected PendingRegistration getPendingRegistration(String hardwareId) {
+	PendingRegistration registration = pending.get(hardwareId);
+	if (registration == null) {
+	    registration = new PendingRegistration(hardwareId);
+	    pending.put(hardwareId, registration);
+	}
+	return registration;
+    }
+
+    /**
+     * Convert payload to a registration request if it carries one.
+     * 
+     * @param payload
+     * @return
+     */
+    protected IDeviceRegistrationRequest asRegistrationRequest(IInboundEventPayload payload) {
+	if (payload.getEventCreateRequest() instanceof IDeviceRegistrationRequest) {
+	    return (IDeviceRegistrationRequest) payload.getEventCreateRequest();
+	}
+	if (!(payload.getEventCreateRequest() instanceof IDeviceStateChangeCreateRequest)) {
+	    return null;
+	}
+	IDeviceStateChangeCreateRequest state = (IDeviceStateChangeCreateRequest) payload.getEventCreateRequest();
+	if ((state.getCategory() != StateChangeCategory.Registration)
+		|| (state.getType() != StateChangeType.Registration_Requested)) {
+	    return null;
+	}
+	DeviceRegistrationRequest registration = new DeviceRegistrationRequest();
+	if (state.getData() != null) {
+	    registration.getData().putAll(state.getData());
+	}
+	if (registration.getHardwareId() == null) {
+	    registration.setHardwareId(payload.getHardwareId());
+	}
+	registration.setMetadata(state.getMetadata());
+	return registration;
+    }
+
+    /**
+     * Schedule an immediate flush of pending registrations. Requests made while
+     * a flush is already queued are coalesced into it.
+     */
+    protected void requestFlush() {
+	if ((flusher != null) && (!flusher.isShutdown()) && (flushRequested.compareAndSet(false, true))) {
+	    flusher.execute(new RegistrationFlusher());
+	}
+    }
+
+    /**
+     * Block the caller while the number of pending devices is at its limit so
+     * that inbound consumers are slowed rather than growing the map without
+     * bound. Work for a hardware id that is already pending is always accepted.
+     * Caller must hold the lock on the pending map.
+     * 
+     * @param hardwareId
+     * @throws SiteWhereException
+     */
+    protected void awaitCapacity(String hardwareId) throws SiteWhereException {
+	while ((pending.size() >= getMaxPendingDevices()) && (!pending.containsKey(hardwareId))
+		&& (flusher != null) && (!flusher.isShutdown())) {
+	    requestFlush();
+	    try {
+		pending.wait(getBatchWindowMs());
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		throw new SiteWhereException("Interrupted while waiting for pending registrations to be processed.");
+	    }
+	}
+    }
+
+    /**
+     * Return registrations to the pending map after a failed attempt so they are
+     * picked up by a later flush. Work received for the same hardware id in the
+     * meantime is merged in. Entries that have failed too many times are dropped.
+     * 
+     * @param registrations
+     */
+    protected void requeue(List<PendingRegistration> registrations) {
+	synchronized (pending) {
+	    for (PendingRegistration registration : registrations) {
+		if (registration.incrementAttempts() >= getMaxFlushAttempts()) {
+		    LOGGER.error("Giving up on registration for " + registration.getHardwareId() + " after "
+			    + registration.getAttempts() + " attempts. Dropping " + registration.getEvents().size()
+			    + " held events.");
+		    continue;
+		}
+		PendingRegistration newer = pending.remove(registration.getHardwareId());
+		if (newer != null) {
+		    registration.merge(newer, getMaxEventsPerDevice());
+		}
+		pending.put(registration.getHardwareId(), registration);
+	    }
+	}
+    }
+
+    /**
+     * Process up to one batch of pending registrations. Existing devices are
+     * looked up with a single query, then new devices (with their assignments)
+     * are created and existing devices are updated in a single bulk call. Rows
+     * the bulk call rejects fall back to per-device processing. If the lookup or
+     * bulk call fails, the entries are requeued for a later flush.
+     * 
+     * @return true if the batch succeeded and another full batch is waiting
+     * @throws SiteWhereException
+     */
+    protected boolean flush() throws SiteWhereException {
+	List<PendingRegistration> batch = new ArrayList<PendingRegistration>();
+	boolean more;
+	synchronized (pending) {
+	    Iterator<PendingRegistration> it = pending.values().iterator();
+	    while ((batch.size() < getMaxBatchSize()) && (it.hasNext())) {
+		batch.add(it.next());
+		it.remove();
+	    }
+	    more = pending.size() >= getMaxBatchSize();
+	    pending.notifyAll();
+	}
+	if (batch.isEmpty()) {
+	    return false;
+	}
+	LOGGER.debug("Processing batch of " + batch.size() + " pending registrations.");
+	return processBatch(batch) && more;
+    }
+
+    /**
+     * Process a batch of registrations taken from the pending map.
+     * 
+     * @param batch
+     * @return false if the batch failed and was requeued
+     */
+    protected boolean processBatch(List<PendingRegistration> batch) {
+	Map<String, IDeviceType> deviceTypes = new HashMap<String, IDeviceType>();
+	Map<String, ISite> sites = new HashMap<String, ISite>();
+	Map<UUID, ISite> sitesById = new HashMap<UUID, ISite>();
+
+	Map<String, IDevice> existing;
+	try {
+	    existing = getExistingDevices(batch);
+	} catch (SiteWhereException e) {
+	    LOGGER.error("Unable to look up devices for batch of " + batch.size() + " registrations. Will retry.", e);
+	    requeue(batch);
+	    return false;
+	}
+
+	List<PendingRegistration> rows = new ArrayList<PendingRegistration>();
+	DeviceBulkCreateRequest create = new DeviceBulkCreateRequest();
+	create.setUpdateExisting(true);
+	DeviceAssignmentCreateRequest template = new DeviceAssignmentCreateRequest();
+	template.setAssignmentType(DeviceAssignmentType.Unassociated);
+	create.setAssignmentTemplate(template);
+
+	for (PendingRegistration registration : batch) {
+	    try {
+		if (registration.getRequest() == null) {
+		    if (!isAutoRegisterAllowed()) {
+			LOGGER.info("Dropping " + registration.getEvents().size() + " events for unregistered device "
+				+ registration.getHardwareId() + ".");
+			continue;
+		    }
+		    DeviceRegistrationRequest implied = new DeviceRegistrationRequest();
+		    implied.setHardwareId(registration.getHardwareId());
+		    registration.setRequest(implied);
+		}
+		DeviceCreateRequest row = buildDeviceRow(registration, existing.get(registration.getHardwareId()),
+			deviceTypes, sites, sitesById);
+		if (row != null) {
+		    create.getDevices().add(row);
+		    rows.add(registration);
+		}
+	    } catch (SiteWhereException e) {
+		LOGGER.error("Unable to process registration for " + registration.getHardwareId() + ".", e);
+		requeue(Collections.singletonList(registration));
+	    }
+	}
+	if (rows.isEmpty()) {
+	    return true;
+	}
+
+	IDeviceBulkCreateResponse response;
+	try {
+	    response = getDeviceManagement().createDevices(create);
+	} catch (SiteWhereException e) {
+	    LOGGER.error("Unable to register batch of " + rows.size() + " devices. Will retry.", e);
+	    requeue(rows);
+	    return false;
+	}
+
+	// Rows rejected in bulk (usually devices created since the lookup) are
+	// handled individually against current state.
+	Set<Integer> failed = new HashSet<Integer>();
+	for (IDeviceBulkCreateError error : response.getErrors()) {
+	    failed.add(error.getIndex());
+	}
+	for (int i = 0; i < rows.size(); i++) {
+	    PendingRegistration registration = rows.get(i);
+	    IDevice device = existing.get(registration.getHardwareId());
+	    try {
+		if (failed.contains(i)) {
+		    processRegistration(registration, deviceTypes, sites);
+		    continue;
+		}
+		if ((device != null) && (device.getDeviceAssignmentId() == null)) {
+		    createAssignment(device.getHardwareId());
+		}
+		sendRegistrationAck(registration.getHardwareId(), device == null);
+		reprocessEvents(registration);
+	    } catch (SiteWhereException e) {
+		LOGGER.error("Unable to complete registration for " + registration.getHardwareId() + ".", e);
+	    }
+	}
+	LOGGER.info("Registered " + response.getCreatedCount() + " new and " + response.getUpdatedCount()
+		+ " existing devices in batch of " + batch.size() + ".");
+	return true;
+    }
+
+    /**
+     * Look up devices that already exist for a batch with a single query.
+     * 
+     * @param batch
+     * @return existing devices by hardware id
+     * @throws SiteWhereException
+     */
+    protected Map<String, IDevice> getExistingDevices(List<PendingRegistration> batch) throws SiteWhereException {
+	List<String> hardwareIds = new ArrayList<String>();
+	for (PendingRegistration registration : batch) {
+	    hardwareIds.add(registration.getHardwareId());
+	}
+	DeviceSearchCriteria criteria = new DeviceSearchCriteria(1, hardwareIds.size(), null, null);
+	criteria.setExcludeAssigned(false);
+	criteria.setHardwareIds(hardwareIds);
+	Map<String, IDevice> existing = new HashMap<String, IDevice>();
+	for (IDevice device : getDeviceManagement().listDevices(false, criteria).getResults()) {
+	    existing.put(device.getHardwareId(), device);
+	}
+	return existing;
+    }
+
+    /**
+     * Build the bulk create row for a registration. Existing devices keep their
+     * site and only have metadata updated. Returns null (after notifying the
+     * device) if the registration can not be accepted.
+     * 
+     * @param registration
+     * @param existing
+     * @param deviceTypes
+     * @param sites
+     * @param sitesById
+     * @return
+     * @throws SiteWhereException
+     */
+    protected DeviceCreateRequest buildDeviceRow(PendingRegistration registration, IDevice existing,
+	    Map<String, IDeviceType> deviceTypes, Map<String, ISite> sites, Map<UUID, ISite> sitesById)
+	    throws SiteWhereException {
+	IDeviceRegistrationRequest request = registration.getRequest();
+	IDeviceType deviceType = resolveDeviceType(request, deviceTypes);
+	if (deviceType == null) {
+	    sendInvalidDeviceType(registration.getHardwareId());
+	    return null;
+	}
+	ISite site;
+	if (existing != null) {
+	    if (!existing.getDeviceTypeId().equals(deviceType.getId())) {
+		LOGGER.info("Found existing device registration, but device type does not match.");
+		sendInvalidDeviceType(registration.getHardwareId());
+		return null;
+	    }
+	    if ((existing.getSiteId() != null) && (!sitesById.containsKey(existing.getSiteId()))) {
+		sitesById.put(existing.getSiteId(), getDeviceManagement().getSite(existing.getSiteId()));
+	    }
+	    site = sitesById.get(existing.getSiteId());
+	} else {
+	    if (!isAllowNewDevices()) {
+		LOGGER.warn("Ignoring device registration request since new devices are not allowed.");
+		sendNoNewDevicesAllowed(registration.getHardwareId());
+		return null;
+	    }
+	    site = resolveSite(request, sites);
+	    if (site == null) {
+		sendSiteTokenRequired(registration.getHardwareId());
+		return null;
+	    }
+	}
+	DeviceCreateRequest device = new DeviceCreateRequest();
+	device.setHardwareId(registration.getHardwareId());
+	device.setDeviceTypeToken(deviceType.getToken());
+	device.setSiteToken((site != null) ? site.getToken() : null);
+	if (existing == null) {
+	    device.setComments("Device created by on-demand registration.");
+	}
+	device.setMetadata(request.getMetadata());
+	return device;
+    }
+
+    /**
+     * Process a single registration against current device state.
+     * 
+     * @param registration
+     * @param deviceTypes
+     * @param sites
+     * @throws SiteWhereException
+     */
+    protected void processRegistration(PendingRegistration registration, Map<String, IDeviceType> deviceTypes,
+	    Map<String, ISite> sites) throws SiteWhereException {
+	IDeviceRegistrationRequest request = registration.getRequest();
+	IDevice device = getDeviceManagement().getDeviceByHardwareId(registration.getHardwareId());
+	IDeviceType deviceType = resolveDeviceType(request, deviceTypes);
+	if (deviceType == null) {
+	    sendInvalidDeviceType(registration.getHardwareId());
+	    return;
+	}
+	boolean isNewRegistration = (device == null);
 
 	// Create device if it does not already exist.
 	if (device == null) {
 	    if (!isAllowNewDevices()) {
 		LOGGER.warn("Ignoring device registration request since new devices are not allowed.");
+		sendNoNewDevicesAllowed(registration.getHardwareId());
+		return;
+	    }
+	    ISite deviceSite = resolveSite(request, sites);
+	    if (deviceSite == null) {
+		sendSiteTokenRequired(registration.getHardwareId());
 		return;
 	    }
 	    LOGGER.debug("Creating new device as part of registration.");
 	    DeviceCreateRequest deviceCreate = new DeviceCreateRequest();
-	    deviceCreate.setHardwareId(request.getHardwareId());
-	    deviceCreate.setDeviceTypeToken(request.getDeviceTypeToken());
+	    deviceCreate.setHardwareId(registration.getHardwareId());
+	    deviceCreate.setDeviceTypeToken(deviceType.getToken());
 	    deviceCreate.setSiteToken(deviceSite.getToken());
 	    deviceCreate.setComments("Device created by on-demand registration.");
 	    deviceCreate.setMetadata(request.getMetadata());
 	    device = getDeviceManagement().createDevice(deviceCreate);
 	} else if (!device.getDeviceTypeId().equals(deviceType.getId())) {
 	    LOGGER.info("Found existing device registration, but device type does not match.");
-	    sendInvalidDeviceType(request.getHardwareId());
+	    sendInvalidDeviceType(registration.getHardwareId());
 	    return;
 	} else {
 	    LOGGER.info("Found existing device registration. Updating metadata.");
@@ -106,68 +532,94 @@ public class DefaultRegistrationManager extends TenantEngineLifecycleComponent i
 
 	// Make sure device is assigned.
 	if (device.getDeviceAssignmentId() == null) {
-	    LOGGER.debug("Handling unassigned device for registration.");
-	    DeviceAssignmentCreateRequest assnCreate = new DeviceAssignmentCreateRequest();
-	    assnCreate.setDeviceHardwareId(device.getHardwareId());
-	    assnCreate.setAssignmentType(DeviceAssignmentType.Unassociated);
-	    getDeviceManagement().createDeviceAssignment(assnCreate);
+	    createAssignment(device.getHardwareId());
 	}
-	boolean isNewRegistration = (device != null);
-	sendRegistrationAck(request.getHardwareId(), isNewRegistration);
+	sendRegistrationAck(registration.getHardwareId(), isNewRegistration);
+	reprocessEvents(registration);
     }
 
-    /*
-     * @see com.sitewhere.registration.spi.IRegistrationManager#
-     * handleUnregisteredDeviceEvent(com.sitewhere.spi.microservice.kafka.payload.
-     * IInboundEventPayload)
+    /**
+     * Create an unassociated assignment for a device that has none.
+     * 
+     * @param hardwareId
+     * @throws SiteWhereException
      */
-    @Override
-    public void handleUnregisteredDeviceEvent(IInboundEventPayload payload) throws SiteWhereException {
-	getLogger().info("Would be handling unregistered device event for " + payload.getHardwareId());
+    protected void createAssignment(String hardwareId) throws SiteWhereException {
+	LOGGER.debug("Handling unassigned device for registration.");
+	DeviceAssignmentCreateRequest assnCreate = new DeviceAssignmentCreateRequest();
+	assnCreate.setDeviceHardwareId(hardwareId);
+	assnCreate.setAssignmentType(DeviceAssignmentType.Unassociated);
+	getDeviceManagement().createDeviceAssignment(assnCreate);
     }
 
     /**
-     * Get device specificatoin that should be used for the given request.
+     * Send events that were held waiting on registration back to inbound
+     * processing.
+     * 
+     * @param registration
+     * @throws SiteWhereException
+     */
+    protected void reprocessEvents(PendingRegistration registration) throws SiteWhereException {
+	for (IInboundEventPayload payload : registration.getEvents()) {
+	    getEngine().getInboundReprocessEventsProducer().send(registration.getHardwareId(),
+		    KafkaModelMarshaler.buildInboundEventPayloadMessage(payload));
+	}
+	if (registration.getDroppedEvents() > 0) {
+	    LOGGER.warn("Dropped " + registration.getDroppedEvents() + " events for " + registration.getHardwareId()
+		    + " while waiting on registration.");
+	}
+    }
+
+    /**
+     * Indicates whether devices that send events without registering may be
+     * registered automatically.
+     * 
+     * @return
+     */
+    protected boolean isAutoRegisterAllowed() {
+	return isAllowNewDevices() && (getAutoAssignDeviceType() != null) && (getAutoAssignSite() != null);
+    }
+
+    /**
+     * Resolve device type for a request using a cache of types already looked up
+     * in the current batch. Returns null if the type can not be resolved.
      * 
      * @param request
+     * @param cache
      * @return
      * @throws SiteWhereException
      */
-    protected IDeviceType getDeviceTypeFor(IDeviceRegistrationRequest request) throws SiteWhereException {
-	IDeviceType deviceType = getAutoAssignDeviceType();
-	if (request.getDeviceTypeToken() != null) {
-	    IDeviceType override = getDeviceManagement().getDeviceTypeByToken(request.getDeviceTypeToken());
-	    if (override == null) {
-		throw new SiteWhereException("Registration request specified invalid device type token.");
-	    }
-	    deviceType = override;
+    protected IDeviceType resolveDeviceType(IDeviceRegistrationRequest request, Map<String, IDeviceType> cache)
+	    throws SiteWhereException {
+	String token = request.getDeviceTypeToken();
+	if (token == null) {
+	    return getAutoAssignDeviceType();
 	}
-	if (deviceType == null) {
-	    throw new SiteWhereException("Device type not passed and no default provided.");
+	if (!cache.containsKey(token)) {
+	    cache.put(token, getDeviceManagement().getDeviceTypeByToken(token));
 	}
-	return deviceType;
+	return cache.get(token);
     }
 
     /**
-     * Get site that should be used for the given request.
+     * Resolve site for a request using a cache of sites already looked up in the
+     * current batch. Returns null if the site can not be resolved.
      * 
      * @param request
+     * @param cache
      * @return
      * @throws SiteWhereException
      */
-    protected ISite getSiteFor(IDeviceRegistrationRequest request) throws SiteWhereException {
-	ISite deviceSite = getAutoAssignSite();
-	if (request.getSiteToken() != null) {
-	    ISite override = getDeviceManagement().getSiteByToken(request.getSiteToken());
-	    if (override == null) {
-		throw new SiteWhereException("Registration request specified invalid site token.");
-	    }
-	    deviceSite = override;
+    protected ISite resolveSite(IDeviceRegistrationRequest request, Map<String, ISite> cache)
+	    throws SiteWhereException {
+	String token = request.getSiteToken();
+	if (token == null) {
+	    return getAutoAssignSite();
 	}
-	if (deviceSite == null) {
-	    throw new SiteWhereException("Site not passed and no default provided.");
+	if (!cache.containsKey(token)) {
+	    cache.put(token, getDeviceManagement().getSiteByToken(token));
 	}
-	return deviceSite;
+	return cache.get(token);
     }
 
     /**
@@ -181,7 +633,19 @@ public class DefaultRegistrationManager extends TenantEngineLifecycleComponent i
 	RegistrationAckCommand command = new RegistrationAckCommand();
 	command.setReason((newRegistration) ? RegistrationSuccessReason.NewRegistration
 		: RegistrationSuccessReason.AlreadyRegistered);
-	// getDeviceCommunication().deliverSystemCommand(hardwareId, command);
+	sendSystemCommand(hardwareId, command);
+    }
+
+    /**
+     * Send a system command to a device via the command delivery pipeline.
+     * 
+     * @param hardwareId
+     * @param command
+     * @throws SiteWhereException
+     */
+    protected void sendSystemCommand(String hardwareId, ISystemCommand command) throws SiteWhereException {
+	SystemCommandPayload payload = new SystemCommandPayload(hardwareId, command);
+	getEngine().getSystemCommandsProducer().send(hardwareId, MarshalUtils.marshalJson(payload));
     }
 
     /**
@@ -195,7 +659,7 @@ public class DefaultRegistrationManager extends TenantEngineLifecycleComponent i
 	RegistrationFailureCommand command = new RegistrationFailureCommand();
 	command.setReason(RegistrationFailureReason.NewDevicesNotAllowed);
 	command.setErrorMessage("Registration manager does not allow new devices to be created.");
-	// getDeviceCommunication().deliverSystemCommand(hardwareId, command);
+	sendSystemCommand(hardwareId, command);
     }
 
     /**
@@ -209,7 +673,7 @@ public class DefaultRegistrationManager extends TenantEngineLifecycleComponent i
 	RegistrationFailureCommand command = new RegistrationFailureCommand();
 	command.setReason(RegistrationFailureReason.InvalidDeviceTypeToken);
 	command.setErrorMessage("Device type token passed in registration was invalid.");
-	// getDeviceCommunication().deliverSystemCommand(hardwareId, command);
+	sendSystemCommand(hardwareId, command);
     }
 
     /**
@@ -223,7 +687,7 @@ public class DefaultRegistrationManager extends TenantEngineLifecycleComponent i
 	RegistrationFailureCommand command = new RegistrationFailureCommand();
 	command.setReason(RegistrationFailureReason.SiteTokenRequired);
 	command.setErrorMessage("Automatic site assignment disabled. Site token required.");
-	// getDeviceCommunication().deliverSystemCommand(hardwareId, command);
+	sendSystemCommand(hardwareId, command);
     }
 
     /*
@@ -246,7 +710,7 @@ public class DefaultRegistrationManager extends TenantEngineLifecycleComponent i
 	} catch (SiteWhereException e) {
 	    command.setResult(DeviceMappingResult.MappingFailedDueToExisting);
 	}
-	// getDeviceCommunication().deliverSystemCommand(hardwareId, command);
+	sendSystemCommand(hardwareId, command);
     }
 
     /*
@@ -258,6 +722,9 @@ public class DefaultRegistrationManager extends TenantEngineLifecycleComponent i
      */
     @Override
     public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	synchronized (pending) {
+	    pending.clear();
+	}
 	if (getAutoAssignDeviceTypeId() != null) {
 	    IDeviceType deviceType = getDeviceManagement().getDeviceType(getAutoAssignDeviceTypeId());
 	    if (deviceType == null) {
@@ -272,6 +739,28 @@ public class DefaultRegistrationManager extends TenantEngineLifecycleComponent i
 	    }
 	    this.autoAssignSite = site;
 	}
+	this.flusher = Executors.newSingleThreadScheduledExecutor(new RegistrationFlusherThreadFactory());
+	flusher.scheduleWithFixedDelay(new RegistrationFlusher(), getBatchWindowMs(), getBatchWindowMs(),
+		TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * @see
+     * com.sitewhere.server.lifecycle.LifecycleComponent#stop(com.sitewhere.spi.
+     * server.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	if (flusher != null) {
+	    // Process anything still pending before shutting down.
+	    flusher.execute(new RegistrationFlusher(true));
+	    flusher.shutdown();
+	    try {
+		flusher.awaitTermination(10, TimeUnit.SECONDS);
+	    } catch (InterruptedException e) {
+		getLogger().warn("Registration flusher did not terminate within allotted time.");
+	    }
+	}
     }
 
     /*
@@ -284,6 +773,53 @@ public class DefaultRegistrationManager extends TenantEngineLifecycleComponent i
 	return LOGGER;
     }
 
+    /**
+     * Flushes pending registrations as the system user.
+     * 
+     * @author Derek
+     */
+    private class RegistrationFlusher extends SystemUserRunnable {
+
+	/** Indicates all pending batches should be processed in this run */
+	private boolean drain;
+
+	public RegistrationFlusher() {
+	    this(false);
+	}
+
+	public RegistrationFlusher(boolean drain) {
+	    super(getTenantEngine().getMicroservice(), getTenantEngine().getTenant());
+	    this.drain = drain;
+	}
+
+	/*
+	 * @see com.sitewhere.microservice.security.SystemUserRunnable#
+	 * runAsSystemUser()
+	 */
+	@Override
+	public void runAsSystemUser() throws SiteWhereException {
+	    flushRequested.set(false);
+	    boolean more = flush();
+	    while (more && drain) {
+		more = flush();
+	    }
+	    if (more) {
+		requestFlush();
+	    }
+	}
+    }
+
+    /** Used for naming registration flusher thread */
+    private class RegistrationFlusherThreadFactory implements ThreadFactory {
+
+	/** Counts threads */
+	private AtomicInteger counter = new AtomicInteger();
+
+	public Thread newThread(Runnable r) {
+	    return new Thread(r, "Registration Batch " + counter.incrementAndGet());
+	}
+    }
+
     public boolean isAllowNewDevices() {
 	return allowNewDevices;
     }
@@ -324,7 +860,51 @@ public class DefaultRegistrationManager extends TenantEngineLifecycleComponent i
 	this.autoAssignSite = autoAssignSite;
     }
 
-    private IDeviceManagement getDeviceManagement() {
+    public long getBatchWindowMs() {
+	return batchWindowMs;
+    }
+
+    public void setBatchWindowMs(long batchWindowMs) {
+	this.batchWindowMs = batchWindowMs;
+    }
+
+    public int getMaxBatchSize() {
+	return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+	this.maxBatchSize = maxBatchSize;
+    }
+
+    public int getMaxEventsPerDevice() {
+	return maxEventsPerDevice;
+    }
+
+    public void setMaxEventsPerDevice(int maxEventsPerDevice) {
+	this.maxEventsPerDevice = maxEventsPerDevice;
+    }
+
+    public int getMaxPendingDevices() {
+	return maxPendingDevices;
+    }
+
+    public void setMaxPendingDevices(int maxPendingDevices) {
+	this.maxPendingDevices = maxPendingDevices;
+    }
+
+    public int getMaxFlushAttempts() {
+	return maxFlushAttempts;
+    }
+
+    public void setMaxFlushAttempts(int maxFlushAttempts) {
+	this.maxFlushAttempts = maxFlushAttempts;
+    }
+
+    private IDeviceRegistrationTenantEngine getEngine() {
+	return (IDeviceRegistrationTenantEngine) getTenantEngine();
+    }
+
+    protected IDeviceManagement getDeviceManagement() {
 	return ((IDeviceRegistrationMicroservice) getTenantEngine().getMicroservice()).getDeviceManagementApiDemux()
 		.getApiChannel();
     }
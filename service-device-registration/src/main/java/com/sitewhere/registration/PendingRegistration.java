@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.registration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sitewhere.spi.device.event.request.IDeviceRegistrationRequest;
+import com.sitewhere.spi.microservice.kafka.payload.IInboundEventPayload;
+
+/**
+ * Registration work collected for a single hardware id while a batch window is
+ * open. Repeated registration requests replace the earlier one and events
+ * received for the device are held (up to a limit) so they can be reprocessed
+ * once the device exists.
+ * 
+ * @author Derek
+ */
+public class PendingRegistration {
+
+    /** Hardware id of device */
+    private String hardwareId;
+
+    /** Latest registration request (null if only events were received) */
+    private IDeviceRegistrationRequest request;
+
+    /** Events waiting on registration */
+    private List<IInboundEventPayload> events = new ArrayList<IInboundEventPayload>();
+
+    /** Number of events dropped due to limit */
+    private int droppedEvents;
+
+    /** Number of times processing has been attempted */
+    private int attempts;
+
+    public PendingRegistration(String hardwareId) {
+	this.hardwareId = hardwareId;
+    }
+
+    /**
+     * Hold an event until registration completes, dropping the oldest event if
+     * the limit has been reached.
+     * 
+     * @param payload
+     * @param maxEvents
+     */
+    public void addEvent(IInboundEventPayload payload, int maxEvents) {
+	if (events.size() >= maxEvents) {
+	    events.remove(0);
+	    droppedEvents++;
+	}
+	events.add(payload);
+    }
+
+    /**
+     * Fold in work received for the same hardware id after this entry was taken
+     * for processing. A newer registration request replaces this one and newer
+     * events are appended after the held ones.
+     * 
+     * @param newer
+     * @param maxEvents
+     */
+    public void merge(PendingRegistration newer, int maxEvents) {
+	if (newer.getRequest() != null) {
+	    this.request = newer.getRequest();
+	}
+	for (IInboundEventPayload payload : newer.getEvents()) {
+	    addEvent(payload, maxEvents);
+	}
+	this.droppedEvents += newer.getDroppedEvents();
+    }
+
+    /**
+     * Record a failed processing attempt.
+     * 
+     * @return number of attempts so far
+     */
+    public int incrementAttempts() {
+	return ++attempts;
+    }
+
+    public String getHardwareId() {
+	return hardwareId;
+    }
+
+    public IDeviceRegistrationRequest getRequest() {
+	return request;
+    }
+
+    public void setRequest(IDeviceRegistrationRequest request) {
+	this.request = request;
+    }
+
+    public List<IInboundEventPayload> getEvents() {
+	return events;
+    }
+
+    public int getDroppedEvents() {
+	return droppedEvents;
+    }
+
+    public int getAttempts() {
+	return attempts;
+    }
+}
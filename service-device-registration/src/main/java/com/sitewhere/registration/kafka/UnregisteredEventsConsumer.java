@@ -99,8 +99,12 @@ public class UnregisteredEventsConsumer extends MicroserviceKafkaConsumer implem
     @Override
     public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
 	super.start(monitor);
-	executor = Executors.newFixedThreadPool(CONCURRENT_EVENT_PROCESSING_THREADS,
-		new UnregisteredEventProcessorThreadFactory());
+
+	// Shared consumer workers process records directly.
+	if (!isSharedMode()) {
+	    executor = Executors.newFixedThreadPool(CONCURRENT_EVENT_PROCESSING_THREADS,
+		    new UnregisteredEventProcessorThreadFactory());
+	}
     }
 
     /*
@@ -129,7 +133,11 @@ public class UnregisteredEventsConsumer extends MicroserviceKafkaConsumer implem
      */
     @Override
     public void received(String key, byte[] message) throws SiteWhereException {
-	executor.execute(new UnregisteredDeviceEventProcessor(getTenantEngine(), message));
+	if (isSharedMode()) {
+	    new UnregisteredDeviceEventProcessor(getTenantEngine(), message).run();
+	} else {
+	    executor.execute(new UnregisteredDeviceEventProcessor(getTenantEngine(), message));
+	}
     }
 
     /*
@@ -11,8 +11,12 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.sitewhere.microservice.multitenant.MicroserviceTenantEngine;
+import com.sitewhere.registration.kafka.InboundReprocessEventsProducer;
+import com.sitewhere.registration.kafka.SystemCommandsProducer;
 import com.sitewhere.registration.kafka.UnregisteredEventsConsumer;
 import com.sitewhere.registration.spi.IRegistrationManager;
+import com.sitewhere.registration.spi.kafka.IInboundReprocessEventsProducer;
+import com.sitewhere.registration.spi.kafka.ISystemCommandsProducer;
 import com.sitewhere.registration.spi.kafka.IUnregisteredEventsConsumer;
 import com.sitewhere.registration.spi.microservice.IDeviceRegistrationTenantEngine;
 import com.sitewhere.server.lifecycle.CompositeLifecycleStep;
@@ -40,6 +44,12 @@ public class DeviceRegistrationTenantEngine extends MicroserviceTenantEngine
     /** Kafka consumer for unregistered device events */
     private IUnregisteredEventsConsumer unregisteredEventsConsumer;
 
+    /** Kafka producer for system commands sent to devices */
+    private ISystemCommandsProducer systemCommandsProducer;
+
+    /** Kafka producer for events reprocessed after registration */
+    private IInboundReprocessEventsProducer inboundReprocessEventsProducer;
+
     /** Device registration manager */
     private IRegistrationManager registrationManager;
 
@@ -55,10 +65,24 @@ public class DeviceRegistrationTenantEngine extends MicroserviceTenantEngine
     @Override
     public void tenantInitialize(ILifecycleProgressMonitor monitor) throws SiteWhereException {
 	this.unregisteredEventsConsumer = new UnregisteredEventsConsumer(this);
+	this.systemCommandsProducer = new SystemCommandsProducer(getMicroservice());
+	this.inboundReprocessEventsProducer = new InboundReprocessEventsProducer(getMicroservice());
 
 	// Load configured registration manager.
 	this.registrationManager = (IRegistrationManager) getModuleContext()
 		.getBean(DeviceRegistrationBeans.BEAN_REGISTRATION_MANAGER);
+
+	// Create step that will initialize components.
+	ICompositeLifecycleStep init = new CompositeLifecycleStep("Initialize " + getComponentName());
+
+	// Initialize system commands producer.
+	init.addInitializeStep(this, getSystemCommandsProducer(), true);
+
+	// Initialize inbound reprocess events producer.
+	init.addInitializeStep(this, getInboundReprocessEventsProducer(), true);
+
+	// Execute initialization steps.
+	init.execute(monitor);
     }
 
     /*
@@ -70,12 +94,18 @@ public class DeviceRegistrationTenantEngine extends MicroserviceTenantEngine
 	// Create step that will start components.
 	ICompositeLifecycleStep start = new CompositeLifecycleStep("Start " + getComponentName());
 
-	// Start unregistered events consumer.
-	start.addStartStep(this, getUnregisteredEventsConsumer(), true);
+	// Start system commands producer.
+	start.addStartStep(this, getSystemCommandsProducer(), true);
+
+	// Start inbound reprocess events producer.
+	start.addStartStep(this, getInboundReprocessEventsProducer(), true);
 
 	// Start registration manager.
 	start.addStartStep(this, getRegistrationManager(), true);
 
+	// Start unregistered events consumer.
+	start.addStartStep(this, getUnregisteredEventsConsumer(), true);
+
 	// Execute startup steps.
 	start.execute(monitor);
     }
@@ -104,6 +134,12 @@ public class DeviceRegistrationTenantEngine extends MicroserviceTenantEngine
 	// Stop registration manager.
 	stop.addStopStep(this, getRegistrationManager());
 
+	// Stop system commands producer.
+	stop.addStopStep(this, getSystemCommandsProducer());
+
+	// Stop inbound reprocess events producer.
+	stop.addStopStep(this, getInboundReprocessEventsProducer());
+
 	// Execute shutdown steps.
 	stop.execute(monitor);
     }
@@ -122,6 +158,35 @@ public class DeviceRegistrationTenantEngine extends MicroserviceTenantEngine
 	this.unregisteredEventsConsumer = unregisteredEventsConsumer;
     }
 
+    /*
+     * @see
+     * com.sitewhere.registration.spi.microservice.IDeviceRegistrationTenantEngine#
+     * getSystemCommandsProducer()
+     */
+    @Override
+    public ISystemCommandsProducer getSystemCommandsProducer() {
+	return systemCommandsProducer;
+    }
+
+    public void setSystemCommandsProducer(ISystemCommandsProducer systemCommandsProducer) {
+	this.systemCommandsProducer = systemCommandsProducer;
+    }
+
+    /*
+     * @see
+     * com.sitewhere.registration.spi.microservice.IDeviceRegistrationTenantEngine#
+     * getInboundReprocessEventsProducer()
+     */
+    @Override
+    public IInboundReprocessEventsProducer getInboundReprocessEventsProducer() {
+	return inboundReprocessEventsProducer;
+    }
+
+    public void setInboundReprocessEventsProducer(
+	    IInboundReprocessEventsProducer inboundReprocessEventsProducer) {
+	this.inboundReprocessEventsProducer = inboundReprocessEventsProducer;
+    }
+
     /*
      * @see
      * com.sitewhere.registration.spi.microservice.IDeviceRegistrationTenantEngine#
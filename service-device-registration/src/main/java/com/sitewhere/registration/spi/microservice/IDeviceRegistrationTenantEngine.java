@@ -8,6 +8,8 @@
 package com.sitewhere.registration.spi.microservice;
 
 import com.sitewhere.registration.spi.IRegistrationManager;
+import com.sitewhere.registration.spi.kafka.IInboundReprocessEventsProducer;
+import com.sitewhere.registration.spi.kafka.ISystemCommandsProducer;
 import com.sitewhere.registration.spi.kafka.IUnregisteredEventsConsumer;
 import com.sitewhere.spi.microservice.multitenant.IMicroserviceTenantEngine;
 
@@ -26,6 +28,21 @@ public interface IDeviceRegistrationTenantEngine extends IMicroserviceTenantEngi
      */
     public IUnregisteredEventsConsumer getUnregisteredEventsConsumer();
 
+    /**
+     * Get Kafka producer for system commands sent to devices.
+     * 
+     * @return
+     */
+    public ISystemCommandsProducer getSystemCommandsProducer();
+
+    /**
+     * Get Kafka producer that sends events back to inbound processing once a
+     * device has been registered.
+     * 
+     * @return
+     */
+    public IInboundReprocessEventsProducer getInboundReprocessEventsProducer();
+
     /**
      * Get registration manager implementation.
      * 
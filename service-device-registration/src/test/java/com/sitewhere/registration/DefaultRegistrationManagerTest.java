@@ -0,0 +1,372 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.registration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sitewhere.rest.model.device.Device;
+import com.sitewhere.rest.model.device.DeviceBulkCreateResponse;
+import com.sitewhere.rest.model.device.DeviceType;
+import com.sitewhere.rest.model.device.Site;
+import com.sitewhere.rest.model.device.command.RegistrationAckCommand;
+import com.sitewhere.rest.model.device.event.request.DeviceMeasurementsCreateRequest;
+import com.sitewhere.rest.model.device.event.request.DeviceRegistrationRequest;
+import com.sitewhere.rest.model.microservice.kafka.payload.InboundEventPayload;
+import com.sitewhere.rest.model.search.SearchResults;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDevice;
+import com.sitewhere.spi.device.IDeviceManagement;
+import com.sitewhere.spi.device.command.ISystemCommand;
+import com.sitewhere.spi.device.command.RegistrationSuccessReason;
+import com.sitewhere.spi.device.request.IDeviceAssignmentCreateRequest;
+import com.sitewhere.spi.device.request.IDeviceBulkCreateRequest;
+import com.sitewhere.spi.device.request.IDeviceCreateRequest;
+import com.sitewhere.spi.search.device.IDeviceSearchCriteria;
+
+public class DefaultRegistrationManagerTest {
+
+    /** Device type all devices register with */
+    private DeviceType deviceType;
+
+    /** Site all devices register with */
+    private Site site;
+
+    /** Stub device management */
+    private StubDeviceManagement devices;
+
+    /** Manager being tested */
+    private TestRegistrationManager manager;
+
+    @Before
+    public void setUp() {
+	this.deviceType = new DeviceType();
+	deviceType.setId(UUID.randomUUID());
+	deviceType.setToken("type");
+	this.site = new Site();
+	site.setId(UUID.randomUUID());
+	site.setToken("site");
+
+	this.devices = new StubDeviceManagement(site);
+	this.manager = new TestRegistrationManager(devices.asDeviceManagement());
+	manager.setAutoAssignDeviceType(deviceType);
+	manager.setAutoAssignSite(site);
+	manager.setMaxBatchSize(100);
+    }
+
+    @Test
+    public void testBurstSplitIntoBatches() throws Exception {
+	for (int i = 0; i < 250; i++) {
+	    register("hw-" + i);
+	}
+	flushAll();
+
+	assertEquals(Arrays.asList(100, 100, 50), devices.batchSizes);
+	assertEquals(3, devices.lookups);
+	assertEquals(250, devices.created.size());
+	assertEquals(250, manager.acks.size());
+	for (int i = 0; i < 250; i++) {
+	    assertEquals(RegistrationSuccessReason.NewRegistration, manager.acks.get("hw-" + i));
+	}
+    }
+
+    @Test
+    public void testDuplicatesCoalesced() throws Exception {
+	for (int round = 0; round < 3; round++) {
+	    for (int i = 0; i < 50; i++) {
+		register("hw-" + i);
+		sendEvent("hw-" + i);
+	    }
+	}
+	for (int i = 50; i < 60; i++) {
+	    sendEvent("hw-" + i);
+	}
+	flushAll();
+
+	assertEquals(Arrays.asList(60), devices.batchSizes);
+	assertEquals(60, devices.created.size());
+	assertEquals(60, manager.acks.size());
+	for (int i = 0; i < 50; i++) {
+	    assertEquals(Integer.valueOf(3), manager.reprocessed.get("hw-" + i));
+	}
+	for (int i = 50; i < 60; i++) {
+	    assertEquals(Integer.valueOf(1), manager.reprocessed.get("hw-" + i));
+	}
+    }
+
+    @Test
+    public void testExistingDevicesUpdatedInBatch() throws Exception {
+	devices.addExisting("hw-0", false);
+	devices.addExisting("hw-1", true);
+	for (int i = 0; i < 5; i++) {
+	    register("hw-" + i);
+	}
+	flushAll();
+
+	assertEquals(Arrays.asList(5), devices.batchSizes);
+	assertEquals(1, devices.lookups);
+	assertEquals(Arrays.asList("hw-0"), devices.assigned);
+	assertEquals(RegistrationSuccessReason.AlreadyRegistered, manager.acks.get("hw-0"));
+	assertEquals(RegistrationSuccessReason.AlreadyRegistered, manager.acks.get("hw-1"));
+	assertEquals(RegistrationSuccessReason.NewRegistration, manager.acks.get("hw-2"));
+    }
+
+    @Test
+    public void testFailedBulkCallRequeued() throws Exception {
+	devices.failures = 1;
+	for (int i = 0; i < 30; i++) {
+	    register("hw-" + i);
+	    sendEvent("hw-" + i);
+	}
+	assertFalse(manager.flush());
+	assertTrue(manager.acks.isEmpty());
+	assertTrue(manager.reprocessed.isEmpty());
+
+	// Work arriving before the retry is merged with the requeued entries.
+	for (int i = 25; i < 35; i++) {
+	    sendEvent("hw-" + i);
+	}
+	flushAll();
+
+	assertEquals(Arrays.asList(30, 35), devices.batchSizes);
+	assertEquals(35, devices.created.size());
+	assertEquals(35, manager.acks.size());
+	assertEquals(Integer.valueOf(1), manager.reprocessed.get("hw-0"));
+	assertEquals(Integer.valueOf(2), manager.reprocessed.get("hw-25"));
+	assertEquals(Integer.valueOf(1), manager.reprocessed.get("hw-34"));
+    }
+
+    @Test
+    public void testDroppedAfterMaxAttempts() throws Exception {
+	manager.setMaxFlushAttempts(3);
+	devices.failures = Integer.MAX_VALUE;
+	for (int i = 0; i < 10; i++) {
+	    register("hw-" + i);
+	}
+	flushAll();
+
+	assertEquals(Arrays.asList(10, 10, 10), devices.batchSizes);
+	assertTrue(manager.acks.isEmpty());
+    }
+
+    /**
+     * Queue a registration request.
+     *
+     * @param hardwareId
+     * @throws SiteWhereException
+     */
+    protected void register(String hardwareId) throws SiteWhereException {
+	DeviceRegistrationRequest request = new DeviceRegistrationRequest();
+	request.setHardwareId(hardwareId);
+	manager.handleDeviceRegistration(request);
+    }
+
+    /**
+     * Queue an event from an unregistered device.
+     *
+     * @param hardwareId
+     * @throws SiteWhereException
+     */
+    protected void sendEvent(String hardwareId) throws SiteWhereException {
+	DeviceMeasurementsCreateRequest measurements = new DeviceMeasurementsCreateRequest();
+	measurements.addOrReplaceMeasurement("temp", 20.0);
+	InboundEventPayload payload = new InboundEventPayload();
+	payload.setHardwareId(hardwareId);
+	payload.setEventCreateRequest(measurements);
+	manager.handleUnregisteredDeviceEvent(payload);
+    }
+
+    /**
+     * Flush until nothing is pending.
+     *
+     * @throws SiteWhereException
+     */
+    protected void flushAll() throws SiteWhereException {
+	for (int i = 0; i < 20; i++) {
+	    manager.flush();
+	}
+    }
+
+    /**
+     * Registration manager that records commands and reprocessed events rather
+     * than sending them through Kafka.
+     *
+     * @author Derek
+     */
+    private static class TestRegistrationManager extends DefaultRegistrationManager {
+
+	/** Device management implementation */
+	private IDeviceManagement deviceManagement;
+
+	/** Ack reasons by hardware id */
+	private Map<String, RegistrationSuccessReason> acks = new HashMap<String, RegistrationSuccessReason>();
+
+	/** Number of events reprocessed by hardware id */
+	private Map<String, Integer> reprocessed = new HashMap<String, Integer>();
+
+	public TestRegistrationManager(IDeviceManagement deviceManagement) {
+	    this.deviceManagement = deviceManagement;
+	}
+
+	/*
+	 * @see com.sitewhere.registration.DefaultRegistrationManager#
+	 * sendSystemCommand(java.lang.String,
+	 * com.sitewhere.spi.device.command.ISystemCommand)
+	 */
+	@Override
+	protected void sendSystemCommand(String hardwareId, ISystemCommand command) throws SiteWhereException {
+	    if (command instanceof RegistrationAckCommand) {
+		RegistrationSuccessReason reason = ((RegistrationAckCommand) command).getReason();
+		assertEquals("Duplicate ack for " + hardwareId, null, acks.put(hardwareId, reason));
+	    }
+	}
+
+	/*
+	 * @see
+	 * com.sitewhere.registration.DefaultRegistrationManager#reprocessEvents(
+	 * com.sitewhere.registration.PendingRegistration)
+	 */
+	@Override
+	protected void reprocessEvents(PendingRegistration registration) throws SiteWhereException {
+	    if (!registration.getEvents().isEmpty()) {
+		reprocessed.put(registration.getHardwareId(), registration.getEvents().size());
+	    }
+	}
+
+	/*
+	 * @see
+	 * com.sitewhere.registration.DefaultRegistrationManager#getDeviceManagement()
+	 */
+	@Override
+	protected IDeviceManagement getDeviceManagement() {
+	    return deviceManagement;
+	}
+    }
+
+    /**
+     * Device management that keeps devices in memory and records bulk calls.
+     *
+     * @author Derek
+     */
+    private class StubDeviceManagement implements InvocationHandler {
+
+	/** Site returned for existing devices */
+	private Site site;
+
+	/** Devices by hardware id */
+	private Map<String, Device> byHardwareId = new HashMap<String, Device>();
+
+	/** Hardware ids of devices created */
+	private Set<String> created = new HashSet<String>();
+
+	/** Hardware ids assignments were created for */
+	private List<String> assigned = new ArrayList<String>();
+
+	/** Number of rows in each bulk call */
+	private List<Integer> batchSizes = new ArrayList<Integer>();
+
+	/** Number of device lookups */
+	private int lookups;
+
+	/** Number of bulk calls that fail before succeeding */
+	private int failures;
+
+	public StubDeviceManagement(Site site) {
+	    this.site = site;
+	}
+
+	/**
+	 * Create device management backed by this stub.
+	 *
+	 * @return
+	 */
+	public IDeviceManagement asDeviceManagement() {
+	    return (IDeviceManagement) Proxy.newProxyInstance(getClass().getClassLoader(),
+		    new Class<?>[] { IDeviceManagement.class }, this);
+	}
+
+	/**
+	 * Add a device that already exists.
+	 *
+	 * @param hardwareId
+	 * @param assigned
+	 */
+	public void addExisting(String hardwareId, boolean assigned) {
+	    Device device = new Device();
+	    device.setId(UUID.randomUUID());
+	    device.setHardwareId(hardwareId);
+	    device.setDeviceTypeId(deviceType.getId());
+	    device.setSiteId(site.getId());
+	    device.setDeviceAssignmentId(assigned ? UUID.randomUUID() : null);
+	    byHardwareId.put(hardwareId, device);
+	}
+
+	/*
+	 * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object,
+	 * java.lang.reflect.Method, java.lang.Object[])
+	 */
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+	    switch (method.getName()) {
+	    case "listDevices": {
+		lookups++;
+		List<IDevice> matches = new ArrayList<IDevice>();
+		for (String hardwareId : ((IDeviceSearchCriteria) args[1]).getHardwareIds()) {
+		    if (byHardwareId.containsKey(hardwareId)) {
+			matches.add(byHardwareId.get(hardwareId));
+		    }
+		}
+		return new SearchResults<IDevice>(matches);
+	    }
+	    case "createDevices": {
+		IDeviceBulkCreateRequest request = (IDeviceBulkCreateRequest) args[0];
+		batchSizes.add(request.getDevices().size());
+		if (failures > 0) {
+		    failures--;
+		    throw new SiteWhereException("Device management unavailable.");
+		}
+		DeviceBulkCreateResponse response = new DeviceBulkCreateResponse();
+		for (IDeviceCreateRequest row : request.getDevices()) {
+		    if (byHardwareId.containsKey(row.getHardwareId())) {
+			response.setUpdatedCount(response.getUpdatedCount() + 1);
+			continue;
+		    }
+		    assertTrue("Created twice: " + row.getHardwareId(), created.add(row.getHardwareId()));
+		    addExisting(row.getHardwareId(), true);
+		    response.setCreatedCount(response.getCreatedCount() + 1);
+		}
+		return response;
+	    }
+	    case "createDeviceAssignment": {
+		assigned.add(((IDeviceAssignmentCreateRequest) args[0]).getDeviceHardwareId());
+		return null;
+	    }
+	    case "getSite":
+		return site;
+	    default:
+		throw new UnsupportedOperationException(method.getName());
+	    }
+	}
+    }
+}
@@ -7,9 +7,24 @@
  */
 package com.sitewhere.event;
 
+import java.util.List;
+import java.util.SortedMap;
+import java.util.UUID;
+
+import com.sitewhere.event.bulk.PerEventDeviceEventBulkStore;
+import com.sitewhere.event.export.PagedDeviceEventCursor;
+import com.sitewhere.event.spi.bulk.IDeviceEventBulkRequest;
+import com.sitewhere.event.spi.bulk.IDeviceEventBulkResult;
+import com.sitewhere.event.spi.bulk.IDeviceEventBulkStore;
+import com.sitewhere.event.spi.export.IDeviceEventCursor;
+import com.sitewhere.event.spi.export.IDeviceEventCursorSource;
+import com.sitewhere.event.spi.export.IDeviceEventExportCriteria;
+import com.sitewhere.event.spi.streaming.IDeviceStreamDataSource;
+import com.sitewhere.event.streaming.PagedDeviceStreamDataSource;
 import com.sitewhere.server.lifecycle.LifecycleComponentDecorator;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceAssignmentState;
 import com.sitewhere.spi.device.ISite;
 import com.sitewhere.spi.device.event.IDeviceAlert;
 import com.sitewhere.spi.device.event.IDeviceCommandInvocation;
@@ -38,12 +53,15 @@ import com.sitewhere.spi.search.ISearchResults;
 /**
  * Allows classes to inject themselves as a facade around an existing device
  * event management implementation. By default all methods just pass calls to
- * the underlying delegate.
+ * the underlying delegate. Event cursors and stream data reads are passed to
+ * the delegate if it supports them and are otherwise emulated by paging. Bulk
+ * stores are passed to the delegate if it supports them and are otherwise
+ * emulated by adding events one at a time.
  * 
  * @author Derek
  */
 public class DeviceEventManagementDecorator extends LifecycleComponentDecorator<IDeviceEventManagement>
-	implements IDeviceEventManagement {
+	implements IDeviceEventManagement, IDeviceEventCursorSource, IDeviceStreamDataSource, IDeviceEventBulkStore {
 
     public DeviceEventManagementDecorator(IDeviceEventManagement delegate) {
 	super(delegate);
@@ -322,12 +340,13 @@ public class DeviceEventManagementDecorator extends LifecycleComponentDecorator<
      * (non-Javadoc)
      * 
      * @see com.sitewhere.spi.device.event.IDeviceEventManagement#
-     * listDeviceCommandInvocationResponses(java.lang.String)
+     * listDeviceCommandInvocationResponses(java.lang.String,
+     * com.sitewhere.spi.search.IDateRangeSearchCriteria)
      */
     @Override
-    public ISearchResults<IDeviceCommandResponse> listDeviceCommandInvocationResponses(String invocationId)
-	    throws SiteWhereException {
-	return getDelegate().listDeviceCommandInvocationResponses(invocationId);
+    public ISearchResults<IDeviceCommandResponse> listDeviceCommandInvocationResponses(String invocationId,
+	    IDateRangeSearchCriteria criteria) throws SiteWhereException {
+	return getDelegate().listDeviceCommandInvocationResponses(invocationId, criteria);
     }
 
     /*
@@ -408,6 +427,26 @@ public class DeviceEventManagementDecorator extends LifecycleComponentDecorator<
 	return getDelegate().listDeviceStateChangesForSite(site, criteria);
     }
 
+    /*
+     * @see com.sitewhere.spi.device.event.IDeviceEventManagement#
+     * getDeviceAssignmentState(java.util.UUID)
+     */
+    @Override
+    public IDeviceAssignmentState getDeviceAssignmentState(UUID assignmentId) throws SiteWhereException {
+	return getDelegate().getDeviceAssignmentState(assignmentId);
+    }
+
+    /*
+     * @see com.sitewhere.spi.device.event.IDeviceEventManagement#
+     * listDeviceAssignmentStatesForSite(com.sitewhere.spi.device.ISite,
+     * com.sitewhere.spi.search.IDateRangeSearchCriteria)
+     */
+    @Override
+    public ISearchResults<IDeviceAssignmentState> listDeviceAssignmentStatesForSite(ISite site,
+	    IDateRangeSearchCriteria criteria) throws SiteWhereException {
+	return getDelegate().listDeviceAssignmentStatesForSite(site, criteria);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -419,4 +458,67 @@ public class DeviceEventManagementDecorator extends LifecycleComponentDecorator<
     public IDeviceEvent updateDeviceEvent(String eventId, IDeviceEventCreateRequest request) throws SiteWhereException {
 	return getDelegate().updateDeviceEvent(eventId, request);
     }
+
+    /*
+     * @see com.sitewhere.event.spi.export.IDeviceEventCursorSource#
+     * openDeviceEventCursor(com.sitewhere.event.spi.export.
+     * IDeviceEventExportCriteria)
+     */
+    @Override
+    public IDeviceEventCursor openDeviceEventCursor(IDeviceEventExportCriteria criteria) throws SiteWhereException {
+	if (getDelegate() instanceof IDeviceEventCursorSource) {
+	    return ((IDeviceEventCursorSource) getDelegate()).openDeviceEventCursor(criteria);
+	}
+	return new PagedDeviceEventCursor(getDelegate(), criteria);
+    }
+
+    /*
+     * @see com.sitewhere.event.spi.streaming.IDeviceStreamDataSource#
+     * getDeviceStreamChunkSizes(com.sitewhere.spi.device.IDeviceAssignment,
+     * java.lang.String)
+     */
+    @Override
+    public SortedMap<Long, Long> getDeviceStreamChunkSizes(IDeviceAssignment assignment, String streamId)
+	    throws SiteWhereException {
+	return getStreamDataSource().getDeviceStreamChunkSizes(assignment, streamId);
+    }
+
+    /*
+     * @see com.sitewhere.event.spi.streaming.IDeviceStreamDataSource#
+     * openDeviceStreamDataCursor(com.sitewhere.spi.device.IDeviceAssignment,
+     * java.lang.String, long, long, int)
+     */
+    @Override
+    public IDeviceEventCursor openDeviceStreamDataCursor(IDeviceAssignment assignment, String streamId,
+	    long firstSequenceNumber, long lastSequenceNumber, int batchSize) throws SiteWhereException {
+	return getStreamDataSource().openDeviceStreamDataCursor(assignment, streamId, firstSequenceNumber,
+		lastSequenceNumber, batchSize);
+    }
+
+    /*
+     * @see
+     * com.sitewhere.event.spi.bulk.IDeviceEventBulkStore#addDeviceEvents(java.
+     * util.List)
+     */
+    @Override
+    public List<IDeviceEventBulkResult> addDeviceEvents(List<IDeviceEventBulkRequest> requests)
+	    throws SiteWhereException {
+	if (getDelegate() instanceof IDeviceEventBulkStore) {
+	    return ((IDeviceEventBulkStore) getDelegate()).addDeviceEvents(requests);
+	}
+	return new PerEventDeviceEventBulkStore(getDelegate()).addDeviceEvents(requests);
+    }
+
+    /**
+     * Get stream data source for the delegate, emulating one by paging if the
+     * backend does not support it.
+     * 
+     * @return
+     */
+    protected IDeviceStreamDataSource getStreamDataSource() {
+	if (getDelegate() instanceof IDeviceStreamDataSource) {
+	    return (IDeviceStreamDataSource) getDelegate();
+	}
+	return new PagedDeviceStreamDataSource(getDelegate());
+    }
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.bulk;
+
+import com.sitewhere.event.spi.bulk.IDeviceEventBulkRequest;
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.event.request.IDeviceEventCreateRequest;
+import com.sitewhere.spi.device.streaming.IDeviceStream;
+
+/**
+ * Default implementation of {@link IDeviceEventBulkRequest}.
+ * 
+ * @author Derek
+ */
+public class DeviceEventBulkRequest implements IDeviceEventBulkRequest {
+
+    /** Assignment the event is stored for */
+    private IDeviceAssignment assignment;
+
+    /** Device stream (only required for stream data) */
+    private IDeviceStream deviceStream;
+
+    /** Request used to create the event */
+    private IDeviceEventCreateRequest request;
+
+    public DeviceEventBulkRequest(IDeviceAssignment assignment, IDeviceStream deviceStream,
+	    IDeviceEventCreateRequest request) {
+	this.assignment = assignment;
+	this.deviceStream = deviceStream;
+	this.request = request;
+    }
+
+    /*
+     * @see com.sitewhere.event.spi.bulk.IDeviceEventBulkRequest#getAssignment()
+     */
+    @Override
+    public IDeviceAssignment getAssignment() {
+	return assignment;
+    }
+
+    public void setAssignment(IDeviceAssignment assignment) {
+	this.assignment = assignment;
+    }
+
+    /*
+     * @see com.sitewhere.event.spi.bulk.IDeviceEventBulkRequest#getDeviceStream()
+     */
+    @Override
+    public IDeviceStream getDeviceStream() {
+	return deviceStream;
+    }
+
+    public void setDeviceStream(IDeviceStream deviceStream) {
+	this.deviceStream = deviceStream;
+    }
+
+    /*
+     * @see com.sitewhere.event.spi.bulk.IDeviceEventBulkRequest#getRequest()
+     */
+    @Override
+    public IDeviceEventCreateRequest getRequest() {
+	return request;
+    }
+
+    public void setRequest(IDeviceEventCreateRequest request) {
+	this.request = request;
+    }
+}
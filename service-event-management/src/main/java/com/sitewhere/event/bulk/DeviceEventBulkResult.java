@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.bulk;
+
+import com.sitewhere.event.spi.bulk.IDeviceEventBulkResult;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+
+/**
+ * Default implementation of {@link IDeviceEventBulkResult}.
+ * 
+ * @author Derek
+ */
+public class DeviceEventBulkResult implements IDeviceEventBulkResult {
+
+    /** Event that was stored */
+    private IDeviceEvent event;
+
+    /** Reason event could not be stored */
+    private Throwable error;
+
+    public DeviceEventBulkResult(IDeviceEvent event, Throwable error) {
+	this.event = event;
+	this.error = error;
+    }
+
+    /**
+     * Create result for an event that was stored.
+     * 
+     * @param event
+     * @return
+     */
+    public static DeviceEventBulkResult stored(IDeviceEvent event) {
+	return new DeviceEventBulkResult(event, null);
+    }
+
+    /**
+     * Create result for an event that could not be stored.
+     * 
+     * @param error
+     * @return
+     */
+    public static DeviceEventBulkResult failed(Throwable error) {
+	return new DeviceEventBulkResult(null, error);
+    }
+
+    /*
+     * @see com.sitewhere.event.spi.bulk.IDeviceEventBulkResult#getEvent()
+     */
+    @Override
+    public IDeviceEvent getEvent() {
+	return event;
+    }
+
+    public void setEvent(IDeviceEvent event) {
+	this.event = event;
+    }
+
+    /*
+     * @see com.sitewhere.event.spi.bulk.IDeviceEventBulkResult#getError()
+     */
+    @Override
+    public Throwable getError() {
+	return error;
+    }
+
+    public void setError(Throwable error) {
+	this.error = error;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.bulk;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sitewhere.event.spi.bulk.IDeviceEventBulkRequest;
+import com.sitewhere.event.spi.bulk.IDeviceEventBulkResult;
+import com.sitewhere.event.spi.bulk.IDeviceEventBulkStore;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceEventManagement;
+import com.sitewhere.spi.device.event.request.IDeviceAlertCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceCommandInvocationCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceCommandResponseCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceEventCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceLocationCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceMeasurementsCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceStateChangeCreateRequest;
+import com.sitewhere.spi.device.event.request.IDeviceStreamDataCreateRequest;
+
+/**
+ * Bulk store for backends that can only add events one at a time. Each event
+ * is passed to the matching add method of the event management
+ * implementation.
+ * 
+ * @author Derek
+ */
+public class PerEventDeviceEventBulkStore implements IDeviceEventBulkStore {
+
+    /** Device event management persistence */
+    private IDeviceEventManagement deviceEventManagement;
+
+    public PerEventDeviceEventBulkStore(IDeviceEventManagement deviceEventManagement) {
+	this.deviceEventManagement = deviceEventManagement;
+    }
+
+    /*
+     * @see
+     * com.sitewhere.event.spi.bulk.IDeviceEventBulkStore#addDeviceEvents(java.
+     * util.List)
+     */
+    @Override
+    public List<IDeviceEventBulkResult> addDeviceEvents(List<IDeviceEventBulkRequest> requests)
+	    throws SiteWhereException {
+	List<IDeviceEventBulkResult> results = new ArrayList<IDeviceEventBulkResult>(requests.size());
+	for (IDeviceEventBulkRequest request : requests) {
+	    try {
+		results.add(DeviceEventBulkResult.stored(addDeviceEvent(request)));
+	    } catch (Throwable t) {
+		results.add(DeviceEventBulkResult.failed(t));
+	    }
+	}
+	return results;
+    }
+
+    /**
+     * Add a single event using the add method for its type.
+     * 
+     * @param request
+     * @return
+     * @throws SiteWhereException
+     */
+    protected IDeviceEvent addDeviceEvent(IDeviceEventBulkRequest request) throws SiteWhereException {
+	IDeviceAssignment assignment = request.getAssignment();
+	IDeviceEventCreateRequest create = request.getRequest();
+	switch (create.getEventType()) {
+	case Measurements:
+	    return getDeviceEventManagement().addDeviceMeasurements(assignment,
+		    (IDeviceMeasurementsCreateRequest) create);
+	case Alert:
+	    return getDeviceEventManagement().addDeviceAlert(assignment, (IDeviceAlertCreateRequest) create);
+	case CommandInvocation:
+	    return getDeviceEventManagement().addDeviceCommandInvocation(assignment,
+		    (IDeviceCommandInvocationCreateRequest) create);
+	case CommandResponse:
+	    return getDeviceEventManagement().addDeviceCommandResponse(assignment,
+		    (IDeviceCommandResponseCreateRequest) create);
+	case Location:
+	    return getDeviceEventManagement().addDeviceLocation(assignment, (IDeviceLocationCreateRequest) create);
+	case StateChange:
+	    return getDeviceEventManagement().addDeviceStateChange(assignment,
+		    (IDeviceStateChangeCreateRequest) create);
+	case StreamData: {
+	    if (request.getDeviceStream() == null) {
+		throw new SiteWhereException("Stream data sent without device stream information.");
+	    }
+	    return getDeviceEventManagement().addDeviceStreamData(assignment, request.getDeviceStream(),
+		    (IDeviceStreamDataCreateRequest) create);
+	}
+	default:
+	    throw new SiteWhereException("Unknown event type sent for storage: " + create.getEventType().name());
+	}
+    }
+
+    public IDeviceEventManagement getDeviceEventManagement() {
+	return deviceEventManagement;
+    }
+
+    public void setDeviceEventManagement(IDeviceEventManagement deviceEventManagement) {
+	this.deviceEventManagement = deviceEventManagement;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.export;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.sitewhere.event.spi.export.IDeviceEventExportCriteria;
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.ISite;
+import com.sitewhere.spi.device.event.DeviceEventType;
+
+/**
+ * Model object for device event export criteria.
+ * 
+ * @author Derek
+ */
+public class DeviceEventExportCriteria implements IDeviceEventExportCriteria {
+
+    /** Default number of events read from persistence at a time */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /** Assignment events are exported for */
+    private IDeviceAssignment assignment;
+
+    /** Site events are exported for */
+    private ISite site;
+
+    /** Event types to export */
+    private List<DeviceEventType> eventTypes = new ArrayList<DeviceEventType>();
+
+    /** Measurement names to export */
+    private List<String> measurementNames = new ArrayList<String>();
+
+    /** Earliest event date */
+    private Date startDate;
+
+    /** Latest event date */
+    private Date endDate;
+
+    /** Number of events read at a time */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /*
+     * @see com.sitewhere.event.spi.export.IDeviceEventExportCriteria#
+     * getAssignment()
+     */
+    @Override
+    public IDeviceAssignment getAssignment() {
+	return assignment;
+    }
+
+    public void setAssignment(IDeviceAssignment assignment) {
+	this.assignment = assignment;
+    }
+
+    /*
+     * @see com.sitewhere.event.spi.export.IDeviceEventExportCriteria#getSite()
+     */
+    @Override
+    public ISite getSite() {
+	return site;
+    }
+
+    public void setSite(ISite site) {
+	this.site = site;
+    }
+
+    /*
+     * @see com.sitewhere.event.spi.export.IDeviceEventExportCriteria#
+     * getEventTypes()
+     */
+    @Override
+    public List<DeviceEventType> getEventTypes() {
+	return eventTypes;
+    }
+
+    public void setEventTypes(List<DeviceEventType> eventTypes) {
+	this.eventTypes = eventTypes;
+    }
+
+    /*
+     * @see com.sitewhere.event.spi.export.IDeviceEventExportCriteria#
+     * getMeasurementNames()
+     */
+    @Override
+    public List<String> getMeasurementNames() {
+	return measurementNames;
+    }
+
+    public void setMeasurementNames(List<String> measurementNames) {
+	this.measurementNames = measurementNames;
+    }
+
+    /*
+     * @see
+     * com.sitewhere.event.spi.export.IDeviceEventExportCriteria#getStartDate()
+     */
+    @Override
+    public Date getStartDate() {
+	return startDate;
+    }
+
+    public void setStartDate(Date startDate) {
+	this.startDate = startDate;
+    }
+
+    /*
+     * @see com.sitewhere.event.spi.export.IDeviceEventExportCriteria#getEndDate()
+     */
+    @Override
+    public Date getEndDate() {
+	return endDate;
+    }
+
+    public void setEndDate(Date endDate) {
+	this.endDate = endDate;
+    }
+
+    /*
+     * @see
+     * com.sitewhere.event.spi.export.IDeviceEventExportCriteria#getBatchSize()
+     */
+    @Override
+    public int getBatchSize() {
+	return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+	this.batchSize = batchSize;
+    }
+}
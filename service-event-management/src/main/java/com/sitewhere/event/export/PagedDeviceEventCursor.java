@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.export;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+import com.sitewhere.event.spi.export.IDeviceEventCursor;
+import com.sitewhere.event.spi.export.IDeviceEventExportCriteria;
+import com.sitewhere.rest.model.search.DateRangeSearchCriteria;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.DeviceEventType;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceEventManagement;
+
+/**
+ * Cursor for backends that do not support iteration. Events are loaded one page
+ * at a time through the standard list methods. Events for an assignment are
+ * returned newest first. Sites have no generic event listing, so events for a
+ * site are returned one type at a time, newest first within each type.
+ * 
+ * @author Derek
+ */
+public class PagedDeviceEventCursor implements IDeviceEventCursor {
+
+    /** Event types that can be listed for a site in the order they are read */
+    private static final DeviceEventType[] SITE_EVENT_TYPES = { DeviceEventType.Measurements,
+	    DeviceEventType.Location, DeviceEventType.Alert, DeviceEventType.CommandInvocation,
+	    DeviceEventType.CommandResponse, DeviceEventType.StateChange };
+
+    /** Device event management persistence */
+    private IDeviceEventManagement deviceEventManagement;
+
+    /** Export criteria */
+    private IDeviceEventExportCriteria criteria;
+
+    /** Event types left to be read for a site */
+    private Deque<DeviceEventType> pendingTypes = new ArrayDeque<DeviceEventType>();
+
+    /** Event type being read for a site */
+    private DeviceEventType currentType;
+
+    /** Last page number loaded */
+    private int page;
+
+    /** Indicates the last page loaded was the final one for the current type */
+    private boolean lastPage;
+
+    /** Events left in the current page */
+    private Iterator<? extends IDeviceEvent> current = Collections.emptyIterator();
+
+    public PagedDeviceEventCursor(IDeviceEventManagement deviceEventManagement, IDeviceEventExportCriteria criteria) {
+	this.deviceEventManagement = deviceEventManagement;
+	this.criteria = criteria;
+	if (criteria.getAssignment() == null) {
+	    for (DeviceEventType type : SITE_EVENT_TYPES) {
+		if (criteria.getEventTypes().isEmpty() || criteria.getEventTypes().contains(type)) {
+		    pendingTypes.add(type);
+		}
+	    }
+	    this.lastPage = true;
+	}
+    }
+
+    /*
+     * @see com.sitewhere.event.spi.export.IDeviceEventCursor#next()
+     */
+    @Override
+    public IDeviceEvent next() throws SiteWhereException {
+	while (!current.hasNext()) {
+	    if (lastPage) {
+		if (pendingTypes.isEmpty()) {
+		    return null;
+		}
+		this.currentType = pendingTypes.poll();
+		this.page = 0;
+	    }
+	    page++;
+	    List<? extends IDeviceEvent> results = listPage(page);
+	    this.lastPage = results.size() < criteria.getBatchSize();
+	    this.current = results.iterator();
+	}
+	return current.next();
+    }
+
+    /**
+     * Load a page of events for the assignment or for the current type in the
+     * site.
+     * 
+     * @param page
+     * @return
+     * @throws SiteWhereException
+     */
+    protected List<? extends IDeviceEvent> listPage(int page) throws SiteWhereException {
+	DateRangeSearchCriteria paging = new DateRangeSearchCriteria(page, criteria.getBatchSize(),
+		criteria.getStartDate(), criteria.getEndDate());
+	if (criteria.getAssignment() != null) {
+	    return deviceEventManagement.listDeviceEvents(criteria.getAssignment(), paging).getResults();
+	}
+	switch (currentType) {
+	case Measurements:
+	    return deviceEventManagement.listDeviceMeasurementsForSite(criteria.getSite(), paging).getResults();
+	case Location:
+	    return deviceEventManagement.listDeviceLocationsForSite(criteria.getSite(), paging).getResults();
+	case Alert:
+	    return deviceEventManagement.listDeviceAlertsForSite(criteria.getSite(), paging).getResults();
+	case CommandInvocation:
+	    return deviceEventManagement.listDeviceCommandInvocationsForSite(criteria.getSite(), paging)
+		    .getResults();
+	case CommandResponse:
+	    return deviceEventManagement.listDeviceCommandResponsesForSite(criteria.getSite(), paging).getResults();
+	case StateChange:
+	    return deviceEventManagement.listDeviceStateChangesForSite(criteria.getSite(), paging).getResults();
+	default:
+	    throw new SiteWhereException("Events of type " + currentType + " can not be listed for a site.");
+	}
+    }
+
+    /*
+     * @see com.sitewhere.event.spi.export.IDeviceEventCursor#close()
+     */
+    @Override
+    public void close() throws SiteWhereException {
+	this.current = Collections.emptyIterator();
+	this.pendingTypes.clear();
+	this.lastPage = true;
+    }
+}
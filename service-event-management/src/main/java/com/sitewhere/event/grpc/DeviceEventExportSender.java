@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.grpc;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.sitewhere.event.export.DeviceEventExportCriteria;
+import com.sitewhere.event.export.PagedDeviceEventCursor;
+import com.sitewhere.event.spi.export.IDeviceEventCursor;
+import com.sitewhere.event.spi.export.IDeviceEventCursorSource;
+import com.sitewhere.grpc.model.CommonModel.GDateRangeSearchCriteria;
+import com.sitewhere.grpc.model.DeviceEventModel.GDeviceEventType;
+import com.sitewhere.grpc.model.converter.CommonModelConverter;
+import com.sitewhere.grpc.model.converter.DeviceModelConverter;
+import com.sitewhere.grpc.model.converter.EventModelConverter;
+import com.sitewhere.grpc.service.DeviceEventManagementGrpc;
+import com.sitewhere.grpc.service.GExportDeviceEventsRequest;
+import com.sitewhere.grpc.service.GExportDeviceEventsResponse;
+import com.sitewhere.rest.model.device.event.DeviceEvent;
+import com.sitewhere.rest.model.device.event.DeviceMeasurements;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.DeviceEventType;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceEventManagement;
+import com.sitewhere.spi.device.event.IDeviceMeasurements;
+
+import io.grpc.MethodDescriptor;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Sends the events matching an export request one event per message. Events
+ * are read through a cursor over persistence and each message is only sent
+ * once the transport is ready for it, so memory used for an export is bounded
+ * by the persistence batch size regardless of how many events match. The cursor
+ * is closed when the export completes or is cancelled.
+ * 
+ * @author Derek
+ */
+public class DeviceEventExportSender extends FlowControlledResponseSender<GExportDeviceEventsResponse> {
+
+    /** Device event management persistence */
+    private IDeviceEventManagement deviceEventManagement;
+
+    /** Export request */
+    private GExportDeviceEventsRequest request;
+
+    /** Export criteria built from request */
+    private DeviceEventExportCriteria criteria;
+
+    /** Measurement names to export */
+    private Set<String> measurementNames;
+
+    /** Cursor over matching events */
+    private IDeviceEventCursor cursor;
+
+    public DeviceEventExportSender(IDeviceEventManagement deviceEventManagement, GExportDeviceEventsRequest request,
+	    StreamObserver<GExportDeviceEventsResponse> responseObserver) {
+	super(responseObserver);
+	this.deviceEventManagement = deviceEventManagement;
+	this.request = request;
+    }
+
+    /**
+     * Start sending matching events.
+     * 
+     * @throws SiteWhereException
+     */
+    public void send() throws SiteWhereException {
+	this.criteria = buildCriteria(request);
+	this.measurementNames = new HashSet<String>(criteria.getMeasurementNames());
+	this.cursor = openCursor();
+	start();
+    }
+
+    /*
+     * @see com.sitewhere.event.grpc.FlowControlledResponseSender#sendNext()
+     */
+    @Override
+    protected boolean sendNext() throws SiteWhereException {
+	IDeviceEvent event;
+	while ((event = cursor.next()) != null) {
+	    IDeviceEvent filtered = filter(event);
+	    if (filtered != null) {
+		GExportDeviceEventsResponse.Builder response = GExportDeviceEventsResponse.newBuilder();
+		response.setEvent(EventModelConverter.asGrpcGenericDeviceEvent(filtered));
+		getResponseObserver().onNext(response.build());
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /*
+     * @see com.sitewhere.event.grpc.FlowControlledResponseSender#close()
+     */
+    @Override
+    protected void close() throws SiteWhereException {
+	if (cursor != null) {
+	    cursor.close();
+	}
+    }
+
+    /*
+     * @see com.sitewhere.event.grpc.FlowControlledResponseSender#getMethod()
+     */
+    @Override
+    protected MethodDescriptor<?, ?> getMethod() {
+	return DeviceEventManagementGrpc.METHOD_EXPORT_DEVICE_EVENTS;
+    }
+
+    /**
+     * Open a cursor over persistence, emulating one by paging if the backend
+     * does not support them.
+     * 
+     * @return
+     * @throws SiteWhereException
+     */
+    protected IDeviceEventCursor openCursor() throws SiteWhereException {
+	if (deviceEventManagement instanceof IDeviceEventCursorSource) {
+	    return ((IDeviceEventCursorSource) deviceEventManagement).openDeviceEventCursor(criteria);
+	}
+	return new PagedDeviceEventCursor(deviceEventManagement, criteria);
+    }
+
+    /**
+     * Apply type and measurement name filters to an event. Returns null if the
+     * event should not be exported. Single measurement events are not part of
+     * the generic event model and are never exported.
+     * 
+     * @param event
+     * @return
+     * @throws SiteWhereException
+     */
+    protected IDeviceEvent filter(IDeviceEvent event) throws SiteWhereException {
+	if (event.getEventType() == DeviceEventType.Measurement) {
+	    return null;
+	}
+	if (!criteria.getEventTypes().isEmpty() && !criteria.getEventTypes().contains(event.getEventType())) {
+	    return null;
+	}
+	if (measurementNames.isEmpty() || !(event instanceof IDeviceMeasurements)) {
+	    return event;
+	}
+	Map<String, Double> values = ((IDeviceMeasurements) event).getMeasurements();
+	if (measurementNames.containsAll(values.keySet())) {
+	    return values.isEmpty() ? null : event;
+	}
+	DeviceMeasurements trimmed = new DeviceMeasurements();
+	DeviceEvent.copy(event, trimmed);
+	for (Map.Entry<String, Double> entry : values.entrySet()) {
+	    if (measurementNames.contains(entry.getKey())) {
+		trimmed.addOrReplaceMeasurement(entry.getKey(), entry.getValue());
+	    }
+	}
+	return trimmed.getMeasurements().isEmpty() ? null : trimmed;
+    }
+
+    /**
+     * Build export criteria from the request.
+     * 
+     * @param request
+     * @return
+     * @throws SiteWhereException
+     */
+    protected static DeviceEventExportCriteria buildCriteria(GExportDeviceEventsRequest request)
+	    throws SiteWhereException {
+	DeviceEventExportCriteria criteria = new DeviceEventExportCriteria();
+	if (request.hasAssignment()) {
+	    criteria.setAssignment(DeviceModelConverter.asApiDeviceAssignment(request.getAssignment()));
+	} else if (request.hasSite()) {
+	    criteria.setSite(DeviceModelConverter.asApiSite(request.getSite()));
+	} else {
+	    throw new SiteWhereException("Event export requires an assignment or site.");
+	}
+	for (GDeviceEventType type : request.getEventTypesList()) {
+	    criteria.getEventTypes().add(EventModelConverter.asApiDeviceEventType(type));
+	}
+	criteria.getMeasurementNames().addAll(request.getMeasurementNamesList());
+	if (request.hasCriteria()) {
+	    GDateRangeSearchCriteria dates = request.getCriteria();
+	    if (dates.hasStartDate()) {
+		criteria.setStartDate(CommonModelConverter.asDate(dates.getStartDate()));
+	    }
+	    if (dates.hasEndDate()) {
+		criteria.setEndDate(CommonModelConverter.asDate(dates.getEndDate()));
+	    }
+	    if (dates.getPageSize() > 0) {
+		criteria.setBatchSize(dates.getPageSize());
+	    }
+	}
+	return criteria;
+    }
+}
@@ -0,0 +1,390 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.grpc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sitewhere.event.bulk.DeviceEventBulkRequest;
+import com.sitewhere.event.bulk.PerEventDeviceEventBulkStore;
+import com.sitewhere.event.spi.bulk.IDeviceEventBulkRequest;
+import com.sitewhere.event.spi.bulk.IDeviceEventBulkResult;
+import com.sitewhere.event.spi.bulk.IDeviceEventBulkStore;
+import com.sitewhere.grpc.model.CommonModel.GOptionalString;
+import com.sitewhere.grpc.model.converter.DeviceModelConverter;
+import com.sitewhere.grpc.model.converter.EventModelConverter;
+import com.sitewhere.grpc.service.GStreamDeviceEventRequest;
+import com.sitewhere.grpc.service.GStreamDeviceEventResponse;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceEventManagement;
+import com.sitewhere.spi.device.event.request.IDeviceEventCreateRequest;
+import com.sitewhere.spi.device.streaming.IDeviceStream;
+
+import io.grpc.Context;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Handles the inbound side of a device event stream. Events are queued as they
+ * arrive and stored in batches by a worker thread so that the call thread is
+ * never blocked on persistence. Each batch is persisted with a single bulk
+ * write if the tenant's configured {@link IDeviceEventManagement} is an
+ * {@link IDeviceEventBulkStore} (and one event at a time otherwise), and each
+ * event is acknowledged with the sequence number assigned by the client. A
+ * failure to store one event is reported in its acknowledgement and does not
+ * terminate the stream.
+ * 
+ * Automatic inbound flow control is disabled. The client is granted a fixed
+ * number of messages up front and one more for each acknowledgement sent, and
+ * acknowledgements are only sent when the transport is ready, so a slow backend
+ * or slow client limits how many events are buffered for the stream. When the
+ * transport is not ready the worker returns and the call's on-ready handler
+ * schedules it again, so no thread waits on a slow client.
+ *
+ * @author Derek
+ */
+public class DeviceEventStreamObserver implements StreamObserver<GStreamDeviceEventRequest> {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Default maximum number of events stored in one batch */
+    private static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+    /** Default number of events a client may send ahead of acknowledgements */
+    private static final int DEFAULT_INBOUND_WINDOW = 512;
+
+    /** Executor that stores queued events for all streams */
+    private static ExecutorService STORAGE = Executors.newCachedThreadPool(new StorageThreadFactory());
+
+    /** Device event management persistence */
+    private IDeviceEventManagement deviceEventManagement;
+
+    /** Observer used to send acknowledgements */
+    private StreamObserver<GStreamDeviceEventResponse> responseObserver;
+
+    /** Maximum number of events stored in one batch */
+    private int maxBatchSize;
+
+    /** Events received but not yet stored */
+    private Deque<GStreamDeviceEventRequest> queued = new ArrayDeque<GStreamDeviceEventRequest>();
+
+    /** Indicates a worker is storing events for this stream */
+    private boolean draining = false;
+
+    /** Indicates client has finished sending events */
+    private boolean completed = false;
+
+    /** Indicates call was terminated and no more acknowledgements are sent */
+    private boolean aborted = false;
+
+    /** Acknowledgements waiting for the transport to be ready */
+    private Deque<GStreamDeviceEventResponse> unsent = new ArrayDeque<GStreamDeviceEventResponse>();
+
+    /** Indicates the worker stopped until the transport is ready */
+    private boolean waitingForReady = false;
+
+    /** Stores queued events in the context of the call */
+    private Runnable drainer;
+
+    public DeviceEventStreamObserver(IDeviceEventManagement deviceEventManagement,
+	    StreamObserver<GStreamDeviceEventResponse> responseObserver) {
+	this(deviceEventManagement, responseObserver, DEFAULT_MAX_BATCH_SIZE, DEFAULT_INBOUND_WINDOW);
+    }
+
+    public DeviceEventStreamObserver(IDeviceEventManagement deviceEventManagement,
+	    StreamObserver<GStreamDeviceEventResponse> responseObserver, int maxBatchSize, int inboundWindow) {
+	this.deviceEventManagement = deviceEventManagement;
+	this.responseObserver = responseObserver;
+	this.maxBatchSize = maxBatchSize;
+	this.drainer = Context.current().wrap(new Runnable() {
+
+	    @Override
+	    public void run() {
+		drain();
+	    }
+	});
+	if (responseObserver instanceof ServerCallStreamObserver) {
+	    ServerCallStreamObserver<?> call = (ServerCallStreamObserver<?>) responseObserver;
+	    call.disableAutoInboundFlowControl();
+	    call.request(inboundWindow);
+	    call.setOnReadyHandler(new Runnable() {
+
+		@Override
+		public void run() {
+		    resume();
+		}
+	    });
+	}
+    }
+
+    /*
+     * @see io.grpc.stub.StreamObserver#onNext(java.lang.Object)
+     */
+    @Override
+    public void onNext(GStreamDeviceEventRequest request) {
+	synchronized (this) {
+	    if (aborted) {
+		return;
+	    }
+	    queued.add(request);
+	    if (draining) {
+		return;
+	    }
+	    draining = true;
+	}
+	STORAGE.execute(drainer);
+    }
+
+    /**
+     * Store queued events in batches and acknowledge them until the queue is
+     * empty. Returns early if the transport is not ready for an acknowledgement.
+     */
+    protected void drain() {
+	while (true) {
+	    if (!sendAcknowledgements()) {
+		return;
+	    }
+	    List<GStreamDeviceEventRequest> batch = new ArrayList<GStreamDeviceEventRequest>();
+	    synchronized (this) {
+		while ((batch.size() < maxBatchSize) && !queued.isEmpty()) {
+		    batch.add(queued.poll());
+		}
+		if (batch.isEmpty() || aborted) {
+		    draining = false;
+		    if (completed && !aborted) {
+			responseObserver.onCompleted();
+		    }
+		    return;
+		}
+	    }
+	    List<GStreamDeviceEventResponse> acks = storeBatch(batch);
+	    synchronized (this) {
+		if (!aborted) {
+		    unsent.addAll(acks);
+		}
+	    }
+	}
+    }
+
+    /**
+     * Send acknowledgements while the transport is ready, granting the client
+     * one more message for each. Returns false if the transport is not ready,
+     * in which case the on-ready handler resumes draining.
+     * 
+     * @return
+     */
+    protected boolean sendAcknowledgements() {
+	while (true) {
+	    GStreamDeviceEventResponse ack;
+	    synchronized (this) {
+		if (aborted || unsent.isEmpty()) {
+		    return true;
+		}
+		if (!isReady()) {
+		    waitingForReady = true;
+		    return false;
+		}
+		ack = unsent.poll();
+	    }
+	    try {
+		responseObserver.onNext(ack);
+	    } catch (Throwable t) {
+		LOGGER.warn("Unable to acknowledge streamed device events.", t);
+		abort();
+		return true;
+	    }
+	    if (responseObserver instanceof ServerCallStreamObserver) {
+		((ServerCallStreamObserver<?>) responseObserver).request(1);
+	    }
+	}
+    }
+
+    /**
+     * Indicates whether the transport can accept an acknowledgement without
+     * buffering it.
+     * 
+     * @return
+     */
+    protected boolean isReady() {
+	if (!(responseObserver instanceof ServerCallStreamObserver)) {
+	    return true;
+	}
+	return ((ServerCallStreamObserver<?>) responseObserver).isReady();
+    }
+
+    /**
+     * Called when the transport becomes ready. Schedules the worker again if it
+     * stopped to wait for the transport.
+     */
+    protected void resume() {
+	synchronized (this) {
+	    if (!waitingForReady) {
+		return;
+	    }
+	    waitingForReady = false;
+	}
+	STORAGE.execute(drainer);
+    }
+
+    /**
+     * Store a batch of events with one bulk write and build an acknowledgement
+     * for each.
+     * 
+     * @param batch
+     * @return
+     */
+    protected List<GStreamDeviceEventResponse> storeBatch(List<GStreamDeviceEventRequest> batch) {
+	Throwable[] errors = new Throwable[batch.size()];
+	IDeviceEvent[] events = new IDeviceEvent[batch.size()];
+
+	// Convert requests, failing only those that can not be converted.
+	List<IDeviceEventBulkRequest> requests = new ArrayList<IDeviceEventBulkRequest>(batch.size());
+	List<Integer> positions = new ArrayList<Integer>(batch.size());
+	for (int i = 0; i < batch.size(); i++) {
+	    try {
+		requests.add(asBulkRequest(batch.get(i)));
+		positions.add(i);
+	    } catch (Throwable t) {
+		errors[i] = t;
+	    }
+	}
+
+	if (!requests.isEmpty()) {
+	    try {
+		List<IDeviceEventBulkResult> results = getBulkStore().addDeviceEvents(requests);
+		for (int i = 0; i < results.size(); i++) {
+		    events[positions.get(i)] = results.get(i).getEvent();
+		    errors[positions.get(i)] = results.get(i).getError();
+		}
+	    } catch (Throwable t) {
+		for (Integer position : positions) {
+		    errors[position] = t;
+		}
+	    }
+	}
+
+	List<GStreamDeviceEventResponse> acks = new ArrayList<GStreamDeviceEventResponse>(batch.size());
+	for (int i = 0; i < batch.size(); i++) {
+	    GStreamDeviceEventResponse.Builder response = GStreamDeviceEventResponse.newBuilder();
+	    response.setSequence(batch.get(i).getSequence());
+	    Throwable error = errors[i];
+	    try {
+		if ((error == null) && (events[i] != null)) {
+		    response.setEvent(EventModelConverter.asGrpcGenericDeviceEvent(events[i]));
+		}
+	    } catch (Throwable t) {
+		error = t;
+	    }
+	    if (error != null) {
+		LOGGER.error("Unable to store streamed device event.", error);
+		String message = (error.getMessage() != null) ? error.getMessage() : error.getClass().getName();
+		response.setErrorMessage(GOptionalString.newBuilder().setValue(message).build());
+	    }
+	    acks.add(response.build());
+	}
+	return acks;
+    }
+
+    /**
+     * Get bulk store for event management, adding events one at a time if the
+     * backend does not support bulk writes.
+     * 
+     * @return
+     */
+    protected IDeviceEventBulkStore getBulkStore() {
+	if (getDeviceEventManagement() instanceof IDeviceEventBulkStore) {
+	    return (IDeviceEventBulkStore) getDeviceEventManagement();
+	}
+	return new PerEventDeviceEventBulkStore(getDeviceEventManagement());
+    }
+
+    /**
+     * Stop acknowledging events after the call has been terminated.
+     */
+    protected synchronized void abort() {
+	aborted = true;
+	queued.clear();
+	unsent.clear();
+	if (waitingForReady) {
+	    waitingForReady = false;
+	    draining = false;
+	}
+    }
+
+    /**
+     * Convert a streamed event into a bulk store request.
+     *
+     * @param request
+     * @return
+     * @throws SiteWhereException
+     */
+    protected IDeviceEventBulkRequest asBulkRequest(GStreamDeviceEventRequest request) throws SiteWhereException {
+	IDeviceAssignment assignment = DeviceModelConverter.asApiDeviceAssignment(request.getAssignment());
+	IDeviceEventCreateRequest create = EventModelConverter.asApiDeviceEventCreateRequest(request.getRequest());
+	IDeviceStream stream = request.hasDeviceStream()
+		? DeviceModelConverter.asApiDeviceStream(request.getDeviceStream()) : null;
+	return new DeviceEventBulkRequest(assignment, stream, create);
+    }
+
+    /*
+     * @see io.grpc.stub.StreamObserver#onError(java.lang.Throwable)
+     */
+    @Override
+    public void onError(Throwable t) {
+	LOGGER.warn("Device event stream terminated by client.", t);
+	abort();
+    }
+
+    /*
+     * @see io.grpc.stub.StreamObserver#onCompleted()
+     */
+    @Override
+    public void onCompleted() {
+	LOGGER.debug("Device event stream completed by client.");
+	synchronized (this) {
+	    completed = true;
+	    if (draining || aborted) {
+		return;
+	    }
+	}
+	responseObserver.onCompleted();
+    }
+
+    public IDeviceEventManagement getDeviceEventManagement() {
+	return deviceEventManagement;
+    }
+
+    public void setDeviceEventManagement(IDeviceEventManagement deviceEventManagement) {
+	this.deviceEventManagement = deviceEventManagement;
+    }
+
+    /** Used for naming event storage threads */
+    private static class StorageThreadFactory implements ThreadFactory {
+
+	/** Counts threads */
+	private AtomicInteger counter = new AtomicInteger();
+
+	public Thread newThread(Runnable r) {
+	    Thread thread = new Thread(r, "Device Event Stream Storage " + counter.incrementAndGet());
+	    thread.setDaemon(true);
+	    return thread;
+	}
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.grpc;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+
+import com.sitewhere.event.spi.export.IDeviceEventCursor;
+import com.sitewhere.event.spi.streaming.IDeviceStreamDataSource;
+import com.sitewhere.event.streaming.PagedDeviceStreamDataSource;
+import com.sitewhere.grpc.model.converter.DeviceModelConverter;
+import com.sitewhere.grpc.model.converter.EventModelConverter;
+import com.sitewhere.grpc.service.DeviceEventManagementGrpc;
+import com.sitewhere.grpc.service.GReadStreamDataForAssignmentRequest;
+import com.sitewhere.grpc.service.GReadStreamDataForAssignmentResponse;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceEventManagement;
+import com.sitewhere.spi.device.event.IDeviceStreamData;
+
+import io.grpc.MethodDescriptor;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Sends the data for a device stream as a sequence of chunk messages. Chunk
+ * sizes are read first without the data. They determine the header and which
+ * chunk holds the start offset. Chunks are then read by sequence number,
+ * starting at that chunk and ending at the last chunk counted in the header, so
+ * the header describes exactly the data that is sent. Each message is only
+ * sent once the transport is ready for it, so memory used for a download is
+ * bounded by the batch size regardless of how large the stream is.
+ *
+ * @author Derek
+ */
+public class DeviceStreamDataSender extends FlowControlledResponseSender<GReadStreamDataForAssignmentResponse> {
+
+    /** Default number of chunks loaded per batch */
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    /** Device event management persistence */
+    private IDeviceEventManagement deviceEventManagement;
+
+    /** Read request */
+    private GReadStreamDataForAssignmentRequest request;
+
+    /** Source of stream data */
+    private IDeviceStreamDataSource source;
+
+    /** Assignment stream belongs to */
+    private IDeviceAssignment assignment;
+
+    /** Chunk sizes indexed by sequence number */
+    private SortedMap<Long, Long> sizes;
+
+    /** Header waiting to be sent */
+    private GReadStreamDataForAssignmentResponse header;
+
+    /** Remaining chunk sizes */
+    private Iterator<Map.Entry<Long, Long>> entries;
+
+    /** Size of next chunk to be sent (null if none are left) */
+    private Map.Entry<Long, Long> entry;
+
+    /** Offset of next chunk to be sent */
+    private long offset;
+
+    /** Cursor over chunks (opened with first chunk) */
+    private IDeviceEventCursor cursor;
+
+    public DeviceStreamDataSender(IDeviceEventManagement deviceEventManagement,
+	    GReadStreamDataForAssignmentRequest request,
+	    StreamObserver<GReadStreamDataForAssignmentResponse> responseObserver) {
+	super(responseObserver);
+	this.deviceEventManagement = deviceEventManagement;
+	this.request = request;
+    }
+
+    /**
+     * Send header followed by stream data (unless only the header was
+     * requested).
+     *
+     * @throws SiteWhereException
+     */
+    public void send() throws SiteWhereException {
+	this.assignment = DeviceModelConverter.asApiDeviceAssignment(request.getAssignment());
+	this.source = getStreamDataSource();
+	this.sizes = source.getDeviceStreamChunkSizes(assignment, request.getStreamId());
+	long total = 0;
+	for (Long size : sizes.values()) {
+	    total += size;
+	}
+
+	GReadStreamDataForAssignmentResponse.Builder summary = GReadStreamDataForAssignmentResponse.newBuilder();
+	summary.setChunkCount(sizes.size());
+	summary.setTotalSize(total);
+	if (!sizes.isEmpty()) {
+	    summary.setLastSequenceNumber(sizes.lastKey());
+	}
+
+	if (request.getHeaderOnly()) {
+	    getResponseObserver().onNext(summary.build());
+	    getResponseObserver().onCompleted();
+	    return;
+	}
+	this.header = summary.build();
+	long start = (request.getSuffixLength() > 0) ? Math.max(0, total - request.getSuffixLength())
+		: request.getStartOffset();
+	skipTo(start);
+	start();
+    }
+
+    /**
+     * Skip chunks that end before the start offset using sizes only.
+     *
+     * @param start
+     */
+    protected void skipTo(long start) {
+	this.offset = 0;
+	this.entries = sizes.entrySet().iterator();
+	this.entry = null;
+	while (entries.hasNext()) {
+	    entry = entries.next();
+	    if ((offset + entry.getValue()) > start) {
+		return;
+	    }
+	    offset += entry.getValue();
+	    entry = null;
+	}
+    }
+
+    /*
+     * @see com.sitewhere.event.grpc.FlowControlledResponseSender#sendNext()
+     */
+    @Override
+    protected boolean sendNext() throws SiteWhereException {
+	if (header != null) {
+	    getResponseObserver().onNext(header);
+	    header = null;
+	    return true;
+	}
+	if (entry == null) {
+	    return false;
+	}
+	if (cursor == null) {
+	    int pageSize = (request.getPageSize() > 0) ? request.getPageSize() : DEFAULT_PAGE_SIZE;
+	    cursor = source.openDeviceStreamDataCursor(assignment, request.getStreamId(), entry.getKey(),
+		    sizes.lastKey(), pageSize);
+	}
+	IDeviceEvent event;
+	while ((event = cursor.next()) != null) {
+	    IDeviceStreamData chunk = (IDeviceStreamData) event;
+
+	    // Keep offsets aligned with sizes if a chunk was not returned.
+	    while ((entry != null) && (entry.getKey() < chunk.getSequenceNumber())) {
+		offset += entry.getValue();
+		entry = entries.hasNext() ? entries.next() : null;
+	    }
+	    if (entry == null) {
+		return false;
+	    }
+	    if (entry.getKey() > chunk.getSequenceNumber()) {
+		continue;
+	    }
+	    GReadStreamDataForAssignmentResponse.Builder response = GReadStreamDataForAssignmentResponse.newBuilder();
+	    response.setChunkOffset(offset);
+	    response.setStreamData(EventModelConverter.asGrpcDeviceStreamData(chunk));
+	    getResponseObserver().onNext(response.build());
+	    offset += entry.getValue();
+	    entry = entries.hasNext() ? entries.next() : null;
+	    return true;
+	}
+	return false;
+    }
+
+    /*
+     * @see com.sitewhere.event.grpc.FlowControlledResponseSender#close()
+     */
+    @Override
+    protected void close() throws SiteWhereException {
+	if (cursor != null) {
+	    cursor.close();
+	}
+    }
+
+    /*
+     * @see com.sitewhere.event.grpc.FlowControlledResponseSender#getMethod()
+     */
+    @Override
+    protected MethodDescriptor<?, ?> getMethod() {
+	return DeviceEventManagementGrpc.METHOD_READ_STREAM_DATA_FOR_ASSIGNMENT;
+    }
+
+    /**
+     * Get source for stream data, emulating one by paging if persistence does
+     * not support reads by sequence number.
+     *
+     * @return
+     */
+    protected IDeviceStreamDataSource getStreamDataSource() {
+	if (deviceEventManagement instanceof IDeviceStreamDataSource) {
+	    return (IDeviceStreamDataSource) deviceEventManagement;
+	}
+	return new PagedDeviceStreamDataSource(deviceEventManagement);
+    }
+}
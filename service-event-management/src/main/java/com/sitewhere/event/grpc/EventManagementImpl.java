@@ -9,6 +9,7 @@ package com.sitewhere.event.grpc;
 
 import com.sitewhere.grpc.client.GrpcUtils;
 import com.sitewhere.grpc.model.DeviceEventModel.GDeviceAlertSearchResults;
+import com.sitewhere.grpc.model.DeviceEventModel.GDeviceAssignmentStateSearchResults;
 import com.sitewhere.grpc.model.DeviceEventModel.GDeviceCommandInvocationSearchResults;
 import com.sitewhere.grpc.model.DeviceEventModel.GDeviceCommandResponseSearchResults;
 import com.sitewhere.grpc.model.DeviceEventModel.GDeviceEventSearchResults;
@@ -36,6 +37,10 @@ import com.sitewhere.grpc.service.GAddStateChangeForAssignmentRequest;
 import com.sitewhere.grpc.service.GAddStateChangeForAssignmentResponse;
 import com.sitewhere.grpc.service.GAddStreamDataForAssignmentRequest;
 import com.sitewhere.grpc.service.GAddStreamDataForAssignmentResponse;
+import com.sitewhere.grpc.service.GExportDeviceEventsRequest;
+import com.sitewhere.grpc.service.GExportDeviceEventsResponse;
+import com.sitewhere.grpc.service.GGetDeviceAssignmentStateRequest;
+import com.sitewhere.grpc.service.GGetDeviceAssignmentStateResponse;
 import com.sitewhere.grpc.service.GGetDeviceEventByAlternateIdRequest;
 import com.sitewhere.grpc.service.GGetDeviceEventByAlternateIdResponse;
 import com.sitewhere.grpc.service.GGetDeviceEventByIdRequest;
@@ -56,6 +61,8 @@ import com.sitewhere.grpc.service.GListCommandResponsesForInvocationRequest;
 import com.sitewhere.grpc.service.GListCommandResponsesForInvocationResponse;
 import com.sitewhere.grpc.service.GListCommandResponsesForSiteRequest;
 import com.sitewhere.grpc.service.GListCommandResponsesForSiteResponse;
+import com.sitewhere.grpc.service.GListDeviceAssignmentStatesForSiteRequest;
+import com.sitewhere.grpc.service.GListDeviceAssignmentStatesForSiteResponse;
 import com.sitewhere.grpc.service.GListDeviceEventsRequest;
 import com.sitewhere.grpc.service.GListDeviceEventsResponse;
 import com.sitewhere.grpc.service.GListLocationsForAssignmentRequest;
@@ -72,9 +79,14 @@ import com.sitewhere.grpc.service.GListStateChangesForSiteRequest;
 import com.sitewhere.grpc.service.GListStateChangesForSiteResponse;
 import com.sitewhere.grpc.service.GListStreamDataForAssignmentRequest;
 import com.sitewhere.grpc.service.GListStreamDataForAssignmentResponse;
+import com.sitewhere.grpc.service.GReadStreamDataForAssignmentRequest;
+import com.sitewhere.grpc.service.GReadStreamDataForAssignmentResponse;
+import com.sitewhere.grpc.service.GStreamDeviceEventRequest;
+import com.sitewhere.grpc.service.GStreamDeviceEventResponse;
 import com.sitewhere.grpc.service.GUpdateDeviceEventRequest;
 import com.sitewhere.grpc.service.GUpdateDeviceEventResponse;
 import com.sitewhere.rest.model.device.event.DeviceEventBatch;
+import com.sitewhere.spi.device.IDeviceAssignmentState;
 import com.sitewhere.spi.device.event.IDeviceAlert;
 import com.sitewhere.spi.device.event.IDeviceCommandInvocation;
 import com.sitewhere.spi.device.event.IDeviceCommandResponse;
@@ -132,6 +144,18 @@ public class EventManagementImpl extends DeviceEventManagementGrpc.DeviceEventMa
 	}
     }
 
+    /*
+     * @see com.sitewhere.grpc.service.DeviceEventManagementGrpc.
+     * DeviceEventManagementImplBase#streamDeviceEvents(io.grpc.stub.
+     * StreamObserver)
+     */
+    @Override
+    public StreamObserver<GStreamDeviceEventRequest> streamDeviceEvents(
+	    StreamObserver<GStreamDeviceEventResponse> responseObserver) {
+	GrpcUtils.logServerMethodEntry(DeviceEventManagementGrpc.METHOD_STREAM_DEVICE_EVENTS);
+	return new DeviceEventStreamObserver(getDeviceEventManagement(), responseObserver);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -239,6 +263,23 @@ public class EventManagementImpl extends DeviceEventManagementGrpc.DeviceEventMa
 	}
     }
 
+    /*
+     * @see com.sitewhere.grpc.service.DeviceEventManagementGrpc.
+     * DeviceEventManagementImplBase#exportDeviceEvents(com.sitewhere.grpc.
+     * service.GExportDeviceEventsRequest, io.grpc.stub.StreamObserver)
+     */
+    @Override
+    public void exportDeviceEvents(GExportDeviceEventsRequest request,
+	    StreamObserver<GExportDeviceEventsResponse> responseObserver) {
+	try {
+	    GrpcUtils.logServerMethodEntry(DeviceEventManagementGrpc.METHOD_EXPORT_DEVICE_EVENTS);
+	    new DeviceEventExportSender(getDeviceEventManagement(), request, responseObserver).send();
+	} catch (Throwable e) {
+	    GrpcUtils.handleServerMethodException(DeviceEventManagementGrpc.METHOD_EXPORT_DEVICE_EVENTS, e,
+		    responseObserver);
+	}
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -590,6 +631,24 @@ public class EventManagementImpl extends DeviceEventManagementGrpc.DeviceEventMa
 	}
     }
 
+    /*
+     * @see com.sitewhere.grpc.service.DeviceEventManagementGrpc.
+     * DeviceEventManagementImplBase#readStreamDataForAssignment(com.sitewhere.
+     * grpc.service.GReadStreamDataForAssignmentRequest,
+     * io.grpc.stub.StreamObserver)
+     */
+    @Override
+    public void readStreamDataForAssignment(GReadStreamDataForAssignmentRequest request,
+	    StreamObserver<GReadStreamDataForAssignmentResponse> responseObserver) {
+	try {
+	    GrpcUtils.logServerMethodEntry(DeviceEventManagementGrpc.METHOD_READ_STREAM_DATA_FOR_ASSIGNMENT);
+	    new DeviceStreamDataSender(getDeviceEventManagement(), request, responseObserver).send();
+	} catch (Throwable e) {
+	    GrpcUtils.handleServerMethodException(DeviceEventManagementGrpc.METHOD_READ_STREAM_DATA_FOR_ASSIGNMENT, e,
+		    responseObserver);
+	}
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -726,7 +785,8 @@ public class EventManagementImpl extends DeviceEventManagementGrpc.DeviceEventMa
 	try {
 	    GrpcUtils.logServerMethodEntry(DeviceEventManagementGrpc.METHOD_LIST_COMMAND_RESPONSES_FOR_INVOCATION);
 	    ISearchResults<IDeviceCommandResponse> apiResult = getDeviceEventManagement()
-		    .listDeviceCommandInvocationResponses(request.getInvocationId());
+		    .listDeviceCommandInvocationResponses(request.getInvocationId(),
+			    CommonModelConverter.asDateRangeSearchCriteria(request.getCriteria()));
 	    GListCommandResponsesForInvocationResponse.Builder response = GListCommandResponsesForInvocationResponse
 		    .newBuilder();
 	    GDeviceCommandResponseSearchResults.Builder results = GDeviceCommandResponseSearchResults.newBuilder();
@@ -896,6 +956,60 @@ public class EventManagementImpl extends DeviceEventManagementGrpc.DeviceEventMa
 	}
     }
 
+    /*
+     * @see com.sitewhere.grpc.service.DeviceEventManagementGrpc.
+     * DeviceEventManagementImplBase#getDeviceAssignmentState(com.sitewhere.grpc.
+     * service.GGetDeviceAssignmentStateRequest, io.grpc.stub.StreamObserver)
+     */
+    @Override
+    public void getDeviceAssignmentState(GGetDeviceAssignmentStateRequest request,
+	    StreamObserver<GGetDeviceAssignmentStateResponse> responseObserver) {
+	try {
+	    GrpcUtils.logServerMethodEntry(DeviceEventManagementGrpc.METHOD_GET_DEVICE_ASSIGNMENT_STATE);
+	    IDeviceAssignmentState apiResult = getDeviceEventManagement()
+		    .getDeviceAssignmentState(CommonModelConverter.asApiUuid(request.getAssignmentId()));
+	    GGetDeviceAssignmentStateResponse.Builder response = GGetDeviceAssignmentStateResponse.newBuilder();
+	    if (apiResult != null) {
+		response.setState(EventModelConverter.asGrpcDeviceAssignmentState(apiResult));
+	    }
+	    responseObserver.onNext(response.build());
+	    responseObserver.onCompleted();
+	} catch (Throwable e) {
+	    GrpcUtils.handleServerMethodException(DeviceEventManagementGrpc.METHOD_GET_DEVICE_ASSIGNMENT_STATE, e,
+		    responseObserver);
+	}
+    }
+
+    /*
+     * @see com.sitewhere.grpc.service.DeviceEventManagementGrpc.
+     * DeviceEventManagementImplBase#listDeviceAssignmentStatesForSite(com.
+     * sitewhere.grpc.service.GListDeviceAssignmentStatesForSiteRequest,
+     * io.grpc.stub.StreamObserver)
+     */
+    @Override
+    public void listDeviceAssignmentStatesForSite(GListDeviceAssignmentStatesForSiteRequest request,
+	    StreamObserver<GListDeviceAssignmentStatesForSiteResponse> responseObserver) {
+	try {
+	    GrpcUtils.logServerMethodEntry(DeviceEventManagementGrpc.METHOD_LIST_DEVICE_ASSIGNMENT_STATES_FOR_SITE);
+	    ISearchResults<IDeviceAssignmentState> apiResult = getDeviceEventManagement()
+		    .listDeviceAssignmentStatesForSite(DeviceModelConverter.asApiSite(request.getSite()),
+			    CommonModelConverter.asDateRangeSearchCriteria(request.getCriteria()));
+	    GListDeviceAssignmentStatesForSiteResponse.Builder response = GListDeviceAssignmentStatesForSiteResponse
+		    .newBuilder();
+	    GDeviceAssignmentStateSearchResults.Builder results = GDeviceAssignmentStateSearchResults.newBuilder();
+	    for (IDeviceAssignmentState api : apiResult.getResults()) {
+		results.addStates(EventModelConverter.asGrpcDeviceAssignmentState(api));
+	    }
+	    results.setCount(apiResult.getNumResults());
+	    response.setResults(results.build());
+	    responseObserver.onNext(response.build());
+	    responseObserver.onCompleted();
+	} catch (Throwable e) {
+	    GrpcUtils.handleServerMethodException(
+		    DeviceEventManagementGrpc.METHOD_LIST_DEVICE_ASSIGNMENT_STATES_FOR_SITE, e, responseObserver);
+	}
+    }
+
     public void setDeviceEventManagement(IDeviceEventManagement deviceEventManagement) {
 	this.deviceEventManagement = deviceEventManagement;
     }
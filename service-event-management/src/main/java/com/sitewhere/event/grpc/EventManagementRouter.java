@@ -29,6 +29,10 @@ import com.sitewhere.grpc.service.GAddStateChangeForAssignmentRequest;
 import com.sitewhere.grpc.service.GAddStateChangeForAssignmentResponse;
 import com.sitewhere.grpc.service.GAddStreamDataForAssignmentRequest;
 import com.sitewhere.grpc.service.GAddStreamDataForAssignmentResponse;
+import com.sitewhere.grpc.service.GExportDeviceEventsRequest;
+import com.sitewhere.grpc.service.GExportDeviceEventsResponse;
+import com.sitewhere.grpc.service.GGetDeviceAssignmentStateRequest;
+import com.sitewhere.grpc.service.GGetDeviceAssignmentStateResponse;
 import com.sitewhere.grpc.service.GGetDeviceEventByAlternateIdRequest;
 import com.sitewhere.grpc.service.GGetDeviceEventByAlternateIdResponse;
 import com.sitewhere.grpc.service.GGetDeviceEventByIdRequest;
@@ -49,6 +53,8 @@ import com.sitewhere.grpc.service.GListCommandResponsesForInvocationRequest;
 import com.sitewhere.grpc.service.GListCommandResponsesForInvocationResponse;
 import com.sitewhere.grpc.service.GListCommandResponsesForSiteRequest;
 import com.sitewhere.grpc.service.GListCommandResponsesForSiteResponse;
+import com.sitewhere.grpc.service.GListDeviceAssignmentStatesForSiteRequest;
+import com.sitewhere.grpc.service.GListDeviceAssignmentStatesForSiteResponse;
 import com.sitewhere.grpc.service.GListDeviceEventsRequest;
 import com.sitewhere.grpc.service.GListDeviceEventsResponse;
 import com.sitewhere.grpc.service.GListLocationsForAssignmentRequest;
@@ -65,6 +71,10 @@ import com.sitewhere.grpc.service.GListStateChangesForSiteRequest;
 import com.sitewhere.grpc.service.GListStateChangesForSiteResponse;
 import com.sitewhere.grpc.service.GListStreamDataForAssignmentRequest;
 import com.sitewhere.grpc.service.GListStreamDataForAssignmentResponse;
+import com.sitewhere.grpc.service.GReadStreamDataForAssignmentRequest;
+import com.sitewhere.grpc.service.GReadStreamDataForAssignmentResponse;
+import com.sitewhere.grpc.service.GStreamDeviceEventRequest;
+import com.sitewhere.grpc.service.GStreamDeviceEventResponse;
 import com.sitewhere.grpc.service.GUpdateDeviceEventRequest;
 import com.sitewhere.grpc.service.GUpdateDeviceEventResponse;
 import com.sitewhere.microservice.grpc.TenantTokenServerInterceptor;
@@ -125,6 +135,17 @@ public class EventManagementRouter extends DeviceEventManagementGrpc.DeviceEvent
 	getTenantImplementation().addDeviceEventBatch(request, responseObserver);
     }
 
+    /*
+     * @see com.sitewhere.grpc.service.DeviceEventManagementGrpc.
+     * DeviceEventManagementImplBase#streamDeviceEvents(io.grpc.stub.
+     * StreamObserver)
+     */
+    @Override
+    public StreamObserver<GStreamDeviceEventRequest> streamDeviceEvents(
+	    StreamObserver<GStreamDeviceEventResponse> responseObserver) {
+	return getTenantImplementation().streamDeviceEvents(responseObserver);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -178,6 +199,17 @@ public class EventManagementRouter extends DeviceEventManagementGrpc.DeviceEvent
 	getTenantImplementation().updateDeviceEvent(request, responseObserver);
     }
 
+    /*
+     * @see com.sitewhere.grpc.service.DeviceEventManagementGrpc.
+     * DeviceEventManagementImplBase#exportDeviceEvents(com.sitewhere.grpc.
+     * service.GExportDeviceEventsRequest, io.grpc.stub.StreamObserver)
+     */
+    @Override
+    public void exportDeviceEvents(GExportDeviceEventsRequest request,
+	    StreamObserver<GExportDeviceEventsResponse> responseObserver) {
+	getTenantImplementation().exportDeviceEvents(request, responseObserver);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -337,6 +369,18 @@ public class EventManagementRouter extends DeviceEventManagementGrpc.DeviceEvent
 	getTenantImplementation().listStreamDataForAssignment(request, responseObserver);
     }
 
+    /*
+     * @see com.sitewhere.grpc.service.DeviceEventManagementGrpc.
+     * DeviceEventManagementImplBase#readStreamDataForAssignment(com.sitewhere.
+     * grpc.service.GReadStreamDataForAssignmentRequest,
+     * io.grpc.stub.StreamObserver)
+     */
+    @Override
+    public void readStreamDataForAssignment(GReadStreamDataForAssignmentRequest request,
+	    StreamObserver<GReadStreamDataForAssignmentResponse> responseObserver) {
+	getTenantImplementation().readStreamDataForAssignment(request, responseObserver);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -476,6 +520,29 @@ public class EventManagementRouter extends DeviceEventManagementGrpc.DeviceEvent
 	getTenantImplementation().listStateChangesForSite(request, responseObserver);
     }
 
+    /*
+     * @see com.sitewhere.grpc.service.DeviceEventManagementGrpc.
+     * DeviceEventManagementImplBase#getDeviceAssignmentState(com.sitewhere.grpc.
+     * service.GGetDeviceAssignmentStateRequest, io.grpc.stub.StreamObserver)
+     */
+    @Override
+    public void getDeviceAssignmentState(GGetDeviceAssignmentStateRequest request,
+	    StreamObserver<GGetDeviceAssignmentStateResponse> responseObserver) {
+	getTenantImplementation().getDeviceAssignmentState(request, responseObserver);
+    }
+
+    /*
+     * @see com.sitewhere.grpc.service.DeviceEventManagementGrpc.
+     * DeviceEventManagementImplBase#listDeviceAssignmentStatesForSite(com.
+     * sitewhere.grpc.service.GListDeviceAssignmentStatesForSiteRequest,
+     * io.grpc.stub.StreamObserver)
+     */
+    @Override
+    public void listDeviceAssignmentStatesForSite(GListDeviceAssignmentStatesForSiteRequest request,
+	    StreamObserver<GListDeviceAssignmentStatesForSiteResponse> responseObserver) {
+	getTenantImplementation().listDeviceAssignmentStatesForSite(request, responseObserver);
+    }
+
     public IEventManagementMicroservice getMicroservice() {
 	return microservice;
     }
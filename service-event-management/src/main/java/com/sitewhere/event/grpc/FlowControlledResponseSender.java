@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.grpc;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sitewhere.grpc.client.GrpcUtils;
+import com.sitewhere.spi.SiteWhereException;
+
+import io.grpc.MethodDescriptor;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Base class for server streaming calls that send responses only while the
+ * transport is ready for them. Sending starts on the call thread and stops as
+ * soon as the transport would buffer. It resumes from the call's on-ready
+ * handler, so no thread is held while the client catches up. gRPC runs the
+ * call's handlers one at a time, so subclasses do not need to synchronize.
+ * 
+ * @author Derek
+ */
+public abstract class FlowControlledResponseSender<T> {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Observer used to send responses */
+    private StreamObserver<T> responseObserver;
+
+    /** Indicates no more responses are sent */
+    private boolean finished = false;
+
+    public FlowControlledResponseSender(StreamObserver<T> responseObserver) {
+	this.responseObserver = responseObserver;
+    }
+
+    /**
+     * Get the method being served. Used for reporting errors.
+     * 
+     * @return
+     */
+    protected abstract MethodDescriptor<?, ?> getMethod();
+
+    /**
+     * Send the next response. Returns false if there is nothing left to send.
+     * 
+     * @return
+     * @throws SiteWhereException
+     */
+    protected abstract boolean sendNext() throws SiteWhereException;
+
+    /**
+     * Release resources once sending has finished or the call was cancelled.
+     * 
+     * @throws SiteWhereException
+     */
+    protected void close() throws SiteWhereException {
+    }
+
+    /**
+     * Start sending responses. Must be called from the service method so the
+     * handlers are registered before the call starts.
+     */
+    protected void start() {
+	if (responseObserver instanceof ServerCallStreamObserver) {
+	    ServerCallStreamObserver<T> call = (ServerCallStreamObserver<T>) responseObserver;
+	    call.setOnCancelHandler(new Runnable() {
+
+		@Override
+		public void run() {
+		    finish();
+		}
+	    });
+	    call.setOnReadyHandler(new Runnable() {
+
+		@Override
+		public void run() {
+		    sendWhileReady();
+		}
+	    });
+	}
+	sendWhileReady();
+    }
+
+    /**
+     * Send responses until there are none left or the transport is not ready.
+     */
+    protected void sendWhileReady() {
+	try {
+	    while (!finished && isReady()) {
+		if (!sendNext()) {
+		    finish();
+		    responseObserver.onCompleted();
+		}
+	    }
+	} catch (Throwable t) {
+	    finish();
+	    GrpcUtils.handleServerMethodException(getMethod(), t, responseObserver);
+	}
+    }
+
+    /**
+     * Indicates whether the transport can accept another response without
+     * buffering it.
+     * 
+     * @return
+     */
+    protected boolean isReady() {
+	if (!(responseObserver instanceof ServerCallStreamObserver)) {
+	    return true;
+	}
+	ServerCallStreamObserver<T> call = (ServerCallStreamObserver<T>) responseObserver;
+	return call.isReady() && !call.isCancelled();
+    }
+
+    /**
+     * Stop sending and release resources.
+     */
+    protected void finish() {
+	if (finished) {
+	    return;
+	}
+	finished = true;
+	try {
+	    close();
+	} catch (Throwable t) {
+	    LOGGER.warn("Unable to release resources for " + getMethod().getFullMethodName() + ".", t);
+	}
+    }
+
+    public StreamObserver<T> getResponseObserver() {
+	return responseObserver;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.kafka;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sitewhere.event.spi.kafka.IAssignmentStateEventsConsumer;
+import com.sitewhere.event.spi.microservice.IEventManagementTenantEngine;
+import com.sitewhere.event.spi.state.IDeviceAssignmentStateMaterializer;
+import com.sitewhere.grpc.kafka.model.KafkaModel.GPersistedEventPayload;
+import com.sitewhere.grpc.model.converter.KafkaModelConverter;
+import com.sitewhere.grpc.model.marshaling.KafkaModelMarshaler;
+import com.sitewhere.microservice.kafka.MicroserviceKafkaConsumer;
+import com.sitewhere.rest.model.microservice.kafka.payload.PersistedEventPayload;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.microservice.IMicroservice;
+
+/**
+ * Listens on Kafka topic for persisted events and applies them to the last
+ * known state of their device assignments. Events are keyed by assignment
+ * token, so all events for an assignment arrive in order on a single partition
+ * and are processed on the consumer thread. Events from each poll are applied
+ * as one batch per partition before offsets are committed, so stored state for
+ * the assignments in a batch is loaded with a single read. State for
+ * partitions that are revoked from the consumer is written and dropped from
+ * memory.
+ * 
+ * @author Derek
+ */
+public class AssignmentStateEventsConsumer extends MicroserviceKafkaConsumer
+	implements IAssignmentStateEventsConsumer {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Consumer id */
+    private static String CONSUMER_ID = UUID.randomUUID().toString();
+
+    /** Suffix for group id */
+    private static String GROUP_ID_SUFFIX = "assignment-state-consumers";
+
+    /** Events from the current poll indexed by partition */
+    private Map<Integer, List<IDeviceEvent>> pending = new LinkedHashMap<Integer, List<IDeviceEvent>>();
+
+    public AssignmentStateEventsConsumer(IMicroservice microservice, IEventManagementTenantEngine tenantEngine) {
+	super(microservice, tenantEngine);
+    }
+
+    /*
+     * @see com.sitewhere.spi.microservice.kafka.IMicroserviceKafkaConsumer#
+     * getConsumerId()
+     */
+    @Override
+    public String getConsumerId() throws SiteWhereException {
+	return CONSUMER_ID;
+    }
+
+    /*
+     * @see com.sitewhere.spi.microservice.kafka.IMicroserviceKafkaConsumer#
+     * getConsumerGroupId()
+     */
+    @Override
+    public String getConsumerGroupId() throws SiteWhereException {
+	return getMicroservice().getKafkaTopicNaming().getTenantPrefix(getTenantEngine().getTenant()) + GROUP_ID_SUFFIX;
+    }
+
+    /*
+     * @see com.sitewhere.spi.microservice.kafka.IMicroserviceKafkaConsumer#
+     * getSourceTopicNames()
+     */
+    @Override
+    public List<String> getSourceTopicNames() throws SiteWhereException {
+	List<String> topics = new ArrayList<String>();
+	topics.add(
+		getMicroservice().getKafkaTopicNaming().getInboundPersistedEventsTopic(getTenantEngine().getTenant()));
+	return topics;
+    }
+
+    /*
+     * @see
+     * com.sitewhere.spi.microservice.kafka.IMicroserviceKafkaConsumer#received(
+     * java.lang.String, byte[])
+     */
+    @Override
+    public void received(String key, byte[] message) throws SiteWhereException {
+	try {
+	    getAssignmentStateMaterializer().process(parseEvent(message));
+	} catch (SiteWhereException e) {
+	    getLogger().error("Unable to update assignment state for persisted event.", e);
+	}
+    }
+
+    /*
+     * @see
+     * com.sitewhere.microservice.kafka.MicroserviceKafkaConsumer#received(org.
+     * apache.kafka.common.TopicPartition, java.lang.String, byte[])
+     */
+    @Override
+    protected void received(TopicPartition partition, String key, byte[] message) throws SiteWhereException {
+	try {
+	    List<IDeviceEvent> events = pending.get(partition.partition());
+	    if (events == null) {
+		events = new ArrayList<IDeviceEvent>();
+		pending.put(partition.partition(), events);
+	    }
+	    events.add(parseEvent(message));
+	} catch (SiteWhereException e) {
+	    getLogger().error("Unable to parse persisted event.", e);
+	}
+    }
+
+    /*
+     * @see com.sitewhere.microservice.kafka.MicroserviceKafkaConsumer#
+     * awaitReceived()
+     */
+    @Override
+    protected void awaitReceived() throws SiteWhereException {
+	try {
+	    for (Map.Entry<Integer, List<IDeviceEvent>> entry : pending.entrySet()) {
+		try {
+		    getAssignmentStateMaterializer().process(entry.getValue(), entry.getKey());
+		} catch (SiteWhereException e) {
+		    getLogger().error("Unable to update assignment state for persisted events.", e);
+		}
+	    }
+	} finally {
+	    pending.clear();
+	}
+    }
+
+    /*
+     * @see com.sitewhere.microservice.kafka.MicroserviceKafkaConsumer#
+     * onPartitionsRevoked(java.util.Collection)
+     */
+    @Override
+    protected void onPartitionsRevoked(Collection<TopicPartition> partitions) throws SiteWhereException {
+	List<Integer> released = new ArrayList<Integer>();
+	for (TopicPartition partition : partitions) {
+	    released.add(partition.partition());
+	}
+	getAssignmentStateMaterializer().release(released);
+    }
+
+    /**
+     * Parse the event from a persisted event payload.
+     * 
+     * @param message
+     * @return
+     * @throws SiteWhereException
+     */
+    protected IDeviceEvent parseEvent(byte[] message) throws SiteWhereException {
+	GPersistedEventPayload grpc = KafkaModelMarshaler.parsePersistedEventPayloadMessage(message);
+	PersistedEventPayload payload = KafkaModelConverter.asApiPersisedEventPayload(grpc);
+	return payload.getEvent();
+    }
+
+    /**
+     * Get materializer for the tenant.
+     * 
+     * @return
+     */
+    protected IDeviceAssignmentStateMaterializer getAssignmentStateMaterializer() {
+	return ((IEventManagementTenantEngine) getTenantEngine()).getAssignmentStateMaterializer();
+    }
+
+    /*
+     * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#getLogger()
+     */
+    @Override
+    public Logger getLogger() {
+	return LOGGER;
+    }
+}
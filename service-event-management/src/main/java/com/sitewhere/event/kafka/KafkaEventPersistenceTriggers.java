@@ -7,10 +7,16 @@
  */
 package com.sitewhere.event.kafka;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.sitewhere.event.DeviceEventManagementDecorator;
+import com.sitewhere.event.bulk.DeviceEventBulkResult;
+import com.sitewhere.event.spi.bulk.IDeviceEventBulkRequest;
+import com.sitewhere.event.spi.bulk.IDeviceEventBulkResult;
 import com.sitewhere.event.spi.microservice.IEventManagementTenantEngine;
 import com.sitewhere.grpc.kafka.model.KafkaModel.GPersistedEventPayload;
 import com.sitewhere.grpc.model.converter.KafkaModelConverter;
@@ -162,6 +168,35 @@ public class KafkaEventPersistenceTriggers extends DeviceEventManagementDecorato
 	return forwardEvent(assignment, super.addDeviceStateChange(assignment, request));
     }
 
+    /*
+     * Each stored event is forwarded individually. An event that can not be
+     * forwarded is reported as failed, as it would be if added on its own.
+     * 
+     * @see
+     * com.sitewhere.event.DeviceEventManagementDecorator#addDeviceEvents(java.
+     * util.List)
+     */
+    @Override
+    public List<IDeviceEventBulkResult> addDeviceEvents(List<IDeviceEventBulkRequest> requests)
+	    throws SiteWhereException {
+	List<IDeviceEventBulkResult> stored = super.addDeviceEvents(requests);
+	List<IDeviceEventBulkResult> results = new ArrayList<IDeviceEventBulkResult>(stored.size());
+	for (int i = 0; i < stored.size(); i++) {
+	    IDeviceEventBulkResult result = stored.get(i);
+	    if (result.getEvent() == null) {
+		results.add(result);
+		continue;
+	    }
+	    try {
+		results.add(DeviceEventBulkResult
+			.stored(forwardEvent(requests.get(i).getAssignment(), result.getEvent())));
+	    } catch (Throwable t) {
+		results.add(DeviceEventBulkResult.failed(t));
+	    }
+	}
+	return results;
+    }
+
     public IEventManagementTenantEngine getTenantEngine() {
 	return tenantEngine;
     }
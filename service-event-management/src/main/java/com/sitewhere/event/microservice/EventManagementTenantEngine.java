@@ -11,10 +11,14 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.sitewhere.event.grpc.EventManagementImpl;
+import com.sitewhere.event.kafka.AssignmentStateEventsConsumer;
 import com.sitewhere.event.kafka.InboundPersistedEventsProducer;
 import com.sitewhere.event.kafka.KafkaEventPersistenceTriggers;
+import com.sitewhere.event.spi.kafka.IAssignmentStateEventsConsumer;
 import com.sitewhere.event.spi.kafka.IInboundPersistedEventsProducer;
 import com.sitewhere.event.spi.microservice.IEventManagementTenantEngine;
+import com.sitewhere.event.spi.state.IDeviceAssignmentStateMaterializer;
+import com.sitewhere.event.state.DeviceAssignmentStateMaterializer;
 import com.sitewhere.grpc.service.DeviceEventManagementGrpc;
 import com.sitewhere.microservice.multitenant.MicroserviceTenantEngine;
 import com.sitewhere.server.lifecycle.CompositeLifecycleStep;
@@ -48,6 +52,12 @@ public class EventManagementTenantEngine extends MicroserviceTenantEngine implem
     /** Kafka producer for pushing persisted events to a topic */
     private IInboundPersistedEventsProducer inboundPersistedEventsProducer;
 
+    /** Maintains last known state for device assignments */
+    private IDeviceAssignmentStateMaterializer assignmentStateMaterializer;
+
+    /** Kafka consumer that feeds persisted events to state materializer */
+    private IAssignmentStateEventsConsumer assignmentStateEventsConsumer;
+
     public EventManagementTenantEngine(IMultitenantMicroservice<IEventManagementTenantEngine> microservice,
 	    ITenant tenant) {
 	super(microservice, tenant);
@@ -77,6 +87,9 @@ public class EventManagementTenantEngine extends MicroserviceTenantEngine implem
 	// Initialize inbound persisted events producer.
 	init.addInitializeStep(this, getInboundPersistedEventsProducer(), true);
 
+	// Initialize assignment state events consumer.
+	init.addInitializeStep(this, getAssignmentStateEventsConsumer(), true);
+
 	// Execute initialization steps.
 	init.execute(monitor);
     }
@@ -90,10 +103,12 @@ public class EventManagementTenantEngine extends MicroserviceTenantEngine implem
     protected void initializeManagementImplementations() throws SiteWhereException {
 	IDeviceEventManagement impl = (IDeviceEventManagement) getModuleContext()
 		.getBean(EventManagementBeans.BEAN_EVENT_MANAGEMENT);
-	this.eventManagement = new KafkaEventPersistenceTriggers(this, impl);
+	this.assignmentStateMaterializer = new DeviceAssignmentStateMaterializer(impl);
+	this.eventManagement = new KafkaEventPersistenceTriggers(this, getAssignmentStateMaterializer());
 
 	this.eventManagementImpl = new EventManagementImpl(getEventManagement());
 	this.inboundPersistedEventsProducer = new InboundPersistedEventsProducer(getMicroservice());
+	this.assignmentStateEventsConsumer = new AssignmentStateEventsConsumer(getMicroservice(), this);
     }
 
     /*
@@ -116,6 +131,9 @@ public class EventManagementTenantEngine extends MicroserviceTenantEngine implem
 	// Start inbound persisted events producer.
 	start.addStartStep(this, getInboundPersistedEventsProducer(), true);
 
+	// Start assignment state events consumer.
+	start.addStartStep(this, getAssignmentStateEventsConsumer(), true);
+
 	// Execute startup steps.
 	start.execute(monitor);
     }
@@ -142,6 +160,9 @@ public class EventManagementTenantEngine extends MicroserviceTenantEngine implem
 	// Create step that will stop components.
 	ICompositeLifecycleStep stop = new CompositeLifecycleStep("Stop " + getComponentName());
 
+	// Stop assignment state events consumer.
+	stop.addStopStep(this, getAssignmentStateEventsConsumer());
+
 	// Stop event management persistence.
 	stop.addStopStep(this, getEventManagement());
 
@@ -198,6 +219,32 @@ public class EventManagementTenantEngine extends MicroserviceTenantEngine implem
 	this.inboundPersistedEventsProducer = inboundPersistedEventsProducer;
     }
 
+    /*
+     * @see com.sitewhere.event.spi.microservice.IEventManagementTenantEngine#
+     * getAssignmentStateMaterializer()
+     */
+    @Override
+    public IDeviceAssignmentStateMaterializer getAssignmentStateMaterializer() {
+	return assignmentStateMaterializer;
+    }
+
+    public void setAssignmentStateMaterializer(IDeviceAssignmentStateMaterializer assignmentStateMaterializer) {
+	this.assignmentStateMaterializer = assignmentStateMaterializer;
+    }
+
+    /*
+     * @see com.sitewhere.event.spi.microservice.IEventManagementTenantEngine#
+     * getAssignmentStateEventsConsumer()
+     */
+    @Override
+    public IAssignmentStateEventsConsumer getAssignmentStateEventsConsumer() {
+	return assignmentStateEventsConsumer;
+    }
+
+    public void setAssignmentStateEventsConsumer(IAssignmentStateEventsConsumer assignmentStateEventsConsumer) {
+	this.assignmentStateEventsConsumer = assignmentStateEventsConsumer;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -84,6 +84,37 @@ public class DeviceEventManagementPersistence extends Persistence {
 	return response;
     }
 
+    /**
+     * Executes the creation logic for the type of event in the request so that
+     * events of mixed types can be created together.
+     * 
+     * @param assignment
+     * @param request
+     * @return
+     * @throws SiteWhereException
+     */
+    public static DeviceEvent anyDeviceEventCreateLogic(IDeviceAssignment assignment,
+	    IDeviceEventCreateRequest request) throws SiteWhereException {
+	switch (request.getEventType()) {
+	case Measurements:
+	    return deviceMeasurementsCreateLogic((IDeviceMeasurementsCreateRequest) request, assignment);
+	case Alert:
+	    return deviceAlertCreateLogic(assignment, (IDeviceAlertCreateRequest) request);
+	case CommandInvocation:
+	    return deviceCommandInvocationCreateLogic(assignment, (IDeviceCommandInvocationCreateRequest) request);
+	case CommandResponse:
+	    return deviceCommandResponseCreateLogic(assignment, (IDeviceCommandResponseCreateRequest) request);
+	case Location:
+	    return deviceLocationCreateLogic(assignment, (IDeviceLocationCreateRequest) request);
+	case StateChange:
+	    return deviceStateChangeCreateLogic(assignment, (IDeviceStateChangeCreateRequest) request);
+	case StreamData:
+	    return deviceStreamDataCreateLogic(assignment, (IDeviceStreamDataCreateRequest) request);
+	default:
+	    throw new SiteWhereException("Unknown event type sent for storage: " + request.getEventType().name());
+	}
+    }
+
     /**
      * Common creation logic for all device events.
      * 
@@ -10,11 +10,13 @@ package com.sitewhere.event.persistence.hbase;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.Get;
@@ -23,6 +25,7 @@ import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.filter.ColumnPrefixFilter;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -570,38 +573,48 @@ public class HBaseDeviceEvent {
     }
 
     /**
-     * Find responses associated with a device command invocation.
+     * Find responses associated with a device command invocation. Response ids
+     * are stored as columns on the invocation row, keyed by the invocation
+     * qualifier (with the response entry type) followed by a counter. Only those
+     * columns are returned by the region server and only the responses on the
+     * requested page are loaded. Newest responses are returned first.
      * 
      * @param context
      * @param invocationId
+     * @param criteria
      * @return
      * @throws SiteWhereException
      */
     protected static SearchResults<IDeviceCommandResponse> listDeviceCommandInvocationResponses(IHBaseContext context,
-	    String invocationId) throws SiteWhereException {
+	    String invocationId, IDateRangeSearchCriteria criteria) throws SiteWhereException {
 	byte[][] keys = getDecodedEventId(invocationId);
 	byte[] row = keys[0];
 	byte[] qual = keys[1];
 
 	Table events = null;
-	List<IDeviceCommandResponse> responses = new ArrayList<IDeviceCommandResponse>();
 	try {
 	    events = getEventsTableInterface(context);
 
+	    byte[] match = Arrays.copyOf(qual, 4);
+	    match[3] = EventRecordType.CommandResponseEntry.getType();
 	    Get get = new Get(row);
+	    get.addFamily(ISiteWhereHBase.FAMILY_ID);
+	    get.setFilter(new ColumnPrefixFilter(match));
 	    Result result = events.get(get);
-	    Map<byte[], byte[]> cells = result.getFamilyMap(ISiteWhereHBase.FAMILY_ID);
+	    NavigableMap<byte[], byte[]> cells = result.getFamilyMap(ISiteWhereHBase.FAMILY_ID);
+	    if (cells == null) {
+		return new SearchResults<IDeviceCommandResponse>(new ArrayList<IDeviceCommandResponse>());
+	    }
 
-	    byte[] match = qual;
-	    match[3] = EventRecordType.CommandResponseEntry.getType();
-	    for (byte[] curr : cells.keySet()) {
-		if ((curr[0] == match[0]) && (curr[1] == match[1]) && (curr[2] == match[2]) && (curr[3] == match[3])) {
-		    byte[] value = cells.get(curr);
-		    String responseId = new String(value);
-		    responses.add(getDeviceCommandResponse(context, responseId));
-		}
+	    Pager<String> pager = new Pager<String>(criteria);
+	    for (byte[] value : cells.descendingMap().values()) {
+		pager.process(new String(value));
+	    }
+	    List<IDeviceCommandResponse> responses = new ArrayList<IDeviceCommandResponse>();
+	    for (String responseId : pager.getResults()) {
+		responses.add(getDeviceCommandResponse(context, responseId));
 	    }
-	    return new SearchResults<IDeviceCommandResponse>(responses);
+	    return new SearchResults<IDeviceCommandResponse>(responses, pager.getTotal());
 	} catch (IOException e) {
 	    throw new SiteWhereException("Unable to link command response.", e);
 	} finally {
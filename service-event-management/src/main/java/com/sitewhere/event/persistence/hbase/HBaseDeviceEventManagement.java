@@ -7,6 +7,8 @@
  */
 package com.sitewhere.event.persistence.hbase;
 
+import java.util.UUID;
+
 import org.apache.hadoop.hbase.regionserver.BloomType;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -23,6 +25,7 @@ import com.sitewhere.server.lifecycle.TenantEngineLifecycleComponent;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.SiteWhereSystemException;
 import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceAssignmentState;
 import com.sitewhere.spi.device.IDeviceManagement;
 import com.sitewhere.spi.device.ISite;
 import com.sitewhere.spi.device.event.IDeviceAlert;
@@ -399,12 +402,13 @@ public class HBaseDeviceEventManagement extends TenantEngineLifecycleComponent i
      * (non-Javadoc)
      * 
      * @see com.sitewhere.spi.device.event.IDeviceEventManagement#
-     * listDeviceCommandInvocationResponses(java.lang.String)
+     * listDeviceCommandInvocationResponses(java.lang.String,
+     * com.sitewhere.spi.search.IDateRangeSearchCriteria)
      */
     @Override
-    public ISearchResults<IDeviceCommandResponse> listDeviceCommandInvocationResponses(String invocationId)
-	    throws SiteWhereException {
-	return HBaseDeviceEvent.listDeviceCommandInvocationResponses(context, invocationId);
+    public ISearchResults<IDeviceCommandResponse> listDeviceCommandInvocationResponses(String invocationId,
+	    IDateRangeSearchCriteria criteria) throws SiteWhereException {
+	return HBaseDeviceEvent.listDeviceCommandInvocationResponses(context, invocationId, criteria);
     }
 
     /*
@@ -485,6 +489,26 @@ public class HBaseDeviceEventManagement extends TenantEngineLifecycleComponent i
 	return HBaseDeviceEvent.listDeviceStateChangesForSite(context, site, criteria);
     }
 
+    /*
+     * @see com.sitewhere.spi.device.event.IDeviceEventManagement#
+     * getDeviceAssignmentState(java.util.UUID)
+     */
+    @Override
+    public IDeviceAssignmentState getDeviceAssignmentState(UUID assignmentId) throws SiteWhereException {
+	throw new SiteWhereException("Not implemented yet for HBase device management.");
+    }
+
+    /*
+     * @see com.sitewhere.spi.device.event.IDeviceEventManagement#
+     * listDeviceAssignmentStatesForSite(com.sitewhere.spi.device.ISite,
+     * com.sitewhere.spi.search.IDateRangeSearchCriteria)
+     */
+    @Override
+    public ISearchResults<IDeviceAssignmentState> listDeviceAssignmentStatesForSite(ISite site,
+	    IDateRangeSearchCriteria criteria) throws SiteWhereException {
+	throw new SiteWhereException("Not implemented yet for HBase device management.");
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -21,6 +21,7 @@ import com.sitewhere.rest.model.search.SearchResults;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.event.DeviceEventType;
 import com.sitewhere.spi.device.event.IDeviceCommandResponse;
+import com.sitewhere.spi.search.IDateRangeSearchCriteria;
 
 /**
  * Class for saving device command response data to InfluxDB.
@@ -90,14 +91,15 @@ public class InfluxDbDeviceCommandResponse {
      * Get responses for a command invocation.
      * 
      * @param originatingEventId
+     * @param criteria
      * @param influx
      * @param database
      * @return
      * @throws SiteWhereException
      */
     public static SearchResults<IDeviceCommandResponse> getResponsesForInvocation(String originatingEventId,
-	    InfluxDB influx, String database) throws SiteWhereException {
-	Query query = queryResponsesForInvocation(originatingEventId, database);
+	    IDateRangeSearchCriteria criteria, InfluxDB influx, String database) throws SiteWhereException {
+	Query query = queryResponsesForInvocation(originatingEventId, criteria, database);
 	QueryResult response = influx.query(query, TimeUnit.MILLISECONDS);
 	List<IDeviceCommandResponse> results = InfluxDbDeviceEvent.eventsOfType(response, IDeviceCommandResponse.class);
 
@@ -111,16 +113,18 @@ public class InfluxDbDeviceCommandResponse {
      * Find the list of responses for a command invocation.
      * 
      * @param originatingEventId
+     * @param criteria
      * @param database
      * @return
      * @throws SiteWhereException
      */
-    public static Query queryResponsesForInvocation(String originatingEventId, String database)
-	    throws SiteWhereException {
+    public static Query queryResponsesForInvocation(String originatingEventId, IDateRangeSearchCriteria criteria,
+	    String database) throws SiteWhereException {
 	return new Query("SELECT * FROM " + InfluxDbDeviceEvent.COLLECTION_EVENTS + " where type='"
 		+ DeviceEventType.CommandResponse + "' and " + InfluxDbDeviceCommandResponse.RSP_ORIGINATING_EVENT_ID
-		+ "='" + originatingEventId + "' GROUP BY " + InfluxDbDeviceEvent.EVENT_ASSIGNMENT
-		+ " ORDER BY time DESC", database);
+		+ "='" + originatingEventId + "'" + InfluxDbDeviceEvent.buildDateRangeCriteria(criteria) + " GROUP BY "
+		+ InfluxDbDeviceEvent.EVENT_ASSIGNMENT + " ORDER BY time DESC"
+		+ InfluxDbDeviceEvent.buildPagingCriteria(criteria), database);
     }
 
     /**
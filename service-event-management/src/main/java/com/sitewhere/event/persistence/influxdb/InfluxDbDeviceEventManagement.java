@@ -28,6 +28,7 @@ import com.sitewhere.rest.model.search.SearchResults;
 import com.sitewhere.server.lifecycle.TenantEngineLifecycleComponent;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceAssignmentState;
 import com.sitewhere.spi.device.IDeviceManagement;
 import com.sitewhere.spi.device.ISite;
 import com.sitewhere.spi.device.event.DeviceEventType;
@@ -445,12 +446,13 @@ public class InfluxDbDeviceEventManagement extends TenantEngineLifecycleComponen
      * (non-Javadoc)
      * 
      * @see com.sitewhere.spi.device.event.IDeviceEventManagement#
-     * listDeviceCommandInvocationResponses(java.lang.String)
+     * listDeviceCommandInvocationResponses(java.lang.String,
+     * com.sitewhere.spi.search.IDateRangeSearchCriteria)
      */
     @Override
-    public ISearchResults<IDeviceCommandResponse> listDeviceCommandInvocationResponses(String invocationId)
-	    throws SiteWhereException {
-	return InfluxDbDeviceCommandResponse.getResponsesForInvocation(invocationId, getClient().getInflux(),
+    public ISearchResults<IDeviceCommandResponse> listDeviceCommandInvocationResponses(String invocationId,
+	    IDateRangeSearchCriteria criteria) throws SiteWhereException {
+	return InfluxDbDeviceCommandResponse.getResponsesForInvocation(invocationId, criteria, getClient().getInflux(),
 		getClient().getDatabase().getValue());
     }
 
@@ -537,6 +539,26 @@ public class InfluxDbDeviceEventManagement extends TenantEngineLifecycleComponen
 		IDeviceStateChange.class);
     }
 
+    /*
+     * @see com.sitewhere.spi.device.event.IDeviceEventManagement#
+     * getDeviceAssignmentState(java.util.UUID)
+     */
+    @Override
+    public IDeviceAssignmentState getDeviceAssignmentState(UUID assignmentId) throws SiteWhereException {
+	throw new SiteWhereException("Not supported yet for InfluxDB device event management.");
+    }
+
+    /*
+     * @see com.sitewhere.spi.device.event.IDeviceEventManagement#
+     * listDeviceAssignmentStatesForSite(com.sitewhere.spi.device.ISite,
+     * com.sitewhere.spi.search.IDateRangeSearchCriteria)
+     */
+    @Override
+    public ISearchResults<IDeviceAssignmentState> listDeviceAssignmentStatesForSite(ISite site,
+	    IDateRangeSearchCriteria criteria) throws SiteWhereException {
+	throw new SiteWhereException("Not supported yet for InfluxDB device event management.");
+    }
+
     /*
      * (non-Javadoc)
      * 
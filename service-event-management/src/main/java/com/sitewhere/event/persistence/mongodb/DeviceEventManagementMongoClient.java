@@ -29,6 +29,9 @@ public class DeviceEventManagementMongoClient extends MongoDbClient implements I
     /** Injected name used for events collection */
     private String eventsCollectionName = IDeviceEventManagementMongoClient.DEFAULT_EVENTS_COLLECTION_NAME;
 
+    /** Injected name used for assignment states collection */
+    private String assignmentStatesCollectionName = DEFAULT_ASSIGNMENT_STATES_COLLECTION_NAME;
+
     public DeviceEventManagementMongoClient(MongoConfiguration configuration) {
 	super(configuration);
     }
@@ -42,6 +45,15 @@ public class DeviceEventManagementMongoClient extends MongoDbClient implements I
 	return getDatabase().getCollection(getEventsCollectionName());
     }
 
+    /*
+     * @see
+     * com.sitewhere.event.persistence.mongodb.IDeviceEventManagementMongoClient#
+     * getAssignmentStatesCollection()
+     */
+    public MongoCollection<Document> getAssignmentStatesCollection() throws SiteWhereException {
+	return getDatabase().getCollection(getAssignmentStatesCollectionName());
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -59,4 +71,12 @@ public class DeviceEventManagementMongoClient extends MongoDbClient implements I
     public void setEventsCollectionName(String eventsCollectionName) {
 	this.eventsCollectionName = eventsCollectionName;
     }
+
+    public String getAssignmentStatesCollectionName() {
+	return assignmentStatesCollectionName;
+    }
+
+    public void setAssignmentStatesCollectionName(String assignmentStatesCollectionName) {
+	this.assignmentStatesCollectionName = assignmentStatesCollectionName;
+    }
 }
\ No newline at end of file
@@ -10,6 +10,7 @@ package com.sitewhere.event.persistence.mongodb;
 import org.bson.Document;
 
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
 import com.sitewhere.spi.SiteWhereException;
 
 /**
@@ -22,6 +23,17 @@ public interface IDeviceEventManagementMongoClient {
     /** Default collection name for SiteWhere events */
     public static final String DEFAULT_EVENTS_COLLECTION_NAME = "events";
 
+    /** Default collection name for materialized assignment state */
+    public static final String DEFAULT_ASSIGNMENT_STATES_COLLECTION_NAME = "assignmentStates";
+
+    /**
+     * Get database that contains the collections.
+     * 
+     * @return
+     * @throws SiteWhereException
+     */
+    public MongoDatabase getDatabase() throws SiteWhereException;
+
     /**
      * Collection for events.
      * 
@@ -29,4 +41,12 @@ public interface IDeviceEventManagementMongoClient {
      * @throws SiteWhereException
      */
     public MongoCollection<Document> getEventsCollection() throws SiteWhereException;
+
+    /**
+     * Collection for materialized assignment state.
+     * 
+     * @return
+     * @throws SiteWhereException
+     */
+    public MongoCollection<Document> getAssignmentStatesCollection() throws SiteWhereException;
 }
@@ -12,6 +12,7 @@ import java.util.Map;
 
 import com.sitewhere.mongodb.IMongoConverterLookup;
 import com.sitewhere.mongodb.MongoConverter;
+import com.sitewhere.spi.device.IDeviceAssignmentState;
 import com.sitewhere.spi.device.event.IDeviceAlert;
 import com.sitewhere.spi.device.event.IDeviceCommandInvocation;
 import com.sitewhere.spi.device.event.IDeviceCommandResponse;
@@ -40,6 +41,7 @@ public class MongoConverters implements IMongoConverterLookup {
 	CONVERTERS.put(IDeviceCommandInvocation.class, new MongoDeviceCommandInvocation());
 	CONVERTERS.put(IDeviceCommandResponse.class, new MongoDeviceCommandResponse());
 	CONVERTERS.put(IDeviceStateChange.class, new MongoDeviceStateChange());
+	CONVERTERS.put(IDeviceAssignmentState.class, new MongoDeviceAssignmentState());
     }
 
     /*
@@ -10,6 +10,7 @@ package com.sitewhere.event.persistence.mongodb;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.UUID;
 
 import org.bson.Document;
 
@@ -26,6 +27,12 @@ import com.sitewhere.spi.device.event.IDeviceMeasurement;
  */
 public class MongoDeviceAssignmentState implements MongoConverter<IDeviceAssignmentState> {
 
+    /** Property for assignment id */
+    public static final String PROP_DEVICE_ASSIGNMENT_ID = "ai";
+
+    /** Property for site id */
+    public static final String PROP_SITE_ID = "si";
+
     /** Property for last interaction date */
     public static final String PROP_LAST_INTERACTION_DATE = "li";
 
@@ -68,6 +75,9 @@ public class MongoDeviceAssignmentState implements MongoConverter<IDeviceAssignm
      * @param target
      */
     public static void toDocument(IDeviceAssignmentState source, Document target) {
+	target.append(PROP_DEVICE_ASSIGNMENT_ID, source.getDeviceAssignmentId());
+	target.append(PROP_SITE_ID, source.getSiteId());
+
 	if (source.getLastInteractionDate() != null) {
 	    target.append(PROP_LAST_INTERACTION_DATE, source.getLastInteractionDate());
 	}
@@ -105,6 +115,8 @@ public class MongoDeviceAssignmentState implements MongoConverter<IDeviceAssignm
      */
     @SuppressWarnings("unchecked")
     public static void fromDocument(Document source, DeviceAssignmentState target) {
+	target.setDeviceAssignmentId((UUID) source.get(PROP_DEVICE_ASSIGNMENT_ID));
+	target.setSiteId((UUID) source.get(PROP_SITE_ID));
 	target.setLastInteractionDate((Date) source.get(PROP_LAST_INTERACTION_DATE));
 	target.setPresenceMissingDate((Date) source.get(PROP_PRESENCE_MISSING_DATE));
 	Document lastLocation = (Document) source.get(PROP_LAST_LOCATION);
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.persistence.mongodb;
+
+import org.bson.Document;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCursor;
+import com.sitewhere.event.spi.export.IDeviceEventCursor;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+
+/**
+ * Device event cursor backed by a MongoDB cursor. Documents are fetched from
+ * the server in batches as they are consumed.
+ * 
+ * @author Derek
+ */
+public class MongoDeviceEventCursor implements IDeviceEventCursor {
+
+    /** Wrapped cursor */
+    private MongoCursor<Document> cursor;
+
+    public MongoDeviceEventCursor(MongoCursor<Document> cursor) {
+	this.cursor = cursor;
+    }
+
+    /*
+     * @see com.sitewhere.event.spi.export.IDeviceEventCursor#next()
+     */
+    @Override
+    public IDeviceEvent next() throws SiteWhereException {
+	try {
+	    return cursor.hasNext() ? MongoDeviceEventManagementPersistence.unmarshalEvent(cursor.next()) : null;
+	} catch (MongoException e) {
+	    throw new SiteWhereException("Unable to read next event from MongoDB.", e);
+	}
+    }
+
+    /*
+     * @see com.sitewhere.event.spi.export.IDeviceEventCursor#close()
+     */
+    @Override
+    public void close() throws SiteWhereException {
+	cursor.close();
+    }
+}
@@ -8,7 +8,13 @@
 package com.sitewhere.event.persistence.mongodb;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.UUID;
 
 import org.apache.logging.log4j.LogManager;
@@ -17,15 +23,33 @@ import org.bson.Document;
 import org.bson.types.ObjectId;
 
 import com.mongodb.BasicDBObject;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoCommandException;
 import com.mongodb.MongoTimeoutException;
+import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
 import com.sitewhere.common.MarshalUtils;
+import com.sitewhere.event.bulk.DeviceEventBulkResult;
 import com.sitewhere.event.persistence.DeviceEventManagementPersistence;
+import com.sitewhere.event.spi.bulk.IDeviceEventBulkRequest;
+import com.sitewhere.event.spi.bulk.IDeviceEventBulkResult;
+import com.sitewhere.event.spi.bulk.IDeviceEventBulkStore;
+import com.sitewhere.event.spi.export.IDeviceEventCursor;
+import com.sitewhere.event.spi.export.IDeviceEventCursorSource;
+import com.sitewhere.event.spi.export.IDeviceEventExportCriteria;
+import com.sitewhere.event.spi.state.IDeviceAssignmentStateStore;
+import com.sitewhere.event.spi.streaming.IDeviceStreamDataSource;
 import com.sitewhere.mongodb.IMongoConverterLookup;
 import com.sitewhere.mongodb.MongoPersistence;
+import com.sitewhere.mongodb.MongoQueryPlanVerifier;
 import com.sitewhere.rest.model.device.event.DeviceAlert;
 import com.sitewhere.rest.model.device.event.DeviceCommandInvocation;
 import com.sitewhere.rest.model.device.event.DeviceCommandResponse;
@@ -34,11 +58,13 @@ import com.sitewhere.rest.model.device.event.DeviceLocation;
 import com.sitewhere.rest.model.device.event.DeviceMeasurements;
 import com.sitewhere.rest.model.device.event.DeviceStateChange;
 import com.sitewhere.rest.model.device.event.DeviceStreamData;
+import com.sitewhere.rest.model.search.DateRangeSearchCriteria;
 import com.sitewhere.rest.model.search.SearchResults;
 import com.sitewhere.server.lifecycle.TenantEngineLifecycleComponent;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.SiteWhereSystemException;
 import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceAssignmentState;
 import com.sitewhere.spi.device.ISite;
 import com.sitewhere.spi.device.event.DeviceEventType;
 import com.sitewhere.spi.device.event.IDeviceAlert;
@@ -73,7 +99,9 @@ import com.sitewhere.spi.server.lifecycle.LifecycleComponentType;
  * 
  * @author Derek
  */
-public class MongoDeviceEventManagement extends TenantEngineLifecycleComponent implements IDeviceEventManagement {
+public class MongoDeviceEventManagement extends TenantEngineLifecycleComponent
+	implements IDeviceEventManagement, IDeviceAssignmentStateStore, IDeviceEventCursorSource,
+	IDeviceStreamDataSource, IDeviceEventBulkStore {
 
     /** Static logger instance */
     private static Logger LOGGER = LogManager.getLogger();
@@ -109,6 +137,9 @@ public class MongoDeviceEventManagement extends TenantEngineLifecycleComponent i
 	// Ensure that collection indexes exist.
 	ensureIndexes();
 
+	// Report query shapes that are not supported by an index.
+	verifyQueryPlans();
+
 	// Support bulk inserts for events.
 	if (isUseBulkEventInserts()) {
 	    this.eventBuffer = new DeviceEventBuffer(getMongoClient().getEventsCollection(),
@@ -148,6 +179,73 @@ public class MongoDeviceEventManagement extends TenantEngineLifecycleComponent i
 			.append(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(MongoDeviceEvent.PROP_EVENT_TYPE, 1));
 	getMongoClient().getEventsCollection().createIndex(new BasicDBObject(MongoDeviceEvent.PROP_SITE_ID, 1)
 		.append(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(MongoDeviceEvent.PROP_EVENT_TYPE, 1));
+
+	// Command responses by originating invocation. Only response events carry
+	// the field, so the index is limited to them.
+	getMongoClient().getEventsCollection().createIndex(
+		new Document(MongoDeviceEvent.PROP_EVENT_TYPE, 1)
+			.append(MongoDeviceCommandResponse.PROP_ORIGINATING_EVENT_ID, 1)
+			.append(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(MongoDeviceEvent.PROP_RECEIVED_DATE, -1),
+		partial(DeviceEventType.CommandResponse));
+
+	// Stream data by assignment, stream and sequence number.
+	getMongoClient().getEventsCollection().createIndex(
+		new Document(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_ID, 1)
+			.append(MongoDeviceEvent.PROP_EVENT_TYPE, 1).append(MongoDeviceStreamData.PROP_STREAM_ID, 1)
+			.append(MongoDeviceStreamData.PROP_SEQUENCE_NUMBER, 1),
+		partial(DeviceEventType.StreamData));
+
+	// Assignment state by assignment and by recent activity in a site.
+	getMongoClient().getAssignmentStatesCollection().createIndex(
+		new Document(MongoDeviceAssignmentState.PROP_DEVICE_ASSIGNMENT_ID, 1), new IndexOptions().unique(true));
+	getMongoClient().getAssignmentStatesCollection()
+		.createIndex(new Document(MongoDeviceAssignmentState.PROP_SITE_ID, 1)
+			.append(MongoDeviceAssignmentState.PROP_LAST_INTERACTION_DATE, -1));
+    }
+
+    /**
+     * Options for an index that only covers events of a given type. These are
+     * built in the background so that adding them to a large existing collection
+     * does not block the tenant.
+     * 
+     * @param type
+     * @return
+     */
+    protected static IndexOptions partial(DeviceEventType type) {
+	return new IndexOptions().background(true)
+		.partialFilterExpression(new Document(MongoDeviceEvent.PROP_EVENT_TYPE, type.name()));
+    }
+
+    /**
+     * Explain correlation and stream lookups and log any that still scan the
+     * events collection or sort in memory.
+     * 
+     * @throws SiteWhereException
+     */
+    protected void verifyQueryPlans() throws SiteWhereException {
+	MongoQueryPlanVerifier verifier = new MongoQueryPlanVerifier(getMongoClient().getDatabase());
+	MongoCollection<Document> events = getMongoClient().getEventsCollection();
+	UUID sample = UUID.randomUUID();
+
+	verifier.verify("List responses for invocation", events,
+		new Document(MongoDeviceEvent.PROP_EVENT_TYPE, DeviceEventType.CommandResponse.name())
+			.append(MongoDeviceCommandResponse.PROP_ORIGINATING_EVENT_ID, sample.toString()),
+		new Document(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(MongoDeviceEvent.PROP_RECEIVED_DATE, -1));
+	verifier.verify("Get stream data chunk", events, getDeviceStreamDataQuery(sample, "stream", 1), null);
+	verifier.verify("List stream data", events,
+		new Document(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_ID, sample)
+			.append(MongoDeviceEvent.PROP_EVENT_TYPE, DeviceEventType.StreamData.name())
+			.append(MongoDeviceStreamData.PROP_STREAM_ID, "stream"),
+		new Document(MongoDeviceStreamData.PROP_SEQUENCE_NUMBER, 1));
+	verifier.verify("List recently active assignments", getMongoClient().getAssignmentStatesCollection(),
+		new Document(MongoDeviceAssignmentState.PROP_SITE_ID, sample),
+		new Document(MongoDeviceAssignmentState.PROP_LAST_INTERACTION_DATE, -1));
+
+	if (verifier.getProblems().isEmpty()) {
+	    getLogger().info("All event correlation and stream queries are supported by indexes.");
+	} else {
+	    getLogger().warn(verifier.getProblems().size() + " event queries are not fully indexed.");
+	}
     }
 
     /*
@@ -463,9 +561,7 @@ public class MongoDeviceEventManagement extends TenantEngineLifecycleComponent i
     public ISearchResults<IDeviceStreamData> listDeviceStreamData(IDeviceAssignment assignment, String streamId,
 	    IDateRangeSearchCriteria criteria) throws SiteWhereException {
 	MongoCollection<Document> events = getMongoClient().getEventsCollection();
-	Document query = new Document(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_ID, assignment.getId())
-		.append(MongoDeviceEvent.PROP_EVENT_TYPE, DeviceEventType.StreamData.name())
-		.append(MongoDeviceStreamData.PROP_STREAM_ID, streamId);
+	Document query = getDeviceStreamDataQuery(assignment.getId(), streamId);
 	MongoPersistence.addDateSearchCriteria(query, MongoDeviceEvent.PROP_EVENT_DATE, criteria);
 	Document sort = new Document(MongoDeviceStreamData.PROP_SEQUENCE_NUMBER, 1);
 	return MongoPersistence.search(IDeviceStreamData.class, events, query, sort, criteria, LOOKUP);
@@ -534,17 +630,19 @@ public class MongoDeviceEventManagement extends TenantEngineLifecycleComponent i
      * (non-Javadoc)
      * 
      * @see com.sitewhere.spi.device.event.IDeviceEventManagement#
-     * listDeviceCommandInvocationResponses(java.lang.String)
+     * listDeviceCommandInvocationResponses(java.lang.String,
+     * com.sitewhere.spi.search.IDateRangeSearchCriteria)
      */
     @Override
-    public ISearchResults<IDeviceCommandResponse> listDeviceCommandInvocationResponses(String invocationId)
-	    throws SiteWhereException {
+    public ISearchResults<IDeviceCommandResponse> listDeviceCommandInvocationResponses(String invocationId,
+	    IDateRangeSearchCriteria criteria) throws SiteWhereException {
 	MongoCollection<Document> events = getMongoClient().getEventsCollection();
 	Document query = new Document(MongoDeviceEvent.PROP_EVENT_TYPE, DeviceEventType.CommandResponse.name())
 		.append(MongoDeviceCommandResponse.PROP_ORIGINATING_EVENT_ID, invocationId);
+	MongoPersistence.addDateSearchCriteria(query, MongoDeviceEvent.PROP_EVENT_DATE, criteria);
 	Document sort = new Document(MongoDeviceEvent.PROP_EVENT_DATE, -1).append(MongoDeviceEvent.PROP_RECEIVED_DATE,
 		-1);
-	return MongoPersistence.search(IDeviceCommandResponse.class, events, query, sort, LOOKUP);
+	return MongoPersistence.search(IDeviceCommandResponse.class, events, query, sort, criteria, LOOKUP);
     }
 
     /*
@@ -643,6 +741,77 @@ public class MongoDeviceEventManagement extends TenantEngineLifecycleComponent i
 	return MongoPersistence.search(IDeviceStateChange.class, events, query, sort, criteria, LOOKUP);
     }
 
+    /*
+     * @see com.sitewhere.spi.device.event.IDeviceEventManagement#
+     * getDeviceAssignmentState(java.util.UUID)
+     */
+    @Override
+    public IDeviceAssignmentState getDeviceAssignmentState(UUID assignmentId) throws SiteWhereException {
+	Document found = getMongoClient().getAssignmentStatesCollection()
+		.find(new Document(MongoDeviceAssignmentState.PROP_DEVICE_ASSIGNMENT_ID, assignmentId)).first();
+	return (found != null) ? MongoDeviceAssignmentState.fromDocument(found) : null;
+    }
+
+    /*
+     * @see com.sitewhere.spi.device.event.IDeviceEventManagement#
+     * listDeviceAssignmentStatesForSite(com.sitewhere.spi.device.ISite,
+     * com.sitewhere.spi.search.IDateRangeSearchCriteria)
+     */
+    @Override
+    public ISearchResults<IDeviceAssignmentState> listDeviceAssignmentStatesForSite(ISite site,
+	    IDateRangeSearchCriteria criteria) throws SiteWhereException {
+	MongoCollection<Document> states = getMongoClient().getAssignmentStatesCollection();
+	Document query = new Document(MongoDeviceAssignmentState.PROP_SITE_ID, site.getId());
+	MongoPersistence.addDateSearchCriteria(query, MongoDeviceAssignmentState.PROP_LAST_INTERACTION_DATE, criteria);
+	Document sort = new Document(MongoDeviceAssignmentState.PROP_LAST_INTERACTION_DATE, -1);
+	return MongoPersistence.search(IDeviceAssignmentState.class, states, query, sort, criteria, LOOKUP);
+    }
+
+    /*
+     * @see com.sitewhere.event.spi.state.IDeviceAssignmentStateStore#
+     * getDeviceAssignmentStates(java.util.Collection)
+     */
+    @Override
+    public List<IDeviceAssignmentState> getDeviceAssignmentStates(Collection<UUID> assignmentIds)
+	    throws SiteWhereException {
+	List<IDeviceAssignmentState> found = new ArrayList<IDeviceAssignmentState>();
+	if (assignmentIds.isEmpty()) {
+	    return found;
+	}
+	Document query = new Document(MongoDeviceAssignmentState.PROP_DEVICE_ASSIGNMENT_ID,
+		new Document("$in", new ArrayList<UUID>(assignmentIds)));
+	try {
+	    for (Document document : getMongoClient().getAssignmentStatesCollection().find(query)) {
+		found.add(MongoDeviceAssignmentState.fromDocument(document));
+	    }
+	} catch (MongoTimeoutException e) {
+	    throw new SiteWhereException("Timed out loading device assignment states.", e);
+	}
+	return found;
+    }
+
+    /*
+     * @see com.sitewhere.event.spi.state.IDeviceAssignmentStateStore#
+     * storeDeviceAssignmentStates(java.util.Collection)
+     */
+    @Override
+    public void storeDeviceAssignmentStates(Collection<IDeviceAssignmentState> states) throws SiteWhereException {
+	if (states.isEmpty()) {
+	    return;
+	}
+	List<WriteModel<Document>> writes = new ArrayList<WriteModel<Document>>();
+	for (IDeviceAssignmentState state : states) {
+	    writes.add(new ReplaceOneModel<Document>(
+		    new Document(MongoDeviceAssignmentState.PROP_DEVICE_ASSIGNMENT_ID, state.getDeviceAssignmentId()),
+		    MongoDeviceAssignmentState.toDocument(state), new UpdateOptions().upsert(true)));
+	}
+	try {
+	    getMongoClient().getAssignmentStatesCollection().bulkWrite(writes, new BulkWriteOptions().ordered(false));
+	} catch (MongoTimeoutException e) {
+	    throw new SiteWhereException("Timed out storing device assignment states.", e);
+	}
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -662,6 +831,49 @@ public class MongoDeviceEventManagement extends TenantEngineLifecycleComponent i
 	return MongoPersistence.search(IDeviceStateChange.class, events, query, sort, criteria, LOOKUP);
     }
 
+    /*
+     * @see com.sitewhere.event.spi.export.IDeviceEventCursorSource#
+     * openDeviceEventCursor(com.sitewhere.event.spi.export.
+     * IDeviceEventExportCriteria)
+     */
+    @Override
+    public IDeviceEventCursor openDeviceEventCursor(IDeviceEventExportCriteria criteria) throws SiteWhereException {
+	Document query = (criteria.getAssignment() != null)
+		? new Document(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_ID, criteria.getAssignment().getId())
+		: new Document(MongoDeviceEvent.PROP_SITE_ID, criteria.getSite().getId());
+	MongoPersistence.addDateSearchCriteria(query, MongoDeviceEvent.PROP_EVENT_DATE,
+		new DateRangeSearchCriteria(1, 0, criteria.getStartDate(), criteria.getEndDate()));
+	if (!criteria.getEventTypes().isEmpty()) {
+	    List<String> types = new ArrayList<String>();
+	    for (DeviceEventType type : criteria.getEventTypes()) {
+		types.add(type.name());
+	    }
+	    query.append(MongoDeviceEvent.PROP_EVENT_TYPE, new Document("$in", types));
+	}
+
+	// Measurement names can only be matched in the query if no other types
+	// are exported. Otherwise they are applied by the caller.
+	boolean measurementsOnly = (criteria.getEventTypes().size() == 1)
+		&& (criteria.getEventTypes().get(0) == DeviceEventType.Measurements);
+	if (measurementsOnly && !criteria.getMeasurementNames().isEmpty()) {
+	    query.append(MongoDeviceMeasurements.PROP_MEASUREMENTS + "." + MongoDeviceMeasurements.PROP_NAME,
+		    new Document("$in", criteria.getMeasurementNames()));
+	}
+
+	// Sort only on event date so that the assignment and site indexes provide
+	// the order. Sorting on more fields would require an in-memory sort,
+	// which fails for large results. The cursor is closed by the caller, so it
+	// does not need to time out while a slow client catches up.
+	try {
+	    MongoCursor<Document> cursor = getMongoClient().getEventsCollection().find(query)
+		    .sort(new Document(MongoDeviceEvent.PROP_EVENT_DATE, -1)).batchSize(criteria.getBatchSize())
+		    .noCursorTimeout(true).iterator();
+	    return new MongoDeviceEventCursor(cursor);
+	} catch (MongoTimeoutException e) {
+	    throw new SiteWhereException("Timed out opening device event cursor.", e);
+	}
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -685,6 +897,116 @@ public class MongoDeviceEventManagement extends TenantEngineLifecycleComponent i
 	return MongoDeviceEventManagementPersistence.unmarshalEvent(updated);
     }
 
+    /*
+     * Events are written with a single unordered bulk write that is acknowledged
+     * by the server, so results reflect what was actually stored.
+     * 
+     * @see
+     * com.sitewhere.event.spi.bulk.IDeviceEventBulkStore#addDeviceEvents(java.
+     * util.List)
+     */
+    @Override
+    public List<IDeviceEventBulkResult> addDeviceEvents(List<IDeviceEventBulkRequest> requests)
+	    throws SiteWhereException {
+	IDeviceEventBulkResult[] results = new IDeviceEventBulkResult[requests.size()];
+	List<Document> documents = new ArrayList<Document>();
+	List<Integer> positions = new ArrayList<Integer>();
+	for (int i = 0; i < requests.size(); i++) {
+	    IDeviceEventBulkRequest request = requests.get(i);
+	    try {
+		DeviceEvent event = DeviceEventManagementPersistence.anyDeviceEventCreateLogic(request.getAssignment(),
+			request.getRequest());
+		documents.add(MongoDeviceEventManagementPersistence.marshalEvent(event));
+		positions.add(i);
+	    } catch (SiteWhereException e) {
+		results[i] = DeviceEventBulkResult.failed(e);
+	    }
+	}
+	if (documents.isEmpty()) {
+	    return Arrays.asList(results);
+	}
+
+	List<WriteModel<Document>> writes = new ArrayList<WriteModel<Document>>(documents.size());
+	for (Document document : documents) {
+	    writes.add(new InsertOneModel<Document>(document));
+	}
+	Map<Integer, Throwable> failures = new HashMap<Integer, Throwable>();
+	try {
+	    getMongoClient().getEventsCollection().bulkWrite(writes, new BulkWriteOptions().ordered(false));
+	} catch (MongoBulkWriteException e) {
+	    for (BulkWriteError error : e.getWriteErrors()) {
+		failures.put(error.getIndex(), new SiteWhereException(error.getMessage()));
+	    }
+	} catch (MongoCommandException e) {
+	    throw new SiteWhereException("Error during MongoDB bulk insert.", e);
+	} catch (MongoTimeoutException e) {
+	    throw new SiteWhereException("Connection to MongoDB lost.", e);
+	}
+	for (int i = 0; i < documents.size(); i++) {
+	    Throwable failure = failures.get(i);
+	    if (failure != null) {
+		results[positions.get(i)] = DeviceEventBulkResult.failed(failure);
+	    } else {
+		IDeviceEvent event = MongoDeviceEventManagementPersistence.unmarshalEvent(documents.get(i));
+		results[positions.get(i)] = DeviceEventBulkResult.stored(event);
+	    }
+	}
+	return Arrays.asList(results);
+    }
+
+    /*
+     * @see com.sitewhere.event.spi.streaming.IDeviceStreamDataSource#
+     * getDeviceStreamChunkSizes(com.sitewhere.spi.device.IDeviceAssignment,
+     * java.lang.String)
+     */
+    @Override
+    public SortedMap<Long, Long> getDeviceStreamChunkSizes(IDeviceAssignment assignment, String streamId)
+	    throws SiteWhereException {
+	SortedMap<Long, Long> sizes = new TreeMap<Long, Long>();
+	Document projection = new Document(MongoDeviceStreamData.PROP_SEQUENCE_NUMBER, 1)
+		.append(MongoDeviceStreamData.PROP_SIZE, 1);
+	try (MongoCursor<Document> cursor = getMongoClient().getEventsCollection()
+		.find(getDeviceStreamDataQuery(assignment.getId(), streamId))
+		.sort(new Document(MongoDeviceStreamData.PROP_SEQUENCE_NUMBER, 1)).projection(projection).iterator()) {
+	    while (cursor.hasNext()) {
+		Document chunk = cursor.next();
+		Long sequenceNumber = (Long) chunk.get(MongoDeviceStreamData.PROP_SEQUENCE_NUMBER);
+		Number size = (Number) chunk.get(MongoDeviceStreamData.PROP_SIZE);
+		if (size == null) {
+		    // Chunks stored before sizes were recorded.
+		    Document full = getDeviceStreamDataDocument(assignment.getId(), streamId, sequenceNumber);
+		    byte[] data = (full != null) ? (byte[]) full.get(MongoDeviceStreamData.PROP_DATA) : null;
+		    size = (data != null) ? data.length : 0;
+		}
+		sizes.put(sequenceNumber, size.longValue());
+	    }
+	} catch (MongoTimeoutException e) {
+	    throw new SiteWhereException("Connection to MongoDB lost.", e);
+	}
+	return sizes;
+    }
+
+    /*
+     * @see com.sitewhere.event.spi.streaming.IDeviceStreamDataSource#
+     * openDeviceStreamDataCursor(com.sitewhere.spi.device.IDeviceAssignment,
+     * java.lang.String, long, long, int)
+     */
+    @Override
+    public IDeviceEventCursor openDeviceStreamDataCursor(IDeviceAssignment assignment, String streamId,
+	    long firstSequenceNumber, long lastSequenceNumber, int batchSize) throws SiteWhereException {
+	Document query = getDeviceStreamDataQuery(assignment.getId(), streamId).append(
+		MongoDeviceStreamData.PROP_SEQUENCE_NUMBER,
+		new Document("$gte", firstSequenceNumber).append("$lte", lastSequenceNumber));
+	try {
+	    MongoCursor<Document> cursor = getMongoClient().getEventsCollection().find(query)
+		    .sort(new Document(MongoDeviceStreamData.PROP_SEQUENCE_NUMBER, 1)).batchSize(batchSize)
+		    .noCursorTimeout(true).iterator();
+	    return new MongoDeviceEventCursor(cursor);
+	} catch (MongoTimeoutException e) {
+	    throw new SiteWhereException("Timed out opening device stream data cursor.", e);
+	}
+    }
+
     /**
      * Get the {@link Document} for an {@link IDeviceStreamData} chunk based on
      * assignment token, stream id, and sequence number.
@@ -699,15 +1021,40 @@ public class MongoDeviceEventManagement extends TenantEngineLifecycleComponent i
 	    throws SiteWhereException {
 	try {
 	    MongoCollection<Document> events = getMongoClient().getEventsCollection();
-	    Document query = new Document(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_ID, assignmentId)
-		    .append(MongoDeviceStreamData.PROP_STREAM_ID, streamId)
-		    .append(MongoDeviceStreamData.PROP_SEQUENCE_NUMBER, sequenceNumber);
-	    return events.find(query).first();
+	    return events.find(getDeviceStreamDataQuery(assignmentId, streamId, sequenceNumber)).first();
 	} catch (MongoTimeoutException e) {
 	    throw new SiteWhereException("Connection to MongoDB lost.", e);
 	}
     }
 
+    /**
+     * Build query for a stream data chunk. Includes the event type so that the
+     * stream data partial index can be used.
+     * 
+     * @param assignmentId
+     * @param streamId
+     * @param sequenceNumber
+     * @return
+     */
+    protected static Document getDeviceStreamDataQuery(UUID assignmentId, String streamId, long sequenceNumber) {
+	return getDeviceStreamDataQuery(assignmentId, streamId).append(MongoDeviceStreamData.PROP_SEQUENCE_NUMBER,
+		sequenceNumber);
+    }
+
+    /**
+     * Build query for all chunks in a stream. Includes the event type so that the
+     * stream data partial index can be used.
+     * 
+     * @param assignmentId
+     * @param streamId
+     * @return
+     */
+    protected static Document getDeviceStreamDataQuery(UUID assignmentId, String streamId) {
+	return new Document(MongoDeviceEvent.PROP_DEVICE_ASSIGNMENT_ID, assignmentId)
+		.append(MongoDeviceEvent.PROP_EVENT_TYPE, DeviceEventType.StreamData.name())
+		.append(MongoDeviceStreamData.PROP_STREAM_ID, streamId);
+    }
+
     public IDeviceEventBuffer getEventBuffer() {
 	return eventBuffer;
     }
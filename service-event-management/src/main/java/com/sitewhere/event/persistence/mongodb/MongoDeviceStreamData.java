@@ -30,6 +30,9 @@ public class MongoDeviceStreamData implements MongoConverter<IDeviceStreamData>
     /** Property for binary data */
     public static final String PROP_DATA = "dt";
 
+    /** Property for size of binary data (so it can be read without the data) */
+    public static final String PROP_SIZE = "sz";
+
     /*
      * (non-Javadoc)
      * 
@@ -63,6 +66,7 @@ public class MongoDeviceStreamData implements MongoConverter<IDeviceStreamData>
 	target.append(PROP_STREAM_ID, source.getStreamId());
 	target.append(PROP_SEQUENCE_NUMBER, source.getSequenceNumber());
 	target.append(PROP_DATA, source.getData());
+	target.append(PROP_SIZE, (source.getData() != null) ? source.getData().length : 0);
     }
 
     /**
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.spi.bulk;
+
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.event.request.IDeviceEventCreateRequest;
+import com.sitewhere.spi.device.streaming.IDeviceStream;
+
+/**
+ * Single event in a bulk store request.
+ * 
+ * @author Derek
+ */
+public interface IDeviceEventBulkRequest {
+
+    /**
+     * Get assignment the event is stored for.
+     * 
+     * @return
+     */
+    public IDeviceAssignment getAssignment();
+
+    /**
+     * Get device stream (only required for stream data).
+     * 
+     * @return
+     */
+    public IDeviceStream getDeviceStream();
+
+    /**
+     * Get request used to create the event.
+     * 
+     * @return
+     */
+    public IDeviceEventCreateRequest getRequest();
+}
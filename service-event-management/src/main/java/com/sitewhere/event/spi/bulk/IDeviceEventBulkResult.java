@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.spi.bulk;
+
+import com.sitewhere.spi.device.event.IDeviceEvent;
+
+/**
+ * Outcome of storing a single event in a bulk store request.
+ * 
+ * @author Derek
+ */
+public interface IDeviceEventBulkResult {
+
+    /**
+     * Get event that was stored (null if it could not be stored).
+     * 
+     * @return
+     */
+    public IDeviceEvent getEvent();
+
+    /**
+     * Get reason the event could not be stored (null if it was stored).
+     * 
+     * @return
+     */
+    public Throwable getError();
+}
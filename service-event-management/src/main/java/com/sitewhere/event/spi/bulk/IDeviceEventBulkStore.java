@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.spi.bulk;
+
+import java.util.List;
+
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Implemented by event management persistence that can store events for many
+ * assignments in a single write.
+ * 
+ * @author Derek
+ */
+public interface IDeviceEventBulkStore {
+
+    /**
+     * Store a list of events. A failure to store one event does not prevent the
+     * others from being stored. Results are returned in the same order as the
+     * requests.
+     * 
+     * @param requests
+     * @return
+     * @throws SiteWhereException
+     *             if the write could not be performed at all
+     */
+    public List<IDeviceEventBulkResult> addDeviceEvents(List<IDeviceEventBulkRequest> requests)
+	    throws SiteWhereException;
+}
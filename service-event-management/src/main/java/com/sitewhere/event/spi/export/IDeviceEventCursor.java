@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.spi.export;
+
+import java.io.Closeable;
+
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+
+/**
+ * Forward-only cursor over device events. Events are read from persistence as
+ * they are consumed, so memory used does not depend on the number of matches.
+ * The cursor must be closed so that resources held by the backend are
+ * released.
+ * 
+ * @author Derek
+ */
+public interface IDeviceEventCursor extends Closeable {
+
+    /**
+     * Get the next event or null if all events have been read.
+     * 
+     * @return
+     * @throws SiteWhereException
+     */
+    public IDeviceEvent next() throws SiteWhereException;
+
+    /*
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() throws SiteWhereException;
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.spi.export;
+
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Implemented by event management persistence that can iterate over all
+ * events matching export criteria without paging.
+ * 
+ * @author Derek
+ */
+public interface IDeviceEventCursorSource {
+
+    /**
+     * Open a cursor over events matching the criteria, newest first. Backends
+     * may return events that do not match the type or measurement filters, so
+     * callers are expected to apply them as well.
+     * 
+     * @param criteria
+     * @return
+     * @throws SiteWhereException
+     */
+    public IDeviceEventCursor openDeviceEventCursor(IDeviceEventExportCriteria criteria) throws SiteWhereException;
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.spi.export;
+
+import java.util.Date;
+import java.util.List;
+
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.ISite;
+import com.sitewhere.spi.device.event.DeviceEventType;
+
+/**
+ * Criteria for exporting device events. Exactly one of assignment or site is
+ * set.
+ * 
+ * @author Derek
+ */
+public interface IDeviceEventExportCriteria {
+
+    /**
+     * Get assignment events are exported for.
+     * 
+     * @return
+     */
+    public IDeviceAssignment getAssignment();
+
+    /**
+     * Get site events are exported for.
+     * 
+     * @return
+     */
+    public ISite getSite();
+
+    /**
+     * Get event types to export. All types are exported if empty.
+     * 
+     * @return
+     */
+    public List<DeviceEventType> getEventTypes();
+
+    /**
+     * Get measurement names to export. All measurements are exported if empty.
+     * 
+     * @return
+     */
+    public List<String> getMeasurementNames();
+
+    /**
+     * Get earliest event date to export.
+     * 
+     * @return
+     */
+    public Date getStartDate();
+
+    /**
+     * Get latest event date to export.
+     * 
+     * @return
+     */
+    public Date getEndDate();
+
+    /**
+     * Get number of events read from persistence at a time.
+     * 
+     * @return
+     */
+    public int getBatchSize();
+}
@@ -7,7 +7,9 @@
  */
 package com.sitewhere.event.spi.microservice;
 
+import com.sitewhere.event.spi.kafka.IAssignmentStateEventsConsumer;
 import com.sitewhere.event.spi.kafka.IInboundPersistedEventsProducer;
+import com.sitewhere.event.spi.state.IDeviceAssignmentStateMaterializer;
 import com.sitewhere.grpc.service.DeviceEventManagementGrpc;
 import com.sitewhere.spi.device.event.IDeviceEventManagement;
 import com.sitewhere.spi.microservice.multitenant.IMicroserviceTenantEngine;
@@ -41,4 +43,19 @@ public interface IEventManagementTenantEngine extends IMicroserviceTenantEngine
      * @return
      */
     public IInboundPersistedEventsProducer getInboundPersistedEventsProducer();
+
+    /**
+     * Get component that maintains last known state for device assignments.
+     * 
+     * @return
+     */
+    public IDeviceAssignmentStateMaterializer getAssignmentStateMaterializer();
+
+    /**
+     * Get Kafka consumer that feeds persisted events to the assignment state
+     * materializer.
+     * 
+     * @return
+     */
+    public IAssignmentStateEventsConsumer getAssignmentStateEventsConsumer();
 }
\ No newline at end of file
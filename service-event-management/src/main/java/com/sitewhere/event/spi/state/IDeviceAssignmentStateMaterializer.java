@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.spi.state;
+
+import java.util.Collection;
+import java.util.List;
+
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceEventManagement;
+
+/**
+ * Maintains last known state for device assignments based on the stream of
+ * persisted events.
+ * 
+ * @author Derek
+ */
+public interface IDeviceAssignmentStateMaterializer extends IDeviceEventManagement {
+
+    /**
+     * Apply a persisted event to the state of its assignment.
+     * 
+     * @param event
+     * @throws SiteWhereException
+     */
+    public void process(IDeviceEvent event) throws SiteWhereException;
+
+    /**
+     * Apply a persisted event read from the given partition to the state of its
+     * assignment.
+     * 
+     * @param event
+     * @param partition
+     * @throws SiteWhereException
+     */
+    public void process(IDeviceEvent event, int partition) throws SiteWhereException;
+
+    /**
+     * Apply persisted events read from the given partition in order. Stored
+     * state for assignments that are not in memory is loaded in a single bulk
+     * read.
+     * 
+     * @param events
+     * @param partition
+     * @throws SiteWhereException
+     */
+    public void process(List<IDeviceEvent> events, int partition) throws SiteWhereException;
+
+    /**
+     * Write pending changes and drop in-memory state for assignments whose events
+     * were read from the given partitions. Called when the partitions are
+     * assigned to another consumer, which loads the stored state instead.
+     * 
+     * @param partitions
+     * @throws SiteWhereException
+     */
+    public void release(Collection<Integer> partitions) throws SiteWhereException;
+
+    /**
+     * Write all pending state changes to the store.
+     * 
+     * @throws SiteWhereException
+     */
+    public void flush() throws SiteWhereException;
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.spi.state;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDeviceAssignmentState;
+
+/**
+ * Implemented by event management persistence that can store materialized
+ * assignment state.
+ * 
+ * @author Derek
+ */
+public interface IDeviceAssignmentStateStore {
+
+    /**
+     * Get stored state for each of the given assignments in a single bulk read.
+     * Assignments with no stored state are left out of the result.
+     * 
+     * @param assignmentIds
+     * @return
+     * @throws SiteWhereException
+     */
+    public List<IDeviceAssignmentState> getDeviceAssignmentStates(Collection<UUID> assignmentIds)
+	    throws SiteWhereException;
+
+    /**
+     * Create or replace state for each assignment in a single bulk operation.
+     * 
+     * @param states
+     * @throws SiteWhereException
+     */
+    public void storeDeviceAssignmentStates(Collection<IDeviceAssignmentState> states) throws SiteWhereException;
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.spi.streaming;
+
+import java.util.SortedMap;
+
+import com.sitewhere.event.spi.export.IDeviceEventCursor;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDeviceAssignment;
+
+/**
+ * Implemented by event management persistence that can read device stream
+ * data by sequence number rather than by page.
+ * 
+ * @author Derek
+ */
+public interface IDeviceStreamDataSource {
+
+    /**
+     * Get the size in bytes of each chunk in a stream, indexed by sequence
+     * number. Chunk data is not loaded.
+     * 
+     * @param assignment
+     * @param streamId
+     * @return
+     * @throws SiteWhereException
+     */
+    public SortedMap<Long, Long> getDeviceStreamChunkSizes(IDeviceAssignment assignment, String streamId)
+	    throws SiteWhereException;
+
+    /**
+     * Open a cursor over the chunks of a stream with sequence numbers between the
+     * first and last (inclusive), in sequence order. Events returned by the cursor
+     * are device stream data.
+     * 
+     * @param assignment
+     * @param streamId
+     * @param firstSequenceNumber
+     * @param lastSequenceNumber
+     * @param batchSize
+     * @return
+     * @throws SiteWhereException
+     */
+    public IDeviceEventCursor openDeviceStreamDataCursor(IDeviceAssignment assignment, String streamId,
+	    long firstSequenceNumber, long lastSequenceNumber, int batchSize) throws SiteWhereException;
+}
@@ -0,0 +1,562 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.state;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sitewhere.event.DeviceEventManagementDecorator;
+import com.sitewhere.event.spi.state.IDeviceAssignmentStateMaterializer;
+import com.sitewhere.event.spi.state.IDeviceAssignmentStateStore;
+import com.sitewhere.rest.model.device.DeviceAssignmentState;
+import com.sitewhere.rest.model.device.event.DeviceAlert;
+import com.sitewhere.rest.model.device.event.DeviceEvent;
+import com.sitewhere.rest.model.device.event.DeviceLocation;
+import com.sitewhere.rest.model.device.event.DeviceMeasurement;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDeviceAssignmentState;
+import com.sitewhere.spi.device.event.IDeviceAlert;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceEventManagement;
+import com.sitewhere.spi.device.event.IDeviceLocation;
+import com.sitewhere.spi.device.event.IDeviceMeasurement;
+import com.sitewhere.spi.device.event.IDeviceMeasurements;
+import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
+
+/**
+ * Keeps the last known state for each device assignment in memory and applies
+ * persisted events to it as they arrive. Assignments that change are marked
+ * dirty and written to the store in bulk on a fixed interval, so any number of
+ * events for an assignment between flushes results in a single write. Reads of
+ * a single assignment are served from memory when possible. Queries that span
+ * assignments go to the store and may lag by up to one flush interval.
+ * 
+ * Events are applied in batches, and stored state for all assignments in a
+ * batch that are not in memory is loaded with a single bulk read.
+ * 
+ * At most a fixed number of states is kept in memory. States that have been
+ * written are tracked separately in least recently used order, so the oldest
+ * of them can be dropped without scanning states with unwritten changes.
+ * Dropped states are loaded from the store again when needed. A state only
+ * counts as written if it did not change while the write was in progress.
+ * States for partitions that are revoked
+ * from the consumer are written and dropped, so a later owner of the
+ * partition does not compete with stale state held here. If persistence can
+ * not store state, state is only kept in memory and dropped states are lost.
+ *
+ * @author Derek
+ */
+public class DeviceAssignmentStateMaterializer extends DeviceEventManagementDecorator
+	implements IDeviceAssignmentStateMaterializer {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Default interval between flushes in milliseconds */
+    private static final long DEFAULT_FLUSH_INTERVAL_MS = 5000;
+
+    /** Default maximum number of states kept in memory */
+    public static final int DEFAULT_MAX_STATES = 100000;
+
+    /** Partition used for events that were not read from a known partition */
+    private static final int UNKNOWN_PARTITION = -1;
+
+    /** Maximum number of states written in a single bulk operation */
+    private static final int MAX_FLUSH_BATCH_SIZE = 1000;
+
+    /** Interval between flushes in milliseconds */
+    private long flushIntervalMs = DEFAULT_FLUSH_INTERVAL_MS;
+
+    /** Maximum number of states kept in memory */
+    private int maxStates = DEFAULT_MAX_STATES;
+
+    /**
+     * Last known state indexed by assignment id. Also guards the clean map, the
+     * dirty set and the states themselves.
+     */
+    private Map<UUID, MaterializedState> statesByAssignmentId = new HashMap<>();
+
+    /** States with no unwritten changes, least recently used first */
+    private LinkedHashMap<UUID, MaterializedState> clean = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Ids of assignments with changes that have not been flushed */
+    private Set<UUID> dirty = new HashSet<>();
+
+    /** Executor for periodic flushes */
+    private ScheduledExecutorService flusher;
+
+    public DeviceAssignmentStateMaterializer(IDeviceEventManagement delegate) {
+	super(delegate);
+    }
+
+    /*
+     * @see
+     * com.sitewhere.server.lifecycle.LifecycleComponentDecorator#start(com.
+     * sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	super.start(monitor);
+	if (!(getDelegate() instanceof IDeviceAssignmentStateStore)) {
+	    getLogger().warn("Event management persistence can not store assignment state. State will only be "
+		    + "available in memory.");
+	    return;
+	}
+	this.flusher = Executors.newSingleThreadScheduledExecutor(new FlusherThreadFactory());
+	flusher.scheduleWithFixedDelay(new Runnable() {
+
+	    @Override
+	    public void run() {
+		try {
+		    flush();
+		} catch (Throwable t) {
+		    getLogger().error("Unable to flush device assignment state.", t);
+		}
+	    }
+	}, getFlushIntervalMs(), getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * @see
+     * com.sitewhere.server.lifecycle.LifecycleComponentDecorator#stop(com.
+     * sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	if (flusher != null) {
+	    flusher.shutdown();
+	    try {
+		flusher.awaitTermination(10, TimeUnit.SECONDS);
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+	    }
+	    flush();
+	}
+	super.stop(monitor);
+    }
+
+    /*
+     * @see
+     * com.sitewhere.event.spi.state.IDeviceAssignmentStateMaterializer#process(
+     * com.sitewhere.spi.device.event.IDeviceEvent)
+     */
+    @Override
+    public void process(IDeviceEvent event) throws SiteWhereException {
+	process(event, UNKNOWN_PARTITION);
+    }
+
+    /*
+     * @see
+     * com.sitewhere.event.spi.state.IDeviceAssignmentStateMaterializer#process(
+     * com.sitewhere.spi.device.event.IDeviceEvent, int)
+     */
+    @Override
+    public void process(IDeviceEvent event, int partition) throws SiteWhereException {
+	process(Collections.singletonList(event), partition);
+    }
+
+    /*
+     * @see
+     * com.sitewhere.event.spi.state.IDeviceAssignmentStateMaterializer#process(
+     * java.util.List, int)
+     */
+    @Override
+    public void process(List<IDeviceEvent> events, int partition) throws SiteWhereException {
+	Map<UUID, IDeviceAssignmentState> stored = getStoredStates(events);
+	synchronized (statesByAssignmentId) {
+	    for (IDeviceEvent event : events) {
+		if (event.getDeviceAssignmentId() != null) {
+		    apply(event, stored.get(event.getDeviceAssignmentId()), partition);
+		}
+	    }
+	    evictStates();
+	}
+    }
+
+    /**
+     * Apply an event to the state of its assignment. Must be called while
+     * holding the lock on the state map.
+     *
+     * @param event
+     * @param stored
+     * @param partition
+     * @throws SiteWhereException
+     */
+    protected void apply(IDeviceEvent event, IDeviceAssignmentState stored, int partition)
+	    throws SiteWhereException {
+	MaterializedState materialized = getOrCreateState(event.getDeviceAssignmentId(), stored, partition);
+	DeviceAssignmentState state = materialized.getState();
+	state.setSiteId(event.getSiteId());
+	Date eventDate = event.getEventDate();
+	if (isAfter(eventDate, state.getLastInteractionDate())) {
+	    state.setLastInteractionDate(eventDate);
+	}
+	if (event instanceof IDeviceLocation) {
+	    if ((state.getLastLocation() == null) || isAfter(eventDate, state.getLastLocation().getEventDate())) {
+		state.setLastLocation(DeviceLocation.copy((IDeviceLocation) event));
+	    }
+	} else if (event instanceof IDeviceMeasurements) {
+	    applyMeasurements(state, (IDeviceMeasurements) event);
+	} else if (event instanceof IDeviceAlert) {
+	    applyAlert(state, (IDeviceAlert) event);
+	}
+	materialized.setVersion(materialized.getVersion() + 1);
+	if (getDelegate() instanceof IDeviceAssignmentStateStore) {
+	    clean.remove(event.getDeviceAssignmentId());
+	    dirty.add(event.getDeviceAssignmentId());
+	} else {
+	    clean.put(event.getDeviceAssignmentId(), materialized);
+	}
+    }
+
+    /**
+     * Replace the latest value for each measurement name in the event unless a
+     * newer value is already present.
+     *
+     * @param state
+     * @param event
+     * @throws SiteWhereException
+     */
+    protected void applyMeasurements(DeviceAssignmentState state, IDeviceMeasurements event)
+	    throws SiteWhereException {
+	for (Map.Entry<String, Double> entry : event.getMeasurements().entrySet()) {
+	    DeviceMeasurement measurement = new DeviceMeasurement();
+	    DeviceEvent.copy(event, measurement);
+	    measurement.setName(entry.getKey());
+	    measurement.setValue(entry.getValue());
+
+	    boolean replaced = false;
+	    List<IDeviceMeasurement> latest = state.getLatestMeasurements();
+	    for (int i = 0; i < latest.size(); i++) {
+		IDeviceMeasurement existing = latest.get(i);
+		if (existing.getName().equals(entry.getKey())) {
+		    if (isAfter(event.getEventDate(), existing.getEventDate())) {
+			latest.set(i, measurement);
+		    }
+		    replaced = true;
+		    break;
+		}
+	    }
+	    if (!replaced) {
+		latest.add(measurement);
+	    }
+	}
+    }
+
+    /**
+     * Replace the latest alert of the same type unless it is newer.
+     *
+     * @param state
+     * @param event
+     * @throws SiteWhereException
+     */
+    protected void applyAlert(DeviceAssignmentState state, IDeviceAlert event) throws SiteWhereException {
+	List<IDeviceAlert> latest = state.getLatestAlerts();
+	for (int i = 0; i < latest.size(); i++) {
+	    IDeviceAlert existing = latest.get(i);
+	    if (existing.getType().equals(event.getType())) {
+		if (isAfter(event.getEventDate(), existing.getEventDate())) {
+		    latest.set(i, DeviceAlert.copy(event));
+		}
+		return;
+	    }
+	}
+	latest.add(DeviceAlert.copy(event));
+    }
+
+    /*
+     * @see com.sitewhere.event.spi.state.IDeviceAssignmentStateMaterializer#flush()
+     */
+    @Override
+    public synchronized void flush() throws SiteWhereException {
+	if (!(getDelegate() instanceof IDeviceAssignmentStateStore)) {
+	    return;
+	}
+	IDeviceAssignmentStateStore store = (IDeviceAssignmentStateStore) getDelegate();
+	long start = System.currentTimeMillis();
+	List<IDeviceAssignmentState> pending = new ArrayList<IDeviceAssignmentState>();
+	Map<UUID, Long> versions = new HashMap<UUID, Long>();
+	synchronized (statesByAssignmentId) {
+	    if (dirty.isEmpty()) {
+		return;
+	    }
+	    for (UUID id : dirty) {
+		MaterializedState materialized = statesByAssignmentId.get(id);
+		if (materialized != null) {
+		    pending.add(DeviceAssignmentState.copy(materialized.getState()));
+		    versions.put(id, materialized.getVersion());
+		}
+	    }
+	}
+
+	// States stay dirty until written, so failed batches are retried on the
+	// next flush.
+	for (int i = 0; i < pending.size(); i += MAX_FLUSH_BATCH_SIZE) {
+	    List<IDeviceAssignmentState> batch = pending.subList(i, Math.min(i + MAX_FLUSH_BATCH_SIZE, pending.size()));
+	    store.storeDeviceAssignmentStates(batch);
+	    markWritten(batch, versions);
+	}
+	getLogger().debug("Flushed state for " + pending.size() + " assignments in "
+		+ (System.currentTimeMillis() - start) + " ms.");
+    }
+
+    /**
+     * Mark states as clean after they have been written unless they changed
+     * while the write was in progress, then drop states over the limit.
+     *
+     * @param written
+     * @param versions
+     */
+    protected void markWritten(List<IDeviceAssignmentState> written, Map<UUID, Long> versions) {
+	synchronized (statesByAssignmentId) {
+	    for (IDeviceAssignmentState state : written) {
+		UUID id = state.getDeviceAssignmentId();
+		MaterializedState materialized = statesByAssignmentId.get(id);
+		if ((materialized != null) && (materialized.getVersion() == versions.get(id))) {
+		    dirty.remove(id);
+		    clean.put(id, materialized);
+		}
+	    }
+	    evictStates();
+	}
+    }
+
+    /*
+     * @see
+     * com.sitewhere.event.spi.state.IDeviceAssignmentStateMaterializer#release(
+     * java.util.Collection)
+     */
+    @Override
+    public void release(Collection<Integer> partitions) throws SiteWhereException {
+	SiteWhereException failed = null;
+	try {
+	    flush();
+	} catch (SiteWhereException e) {
+	    failed = e;
+	}
+	int dropped = 0;
+	int unwritten = 0;
+	synchronized (statesByAssignmentId) {
+	    Iterator<Map.Entry<UUID, MaterializedState>> it = statesByAssignmentId.entrySet().iterator();
+	    while (it.hasNext()) {
+		Map.Entry<UUID, MaterializedState> entry = it.next();
+		if (partitions.contains(entry.getValue().getPartition())) {
+		    it.remove();
+		    clean.remove(entry.getKey());
+		    dropped++;
+		    if (dirty.remove(entry.getKey())) {
+			unwritten++;
+		    }
+		}
+	    }
+	}
+	getLogger().debug("Released state for " + dropped + " assignments in partitions " + partitions + ".");
+	if (failed != null) {
+	    throw new SiteWhereException(
+		    "Released partitions before state for " + unwritten + " assignments could be written.", failed);
+	}
+    }
+
+    /*
+     * @see
+     * com.sitewhere.event.DeviceEventManagementDecorator#getDeviceAssignmentState(
+     * java.util.UUID)
+     */
+    @Override
+    public IDeviceAssignmentState getDeviceAssignmentState(UUID assignmentId) throws SiteWhereException {
+	synchronized (statesByAssignmentId) {
+	    MaterializedState materialized = statesByAssignmentId.get(assignmentId);
+	    if (materialized != null) {
+		// Reads count as use when choosing states to drop.
+		clean.get(assignmentId);
+		return DeviceAssignmentState.copy(materialized.getState());
+	    }
+	}
+	if (!(getDelegate() instanceof IDeviceAssignmentStateStore)) {
+	    return null;
+	}
+	return super.getDeviceAssignmentState(assignmentId);
+    }
+
+    /**
+     * Load stored state for all assignments referenced by the events that are
+     * not already in memory in a single bulk read. Returns an empty map if
+     * persistence can not store state.
+     *
+     * @param events
+     * @return stored state indexed by assignment id
+     * @throws SiteWhereException
+     */
+    protected Map<UUID, IDeviceAssignmentState> getStoredStates(List<IDeviceEvent> events)
+	    throws SiteWhereException {
+	Map<UUID, IDeviceAssignmentState> stored = new HashMap<UUID, IDeviceAssignmentState>();
+	if (!(getDelegate() instanceof IDeviceAssignmentStateStore)) {
+	    return stored;
+	}
+	Set<UUID> missing = new HashSet<UUID>();
+	synchronized (statesByAssignmentId) {
+	    for (IDeviceEvent event : events) {
+		UUID id = event.getDeviceAssignmentId();
+		if ((id != null) && !statesByAssignmentId.containsKey(id)) {
+		    missing.add(id);
+		}
+	    }
+	}
+	if (missing.isEmpty()) {
+	    return stored;
+	}
+	IDeviceAssignmentStateStore store = (IDeviceAssignmentStateStore) getDelegate();
+	for (IDeviceAssignmentState state : store.getDeviceAssignmentStates(missing)) {
+	    stored.put(state.getDeviceAssignmentId(), state);
+	}
+	return stored;
+    }
+
+    /**
+     * Get in-memory state for an assignment, creating it from the stored state if
+     * not present. Must be called while holding the lock on the state map.
+     *
+     * @param assignmentId
+     * @param stored
+     * @param partition
+     * @return
+     * @throws SiteWhereException
+     */
+    protected MaterializedState getOrCreateState(UUID assignmentId, IDeviceAssignmentState stored, int partition)
+	    throws SiteWhereException {
+	MaterializedState materialized = statesByAssignmentId.get(assignmentId);
+	if (materialized == null) {
+	    DeviceAssignmentState state = (stored != null) ? DeviceAssignmentState.copy(stored)
+		    : new DeviceAssignmentState();
+	    state.setDeviceAssignmentId(assignmentId);
+	    materialized = new MaterializedState(state);
+	    statesByAssignmentId.put(assignmentId, materialized);
+	}
+	if (partition != UNKNOWN_PARTITION) {
+	    materialized.setPartition(partition);
+	}
+	return materialized;
+    }
+
+    /**
+     * Drop least recently used states that have been written until the number of
+     * states is within the limit. Only written states are visited, so this does
+     * not slow down when many states have unwritten changes. Must be called while
+     * holding the lock on the state map.
+     */
+    protected void evictStates() {
+	Iterator<UUID> it = clean.keySet().iterator();
+	while ((statesByAssignmentId.size() > getMaxStates()) && it.hasNext()) {
+	    statesByAssignmentId.remove(it.next());
+	    it.remove();
+	}
+    }
+
+    /**
+     * Indicates whether a date is after another. A missing date is treated as
+     * older than any other.
+     *
+     * @param date
+     * @param other
+     * @return
+     */
+    protected static boolean isAfter(Date date, Date other) {
+	if (date == null) {
+	    return false;
+	}
+	return (other == null) || !date.before(other);
+    }
+
+    /*
+     * @see com.sitewhere.server.lifecycle.LifecycleComponentDecorator#getLogger()
+     */
+    @Override
+    public Logger getLogger() {
+	return LOGGER;
+    }
+
+    public long getFlushIntervalMs() {
+	return flushIntervalMs;
+    }
+
+    public void setFlushIntervalMs(long flushIntervalMs) {
+	this.flushIntervalMs = flushIntervalMs;
+    }
+
+    public int getMaxStates() {
+	return maxStates;
+    }
+
+    public void setMaxStates(int maxStates) {
+	this.maxStates = maxStates;
+    }
+
+    /**
+     * In-memory state along with the partition its events are read from.
+     */
+    protected static class MaterializedState {
+
+	/** Last known state */
+	private DeviceAssignmentState state;
+
+	/** Partition events are read from */
+	private int partition = UNKNOWN_PARTITION;
+
+	/** Incremented each time an event is applied */
+	private long version;
+
+	public MaterializedState(DeviceAssignmentState state) {
+	    this.state = state;
+	}
+
+	public DeviceAssignmentState getState() {
+	    return state;
+	}
+
+	public int getPartition() {
+	    return partition;
+	}
+
+	public void setPartition(int partition) {
+	    this.partition = partition;
+	}
+
+	public long getVersion() {
+	    return version;
+	}
+
+	public void setVersion(long version) {
+	    this.version = version;
+	}
+    }
+
+    /** Used for naming state flusher thread */
+    private class FlusherThreadFactory implements ThreadFactory {
+
+	public Thread newThread(Runnable r) {
+	    return new Thread(r, "Assignment State Flusher");
+	}
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.streaming;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.sitewhere.event.spi.export.IDeviceEventCursor;
+import com.sitewhere.event.spi.streaming.IDeviceStreamDataSource;
+import com.sitewhere.rest.model.search.DateRangeSearchCriteria;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceEventManagement;
+import com.sitewhere.spi.device.event.IDeviceStreamData;
+
+/**
+ * Stream data source for backends that can only list stream data by page.
+ * Chunk data has to be loaded to determine chunk sizes, and chunks are only
+ * ordered within each page, so ordering across pages depends on the backend.
+ * 
+ * @author Derek
+ */
+public class PagedDeviceStreamDataSource implements IDeviceStreamDataSource {
+
+    /** Number of chunks loaded per page when computing sizes */
+    private static final int PAGE_SIZE = 100;
+
+    /** Device event management persistence */
+    private IDeviceEventManagement deviceEventManagement;
+
+    public PagedDeviceStreamDataSource(IDeviceEventManagement deviceEventManagement) {
+	this.deviceEventManagement = deviceEventManagement;
+    }
+
+    /*
+     * @see com.sitewhere.event.spi.streaming.IDeviceStreamDataSource#
+     * getDeviceStreamChunkSizes(com.sitewhere.spi.device.IDeviceAssignment,
+     * java.lang.String)
+     */
+    @Override
+    public SortedMap<Long, Long> getDeviceStreamChunkSizes(IDeviceAssignment assignment, String streamId)
+	    throws SiteWhereException {
+	SortedMap<Long, Long> sizes = new TreeMap<Long, Long>();
+	int page = 0;
+	List<IDeviceStreamData> results;
+	do {
+	    page++;
+	    results = listPage(assignment, streamId, page, PAGE_SIZE);
+	    for (IDeviceStreamData chunk : results) {
+		sizes.put(chunk.getSequenceNumber(), (long) ((chunk.getData() != null) ? chunk.getData().length : 0));
+	    }
+	} while (results.size() == PAGE_SIZE);
+	return sizes;
+    }
+
+    /*
+     * @see com.sitewhere.event.spi.streaming.IDeviceStreamDataSource#
+     * openDeviceStreamDataCursor(com.sitewhere.spi.device.IDeviceAssignment,
+     * java.lang.String, long, long, int)
+     */
+    @Override
+    public IDeviceEventCursor openDeviceStreamDataCursor(IDeviceAssignment assignment, String streamId,
+	    long firstSequenceNumber, long lastSequenceNumber, int batchSize) throws SiteWhereException {
+	return new PagedCursor(assignment, streamId, firstSequenceNumber, lastSequenceNumber, batchSize);
+    }
+
+    /**
+     * Load a page of stream data sorted by sequence number.
+     * 
+     * @param assignment
+     * @param streamId
+     * @param page
+     * @param pageSize
+     * @return
+     * @throws SiteWhereException
+     */
+    protected List<IDeviceStreamData> listPage(IDeviceAssignment assignment, String streamId, int page,
+	    int pageSize) throws SiteWhereException {
+	List<IDeviceStreamData> sorted = new ArrayList<IDeviceStreamData>(deviceEventManagement
+		.listDeviceStreamData(assignment, streamId, new DateRangeSearchCriteria(page, pageSize, null, null))
+		.getResults());
+	Collections.sort(sorted, new Comparator<IDeviceStreamData>() {
+
+	    @Override
+	    public int compare(IDeviceStreamData o1, IDeviceStreamData o2) {
+		return o1.getSequenceNumber().compareTo(o2.getSequenceNumber());
+	    }
+	});
+	return sorted;
+    }
+
+    /**
+     * Cursor that loads one page at a time and skips chunks outside of the
+     * requested range.
+     * 
+     * @author Derek
+     */
+    private class PagedCursor implements IDeviceEventCursor {
+
+	/** Assignment that owns the stream */
+	private IDeviceAssignment assignment;
+
+	/** Stream id */
+	private String streamId;
+
+	/** First sequence number returned */
+	private long firstSequenceNumber;
+
+	/** Last sequence number returned */
+	private long lastSequenceNumber;
+
+	/** Page size */
+	private int batchSize;
+
+	/** Last page number loaded */
+	private int page;
+
+	/** Indicates the last page loaded was the final one */
+	private boolean lastPage;
+
+	/** Chunks left in the current page */
+	private Iterator<IDeviceStreamData> current = Collections.emptyIterator();
+
+	public PagedCursor(IDeviceAssignment assignment, String streamId, long firstSequenceNumber,
+		long lastSequenceNumber, int batchSize) {
+	    this.assignment = assignment;
+	    this.streamId = streamId;
+	    this.firstSequenceNumber = firstSequenceNumber;
+	    this.lastSequenceNumber = lastSequenceNumber;
+	    this.batchSize = batchSize;
+	}
+
+	/*
+	 * @see com.sitewhere.event.spi.export.IDeviceEventCursor#next()
+	 */
+	@Override
+	public IDeviceEvent next() throws SiteWhereException {
+	    while (true) {
+		while (current.hasNext()) {
+		    IDeviceStreamData chunk = current.next();
+		    if ((chunk.getSequenceNumber() >= firstSequenceNumber)
+			    && (chunk.getSequenceNumber() <= lastSequenceNumber)) {
+			return chunk;
+		    }
+		}
+		if (lastPage) {
+		    return null;
+		}
+		page++;
+		List<IDeviceStreamData> results = listPage(assignment, streamId, page, batchSize);
+		this.lastPage = results.size() < batchSize;
+		this.current = results.iterator();
+	    }
+	}
+
+	/*
+	 * @see com.sitewhere.event.spi.export.IDeviceEventCursor#close()
+	 */
+	@Override
+	public void close() throws SiteWhereException {
+	    this.current = Collections.emptyIterator();
+	    this.lastPage = true;
+	}
+    }
+}
@@ -0,0 +1,540 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.grpc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sitewhere.event.spi.export.IDeviceEventCursor;
+import com.sitewhere.event.spi.export.IDeviceEventCursorSource;
+import com.sitewhere.grpc.model.CommonModel.GDateRangeSearchCriteria;
+import com.sitewhere.grpc.model.DeviceEventModel.GAnyDeviceEvent;
+import com.sitewhere.grpc.model.DeviceModel.GDeviceAssignment;
+import com.sitewhere.grpc.model.DeviceModel.GSite;
+import com.sitewhere.grpc.model.converter.EventModelConverter;
+import com.sitewhere.grpc.service.DeviceEventManagementGrpc;
+import com.sitewhere.grpc.service.GExportDeviceEventsRequest;
+import com.sitewhere.grpc.service.GExportDeviceEventsResponse;
+import com.sitewhere.rest.model.device.event.DeviceAlert;
+import com.sitewhere.rest.model.device.event.DeviceEvent;
+import com.sitewhere.rest.model.device.event.DeviceLocation;
+import com.sitewhere.rest.model.device.event.DeviceMeasurements;
+import com.sitewhere.rest.model.search.SearchResults;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.DeviceAssignmentType;
+import com.sitewhere.spi.device.event.AlertLevel;
+import com.sitewhere.spi.device.event.AlertSource;
+import com.sitewhere.spi.device.event.DeviceEventType;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceEventManagement;
+import com.sitewhere.spi.search.ISearchCriteria;
+
+import io.grpc.Context;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+
+public class DeviceEventExportSenderTest {
+
+    /** Time allowed for a call to finish */
+    private static final long CALL_WAIT_MS = 10 * 1000;
+
+    /** Persistence events are exported from */
+    private StubEventManagement management;
+
+    /** In-process server */
+    private Server server;
+
+    /** Channel to in-process server */
+    private ManagedChannel channel;
+
+    @Before
+    public void setUp() throws Exception {
+	this.management = new StubEventManagement();
+	String name = "export-" + UUID.randomUUID();
+	this.server = InProcessServerBuilder.forName(name).addService(new ExportService()).build().start();
+	this.channel = InProcessChannelBuilder.forName(name).build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+	channel.shutdownNow();
+	server.shutdownNow();
+    }
+
+    @Test
+    public void testEventsOnlyReadAsClientRequests() throws Exception {
+	for (int i = 0; i < 1000; i++) {
+	    management.assignmentEvents.add(location(i));
+	}
+	ExportObserver observer = export(assignmentRequest(10));
+	observer.call.request(4);
+	observer.awaitReceived(4);
+	Thread.sleep(200);
+	assertTrue("Received " + observer.received.size() + " events.", observer.received.size() <= 5);
+	assertEquals(1, management.pagesListed.get());
+
+	observer.call.request(Integer.MAX_VALUE);
+	observer.awaitCompleted();
+	assertEquals(1000, observer.received.size());
+	for (int i = 0; i < 1000; i++) {
+	    assertEquals("event-" + i, observer.received.get(i).getLocation().getEvent().getId());
+	}
+	assertEquals(101, management.pagesListed.get());
+    }
+
+    @Test
+    public void testCancelClosesCursor() throws Exception {
+	management.cursorSupported = true;
+	for (int i = 0; i < 1000; i++) {
+	    management.assignmentEvents.add(location(i));
+	}
+	Context.CancellableContext context = Context.current().withCancellation();
+	ExportObserver observer = context.call(() -> export(assignmentRequest(10)));
+	observer.call.request(2);
+	observer.awaitReceived(2);
+	context.cancel(null);
+
+	assertTrue("Cursor was not closed.", management.cursorClosed.await(CALL_WAIT_MS, TimeUnit.MILLISECONDS));
+	int read = management.cursorReads.get();
+	assertTrue("Read " + read + " events.", read <= 4);
+	Thread.sleep(200);
+	assertEquals(read, management.cursorReads.get());
+    }
+
+    @Test
+    public void testSiteEventsPagedByType() throws Exception {
+	for (int i = 0; i < 5; i++) {
+	    management.siteEvents.get(DeviceEventType.Measurements).add(measurements(i, "temp"));
+	}
+	for (int i = 0; i < 3; i++) {
+	    management.siteEvents.get(DeviceEventType.Location).add(location(10 + i));
+	}
+	for (int i = 0; i < 2; i++) {
+	    management.siteEvents.get(DeviceEventType.Alert).add(alert(20 + i));
+	}
+	GExportDeviceEventsRequest.Builder request = GExportDeviceEventsRequest.newBuilder();
+	request.setSite(GSite.newBuilder().setToken("site").build());
+	request.addEventTypes(EventModelConverter.asGrpcDeviceEventType(DeviceEventType.Alert));
+	request.addEventTypes(EventModelConverter.asGrpcDeviceEventType(DeviceEventType.Location));
+	request.setCriteria(GDateRangeSearchCriteria.newBuilder().setPageSize(2).build());
+
+	ExportObserver observer = export(request.build());
+	observer.call.request(Integer.MAX_VALUE);
+	observer.awaitCompleted();
+	assertEquals(Arrays.asList("event-10", "event-11", "event-12", "event-20", "event-21"), ids(observer));
+	assertEquals(Arrays.asList("listDeviceLocationsForSite:1", "listDeviceLocationsForSite:2",
+		"listDeviceAlertsForSite:1", "listDeviceAlertsForSite:2"), management.siteListings);
+    }
+
+    @Test
+    public void testMeasurementNamesTrimmed() throws Exception {
+	management.assignmentEvents.add(measurements(0, "temp", "humidity", "pressure"));
+	management.assignmentEvents.add(measurements(1, "humidity"));
+	management.assignmentEvents.add(location(2));
+	management.assignmentEvents.add(measurements(3, "temp"));
+	GExportDeviceEventsRequest.Builder request = assignmentRequest(10).toBuilder();
+	request.addMeasurementNames("temp");
+	request.addMeasurementNames("pressure");
+
+	ExportObserver observer = export(request.build());
+	observer.call.request(Integer.MAX_VALUE);
+	observer.awaitCompleted();
+	assertEquals(Arrays.asList("event-0", "event-2", "event-3"), ids(observer));
+	assertEquals(2, observer.received.get(0).getMeasurements().getMeasurementsCount());
+	assertTrue(observer.received.get(0).getMeasurements().getMeasurementsMap().containsKey("temp"));
+	assertTrue(observer.received.get(0).getMeasurements().getMeasurementsMap().containsKey("pressure"));
+	assertEquals(1, observer.received.get(2).getMeasurements().getMeasurementsCount());
+
+	// Stored events are not modified by trimming.
+	assertEquals(3, ((DeviceMeasurements) management.assignmentEvents.get(0)).getMeasurements().size());
+    }
+
+    /**
+     * Start an export call with inbound flow control left to the test.
+     *
+     * @param request
+     * @return
+     */
+    protected ExportObserver export(GExportDeviceEventsRequest request) {
+	ExportObserver observer = new ExportObserver();
+	DeviceEventManagementGrpc.newStub(channel).exportDeviceEvents(request, observer);
+	assertNotNull(observer.call);
+	return observer;
+    }
+
+    /**
+     * Create request for exporting the events of an assignment.
+     *
+     * @param pageSize
+     * @return
+     */
+    protected static GExportDeviceEventsRequest assignmentRequest(int pageSize) {
+	GExportDeviceEventsRequest.Builder request = GExportDeviceEventsRequest.newBuilder();
+	request.setAssignment(GDeviceAssignment.newBuilder().setToken("assignment").build());
+	request.setCriteria(GDateRangeSearchCriteria.newBuilder().setPageSize(pageSize).build());
+	return request.build();
+    }
+
+    /**
+     * Get ids of received events.
+     *
+     * @param observer
+     * @return
+     */
+    protected static List<String> ids(ExportObserver observer) {
+	List<String> ids = new ArrayList<String>();
+	for (GAnyDeviceEvent event : observer.received) {
+	    switch (event.getEventCase()) {
+	    case MEASUREMENTS:
+		ids.add(event.getMeasurements().getEvent().getId());
+		break;
+	    case LOCATION:
+		ids.add(event.getLocation().getEvent().getId());
+		break;
+	    case ALERT:
+		ids.add(event.getAlert().getEvent().getId());
+		break;
+	    default:
+		ids.add(null);
+	    }
+	}
+	return ids;
+    }
+
+    /**
+     * Create a location event.
+     *
+     * @param index
+     * @return
+     */
+    protected static DeviceLocation location(int index) {
+	DeviceLocation location = new DeviceLocation();
+	populate(location, index);
+	location.setLatitude(33.75);
+	location.setLongitude(-84.39);
+	return location;
+    }
+
+    /**
+     * Create an alert event.
+     *
+     * @param index
+     * @return
+     */
+    protected static DeviceAlert alert(int index) {
+	DeviceAlert alert = new DeviceAlert();
+	populate(alert, index);
+	alert.setSource(AlertSource.Device);
+	alert.setLevel(AlertLevel.Info);
+	alert.setType("test");
+	alert.setMessage("Test alert.");
+	return alert;
+    }
+
+    /**
+     * Create a measurements event with a value for each name.
+     *
+     * @param index
+     * @param names
+     * @return
+     */
+    protected static DeviceMeasurements measurements(int index, String... names) {
+	DeviceMeasurements measurements = new DeviceMeasurements();
+	populate(measurements, index);
+	for (int i = 0; i < names.length; i++) {
+	    measurements.addOrReplaceMeasurement(names[i], (double) i);
+	}
+	return measurements;
+    }
+
+    /**
+     * Set fields common to all events.
+     *
+     * @param event
+     * @param index
+     */
+    protected static void populate(DeviceEvent event, int index) {
+	event.setId("event-" + index);
+	event.setSiteId(UUID.randomUUID());
+	event.setDeviceAssignmentId(UUID.randomUUID());
+	event.setAssignmentType(DeviceAssignmentType.Unassociated);
+	event.setEventDate(new Date(1000000 - index));
+    }
+
+    /**
+     * Service that exports events from the stub persistence.
+     *
+     * @author Derek
+     */
+    private class ExportService extends DeviceEventManagementGrpc.DeviceEventManagementImplBase {
+
+	/*
+	 * @see com.sitewhere.grpc.service.DeviceEventManagementGrpc.
+	 * DeviceEventManagementImplBase#exportDeviceEvents(com.sitewhere.grpc.
+	 * service.GExportDeviceEventsRequest, io.grpc.stub.StreamObserver)
+	 */
+	@Override
+	public void exportDeviceEvents(GExportDeviceEventsRequest request,
+		StreamObserver<GExportDeviceEventsResponse> responseObserver) {
+	    try {
+		new DeviceEventExportSender(management.asDelegate(), request, responseObserver).send();
+	    } catch (Throwable t) {
+		responseObserver.onError(t);
+	    }
+	}
+    }
+
+    /**
+     * Client observer that records events and leaves inbound flow control to
+     * the test.
+     *
+     * @author Derek
+     */
+    private static class ExportObserver
+	    implements ClientResponseObserver<GExportDeviceEventsRequest, GExportDeviceEventsResponse> {
+
+	/** Call used to request events */
+	private ClientCallStreamObserver<GExportDeviceEventsRequest> call;
+
+	/** Events received */
+	private List<GAnyDeviceEvent> received = Collections.synchronizedList(new ArrayList<GAnyDeviceEvent>());
+
+	/** Error that ended call */
+	private volatile Throwable error;
+
+	/** Released when the call ends */
+	private CountDownLatch done = new CountDownLatch(1);
+
+	/*
+	 * @see io.grpc.stub.ClientResponseObserver#beforeStart(io.grpc.stub.
+	 * ClientCallStreamObserver)
+	 */
+	@Override
+	public void beforeStart(ClientCallStreamObserver<GExportDeviceEventsRequest> call) {
+	    this.call = call;
+	    call.disableAutoInboundFlowControl();
+	}
+
+	/*
+	 * @see io.grpc.stub.StreamObserver#onNext(java.lang.Object)
+	 */
+	@Override
+	public void onNext(GExportDeviceEventsResponse value) {
+	    received.add(value.getEvent());
+	}
+
+	/*
+	 * @see io.grpc.stub.StreamObserver#onError(java.lang.Throwable)
+	 */
+	@Override
+	public void onError(Throwable t) {
+	    this.error = t;
+	    done.countDown();
+	}
+
+	/*
+	 * @see io.grpc.stub.StreamObserver#onCompleted()
+	 */
+	@Override
+	public void onCompleted() {
+	    done.countDown();
+	}
+
+	/**
+	 * Wait until a number of events have been received.
+	 *
+	 * @param expected
+	 * @throws InterruptedException
+	 */
+	public void awaitReceived(int expected) throws InterruptedException {
+	    long deadline = System.currentTimeMillis() + CALL_WAIT_MS;
+	    while ((received.size() < expected) && (System.currentTimeMillis() < deadline)) {
+		Thread.sleep(10);
+	    }
+	    assertTrue("Received " + received.size() + " of " + expected + " events.", received.size() >= expected);
+	}
+
+	/**
+	 * Wait for the call to complete successfully.
+	 *
+	 * @throws InterruptedException
+	 */
+	public void awaitCompleted() throws InterruptedException {
+	    assertTrue("Call did not finish.", done.await(CALL_WAIT_MS, TimeUnit.MILLISECONDS));
+	    assertNull(error);
+	}
+    }
+
+    /**
+     * Event management persistence that lists events from memory, optionally
+     * supporting cursors, and records how they are read.
+     *
+     * @author Derek
+     */
+    private static class StubEventManagement implements InvocationHandler {
+
+	/** Events for the assignment, newest first */
+	private List<IDeviceEvent> assignmentEvents = new ArrayList<IDeviceEvent>();
+
+	/** Events for the site by type, newest first */
+	private Map<DeviceEventType, List<IDeviceEvent>> siteEvents = new HashMap<DeviceEventType, List<IDeviceEvent>>();
+
+	/** Indicates whether cursors are supported */
+	private boolean cursorSupported;
+
+	/** Number of assignment pages listed */
+	private AtomicInteger pagesListed = new AtomicInteger();
+
+	/** Site listings as method name and page number */
+	private List<String> siteListings = Collections.synchronizedList(new ArrayList<String>());
+
+	/** Number of events read from cursors */
+	private AtomicInteger cursorReads = new AtomicInteger();
+
+	/** Released when a cursor is closed */
+	private CountDownLatch cursorClosed = new CountDownLatch(1);
+
+	public StubEventManagement() {
+	    for (DeviceEventType type : DeviceEventType.values()) {
+		siteEvents.put(type, new ArrayList<IDeviceEvent>());
+	    }
+	}
+
+	/**
+	 * Create event management delegate backed by this stub.
+	 *
+	 * @return
+	 */
+	public IDeviceEventManagement asDelegate() {
+	    Class<?>[] interfaces = cursorSupported
+		    ? new Class<?>[] { IDeviceEventManagement.class, IDeviceEventCursorSource.class }
+		    : new Class<?>[] { IDeviceEventManagement.class };
+	    return (IDeviceEventManagement) Proxy.newProxyInstance(getClass().getClassLoader(), interfaces, this);
+	}
+
+	/*
+	 * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object,
+	 * java.lang.reflect.Method, java.lang.Object[])
+	 */
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+	    switch (method.getName()) {
+	    case "listDeviceEvents": {
+		pagesListed.incrementAndGet();
+		return page(assignmentEvents, (ISearchCriteria) args[1]);
+	    }
+	    case "listDeviceMeasurementsForSite":
+		return listSite(method, DeviceEventType.Measurements, (ISearchCriteria) args[1]);
+	    case "listDeviceLocationsForSite":
+		return listSite(method, DeviceEventType.Location, (ISearchCriteria) args[1]);
+	    case "listDeviceAlertsForSite":
+		return listSite(method, DeviceEventType.Alert, (ISearchCriteria) args[1]);
+	    case "listDeviceCommandInvocationsForSite":
+		return listSite(method, DeviceEventType.CommandInvocation, (ISearchCriteria) args[1]);
+	    case "listDeviceCommandResponsesForSite":
+		return listSite(method, DeviceEventType.CommandResponse, (ISearchCriteria) args[1]);
+	    case "listDeviceStateChangesForSite":
+		return listSite(method, DeviceEventType.StateChange, (ISearchCriteria) args[1]);
+	    case "openDeviceEventCursor":
+		return new StubCursor();
+	    case "hashCode":
+		return System.identityHashCode(proxy);
+	    case "equals":
+		return proxy == args[0];
+	    case "toString":
+		return "Stub event management";
+	    default:
+		throw new SiteWhereException("Unexpected call to " + method.getName() + ".");
+	    }
+	}
+
+	/**
+	 * List a page of site events of one type.
+	 *
+	 * @param method
+	 * @param type
+	 * @param criteria
+	 * @return
+	 */
+	protected SearchResults<IDeviceEvent> listSite(Method method, DeviceEventType type, ISearchCriteria criteria) {
+	    siteListings.add(method.getName() + ":" + criteria.getPageNumber());
+	    return page(siteEvents.get(type), criteria);
+	}
+
+	/**
+	 * Get a page of events.
+	 *
+	 * @param events
+	 * @param criteria
+	 * @return
+	 */
+	protected static SearchResults<IDeviceEvent> page(List<IDeviceEvent> events, ISearchCriteria criteria) {
+	    int start = Math.min(events.size(), (criteria.getPageNumber() - 1) * criteria.getPageSize());
+	    int end = Math.min(events.size(), start + criteria.getPageSize());
+	    return new SearchResults<IDeviceEvent>(new ArrayList<IDeviceEvent>(events.subList(start, end)),
+		    events.size());
+	}
+
+	/**
+	 * Cursor over assignment events that records reads.
+	 *
+	 * @author Derek
+	 */
+	private class StubCursor implements IDeviceEventCursor {
+
+	    /** Indicates cursor was closed */
+	    private boolean closed;
+
+	    /*
+	     * @see com.sitewhere.event.spi.export.IDeviceEventCursor#next()
+	     */
+	    @Override
+	    public IDeviceEvent next() throws SiteWhereException {
+		assertFalse("Cursor read after close.", closed);
+		int index = cursorReads.getAndIncrement();
+		return (index < assignmentEvents.size()) ? assignmentEvents.get(index) : null;
+	    }
+
+	    /*
+	     * @see com.sitewhere.event.spi.export.IDeviceEventCursor#close()
+	     */
+	    @Override
+	    public void close() throws SiteWhereException {
+		closed = true;
+		cursorClosed.countDown();
+	    }
+	}
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.event.state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sitewhere.event.spi.state.IDeviceAssignmentStateStore;
+import com.sitewhere.rest.model.device.DeviceAssignmentState;
+import com.sitewhere.rest.model.device.event.DeviceAlert;
+import com.sitewhere.rest.model.device.event.DeviceLocation;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDeviceAssignmentState;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceEventManagement;
+
+public class DeviceAssignmentStateMaterializerTest {
+
+    /** Partition events are read from */
+    private static final int PARTITION = 0;
+
+    /** Assignments used in tests */
+    private static final UUID A = UUID.randomUUID();
+    private static final UUID B = UUID.randomUUID();
+    private static final UUID C = UUID.randomUUID();
+
+    /** Store behind the materializer */
+    private StubStore store;
+
+    /** Materializer being tested */
+    private DeviceAssignmentStateMaterializer materializer;
+
+    @Before
+    public void setUp() {
+	this.store = new StubStore();
+	this.materializer = new DeviceAssignmentStateMaterializer(store.asDelegate());
+    }
+
+    @Test
+    public void testMissesLoadedInOneBulkRead() throws Exception {
+	DeviceAssignmentState existing = new DeviceAssignmentState();
+	existing.setDeviceAssignmentId(A);
+	existing.getLatestAlerts().add(alert(A, "stored", 1000));
+	store.stored.put(A, existing);
+
+	materializer.process(events(location(A, 2000), location(B, 2000), alert(A, "new", 3000)), PARTITION);
+	assertEquals(1, store.bulkReads.size());
+	assertEquals(new HashSet<UUID>(Arrays.asList(A, B)), new HashSet<UUID>(store.bulkReads.get(0)));
+
+	IDeviceAssignmentState state = materializer.getDeviceAssignmentState(A);
+	assertEquals(2, state.getLatestAlerts().size());
+	assertNotNull(state.getLastLocation());
+	assertEquals(new Date(3000), state.getLastInteractionDate());
+	assertEquals(0, store.singleReads);
+    }
+
+    @Test
+    public void testStatesInMemoryNotReloaded() throws Exception {
+	materializer.process(events(location(A, 1000)), PARTITION);
+	materializer.process(events(location(A, 2000), location(B, 2000)), PARTITION);
+	assertEquals(2, store.bulkReads.size());
+	assertEquals(Arrays.asList(B), new ArrayList<UUID>(store.bulkReads.get(1)));
+
+	materializer.process(events(location(A, 3000), location(B, 3000)), PARTITION);
+	assertEquals(2, store.bulkReads.size());
+    }
+
+    @Test
+    public void testDirtyStatesNotDropped() throws Exception {
+	materializer.setMaxStates(1);
+	materializer.process(events(location(A, 1000), location(B, 1000), location(C, 1000)), PARTITION);
+	assertInMemory(A, B, C);
+
+	materializer.flush();
+	assertEquals(3, store.written.size());
+	assertEquals(1, countInMemory(A, B, C));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedWrittenStateDropped() throws Exception {
+	materializer.setMaxStates(2);
+	materializer.process(events(location(A, 1000), location(B, 1000)), PARTITION);
+	materializer.flush();
+	assertInMemory(A, B);
+
+	// Reading A makes B the least recently used.
+	materializer.getDeviceAssignmentState(A);
+	materializer.process(events(location(C, 2000)), PARTITION);
+	assertInMemory(A, C);
+	assertNotInMemory(B);
+    }
+
+    @Test
+    public void testFailedFlushKeepsStatesDirty() throws Exception {
+	materializer.setMaxStates(1);
+	materializer.process(events(location(A, 1000), location(B, 1000)), PARTITION);
+	store.failWrites = true;
+	try {
+	    materializer.flush();
+	    fail("Expected flush to fail.");
+	} catch (SiteWhereException e) {
+	}
+	assertInMemory(A, B);
+
+	store.failWrites = false;
+	materializer.flush();
+	assertEquals(2, store.written.size());
+	assertEquals(1, countInMemory(A, B));
+    }
+
+    @Test
+    public void testReleaseDropsPartitionStates() throws Exception {
+	materializer.process(events(location(A, 1000)), 1);
+	materializer.process(events(location(B, 1000)), 2);
+	materializer.release(Arrays.asList(1));
+	assertEquals(2, store.written.size());
+	assertInMemory(B);
+	assertNotInMemory(A);
+	assertNotNull(store.stored.get(A));
+    }
+
+    /**
+     * Assert that state for each assignment is served from memory.
+     *
+     * @param ids
+     * @throws SiteWhereException
+     */
+    protected void assertInMemory(UUID... ids) throws SiteWhereException {
+	assertEquals(ids.length, countInMemory(ids));
+    }
+
+    /**
+     * Assert that state for each assignment is read from the store.
+     *
+     * @param ids
+     * @throws SiteWhereException
+     */
+    protected void assertNotInMemory(UUID... ids) throws SiteWhereException {
+	assertEquals(0, countInMemory(ids));
+    }
+
+    /**
+     * Count assignments whose state is served without reading the store.
+     *
+     * @param ids
+     * @return
+     * @throws SiteWhereException
+     */
+    protected int countInMemory(UUID... ids) throws SiteWhereException {
+	int count = 0;
+	for (UUID id : ids) {
+	    int before = store.singleReads;
+	    materializer.getDeviceAssignmentState(id);
+	    if (store.singleReads == before) {
+		count++;
+	    }
+	}
+	return count;
+    }
+
+    /**
+     * Create a list of events.
+     *
+     * @param events
+     * @return
+     */
+    protected static List<IDeviceEvent> events(IDeviceEvent... events) {
+	return Arrays.asList(events);
+    }
+
+    /**
+     * Create a location event for an assignment.
+     *
+     * @param assignmentId
+     * @param time
+     * @return
+     */
+    protected static DeviceLocation location(UUID assignmentId, long time) {
+	DeviceLocation location = new DeviceLocation();
+	location.setDeviceAssignmentId(assignmentId);
+	location.setEventDate(new Date(time));
+	location.setLatitude(33.75);
+	location.setLongitude(-84.39);
+	return location;
+    }
+
+    /**
+     * Create an alert event for an assignment.
+     *
+     * @param assignmentId
+     * @param type
+     * @param time
+     * @return
+     */
+    protected static DeviceAlert alert(UUID assignmentId, String type, long time) {
+	DeviceAlert alert = new DeviceAlert();
+	alert.setDeviceAssignmentId(assignmentId);
+	alert.setEventDate(new Date(time));
+	alert.setType(type);
+	alert.setMessage(type);
+	return alert;
+    }
+
+    /**
+     * Event management persistence that stores assignment state in memory and
+     * records how it is accessed.
+     *
+     * @author Derek
+     */
+    private static class StubStore implements InvocationHandler {
+
+	/** Stored state indexed by assignment id */
+	private Map<UUID, IDeviceAssignmentState> stored = new HashMap<UUID, IDeviceAssignmentState>();
+
+	/** Ids requested by each bulk read */
+	private List<Collection<UUID>> bulkReads = new ArrayList<Collection<UUID>>();
+
+	/** Number of single state reads */
+	private int singleReads;
+
+	/** All states written */
+	private List<IDeviceAssignmentState> written = new ArrayList<IDeviceAssignmentState>();
+
+	/** Indicates whether writes should fail */
+	private boolean failWrites;
+
+	/**
+	 * Create event management delegate backed by this store.
+	 *
+	 * @return
+	 */
+	public IDeviceEventManagement asDelegate() {
+	    return (IDeviceEventManagement) Proxy.newProxyInstance(getClass().getClassLoader(),
+		    new Class<?>[] { IDeviceEventManagement.class, IDeviceAssignmentStateStore.class }, this);
+	}
+
+	/*
+	 * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object,
+	 * java.lang.reflect.Method, java.lang.Object[])
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+	    switch (method.getName()) {
+	    case "getDeviceAssignmentStates": {
+		Collection<UUID> ids = (Collection<UUID>) args[0];
+		bulkReads.add(new ArrayList<UUID>(ids));
+		List<IDeviceAssignmentState> found = new ArrayList<IDeviceAssignmentState>();
+		for (UUID id : ids) {
+		    if (stored.containsKey(id)) {
+			found.add(stored.get(id));
+		    }
+		}
+		return found;
+	    }
+	    case "getDeviceAssignmentState": {
+		singleReads++;
+		return stored.get(args[0]);
+	    }
+	    case "storeDeviceAssignmentStates": {
+		if (failWrites) {
+		    throw new SiteWhereException("Write failed.");
+		}
+		for (IDeviceAssignmentState state : (Collection<IDeviceAssignmentState>) args[0]) {
+		    stored.put(state.getDeviceAssignmentId(), state);
+		    written.add(state);
+		}
+		return null;
+	    }
+	    case "hashCode":
+		return System.identityHashCode(proxy);
+	    case "equals":
+		return proxy == args[0];
+	    case "toString":
+		return "Stub store";
+	    default:
+		return null;
+	    }
+	}
+    }
+}
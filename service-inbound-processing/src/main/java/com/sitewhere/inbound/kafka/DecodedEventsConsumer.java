@@ -10,6 +10,8 @@ package com.sitewhere.inbound.kafka;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -31,6 +33,7 @@ import com.sitewhere.microservice.kafka.MicroserviceKafkaConsumer;
 import com.sitewhere.microservice.security.SystemUserRunnable;
 import com.sitewhere.rest.model.microservice.kafka.payload.InboundEventPayload;
 import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.IDeviceEvent;
 import com.sitewhere.spi.microservice.multitenant.IMicroserviceTenantEngine;
 import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 
@@ -57,6 +60,9 @@ public class DecodedEventsConsumer extends MicroserviceKafkaConsumer implements
     /** Executor */
     private ExecutorService executor;
 
+    /** Records received since offsets were last committed */
+    private List<InboundEventPayloadProcessor> inProgress = new ArrayList<InboundEventPayloadProcessor>();
+
     /** Inbound payload processing logic */
     private InboundPayloadProcessingLogic inboundPayloadProcessingLogic;
 
@@ -107,8 +113,12 @@ public class DecodedEventsConsumer extends MicroserviceKafkaConsumer implements
     @Override
     public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
 	super.start(monitor);
-	executor = Executors.newFixedThreadPool(CONCURRENT_EVENT_PROCESSING_THREADS,
-		new InboundEventProcessingThreadFactory());
+
+	// Shared consumer workers process records directly.
+	if (!isSharedMode()) {
+	    executor = Executors.newFixedThreadPool(CONCURRENT_EVENT_PROCESSING_THREADS,
+		    new InboundEventProcessingThreadFactory());
+	}
     }
 
     /*
@@ -137,7 +147,41 @@ public class DecodedEventsConsumer extends MicroserviceKafkaConsumer implements
      */
     @Override
     public void received(String key, byte[] message) throws SiteWhereException {
-	executor.execute(new InboundEventPayloadProcessor(getTenantEngine(), message));
+	InboundEventPayloadProcessor processor = new InboundEventPayloadProcessor(getTenantEngine(), message);
+	inProgress.add(processor);
+	if (isSharedMode()) {
+	    processor.run();
+	} else {
+	    executor.execute(processor);
+	}
+    }
+
+    /*
+     * Waits for each record to be processed and then for its event to be
+     * acknowledged, so all events in a batch are stored concurrently.
+     * 
+     * @see com.sitewhere.microservice.kafka.MicroserviceKafkaConsumer#
+     * awaitReceived()
+     */
+    @Override
+    protected void awaitReceived() throws SiteWhereException {
+	try {
+	    for (InboundEventPayloadProcessor processor : inProgress) {
+		try {
+		    processor.getRan().get();
+		    if (processor.getStored() != null) {
+			processor.getStored().get();
+		    }
+		} catch (ExecutionException e) {
+		    getLogger().error("Unable to store inbound event.", e.getCause());
+		}
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new SiteWhereException("Interrupted while waiting for inbound events to be processed.");
+	} finally {
+	    inProgress.clear();
+	}
     }
 
     /*
@@ -167,11 +211,29 @@ public class DecodedEventsConsumer extends MicroserviceKafkaConsumer implements
 	/** Encoded payload */
 	private byte[] encoded;
 
+	/** Completed once processing has finished */
+	private CompletableFuture<Void> ran = new CompletableFuture<Void>();
+
+	/** Completed once the event is stored (null if not sent for storage) */
+	private volatile CompletableFuture<IDeviceEvent> stored;
+
 	public InboundEventPayloadProcessor(IMicroserviceTenantEngine tenantEngine, byte[] encoded) {
 	    super(tenantEngine.getMicroservice(), tenantEngine.getTenant());
 	    this.encoded = encoded;
 	}
 
+	/*
+	 * @see com.sitewhere.microservice.security.SystemUserRunnable#run()
+	 */
+	@Override
+	public void run() {
+	    try {
+		super.run();
+	    } finally {
+		ran.complete(null);
+	    }
+	}
+
 	/*
 	 * @see com.sitewhere.microservice.security.SystemUserRunnable#
 	 * runAsSystemUser()
@@ -185,11 +247,19 @@ public class DecodedEventsConsumer extends MicroserviceKafkaConsumer implements
 		    getLogger().debug(
 			    "Received decoded event payload:\n\n" + MarshalUtils.marshalJsonAsPrettyString(payload));
 		}
-		getInboundPayloadProcessingLogic().process(grpc);
+		stored = getInboundPayloadProcessingLogic().process(grpc, encoded);
 	    } catch (SiteWhereException e) {
 		getLogger().error("Unable to parse inbound event payload.", e);
 	    }
 	}
+
+	public CompletableFuture<Void> getRan() {
+	    return ran;
+	}
+
+	public CompletableFuture<IDeviceEvent> getStored() {
+	    return stored;
+	}
     }
 
     /** Used for naming inbound event processing threads */
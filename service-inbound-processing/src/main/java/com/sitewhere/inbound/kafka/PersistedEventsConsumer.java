@@ -103,8 +103,12 @@ public class PersistedEventsConsumer extends MicroserviceKafkaConsumer implement
     @Override
     public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
 	super.start(monitor);
-	executor = Executors.newFixedThreadPool(CONCURRENT_EVENT_PROCESSING_THREADS,
-		new PersistedEventProcessingThreadFactory());
+
+	// Shared consumer workers process records directly.
+	if (!isSharedMode()) {
+	    executor = Executors.newFixedThreadPool(CONCURRENT_EVENT_PROCESSING_THREADS,
+		    new PersistedEventProcessingThreadFactory());
+	}
     }
 
     /*
@@ -128,7 +132,11 @@ public class PersistedEventsConsumer extends MicroserviceKafkaConsumer implement
      */
     @Override
     public void received(String key, byte[] message) throws SiteWhereException {
-	executor.execute(new PersistedEventPayloadProcessor(getTenantEngine(), message));
+	if (isSharedMode()) {
+	    new PersistedEventPayloadProcessor(getTenantEngine(), message).run();
+	} else {
+	    executor.execute(new PersistedEventPayloadProcessor(getTenantEngine(), message));
+	}
     }
 
     /*
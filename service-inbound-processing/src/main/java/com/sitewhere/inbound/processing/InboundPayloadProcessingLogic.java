@@ -7,9 +7,12 @@
  */
 package com.sitewhere.inbound.processing;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.sitewhere.grpc.client.event.DeviceEventStreamWriter;
 import com.sitewhere.grpc.kafka.model.KafkaModel.GInboundEventPayload;
 import com.sitewhere.grpc.model.DeviceEventModel.GAnyDeviceEventCreateRequest;
 import com.sitewhere.grpc.model.converter.EventModelConverter;
@@ -21,14 +24,7 @@ import com.sitewhere.spi.device.IDevice;
 import com.sitewhere.spi.device.IDeviceAssignment;
 import com.sitewhere.spi.device.IDeviceManagement;
 import com.sitewhere.spi.device.event.IDeviceEvent;
-import com.sitewhere.spi.device.event.IDeviceEventManagement;
-import com.sitewhere.spi.device.event.request.IDeviceAlertCreateRequest;
-import com.sitewhere.spi.device.event.request.IDeviceCommandInvocationCreateRequest;
-import com.sitewhere.spi.device.event.request.IDeviceCommandResponseCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceEventCreateRequest;
-import com.sitewhere.spi.device.event.request.IDeviceLocationCreateRequest;
-import com.sitewhere.spi.device.event.request.IDeviceMeasurementsCreateRequest;
-import com.sitewhere.spi.device.event.request.IDeviceStateChangeCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceStreamDataCreateRequest;
 import com.sitewhere.spi.device.streaming.IDeviceStream;
 
@@ -50,6 +46,9 @@ public class InboundPayloadProcessingLogic {
     /** Handle to inbound processing tenant engine */
     private IInboundProcessingTenantEngine tenantEngine;
 
+    /** Streams events to event management for storage */
+    private DeviceEventStreamWriter eventStreamWriter;
+
     public InboundPayloadProcessingLogic(IInboundProcessingTenantEngine tenantEngine) {
 	this.tenantEngine = tenantEngine;
     }
@@ -58,74 +57,100 @@ public class InboundPayloadProcessingLogic {
      * Process an inbound event payload.
      * 
      * @param payload
+     * @return
+     * @throws SiteWhereException
+     */
+    public CompletableFuture<IDeviceEvent> process(GInboundEventPayload payload) throws SiteWhereException {
+	return process(payload, null);
+    }
+
+    /**
+     * Process an inbound event payload. If the encoded form of the payload is
+     * available, it is forwarded as-is when the event has to be rerouted rather
+     * than marshaling the payload again. The returned future completes when the
+     * event has been stored (or immediately if the event was rerouted).
+     * 
+     * @param payload
+     * @param encoded
+     * @return
      * @throws SiteWhereException
      */
-    public void process(GInboundEventPayload payload) throws SiteWhereException {
+    public CompletableFuture<IDeviceEvent> process(GInboundEventPayload payload, byte[] encoded)
+	    throws SiteWhereException {
 	// Verify that device is registered.
 	IDevice device = getDeviceManagement().getDeviceByHardwareId(payload.getHardwareId());
 	if (device == null) {
-	    handleUnregisteredDevice(payload);
-	    return;
+	    handleUnregisteredDevice(payload, encoded);
+	    return CompletableFuture.completedFuture(null);
 	}
 
 	// Verify that device is assigned.
 	if (device.getDeviceAssignmentId() == null) {
-	    handleUnassignedDevice(payload);
-	    return;
+	    handleUnassignedDevice(payload, encoded);
+	    return CompletableFuture.completedFuture(null);
 	}
 
 	IDeviceAssignment assignment = getDeviceManagement().getDeviceAssignment(device.getDeviceAssignmentId());
 	if (assignment == null) {
 	    getLogger().info("Assignment information for " + payload.getHardwareId() + " is invalid.");
-	    handleUnassignedDevice(payload);
-	    return;
+	    handleUnassignedDevice(payload, encoded);
+	    return CompletableFuture.completedFuture(null);
 	}
 
 	// Store device event via the management APIs.
-	storeDeviceEvent(assignment, payload);
+	return storeDeviceEvent(assignment, payload);
     }
 
     /**
-     * Store a device event via the device event management APIs.
+     * Store a device event via the device event management APIs. Events are sent
+     * over a shared stream without waiting for the acknowledgement, so many
+     * events can be in flight at once. Callers must wait on the returned future
+     * before considering the inbound record processed.
      * 
      * @param assignment
      * @param payload
      * @return
      * @throws SiteWhereException
      */
-    protected IDeviceEvent storeDeviceEvent(IDeviceAssignment assignment, GInboundEventPayload payload)
-	    throws SiteWhereException {
+    protected CompletableFuture<IDeviceEvent> storeDeviceEvent(IDeviceAssignment assignment,
+	    GInboundEventPayload payload) throws SiteWhereException {
 	GAnyDeviceEventCreateRequest grpc = payload.getEvent();
 	IDeviceEventCreateRequest request = EventModelConverter.asApiDeviceEventCreateRequest(grpc);
+	IDeviceStream stream = null;
 	switch (request.getEventType()) {
 	case Measurements:
-	    return getDeviceEventManagement().addDeviceMeasurements(assignment,
-		    (IDeviceMeasurementsCreateRequest) request);
 	case Alert:
-	    return getDeviceEventManagement().addDeviceAlert(assignment, (IDeviceAlertCreateRequest) request);
 	case CommandInvocation:
-	    return getDeviceEventManagement().addDeviceCommandInvocation(assignment,
-		    (IDeviceCommandInvocationCreateRequest) request);
 	case CommandResponse:
-	    return getDeviceEventManagement().addDeviceCommandResponse(assignment,
-		    (IDeviceCommandResponseCreateRequest) request);
 	case Location:
-	    return getDeviceEventManagement().addDeviceLocation(assignment, (IDeviceLocationCreateRequest) request);
 	case StateChange:
-	    return getDeviceEventManagement().addDeviceStateChange(assignment,
-		    (IDeviceStateChangeCreateRequest) request);
+	    break;
 	case StreamData: {
 	    IDeviceStreamDataCreateRequest sdreq = (IDeviceStreamDataCreateRequest) request;
-	    IDeviceStream stream = getDeviceManagement().getDeviceStream(assignment.getId(), sdreq.getStreamId());
-	    if (stream != null) {
-		return getDeviceEventManagement().addDeviceStreamData(assignment, stream, sdreq);
-	    } else {
+	    stream = getDeviceManagement().getDeviceStream(assignment.getId(), sdreq.getStreamId());
+	    if (stream == null) {
 		throw new SiteWhereException("Stream data references invalid stream: " + sdreq.getStreamId());
 	    }
+	    break;
 	}
 	default:
 	    throw new SiteWhereException("Unknown event type sent for storage: " + request.getEventType().name());
 	}
+	return getEventStreamWriter().storeAsync(assignment, stream, request);
+    }
+
+    /**
+     * Get writer used to stream events to event management.
+     * 
+     * @return
+     */
+    protected synchronized DeviceEventStreamWriter getEventStreamWriter() {
+	if (eventStreamWriter == null) {
+	    eventStreamWriter = new DeviceEventStreamWriter(
+		    ((IInboundProcessingMicroservice) getTenantEngine().getMicroservice())
+			    .getDeviceEventManagementApiDemux());
+	}
+	return eventStreamWriter;
     }
 
     /**
@@ -133,12 +158,13 @@ public class InboundPayloadProcessingLogic {
      * information to an out-of-band topic to be processed later.
      * 
      * @param payload
+     * @param encoded
      * @throws SiteWhereException
      */
-    protected void handleUnregisteredDevice(GInboundEventPayload payload) throws SiteWhereException {
+    protected void handleUnregisteredDevice(GInboundEventPayload payload, byte[] encoded) throws SiteWhereException {
 	getLogger().info(
 		"Device " + payload.getHardwareId() + " is not registered. Forwarding to unregistered devices topic.");
-	byte[] marshaled = KafkaModelMarshaler.buildInboundEventPayloadMessage(payload);
+	byte[] marshaled = (encoded != null) ? encoded : KafkaModelMarshaler.buildInboundEventPayloadMessage(payload);
 	getTenantEngine().getUnregisteredDeviceEventsProducer().send(payload.getHardwareId(), marshaled);
 	return;
     }
@@ -148,12 +174,13 @@ public class InboundPayloadProcessingLogic {
      * information to an out-of-band topic to be processed later.
      * 
      * @param payload
+     * @param encoded
      * @throws SiteWhereException
      */
-    protected void handleUnassignedDevice(GInboundEventPayload payload) throws SiteWhereException {
+    protected void handleUnassignedDevice(GInboundEventPayload payload, byte[] encoded) throws SiteWhereException {
 	getLogger().info("Device " + payload.getHardwareId()
 		+ " is not currently assigned. Forwarding to unassigned devices topic.");
-	byte[] marshaled = KafkaModelMarshaler.buildInboundEventPayloadMessage(payload);
+	byte[] marshaled = (encoded != null) ? encoded : KafkaModelMarshaler.buildInboundEventPayloadMessage(payload);
 	getTenantEngine().getUnregisteredDeviceEventsProducer().send(payload.getHardwareId(), marshaled);
 	return;
     }
@@ -168,16 +195,6 @@ public class InboundPayloadProcessingLogic {
 		.getApiChannel();
     }
 
-    /**
-     * Get device event management implementation.
-     * 
-     * @return
-     */
-    protected IDeviceEventManagement getDeviceEventManagement() {
-	return ((IInboundProcessingMicroservice) getTenantEngine().getMicroservice()).getDeviceEventManagementApiDemux()
-		.getApiChannel();
-    }
-
     public Logger getLogger() {
 	return LOGGER;
     }
@@ -12,19 +12,18 @@ import org.apache.logging.log4j.Logger;
 
 import com.sitewhere.grpc.kafka.model.KafkaModel.GEnrichedEventPayload;
 import com.sitewhere.grpc.kafka.model.KafkaModel.GPersistedEventPayload;
+import com.sitewhere.grpc.model.DeviceEventModel.GDeviceEvent;
+import com.sitewhere.grpc.model.DeviceEventModel.GDeviceEventType;
+import com.sitewhere.grpc.model.converter.CommonModelConverter;
 import com.sitewhere.grpc.model.converter.EventModelConverter;
-import com.sitewhere.grpc.model.converter.KafkaModelConverter;
 import com.sitewhere.grpc.model.marshaling.KafkaModelMarshaler;
 import com.sitewhere.inbound.spi.microservice.IInboundProcessingMicroservice;
 import com.sitewhere.inbound.spi.microservice.IInboundProcessingTenantEngine;
 import com.sitewhere.rest.model.device.event.DeviceEventContext;
-import com.sitewhere.rest.model.microservice.kafka.payload.EnrichedEventPayload;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.IDevice;
 import com.sitewhere.spi.device.IDeviceAssignment;
 import com.sitewhere.spi.device.IDeviceManagement;
-import com.sitewhere.spi.device.event.DeviceEventType;
-import com.sitewhere.spi.device.event.IDeviceEvent;
 
 /**
  * Logic for taking a persisted event payload, enriching it with extra
@@ -47,14 +46,16 @@ public class OutboundPayloadEnrichmentLogic {
 
     /**
      * Process a persited event payload by enriching it and forwarding to a topic
-     * for further processing.
+     * for further processing. The event itself is passed through in GRPC form
+     * since enrichment only needs its common fields.
      * 
      * @param payload
      * @throws SiteWhereException
      */
     public void process(GPersistedEventPayload payload) throws SiteWhereException {
-	IDeviceEvent event = EventModelConverter.asApiGenericDeviceEvent(payload.getEvent());
-	IDeviceAssignment assignment = getDeviceManagement().getDeviceAssignment(event.getDeviceAssignmentId());
+	GDeviceEvent event = EventModelConverter.getGrpcDeviceEventCommon(payload.getEvent());
+	IDeviceAssignment assignment = getDeviceManagement()
+		.getDeviceAssignment(CommonModelConverter.asApiUuid(event.getDeviceAssignmentId()));
 	if (assignment == null) {
 	    // TODO: Is there a separate topic for these events?
 	    throw new SiteWhereException("Event references non-existent device assignment.");
@@ -77,17 +78,16 @@ public class OutboundPayloadEnrichmentLogic {
 	context.setAssignmentMetadata(assignment.getMetadata());
 
 	// Build enriched payload.
-	EnrichedEventPayload enriched = new EnrichedEventPayload();
-	enriched.setEventContext(context);
-	enriched.setEvent(event);
+	GEnrichedEventPayload.Builder grpc = GEnrichedEventPayload.newBuilder();
+	grpc.setContext(EventModelConverter.asGrpcDeviceEventContext(context));
+	grpc.setEvent(payload.getEvent());
 
 	// Send enriched payload to topic.
-	GEnrichedEventPayload grpc = KafkaModelConverter.asGrpcEnrichedEventPayload(enriched);
-	byte[] message = KafkaModelMarshaler.buildEnrichedEventPayloadMessage(grpc);
+	byte[] message = KafkaModelMarshaler.buildEnrichedEventPayloadMessage(grpc.build());
 	getTenantEngine().getEnrichedEventsProducer().send(device.getHardwareId(), message);
 
 	// Send enriched command invocations to topic.
-	if (event.getEventType() == DeviceEventType.CommandInvocation) {
+	if (event.getEventType() == GDeviceEventType.EVENT_TYPE_COMMAND_INVOCATION) {
 	    getTenantEngine().getEnrichedCommandInvocationsProducer().send(device.getHardwareId(), message);
 	}
     }
@@ -7,6 +7,10 @@
  */
 package com.sitewhere.connectors.aws.sqs;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -15,10 +19,16 @@ import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.regions.Region;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.sqs.AmazonSQSClient;
-import com.amazonaws.services.sqs.model.SendMessageRequest;
-import com.amazonaws.services.sqs.model.SendMessageResult;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
 import com.sitewhere.common.MarshalUtils;
 import com.sitewhere.connectors.FilteredOutboundConnector;
+import com.sitewhere.connectors.batch.OutboundMessage;
+import com.sitewhere.connectors.batch.OutboundMessageBatcher;
+import com.sitewhere.connectors.spi.batch.IBatchingOutboundConnector;
+import com.sitewhere.connectors.spi.batch.IOutboundBatchSender;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.event.IDeviceAlert;
 import com.sitewhere.spi.device.event.IDeviceCommandInvocation;
@@ -31,15 +41,27 @@ import com.sitewhere.spi.device.event.IDeviceStateChange;
 import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 
 /**
- * Outbound event processor that forwards events to Amazon SQS.
+ * Outbound event processor that forwards events to Amazon SQS. Events are
+ * queued and sent with SendMessageBatch so that each request carries up to ten
+ * messages.
  * 
  * @author Derek
  */
-public class SqsOutboundEventProcessor extends FilteredOutboundConnector {
+public class SqsOutboundEventProcessor extends FilteredOutboundConnector
+	implements IOutboundBatchSender, IBatchingOutboundConnector {
 
     /** Static logger instance */
     private static Logger LOGGER = LogManager.getLogger();
 
+    /** Max number of entries allowed in an SQS batch request */
+    private static final int SQS_MAX_BATCH_SIZE = 10;
+
+    /** Max total payload allowed in an SQS batch request */
+    private static final int SQS_MAX_BATCH_BYTES = 256 * 1024;
+
+    /** Batches messages sent to SQS */
+    private OutboundMessageBatcher batcher;
+
     /** SQS client */
     private AmazonSQSClient sqs;
 
@@ -78,6 +100,24 @@ public class SqsOutboundEventProcessor extends FilteredOutboundConnector {
 	sqs = new AmazonSQSClient(new BasicAWSCredentials(getAccessKey(), getSecretKey()), config);
 	Region usEast1 = Region.getRegion(Regions.US_EAST_1);
 	sqs.setRegion(usEast1);
+
+	batcher = new OutboundMessageBatcher(getConnectorId(), this);
+	batcher.setMaxBatchSize(SQS_MAX_BATCH_SIZE);
+	batcher.setMaxBatchBytes(SQS_MAX_BATCH_BYTES);
+	batcher.start();
+    }
+
+    /*
+     * @see
+     * com.sitewhere.connectors.FilteredOutboundConnector#stop(com.sitewhere.spi.
+     * server.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	if (batcher != null) {
+	    batcher.stop();
+	}
+	super.stop(monitor);
     }
 
     /*
@@ -147,17 +187,50 @@ public class SqsOutboundEventProcessor extends FilteredOutboundConnector {
     }
 
     /**
-     * Send an event message to SQS.
+     * Queue an event message to be sent to SQS.
      * 
      * @param event
      * @throws SiteWhereException
      */
     protected void sendSqsMessage(IDeviceEvent event) throws SiteWhereException {
-	SendMessageRequest message = new SendMessageRequest();
-	message.setMessageBody(MarshalUtils.marshalJsonAsString(event));
-	message.setQueueUrl(getQueueUrl());
-	SendMessageResult result = getSqs().sendMessage(message);
-	LOGGER.debug("Sent SQS message with id: " + result.getMessageId());
+	batcher.add(new OutboundMessage(String.valueOf(event.getId()), getQueueUrl(), MarshalUtils.marshalJson(event)));
+    }
+
+    /*
+     * @see com.sitewhere.connectors.spi.batch.IBatchingOutboundConnector#flush()
+     */
+    @Override
+    public void flush() throws SiteWhereException {
+	if (batcher != null) {
+	    batcher.flush();
+	}
+    }
+
+    /*
+     * @see
+     * com.sitewhere.connectors.spi.batch.IOutboundBatchSender#send(java.util.List)
+     */
+    @Override
+    public List<OutboundMessage> send(List<OutboundMessage> batch) throws SiteWhereException {
+	List<SendMessageBatchRequestEntry> entries = new ArrayList<SendMessageBatchRequestEntry>();
+	for (int i = 0; i < batch.size(); i++) {
+	    String body = new String(batch.get(i).getPayload(), StandardCharsets.UTF_8);
+	    entries.add(new SendMessageBatchRequestEntry(String.valueOf(i), body));
+	}
+	SendMessageBatchResult result = getSqs().sendMessageBatch(new SendMessageBatchRequest(getQueueUrl(), entries));
+	LOGGER.debug("Sent SQS batch with " + result.getSuccessful().size() + " messages.");
+
+	// Retry messages that failed due to service errors.
+	List<OutboundMessage> failed = new ArrayList<OutboundMessage>();
+	for (BatchResultErrorEntry error : result.getFailed()) {
+	    OutboundMessage message = batch.get(Integer.parseInt(error.getId()));
+	    if (Boolean.TRUE.equals(error.getSenderFault())) {
+		LOGGER.error("SQS rejected message for event " + message.getId() + ": " + error.getMessage());
+	    } else {
+		failed.add(message);
+	    }
+	}
+	return failed;
     }
 
     /*
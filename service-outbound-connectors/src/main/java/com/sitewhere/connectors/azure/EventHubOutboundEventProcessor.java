@@ -12,7 +12,9 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.net.URLEncoder;
+import java.util.ArrayList;
 import java.util.Hashtable;
+import java.util.List;
 
 import javax.jms.BytesMessage;
 import javax.jms.Connection;
@@ -30,7 +32,11 @@ import org.apache.logging.log4j.Logger;
 
 import com.sitewhere.common.MarshalUtils;
 import com.sitewhere.connectors.FilteredOutboundConnector;
+import com.sitewhere.connectors.batch.OutboundMessage;
+import com.sitewhere.connectors.batch.OutboundMessageBatcher;
 import com.sitewhere.connectors.spi.IOutboundConnector;
+import com.sitewhere.connectors.spi.batch.IBatchingOutboundConnector;
+import com.sitewhere.connectors.spi.batch.IOutboundBatchSender;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.event.IDeviceAlert;
 import com.sitewhere.spi.device.event.IDeviceCommandInvocation;
@@ -43,11 +49,13 @@ import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 
 /**
  * Implementation of {@link IOutboundConnector} that sends events to an
- * EventHub running on Azure.
+ * EventHub running on Azure. Events are queued and sent in batches from a
+ * single thread, which also keeps the JMS session confined to one thread.
  * 
  * @author Derek
  */
-public class EventHubOutboundEventProcessor extends FilteredOutboundConnector {
+public class EventHubOutboundEventProcessor extends FilteredOutboundConnector
+	implements IOutboundBatchSender, IBatchingOutboundConnector {
 
     /** Static logger instance */
     private static final Logger LOGGER = LogManager.getLogger();
@@ -71,6 +79,9 @@ public class EventHubOutboundEventProcessor extends FilteredOutboundConnector {
     private Session session;
     private MessageProducer sender;
 
+    /** Batches messages sent to EventHub */
+    private OutboundMessageBatcher batcher;
+
     /*
      * (non-Javadoc)
      * 
@@ -105,6 +116,9 @@ public class EventHubOutboundEventProcessor extends FilteredOutboundConnector {
 	    this.connection = factory.createConnection();
 	    this.session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
 	    this.sender = session.createProducer(destination);
+
+	    this.batcher = new OutboundMessageBatcher(getConnectorId(), this);
+	    batcher.start();
 	} catch (IOException e) {
 	    throw new SiteWhereException(e);
 	} catch (NamingException e) {
@@ -124,6 +138,9 @@ public class EventHubOutboundEventProcessor extends FilteredOutboundConnector {
     @Override
     public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
 	super.stop(monitor);
+	if (batcher != null) {
+	    batcher.stop();
+	}
 	if (sender != null) {
 	    try {
 		sender.close();
@@ -203,20 +220,44 @@ public class EventHubOutboundEventProcessor extends FilteredOutboundConnector {
     }
 
     /**
-     * Marshals an event to JSON and sends it to EventHub via AMQP.
+     * Marshals an event to JSON and queues it to be sent to EventHub via AMQP.
      * 
      * @param event
      * @throws SiteWhereException
      */
     protected void sendEvent(IDeviceEvent event) throws SiteWhereException {
-	try {
-	    BytesMessage message = session.createBytesMessage();
-	    message.writeBytes(MarshalUtils.marshalJson(event));
-	    message.setJMSMessageID("ID:" + event.getId());
-	    sender.send(message);
-	} catch (JMSException e) {
-	    throw new SiteWhereException(e);
+	batcher.add(new OutboundMessage(String.valueOf(event.getId()), null, MarshalUtils.marshalJson(event)));
+    }
+
+    /*
+     * @see com.sitewhere.connectors.spi.batch.IBatchingOutboundConnector#flush()
+     */
+    @Override
+    public void flush() throws SiteWhereException {
+	if (batcher != null) {
+	    batcher.flush();
+	}
+    }
+
+    /*
+     * @see
+     * com.sitewhere.connectors.spi.batch.IOutboundBatchSender#send(java.util.List)
+     */
+    @Override
+    public List<OutboundMessage> send(List<OutboundMessage> batch) throws SiteWhereException {
+	List<OutboundMessage> failed = new ArrayList<OutboundMessage>();
+	for (OutboundMessage outbound : batch) {
+	    try {
+		BytesMessage message = session.createBytesMessage();
+		message.writeBytes(outbound.getPayload());
+		message.setJMSMessageID("ID:" + outbound.getId());
+		sender.send(message);
+	    } catch (JMSException e) {
+		LOGGER.warn("Unable to send event " + outbound.getId() + " to EventHub.", e);
+		failed.add(outbound);
+	    }
 	}
+	return failed;
     }
 
     /*
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.connectors.batch;
+
+/**
+ * Marshaled message waiting to be delivered by an outbound connector.
+ * 
+ * @author Derek
+ */
+public class OutboundMessage {
+
+    /** Unique id of the source event */
+    private String id;
+
+    /** Destination (topic, queue, etc) if connector supports more than one */
+    private String route;
+
+    /** Message payload */
+    private byte[] payload;
+
+    public OutboundMessage(String id, String route, byte[] payload) {
+	this.id = id;
+	this.route = route;
+	this.payload = payload;
+    }
+
+    /**
+     * Get number of bytes the message counts against batch limits.
+     * 
+     * @return
+     */
+    public int getSize() {
+	return (payload != null) ? payload.length : 0;
+    }
+
+    public String getId() {
+	return id;
+    }
+
+    public String getRoute() {
+	return route;
+    }
+
+    public byte[] getPayload() {
+	return payload;
+    }
+}
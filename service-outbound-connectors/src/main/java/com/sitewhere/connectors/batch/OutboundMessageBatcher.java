@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.connectors.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sitewhere.connectors.spi.batch.IOutboundBatchSender;
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Collects messages produced by an outbound connector and hands them to an
+ * {@link IOutboundBatchSender} in batches. A batch is sent when it reaches the
+ * maximum message count or byte size, or when the linger interval has passed
+ * since its first message was queued. Messages returned by the sender as
+ * failed are retried with a linear backoff up to a maximum number of attempts.
+ * Messages that still fail are counted and reported by the next call to
+ * {@link #flush()}, so callers can avoid acknowledging the source of the
+ * messages until they have been delivered.
+ * 
+ * The queue in front of the sender thread is bounded, so callers block rather
+ * than buffering without limit when the external system falls behind.
+ * 
+ * @author Derek
+ */
+public class OutboundMessageBatcher {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Default max number of messages per batch */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+    /** Default max number of payload bytes per batch */
+    public static final int DEFAULT_MAX_BATCH_BYTES = 1024 * 1024;
+
+    /** Default time to wait for a batch to fill */
+    public static final long DEFAULT_LINGER_MS = 50;
+
+    /** Default number of messages that can be queued */
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+
+    /** Default number of times a failed message is retried */
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    /** Default delay between retries (multiplied by attempt number) */
+    public static final long DEFAULT_RETRY_BACKOFF_MS = 250;
+
+    /** Interval at which idle sender thread checks for shutdown */
+    private static final long IDLE_POLL_MS = 500;
+
+    /** Name used for sender thread */
+    private String name;
+
+    /** Delivers batches */
+    private IOutboundBatchSender sender;
+
+    /** Max number of messages per batch */
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+    /** Max number of payload bytes per batch */
+    private int maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+
+    /** Time to wait for a batch to fill */
+    private long lingerMs = DEFAULT_LINGER_MS;
+
+    /** Number of messages that can be queued */
+    private int queueSize = DEFAULT_QUEUE_SIZE;
+
+    /** Number of times a failed message is retried */
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+
+    /** Delay between retries */
+    private long retryBackoffMs = DEFAULT_RETRY_BACKOFF_MS;
+
+    /** Messages waiting to be batched */
+    private BlockingQueue<OutboundMessage> queue;
+
+    /** Runs sender thread */
+    private ExecutorService executor;
+
+    /** Indicates whether new messages are accepted */
+    private volatile boolean running = false;
+
+    /** Guards delivery progress counters */
+    private Object progress = new Object();
+
+    /** Number of messages added */
+    private long added;
+
+    /** Number of messages delivered or given up on */
+    private long settled;
+
+    /** Number of messages given up on since the last flush */
+    private long failedSinceFlush;
+
+    public OutboundMessageBatcher(String name, IOutboundBatchSender sender) {
+	this.name = name;
+	this.sender = sender;
+    }
+
+    /**
+     * Start sender thread.
+     * 
+     * @throws SiteWhereException
+     */
+    public void start() throws SiteWhereException {
+	queue = new ArrayBlockingQueue<OutboundMessage>(getQueueSize());
+	running = true;
+	executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "Outbound Batcher '" + name + "'"));
+	executor.execute(new BatchSender());
+    }
+
+    /**
+     * Stop accepting messages and wait for queued messages to be delivered.
+     * 
+     * @throws SiteWhereException
+     */
+    public void stop() throws SiteWhereException {
+	running = false;
+	if (executor != null) {
+	    executor.shutdown();
+	    try {
+		if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+		    LOGGER.warn("Outbound batcher '" + name + "' did not drain within timeout period.");
+		    executor.shutdownNow();
+		}
+	    } catch (InterruptedException e) {
+		executor.shutdownNow();
+		Thread.currentThread().interrupt();
+	    }
+	}
+    }
+
+    /**
+     * Queue a message for delivery. Blocks if the queue is full.
+     * 
+     * @param message
+     * @throws SiteWhereException
+     */
+    public void add(OutboundMessage message) throws SiteWhereException {
+	if (!running) {
+	    throw new SiteWhereException("Outbound batcher '" + name + "' is not running.");
+	}
+
+	// Count before queueing so a flush never sees a message settle uncounted.
+	synchronized (progress) {
+	    added++;
+	}
+	try {
+	    queue.put(message);
+	} catch (InterruptedException e) {
+	    synchronized (progress) {
+		added--;
+	    }
+	    Thread.currentThread().interrupt();
+	    throw new SiteWhereException("Interrupted while queueing outbound message.");
+	}
+    }
+
+    /**
+     * Wait until every message added before the call has been delivered or given
+     * up on. Messages are sent in the order they were added, so this only waits
+     * on the sender thread. Intended to be called from a single thread.
+     * 
+     * @throws SiteWhereException
+     *             if any message was given up on since the previous flush or the
+     *             sender stopped before the messages were sent
+     */
+    public void flush() throws SiteWhereException {
+	synchronized (progress) {
+	    long target = added;
+	    while (settled < target) {
+		if ((executor == null) || executor.isTerminated()) {
+		    throw new SiteWhereException("Outbound batcher '" + name + "' stopped with " + (target - settled)
+			    + " messages not delivered.");
+		}
+		try {
+		    progress.wait(IDLE_POLL_MS);
+		} catch (InterruptedException e) {
+		    Thread.currentThread().interrupt();
+		    throw new SiteWhereException("Interrupted while waiting for outbound messages to be delivered.");
+		}
+	    }
+	    if (failedSinceFlush > 0) {
+		long failed = failedSinceFlush;
+		failedSinceFlush = 0;
+		throw new SiteWhereException(
+			"Outbound batcher '" + name + "' could not deliver " + failed + " messages.");
+	    }
+	}
+    }
+
+    /**
+     * Record that messages have been delivered or given up on.
+     * 
+     * @param count
+     * @param failed
+     */
+    protected void settle(int count, int failed) {
+	synchronized (progress) {
+	    settled += count;
+	    failedSinceFlush += failed;
+	    progress.notifyAll();
+	}
+    }
+
+    /**
+     * Thread that assembles batches and delivers them.
+     * 
+     * @author Derek
+     */
+    private class BatchSender implements Runnable {
+
+	/** Message that did not fit in the previous batch */
+	private OutboundMessage carry;
+
+	@Override
+	public void run() {
+	    while (running || (carry != null) || !queue.isEmpty()) {
+		try {
+		    List<OutboundMessage> batch = nextBatch();
+		    if (!batch.isEmpty()) {
+			deliver(batch);
+		    }
+		} catch (InterruptedException e) {
+		    LOGGER.warn("Outbound batcher '" + name + "' interrupted with " + queue.size()
+			    + " messages queued.");
+		    return;
+		}
+	    }
+	}
+
+	/**
+	 * Wait for the next batch to fill or for the linger interval to pass.
+	 * 
+	 * @return
+	 * @throws InterruptedException
+	 */
+	protected List<OutboundMessage> nextBatch() throws InterruptedException {
+	    List<OutboundMessage> batch = new ArrayList<OutboundMessage>();
+	    OutboundMessage first = (carry != null) ? carry : queue.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+	    carry = null;
+	    if (first == null) {
+		return batch;
+	    }
+	    batch.add(first);
+	    int bytes = first.getSize();
+	    long deadline = System.currentTimeMillis() + getLingerMs();
+	    while (batch.size() < getMaxBatchSize()) {
+		long remaining = deadline - System.currentTimeMillis();
+		OutboundMessage next = (remaining > 0) ? queue.poll(remaining, TimeUnit.MILLISECONDS) : queue.poll();
+		if (next == null) {
+		    break;
+		}
+		if ((bytes + next.getSize()) > getMaxBatchBytes()) {
+		    carry = next;
+		    break;
+		}
+		batch.add(next);
+		bytes += next.getSize();
+	    }
+	    return batch;
+	}
+
+	/**
+	 * Deliver a batch, retrying messages that failed.
+	 * 
+	 * @param batch
+	 * @throws InterruptedException
+	 */
+	protected void deliver(List<OutboundMessage> batch) throws InterruptedException {
+	    List<OutboundMessage> pending = batch;
+	    for (int attempt = 1;; attempt++) {
+		try {
+		    pending = sender.send(pending);
+		} catch (SiteWhereException | RuntimeException e) {
+		    LOGGER.warn("Outbound batcher '" + name + "' failed to send batch of " + pending.size()
+			    + " messages (attempt " + attempt + ").", e);
+		}
+		if (pending.isEmpty()) {
+		    settle(batch.size(), 0);
+		    return;
+		}
+		if (attempt > getMaxRetries()) {
+		    LOGGER.error("Outbound batcher '" + name + "' could not deliver " + pending.size()
+			    + " messages after " + attempt + " attempts.");
+		    settle(batch.size(), pending.size());
+		    return;
+		}
+		LOGGER.debug("Retrying " + pending.size() + " failed messages.");
+		Thread.sleep(getRetryBackoffMs() * attempt);
+	    }
+	}
+    }
+
+    public int getMaxBatchSize() {
+	return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+	this.maxBatchSize = maxBatchSize;
+    }
+
+    public int getMaxBatchBytes() {
+	return maxBatchBytes;
+    }
+
+    public void setMaxBatchBytes(int maxBatchBytes) {
+	this.maxBatchBytes = maxBatchBytes;
+    }
+
+    public long getLingerMs() {
+	return lingerMs;
+    }
+
+    public void setLingerMs(long lingerMs) {
+	this.lingerMs = lingerMs;
+    }
+
+    public int getQueueSize() {
+	return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+	this.queueSize = queueSize;
+    }
+
+    public int getMaxRetries() {
+	return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+	this.maxRetries = maxRetries;
+    }
+
+    public long getRetryBackoffMs() {
+	return retryBackoffMs;
+    }
+
+    public void setRetryBackoffMs(long retryBackoffMs) {
+	this.retryBackoffMs = retryBackoffMs;
+    }
+}
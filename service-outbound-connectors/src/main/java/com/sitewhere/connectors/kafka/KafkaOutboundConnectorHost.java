@@ -10,8 +10,10 @@ package com.sitewhere.connectors.kafka;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -21,6 +23,7 @@ import org.apache.logging.log4j.Logger;
 
 import com.sitewhere.common.MarshalUtils;
 import com.sitewhere.connectors.spi.IOutboundConnector;
+import com.sitewhere.connectors.spi.batch.IBatchingOutboundConnector;
 import com.sitewhere.grpc.kafka.model.KafkaModel.GEnrichedEventPayload;
 import com.sitewhere.grpc.model.converter.KafkaModelConverter;
 import com.sitewhere.grpc.model.marshaling.KafkaModelMarshaler;
@@ -42,7 +45,10 @@ import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 
 /**
  * Kafka host container that reads from the enriched events topic and forwards
- * the messages to a wrapped outbound connector.
+ * the messages to a wrapped outbound connector. Offsets for a poll are only
+ * committed once the connector has processed every message from it and, for
+ * connectors that deliver asynchronously, has flushed them. If a flush fails,
+ * the messages from the poll are passed to the connector again.
  * 
  * @author Derek
  */
@@ -57,9 +63,21 @@ public class KafkaOutboundConnectorHost extends MicroserviceKafkaConsumer {
     /** Get wrapped outbound connector implementation */
     private IOutboundConnector outboundConnector;
 
+    /** Max time to wait between redelivery attempts */
+    private static final long MAX_REDELIVERY_BACKOFF_MS = 30 * 1000;
+
     /** Executor */
     private ExecutorService executor;
 
+    /** Messages received since offsets were last committed */
+    private List<byte[]> polled = new ArrayList<byte[]>();
+
+    /** Processing of messages received since offsets were last committed */
+    private List<Future<?>> processing = new ArrayList<Future<?>>();
+
+    /** Indicates host is stopping */
+    private volatile boolean stopping = false;
+
     public KafkaOutboundConnectorHost(IMicroservice microservice, IMicroserviceTenantEngine tenantEngine,
 	    IOutboundConnector outboundConnector) {
 	super(microservice, tenantEngine);
@@ -116,6 +134,7 @@ public class KafkaOutboundConnectorHost extends MicroserviceKafkaConsumer {
      */
     @Override
     public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	this.stopping = false;
 	super.start(monitor);
 	startNestedComponent(getOutboundConnector(), monitor, true);
 	executor = Executors.newFixedThreadPool(getOutboundConnector().getNumProcessingThreads(),
@@ -130,6 +149,7 @@ public class KafkaOutboundConnectorHost extends MicroserviceKafkaConsumer {
      */
     @Override
     public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	this.stopping = true;
 	super.stop(monitor);
 	if (executor != null) {
 	    executor.shutdown();
@@ -149,7 +169,70 @@ public class KafkaOutboundConnectorHost extends MicroserviceKafkaConsumer {
      */
     @Override
     public void received(String key, byte[] message) throws SiteWhereException {
-	executor.execute(new EventPayloadProcessor(message));
+	polled.add(message);
+	processing.add(executor.submit(new EventPayloadProcessor(message)));
+    }
+
+    /*
+     * @see com.sitewhere.microservice.kafka.MicroserviceKafkaConsumer#
+     * awaitReceived()
+     */
+    @Override
+    protected void awaitReceived() throws SiteWhereException {
+	try {
+	    int attempt = 0;
+	    while (true) {
+		awaitProcessing();
+		try {
+		    if (getOutboundConnector() instanceof IBatchingOutboundConnector) {
+			((IBatchingOutboundConnector) getOutboundConnector()).flush();
+		    }
+		    return;
+		} catch (SiteWhereException e) {
+		    if (stopping) {
+			throw new SiteWhereException("Outbound connector host stopped before " + polled.size()
+				+ " messages were delivered.", e);
+		    }
+		    attempt++;
+		    long backoff = Math.min(attempt * 1000L, MAX_REDELIVERY_BACKOFF_MS);
+		    getLogger().warn("Outbound connector '" + getOutboundConnector().getConnectorId()
+			    + "' did not deliver all events. Passing " + polled.size() + " messages in again after "
+			    + backoff + "ms.", e);
+		    try {
+			Thread.sleep(backoff);
+		    } catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new SiteWhereException("Interrupted while redelivering outbound messages.", ie);
+		    }
+		    for (byte[] message : polled) {
+			processing.add(executor.submit(new EventPayloadProcessor(message)));
+		    }
+		}
+	    }
+	} finally {
+	    polled.clear();
+	    processing.clear();
+	}
+    }
+
+    /**
+     * Wait for processing of received messages to complete.
+     * 
+     * @throws SiteWhereException
+     */
+    protected void awaitProcessing() throws SiteWhereException {
+	try {
+	    for (Future<?> future : processing) {
+		future.get();
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new SiteWhereException("Interrupted while processing outbound messages.", e);
+	} catch (ExecutionException e) {
+	    throw new SiteWhereException("Error processing outbound messages.", e.getCause());
+	} finally {
+	    processing.clear();
+	}
     }
 
     /*
@@ -7,6 +7,7 @@
  */
 package com.sitewhere.connectors.mqtt;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -23,7 +24,11 @@ import com.sitewhere.common.MarshalUtils;
 import com.sitewhere.communication.mqtt.IMqttComponent;
 import com.sitewhere.communication.mqtt.MqttLifecycleComponent;
 import com.sitewhere.connectors.FilteredOutboundConnector;
+import com.sitewhere.connectors.batch.OutboundMessage;
+import com.sitewhere.connectors.batch.OutboundMessageBatcher;
 import com.sitewhere.connectors.spi.IMulticastingOutboundConnector;
+import com.sitewhere.connectors.spi.batch.IBatchingOutboundConnector;
+import com.sitewhere.connectors.spi.batch.IOutboundBatchSender;
 import com.sitewhere.connectors.spi.multicast.IDeviceEventMulticaster;
 import com.sitewhere.connectors.spi.routing.IRouteBuilder;
 import com.sitewhere.spi.SiteWhereException;
@@ -39,16 +44,25 @@ import com.sitewhere.spi.device.event.IDeviceMeasurements;
 import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 
 /**
- * Outbound connector that sends events to an MQTT topic.
+ * Outbound connector that sends events to an MQTT topic. Publishes are grouped
+ * into batches that are issued without waiting on one another, then awaited
+ * together, so the batch size acts as the window of in-flight QoS 1 messages.
  * 
  * @author Derek
  */
 public class MqttOutboundConnector extends FilteredOutboundConnector
-	implements IMulticastingOutboundConnector<String>, IMqttComponent {
+	implements IMulticastingOutboundConnector<String>, IMqttComponent, IOutboundBatchSender,
+	IBatchingOutboundConnector {
 
     /** Static logger instance */
     private static Logger LOGGER = LogManager.getLogger();
 
+    /** Default max number of unacknowledged publishes */
+    private static final int DEFAULT_MAX_IN_FLIGHT = 100;
+
+    /** Time to wait for broker to acknowledge a publish */
+    private static final long PUBLISH_TIMEOUT_SECS = 10;
+
     private String protocol = MqttLifecycleComponent.DEFAULT_PROTOCOL;
 
     /** Host name */
@@ -93,6 +107,12 @@ public class MqttOutboundConnector extends FilteredOutboundConnector
     /** Route builder for generating topics */
     private IRouteBuilder<String> routeBuilder;
 
+    /** Max number of unacknowledged publishes */
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+    /** Batches publishes */
+    private OutboundMessageBatcher batcher;
+
     /*
      * @see
      * com.sitewhere.connectors.FilteredOutboundConnector#start(com.sitewhere.spi.
@@ -130,6 +150,21 @@ public class MqttOutboundConnector extends FilteredOutboundConnector
 	    throw new SiteWhereException("Unable to connect to MQTT broker.", e);
 	}
 	LOGGER.info("Connected to MQTT broker.");
+
+	batcher = createBatcher();
+	batcher.start();
+    }
+
+    /**
+     * Create batcher that groups publishes. Only one batch is sent at a time, so
+     * limiting the batch size limits the number of unacknowledged publishes.
+     * 
+     * @return
+     */
+    protected OutboundMessageBatcher createBatcher() {
+	OutboundMessageBatcher batcher = new OutboundMessageBatcher(getConnectorId(), this);
+	batcher.setMaxBatchSize(getMaxInFlight());
+	return batcher;
     }
 
     /*
@@ -149,6 +184,11 @@ public class MqttOutboundConnector extends FilteredOutboundConnector
 	    routeBuilder.lifecycleStop(monitor);
 	}
 
+	// Deliver queued messages before disconnecting.
+	if (batcher != null) {
+	    batcher.stop();
+	}
+
 	if (connection != null) {
 	    try {
 		connection.disconnect();
@@ -226,32 +266,68 @@ public class MqttOutboundConnector extends FilteredOutboundConnector
      * @throws SiteWhereException
      */
     protected void sendEvent(IDeviceEvent event) throws SiteWhereException {
+	byte[] payload = MarshalUtils.marshalJson(event);
 	if (getMulticaster() != null) {
 	    IDeviceAssignment assignment = getDeviceManagement().getDeviceAssignment(event.getDeviceAssignmentId());
 	    IDevice device = getDeviceManagement().getDevice(assignment.getDeviceId());
 	    List<String> routes = getMulticaster().calculateRoutes(event, device, assignment);
 	    for (String route : routes) {
-		publish(event, route);
+		publish(event, payload, route);
 	    }
 	} else {
 	    if (getRouteBuilder() != null) {
 		IDeviceAssignment assignment = getDeviceManagement().getDeviceAssignment(event.getDeviceAssignmentId());
 		IDevice device = getDeviceManagement().getDevice(assignment.getDeviceId());
-		publish(event, getRouteBuilder().build(event, device, assignment));
+		publish(event, payload, getRouteBuilder().build(event, device, assignment));
 	    } else {
-		publish(event, getTopic());
+		publish(event, payload, getTopic());
 	    }
 	}
     }
 
     /**
-     * Publish an event to an MQTT topic.
+     * Queue an event to be published to an MQTT topic.
      * 
      * @param event
+     * @param payload
+     * @param topic
      * @throws SiteWhereException
      */
-    protected void publish(IDeviceEvent event, String topic) throws SiteWhereException {
-	connection.publish(topic, MarshalUtils.marshalJson(event), QoS.AT_LEAST_ONCE, false);
+    protected void publish(IDeviceEvent event, byte[] payload, String topic) throws SiteWhereException {
+	batcher.add(new OutboundMessage(String.valueOf(event.getId()), topic, payload));
+    }
+
+    /*
+     * @see com.sitewhere.connectors.spi.batch.IBatchingOutboundConnector#flush()
+     */
+    @Override
+    public void flush() throws SiteWhereException {
+	if (batcher != null) {
+	    batcher.flush();
+	}
+    }
+
+    /*
+     * @see
+     * com.sitewhere.connectors.spi.batch.IOutboundBatchSender#send(java.util.List)
+     */
+    @Override
+    public List<OutboundMessage> send(List<OutboundMessage> batch) throws SiteWhereException {
+	List<Future<Void>> publishes = new ArrayList<Future<Void>>();
+	for (OutboundMessage message : batch) {
+	    publishes.add(getConnection().publish(message.getRoute(), message.getPayload(), QoS.AT_LEAST_ONCE, false));
+	}
+	List<OutboundMessage> failed = new ArrayList<OutboundMessage>();
+	for (int i = 0; i < batch.size(); i++) {
+	    try {
+		publishes.get(i).await(PUBLISH_TIMEOUT_SECS, TimeUnit.SECONDS);
+	    } catch (Exception e) {
+		LOGGER.warn("Publish of event " + batch.get(i).getId() + " to '" + batch.get(i).getRoute()
+			+ "' was not acknowledged.", e);
+		failed.add(batch.get(i));
+	    }
+	}
+	return failed;
     }
 
     /*
@@ -405,4 +481,16 @@ public class MqttOutboundConnector extends FilteredOutboundConnector
     public void setTopic(String topic) {
 	this.topic = topic;
     }
+
+    protected FutureConnection getConnection() {
+	return connection;
+    }
+
+    public int getMaxInFlight() {
+	return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+	this.maxInFlight = maxInFlight;
+    }
 }
\ No newline at end of file
@@ -17,12 +17,13 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.StreamingResponseCallback;
 import org.apache.solr.client.solrj.impl.NoOpResponseParser;
 import org.apache.solr.client.solrj.request.QueryRequest;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.client.solrj.response.SolrPingResponse;
 import org.apache.solr.common.SolrDocument;
-import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.CursorMarkParams;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.NamedList;
@@ -31,8 +32,10 @@ import org.springframework.web.util.UriComponentsBuilder;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sitewhere.connectors.solr.ISolrFields;
 import com.sitewhere.connectors.solr.SiteWhereSolrFactory;
 import com.sitewhere.connectors.solr.SolrConnection;
+import com.sitewhere.connectors.solr.SolrEventType;
 import com.sitewhere.server.lifecycle.LifecycleComponent;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.event.IDeviceEvent;
@@ -60,6 +63,12 @@ public class SolrSearchProvider extends LifecycleComponent implements IDeviceEve
     /** Name returned for provider */
     private static final String NAME = "Apache Solr";
 
+    /** Default max number of results returned by a query */
+    private static final int DEFAULT_MAX_RESULTS = 10000;
+
+    /** Number of documents requested per round trip when paging with cursor */
+    private static final int CURSOR_BATCH_SIZE = 1000;
+
     /** Provider id */
     private String id = ID;
 
@@ -72,6 +81,9 @@ public class SolrSearchProvider extends LifecycleComponent implements IDeviceEve
     /** Solr configuration */
     private SolrConnection solr;
 
+    /** Max number of results returned by a query */
+    private int maxResults = DEFAULT_MAX_RESULTS;
+
     public SolrSearchProvider() {
 	super(LifecycleComponentType.SearchProvider);
     }
@@ -137,22 +149,12 @@ public class SolrSearchProvider extends LifecycleComponent implements IDeviceEve
      */
     @Override
     public List<IDeviceEvent> executeQuery(String queryString) throws SiteWhereException {
-	try {
-	    LOGGER.debug("About to execute Solr search with query string: " + queryString);
-	    List<IDeviceEvent> results = new ArrayList<IDeviceEvent>();
-	    SolrQuery solrQuery = new SolrQuery();
-	    solrQuery.setQuery(queryString);
-	    QueryResponse response = getSolr().getSolrClient().query(solrQuery);
-	    SolrDocumentList docs = response.getResults();
-	    for (SolrDocument doc : docs) {
-		results.add(SiteWhereSolrFactory.parseDocument(doc));
-	    }
-	    return results;
-	} catch (SolrServerException e) {
-	    throw new SiteWhereException("Unable to execute query.", e);
-	} catch (IOException e) {
-	    throw new SiteWhereException("Unable to execute query.", e);
-	}
+	LOGGER.debug("About to execute Solr search with query string: " + queryString);
+	List<IDeviceEvent> results = new ArrayList<IDeviceEvent>();
+	SolrQuery solrQuery = new SolrQuery();
+	solrQuery.setQuery(queryString);
+	executeCursorQuery(solrQuery, 0, getMaxResults(), doc -> results.add(SiteWhereSolrFactory.parseDocument(doc)));
+	return results;
     }
 
     /*
@@ -192,23 +194,180 @@ public class SolrSearchProvider extends LifecycleComponent implements IDeviceEve
     @Override
     public List<IDeviceLocation> getLocationsNear(double latitude, double longitude, double distance,
 	    IDateRangeSearchCriteria criteria) throws SiteWhereException {
-	ModifiableSolrParams params = new ModifiableSolrParams();
+	SolrQuery query = new SolrQuery("*:*");
+	query.addFilterQuery(ISolrFields.EVENT_TYPE + ":" + SolrEventType.Location.name());
+	query.addFilterQuery("{!geofilt sfield=" + ISolrFields.LOCATION + " pt=" + latitude + "," + longitude + " d="
+		+ distance + "}");
+	addDateRangeFilter(query, criteria);
+
+	// Compute window of results for requested page.
+	int pageSize = ((criteria.getPageSize() == null) || (criteria.getPageSize() <= 0)) ? getMaxResults()
+		: Math.min(criteria.getPageSize(), getMaxResults());
+	int pageNumber = ((criteria.getPageNumber() == null) || (criteria.getPageNumber() < 1)) ? 1
+		: criteria.getPageNumber();
+	long offset = (long) (pageNumber - 1) * pageSize;
+
+	List<IDeviceLocation> results = new ArrayList<IDeviceLocation>();
+	executeCursorQuery(query, offset, pageSize,
+		doc -> results.add((IDeviceLocation) SiteWhereSolrFactory.parseDocument(doc)));
+	return results;
+    }
+
+    /**
+     * Add filter for event date range if specified in criteria.
+     * 
+     * @param query
+     * @param criteria
+     */
+    protected void addDateRangeFilter(SolrQuery query, IDateRangeSearchCriteria criteria) {
+	if ((criteria.getStartDate() == null) && (criteria.getEndDate() == null)) {
+	    return;
+	}
+	String start = (criteria.getStartDate() != null) ? criteria.getStartDate().toInstant().toString() : "*";
+	String end = (criteria.getEndDate() != null) ? criteria.getEndDate().toInstant().toString() : "*";
+	query.addFilterQuery(ISolrFields.EVENT_DATE + ":[" + start + " TO " + end + "]");
+    }
+
+    /**
+     * Execute a query using cursor-based deep paging. Results are sorted by
+     * event date (newest first) with event id as a tie breaker so that cursor
+     * positions are stable. Documents before the offset are skipped a batch at
+     * a time and documents in the requested window are streamed to the handler
+     * as they are read rather than being collected into a document list.
+     * 
+     * @param query
+     * @param offset
+     * @param limit
+     * @param handler
+     * @throws SiteWhereException
+     */
+    protected void executeCursorQuery(SolrQuery query, long offset, int limit, SolrDocumentHandler handler)
+	    throws SiteWhereException {
+	query.clearSorts();
+	query.addSort(ISolrFields.EVENT_DATE, SolrQuery.ORDER.desc);
+	query.addSort(ISolrFields.EVENT_ID, SolrQuery.ORDER.asc);
+
+	String cursor = CursorMarkParams.CURSOR_MARK_START;
+	long skipped = 0;
+	int handled = 0;
 	try {
-	    QueryResponse response = getSolr().getSolrClient().query(params);
-	    SolrDocumentList docs = response.getResults();
-	    while (docs.iterator().hasNext()) {
-		SolrDocument doc = docs.iterator().next();
-		doc.getFieldNames();
+	    // Move cursor to start of requested window without loading documents.
+	    while (skipped < offset) {
+		int rows = (int) Math.min(CURSOR_BATCH_SIZE, offset - skipped);
+		query.setRows(rows);
+		query.setFields(ISolrFields.EVENT_ID);
+		query.set(CursorMarkParams.CURSOR_MARK_PARAM, cursor);
+		QueryResponse response = getSolr().getSolrClient().query(query);
+		skipped += response.getResults().size();
+		String next = response.getNextCursorMark();
+		if ((response.getResults().size() < rows) || cursor.equals(next)) {
+		    return;
+		}
+		cursor = next;
+	    }
+
+	    // Stream documents in requested window.
+	    query.setFields("*");
+	    while (handled < limit) {
+		int rows = Math.min(CURSOR_BATCH_SIZE, limit - handled);
+		query.setRows(rows);
+		query.set(CursorMarkParams.CURSOR_MARK_PARAM, cursor);
+		StreamingDocumentCallback callback = new StreamingDocumentCallback(handler);
+		QueryResponse response = getSolr().getSolrClient().queryAndStreamResponse(query, callback);
+		callback.rethrow();
+		handled += callback.getCount();
+		String next = response.getNextCursorMark();
+		if ((callback.getCount() < rows) || cursor.equals(next)) {
+		    return;
+		}
+		cursor = next;
 	    }
-	    List<IDeviceLocation> results = new ArrayList<IDeviceLocation>();
-	    return results;
 	} catch (SolrServerException e) {
-	    throw new SiteWhereException("Unable to execute 'getLocationsNear' query.", e);
+	    throw new SiteWhereException("Unable to execute query.", e);
 	} catch (IOException e) {
 	    throw new SiteWhereException("Unable to execute query.", e);
 	}
     }
 
+    /**
+     * Handles documents as they are streamed from Solr.
+     * 
+     * @author Derek
+     */
+    @FunctionalInterface
+    protected static interface SolrDocumentHandler {
+
+	/**
+	 * Handle a single document.
+	 * 
+	 * @param document
+	 * @throws SiteWhereException
+	 */
+	public void handle(SolrDocument document) throws SiteWhereException;
+    }
+
+    /**
+     * Passes streamed documents to a {@link SolrDocumentHandler}, keeping the
+     * first error so it can be rethrown once the response has been read.
+     * 
+     * @author Derek
+     */
+    private static class StreamingDocumentCallback extends StreamingResponseCallback {
+
+	/** Handler for documents */
+	private SolrDocumentHandler handler;
+
+	/** Number of documents received */
+	private int count;
+
+	/** First error raised by handler */
+	private SiteWhereException error;
+
+	public StreamingDocumentCallback(SolrDocumentHandler handler) {
+	    this.handler = handler;
+	}
+
+	/*
+	 * @see org.apache.solr.client.solrj.StreamingResponseCallback#
+	 * streamSolrDocument(org.apache.solr.common.SolrDocument)
+	 */
+	@Override
+	public void streamSolrDocument(SolrDocument doc) {
+	    count++;
+	    if (error != null) {
+		return;
+	    }
+	    try {
+		handler.handle(doc);
+	    } catch (SiteWhereException e) {
+		error = e;
+	    }
+	}
+
+	/*
+	 * @see org.apache.solr.client.solrj.StreamingResponseCallback#
+	 * streamDocListInfo(long, long, java.lang.Float)
+	 */
+	@Override
+	public void streamDocListInfo(long numFound, long start, Float maxScore) {
+	}
+
+	/**
+	 * Rethrow error raised while handling documents.
+	 * 
+	 * @throws SiteWhereException
+	 */
+	public void rethrow() throws SiteWhereException {
+	    if (error != null) {
+		throw error;
+	    }
+	}
+
+	public int getCount() {
+	    return count;
+	}
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -242,4 +401,12 @@ public class SolrSearchProvider extends LifecycleComponent implements IDeviceEve
     public void setSolr(SolrConnection solr) {
 	this.solr = solr;
     }
+
+    public int getMaxResults() {
+	return maxResults;
+    }
+
+    public void setMaxResults(int maxResults) {
+	this.maxResults = maxResults;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.connectors.spi.batch;
+
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Implemented by outbound connectors that deliver events asynchronously. The
+ * connector host flushes the connector before committing offsets for the
+ * events it passed in, so events are not acknowledged before they have been
+ * delivered.
+ * 
+ * @author Derek
+ */
+public interface IBatchingOutboundConnector {
+
+    /**
+     * Wait until all events passed to the connector so far have either been
+     * delivered or have failed. Throws if any event failed since the previous
+     * flush so that the caller can pass the events in again.
+     * 
+     * @throws SiteWhereException
+     */
+    public void flush() throws SiteWhereException;
+}
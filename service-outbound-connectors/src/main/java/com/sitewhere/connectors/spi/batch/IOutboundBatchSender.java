@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.connectors.spi.batch;
+
+import java.util.List;
+
+import com.sitewhere.connectors.batch.OutboundMessage;
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Delivers a batch of messages to an external system on behalf of an outbound
+ * connector.
+ * 
+ * @author Derek
+ */
+public interface IOutboundBatchSender {
+
+    /**
+     * Send a batch of messages. Messages that could not be delivered due to a
+     * transient error are returned so that they may be retried. Messages that
+     * were rejected permanently should be logged and left out of the result. If
+     * an exception is thrown, the whole batch is considered failed.
+     * 
+     * @param batch
+     * @return
+     * @throws SiteWhereException
+     */
+    public List<OutboundMessage> send(List<OutboundMessage> batch) throws SiteWhereException;
+}
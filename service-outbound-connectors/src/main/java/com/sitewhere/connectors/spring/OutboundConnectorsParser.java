@@ -213,6 +213,11 @@ public class OutboundConnectorsParser extends AbstractBeanDefinitionParser {
 	    processor.addPropertyValue("topic", topic.getValue());
 	}
 
+	Attr maxInFlight = element.getAttributeNode("maxInFlight");
+	if (maxInFlight != null) {
+	    processor.addPropertyValue("maxInFlight", maxInFlight.getValue());
+	}
+
 	// Parse nested filters.
 	processor.addPropertyValue("filters", parseFilters(element, context));
 
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.connectors.mqtt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.fusesource.mqtt.client.CallbackConnection;
+import org.fusesource.mqtt.client.FutureConnection;
+import org.fusesource.mqtt.client.MQTT;
+import org.fusesource.mqtt.client.Promise;
+import org.fusesource.mqtt.client.QoS;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sitewhere.connectors.batch.OutboundMessage;
+import com.sitewhere.connectors.batch.OutboundMessageBatcher;
+import com.sitewhere.spi.SiteWhereException;
+
+public class MqttOutboundConnectorTest {
+
+    /** Number of messages published by each test */
+    private static final int MESSAGE_COUNT = 2000;
+
+    /** Completes publishes asynchronously */
+    private ScheduledExecutorService broker;
+
+    /** Connection publishes are sent on */
+    private FakeConnection connection;
+
+    /** Connector being tested */
+    private TestConnector connector;
+
+    @Before
+    public void setUp() {
+	this.broker = Executors.newScheduledThreadPool(2);
+	this.connection = new FakeConnection(broker);
+	this.connector = new TestConnector(connection);
+    }
+
+    @After
+    public void tearDown() {
+	broker.shutdownNow();
+    }
+
+    @Test
+    public void testInFlightBound() throws Exception {
+	connector.setMaxInFlight(8);
+	OutboundMessageBatcher batcher = startBatcher();
+	try {
+	    publishConcurrently(batcher, MESSAGE_COUNT);
+	    batcher.flush();
+	} finally {
+	    batcher.stop();
+	}
+	assertEquals(MESSAGE_COUNT, connection.getAcknowledged());
+	assertTrue("Max in flight was " + connection.getMaxInFlight(), connection.getMaxInFlight() <= 8);
+    }
+
+    @Test
+    public void testFailedPublishesRetried() throws Exception {
+	connection.failFirstAttemptEvery = 5;
+	connector.setMaxInFlight(4);
+	OutboundMessageBatcher batcher = startBatcher();
+	try {
+	    publishConcurrently(batcher, MESSAGE_COUNT);
+	    batcher.flush();
+	} finally {
+	    batcher.stop();
+	}
+	assertEquals(MESSAGE_COUNT, connection.getAcknowledged());
+	assertEquals(MESSAGE_COUNT / 5, connection.getRejected());
+	assertTrue("Max in flight was " + connection.getMaxInFlight(), connection.getMaxInFlight() <= 4);
+    }
+
+    @Test
+    public void testUndeliveredReportedOnFlush() throws Exception {
+	connection.down = true;
+	OutboundMessageBatcher batcher = startBatcher();
+	batcher.setMaxRetries(2);
+	try {
+	    publishConcurrently(batcher, 20);
+	    try {
+		batcher.flush();
+		fail("Expected flush to report undelivered messages.");
+	    } catch (SiteWhereException e) {
+	    }
+	    assertEquals(0, connection.getAcknowledged());
+
+	    // Failures are only reported once and later messages are delivered.
+	    connection.down = false;
+	    publishConcurrently(batcher, 20);
+	    batcher.flush();
+	} finally {
+	    batcher.stop();
+	}
+	assertEquals(20, connection.getAcknowledged());
+    }
+
+    /**
+     * Create and start a batcher that sends through the connector.
+     *
+     * @return
+     * @throws SiteWhereException
+     */
+    protected OutboundMessageBatcher startBatcher() throws SiteWhereException {
+	OutboundMessageBatcher batcher = connector.createBatcher();
+	batcher.setRetryBackoffMs(1);
+	batcher.start();
+	return batcher;
+    }
+
+    /**
+     * Add messages to the batcher from several threads.
+     *
+     * @param batcher
+     * @param count
+     * @throws Exception
+     */
+    protected void publishConcurrently(OutboundMessageBatcher batcher, int count) throws Exception {
+	ExecutorService executor = Executors.newFixedThreadPool(4);
+	try {
+	    List<Future<?>> results = new ArrayList<Future<?>>();
+	    for (int t = 0; t < 4; t++) {
+		final int offset = t;
+		results.add(executor.submit(() -> {
+		    for (int i = offset; i < count; i += 4) {
+			batcher.add(new OutboundMessage(String.valueOf(i), "topic", String.valueOf(i).getBytes()));
+		    }
+		    return null;
+		}));
+	    }
+	    for (Future<?> result : results) {
+		result.get();
+	    }
+	} finally {
+	    executor.shutdown();
+	}
+    }
+
+    /**
+     * Connector that publishes on a fake connection rather than connecting to a
+     * broker.
+     *
+     * @author Derek
+     */
+    private static class TestConnector extends MqttOutboundConnector {
+
+	/** Fake connection */
+	private FutureConnection fake;
+
+	public TestConnector(FutureConnection fake) {
+	    this.fake = fake;
+	}
+
+	/*
+	 * @see com.sitewhere.connectors.mqtt.MqttOutboundConnector#getConnection()
+	 */
+	@Override
+	protected FutureConnection getConnection() {
+	    return fake;
+	}
+    }
+
+    /**
+     * Connection that acknowledges publishes asynchronously, optionally
+     * rejecting some of them, and records the number of unacknowledged
+     * publishes.
+     *
+     * @author Derek
+     */
+    private static class FakeConnection extends FutureConnection {
+
+	/** Completes publishes */
+	private ScheduledExecutorService broker;
+
+	/** Publishes awaiting acknowledgement */
+	private AtomicInteger inFlight = new AtomicInteger();
+
+	/** Max publishes awaiting acknowledgement at once */
+	private AtomicInteger maxInFlight = new AtomicInteger();
+
+	/** Publishes acknowledged */
+	private AtomicInteger acknowledged = new AtomicInteger();
+
+	/** Publishes rejected */
+	private AtomicInteger rejected = new AtomicInteger();
+
+	/** Every nth message fails on its first attempt (0 for none) */
+	private volatile int failFirstAttemptEvery;
+
+	/** Indicates every publish fails */
+	private volatile boolean down;
+
+	/** Payloads of messages that have already failed once */
+	private Set<String> failedOnce = ConcurrentHashMap.newKeySet();
+
+	public FakeConnection(ScheduledExecutorService broker) {
+	    super(new CallbackConnection(new MQTT()));
+	    this.broker = broker;
+	}
+
+	/*
+	 * @see org.fusesource.mqtt.client.FutureConnection#publish(java.lang.String,
+	 * byte[], org.fusesource.mqtt.client.QoS, boolean)
+	 */
+	@Override
+	public Promise<Void> publish(String topic, byte[] payload, QoS qos, boolean retain) {
+	    int current = inFlight.incrementAndGet();
+	    maxInFlight.accumulateAndGet(current, Math::max);
+	    String id = new String(payload);
+	    boolean failFirst = (failFirstAttemptEvery > 0) && ((Integer.parseInt(id) % failFirstAttemptEvery) == 0);
+	    boolean reject = down || (failFirst && failedOnce.add(id));
+	    Promise<Void> promise = new Promise<Void>();
+	    broker.schedule(() -> {
+		inFlight.decrementAndGet();
+		if (reject) {
+		    rejected.incrementAndGet();
+		    promise.onFailure(new IOException("Publish rejected."));
+		} else {
+		    acknowledged.incrementAndGet();
+		    promise.onSuccess(null);
+		}
+	    }, 1, TimeUnit.MILLISECONDS);
+	    return promise;
+	}
+
+	public int getMaxInFlight() {
+	    return maxInFlight.get();
+	}
+
+	public int getAcknowledged() {
+	    return acknowledged.get();
+	}
+
+	public int getRejected() {
+	    return rejected.get();
+	}
+    }
+}
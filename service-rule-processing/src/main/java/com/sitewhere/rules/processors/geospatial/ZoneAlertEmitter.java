@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.rules.processors.geospatial;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sitewhere.microservice.security.SystemUserRunnable;
+import com.sitewhere.rest.model.device.event.DeviceEventBatch;
+import com.sitewhere.rest.model.device.event.request.DeviceAlertCreateRequest;
+import com.sitewhere.rules.spi.IRuleProcessor;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDeviceAssignment;
+
+/**
+ * Sends alerts fired by zone tests from a background thread so that location
+ * processing does not wait on device management and event management calls.
+ * Queued alerts are grouped by assignment and each group is sent as a single
+ * event batch. Failed groups are retried without holding up other groups.
+ * Alerts that can not be delivered are reset in the containment tracker so
+ * that the next location still meeting the test fires them again.
+ *
+ * @author Derek
+ */
+public class ZoneAlertEmitter extends SystemUserRunnable {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Max number of alerts sent in one pass */
+    private static final int MAX_BATCH_SIZE = 500;
+
+    /** Max number of attempts to send alerts for an assignment */
+    private static final int MAX_SEND_ATTEMPTS = 3;
+
+    /** Delay before first retry (doubled for each later retry) */
+    private static final long RETRY_DELAY_MS = 500;
+
+    /** Rule processor that owns emitter */
+    private IRuleProcessor processor;
+
+    /** Tracker reset when alerts can not be delivered */
+    private ZoneContainmentTracker tracker;
+
+    /** Queue of pending alerts */
+    private BlockingQueue<PendingAlert> queue;
+
+    /** Number of alerts sent */
+    private AtomicLong sent = new AtomicLong();
+
+    /** Number of alerts that failed to send */
+    private AtomicLong failed = new AtomicLong();
+
+    /** Number of alerts dropped */
+    private AtomicLong dropped = new AtomicLong();
+
+    /** Indicates whether emitter is running */
+    private volatile boolean running = true;
+
+    public ZoneAlertEmitter(IRuleProcessor processor, ZoneContainmentTracker tracker, int capacity) {
+	super(processor.getTenantEngine().getMicroservice(), processor.getTenantEngine().getTenant());
+	this.processor = processor;
+	this.tracker = tracker;
+	this.queue = new ArrayBlockingQueue<PendingAlert>(capacity);
+    }
+
+    /**
+     * Queue an alert for an assignment. Alerts are dropped with a warning if
+     * the queue is full rather than blocking location processing.
+     *
+     * @param assignmentId
+     * @param stateKey
+     * @param since
+     * @param alert
+     */
+    public void enqueue(UUID assignmentId, String stateKey, long since, DeviceAlertCreateRequest alert) {
+	PendingAlert pending = new PendingAlert(assignmentId, stateKey, since, alert);
+	if (!queue.offer(pending)) {
+	    dropped.incrementAndGet();
+	    tracker.resetAlerted(stateKey, since);
+	    LOGGER.warn("Zone alert queue is full. Dropping alert for assignment " + assignmentId + ".");
+	}
+    }
+
+    /*
+     * @see com.sitewhere.microservice.security.SystemUserRunnable#runAsSystemUser()
+     */
+    @Override
+    public void runAsSystemUser() throws SiteWhereException {
+	List<PendingAlert> pending = new ArrayList<PendingAlert>();
+	while (running || !queue.isEmpty()) {
+	    try {
+		PendingAlert first = queue.poll(1, TimeUnit.SECONDS);
+		if (first == null) {
+		    continue;
+		}
+		pending.add(first);
+		queue.drainTo(pending, MAX_BATCH_SIZE - 1);
+		send(pending);
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		return;
+	    } catch (Throwable t) {
+		LOGGER.error("Unable to send zone alerts.", t);
+	    } finally {
+		if (!pending.isEmpty()) {
+		    undelivered(pending);
+		    pending.clear();
+		}
+	    }
+	}
+    }
+
+    /**
+     * Send alerts grouped by assignment. A failure sending one group does not
+     * prevent the others from being sent. Groups are removed from the pending
+     * list once handled, so anything left after an interrupt was not sent.
+     *
+     * @param pending
+     * @throws InterruptedException
+     */
+    protected void send(List<PendingAlert> pending) throws InterruptedException {
+	Map<UUID, List<PendingAlert>> groups = new LinkedHashMap<UUID, List<PendingAlert>>();
+	for (PendingAlert alert : pending) {
+	    List<PendingAlert> group = groups.get(alert.getAssignmentId());
+	    if (group == null) {
+		group = new ArrayList<PendingAlert>();
+		groups.put(alert.getAssignmentId(), group);
+	    }
+	    group.add(alert);
+	}
+	for (Map.Entry<UUID, List<PendingAlert>> entry : groups.entrySet()) {
+	    if (send(entry.getKey(), entry.getValue())) {
+		sent.addAndGet(entry.getValue().size());
+	    } else {
+		undelivered(entry.getValue());
+	    }
+	    pending.removeAll(entry.getValue());
+	}
+    }
+
+    /**
+     * Send alerts for one assignment as a single event batch, retrying with
+     * backoff if the send fails.
+     *
+     * @param assignmentId
+     * @param alerts
+     * @return true if alerts were sent
+     * @throws InterruptedException
+     */
+    protected boolean send(UUID assignmentId, List<PendingAlert> alerts) throws InterruptedException {
+	DeviceEventBatch batch = new DeviceEventBatch();
+	for (PendingAlert alert : alerts) {
+	    batch.getAlerts().add(alert.getRequest());
+	}
+	long delay = RETRY_DELAY_MS;
+	for (int attempt = 1;; attempt++) {
+	    try {
+		IDeviceAssignment assignment = processor.getDeviceManagement().getDeviceAssignment(assignmentId);
+		if (assignment == null) {
+		    LOGGER.warn("Unable to send zone alerts for missing assignment " + assignmentId + ".");
+		    return false;
+		}
+		processor.getDeviceEventManagement().addDeviceEventBatch(assignment, batch);
+		return true;
+	    } catch (SiteWhereException | RuntimeException e) {
+		if (attempt >= MAX_SEND_ATTEMPTS) {
+		    LOGGER.error("Unable to send zone alerts for assignment " + assignmentId + " after " + attempt
+			    + " attempts.", e);
+		    return false;
+		}
+		LOGGER.warn("Unable to send zone alerts for assignment " + assignmentId + ". Retrying.", e);
+		Thread.sleep(delay);
+		delay *= 2;
+	    }
+	}
+    }
+
+    /**
+     * Count alerts that could not be delivered and allow their tests to fire
+     * again.
+     *
+     * @param alerts
+     */
+    protected void undelivered(List<PendingAlert> alerts) {
+	failed.addAndGet(alerts.size());
+	for (PendingAlert alert : alerts) {
+	    tracker.resetAlerted(alert.getStateKey(), alert.getSince());
+	}
+    }
+
+    /**
+     * Stop accepting work once the queue has been drained.
+     */
+    public void stop() {
+	this.running = false;
+    }
+
+    /**
+     * Reset alerts left in the queue after the emitter thread has ended so that
+     * their tests fire again once processing resumes.
+     *
+     * @return number of alerts reset
+     */
+    public int resetUnsent() {
+	List<PendingAlert> unsent = new ArrayList<PendingAlert>();
+	queue.drainTo(unsent);
+	if (!unsent.isEmpty()) {
+	    undelivered(unsent);
+	}
+	return unsent.size();
+    }
+
+    public long getSentCount() {
+	return sent.get();
+    }
+
+    public long getFailedCount() {
+	return failed.get();
+    }
+
+    public long getDroppedCount() {
+	return dropped.get();
+    }
+
+    /**
+     * Alert waiting to be sent.
+     *
+     * @author Derek
+     */
+    private static class PendingAlert {
+
+	/** Assignment id */
+	private UUID assignmentId;
+
+	/** Key for containment state that fired the alert */
+	private String stateKey;
+
+	/** Time containment state was entered */
+	private long since;
+
+	/** Alert request */
+	private DeviceAlertCreateRequest request;
+
+	public PendingAlert(UUID assignmentId, String stateKey, long since, DeviceAlertCreateRequest request) {
+	    this.assignmentId = assignmentId;
+	    this.stateKey = stateKey;
+	    this.since = since;
+	    this.request = request;
+	}
+
+	public UUID getAssignmentId() {
+	    return assignmentId;
+	}
+
+	public String getStateKey() {
+	    return stateKey;
+	}
+
+	public long getSince() {
+	    return since;
+	}
+
+	public DeviceAlertCreateRequest getRequest() {
+	    return request;
+	}
+    }
+}
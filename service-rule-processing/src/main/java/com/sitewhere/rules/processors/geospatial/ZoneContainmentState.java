@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.rules.processors.geospatial;
+
+import java.io.Serializable;
+
+import com.sitewhere.spi.geospatial.ZoneContainment;
+
+/**
+ * Last known containment of a device assignment with respect to the zone in a
+ * single {@link ZoneTest}.
+ *
+ * @author Derek
+ */
+public class ZoneContainmentState implements Serializable {
+
+    /** Serial version UID */
+    private static final long serialVersionUID = 3340164410963151528L;
+
+    /** Current containment */
+    private ZoneContainment containment;
+
+    /** Event time (millis) at which current containment began */
+    private long since;
+
+    /** Indicates whether an alert has been fired for current containment */
+    private boolean alerted;
+
+    /** Time (millis) state was last updated */
+    private long lastUpdated;
+
+    public ZoneContainment getContainment() {
+	return containment;
+    }
+
+    public void setContainment(ZoneContainment containment) {
+	this.containment = containment;
+    }
+
+    public long getSince() {
+	return since;
+    }
+
+    public void setSince(long since) {
+	this.since = since;
+    }
+
+    public boolean isAlerted() {
+	return alerted;
+    }
+
+    public void setAlerted(boolean alerted) {
+	this.alerted = alerted;
+    }
+
+    public long getLastUpdated() {
+	return lastUpdated;
+    }
+
+    public void setLastUpdated(long lastUpdated) {
+	this.lastUpdated = lastUpdated;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.rules.processors.geospatial;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.sitewhere.common.MarshalUtils;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.geospatial.ZoneContainment;
+import com.vividsolutions.jts.geom.Point;
+
+/**
+ * Tracks zone containment for each device assignment and zone test so that
+ * alerts are fired on transitions rather than on every location. A test
+ * fires once each time an assignment enters its condition (entering the zone
+ * for an 'inside' test, leaving it for an 'outside' test) and has stayed in
+ * it for the dwell time. Containment only changes once a location is past the
+ * boundary by the hysteresis distance, so jitter near the edge does not cause
+ * repeated transitions.
+ *
+ * @author Derek
+ */
+public class ZoneContainmentTracker {
+
+    /** Containment state indexed by assignment and test */
+    private Map<String, ZoneContainmentState> states = new ConcurrentHashMap<String, ZoneContainmentState>();
+
+    /**
+     * Update containment for an assignment based on a new location and indicate
+     * whether an alert should be fired.
+     *
+     * @param assignmentId
+     * @param test
+     * @param geometry
+     * @param point
+     * @param eventTime
+     * @return
+     */
+    public boolean update(UUID assignmentId, ZoneTest test, ZoneGeometry geometry, Point point, long eventTime) {
+	ZoneContainmentState state = states.computeIfAbsent(getStateKey(assignmentId, test),
+		k -> new ZoneContainmentState());
+	synchronized (state) {
+	    ZoneContainment observed = getContainment(state.getContainment(), test, geometry, point);
+	    if (observed != state.getContainment()) {
+		state.setContainment(observed);
+		state.setSince(eventTime);
+		state.setAlerted(false);
+	    }
+	    state.setLastUpdated(System.currentTimeMillis());
+	    if ((observed != test.getCondition()) || state.isAlerted()) {
+		return false;
+	    }
+	    if ((eventTime - state.getSince()) < (test.getDwellSeconds() * 1000L)) {
+		return false;
+	    }
+	    state.setAlerted(true);
+	    return true;
+	}
+    }
+
+    /**
+     * Allow a test to fire again after its alert could not be delivered. State
+     * is only reset if the assignment has not changed containment since the
+     * alert fired, so a later transition is never alerted twice.
+     *
+     * @param stateKey
+     * @param since
+     */
+    public void resetAlerted(String stateKey, long since) {
+	ZoneContainmentState state = states.get(stateKey);
+	if (state == null) {
+	    return;
+	}
+	synchronized (state) {
+	    if (state.isAlerted() && (state.getSince() == since)) {
+		state.setAlerted(false);
+	    }
+	}
+    }
+
+    /**
+     * Get time at which an assignment entered its current containment for a
+     * test, or -1 if the test is not tracked for the assignment.
+     *
+     * @param stateKey
+     * @return
+     */
+    public long getSince(String stateKey) {
+	ZoneContainmentState state = states.get(stateKey);
+	if (state == null) {
+	    return -1;
+	}
+	synchronized (state) {
+	    return state.getSince();
+	}
+    }
+
+    /**
+     * Get containment for a point given the current containment. Leaving the
+     * zone is tested against the zone grown by the hysteresis distance and
+     * entering it against the zone shrunk by the same distance.
+     *
+     * @param current
+     * @param test
+     * @param geometry
+     * @param point
+     * @return
+     */
+    protected ZoneContainment getContainment(ZoneContainment current, ZoneTest test, ZoneGeometry geometry,
+	    Point point) {
+	double distance = 0;
+	if (current == ZoneContainment.Inside) {
+	    distance = test.getHysteresisDistance();
+	} else if (current == ZoneContainment.Outside) {
+	    distance = -test.getHysteresisDistance();
+	}
+	return geometry.contains(point, distance) ? ZoneContainment.Inside : ZoneContainment.Outside;
+    }
+
+    /**
+     * Drop state that has not been updated within the given period.
+     *
+     * @param maxAgeMs
+     * @return
+     */
+    public int expire(long maxAgeMs) {
+	long cutoff = System.currentTimeMillis() - maxAgeMs;
+	int removed = 0;
+	Iterator<ZoneContainmentState> it = states.values().iterator();
+	while (it.hasNext()) {
+	    if (it.next().getLastUpdated() < cutoff) {
+		it.remove();
+		removed++;
+	    }
+	}
+	return removed;
+    }
+
+    /**
+     * Write a snapshot of all state to a file. The snapshot is written to a
+     * temporary file first so that a partial write never replaces the last good
+     * snapshot.
+     *
+     * @param file
+     * @throws SiteWhereException
+     */
+    public void save(File file) throws SiteWhereException {
+	Snapshot snapshot = new Snapshot();
+	for (Map.Entry<String, ZoneContainmentState> entry : states.entrySet()) {
+	    synchronized (entry.getValue()) {
+		ZoneContainmentState copy = new ZoneContainmentState();
+		copy.setContainment(entry.getValue().getContainment());
+		copy.setSince(entry.getValue().getSince());
+		copy.setAlerted(entry.getValue().isAlerted());
+		copy.setLastUpdated(entry.getValue().getLastUpdated());
+		snapshot.getStates().put(entry.getKey(), copy);
+	    }
+	}
+	try {
+	    if (file.getParentFile() != null) {
+		file.getParentFile().mkdirs();
+	    }
+	    File temp = new File(file.getPath() + ".tmp");
+	    Files.write(temp.toPath(), MarshalUtils.marshalJson(snapshot));
+	    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+		    StandardCopyOption.ATOMIC_MOVE);
+	} catch (IOException e) {
+	    throw new SiteWhereException("Unable to save zone containment snapshot.", e);
+	}
+    }
+
+    /**
+     * Load state from a snapshot file if it exists.
+     *
+     * @param file
+     * @return
+     * @throws SiteWhereException
+     */
+    public int load(File file) throws SiteWhereException {
+	if (!file.exists()) {
+	    return 0;
+	}
+	try {
+	    Snapshot snapshot = MarshalUtils.unmarshalJson(Files.readAllBytes(file.toPath()), Snapshot.class);
+	    states.putAll(snapshot.getStates());
+	    return snapshot.getStates().size();
+	} catch (IOException e) {
+	    throw new SiteWhereException("Unable to load zone containment snapshot.", e);
+	}
+    }
+
+    /**
+     * Get key for state of an assignment with respect to a test.
+     *
+     * @param assignmentId
+     * @param test
+     * @return
+     */
+    public static String getStateKey(UUID assignmentId, ZoneTest test) {
+	return assignmentId + "|" + test.getZoneToken() + "|" + test.getCondition() + "|" + test.getAlertType();
+    }
+
+    /**
+     * Get number of tracked states.
+     *
+     * @return
+     */
+    public int getStateCount() {
+	return states.size();
+    }
+
+    /**
+     * Persisted form of tracker state.
+     *
+     * @author Derek
+     */
+    public static class Snapshot {
+
+	/** States indexed by key */
+	private Map<String, ZoneContainmentState> states = new HashMap<String, ZoneContainmentState>();
+
+	public Map<String, ZoneContainmentState> getStates() {
+	    return states;
+	}
+
+	public void setStates(Map<String, ZoneContainmentState> states) {
+	    this.states = states;
+	}
+    }
+}
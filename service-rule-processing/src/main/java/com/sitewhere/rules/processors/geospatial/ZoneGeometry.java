@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.rules.processors.geospatial;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.sitewhere.geospatial.GeoUtils;
+import com.sitewhere.spi.device.IZone;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+
+/**
+ * Cached geometry for a zone. Keeps the zone polygon along with polygons grown
+ * or shrunk by hysteresis distances so that boundary tests do not rebuild them
+ * for each location.
+ *
+ * @author Derek
+ */
+public class ZoneGeometry {
+
+    /** Zone polygon */
+    private Polygon polygon;
+
+    /** Date zone was last updated when geometry was built */
+    private Date zoneUpdatedDate;
+
+    /** Time geometry was last checked against the stored zone */
+    private long checkedAt;
+
+    /** Prepared geometries indexed by buffer distance */
+    private Map<Double, PreparedGeometry> buffered = new ConcurrentHashMap<Double, PreparedGeometry>();
+
+    public ZoneGeometry(IZone zone) {
+	this.polygon = GeoUtils.createPolygonForZone(zone);
+	this.zoneUpdatedDate = zone.getUpdatedDate();
+	this.checkedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Indicates whether a point is inside the zone grown by the given distance.
+     * Negative distances shrink the zone.
+     *
+     * @param point
+     * @param distance
+     * @return
+     */
+    public boolean contains(Point point, double distance) {
+	PreparedGeometry geometry = buffered.get(distance);
+	if (geometry == null) {
+	    Geometry grown = (distance == 0) ? polygon : polygon.buffer(distance);
+	    geometry = PreparedGeometryFactory.prepare(grown);
+	    buffered.put(distance, geometry);
+	}
+	return geometry.contains(point);
+    }
+
+    /**
+     * Indicates whether geometry was built from the current version of a zone.
+     *
+     * @param zone
+     * @return
+     */
+    public boolean isCurrent(IZone zone) {
+	if (zone.getUpdatedDate() == null) {
+	    return zoneUpdatedDate == null;
+	}
+	return zone.getUpdatedDate().equals(zoneUpdatedDate);
+    }
+
+    public Polygon getPolygon() {
+	return polygon;
+    }
+
+    public Date getZoneUpdatedDate() {
+	return zoneUpdatedDate;
+    }
+
+    public long getCheckedAt() {
+	return checkedAt;
+    }
+
+    public void setCheckedAt(long checkedAt) {
+	this.checkedAt = checkedAt;
+    }
+}
@@ -33,6 +33,12 @@ public class ZoneTest {
     /** Message to use if test is met */
     private String alertMessage;
 
+    /** Seconds condition must hold before alert is fired */
+    private int dwellSeconds = 0;
+
+    /** Distance (in degrees) past zone boundary required to change containment */
+    private double hysteresisDistance = 0;
+
     public String getZoneToken() {
 	return zoneToken;
     }
@@ -72,4 +78,20 @@ public class ZoneTest {
     public void setAlertMessage(String alertMessage) {
 	this.alertMessage = alertMessage;
     }
+
+    public int getDwellSeconds() {
+	return dwellSeconds;
+    }
+
+    public void setDwellSeconds(int dwellSeconds) {
+	this.dwellSeconds = dwellSeconds;
+    }
+
+    public double getHysteresisDistance() {
+	return hysteresisDistance;
+    }
+
+    public void setHysteresisDistance(double hysteresisDistance) {
+	this.hysteresisDistance = hysteresisDistance;
+    }
 }
\ No newline at end of file
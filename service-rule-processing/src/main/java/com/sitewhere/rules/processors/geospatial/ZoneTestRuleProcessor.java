@@ -7,11 +7,17 @@
  */
 package com.sitewhere.rules.processors.geospatial;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -20,18 +26,21 @@ import com.sitewhere.geospatial.GeoUtils;
 import com.sitewhere.rest.model.device.event.request.DeviceAlertCreateRequest;
 import com.sitewhere.rules.spi.IRuleProcessor;
 import com.sitewhere.spi.SiteWhereException;
-import com.sitewhere.spi.device.IDeviceAssignment;
 import com.sitewhere.spi.device.IZone;
 import com.sitewhere.spi.device.event.IDeviceEventContext;
 import com.sitewhere.spi.device.event.IDeviceLocation;
-import com.sitewhere.spi.geospatial.ZoneContainment;
-import com.vividsolutions.jts.geom.Polygon;
+import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
+import com.vividsolutions.jts.geom.Point;
 
 /**
  * Implementation of {@link IRuleProcessor} that performs a series of tests for
- * whether a location is inside or outside of zones, firing alerts if the
- * criteria is met.
- * 
+ * whether a location is inside or outside of zones, firing alerts when an
+ * assignment enters the condition for a test. Containment is tracked for each
+ * assignment so that a device that stays in a zone results in a single alert
+ * rather than one per location. Containment state is saved to a snapshot file
+ * periodically and on shutdown, and loaded on startup. Alerts are sent in
+ * batches from a background thread.
+ *
  * @author Derek
  */
 public class ZoneTestRuleProcessor extends RuleProcessor {
@@ -39,15 +48,140 @@ public class ZoneTestRuleProcessor extends RuleProcessor {
     /** Static logger instance */
     private static Logger LOGGER = LogManager.getLogger();
 
-    /** Map of polygons by zone token */
-    private Map<String, Polygon> zoneMap = new HashMap<String, Polygon>();
+    /** Default interval between checks for zone updates */
+    private static final long DEFAULT_ZONE_REFRESH_INTERVAL_MS = 60 * 1000;
+
+    /** Default interval between state snapshots */
+    private static final long DEFAULT_SNAPSHOT_INTERVAL_MS = 60 * 1000;
+
+    /** Default time after which state for an inactive assignment is dropped */
+    private static final long DEFAULT_STATE_EXPIRATION_MS = 7 * 24 * 60 * 60 * 1000L;
+
+    /** Default number of alerts that may wait to be sent */
+    private static final int DEFAULT_ALERT_QUEUE_CAPACITY = 10000;
+
+    /** Map of zone geometry by zone token */
+    private Map<String, ZoneGeometry> zoneMap = new ConcurrentHashMap<String, ZoneGeometry>();
 
     /** List of tests to perform */
     private List<ZoneTest> zoneTests = new ArrayList<ZoneTest>();
 
+    /** Interval between checks for zone updates */
+    private long zoneRefreshIntervalMs = DEFAULT_ZONE_REFRESH_INTERVAL_MS;
+
+    /** Interval between state snapshots */
+    private long snapshotIntervalMs = DEFAULT_SNAPSHOT_INTERVAL_MS;
+
+    /** Time after which state for an inactive assignment is dropped */
+    private long stateExpirationMs = DEFAULT_STATE_EXPIRATION_MS;
+
+    /** Snapshot file path (defaults to a file in the temp directory) */
+    private String snapshotFile;
+
+    /** Containment state for assignments */
+    private ZoneContainmentTracker tracker = new ZoneContainmentTracker();
+
+    /** Sends alerts in the background */
+    private ZoneAlertEmitter emitter;
+
+    /** Thread running alert emitter */
+    private Thread emitterThread;
+
+    /** Executor for periodic snapshots */
+    private ScheduledExecutorService snapshotter;
+
+    /** Number of locations processed */
+    private AtomicLong locationCount = new AtomicLong();
+
+    /** Number of alerts fired */
+    private AtomicLong alertCount = new AtomicLong();
+
+    /*
+     * @see com.sitewhere.server.lifecycle.LifecycleComponent#start(com.sitewhere.
+     * spi.server.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	super.start(monitor);
+	try {
+	    int loaded = tracker.load(getStateSnapshotFile());
+	    getLogger().info("Loaded zone containment state for " + loaded + " assignment tests.");
+	} catch (SiteWhereException e) {
+	    getLogger().warn("Unable to load zone containment state. Starting with empty state.", e);
+	}
+
+	this.emitter = new ZoneAlertEmitter(this, tracker, DEFAULT_ALERT_QUEUE_CAPACITY);
+	this.emitterThread = new Thread(emitter, "Zone Alerts '" + getProcessorId() + "'");
+	emitterThread.start();
+
+	this.snapshotter = Executors.newSingleThreadScheduledExecutor(new SnapshotThreadFactory());
+	snapshotter.scheduleWithFixedDelay(new Runnable() {
+
+	    @Override
+	    public void run() {
+		try {
+		    snapshot();
+		} catch (Throwable t) {
+		    getLogger().error("Unable to save zone containment state.", t);
+		}
+	    }
+	}, getSnapshotIntervalMs(), getSnapshotIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * @see com.sitewhere.server.lifecycle.LifecycleComponent#stop(com.sitewhere.
+     * spi.server.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	// Finish sending alerts first so the final snapshot reflects what was sent.
+	if (emitter != null) {
+	    emitter.stop();
+	    try {
+		emitterThread.join(10 * 1000);
+		if (emitterThread.isAlive()) {
+		    getLogger().warn("Zone alerts not sent within timeout. Interrupting alert emitter.");
+		    emitterThread.interrupt();
+		    emitterThread.join(10 * 1000);
+		}
+	    } catch (InterruptedException e) {
+		emitterThread.interrupt();
+		Thread.currentThread().interrupt();
+	    }
+	    int reset = emitter.resetUnsent();
+	    if (reset > 0) {
+		getLogger().warn("Reset " + reset + " zone alerts that were not sent before shutdown.");
+	    }
+	}
+	if (snapshotter != null) {
+	    snapshotter.shutdown();
+	    try {
+		snapshotter.awaitTermination(10, TimeUnit.SECONDS);
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+	    }
+	    snapshot();
+	}
+	super.stop(monitor);
+    }
+
+    /**
+     * Drop expired state and save a snapshot.
+     *
+     * @throws SiteWhereException
+     */
+    protected void snapshot() throws SiteWhereException {
+	int expired = tracker.expire(getStateExpirationMs());
+	tracker.save(getStateSnapshotFile());
+	getLogger().debug("Saved zone containment state for " + tracker.getStateCount() + " assignment tests ("
+		+ expired + " expired). Processed " + locationCount.get() + " locations and fired "
+		+ alertCount.get() + " alerts (" + emitter.getSentCount() + " sent, " + emitter.getFailedCount()
+		+ " failed, " + emitter.getDroppedCount() + " dropped).");
+    }
+
     /*
      * (non-Javadoc)
-     * 
+     *
      * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#getLogger()
      */
     @Override
@@ -62,44 +196,86 @@ public class ZoneTestRuleProcessor extends RuleProcessor {
      */
     @Override
     public void onLocation(IDeviceEventContext context, IDeviceLocation location) throws SiteWhereException {
+	locationCount.incrementAndGet();
+	if (location.getDeviceAssignmentId() == null) {
+	    return;
+	}
+	Point point = GeoUtils.createPointForLocation(location);
+	Date eventDate = (location.getEventDate() != null) ? location.getEventDate() : new Date();
 	for (ZoneTest test : zoneTests) {
-	    Polygon poly = getZonePolygon(test.getZoneToken());
-	    ZoneContainment containment = (poly.contains(GeoUtils.createPointForLocation(location)))
-		    ? ZoneContainment.Inside
-		    : ZoneContainment.Outside;
-	    if (test.getCondition() == containment) {
-		IDeviceAssignment assignment = getDeviceManagement()
-			.getDeviceAssignment(location.getDeviceAssignmentId());
+	    ZoneGeometry geometry = getZoneGeometry(test.getZoneToken());
+	    if (tracker.update(location.getDeviceAssignmentId(), test, geometry, point, eventDate.getTime())) {
+		String stateKey = ZoneContainmentTracker.getStateKey(location.getDeviceAssignmentId(), test);
 		DeviceAlertCreateRequest alert = new DeviceAlertCreateRequest();
 		alert.setType(test.getAlertType());
 		alert.setLevel(test.getAlertLevel());
 		alert.setMessage(test.getAlertMessage());
 		alert.setUpdateState(false);
-		alert.setEventDate(new Date());
-		getDeviceEventManagement().addDeviceAlert(assignment, alert);
+		alert.setEventDate(eventDate);
+		emitter.enqueue(location.getDeviceAssignmentId(), stateKey, tracker.getSince(stateKey), alert);
+		alertCount.incrementAndGet();
 	    }
 	}
     }
 
     /**
-     * Get cached zone polygon or try to load from datastore.
-     * 
+     * Get cached zone geometry or try to load from datastore. Cached geometry is
+     * checked against the stored zone periodically and rebuilt if the zone has
+     * been updated.
+     *
      * @param token
      * @return
      * @throws SiteWhereException
      */
-    protected Polygon getZonePolygon(String token) throws SiteWhereException {
-	Polygon poly = zoneMap.get(token);
-	if (poly != null) {
-	    return poly;
+    protected ZoneGeometry getZoneGeometry(String token) throws SiteWhereException {
+	ZoneGeometry geometry = zoneMap.get(token);
+	long now = System.currentTimeMillis();
+	if ((geometry != null) && ((now - geometry.getCheckedAt()) < getZoneRefreshIntervalMs())) {
+	    return geometry;
 	}
 	IZone zone = getDeviceManagement().getZoneByToken(token);
-	if (zone != null) {
-	    poly = GeoUtils.createPolygonForZone(zone);
-	    zoneMap.put(token, poly);
-	    return poly;
+	if (zone == null) {
+	    zoneMap.remove(token);
+	    throw new SiteWhereException(
+		    "Invalid zone token in " + ZoneTestRuleProcessor.class.getName() + ": " + token);
+	}
+	if ((geometry != null) && geometry.isCurrent(zone)) {
+	    geometry.setCheckedAt(now);
+	    return geometry;
 	}
-	throw new SiteWhereException("Invalid zone token in " + ZoneTestRuleProcessor.class.getName() + ": " + token);
+	geometry = new ZoneGeometry(zone);
+	zoneMap.put(token, geometry);
+	return geometry;
+    }
+
+    /**
+     * Remove cached geometry for a zone so that it is reloaded on next use.
+     *
+     * @param token
+     */
+    public void invalidateZone(String token) {
+	zoneMap.remove(token);
+    }
+
+    /**
+     * Remove all cached zone geometry.
+     */
+    public void invalidateZones() {
+	zoneMap.clear();
+    }
+
+    /**
+     * Get file used for state snapshots.
+     *
+     * @return
+     */
+    protected File getStateSnapshotFile() {
+	if (getSnapshotFile() != null) {
+	    return new File(getSnapshotFile());
+	}
+	File folder = new File(System.getProperty("java.io.tmpdir"), "sitewhere");
+	return new File(folder,
+		"zone-state-" + getTenantEngine().getTenant().getId() + "-" + getProcessorId() + ".json");
     }
 
     public List<ZoneTest> getZoneTests() {
@@ -109,4 +285,44 @@ public class ZoneTestRuleProcessor extends RuleProcessor {
     public void setZoneTests(List<ZoneTest> zoneTests) {
 	this.zoneTests = zoneTests;
     }
-}
\ No newline at end of file
+
+    public long getZoneRefreshIntervalMs() {
+	return zoneRefreshIntervalMs;
+    }
+
+    public void setZoneRefreshIntervalMs(long zoneRefreshIntervalMs) {
+	this.zoneRefreshIntervalMs = zoneRefreshIntervalMs;
+    }
+
+    public long getSnapshotIntervalMs() {
+	return snapshotIntervalMs;
+    }
+
+    public void setSnapshotIntervalMs(long snapshotIntervalMs) {
+	this.snapshotIntervalMs = snapshotIntervalMs;
+    }
+
+    public long getStateExpirationMs() {
+	return stateExpirationMs;
+    }
+
+    public void setStateExpirationMs(long stateExpirationMs) {
+	this.stateExpirationMs = stateExpirationMs;
+    }
+
+    public String getSnapshotFile() {
+	return snapshotFile;
+    }
+
+    public void setSnapshotFile(String snapshotFile) {
+	this.snapshotFile = snapshotFile;
+    }
+
+    /** Used for naming state snapshot thread */
+    private class SnapshotThreadFactory implements ThreadFactory {
+
+	public Thread newThread(Runnable r) {
+	    return new Thread(r, "Zone State Snapshot '" + getProcessorId() + "'");
+	}
+    }
+}
@@ -106,6 +106,11 @@ public class RuleProcessingParser extends AbstractBeanDefinitionParser {
 	// Parse common rule processor attributes.
 	parseCommonRuleProcessorAttributes(element, processor);
 
+	Attr snapshotFile = element.getAttributeNode("snapshotFile");
+	if (snapshotFile != null) {
+	    processor.addPropertyValue("snapshotFile", snapshotFile.getValue());
+	}
+
 	List<Element> children = DomUtils.getChildElementsByTagName(element, "zone-test");
 	List<Object> tests = new ManagedList<Object>();
 	for (Element testElm : children) {
@@ -144,6 +149,16 @@ public class RuleProcessingParser extends AbstractBeanDefinitionParser {
 	    }
 	    test.setAlertLevel(level);
 
+	    Attr dwellSeconds = testElm.getAttributeNode("dwellSeconds");
+	    if (dwellSeconds != null) {
+		test.setDwellSeconds(Integer.parseInt(dwellSeconds.getValue()));
+	    }
+
+	    Attr hysteresisDistance = testElm.getAttributeNode("hysteresisDistance");
+	    if (hysteresisDistance != null) {
+		test.setHysteresisDistance(Double.parseDouble(hysteresisDistance.getValue()));
+	    }
+
 	    tests.add(test);
 	}
 	processor.addPropertyValue("zoneTests", tests);
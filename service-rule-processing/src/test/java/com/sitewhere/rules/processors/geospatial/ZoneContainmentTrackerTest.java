@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.rules.processors.geospatial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sitewhere.rest.model.common.Location;
+import com.sitewhere.rest.model.device.Zone;
+import com.sitewhere.spi.geospatial.ZoneContainment;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+
+public class ZoneContainmentTrackerTest {
+
+    /** Geometry for a zone covering 0..10 on both axes */
+    private static final ZoneGeometry SQUARE = new ZoneGeometry(square(10));
+
+    /** Assignment being tracked */
+    private static final UUID ASSIGNMENT = UUID.randomUUID();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFiresOncePerEntry() {
+	ZoneContainmentTracker tracker = new ZoneContainmentTracker();
+	ZoneTest test = test(ZoneContainment.Inside, 0, 0);
+	assertFalse(tracker.update(ASSIGNMENT, test, SQUARE, point(15, 5), 0));
+	assertTrue(tracker.update(ASSIGNMENT, test, SQUARE, point(5, 5), 1000));
+	assertFalse(tracker.update(ASSIGNMENT, test, SQUARE, point(6, 5), 2000));
+	assertFalse(tracker.update(ASSIGNMENT, test, SQUARE, point(15, 5), 3000));
+	assertTrue(tracker.update(ASSIGNMENT, test, SQUARE, point(5, 5), 4000));
+    }
+
+    @Test
+    public void testOutsideCondition() {
+	ZoneContainmentTracker tracker = new ZoneContainmentTracker();
+	ZoneTest test = test(ZoneContainment.Outside, 0, 0);
+	assertFalse(tracker.update(ASSIGNMENT, test, SQUARE, point(5, 5), 0));
+	assertTrue(tracker.update(ASSIGNMENT, test, SQUARE, point(15, 5), 1000));
+	assertFalse(tracker.update(ASSIGNMENT, test, SQUARE, point(16, 5), 2000));
+    }
+
+    @Test
+    public void testDwell() {
+	ZoneContainmentTracker tracker = new ZoneContainmentTracker();
+	ZoneTest test = test(ZoneContainment.Inside, 60, 0);
+	assertFalse(tracker.update(ASSIGNMENT, test, SQUARE, point(5, 5), 0));
+	assertFalse(tracker.update(ASSIGNMENT, test, SQUARE, point(5, 5), 30000));
+	assertTrue(tracker.update(ASSIGNMENT, test, SQUARE, point(5, 5), 60000));
+	assertFalse(tracker.update(ASSIGNMENT, test, SQUARE, point(5, 5), 90000));
+
+	// Leaving restarts the dwell time.
+	assertFalse(tracker.update(ASSIGNMENT, test, SQUARE, point(15, 5), 100000));
+	assertFalse(tracker.update(ASSIGNMENT, test, SQUARE, point(5, 5), 110000));
+	assertFalse(tracker.update(ASSIGNMENT, test, SQUARE, point(5, 5), 169999));
+	assertTrue(tracker.update(ASSIGNMENT, test, SQUARE, point(5, 5), 170000));
+    }
+
+    @Test
+    public void testHysteresis() {
+	ZoneContainmentTracker tracker = new ZoneContainmentTracker();
+	ZoneTest test = test(ZoneContainment.Inside, 0, 1);
+	assertTrue(tracker.update(ASSIGNMENT, test, SQUARE, point(5, 5), 0));
+
+	// Just outside the boundary is still inside the grown zone.
+	assertFalse(tracker.update(ASSIGNMENT, test, SQUARE, point(10.5, 5), 1000));
+	assertFalse(tracker.update(ASSIGNMENT, test, SQUARE, point(9.5, 5), 2000));
+
+	// Past the hysteresis distance counts as leaving.
+	assertFalse(tracker.update(ASSIGNMENT, test, SQUARE, point(11.5, 5), 3000));
+
+	// Just inside the boundary is still outside the shrunk zone.
+	assertFalse(tracker.update(ASSIGNMENT, test, SQUARE, point(9.5, 5), 4000));
+	assertTrue(tracker.update(ASSIGNMENT, test, SQUARE, point(8.5, 5), 5000));
+    }
+
+    @Test
+    public void testResetAlerted() {
+	ZoneContainmentTracker tracker = new ZoneContainmentTracker();
+	ZoneTest test = test(ZoneContainment.Inside, 0, 0);
+	String key = ZoneContainmentTracker.getStateKey(ASSIGNMENT, test);
+	assertTrue(tracker.update(ASSIGNMENT, test, SQUARE, point(5, 5), 1000));
+	long since = tracker.getSince(key);
+	assertEquals(1000, since);
+
+	// Undelivered alert fires again on the next location.
+	tracker.resetAlerted(key, since);
+	assertTrue(tracker.update(ASSIGNMENT, test, SQUARE, point(5, 5), 2000));
+
+	// Reset for an earlier transition is ignored.
+	assertFalse(tracker.update(ASSIGNMENT, test, SQUARE, point(15, 5), 3000));
+	assertTrue(tracker.update(ASSIGNMENT, test, SQUARE, point(5, 5), 4000));
+	tracker.resetAlerted(key, since);
+	assertFalse(tracker.update(ASSIGNMENT, test, SQUARE, point(5, 5), 5000));
+	assertEquals(-1, tracker.getSince("missing"));
+    }
+
+    @Test
+    public void testSnapshotSaveLoad() throws Exception {
+	ZoneContainmentTracker tracker = new ZoneContainmentTracker();
+	ZoneTest alerted = test(ZoneContainment.Inside, 0, 0);
+	ZoneTest dwelling = test(ZoneContainment.Inside, 60, 0);
+	dwelling.setAlertType("dwell");
+	assertTrue(tracker.update(ASSIGNMENT, alerted, SQUARE, point(5, 5), 0));
+	assertFalse(tracker.update(ASSIGNMENT, dwelling, SQUARE, point(5, 5), 0));
+
+	File file = new File(folder.getRoot(), "state/zones.json");
+	tracker.save(file);
+	assertTrue(file.exists());
+	assertFalse(new File(file.getPath() + ".tmp").exists());
+
+	ZoneContainmentTracker loaded = new ZoneContainmentTracker();
+	assertEquals(2, loaded.load(file));
+	assertEquals(2, loaded.getStateCount());
+
+	// Alerted state and dwell progress survive a restart.
+	assertFalse(loaded.update(ASSIGNMENT, alerted, SQUARE, point(5, 5), 30000));
+	assertFalse(loaded.update(ASSIGNMENT, dwelling, SQUARE, point(5, 5), 30000));
+	assertTrue(loaded.update(ASSIGNMENT, dwelling, SQUARE, point(5, 5), 60000));
+    }
+
+    @Test
+    public void testLoadMissingSnapshot() throws Exception {
+	ZoneContainmentTracker tracker = new ZoneContainmentTracker();
+	assertEquals(0, tracker.load(new File(folder.getRoot(), "missing.json")));
+	assertEquals(0, tracker.getStateCount());
+    }
+
+    /**
+     * Create a zone test.
+     *
+     * @param condition
+     * @param dwellSeconds
+     * @param hysteresis
+     * @return
+     */
+    protected static ZoneTest test(ZoneContainment condition, int dwellSeconds, double hysteresis) {
+	ZoneTest test = new ZoneTest();
+	test.setZoneToken("zone");
+	test.setCondition(condition);
+	test.setAlertType("zone.alert");
+	test.setDwellSeconds(dwellSeconds);
+	test.setHysteresisDistance(hysteresis);
+	return test;
+    }
+
+    /**
+     * Create a square zone with one corner at the origin.
+     *
+     * @param size
+     * @return
+     */
+    protected static Zone square(double size) {
+	List<Location> coordinates = new ArrayList<Location>();
+	coordinates.add(new Location(0.0, 0.0));
+	coordinates.add(new Location(size, 0.0));
+	coordinates.add(new Location(size, size));
+	coordinates.add(new Location(0.0, size));
+	Zone zone = new Zone();
+	zone.setCoordinates(coordinates);
+	return zone;
+    }
+
+    /**
+     * Create a point.
+     *
+     * @param x
+     * @param y
+     * @return
+     */
+    protected static Point point(double x, double y) {
+	return new GeometryFactory().createPoint(new Coordinate(x, y));
+    }
+}
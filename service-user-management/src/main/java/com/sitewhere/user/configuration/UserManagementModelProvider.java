@@ -10,7 +10,9 @@ package com.sitewhere.user.configuration;
 import com.sitewhere.configuration.model.CommonDatastoreProvider;
 import com.sitewhere.configuration.model.ConfigurationModelProvider;
 import com.sitewhere.configuration.parser.IUserManagementParser;
+import com.sitewhere.rest.model.configuration.AttributeNode;
 import com.sitewhere.rest.model.configuration.ElementNode;
+import com.sitewhere.spi.microservice.configuration.model.AttributeType;
 import com.sitewhere.spi.microservice.configuration.model.IConfigurationRoleProvider;
 
 /**
@@ -77,6 +79,15 @@ public class UserManagementModelProvider extends ConfigurationModelProvider {
 		UserManagementRoleKeys.UserManagement, this);
 
 	builder.description("Handles user model operations including persistence.");
+	builder.attribute(
+		(new AttributeNode.Builder("Batch last login updates", "asyncLastLogin", AttributeType.Boolean)
+			.description("Indicates whether last login dates are queued and written in periodic batches.")
+			.defaultValue("false").build()));
+	builder.attribute((new AttributeNode.Builder("Last login flush interval (ms)", "lastLoginFlushIntervalMs",
+		AttributeType.Integer).description("Interval at which queued last login dates are written.")
+			.defaultValue("5000").build()));
+	builder.attribute((new AttributeNode.Builder("Password strength", "passwordStrength", AttributeType.Integer)
+		.description("BCrypt work factor used when hashing passwords.").defaultValue("10").build()));
 
 	return builder.build();
     }
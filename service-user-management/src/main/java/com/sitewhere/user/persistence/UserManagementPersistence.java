@@ -8,9 +8,12 @@
 package com.sitewhere.user.persistence;
 
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.springframework.security.authentication.encoding.MessageDigestPasswordEncoder;
 import org.springframework.security.authentication.encoding.ShaPasswordEncoder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
 import com.sitewhere.persistence.Persistence;
 import com.sitewhere.rest.model.common.MetadataProvider;
@@ -32,8 +35,21 @@ import com.sitewhere.spi.user.request.IUserCreateRequest;
  */
 public class UserManagementPersistence extends Persistence {
 
+    /** Default BCrypt work factor (log2 of hashing rounds) */
+    public static final int DEFAULT_PASSWORD_STRENGTH = 10;
+
+    /** Matches BCrypt hashes and captures work factor */
+    private static final Pattern BCRYPT_PATTERN = Pattern.compile("\\A\\$2([aby])?\\$(\\d\\d)\\$[./0-9A-Za-z]{53}");
+
+    /** Encoder for unsalted SHA hashes created by earlier versions */
+    private static MessageDigestPasswordEncoder legacyPasswordEncoder = new ShaPasswordEncoder();
+
+    /** Work factor used for new hashes */
+    private static volatile int passwordStrength = DEFAULT_PASSWORD_STRENGTH;
+
     /** Password encoder */
-    private static MessageDigestPasswordEncoder passwordEncoder = new ShaPasswordEncoder();
+    private static volatile BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder(
+	    DEFAULT_PASSWORD_STRENGTH);
 
     /**
      * Common logic for creating a user based on an incoming request.
@@ -44,8 +60,7 @@ public class UserManagementPersistence extends Persistence {
      * @throws SiteWhereException
      */
     public static User userCreateLogic(IUserCreateRequest source, boolean encodePassword) throws SiteWhereException {
-	String password = (encodePassword) ? passwordEncoder.encodePassword(source.getPassword(), null)
-		: source.getPassword();
+	String password = (encodePassword) ? encodePassword(source.getPassword()) : source.getPassword();
 
 	User user = new User();
 
@@ -79,8 +94,7 @@ public class UserManagementPersistence extends Persistence {
 	    target.setUsername(source.getUsername());
 	}
 	if (source.getPassword() != null) {
-	    String password = (encodePassword) ? passwordEncoder.encodePassword(source.getPassword(), null)
-		    : source.getPassword();
+	    String password = (encodePassword) ? encodePassword(source.getPassword()) : source.getPassword();
 	    target.setHashedPassword(password);
 	}
 	if (source.getFirstName() != null) {
@@ -145,13 +159,72 @@ public class UserManagementPersistence extends Persistence {
     }
 
     /**
-     * Common logic for encoding a plaintext password.
+     * Common logic for encoding a plaintext password. Passwords are hashed with
+     * BCrypt using a random salt, so the same plaintext produces a different
+     * hash each time. Use {@link #passwordMatches(String, String)} to verify.
      * 
      * @param plaintext
      * @return
      */
     public static String encodePassword(String plaintext) {
-	return passwordEncoder.encodePassword(plaintext, null);
+	return passwordEncoder.encode(plaintext);
+    }
+
+    /**
+     * Verify a plaintext password against a stored hash. Accepts both current
+     * BCrypt hashes and unsalted SHA hashes from earlier versions.
+     * 
+     * @param plaintext
+     * @param hashed
+     * @return
+     */
+    public static boolean passwordMatches(String plaintext, String hashed) {
+	if ((plaintext == null) || (hashed == null)) {
+	    return false;
+	}
+	Matcher matcher = BCRYPT_PATTERN.matcher(hashed);
+	if (matcher.matches()) {
+	    // Encoder only understands '2a', which is computed the same way as '2b' and '2y'.
+	    if (matcher.group(1) != null) {
+		hashed = "$2a" + hashed.substring(3);
+	    }
+	    return passwordEncoder.matches(plaintext, hashed);
+	}
+	return legacyPasswordEncoder.isPasswordValid(hashed, plaintext, null);
+    }
+
+    /**
+     * Indicates whether a stored hash should be replaced after a successful
+     * login because it uses the legacy format or a different work factor than
+     * currently configured.
+     * 
+     * @param hashed
+     * @return
+     */
+    public static boolean needsRehash(String hashed) {
+	if (hashed == null) {
+	    return false;
+	}
+	Matcher matcher = BCRYPT_PATTERN.matcher(hashed);
+	if (!matcher.matches()) {
+	    return true;
+	}
+	return Integer.parseInt(matcher.group(2)) != passwordStrength;
+    }
+
+    /**
+     * Set work factor used when hashing passwords. Existing hashes are upgraded
+     * the next time the user logs in.
+     * 
+     * @param strength
+     */
+    public static void setPasswordStrength(int strength) {
+	passwordEncoder = new BCryptPasswordEncoder(strength);
+	passwordStrength = strength;
+    }
+
+    public static int getPasswordStrength() {
+	return passwordStrength;
     }
 
     private static ITenantManagement getTenantManagement() {
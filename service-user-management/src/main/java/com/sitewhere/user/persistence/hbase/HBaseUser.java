@@ -250,11 +250,15 @@ public class HBaseUser {
 	if (existing == null) {
 	    throw new SiteWhereSystemException(ErrorCode.InvalidUsername, ErrorLevel.ERROR);
 	}
-	String inPassword = UserManagementPersistence.encodePassword(password);
-	if (!existing.getHashedPassword().equals(inPassword)) {
+	if (!UserManagementPersistence.passwordMatches(password, existing.getHashedPassword())) {
 	    throw new SiteWhereSystemException(ErrorCode.InvalidPassword, ErrorLevel.ERROR);
 	}
 
+	// Upgrade legacy password hash.
+	if (UserManagementPersistence.needsRehash(existing.getHashedPassword())) {
+	    existing.setHashedPassword(UserManagementPersistence.encodePassword(password));
+	}
+
 	// Update last login date.
 	existing.setLastLogin(new Date());
 	byte[] primary = getUserRowKey(username);
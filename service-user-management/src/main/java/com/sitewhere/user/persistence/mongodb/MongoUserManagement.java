@@ -10,6 +10,11 @@ package com.sitewhere.user.persistence.mongodb;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -23,10 +28,11 @@ import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
 import com.sitewhere.mongodb.MongoPersistence;
 import com.sitewhere.mongodb.common.MongoSiteWhereEntity;
 import com.sitewhere.rest.model.user.GrantedAuthority;
-import com.sitewhere.rest.model.user.GrantedAuthoritySearchCriteria;
 import com.sitewhere.rest.model.user.User;
 import com.sitewhere.server.lifecycle.LifecycleComponent;
 import com.sitewhere.spi.SiteWhereException;
@@ -55,9 +61,27 @@ public class MongoUserManagement extends LifecycleComponent implements IUserMana
     /** Static logger instance */
     private static Logger LOGGER = LogManager.getLogger();
 
+    /** Default interval at which queued last login updates are written */
+    private static final long DEFAULT_LAST_LOGIN_FLUSH_INTERVAL_MS = 5 * 1000;
+
     /** Injected with global SiteWhere Mongo client */
     private IUserManagementMongoClient mongoClient;
 
+    /** Indicates whether last login updates are queued and written in batches */
+    private boolean asyncLastLogin = false;
+
+    /** Interval at which queued last login updates are written */
+    private long lastLoginFlushIntervalMs = DEFAULT_LAST_LOGIN_FLUSH_INTERVAL_MS;
+
+    /** BCrypt work factor used when hashing passwords */
+    private int passwordStrength = UserManagementPersistence.DEFAULT_PASSWORD_STRENGTH;
+
+    /** Latest login date by username waiting to be written */
+    private Map<String, Date> pendingLastLogins = new ConcurrentHashMap<String, Date>();
+
+    /** Writes queued last login updates */
+    private ScheduledExecutorService lastLoginWriter;
+
     public MongoUserManagement() {
 	super(LifecycleComponentType.DataStore);
     }
@@ -72,6 +96,33 @@ public class MongoUserManagement extends LifecycleComponent implements IUserMana
     public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
 	/** Ensure that expected indexes exist */
 	ensureIndexes();
+
+	UserManagementPersistence.setPasswordStrength(getPasswordStrength());
+
+	if (isAsyncLastLogin()) {
+	    lastLoginWriter = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "User Last Login Writer"));
+	    lastLoginWriter.scheduleWithFixedDelay(() -> flushLastLogins(), getLastLoginFlushIntervalMs(),
+		    getLastLoginFlushIntervalMs(), TimeUnit.MILLISECONDS);
+	}
+    }
+
+    /*
+     * @see
+     * com.sitewhere.server.lifecycle.LifecycleComponent#stop(com.sitewhere.spi.
+     * server.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	if (lastLoginWriter != null) {
+	    lastLoginWriter.shutdown();
+	    try {
+		lastLoginWriter.awaitTermination(10, TimeUnit.SECONDS);
+	    } catch (InterruptedException e) {
+		LOGGER.warn("Interrupted while waiting for last login writer to stop.");
+	    }
+	    lastLoginWriter = null;
+	}
+	flushLastLogins();
     }
 
     /*
@@ -150,22 +201,78 @@ public class MongoUserManagement extends LifecycleComponent implements IUserMana
 	    throw new SiteWhereSystemException(ErrorCode.InvalidPassword, ErrorLevel.ERROR);
 	}
 	Document userObj = assertUser(username);
-	String inPassword = UserManagementPersistence.encodePassword(password);
 	User match = MongoUser.fromDocument(userObj);
-	if (!match.getHashedPassword().equals(inPassword)) {
+	if (!UserManagementPersistence.passwordMatches(password, match.getHashedPassword())) {
 	    throw new SiteWhereSystemException(ErrorCode.InvalidPassword, ErrorLevel.ERROR);
 	}
 
+	// Only the changed fields are written rather than the whole document.
+	Document fields = new Document();
+
+	// Upgrade legacy password hash.
+	if (UserManagementPersistence.needsRehash(match.getHashedPassword())) {
+	    match.setHashedPassword(UserManagementPersistence.encodePassword(password));
+	    fields.append(MongoUser.PROP_HASHED_PASSWORD, match.getHashedPassword());
+	}
+
 	// Update last login date if requested.
 	if (updateLastLogin) {
 	    match.setLastLogin(new Date());
-	    Document updated = MongoUser.toDocument(match);
+	    if (lastLoginWriter != null) {
+		pendingLastLogins.put(username, match.getLastLogin());
+	    } else {
+		fields.append(MongoUser.PROP_LAST_LOGIN, match.getLastLogin());
+	    }
+	}
+
+	if (!fields.isEmpty()) {
+	    setUserFields(username, fields);
+	}
+	return match;
+    }
+
+    /**
+     * Set individual fields on a user document.
+     * 
+     * @param username
+     * @param fields
+     * @throws SiteWhereException
+     */
+    protected void setUserFields(String username, Document fields) throws SiteWhereException {
+	try {
 	    MongoCollection<Document> users = getMongoClient().getUsersCollection();
 	    Document query = new Document(MongoUser.PROP_USERNAME, username);
-	    MongoPersistence.update(users, query, updated);
+	    users.updateOne(query, new Document("$set", fields));
+	} catch (MongoTimeoutException e) {
+	    throw new SiteWhereException("Connection to MongoDB lost.", e);
 	}
+    }
 
-	return match;
+    /**
+     * Write queued last login dates in a single bulk request. Multiple logins
+     * by the same user since the last flush result in a single update.
+     */
+    protected void flushLastLogins() {
+	if (pendingLastLogins.isEmpty()) {
+	    return;
+	}
+	List<WriteModel<Document>> updates = new ArrayList<WriteModel<Document>>();
+	for (String username : pendingLastLogins.keySet()) {
+	    Date lastLogin = pendingLastLogins.remove(username);
+	    if (lastLogin != null) {
+		updates.add(new UpdateOneModel<Document>(new Document(MongoUser.PROP_USERNAME, username),
+			new Document("$set", new Document(MongoUser.PROP_LAST_LOGIN, lastLogin))));
+	    }
+	}
+	if (updates.isEmpty()) {
+	    return;
+	}
+	try {
+	    getMongoClient().getUsersCollection().bulkWrite(updates);
+	    LOGGER.debug("Updated last login for " + updates.size() + " users.");
+	} catch (Throwable e) {
+	    LOGGER.error("Unable to update last login for " + updates.size() + " users.", e);
+	}
     }
 
     /*
@@ -214,17 +321,30 @@ public class MongoUserManagement extends LifecycleComponent implements IUserMana
      * String)
      */
     @Override
+    @SuppressWarnings("unchecked")
     public List<IGrantedAuthority> getGrantedAuthorities(String username) throws SiteWhereException {
-	IUser user = getUserByUsername(username);
-	List<String> userAuths = user.getAuthorities();
-	List<IGrantedAuthority> all = listGrantedAuthorities(new GrantedAuthoritySearchCriteria());
+	Document user = assertUser(username);
+	List<String> userAuths = (List<String>) user.get(MongoUser.PROP_AUTHORITIES);
 	List<IGrantedAuthority> matched = new ArrayList<IGrantedAuthority>();
-	for (IGrantedAuthority auth : all) {
-	    if (userAuths.contains(auth.getAuthority())) {
-		matched.add(auth);
+	if ((userAuths == null) || (userAuths.isEmpty())) {
+	    return matched;
+	}
+	try {
+	    MongoCollection<Document> auths = getMongoClient().getAuthoritiesCollection();
+	    Document query = new Document(MongoGrantedAuthority.PROP_AUTHORITY, new Document("$in", userAuths));
+	    MongoCursor<Document> cursor = auths.find(query)
+		    .sort(new BasicDBObject(MongoGrantedAuthority.PROP_AUTHORITY, 1)).iterator();
+	    try {
+		while (cursor.hasNext()) {
+		    matched.add(MongoGrantedAuthority.fromDBObject(cursor.next()));
+		}
+	    } finally {
+		cursor.close();
 	    }
+	    return matched;
+	} catch (MongoTimeoutException e) {
+	    throw new SiteWhereException("Connection to MongoDB lost.", e);
 	}
-	return matched;
     }
 
     /*
@@ -468,4 +588,28 @@ public class MongoUserManagement extends LifecycleComponent implements IUserMana
     public void setMongoClient(IUserManagementMongoClient mongoClient) {
 	this.mongoClient = mongoClient;
     }
+
+    public boolean isAsyncLastLogin() {
+	return asyncLastLogin;
+    }
+
+    public void setAsyncLastLogin(boolean asyncLastLogin) {
+	this.asyncLastLogin = asyncLastLogin;
+    }
+
+    public long getLastLoginFlushIntervalMs() {
+	return lastLoginFlushIntervalMs;
+    }
+
+    public void setLastLoginFlushIntervalMs(long lastLoginFlushIntervalMs) {
+	this.lastLoginFlushIntervalMs = lastLoginFlushIntervalMs;
+    }
+
+    public int getPasswordStrength() {
+	return passwordStrength;
+    }
+
+    public void setPasswordStrength(int passwordStrength) {
+	this.passwordStrength = passwordStrength;
+    }
 }
\ No newline at end of file
@@ -14,6 +14,7 @@ import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.xml.AbstractBeanDefinitionParser;
 import org.springframework.beans.factory.xml.ParserContext;
 import org.springframework.util.xml.DomUtils;
+import org.w3c.dom.Attr;
 import org.w3c.dom.Element;
 
 import com.sitewhere.configuration.datastore.DatastoreConfiguration;
@@ -47,7 +48,7 @@ public class UserManagementParser extends AbstractBeanDefinitionParser {
 	    }
 	    switch (type) {
 	    case DeviceManagementDatastore: {
-		parseDeviceManagementDatastore(child, context);
+		parseDeviceManagementDatastore(element, child, context);
 		break;
 	    }
 	    }
@@ -58,10 +59,11 @@ public class UserManagementParser extends AbstractBeanDefinitionParser {
     /**
      * Parse device management datastore element.
      * 
+     * @param parent
      * @param element
      * @param context
      */
-    protected void parseDeviceManagementDatastore(Element element, ParserContext context) {
+    protected void parseDeviceManagementDatastore(Element parent, Element element, ParserContext context) {
 	DatastoreConfiguration config = DatastoreConfigurationParser.parseDeviceManagementDatastore(element, context);
 	switch (config.getType()) {
 	case MongoDB: {
@@ -87,6 +89,21 @@ public class UserManagementParser extends AbstractBeanDefinitionParser {
 	BeanDefinitionBuilder management = BeanDefinitionBuilder.rootBeanDefinition(MongoUserManagement.class);
 	management.addPropertyReference("mongoClient", UserManagementBeans.BEAN_MONGODB_CLIENT);
 
+	Attr asyncLastLogin = parent.getAttributeNode("asyncLastLogin");
+	if (asyncLastLogin != null) {
+	    management.addPropertyValue("asyncLastLogin", asyncLastLogin.getValue());
+	}
+
+	Attr lastLoginFlushIntervalMs = parent.getAttributeNode("lastLoginFlushIntervalMs");
+	if (lastLoginFlushIntervalMs != null) {
+	    management.addPropertyValue("lastLoginFlushIntervalMs", lastLoginFlushIntervalMs.getValue());
+	}
+
+	Attr passwordStrength = parent.getAttributeNode("passwordStrength");
+	if (passwordStrength != null) {
+	    management.addPropertyValue("passwordStrength", passwordStrength.getValue());
+	}
+
 	context.getRegistry().registerBeanDefinition(UserManagementBeans.BEAN_USER_MANAGEMENT,
 		management.getBeanDefinition());
     }
@@ -37,6 +37,8 @@ import com.sitewhere.spi.microservice.management.IMicroserviceManagementCoordina
 import com.sitewhere.spi.server.lifecycle.ICompositeLifecycleStep;
 import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 import com.sitewhere.web.configuration.WebRestModelProvider;
+import com.sitewhere.web.security.jwt.TenantModelUpdatesConsumer;
+import com.sitewhere.web.security.jwt.TokenAuthenticationCache;
 import com.sitewhere.web.spi.microservice.IWebRestMicroservice;
 
 /**
@@ -82,6 +84,12 @@ public class WebRestMicroservice extends GlobalMicroservice implements IWebRestM
     /** Microservice management coordinator */
     private IMicroserviceManagementCoordinator microserviceManagementCoordinator;
 
+    /** Cache of verified tokens and tenants */
+    private TokenAuthenticationCache tokenAuthenticationCache = new TokenAuthenticationCache();
+
+    /** Removes updated tenants from authentication cache */
+    private TenantModelUpdatesConsumer tenantModelUpdatesConsumer;
+
     /*
      * (non-Javadoc)
      * 
@@ -193,6 +201,9 @@ public class WebRestMicroservice extends GlobalMicroservice implements IWebRestM
 	// Initialize microservice management coordinator.
 	init.addInitializeStep(this, getMicroserviceManagementCoordinator(), true);
 
+	// Initialize tenant model updates consumer.
+	init.addInitializeStep(this, getTenantModelUpdatesConsumer(), true);
+
 	// Execute initialization steps.
 	init.execute(monitor);
     }
@@ -227,6 +238,9 @@ public class WebRestMicroservice extends GlobalMicroservice implements IWebRestM
 
 	// Microservice management coordinator.
 	this.microserviceManagementCoordinator = new MicroserviceManagementCoordinator(this);
+
+	// Tenant model updates consumer.
+	this.tenantModelUpdatesConsumer = new TenantModelUpdatesConsumer(this, getTokenAuthenticationCache());
     }
 
     /*
@@ -265,6 +279,9 @@ public class WebRestMicroservice extends GlobalMicroservice implements IWebRestM
 	// Start microservice management coordinator.
 	start.addStartStep(this, getMicroserviceManagementCoordinator(), true);
 
+	// Start tenant model updates consumer.
+	start.addStartStep(this, getTenantModelUpdatesConsumer(), true);
+
 	// Execute startup steps.
 	start.execute(monitor);
     }
@@ -304,6 +321,9 @@ public class WebRestMicroservice extends GlobalMicroservice implements IWebRestM
 	// Stop microservice management coordinator.
 	stop.addStopStep(this, getMicroserviceManagementCoordinator());
 
+	// Stop tenant model updates consumer.
+	stop.addStopStep(this, getTenantModelUpdatesConsumer());
+
 	// Execute shutdown steps.
 	stop.execute(monitor);
     }
@@ -413,6 +433,27 @@ public class WebRestMicroservice extends GlobalMicroservice implements IWebRestM
 	this.microserviceManagementCoordinator = microserviceManagementCoordinator;
     }
 
+    /*
+     * @see com.sitewhere.web.spi.microservice.IWebRestMicroservice#
+     * getTokenAuthenticationCache()
+     */
+    @Override
+    public TokenAuthenticationCache getTokenAuthenticationCache() {
+	return tokenAuthenticationCache;
+    }
+
+    public void setTokenAuthenticationCache(TokenAuthenticationCache tokenAuthenticationCache) {
+	this.tokenAuthenticationCache = tokenAuthenticationCache;
+    }
+
+    public TenantModelUpdatesConsumer getTenantModelUpdatesConsumer() {
+	return tenantModelUpdatesConsumer;
+    }
+
+    public void setTenantModelUpdatesConsumer(TenantModelUpdatesConsumer tenantModelUpdatesConsumer) {
+	this.tenantModelUpdatesConsumer = tenantModelUpdatesConsumer;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -7,12 +7,17 @@
  */
 package com.sitewhere.web.rest;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 
+import com.sitewhere.grpc.client.event.DeviceEventExportReader;
 import com.sitewhere.security.UserContextManager;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.SiteWhereSystemException;
@@ -20,6 +25,7 @@ import com.sitewhere.spi.error.ErrorCode;
 import com.sitewhere.spi.error.ErrorLevel;
 import com.sitewhere.spi.user.IUser;
 import com.sitewhere.spi.user.SiteWhereAuthority;
+import com.sitewhere.web.rest.marshaling.DeviceEventExportWriter;
 import com.sitewhere.web.spi.microservice.IWebRestMicroservice;
 
 /**
@@ -78,6 +84,30 @@ public class RestControllerBase {
 	return true;
     }
 
+    /**
+     * Write all events from an export reader to the response as an attachment.
+     * No content length is set, so the response is sent with chunked transfer
+     * encoding as events arrive.
+     * 
+     * @param reader
+     * @param format
+     * @param response
+     * @return
+     * @throws SiteWhereException
+     */
+    public static long writeDeviceEventExport(DeviceEventExportReader reader, DeviceEventExportWriter.Format format,
+	    HttpServletResponse response) throws SiteWhereException {
+	response.setContentType(format.getContentType() + ";charset=UTF-8");
+	response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"events." + format.getName() + "\"");
+	OutputStream output;
+	try {
+	    output = response.getOutputStream();
+	} catch (IOException e) {
+	    throw new SiteWhereException("Unable to open response for event export.", e);
+	}
+	return new DeviceEventExportWriter(output, format).write(reader::next);
+    }
+
     /**
      * Throw exception indicating operation is not permitted.
      * 
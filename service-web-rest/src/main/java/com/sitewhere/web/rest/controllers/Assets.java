@@ -29,7 +29,6 @@ import com.sitewhere.rest.model.asset.request.HardwareAssetCreateRequest;
 import com.sitewhere.rest.model.asset.request.LocationAssetCreateRequest;
 import com.sitewhere.rest.model.asset.request.PersonAssetCreateRequest;
 import com.sitewhere.rest.model.search.SearchCriteria;
-import com.sitewhere.rest.model.search.SearchResults;
 import com.sitewhere.rest.model.search.device.AssignmentsForAssetSearchCriteria;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.SiteWhereSystemException;
@@ -93,21 +92,22 @@ public class Assets extends RestControllerBase {
      * 
      * @param assetModuleId
      * @param criteria
+     * @param page
+     * @param pageSize
      * @return
      * @throws SiteWhereException
      */
     @RequestMapping(value = "/modules/{assetModuleId}/assets", method = RequestMethod.GET)
     @ApiOperation(value = "Search for assets in an asset module")
-    @SuppressWarnings({ "unchecked", "rawtypes" })
     @Secured({ SiteWhereRoles.REST })
-    public SearchResults<? extends IAsset> searchAssets(
+    public ISearchResults<IAsset> searchAssets(
 	    @ApiParam(value = "Unique asset module id", required = true) @PathVariable String assetModuleId,
 	    @ApiParam(value = "Criteria for search", required = false) @RequestParam(defaultValue = "") String criteria,
+	    @ApiParam(value = "Page number", required = false) @RequestParam(required = false, defaultValue = "1") int page,
+	    @ApiParam(value = "Page size", required = false) @RequestParam(required = false, defaultValue = "100") int pageSize,
 	    HttpServletRequest servletRequest) throws SiteWhereException {
-	List<? extends IAsset> found = getAssetResolver().getAssetModuleManagement().searchAssetModule(assetModuleId,
-		criteria);
-	SearchResults<? extends IAsset> results = new SearchResults(found);
-	return results;
+	return getAssetResolver().getAssetModuleManagement().searchAssetModule(assetModuleId, criteria,
+		new SearchCriteria(page, pageSize));
     }
 
     /**
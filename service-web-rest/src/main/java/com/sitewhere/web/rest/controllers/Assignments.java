@@ -9,22 +9,24 @@ package com.sitewhere.web.rest.controllers;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
-import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.web.bind.annotation.CrossOrigin;
@@ -39,8 +41,11 @@ import com.sitewhere.core.DataUtils;
 import com.sitewhere.device.charting.ChartBuilder;
 import com.sitewhere.device.marshaling.DeviceAssignmentMarshalHelper;
 import com.sitewhere.device.marshaling.DeviceCommandInvocationMarshalHelper;
+import com.sitewhere.grpc.client.event.DeviceEventExportReader;
+import com.sitewhere.grpc.client.event.DeviceStreamDataReader;
 import com.sitewhere.rest.model.common.MetadataProvider;
 import com.sitewhere.rest.model.device.DeviceAssignment;
+import com.sitewhere.rest.model.device.DeviceAssignmentState;
 import com.sitewhere.rest.model.device.event.DeviceCommandResponse;
 import com.sitewhere.rest.model.device.event.DeviceMeasurements;
 import com.sitewhere.rest.model.device.event.DeviceStateChange;
@@ -63,9 +68,11 @@ import com.sitewhere.spi.asset.IAssetResolver;
 import com.sitewhere.spi.device.DeviceAssignmentStatus;
 import com.sitewhere.spi.device.DeviceAssignmentType;
 import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceAssignmentState;
 import com.sitewhere.spi.device.IDeviceManagement;
 import com.sitewhere.spi.device.charting.IChartSeries;
 import com.sitewhere.spi.device.command.IDeviceCommand;
+import com.sitewhere.spi.device.event.DeviceEventType;
 import com.sitewhere.spi.device.event.IDeviceAlert;
 import com.sitewhere.spi.device.event.IDeviceCommandInvocation;
 import com.sitewhere.spi.device.event.IDeviceCommandResponse;
@@ -84,6 +91,7 @@ import com.sitewhere.spi.scheduling.request.IScheduledJobCreateRequest;
 import com.sitewhere.spi.search.ISearchResults;
 import com.sitewhere.spi.user.SiteWhereRoles;
 import com.sitewhere.web.rest.RestControllerBase;
+import com.sitewhere.web.rest.marshaling.DeviceEventExportWriter;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -95,7 +103,8 @@ import io.swagger.annotations.ApiParam;
  * @author Derek Adams
  */
 @RestController
-@CrossOrigin(exposedHeaders = { "X-SiteWhere-Error", "X-SiteWhere-Error-Code" })
+@CrossOrigin(exposedHeaders = { "X-SiteWhere-Error", "X-SiteWhere-Error-Code", "ETag", "Content-Range",
+	Assignments.LAST_SEQUENCE_NUMBER_HEADER })
 @RequestMapping(value = "/assignments")
 @Api(value = "assignments")
 public class Assignments extends RestControllerBase {
@@ -103,6 +112,15 @@ public class Assignments extends RestControllerBase {
     /** Static logger instance */
     private static Logger LOGGER = LogManager.getLogger();
 
+    /** Header that reports the last sequence number stored for a stream */
+    public static final String LAST_SEQUENCE_NUMBER_HEADER = "X-SiteWhere-Last-Sequence-Number";
+
+    /** Largest stream chunk accepted (must fit in a single gRPC message) */
+    private static final int MAX_STREAM_CHUNK_SIZE = 3 * 1024 * 1024;
+
+    /** Matches a single byte range */
+    private static final Pattern BYTE_RANGE = Pattern.compile("^bytes=(\\d*)-(\\d*)$");
+
     /**
      * Used by AJAX calls to create a device assignment.
      * 
@@ -156,6 +174,30 @@ public class Assignments extends RestControllerBase {
 	return helper.convert(assignment, getAssetResolver());
     }
 
+    /**
+     * Get last known state for an assignment.
+     * 
+     * @param token
+     * @return
+     * @throws SiteWhereException
+     */
+    @RequestMapping(value = "/{token}/state", method = RequestMethod.GET)
+    @ApiOperation(value = "Get last known state for device assignment")
+    @Secured({ SiteWhereRoles.REST })
+    public IDeviceAssignmentState getDeviceAssignmentState(
+	    @ApiParam(value = "Assignment token", required = true) @PathVariable String token,
+	    HttpServletRequest servletRequest) throws SiteWhereException {
+	IDeviceAssignment assignment = assertDeviceAssignment(token);
+	IDeviceAssignmentState state = getDeviceEventManagement().getDeviceAssignmentState(assignment.getId());
+	if (state == null) {
+	    DeviceAssignmentState empty = new DeviceAssignmentState();
+	    empty.setDeviceAssignmentId(assignment.getId());
+	    empty.setSiteId(assignment.getSiteId());
+	    return empty;
+	}
+	return state;
+    }
+
     /**
      * Delete an existing device assignment.
      * 
@@ -228,6 +270,42 @@ public class Assignments extends RestControllerBase {
 	return getDeviceEventManagement().listDeviceEvents(assertDeviceAssignment(token), criteria);
     }
 
+    /**
+     * Export all device events for an assignment that match the given criteria.
+     * Events are streamed from event management as they are written, so there
+     * is no limit on the number of events exported.
+     * 
+     * @param token
+     * @param format
+     * @param eventType
+     * @param measurement
+     * @param startDate
+     * @param endDate
+     * @param servletRequest
+     * @param response
+     * @throws SiteWhereException
+     */
+    @RequestMapping(value = "/{token}/events/export", method = RequestMethod.GET)
+    @ApiOperation(value = "Export events for device assignment as NDJSON or CSV")
+    @Secured({ SiteWhereRoles.REST })
+    public void exportEvents(@ApiParam(value = "Assignment token", required = true) @PathVariable String token,
+	    @ApiParam(value = "Format (ndjson or csv)", required = false) @RequestParam(required = false, defaultValue = "ndjson") String format,
+	    @ApiParam(value = "Event types", required = false) @RequestParam(required = false) List<DeviceEventType> eventType,
+	    @ApiParam(value = "Measurement names", required = false) @RequestParam(required = false) List<String> measurement,
+	    @ApiParam(value = "Start date", required = false) @RequestParam(required = false) String startDate,
+	    @ApiParam(value = "End date", required = false) @RequestParam(required = false) String endDate,
+	    HttpServletRequest servletRequest, HttpServletResponse response) throws SiteWhereException {
+	DeviceEventExportWriter.Format exportFormat = DeviceEventExportWriter.Format.getByName(format);
+	Date parsedStartDate = parseDateOrSendBadResponse(startDate, response);
+	Date parsedEndDate = parseDateOrSendBadResponse(endDate, response);
+	DateRangeSearchCriteria criteria = new DateRangeSearchCriteria(1, 0, parsedStartDate, parsedEndDate);
+	try (DeviceEventExportReader reader = DeviceEventExportReader.forAssignment(
+		getMicroservice().getDeviceEventManagementApiDemux(), assertDeviceAssignment(token), eventType,
+		measurement, criteria)) {
+	    writeDeviceEventExport(reader, exportFormat, response);
+	}
+    }
+
     /**
      * List all device measurements for a given assignment.
      * 
@@ -515,7 +593,10 @@ public class Assignments extends RestControllerBase {
     }
 
     /**
-     * Adds data to an existing device stream.
+     * Adds data to an existing device stream. A chunk whose sequence number is
+     * already stored is acknowledged without being added again, so a client can
+     * resume an interrupted upload from the last sequence number reported by
+     * {@link #getDeviceStreamDataInfo}.
      * 
      * @param token
      * @param streamId
@@ -534,13 +615,16 @@ public class Assignments extends RestControllerBase {
 	IDeviceAssignment assignment = assertDeviceAssignment(token);
 	IDeviceStream stream = assertDeviceStream(assignment.getId(), streamId);
 	try {
-	    ServletInputStream inData = servletRequest.getInputStream();
-	    ByteArrayOutputStream byteData = new ByteArrayOutputStream();
-	    int data;
-	    while ((data = inData.read()) != -1) {
-		byteData.write(data);
+	    if ((sequenceNumber != null)
+		    && (getDeviceEventManagement().getDeviceStreamData(assignment, streamId, sequenceNumber) != null)) {
+		svtResponse.setStatus(HttpServletResponse.SC_OK);
+		return;
+	    }
+	    byte[] payload = readStreamChunk(servletRequest.getInputStream(), servletRequest.getContentLengthLong());
+	    if (payload == null) {
+		svtResponse.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+		return;
 	    }
-	    byte[] payload = byteData.toByteArray();
 	    DeviceStreamDataCreateRequest request = new DeviceStreamDataCreateRequest();
 	    request.setStreamId(streamId);
 	    request.setSequenceNumber(sequenceNumber);
@@ -591,6 +675,18 @@ public class Assignments extends RestControllerBase {
 	}
     }
 
+    /**
+     * Get all data from a device stream. Chunks are streamed from event
+     * management in sequence order rather than loaded into memory. A single byte
+     * range may be requested, optionally conditioned on the stream ETag via
+     * If-Range.
+     * 
+     * @param token
+     * @param streamId
+     * @param servletRequest
+     * @param svtResponse
+     * @throws SiteWhereException
+     */
     @RequestMapping(value = "/{token}/streams/{streamId:.+}/data", method = RequestMethod.GET)
     @ApiOperation(value = "Get all data from device assignment data stream")
     @Secured({ SiteWhereRoles.REST })
@@ -600,24 +696,77 @@ public class Assignments extends RestControllerBase {
 	IDeviceAssignment assignment = assertDeviceAssignment(token);
 	IDeviceStream stream = assertDeviceStream(assignment.getId(), streamId);
 	svtResponse.setContentType(stream.getContentType());
+	svtResponse.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
 
-	DateRangeSearchCriteria criteria = new DateRangeSearchCriteria(1, 0, null, null);
-	ISearchResults<IDeviceStreamData> data = getDeviceEventManagement().listDeviceStreamData(assignment, streamId,
-		criteria);
-
-	// Sort results by sequence number.
-	Collections.sort(data.getResults(), new Comparator<IDeviceStreamData>() {
-
-	    @Override
-	    public int compare(IDeviceStreamData o1, IDeviceStreamData o2) {
-		return o1.getSequenceNumber().compareTo(o2.getSequenceNumber());
+	// The header of the read that returns the data provides the ETag and the
+	// total size used to resolve the range.
+	long start = 0;
+	long end = -1;
+	Matcher range = getByteRange(servletRequest);
+	DeviceStreamDataReader reader = openStreamDataReader(assignment, streamId, range, false);
+	try {
+	    String etag = getStreamDataETag(reader);
+	    String ifRange = servletRequest.getHeader(HttpHeaders.IF_RANGE);
+	    if ((range != null) && (ifRange != null) && !ifRange.equals(etag)) {
+		// Stream changed since the client read it, so return all of it.
+		reader.close();
+		range = null;
+		reader = openStreamDataReader(assignment, streamId, null, false);
+		etag = getStreamDataETag(reader);
 	    }
-	});
-	for (IDeviceStreamData chunk : data.getResults()) {
-	    try {
-		svtResponse.getOutputStream().write(chunk.getData());
-	    } catch (IOException e) {
-		LOGGER.error("Error writing chunk to servlet output stream.", e);
+	    svtResponse.setHeader(HttpHeaders.ETAG, etag);
+	    if (range != null) {
+		long total = reader.getTotalSize();
+		long[] bounds = resolveByteRange(range, total);
+		if (bounds == null) {
+		    svtResponse.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + total);
+		    svtResponse.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+		    return;
+		}
+		start = bounds[0];
+		end = bounds[1];
+		svtResponse.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+		svtResponse.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + total);
+		svtResponse.setContentLengthLong(end - start + 1);
+	    } else if (etag.equals(servletRequest.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+		svtResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+		return;
+	    }
+	    writeStreamData(reader, svtResponse.getOutputStream(), start, end);
+	} catch (IOException e) {
+	    LOGGER.error("Error writing stream data to servlet output stream.", e);
+	} finally {
+	    reader.close();
+	}
+    }
+
+    /**
+     * Get size and version information for a device stream without returning
+     * the data. Clients resuming an upload use the last sequence number to
+     * determine which chunks still need to be sent.
+     * 
+     * @param token
+     * @param streamId
+     * @param servletRequest
+     * @param svtResponse
+     * @throws SiteWhereException
+     */
+    @RequestMapping(value = "/{token}/streams/{streamId:.+}/data", method = RequestMethod.HEAD)
+    @ApiOperation(value = "Get size and version of device assignment data stream")
+    @Secured({ SiteWhereRoles.REST })
+    public void getDeviceStreamDataInfo(
+	    @ApiParam(value = "Assignment token", required = true) @PathVariable String token,
+	    @ApiParam(value = "Stream Id", required = true) @PathVariable String streamId,
+	    HttpServletRequest servletRequest, HttpServletResponse svtResponse) throws SiteWhereException {
+	IDeviceAssignment assignment = assertDeviceAssignment(token);
+	IDeviceStream stream = assertDeviceStream(assignment.getId(), streamId);
+	try (DeviceStreamDataReader header = openStreamDataReader(assignment, streamId, null, true)) {
+	    svtResponse.setContentType(stream.getContentType());
+	    svtResponse.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+	    svtResponse.setHeader(HttpHeaders.ETAG, getStreamDataETag(header));
+	    svtResponse.setContentLengthLong(header.getTotalSize());
+	    if (header.getChunkCount() > 0) {
+		svtResponse.setHeader(LAST_SEQUENCE_NUMBER_HEADER, String.valueOf(header.getLastSequenceNumber()));
 	    }
 	}
     }
@@ -934,6 +1083,155 @@ public class Assignments extends RestControllerBase {
 	return stream;
     }
 
+    /**
+     * Read a stream chunk from a request body. Returns null if the chunk is
+     * larger than the maximum allowed size.
+     * 
+     * @param input
+     * @param contentLength
+     * @return
+     * @throws IOException
+     */
+    protected static byte[] readStreamChunk(InputStream input, long contentLength) throws IOException {
+	if (contentLength > MAX_STREAM_CHUNK_SIZE) {
+	    return null;
+	}
+	ByteArrayOutputStream output = new ByteArrayOutputStream((contentLength > 0) ? (int) contentLength : 8192);
+	byte[] buffer = new byte[8192];
+	int read;
+	while ((read = input.read(buffer)) != -1) {
+	    if ((output.size() + read) > MAX_STREAM_CHUNK_SIZE) {
+		return null;
+	    }
+	    output.write(buffer, 0, read);
+	}
+	return output.toByteArray();
+    }
+
+    /**
+     * Open a reader for stream data, starting at the beginning of the byte range
+     * (or of the stream if the range is null).
+     * 
+     * @param assignment
+     * @param streamId
+     * @param range
+     * @param headerOnly
+     * @return
+     * @throws SiteWhereException
+     */
+    protected DeviceStreamDataReader openStreamDataReader(IDeviceAssignment assignment, String streamId,
+	    Matcher range, boolean headerOnly) throws SiteWhereException {
+	long startOffset = 0;
+	long suffixLength = 0;
+	if (range != null) {
+	    if (range.group(1).isEmpty()) {
+		suffixLength = Long.parseLong(range.group(2));
+	    } else {
+		startOffset = Long.parseLong(range.group(1));
+	    }
+	}
+	return new DeviceStreamDataReader(getMicroservice().getDeviceEventManagementApiDemux(), assignment, streamId,
+		startOffset, suffixLength, headerOnly);
+    }
+
+    /**
+     * Copy stream data to an output stream, limited to the given byte range. An
+     * end of -1 indicates all data after the start offset.
+     * 
+     * @param reader
+     * @param output
+     * @param start
+     * @param end
+     * @throws SiteWhereException
+     * @throws IOException
+     */
+    protected static void writeStreamData(DeviceStreamDataReader reader, OutputStream output, long start, long end)
+	    throws SiteWhereException, IOException {
+	long remaining = (end >= 0) ? (end - start + 1) : Long.MAX_VALUE;
+	IDeviceStreamData chunk;
+	while ((remaining > 0) && ((chunk = reader.next()) != null)) {
+	    if (chunk.getData() == null) {
+		continue;
+	    }
+	    int from = (int) Math.max(0, start - reader.getChunkOffset());
+	    int length = (int) Math.min(chunk.getData().length - from, remaining);
+	    if (length > 0) {
+		output.write(chunk.getData(), from, length);
+		remaining -= length;
+	    }
+	}
+    }
+
+    /**
+     * Stream data is append-only, so the chunk count and last sequence number
+     * identify its content.
+     * 
+     * @param reader
+     * @return
+     */
+    protected static String getStreamDataETag(DeviceStreamDataReader reader) {
+	return "\"" + reader.getChunkCount() + "-" + reader.getLastSequenceNumber() + "\"";
+    }
+
+    /**
+     * Get a single byte range from the request. Returns null if no range was
+     * requested or if the range is in a form that is not supported (in which
+     * case the entire stream is returned).
+     * 
+     * @param servletRequest
+     * @return
+     */
+    protected static Matcher getByteRange(HttpServletRequest servletRequest) {
+	String header = servletRequest.getHeader(HttpHeaders.RANGE);
+	if (header == null) {
+	    return null;
+	}
+	Matcher matcher = BYTE_RANGE.matcher(header.trim());
+	if (!matcher.matches() || (matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+	    return null;
+	}
+	try {
+	    for (int i = 1; i <= 2; i++) {
+		if (!matcher.group(i).isEmpty()) {
+		    Long.parseLong(matcher.group(i));
+		}
+	    }
+	} catch (NumberFormatException e) {
+	    return null;
+	}
+	return matcher;
+    }
+
+    /**
+     * Resolve a byte range against the total size. Returns inclusive start and
+     * end offsets or null if the range can not be satisfied.
+     * 
+     * @param range
+     * @param total
+     * @return
+     */
+    protected static long[] resolveByteRange(Matcher range, long total) {
+	String first = range.group(1);
+	String last = range.group(2);
+	try {
+	    if (first.isEmpty()) {
+		long suffix = Long.parseLong(last);
+		if ((suffix == 0) || (total == 0)) {
+		    return null;
+		}
+		return new long[] { Math.max(0, total - suffix), total - 1 };
+	    }
+	    long start = Long.parseLong(first);
+	    long end = last.isEmpty() ? (total - 1) : Math.min(Long.parseLong(last), total - 1);
+	    if ((start >= total) || (end < start)) {
+		return null;
+	    }
+	    return new long[] { start, end };
+	} catch (NumberFormatException e) {
+	    return null;
+	}
+    }
+
     private IDeviceManagement getDeviceManagement() {
 	return getMicroservice().getDeviceManagementApiDemux().getApiChannel();
     }
@@ -7,20 +7,25 @@
  */
 package com.sitewhere.web.rest.controllers;
 
+import java.util.Date;
+
 import javax.servlet.http.HttpServletRequest;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.sitewhere.device.marshaling.DeviceCommandInvocationMarshalHelper;
 import com.sitewhere.rest.model.device.event.DeviceCommandInvocation;
 import com.sitewhere.rest.model.device.event.view.DeviceCommandInvocationSummary;
+import com.sitewhere.rest.model.search.DateRangeSearchCriteria;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.IDeviceManagement;
 import com.sitewhere.spi.device.event.IDeviceCommandInvocation;
@@ -51,6 +56,9 @@ public class CommandInvocations extends RestControllerBase {
     @SuppressWarnings("unused")
     private static Logger LOGGER = LogManager.getLogger();
 
+    /** Maximum number of responses included in an invocation summary */
+    private static final int SUMMARY_MAX_RESPONSES = 100;
+
     /**
      * Get a command invocation by unique id.
      * 
@@ -94,14 +102,19 @@ public class CommandInvocations extends RestControllerBase {
 	helper.setIncludeCommand(true);
 	DeviceCommandInvocation converted = helper.convert(invocation);
 	ISearchResults<IDeviceCommandResponse> responses = getDeviceEventManagement()
-		.listDeviceCommandInvocationResponses(found.getId());
+		.listDeviceCommandInvocationResponses(found.getId(),
+			new DateRangeSearchCriteria(1, SUMMARY_MAX_RESPONSES, null, null));
 	return DeviceInvocationSummaryBuilder.build(converted, responses.getResults(), getDeviceEventManagement());
     }
 
     /**
-     * List all responses for a command invocation.
+     * List responses for a command invocation.
      * 
-     * @param assignmentToken
+     * @param id
+     * @param page
+     * @param pageSize
+     * @param startDate
+     * @param endDate
      * @return
      * @throws SiteWhereException
      */
@@ -110,8 +123,13 @@ public class CommandInvocations extends RestControllerBase {
     @Secured({ SiteWhereRoles.REST })
     public ISearchResults<IDeviceCommandResponse> listCommandInvocationResponses(
 	    @ApiParam(value = "Invocation id", required = true) @PathVariable String id,
+	    @ApiParam(value = "Page number", required = false) @RequestParam(required = false, defaultValue = "1") int page,
+	    @ApiParam(value = "Page size", required = false) @RequestParam(required = false, defaultValue = "100") int pageSize,
+	    @ApiParam(value = "Start date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
+	    @ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
 	    HttpServletRequest servletRequest) throws SiteWhereException {
-	return getDeviceEventManagement().listDeviceCommandInvocationResponses(id);
+	DateRangeSearchCriteria criteria = new DateRangeSearchCriteria(page, pageSize, startDate, endDate);
+	return getDeviceEventManagement().listDeviceCommandInvocationResponses(id, criteria);
     }
 
     private IDeviceManagement getDeviceManagement() {
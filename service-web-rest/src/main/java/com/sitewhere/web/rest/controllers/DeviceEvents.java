@@ -7,24 +7,40 @@
  */
 package com.sitewhere.web.rest.controllers;
 
+import java.util.Date;
+import java.util.List;
+
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.sitewhere.grpc.client.event.DeviceEventExportReader;
 import com.sitewhere.rest.model.device.event.request.DeviceEventCreateRequest;
+import com.sitewhere.rest.model.search.DateRangeSearchCriteria;
 import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.SiteWhereSystemException;
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceManagement;
+import com.sitewhere.spi.device.ISite;
+import com.sitewhere.spi.device.event.DeviceEventType;
 import com.sitewhere.spi.device.event.IDeviceEvent;
 import com.sitewhere.spi.device.event.IDeviceEventManagement;
+import com.sitewhere.spi.error.ErrorCode;
+import com.sitewhere.spi.error.ErrorLevel;
 import com.sitewhere.spi.user.SiteWhereRoles;
 import com.sitewhere.web.rest.RestControllerBase;
+import com.sitewhere.web.rest.marshaling.DeviceEventExportWriter;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -92,6 +108,66 @@ public class DeviceEvents extends RestControllerBase {
 	return getDeviceEventManagement().getDeviceEventByAlternateId(alternateId);
     }
 
+    /**
+     * Export all events for either an assignment or a site that match the given
+     * criteria. Events are streamed from event management as they are written,
+     * so there is no limit on the number of events exported.
+     * 
+     * @param assignmentToken
+     * @param siteToken
+     * @param format
+     * @param eventType
+     * @param measurement
+     * @param startDate
+     * @param endDate
+     * @param servletRequest
+     * @param response
+     * @throws SiteWhereException
+     */
+    @RequestMapping(value = "/export", method = RequestMethod.GET)
+    @ApiOperation(value = "Export events for an assignment or site as NDJSON or CSV")
+    @Secured({ SiteWhereRoles.REST })
+    public void exportEvents(
+	    @ApiParam(value = "Assignment token", required = false) @RequestParam(required = false) String assignmentToken,
+	    @ApiParam(value = "Site token", required = false) @RequestParam(required = false) String siteToken,
+	    @ApiParam(value = "Format (ndjson or csv)", required = false) @RequestParam(required = false, defaultValue = "ndjson") String format,
+	    @ApiParam(value = "Event types", required = false) @RequestParam(required = false) List<DeviceEventType> eventType,
+	    @ApiParam(value = "Measurement names", required = false) @RequestParam(required = false) List<String> measurement,
+	    @ApiParam(value = "Start date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
+	    @ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
+	    HttpServletRequest servletRequest, HttpServletResponse response) throws SiteWhereException {
+	if ((assignmentToken == null) == (siteToken == null)) {
+	    throw new SiteWhereException("Event export requires either an assignment token or a site token.");
+	}
+	DeviceEventExportWriter.Format exportFormat = DeviceEventExportWriter.Format.getByName(format);
+	DateRangeSearchCriteria criteria = new DateRangeSearchCriteria(1, 0, startDate, endDate);
+	DeviceEventExportReader reader;
+	if (assignmentToken != null) {
+	    IDeviceAssignment assignment = getDeviceManagement().getDeviceAssignmentByToken(assignmentToken);
+	    if (assignment == null) {
+		throw new SiteWhereSystemException(ErrorCode.InvalidDeviceAssignmentToken, ErrorLevel.ERROR);
+	    }
+	    reader = DeviceEventExportReader.forAssignment(getMicroservice().getDeviceEventManagementApiDemux(),
+		    assignment, eventType, measurement, criteria);
+	} else {
+	    ISite site = getDeviceManagement().getSiteByToken(siteToken);
+	    if (site == null) {
+		throw new SiteWhereSystemException(ErrorCode.InvalidSiteToken, ErrorLevel.ERROR);
+	    }
+	    reader = DeviceEventExportReader.forSite(getMicroservice().getDeviceEventManagementApiDemux(), site,
+		    eventType, measurement, criteria);
+	}
+	try {
+	    writeDeviceEventExport(reader, exportFormat, response);
+	} finally {
+	    reader.close();
+	}
+    }
+
+    private IDeviceManagement getDeviceManagement() {
+	return getMicroservice().getDeviceManagementApiDemux().getApiChannel();
+    }
+
     private IDeviceEventManagement getDeviceEventManagement() {
 	return getMicroservice().getDeviceEventManagementApiDemux().getApiChannel();
     }
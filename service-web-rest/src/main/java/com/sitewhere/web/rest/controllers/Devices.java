@@ -7,6 +7,8 @@
  */
 package com.sitewhere.web.rest.controllers;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
@@ -29,14 +31,20 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.sitewhere.common.MarshalUtils;
 import com.sitewhere.device.group.DeviceGroupUtils;
 import com.sitewhere.device.marshaling.DeviceAssignmentMarshalHelper;
 import com.sitewhere.device.marshaling.DeviceMarshalHelper;
+import com.sitewhere.rest.model.asset.AssetReference;
+import com.sitewhere.rest.model.device.DeviceBulkCreateError;
+import com.sitewhere.rest.model.device.DeviceBulkCreateResponse;
 import com.sitewhere.rest.model.device.DeviceElementMapping;
 import com.sitewhere.rest.model.device.event.DeviceEventBatch;
 import com.sitewhere.rest.model.device.event.request.DeviceAlertCreateRequest;
 import com.sitewhere.rest.model.device.event.request.DeviceLocationCreateRequest;
 import com.sitewhere.rest.model.device.event.request.DeviceMeasurementsCreateRequest;
+import com.sitewhere.rest.model.device.request.DeviceAssignmentCreateRequest;
+import com.sitewhere.rest.model.device.request.DeviceBulkCreateRequest;
 import com.sitewhere.rest.model.device.request.DeviceCreateRequest;
 import com.sitewhere.rest.model.search.SearchCriteria;
 import com.sitewhere.rest.model.search.SearchResults;
@@ -44,8 +52,11 @@ import com.sitewhere.rest.model.search.device.DeviceSearchCriteria;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.SiteWhereSystemException;
 import com.sitewhere.spi.asset.IAssetResolver;
+import com.sitewhere.spi.device.DeviceAssignmentType;
 import com.sitewhere.spi.device.IDevice;
 import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceBulkCreateError;
+import com.sitewhere.spi.device.IDeviceBulkCreateResponse;
 import com.sitewhere.spi.device.IDeviceManagement;
 import com.sitewhere.spi.device.event.IDeviceEventBatchResponse;
 import com.sitewhere.spi.device.event.IDeviceEventManagement;
@@ -59,6 +70,7 @@ import com.sitewhere.spi.search.ISearchResults;
 import com.sitewhere.spi.search.device.IDeviceSearchCriteria;
 import com.sitewhere.spi.user.SiteWhereRoles;
 import com.sitewhere.web.rest.RestControllerBase;
+import com.sitewhere.web.rest.marshaling.DeviceBulkUploadParser;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -97,6 +109,97 @@ public class Devices extends RestControllerBase {
 	return helper.convert(result, getAssetResolver());
     }
 
+    /**
+     * Create devices in bulk from an upload of newline-delimited JSON or CSV.
+     * Rows are persisted in batches and a JSON line is written after each batch
+     * with its results so clients can track progress on large uploads. A final
+     * line contains the totals for the upload.
+     * 
+     * @param updateExisting
+     * @param batchSize
+     * @param assignmentType
+     * @param assetModuleId
+     * @param assetId
+     * @param servletRequest
+     * @param svtResponse
+     * @throws SiteWhereException
+     */
+    @RequestMapping(value = "/bulk", method = RequestMethod.POST)
+    @ApiOperation(value = "Create devices in bulk from JSON lines or CSV upload")
+    @Secured({ SiteWhereRoles.REST })
+    public void createDevices(
+	    @ApiParam(value = "Update devices that already exist", required = false) @RequestParam(defaultValue = "false") boolean updateExisting,
+	    @ApiParam(value = "Rows per batch", required = false) @RequestParam(defaultValue = "1000") int batchSize,
+	    @ApiParam(value = "Create assignment of type", required = false) @RequestParam(required = false) DeviceAssignmentType assignmentType,
+	    @ApiParam(value = "Asset module for associated assignments", required = false) @RequestParam(required = false) String assetModuleId,
+	    @ApiParam(value = "Asset id for associated assignments", required = false) @RequestParam(required = false) String assetId,
+	    HttpServletRequest servletRequest, HttpServletResponse svtResponse) throws SiteWhereException {
+	DeviceAssignmentCreateRequest template = null;
+	if (assignmentType != null) {
+	    template = new DeviceAssignmentCreateRequest();
+	    template.setAssignmentType(assignmentType);
+	    if ((assetModuleId != null) && (assetId != null)) {
+		template.setAssetReference(new AssetReference.Builder(assetModuleId, assetId).build());
+	    }
+	}
+	boolean csv = (servletRequest.getContentType() != null) && servletRequest.getContentType().contains("csv");
+	svtResponse.setContentType("application/x-ndjson");
+	try {
+	    DeviceBulkUploadParser parser = new DeviceBulkUploadParser(servletRequest.getReader(), csv);
+	    OutputStream output = svtResponse.getOutputStream();
+	    DeviceBulkCreateResponse totals = new DeviceBulkCreateResponse();
+	    int errorCount = 0;
+	    boolean more = true;
+	    while (more) {
+		List<DeviceCreateRequest> rows = new ArrayList<DeviceCreateRequest>();
+		List<Integer> indexes = new ArrayList<Integer>();
+		DeviceBulkCreateResponse progress = new DeviceBulkCreateResponse();
+		more = parser.readBatch(Math.max(1, batchSize), rows, indexes, progress.getErrors());
+		if (!rows.isEmpty()) {
+		    DeviceBulkCreateRequest batch = new DeviceBulkCreateRequest();
+		    batch.setDevices(rows);
+		    batch.setUpdateExisting(updateExisting);
+		    batch.setAssignmentTemplate(template);
+		    IDeviceBulkCreateResponse result = getDeviceManagement().createDevices(batch);
+		    progress.setCreatedCount(result.getCreatedCount());
+		    progress.setUpdatedCount(result.getUpdatedCount());
+		    progress.setAssignmentsCreated(result.getAssignmentsCreated());
+		    for (IDeviceBulkCreateError error : result.getErrors()) {
+			progress.getErrors().add(new DeviceBulkCreateError(indexes.get(error.getIndex()),
+				error.getHardwareId(), error.getMessage()));
+		    }
+		}
+		if ((!rows.isEmpty()) || (!progress.getErrors().isEmpty())) {
+		    totals.setCreatedCount(totals.getCreatedCount() + progress.getCreatedCount());
+		    totals.setUpdatedCount(totals.getUpdatedCount() + progress.getUpdatedCount());
+		    totals.setAssignmentsCreated(totals.getAssignmentsCreated() + progress.getAssignmentsCreated());
+		    errorCount += progress.getErrors().size();
+		    writeJsonLine(output, progress);
+		}
+	    }
+	    writeJsonLine(output, totals);
+	    LOGGER.info("Bulk device upload created " + totals.getCreatedCount() + " and updated "
+		    + totals.getUpdatedCount() + " devices with " + errorCount + " errors.");
+	} catch (IOException e) {
+	    throw new SiteWhereException("Unable to process bulk device upload.", e);
+	}
+    }
+
+    /**
+     * Write an object as a single JSON line and flush so the client receives it
+     * immediately.
+     * 
+     * @param output
+     * @param object
+     * @throws IOException
+     * @throws SiteWhereException
+     */
+    protected void writeJsonLine(OutputStream output, Object object) throws IOException, SiteWhereException {
+	output.write(MarshalUtils.marshalJson(object));
+	output.write('\n');
+	output.flush();
+    }
+
     /**
      * Used by AJAX calls to find a device by hardware id.
      * 
@@ -12,6 +12,7 @@ import java.util.Date;
 import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -27,6 +28,7 @@ import org.springframework.web.bind.annotation.RestController;
 
 import com.sitewhere.device.marshaling.DeviceAssignmentMarshalHelper;
 import com.sitewhere.device.marshaling.SiteMarshalHelper;
+import com.sitewhere.grpc.client.event.DeviceEventExportReader;
 import com.sitewhere.rest.model.device.DeviceAssignment;
 import com.sitewhere.rest.model.device.Zone;
 import com.sitewhere.rest.model.device.asset.DeviceAlertWithAsset;
@@ -46,9 +48,11 @@ import com.sitewhere.spi.SiteWhereSystemException;
 import com.sitewhere.spi.asset.IAssetResolver;
 import com.sitewhere.spi.device.DeviceAssignmentStatus;
 import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceAssignmentState;
 import com.sitewhere.spi.device.IDeviceManagement;
 import com.sitewhere.spi.device.ISite;
 import com.sitewhere.spi.device.IZone;
+import com.sitewhere.spi.device.event.DeviceEventType;
 import com.sitewhere.spi.device.event.IDeviceAlert;
 import com.sitewhere.spi.device.event.IDeviceCommandInvocation;
 import com.sitewhere.spi.device.event.IDeviceCommandResponse;
@@ -61,6 +65,7 @@ import com.sitewhere.spi.error.ErrorLevel;
 import com.sitewhere.spi.search.ISearchResults;
 import com.sitewhere.spi.user.SiteWhereRoles;
 import com.sitewhere.web.rest.RestControllerBase;
+import com.sitewhere.web.rest.marshaling.DeviceEventExportWriter;
 
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -360,6 +365,41 @@ public class Sites extends RestControllerBase {
 	return new SearchResults<IDeviceStateChange>(wrapped, results.getNumResults());
     }
 
+    /**
+     * Export all device events for a site that match the given criteria. Events
+     * are streamed from event management as they are written, so there is no
+     * limit on the number of events exported.
+     * 
+     * @param siteToken
+     * @param format
+     * @param eventType
+     * @param measurement
+     * @param startDate
+     * @param endDate
+     * @param servletRequest
+     * @param response
+     * @throws SiteWhereException
+     */
+    @RequestMapping(value = "/{siteToken}/events/export", method = RequestMethod.GET)
+    @ApiOperation(value = "Export events for site as NDJSON or CSV")
+    @Secured({ SiteWhereRoles.REST })
+    public void exportEventsForSite(
+	    @ApiParam(value = "Unique token that identifies site", required = true) @PathVariable String siteToken,
+	    @ApiParam(value = "Format (ndjson or csv)", required = false) @RequestParam(required = false, defaultValue = "ndjson") String format,
+	    @ApiParam(value = "Event types", required = false) @RequestParam(required = false) List<DeviceEventType> eventType,
+	    @ApiParam(value = "Measurement names", required = false) @RequestParam(required = false) List<String> measurement,
+	    @ApiParam(value = "Start date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
+	    @ApiParam(value = "End date", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
+	    HttpServletRequest servletRequest, HttpServletResponse response) throws SiteWhereException {
+	DeviceEventExportWriter.Format exportFormat = DeviceEventExportWriter.Format.getByName(format);
+	DateRangeSearchCriteria criteria = new DateRangeSearchCriteria(1, 0, startDate, endDate);
+	try (DeviceEventExportReader reader = DeviceEventExportReader.forSite(
+		getMicroservice().getDeviceEventManagementApiDemux(), assertSite(siteToken), eventType, measurement,
+		criteria)) {
+	    writeDeviceEventExport(reader, exportFormat, response);
+	}
+    }
+
     /**
      * Find device assignments associated with a site.
      * 
@@ -408,23 +448,20 @@ public class Sites extends RestControllerBase {
 	    @ApiParam(value = "Interactions after", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
 	    @ApiParam(value = "Interactions before", required = false) @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
 	    HttpServletRequest servletRequest) throws SiteWhereException {
-	// DateRangeSearchCriteria criteria = new DateRangeSearchCriteria(page,
-	// pageSize, startDate, endDate);
-	// ISearchResults<IDeviceAssignment> matches =
-	// SiteWhere.getServer().getDeviceManagement(getTenant(servletRequest))
-	// .getDeviceAssignmentsWithLastInteraction(siteToken, criteria);
-	// DeviceAssignmentMarshalHelper helper = new
-	// DeviceAssignmentMarshalHelper(getTenant(servletRequest));
-	// helper.setIncludeAsset(false);
-	// List<DeviceAssignment> converted = new ArrayList<DeviceAssignment>();
-	// for (IDeviceAssignment assignment : matches.getResults()) {
-	// converted.add(
-	// helper.convert(assignment,
-	// SiteWhere.getServer().getAssetModuleManager(getTenant(servletRequest))));
-	// }
-	// return new SearchResults<DeviceAssignment>(converted,
-	// matches.getNumResults());
-	return null;
+	ISite existing = assertSite(siteToken);
+	DateRangeSearchCriteria criteria = new DateRangeSearchCriteria(page, pageSize, startDate, endDate);
+	ISearchResults<IDeviceAssignmentState> matches = getDeviceEventManagement()
+		.listDeviceAssignmentStatesForSite(existing, criteria);
+	DeviceAssignmentMarshalHelper helper = new DeviceAssignmentMarshalHelper(getDeviceManagement());
+	helper.setIncludeAsset(false);
+	List<DeviceAssignment> converted = new ArrayList<DeviceAssignment>();
+	for (IDeviceAssignmentState state : matches.getResults()) {
+	    IDeviceAssignment assignment = getDeviceManagement().getDeviceAssignment(state.getDeviceAssignmentId());
+	    if (assignment != null) {
+		converted.add(helper.convert(assignment, getAssetResolver()));
+	    }
+	}
+	return new SearchResults<DeviceAssignment>(converted, matches.getNumResults());
     }
 
     /**
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.rest.marshaling;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sitewhere.common.MarshalUtils;
+import com.sitewhere.rest.model.device.DeviceBulkCreateError;
+import com.sitewhere.rest.model.device.request.DeviceCreateRequest;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDeviceBulkCreateError;
+
+/**
+ * Reads device create requests from an upload one row at a time so large
+ * files can be processed in batches without loading the whole body. Supports
+ * newline-delimited JSON (one {@link DeviceCreateRequest} per line) and CSV
+ * with a header row. Recognized CSV columns map to request fields and any
+ * other column is stored as device metadata. Rows that can not be parsed are
+ * reported as errors and do not stop the upload.
+ *
+ * @author Derek
+ */
+public class DeviceBulkUploadParser {
+
+    /** Upload reader */
+    private BufferedReader reader;
+
+    /** Indicates upload is CSV rather than JSON */
+    private boolean csv;
+
+    /** CSV column names */
+    private String[] columns;
+
+    /** Index of next row */
+    private int rowIndex;
+
+    public DeviceBulkUploadParser(BufferedReader reader, boolean csv) {
+	this.reader = reader;
+	this.csv = csv;
+    }
+
+    /**
+     * Read the next batch of rows. Parsed requests are added to the row list
+     * along with their index in the upload. Rows that fail to parse are added to
+     * the error list.
+     * 
+     * @param max
+     * @param rows
+     * @param indexes
+     * @param errors
+     * @return false if the end of the upload was reached
+     * @throws SiteWhereException
+     */
+    public boolean readBatch(int max, List<DeviceCreateRequest> rows, List<Integer> indexes,
+	    List<IDeviceBulkCreateError> errors) throws SiteWhereException {
+	try {
+	    if (csv && (columns == null)) {
+		String header = reader.readLine();
+		if (header == null) {
+		    return false;
+		}
+		columns = splitCsv(header).toArray(new String[0]);
+	    }
+	    int read = 0;
+	    String line;
+	    while ((read < max) && ((line = reader.readLine()) != null)) {
+		if (line.trim().isEmpty()) {
+		    continue;
+		}
+		int index = rowIndex++;
+		read++;
+		try {
+		    rows.add(csv ? parseCsv(line) : parseJson(line));
+		    indexes.add(index);
+		} catch (SiteWhereException e) {
+		    errors.add(new DeviceBulkCreateError(index, null, e.getMessage()));
+		}
+	    }
+	    return read == max;
+	} catch (IOException e) {
+	    throw new SiteWhereException("Unable to read device upload.", e);
+	}
+    }
+
+    /**
+     * Parse a JSON row.
+     * 
+     * @param line
+     * @return
+     * @throws SiteWhereException
+     */
+    protected DeviceCreateRequest parseJson(String line) throws SiteWhereException {
+	return MarshalUtils.unmarshalJson(line.getBytes(StandardCharsets.UTF_8), DeviceCreateRequest.class);
+    }
+
+    /**
+     * Parse a CSV row based on the header columns.
+     * 
+     * @param line
+     * @return
+     * @throws SiteWhereException
+     */
+    protected DeviceCreateRequest parseCsv(String line) throws SiteWhereException {
+	List<String> values = splitCsv(line);
+	if (values.size() != columns.length) {
+	    throw new SiteWhereException(
+		    "Expected " + columns.length + " columns but found " + values.size() + ".");
+	}
+	DeviceCreateRequest request = new DeviceCreateRequest();
+	Map<String, String> metadata = new HashMap<String, String>();
+	for (int i = 0; i < columns.length; i++) {
+	    String value = values.get(i).isEmpty() ? null : values.get(i);
+	    switch (columns[i]) {
+	    case "hardwareId":
+		request.setHardwareId(value);
+		break;
+	    case "siteToken":
+		request.setSiteToken(value);
+		break;
+	    case "deviceTypeToken":
+		request.setDeviceTypeToken(value);
+		break;
+	    case "parentHardwareId":
+		request.setParentHardwareId(value);
+		break;
+	    case "comments":
+		request.setComments(value);
+		break;
+	    case "status":
+		request.setStatus(value);
+		break;
+	    default:
+		if (value != null) {
+		    metadata.put(columns[i], value);
+		}
+	    }
+	}
+	request.setMetadata(metadata);
+	return request;
+    }
+
+    /**
+     * Split a CSV line into values. Values may be quoted with double quotes, in
+     * which case commas are allowed and a doubled quote is an escaped quote.
+     * 
+     * @param line
+     * @return
+     */
+    protected static List<String> splitCsv(String line) {
+	List<String> values = new ArrayList<String>();
+	StringBuilder current = new StringBuilder();
+	boolean quoted = false;
+	for (int i = 0; i < line.length(); i++) {
+	    char c = line.charAt(i);
+	    if (quoted) {
+		if ((c == '"') && (i + 1 < line.length()) && (line.charAt(i + 1) == '"')) {
+		    current.append('"');
+		    i++;
+		} else if (c == '"') {
+		    quoted = false;
+		} else {
+		    current.append(c);
+		}
+	    } else if (c == '"') {
+		quoted = true;
+	    } else if (c == ',') {
+		values.add(current.toString().trim());
+		current.setLength(0);
+	    } else {
+		current.append(c);
+	    }
+	}
+	values.add(current.toString().trim());
+	return values;
+    }
+}
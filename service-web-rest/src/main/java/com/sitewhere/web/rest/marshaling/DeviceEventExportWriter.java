@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.rest.marshaling;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.sitewhere.common.MarshalUtils;
+import com.sitewhere.rest.model.datatype.JsonDateSerializer;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.IDeviceAlert;
+import com.sitewhere.spi.device.event.IDeviceCommandInvocation;
+import com.sitewhere.spi.device.event.IDeviceCommandResponse;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceLocation;
+import com.sitewhere.spi.device.event.IDeviceMeasurements;
+import com.sitewhere.spi.device.event.IDeviceStateChange;
+import com.sitewhere.spi.device.event.IDeviceStreamData;
+
+/**
+ * Writes device events to an output stream as newline-delimited JSON or CSV.
+ * Events are pulled from a source one at a time and the output is flushed at a
+ * fixed interval, so a servlet response is sent in chunks as the export runs
+ * and memory use does not depend on the number of events.
+ * 
+ * CSV output has one row per event, except for measurements which have one row
+ * per measurement. Type-specific values share the name, value and message
+ * columns:
+ * <ul>
+ * <li>Measurements: measurement name and value.</li>
+ * <li>Alert: alert type, level and message.</li>
+ * <li>Command invocation: command token and status.</li>
+ * <li>Command response: originating event id and response.</li>
+ * <li>State change: type and new state.</li>
+ * <li>Stream data: stream id and sequence number.</li>
+ * </ul>
+ * 
+ * @author Derek
+ */
+public class DeviceEventExportWriter {
+
+    /** Number of events written between flushes */
+    public static final int FLUSH_INTERVAL = 1000;
+
+    /** Columns written for CSV exports */
+    private static final String[] CSV_COLUMNS = { "id", "alternateId", "eventType", "siteId",
+	    "deviceAssignmentId", "eventDate", "receivedDate", "name", "value", "latitude", "longitude", "elevation",
+	    "message" };
+
+    /** Stream events are written to */
+    private OutputStream output;
+
+    /** Output format */
+    private Format format;
+
+    public DeviceEventExportWriter(OutputStream output, Format format) {
+	this.output = output;
+	this.format = format;
+    }
+
+    /**
+     * Write all events from a source. The output stream is flushed but not
+     * closed. Returns the number of events written.
+     * 
+     * @param source
+     * @return
+     * @throws SiteWhereException
+     */
+    public long write(EventSource source) throws SiteWhereException {
+	try {
+	    return (format == Format.Csv) ? writeCsv(source) : writeNdjson(source);
+	} catch (SiteWhereException e) {
+	    throw e;
+	} catch (IOException e) {
+	    throw new SiteWhereException("Unable to write event export.", e);
+	}
+    }
+
+    /**
+     * Write events as one JSON object per line.
+     * 
+     * @param source
+     * @return
+     * @throws IOException
+     */
+    protected long writeNdjson(EventSource source) throws IOException {
+	JsonGenerator generator = MarshalUtils.MAPPER.getFactory().createGenerator(output, JsonEncoding.UTF8);
+	generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+	generator.setRootValueSeparator(null);
+	ObjectWriter writer = MarshalUtils.MAPPER.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+	long count = 0;
+	IDeviceEvent event;
+	while ((event = source.next()) != null) {
+	    writer.writeValue(generator, event);
+	    generator.writeRaw('\n');
+	    if ((++count % FLUSH_INTERVAL) == 0) {
+		generator.flush();
+	    }
+	}
+	generator.flush();
+	return count;
+    }
+
+    /**
+     * Write events as CSV with a header row.
+     * 
+     * @param source
+     * @return
+     * @throws IOException
+     */
+    protected long writeCsv(EventSource source) throws IOException {
+	Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+	for (int i = 0; i < CSV_COLUMNS.length; i++) {
+	    if (i > 0) {
+		writer.write(',');
+	    }
+	    writer.write(CSV_COLUMNS[i]);
+	}
+	writer.write("\r\n");
+	long count = 0;
+	IDeviceEvent event;
+	while ((event = source.next()) != null) {
+	    writeCsvRows(writer, event);
+	    if ((++count % FLUSH_INTERVAL) == 0) {
+		writer.flush();
+	    }
+	}
+	writer.flush();
+	return count;
+    }
+
+    /**
+     * Write the rows for a single event.
+     * 
+     * @param writer
+     * @param event
+     * @throws IOException
+     */
+    protected void writeCsvRows(Writer writer, IDeviceEvent event) throws IOException {
+	switch (event.getEventType()) {
+	case Measurements: {
+	    Map<String, Double> measurements = ((IDeviceMeasurements) event).getMeasurements();
+	    if (measurements.isEmpty()) {
+		writeCsvRow(writer, event, null, null, null, null);
+	    }
+	    for (Map.Entry<String, Double> entry : measurements.entrySet()) {
+		writeCsvRow(writer, event, entry.getKey(), entry.getValue(), null, null);
+	    }
+	    break;
+	}
+	case Location: {
+	    writeCsvRow(writer, event, null, null, (IDeviceLocation) event, null);
+	    break;
+	}
+	case Alert: {
+	    IDeviceAlert alert = (IDeviceAlert) event;
+	    writeCsvRow(writer, event, alert.getType(), alert.getLevel(), null, alert.getMessage());
+	    break;
+	}
+	case CommandInvocation: {
+	    IDeviceCommandInvocation invocation = (IDeviceCommandInvocation) event;
+	    writeCsvRow(writer, event, invocation.getCommandToken(), invocation.getStatus(), null, null);
+	    break;
+	}
+	case CommandResponse: {
+	    IDeviceCommandResponse response = (IDeviceCommandResponse) event;
+	    writeCsvRow(writer, event, response.getOriginatingEventId(), null, null, response.getResponse());
+	    break;
+	}
+	case StateChange: {
+	    IDeviceStateChange change = (IDeviceStateChange) event;
+	    writeCsvRow(writer, event, change.getType(), change.getNewState(), null, null);
+	    break;
+	}
+	case StreamData: {
+	    IDeviceStreamData data = (IDeviceStreamData) event;
+	    writeCsvRow(writer, event, data.getStreamId(), data.getSequenceNumber(), null, null);
+	    break;
+	}
+	default: {
+	    writeCsvRow(writer, event, null, null, null, null);
+	}
+	}
+    }
+
+    /**
+     * Write a single CSV row.
+     * 
+     * @param writer
+     * @param event
+     * @param name
+     * @param value
+     * @param location
+     * @param message
+     * @throws IOException
+     */
+    protected void writeCsvRow(Writer writer, IDeviceEvent event, Object name, Object value, IDeviceLocation location,
+	    String message) throws IOException {
+	writeCsvValue(writer, event.getId(), false);
+	writeCsvValue(writer, event.getAlternateId(), true);
+	writeCsvValue(writer, event.getEventType(), true);
+	writeCsvValue(writer, event.getSiteId(), true);
+	writeCsvValue(writer, event.getDeviceAssignmentId(), true);
+	writeCsvValue(writer, event.getEventDate(), true);
+	writeCsvValue(writer, event.getReceivedDate(), true);
+	writeCsvValue(writer, name, true);
+	writeCsvValue(writer, value, true);
+	writeCsvValue(writer, (location != null) ? location.getLatitude() : null, true);
+	writeCsvValue(writer, (location != null) ? location.getLongitude() : null, true);
+	writeCsvValue(writer, (location != null) ? location.getElevation() : null, true);
+	writeCsvValue(writer, message, true);
+	writer.write("\r\n");
+    }
+
+    /**
+     * Write a CSV value, quoting it if it contains separators, quotes or line
+     * breaks. Null values are written as empty fields.
+     * 
+     * @param writer
+     * @param value
+     * @param separator
+     * @throws IOException
+     */
+    protected static void writeCsvValue(Writer writer, Object value, boolean separator) throws IOException {
+	if (separator) {
+	    writer.write(',');
+	}
+	if (value == null) {
+	    return;
+	}
+	String text = (value instanceof Date) ? JsonDateSerializer.serialize((Date) value) : value.toString();
+	boolean quote = false;
+	for (int i = 0; i < text.length(); i++) {
+	    char c = text.charAt(i);
+	    if ((c == ',') || (c == '"') || (c == '\n') || (c == '\r')) {
+		quote = true;
+		break;
+	    }
+	}
+	if (!quote) {
+	    writer.write(text);
+	    return;
+	}
+	writer.write('"');
+	writer.write(text.replace("\"", "\"\""));
+	writer.write('"');
+    }
+
+    public OutputStream getOutput() {
+	return output;
+    }
+
+    public Format getFormat() {
+	return format;
+    }
+
+    /**
+     * Supplies events to be written.
+     * 
+     * @author Derek
+     */
+    public static interface EventSource {
+
+	/**
+	 * Get the next event or null if all events have been read.
+	 * 
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public IDeviceEvent next() throws SiteWhereException;
+    }
+
+    /**
+     * Supported export formats.
+     * 
+     * @author Derek
+     */
+    public static enum Format {
+
+	/** Newline-delimited JSON */
+	Ndjson("ndjson", "application/x-ndjson"),
+
+	/** Comma-separated values */
+	Csv("csv", "text/csv");
+
+	/** Name used in requests */
+	private String name;
+
+	/** Response content type */
+	private String contentType;
+
+	private Format(String name, String contentType) {
+	    this.name = name;
+	    this.contentType = contentType;
+	}
+
+	/**
+	 * Get format by name used in requests.
+	 * 
+	 * @param name
+	 * @return
+	 * @throws SiteWhereException
+	 */
+	public static Format getByName(String name) throws SiteWhereException {
+	    for (Format format : Format.values()) {
+		if (format.getName().equalsIgnoreCase(name)) {
+		    return format;
+		}
+	    }
+	    throw new SiteWhereException("Unsupported event export format: " + name);
+	}
+
+	public String getName() {
+	    return name;
+	}
+
+	public String getContentType() {
+	    return contentType;
+	}
+    }
+}
@@ -16,6 +16,7 @@ import org.apache.logging.log4j.Logger;
 import com.sitewhere.device.marshaling.CommandHtmlHelper;
 import com.sitewhere.device.marshaling.DeviceAssignmentMarshalHelper;
 import com.sitewhere.device.marshaling.DeviceTypeMarshalHelper;
+import com.sitewhere.device.marshaling.MarshalingCache;
 import com.sitewhere.rest.model.batch.request.BatchCommandForCriteriaRequest;
 import com.sitewhere.rest.model.common.MetadataProviderEntity;
 import com.sitewhere.rest.model.device.command.DeviceCommand;
@@ -74,9 +75,10 @@ public class ScheduledJobMarshalHelper {
 	this.deviceManagement = deviceManagement;
 	this.assetResolver = assetResolver;
 	this.includeContextInfo = includeContextInfo;
-	this.assignmentHelper = new DeviceAssignmentMarshalHelper(deviceManagement).setIncludeDevice(true)
+	MarshalingCache cache = new MarshalingCache(deviceManagement);
+	this.assignmentHelper = new DeviceAssignmentMarshalHelper(deviceManagement, cache).setIncludeDevice(true)
 		.setIncludeAsset(false);
-	this.deviceTypeHelper = new DeviceTypeMarshalHelper(deviceManagement).setIncludeAsset(false);
+	this.deviceTypeHelper = new DeviceTypeMarshalHelper(deviceManagement, cache).setIncludeAsset(false);
     }
 
     /**
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.security.jwt;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sitewhere.grpc.kafka.model.KafkaModel.GTenantModelUpdate;
+import com.sitewhere.grpc.model.marshaling.KafkaModelMarshaler;
+import com.sitewhere.microservice.kafka.MicroserviceKafkaConsumer;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.microservice.IMicroservice;
+
+/**
+ * Listens to the tenant model updates topic and removes changed tenants from
+ * the {@link TokenAuthenticationCache} so that the next request for the tenant
+ * checks its auth token against the current tenant record. Each Web/REST
+ * instance uses its own consumer group, named after its hostname, so that
+ * every instance sees every update and a restarted instance rejoins the same
+ * group rather than leaving an abandoned one behind.
+ *
+ * @author Derek
+ */
+public class TenantModelUpdatesConsumer extends MicroserviceKafkaConsumer {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Consumer id */
+    private static String CONSUMER_ID = UUID.randomUUID().toString();
+
+    /** Group id suffix, followed by hostname as each instance sees all messages */
+    private static String GROUP_ID_SUFFIX = ".rest-tenant-updates.";
+
+    /** Cache updated when tenants change */
+    private TokenAuthenticationCache cache;
+
+    public TenantModelUpdatesConsumer(IMicroservice microservice, TokenAuthenticationCache cache) {
+	super(microservice, null);
+	this.cache = cache;
+    }
+
+    /*
+     * @see com.sitewhere.spi.microservice.kafka.IMicroserviceKafkaConsumer#
+     * getConsumerId()
+     */
+    @Override
+    public String getConsumerId() throws SiteWhereException {
+	return CONSUMER_ID;
+    }
+
+    /*
+     * @see com.sitewhere.spi.microservice.kafka.IMicroserviceKafkaConsumer#
+     * getConsumerGroupId()
+     */
+    @Override
+    public String getConsumerGroupId() throws SiteWhereException {
+	return getMicroservice().getKafkaTopicNaming().getInstancePrefix() + GROUP_ID_SUFFIX
+		+ getMicroservice().getHostname();
+    }
+
+    /*
+     * @see com.sitewhere.spi.microservice.kafka.IMicroserviceKafkaConsumer#
+     * getSourceTopicNames()
+     */
+    @Override
+    public List<String> getSourceTopicNames() throws SiteWhereException {
+	return Collections.singletonList(getMicroservice().getKafkaTopicNaming().getTenantUpdatesTopic());
+    }
+
+    /*
+     * @see com.sitewhere.microservice.kafka.MicroserviceKafkaConsumer#
+     * buildConfiguration()
+     */
+    @Override
+    protected Properties buildConfiguration() throws SiteWhereException {
+	Properties config = super.buildConfiguration();
+	config.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+	return config;
+    }
+
+    /*
+     * @see
+     * com.sitewhere.spi.microservice.kafka.IMicroserviceKafkaConsumer#received(
+     * java.lang.String, byte[])
+     */
+    @Override
+    public void received(String key, byte[] message) throws SiteWhereException {
+	GTenantModelUpdate update = KafkaModelMarshaler.parseTenantModelUpdateMessage(message);
+	String tenantId = update.getTenant().getId();
+	getCache().invalidateTenant(tenantId);
+	getLogger().debug("Removed cached authentication data for tenant " + tenantId + " (" + update.getType() + ").");
+    }
+
+    /*
+     * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#getLogger()
+     */
+    @Override
+    public Logger getLogger() {
+	return LOGGER;
+    }
+
+    public TokenAuthenticationCache getCache() {
+	return cache;
+    }
+
+    public void setCache(TokenAuthenticationCache cache) {
+	this.cache = cache;
+    }
+}
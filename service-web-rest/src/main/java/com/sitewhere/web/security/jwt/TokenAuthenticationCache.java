@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.security.jwt;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.sitewhere.microservice.security.HashedTokenCache;
+import com.sitewhere.security.SitewhereAuthentication;
+import com.sitewhere.security.SitewhereUserDetails;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.tenant.ITenant;
+
+/**
+ * Caches the results of authenticating REST requests so that the work of
+ * verifying a JWT, loading the user and loading the tenant is done once per
+ * token and tenant rather than once per request. Both caches are bounded by
+ * entry count and lifetime. Verified tokens are held in a
+ * {@link HashedTokenCache}. Tenants are dropped when a tenant model update is
+ * received. Concurrent misses for the same key share a single load.
+ *
+ * @author Derek
+ */
+public class TokenAuthenticationCache {
+
+    /** Default max number of cached tokens */
+    public static final long DEFAULT_MAX_TOKENS = 10000;
+
+    /** Default max number of cached tenants */
+    public static final long DEFAULT_MAX_TENANTS = 1000;
+
+    /** Default max time an entry is kept */
+    public static final long DEFAULT_MAX_LIFETIME_MS = 5 * 60 * 1000;
+
+    /** Verified authentication by token hash */
+    private HashedTokenCache<VerifiedToken> tokens;
+
+    /** Tenants by id */
+    private Cache<String, ITenant> tenants;
+
+    public TokenAuthenticationCache() {
+	this(DEFAULT_MAX_TOKENS, DEFAULT_MAX_TENANTS, DEFAULT_MAX_LIFETIME_MS);
+    }
+
+    public TokenAuthenticationCache(long maxTokens, long maxTenants, long maxLifetimeMs) {
+	this.tokens = new HashedTokenCache<VerifiedToken>(maxTokens, maxLifetimeMs);
+	this.tenants = CacheBuilder.newBuilder().maximumSize(maxTenants)
+		.expireAfterWrite(maxLifetimeMs, TimeUnit.MILLISECONDS).build();
+    }
+
+    /**
+     * Get authentication for a token, calling the loader to verify it if it is
+     * not cached or has expired. A new authentication object is returned for
+     * each call so that request-specific changes (such as the tenant) are not
+     * shared between requests.
+     *
+     * @param jwt
+     * @param loader
+     * @return
+     * @throws SiteWhereException
+     */
+    public SitewhereAuthentication getAuthentication(String jwt, Callable<VerifiedToken> loader)
+	    throws SiteWhereException {
+	return tokens.get(jwt, loader).newAuthentication(jwt);
+    }
+
+    /**
+     * Get a tenant by id, calling the loader if it is not cached.
+     *
+     * @param tenantId
+     * @param loader
+     * @return
+     * @throws SiteWhereException
+     */
+    public ITenant getTenant(String tenantId, Callable<ITenant> loader) throws SiteWhereException {
+	return HashedTokenCache.load(tenants, tenantId, loader);
+    }
+
+    /**
+     * Remove a tenant so that it is reloaded on next use.
+     *
+     * @param tenantId
+     */
+    public void invalidateTenant(String tenantId) {
+	tenants.invalidate(tenantId);
+    }
+
+    /**
+     * Remove all cached tokens and tenants.
+     */
+    public void invalidateAll() {
+	tokens.invalidateAll();
+	tenants.invalidateAll();
+    }
+
+    /**
+     * Compare the tenant authentication token with one passed by a caller. The
+     * comparison takes the same time wherever the values differ.
+     *
+     * @param tenant
+     * @param tenantAuth
+     * @return
+     */
+    public static boolean isTenantAuthValid(ITenant tenant, String tenantAuth) {
+	if ((tenant == null) || (tenant.getAuthenticationToken() == null) || (tenantAuth == null)) {
+	    return false;
+	}
+	return MessageDigest.isEqual(tenant.getAuthenticationToken().getBytes(StandardCharsets.UTF_8),
+		tenantAuth.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Get approximate number of cached tokens.
+     *
+     * @return
+     */
+    public long getTokenCount() {
+	return tokens.size();
+    }
+
+    /**
+     * Get approximate number of cached tenants.
+     *
+     * @return
+     */
+    public long getTenantCount() {
+	return tenants.size();
+    }
+
+    /**
+     * User details and expiration for a token that has been verified.
+     *
+     * @author Derek
+     */
+    public static class VerifiedToken implements HashedTokenCache.IExpiring {
+
+	/** User details */
+	private SitewhereUserDetails details;
+
+	/** Token expiration (millis) */
+	private long expiration;
+
+	public VerifiedToken(SitewhereUserDetails details, long expiration) {
+	    this.details = details;
+	    this.expiration = expiration;
+	}
+
+	/**
+	 * Create an authentication for a single request.
+	 *
+	 * @param jwt
+	 * @return
+	 */
+	public SitewhereAuthentication newAuthentication(String jwt) {
+	    SitewhereAuthentication authentication = new SitewhereAuthentication(details, jwt);
+	    authentication.setAuthenticated(true);
+	    return authentication;
+	}
+
+	public SitewhereUserDetails getDetails() {
+	    return details;
+	}
+
+	/*
+	 * @see com.sitewhere.microservice.security.HashedTokenCache.IExpiring#
+	 * getExpiration()
+	 */
+	@Override
+	public long getExpiration() {
+	    return expiration;
+	}
+    }
+}
@@ -9,6 +9,7 @@ package com.sitewhere.web.security.jwt;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 import javax.servlet.FilterChain;
@@ -21,12 +22,15 @@ import org.apache.logging.log4j.Logger;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import com.sitewhere.rest.ISiteWhereWebConstants;
+import com.sitewhere.security.SitewhereAuthentication;
 import com.sitewhere.security.SitewhereGrantedAuthority;
+import com.sitewhere.security.SitewhereUserDetails;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.security.ITenantAwareAuthentication;
 import com.sitewhere.spi.tenant.ITenant;
@@ -78,27 +82,7 @@ public class TokenAuthenticationFilter extends OncePerRequestFilter {
 	String tenantId = getTenantIdFromHeader(request);
 	String tenantAuth = getTenantAuthFromHeader(request);
 	if (jwt != null) {
-	    // Get username from token and load user.
-	    Claims claims = getMicroservice().getTokenManagement().getClaimsForToken(jwt);
-	    String username = getMicroservice().getTokenManagement().getUsernameFromClaims(claims);
-	    LOGGER.debug("JWT decoded for username: " + username);
-	    List<IGrantedAuthority> auths = getMicroservice().getTokenManagement()
-		    .getGrantedAuthoritiesFromClaims(claims);
-	    List<GrantedAuthority> springAuths = new ArrayList<GrantedAuthority>();
-	    for (IGrantedAuthority auth : auths) {
-		springAuths.add(new SitewhereGrantedAuthority(auth));
-	    }
-
-	    // Create authentication object based on JWT and tenant token.
-	    JwtAuthenticationToken token = new JwtAuthenticationToken(username, springAuths, jwt);
-	    Authentication authenticated = getAuthenticationManager().authenticate(token);
-	    if ((!StringUtils.isEmpty(tenantId)) && (StringUtils.isEmpty(tenantAuth))) {
-		throw new SiteWhereException("Tenant id passed without corresponding tenant auth token.");
-	    }
-
-	    // Add tenant authentication data if provided.
-	    addTenantAuthenticationData(authenticated, tenantId, tenantAuth);
-
+	    SitewhereAuthentication authenticated = authenticate(jwt, tenantId, tenantAuth);
 	    SecurityContextHolder.getContext().setAuthentication(authenticated);
 	    LOGGER.debug("Added authentication to context.");
 	    chain.doFilter(request, response);
@@ -108,6 +92,62 @@ public class TokenAuthenticationFilter extends OncePerRequestFilter {
 	}
     }
 
+    /**
+     * Authenticate a JWT and optional tenant credentials. Results of verifying
+     * the token and loading the tenant are cached, so this may also be used by
+     * other channels (such as WebSocket subscriptions) that receive a JWT.
+     * 
+     * @param jwt
+     * @param tenantId
+     * @param tenantAuth
+     * @return
+     * @throws SiteWhereException
+     */
+    public SitewhereAuthentication authenticate(String jwt, String tenantId, String tenantAuth)
+	    throws SiteWhereException {
+	if ((!StringUtils.isEmpty(tenantId)) && (StringUtils.isEmpty(tenantAuth))) {
+	    throw new SiteWhereException("Tenant id passed without corresponding tenant auth token.");
+	}
+
+	// Use cached result of verifying token if available.
+	SitewhereAuthentication authenticated = getMicroservice().getTokenAuthenticationCache().getAuthentication(jwt,
+		() -> verifyToken(jwt));
+
+	// Add tenant authentication data if provided.
+	addTenantAuthenticationData(authenticated, tenantId, tenantAuth);
+	return authenticated;
+    }
+
+    /**
+     * Verify a JWT and load the user it was issued for. Only called when the
+     * token is not already cached.
+     * 
+     * @param jwt
+     * @return
+     * @throws SiteWhereException
+     */
+    protected TokenAuthenticationCache.VerifiedToken verifyToken(String jwt) throws SiteWhereException {
+	// Get username from token and load user.
+	Claims claims = getMicroservice().getTokenManagement().getClaimsForToken(jwt);
+	String username = getMicroservice().getTokenManagement().getUsernameFromClaims(claims);
+	LOGGER.debug("JWT decoded for username: " + username);
+	List<IGrantedAuthority> auths = getMicroservice().getTokenManagement().getGrantedAuthoritiesFromClaims(claims);
+	List<GrantedAuthority> springAuths = new ArrayList<GrantedAuthority>();
+	for (IGrantedAuthority auth : auths) {
+	    springAuths.add(new SitewhereGrantedAuthority(auth));
+	}
+
+	// Create authentication object based on JWT.
+	JwtAuthenticationToken token = new JwtAuthenticationToken(username, springAuths, jwt);
+	Authentication authenticated = getAuthenticationManager().authenticate(token);
+	if (!(authenticated.getDetails() instanceof SitewhereUserDetails)) {
+	    throw new SiteWhereException("Unexpected authentication result for JWT.");
+	}
+	Date expiration = claims.getExpiration();
+	return new TokenAuthenticationCache.VerifiedToken((SitewhereUserDetails) authenticated.getDetails(),
+		(expiration != null) ? expiration.getTime() : Long.MAX_VALUE);
+    }
+
     /**
      * Based on fields passed in HTTP headers, look up tenant and verify that tenant
      * auth token is valid. Store tenant information in Spring authentication data
@@ -118,24 +158,40 @@ public class TokenAuthenticationFilter extends OncePerRequestFilter {
      * @param tenantAuth
      * @throws SiteWhereException
      */
-    protected void addTenantAuthenticationData(Authentication authenticated, String tenantId, String tenantAuth)
-	    throws SiteWhereException {
-	if ((authenticated instanceof ITenantAwareAuthentication) && (tenantId != null) && (tenantAuth != null)) {
-	    // Load tenant using superuser credentials.
-	    Authentication previous = SecurityContextHolder.getContext().getAuthentication();
-	    try {
-		SecurityContextHolder.getContext()
-			.setAuthentication(getMicroservice().getSystemUser().getAuthentication());
-		ITenant tenant = getMicroservice().getTenantManagementApiDemux().getApiChannel()
-			.getTenantById(tenantId);
-		if ((tenant == null) || (!tenant.getAuthenticationToken().equals(tenantAuth))) {
-		    throw new SiteWhereException("Auth token passed for tenant id is not correct.");
-		}
-		((ITenantAwareAuthentication) authenticated).setTenant(tenant);
-		LOGGER.debug("Added tenant to authentication: " + tenant.getId());
-	    } finally {
-		SecurityContextHolder.getContext().setAuthentication(previous);
+    protected void addTenantAuthenticationData(ITenantAwareAuthentication authenticated, String tenantId,
+	    String tenantAuth) throws SiteWhereException {
+	if ((tenantId != null) && (tenantAuth != null)) {
+	    ITenant tenant = getMicroservice().getTokenAuthenticationCache().getTenant(tenantId,
+		    () -> loadTenant(tenantId));
+	    if (!TokenAuthenticationCache.isTenantAuthValid(tenant, tenantAuth)) {
+		throw new SiteWhereException("Auth token passed for tenant id is not correct.");
 	    }
+	    authenticated.setTenant(tenant);
+	    LOGGER.debug("Added tenant to authentication: " + tenant.getId());
+	}
+    }
+
+    /**
+     * Load tenant using superuser credentials. A separate security context is
+     * used so that neither the request context nor the shared system user
+     * authentication is modified.
+     * 
+     * @param tenantId
+     * @return
+     * @throws SiteWhereException
+     */
+    protected ITenant loadTenant(String tenantId) throws SiteWhereException {
+	Authentication system = getMicroservice().getSystemUser().getAuthentication();
+	SitewhereAuthentication copy = new SitewhereAuthentication((SitewhereUserDetails) system.getDetails(),
+		(String) system.getCredentials());
+	SecurityContext previous = SecurityContextHolder.getContext();
+	SecurityContext context = SecurityContextHolder.createEmptyContext();
+	context.setAuthentication(copy);
+	SecurityContextHolder.setContext(context);
+	try {
+	    return getMicroservice().getTenantManagementApiDemux().getApiChannel().getTenantById(tenantId);
+	} finally {
+	    SecurityContextHolder.setContext(previous);
 	}
     }
 
@@ -17,6 +17,7 @@ import com.sitewhere.grpc.client.spi.client.IUserManagementApiDemux;
 import com.sitewhere.spi.asset.IAssetResolver;
 import com.sitewhere.spi.microservice.IGlobalMicroservice;
 import com.sitewhere.spi.microservice.management.IMicroserviceManagementCoordinator;
+import com.sitewhere.web.security.jwt.TokenAuthenticationCache;
 
 /**
  * Microservice that provides web/REST functionality.
@@ -87,4 +88,11 @@ public interface IWebRestMicroservice extends IGlobalMicroservice {
      * @return
      */
     public IMicroserviceManagementCoordinator getMicroserviceManagementCoordinator();
+
+    /**
+     * Get cache of verified tokens and tenants used to authenticate requests.
+     * 
+     * @return
+     */
+    public TokenAuthenticationCache getTokenAuthenticationCache();
 }
\ No newline at end of file
@@ -7,8 +7,11 @@
  */
 package com.sitewhere.web.ws;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.AbstractWebSocketMessageBrokerConfigurer;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
@@ -17,6 +20,7 @@ import org.springframework.web.socket.server.standard.TomcatRequestUpgradeStrate
 import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
 
 import com.sitewhere.web.ws.components.TopologyBroadcaster;
+import com.sitewhere.web.ws.components.events.DeviceEventBroadcaster;
 
 /**
  * Configures WebSockets used by Web/REST microservice.
@@ -31,6 +35,11 @@ public class WebSocketApiConfiguration extends AbstractWebSocketMessageBrokerCon
     /** URL prefix for matching WebSocket calls */
     public static final String WEB_SOCKET_MATCHER = "/ws/*";
 
+    /** Checks device event subscriptions (lazy since it uses outbound channel) */
+    @Autowired
+    @Lazy
+    private DeviceEventBroadcaster deviceEventBroadcaster;
+
     /*
      * @see org.springframework.web.socket.config.annotation.
      * AbstractWebSocketMessageBrokerConfigurer#configureMessageBroker(org.
@@ -42,6 +51,16 @@ public class WebSocketApiConfiguration extends AbstractWebSocketMessageBrokerCon
 	config.setApplicationDestinationPrefixes("/app");
     }
 
+    /*
+     * @see org.springframework.web.socket.config.annotation.
+     * AbstractWebSocketMessageBrokerConfigurer#configureClientInboundChannel(org.
+     * springframework.messaging.simp.config.ChannelRegistration)
+     */
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+	registration.interceptors(deviceEventBroadcaster);
+    }
+
     /*
      * @see org.springframework.web.socket.config.annotation.
      * WebSocketMessageBrokerConfigurer#registerStompEndpoints(org.springframework.
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.ws.components.events;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceMeasurements;
+
+/**
+ * Bounded queue of events waiting to be delivered to a single subscription.
+ * Measurements for the same assignment and set of measurement names replace
+ * the pending entry in place, so a slow client receives the latest values
+ * rather than a growing backlog. Other events are queued in order and, once
+ * the queue is full, the oldest entry is dropped to make room.
+ *
+ * @author Derek
+ */
+public class ConflatingEventQueue {
+
+    /** Maximum number of pending events */
+    private int capacity;
+
+    /** Pending events in delivery order, keyed by conflation key */
+    private LinkedHashMap<Object, IDeviceEvent> pending = new LinkedHashMap<Object, IDeviceEvent>();
+
+    /** Number of events replaced by a newer value */
+    private long conflatedCount;
+
+    /** Number of events dropped due to a full queue */
+    private long droppedCount;
+
+    public ConflatingEventQueue(int capacity) {
+	this.capacity = capacity;
+    }
+
+    /**
+     * Add an event to the queue.
+     *
+     * @param event
+     */
+    public synchronized void offer(IDeviceEvent event) {
+	Object key = getConflationKey(event);
+	if ((key != null) && (pending.containsKey(key))) {
+	    pending.put(key, event);
+	    conflatedCount++;
+	    return;
+	}
+	if (pending.size() >= capacity) {
+	    Iterator<Map.Entry<Object, IDeviceEvent>> oldest = pending.entrySet().iterator();
+	    oldest.next();
+	    oldest.remove();
+	    droppedCount++;
+	}
+	pending.put((key != null) ? key : new Object(), event);
+    }
+
+    /**
+     * Remove up to the given number of events in delivery order.
+     *
+     * @param max
+     * @return
+     */
+    public synchronized List<IDeviceEvent> drain(int max) {
+	List<IDeviceEvent> events = new ArrayList<IDeviceEvent>(Math.min(max, pending.size()));
+	Iterator<IDeviceEvent> it = pending.values().iterator();
+	while (it.hasNext() && (events.size() < max)) {
+	    events.add(it.next());
+	    it.remove();
+	}
+	return events;
+    }
+
+    /**
+     * Get key used to conflate an event or null if event is never conflated.
+     *
+     * @param event
+     * @return
+     */
+    protected Object getConflationKey(IDeviceEvent event) {
+	if ((event instanceof IDeviceMeasurements) && (event.getDeviceAssignmentId() != null)) {
+	    Map<String, Double> mxs = ((IDeviceMeasurements) event).getMeasurements();
+	    return event.getDeviceAssignmentId() + ":" + new TreeSet<String>(mxs.keySet());
+	}
+	return null;
+    }
+
+    public synchronized int size() {
+	return pending.size();
+    }
+
+    public synchronized boolean isEmpty() {
+	return pending.isEmpty();
+    }
+
+    public synchronized long getConflatedCount() {
+	return conflatedCount;
+    }
+
+    public synchronized long getDroppedCount() {
+	return droppedCount;
+    }
+
+    public int getCapacity() {
+	return capacity;
+    }
+}
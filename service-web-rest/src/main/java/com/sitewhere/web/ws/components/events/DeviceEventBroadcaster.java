@@ -0,0 +1,501 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.ws.components.events;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptorAdapter;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.AbstractSubProtocolEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import com.sitewhere.common.MarshalUtils;
+import com.sitewhere.rest.ISiteWhereWebConstants;
+import com.sitewhere.server.lifecycle.LifecycleProgressContext;
+import com.sitewhere.server.lifecycle.LifecycleProgressMonitor;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.DeviceEventType;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceEventContext;
+import com.sitewhere.spi.tenant.ITenant;
+import com.sitewhere.web.security.jwt.TokenAuthenticationFilter;
+import com.sitewhere.web.spi.microservice.IWebRestMicroservice;
+
+/**
+ * Streams live device events to STOMP subscriptions. Clients subscribe to
+ * <code>/events/{tenantId}</code> passing a JWT in the
+ * <code>Authorization</code> header, the tenant auth token in the
+ * <code>X-SiteWhere-Tenant-Auth</code> header and optional comma-separated
+ * filter headers (<code>assignments</code>, <code>deviceTypes</code>,
+ * <code>sites</code>, <code>eventTypes</code> and <code>measurements</code>).
+ *
+ * A Kafka consumer for a tenant's enriched events is started when the first
+ * subscription for the tenant arrives and stopped when the last one goes away.
+ * Events are routed through a per-tenant {@link DeviceEventSubscriptionIndex}
+ * into bounded per-subscription queues which are flushed on a fixed interval,
+ * so slow clients see conflated measurements rather than an unbounded backlog.
+ * Messages are sent directly to the subscribing session, bypassing the simple
+ * broker.
+ *
+ * Subscriptions are checked as an interceptor on the client inbound channel, so
+ * a SUBSCRIBE that fails authorization is rejected with a STOMP ERROR frame
+ * rather than silently accepted.
+ *
+ * @author Derek
+ */
+@Component
+public class DeviceEventBroadcaster extends ChannelInterceptorAdapter
+	implements ApplicationListener<AbstractSubProtocolEvent> {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Prefix for device event subscription destinations */
+    public static final String DESTINATION_PREFIX = "/events/";
+
+    /** Header for JWT */
+    public static final String HEADER_AUTHORIZATION = "Authorization";
+
+    /** Header for assignment id filter */
+    public static final String HEADER_ASSIGNMENTS = "assignments";
+
+    /** Header for device type id filter */
+    public static final String HEADER_DEVICE_TYPES = "deviceTypes";
+
+    /** Header for site id filter */
+    public static final String HEADER_SITES = "sites";
+
+    /** Header for event type filter */
+    public static final String HEADER_EVENT_TYPES = "eventTypes";
+
+    /** Header for measurement name filter */
+    public static final String HEADER_MEASUREMENTS = "measurements";
+
+    /** Default number of events queued per subscription */
+    private static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    /** Default interval between queue flushes */
+    private static final long DEFAULT_FLUSH_INTERVAL_MS = 100;
+
+    /** Default maximum number of events sent to a subscription per flush */
+    private static final int DEFAULT_MAX_EVENTS_PER_FLUSH = 100;
+
+    @Autowired
+    private IWebRestMicroservice microservice;
+
+    @Autowired
+    private TokenAuthenticationFilter tokenAuthenticationFilter;
+
+    @Autowired
+    @Qualifier("clientOutboundChannel")
+    private MessageChannel clientOutboundChannel;
+
+    /** Subscriptions by key */
+    private Map<String, DeviceEventSubscription> subscriptions = new ConcurrentHashMap<>();
+
+    /** Per-tenant index and consumer by tenant id */
+    private Map<String, TenantEventStream> streams = new HashMap<>();
+
+    /** Subscriptions with events waiting to be sent */
+    private Set<DeviceEventSubscription> ready = ConcurrentHashMap.newKeySet();
+
+    /** Flushes pending events */
+    private ScheduledExecutorService flusher;
+
+    /** Number of events queued per subscription */
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    /** Interval between queue flushes */
+    private long flushIntervalMs = DEFAULT_FLUSH_INTERVAL_MS;
+
+    /** Maximum number of events sent to a subscription per flush */
+    private int maxEventsPerFlush = DEFAULT_MAX_EVENTS_PER_FLUSH;
+
+    @PostConstruct
+    public void start() {
+	this.flusher = Executors.newSingleThreadScheduledExecutor();
+	flusher.scheduleWithFixedDelay(() -> flush(), getFlushIntervalMs(), getFlushIntervalMs(),
+		TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+	if (flusher != null) {
+	    flusher.shutdownNow();
+	}
+	synchronized (streams) {
+	    for (TenantEventStream stream : streams.values()) {
+		stopConsumer(stream.getConsumer());
+	    }
+	    streams.clear();
+	}
+    }
+
+    /*
+     * @see
+     * org.springframework.messaging.support.ChannelInterceptorAdapter#preSend(org.
+     * springframework.messaging.Message,
+     * org.springframework.messaging.MessageChannel)
+     */
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+	StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+	if (StompCommand.SUBSCRIBE.equals(accessor.getCommand())) {
+	    onSubscribe(accessor);
+	}
+	return message;
+    }
+
+    /*
+     * @see org.springframework.context.ApplicationListener#onApplicationEvent(org.
+     * springframework.context.ApplicationEvent)
+     */
+    @Override
+    public void onApplicationEvent(AbstractSubProtocolEvent event) {
+	StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+	if (event instanceof SessionUnsubscribeEvent) {
+	    String key = DeviceEventSubscription.getKey(accessor.getSessionId(), accessor.getSubscriptionId());
+	    removeSubscription(subscriptions.get(key));
+	} else if (event instanceof SessionDisconnectEvent) {
+	    String sessionId = ((SessionDisconnectEvent) event).getSessionId();
+	    for (DeviceEventSubscription subscription : subscriptions.values()) {
+		if (subscription.getSessionId().equals(sessionId)) {
+		    removeSubscription(subscription);
+		}
+	    }
+	}
+    }
+
+    /**
+     * Handle a STOMP subscription request. The subscription is only registered
+     * once it has been added to the tenant stream.
+     *
+     * @param accessor
+     * @throws MessageDeliveryException
+     *             if the subscription is not authorized or can not be started
+     */
+    protected void onSubscribe(StompHeaderAccessor accessor) {
+	String destination = accessor.getDestination();
+	if ((destination == null) || (!destination.startsWith(DESTINATION_PREFIX))) {
+	    return;
+	}
+	String tenantId = destination.substring(DESTINATION_PREFIX.length());
+	try {
+	    ITenant tenant = authorize(accessor, tenantId);
+	    DeviceEventSubscription subscription = new DeviceEventSubscription(accessor.getSessionId(),
+		    accessor.getSubscriptionId(), destination, tenant.getId(), parseFilter(accessor),
+		    new ConflatingEventQueue(getQueueCapacity()));
+	    addToStream(tenant, subscription);
+	    subscriptions.put(subscription.getKey(), subscription);
+	    getLogger().debug("Added device event subscription " + subscription.getKey() + " for tenant "
+		    + tenant.getId() + ".");
+	} catch (SiteWhereException e) {
+	    getLogger().warn("Rejected device event subscription to " + destination + ".", e);
+	    throw new MessageDeliveryException("Device event subscription rejected: " + e.getMessage());
+	}
+    }
+
+    /**
+     * Verify JWT and tenant auth token passed with a subscription. Verified
+     * tokens and tenants are cached by the {@link TokenAuthenticationFilter}
+     * used for REST requests.
+     *
+     * @param accessor
+     * @param tenantId
+     * @return
+     * @throws SiteWhereException
+     */
+    protected ITenant authorize(StompHeaderAccessor accessor, String tenantId) throws SiteWhereException {
+	String authHeader = accessor.getFirstNativeHeader(HEADER_AUTHORIZATION);
+	if ((authHeader == null) || (!authHeader.startsWith("Bearer "))) {
+	    throw new SiteWhereException("No JWT passed with device event subscription.");
+	}
+	String tenantAuth = accessor.getFirstNativeHeader(ISiteWhereWebConstants.HEADER_TENANT_AUTH);
+	if (tenantAuth == null) {
+	    throw new SiteWhereException("No tenant auth token passed with device event subscription.");
+	}
+
+	// Same cached verification and tenant lookup as REST requests.
+	return getTokenAuthenticationFilter().authenticate(authHeader.substring(7), tenantId, tenantAuth).getTenant();
+    }
+
+    /**
+     * Build subscription filter from STOMP headers.
+     *
+     * @param accessor
+     * @return
+     * @throws SiteWhereException
+     */
+    protected DeviceEventSubscriptionFilter parseFilter(StompHeaderAccessor accessor) throws SiteWhereException {
+	DeviceEventSubscriptionFilter filter = new DeviceEventSubscriptionFilter();
+	try {
+	    for (String value : parseList(accessor.getFirstNativeHeader(HEADER_ASSIGNMENTS))) {
+		filter.getAssignmentIds().add(UUID.fromString(value));
+	    }
+	    for (String value : parseList(accessor.getFirstNativeHeader(HEADER_DEVICE_TYPES))) {
+		filter.getDeviceTypeIds().add(UUID.fromString(value));
+	    }
+	    for (String value : parseList(accessor.getFirstNativeHeader(HEADER_SITES))) {
+		filter.getSiteIds().add(UUID.fromString(value));
+	    }
+	    for (String value : parseList(accessor.getFirstNativeHeader(HEADER_EVENT_TYPES))) {
+		filter.getEventTypes().add(DeviceEventType.valueOf(value));
+	    }
+	} catch (IllegalArgumentException e) {
+	    throw new SiteWhereException("Invalid device event subscription filter.", e);
+	}
+	filter.getMeasurementNames().addAll(parseList(accessor.getFirstNativeHeader(HEADER_MEASUREMENTS)));
+	return filter;
+    }
+
+    /**
+     * Split a comma-separated header value.
+     *
+     * @param value
+     * @return
+     */
+    protected Set<String> parseList(String value) {
+	Set<String> values = new HashSet<String>();
+	if (value != null) {
+	    for (String part : value.split(",")) {
+		if (!part.trim().isEmpty()) {
+		    values.add(part.trim());
+		}
+	    }
+	}
+	return values;
+    }
+
+    /**
+     * Add subscription to tenant stream, starting a consumer for the tenant if
+     * needed.
+     *
+     * @param tenant
+     * @param subscription
+     * @throws SiteWhereException
+     */
+    protected void addToStream(ITenant tenant, DeviceEventSubscription subscription) throws SiteWhereException {
+	synchronized (streams) {
+	    TenantEventStream stream = streams.get(tenant.getId());
+	    if (stream == null) {
+		TenantEnrichedEventsConsumer consumer = new TenantEnrichedEventsConsumer(getMicroservice(), tenant,
+			this);
+		consumer.start(new LifecycleProgressMonitor(
+			new LifecycleProgressContext(1, "Start device event consumer for WebSocket subscriptions."),
+			getMicroservice()));
+		stream = new TenantEventStream(consumer);
+		streams.put(tenant.getId(), stream);
+		getLogger().info("Started device event consumer for tenant " + tenant.getId() + ".");
+	    }
+	    stream.getIndex().add(subscription);
+	}
+    }
+
+    /**
+     * Remove a subscription, stopping the tenant consumer if it was the last one.
+     *
+     * @param subscription
+     */
+    protected void removeSubscription(DeviceEventSubscription subscription) {
+	if ((subscription == null) || (subscriptions.remove(subscription.getKey()) == null)) {
+	    return;
+	}
+	ready.remove(subscription);
+	synchronized (streams) {
+	    TenantEventStream stream = streams.get(subscription.getTenantId());
+	    if (stream != null) {
+		stream.getIndex().remove(subscription);
+		if (stream.getIndex().size() == 0) {
+		    streams.remove(subscription.getTenantId());
+		    stopConsumer(stream.getConsumer());
+		    getLogger().info("Stopped device event consumer for tenant " + subscription.getTenantId() + ".");
+		}
+	    }
+	}
+    }
+
+    /**
+     * Route an event to matching subscriptions.
+     *
+     * @param tenantId
+     * @param context
+     * @param event
+     */
+    public void onEvent(String tenantId, IDeviceEventContext context, IDeviceEvent event) {
+	TenantEventStream stream;
+	synchronized (streams) {
+	    stream = streams.get(tenantId);
+	}
+	if (stream == null) {
+	    return;
+	}
+	for (DeviceEventSubscription subscription : stream.getIndex().match(context, event)) {
+	    subscription.getQueue().offer(event);
+	    ready.add(subscription);
+	}
+    }
+
+    /**
+     * Send pending events for all subscriptions that have them. Subscriptions
+     * with more than the per-flush limit remain ready for the next flush.
+     */
+    protected void flush() {
+	for (DeviceEventSubscription subscription : ready) {
+	    ready.remove(subscription);
+	    List<IDeviceEvent> events = subscription.getQueue().drain(getMaxEventsPerFlush());
+	    try {
+		for (IDeviceEvent event : events) {
+		    send(subscription, event);
+		}
+	    } catch (Throwable t) {
+		getLogger().warn("Unable to send device events to subscription " + subscription.getKey() + ".", t);
+	    }
+	    if (!subscription.getQueue().isEmpty() && subscriptions.containsKey(subscription.getKey())) {
+		ready.add(subscription);
+	    }
+	}
+    }
+
+    /**
+     * Send an event directly to the session that owns a subscription.
+     *
+     * @param subscription
+     * @param event
+     * @throws SiteWhereException
+     */
+    protected void send(DeviceEventSubscription subscription, IDeviceEvent event) throws SiteWhereException {
+	SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+	headers.setSessionId(subscription.getSessionId());
+	headers.setSubscriptionId(subscription.getSubscriptionId());
+	headers.setDestination(subscription.getDestination());
+	headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+	Message<byte[]> message = MessageBuilder.createMessage(MarshalUtils.marshalJson(event),
+		headers.getMessageHeaders());
+	getClientOutboundChannel().send(message);
+    }
+
+    /**
+     * Stop a tenant consumer.
+     *
+     * @param consumer
+     */
+    protected void stopConsumer(TenantEnrichedEventsConsumer consumer) {
+	try {
+	    consumer.stop(new LifecycleProgressMonitor(
+		    new LifecycleProgressContext(1, "Stop device event consumer for WebSocket subscriptions."),
+		    getMicroservice()));
+	} catch (SiteWhereException e) {
+	    getLogger().warn("Unable to stop device event consumer.", e);
+	}
+    }
+
+    /**
+     * Index of subscriptions and Kafka consumer for a tenant.
+     *
+     * @author Derek
+     */
+    private class TenantEventStream {
+
+	/** Subscription index */
+	private DeviceEventSubscriptionIndex index = new DeviceEventSubscriptionIndex();
+
+	/** Kafka consumer */
+	private TenantEnrichedEventsConsumer consumer;
+
+	public TenantEventStream(TenantEnrichedEventsConsumer consumer) {
+	    this.consumer = consumer;
+	}
+
+	public DeviceEventSubscriptionIndex getIndex() {
+	    return index;
+	}
+
+	public TenantEnrichedEventsConsumer getConsumer() {
+	    return consumer;
+	}
+    }
+
+    public IWebRestMicroservice getMicroservice() {
+	return microservice;
+    }
+
+    public void setMicroservice(IWebRestMicroservice microservice) {
+	this.microservice = microservice;
+    }
+
+    public TokenAuthenticationFilter getTokenAuthenticationFilter() {
+	return tokenAuthenticationFilter;
+    }
+
+    public void setTokenAuthenticationFilter(TokenAuthenticationFilter tokenAuthenticationFilter) {
+	this.tokenAuthenticationFilter = tokenAuthenticationFilter;
+    }
+
+    public MessageChannel getClientOutboundChannel() {
+	return clientOutboundChannel;
+    }
+
+    public void setClientOutboundChannel(MessageChannel clientOutboundChannel) {
+	this.clientOutboundChannel = clientOutboundChannel;
+    }
+
+    public int getQueueCapacity() {
+	return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+	this.queueCapacity = queueCapacity;
+    }
+
+    public long getFlushIntervalMs() {
+	return flushIntervalMs;
+    }
+
+    public void setFlushIntervalMs(long flushIntervalMs) {
+	this.flushIntervalMs = flushIntervalMs;
+    }
+
+    public int getMaxEventsPerFlush() {
+	return maxEventsPerFlush;
+    }
+
+    public void setMaxEventsPerFlush(int maxEventsPerFlush) {
+	this.maxEventsPerFlush = maxEventsPerFlush;
+    }
+
+    public Logger getLogger() {
+	return LOGGER;
+    }
+}
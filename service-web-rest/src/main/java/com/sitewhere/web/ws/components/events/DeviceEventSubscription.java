@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.ws.components.events;
+
+/**
+ * A single STOMP subscription to live device events for a tenant along with
+ * its filter and queue of events waiting to be delivered.
+ *
+ * @author Derek
+ */
+public class DeviceEventSubscription {
+
+    /** WebSocket session id */
+    private String sessionId;
+
+    /** STOMP subscription id (unique within session) */
+    private String subscriptionId;
+
+    /** Destination subscribed to */
+    private String destination;
+
+    /** Tenant id */
+    private String tenantId;
+
+    /** Filter applied to events */
+    private DeviceEventSubscriptionFilter filter;
+
+    /** Events waiting to be delivered */
+    private ConflatingEventQueue queue;
+
+    public DeviceEventSubscription(String sessionId, String subscriptionId, String destination, String tenantId,
+	    DeviceEventSubscriptionFilter filter, ConflatingEventQueue queue) {
+	this.sessionId = sessionId;
+	this.subscriptionId = subscriptionId;
+	this.destination = destination;
+	this.tenantId = tenantId;
+	this.filter = filter;
+	this.queue = queue;
+    }
+
+    /**
+     * Get key that uniquely identifies subscription.
+     *
+     * @return
+     */
+    public String getKey() {
+	return getKey(getSessionId(), getSubscriptionId());
+    }
+
+    /**
+     * Get key that uniquely identifies a subscription.
+     *
+     * @param sessionId
+     * @param subscriptionId
+     * @return
+     */
+    public static String getKey(String sessionId, String subscriptionId) {
+	return sessionId + ":" + subscriptionId;
+    }
+
+    public String getSessionId() {
+	return sessionId;
+    }
+
+    public String getSubscriptionId() {
+	return subscriptionId;
+    }
+
+    public String getDestination() {
+	return destination;
+    }
+
+    public String getTenantId() {
+	return tenantId;
+    }
+
+    public DeviceEventSubscriptionFilter getFilter() {
+	return filter;
+    }
+
+    public ConflatingEventQueue getQueue() {
+	return queue;
+    }
+}
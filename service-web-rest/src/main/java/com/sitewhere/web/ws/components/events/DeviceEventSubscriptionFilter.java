@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.ws.components.events;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import com.sitewhere.spi.device.event.DeviceEventType;
+
+/**
+ * Criteria used to select which device events are delivered to a WebSocket
+ * subscription. Each non-empty set is a criterion that must be satisfied by
+ * an event (values within a set are alternatives). A filter with no criteria
+ * matches every event for the tenant.
+ *
+ * @author Derek
+ */
+public class DeviceEventSubscriptionFilter {
+
+    /** Device assignment ids */
+    private Set<UUID> assignmentIds = new HashSet<UUID>();
+
+    /** Device type ids */
+    private Set<UUID> deviceTypeIds = new HashSet<UUID>();
+
+    /** Site ids */
+    private Set<UUID> siteIds = new HashSet<UUID>();
+
+    /** Event types */
+    private Set<DeviceEventType> eventTypes = new HashSet<DeviceEventType>();
+
+    /** Measurement names (implies measurements events) */
+    private Set<String> measurementNames = new HashSet<String>();
+
+    /**
+     * Get number of criteria an event must satisfy to match.
+     *
+     * @return
+     */
+    public int getCriteriaCount() {
+	int count = 0;
+	count += getAssignmentIds().isEmpty() ? 0 : 1;
+	count += getDeviceTypeIds().isEmpty() ? 0 : 1;
+	count += getSiteIds().isEmpty() ? 0 : 1;
+	count += getEventTypes().isEmpty() ? 0 : 1;
+	count += getMeasurementNames().isEmpty() ? 0 : 1;
+	return count;
+    }
+
+    public Set<UUID> getAssignmentIds() {
+	return assignmentIds;
+    }
+
+    public void setAssignmentIds(Set<UUID> assignmentIds) {
+	this.assignmentIds = assignmentIds;
+    }
+
+    public Set<UUID> getDeviceTypeIds() {
+	return deviceTypeIds;
+    }
+
+    public void setDeviceTypeIds(Set<UUID> deviceTypeIds) {
+	this.deviceTypeIds = deviceTypeIds;
+    }
+
+    public Set<UUID> getSiteIds() {
+	return siteIds;
+    }
+
+    public void setSiteIds(Set<UUID> siteIds) {
+	this.siteIds = siteIds;
+    }
+
+    public Set<DeviceEventType> getEventTypes() {
+	return eventTypes;
+    }
+
+    public void setEventTypes(Set<DeviceEventType> eventTypes) {
+	this.eventTypes = eventTypes;
+    }
+
+    public Set<String> getMeasurementNames() {
+	return measurementNames;
+    }
+
+    public void setMeasurementNames(Set<String> measurementNames) {
+	this.measurementNames = measurementNames;
+    }
+}
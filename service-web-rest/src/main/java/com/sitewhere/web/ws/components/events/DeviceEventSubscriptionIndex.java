@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.ws.components.events;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.IDeviceEventContext;
+import com.sitewhere.spi.device.event.IDeviceMeasurements;
+
+/**
+ * Inverted index of subscription filters for a tenant. Each criterion value
+ * maps to the subscriptions that list it, so matching an event only touches
+ * subscriptions that reference one of the event's values (plus subscriptions
+ * with no criteria) rather than evaluating every subscriber. A subscription
+ * matches when the number of criteria hit equals the number of criteria in its
+ * filter.
+ *
+ * @author Derek
+ */
+public class DeviceEventSubscriptionIndex {
+
+    /** Subscriptions with no criteria */
+    private Set<DeviceEventSubscription> unfiltered = new HashSet<DeviceEventSubscription>();
+
+    /** Subscriptions by assignment id */
+    private Map<Object, Set<DeviceEventSubscription>> byAssignment = new HashMap<>();
+
+    /** Subscriptions by device type id */
+    private Map<Object, Set<DeviceEventSubscription>> byDeviceType = new HashMap<>();
+
+    /** Subscriptions by site id */
+    private Map<Object, Set<DeviceEventSubscription>> bySite = new HashMap<>();
+
+    /** Subscriptions by event type */
+    private Map<Object, Set<DeviceEventSubscription>> byEventType = new HashMap<>();
+
+    /** Subscriptions by measurement name */
+    private Map<Object, Set<DeviceEventSubscription>> byMeasurementName = new HashMap<>();
+
+    /** Number of subscriptions in index */
+    private int size;
+
+    /** Lock for updating index */
+    private ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Add a subscription to the index.
+     *
+     * @param subscription
+     */
+    public void add(DeviceEventSubscription subscription) {
+	lock.writeLock().lock();
+	try {
+	    DeviceEventSubscriptionFilter filter = subscription.getFilter();
+	    if (filter.getCriteriaCount() == 0) {
+		unfiltered.add(subscription);
+	    } else {
+		addPostings(byAssignment, filter.getAssignmentIds(), subscription);
+		addPostings(byDeviceType, filter.getDeviceTypeIds(), subscription);
+		addPostings(bySite, filter.getSiteIds(), subscription);
+		addPostings(byEventType, filter.getEventTypes(), subscription);
+		addPostings(byMeasurementName, filter.getMeasurementNames(), subscription);
+	    }
+	    size++;
+	} finally {
+	    lock.writeLock().unlock();
+	}
+    }
+
+    /**
+     * Remove a subscription from the index.
+     *
+     * @param subscription
+     */
+    public void remove(DeviceEventSubscription subscription) {
+	lock.writeLock().lock();
+	try {
+	    DeviceEventSubscriptionFilter filter = subscription.getFilter();
+	    if (filter.getCriteriaCount() == 0) {
+		unfiltered.remove(subscription);
+	    } else {
+		removePostings(byAssignment, filter.getAssignmentIds(), subscription);
+		removePostings(byDeviceType, filter.getDeviceTypeIds(), subscription);
+		removePostings(bySite, filter.getSiteIds(), subscription);
+		removePostings(byEventType, filter.getEventTypes(), subscription);
+		removePostings(byMeasurementName, filter.getMeasurementNames(), subscription);
+	    }
+	    size--;
+	} finally {
+	    lock.writeLock().unlock();
+	}
+    }
+
+    /**
+     * Find all subscriptions whose filter matches an event.
+     *
+     * @param context
+     * @param event
+     * @return
+     */
+    public List<DeviceEventSubscription> match(IDeviceEventContext context, IDeviceEvent event) {
+	lock.readLock().lock();
+	try {
+	    List<DeviceEventSubscription> matches = new ArrayList<DeviceEventSubscription>(unfiltered);
+	    Map<DeviceEventSubscription, Integer> hits = new HashMap<DeviceEventSubscription, Integer>();
+	    countHits(hits, byAssignment.get(event.getDeviceAssignmentId()));
+	    countHits(hits, byDeviceType.get((context != null) ? context.getDeviceTypeId() : null));
+	    countHits(hits, bySite.get(event.getSiteId()));
+	    countHits(hits, byEventType.get(event.getEventType()));
+	    if ((event instanceof IDeviceMeasurements) && (!byMeasurementName.isEmpty())) {
+		Set<DeviceEventSubscription> named = new HashSet<DeviceEventSubscription>();
+		for (String name : ((IDeviceMeasurements) event).getMeasurements().keySet()) {
+		    Set<DeviceEventSubscription> postings = byMeasurementName.get(name);
+		    if (postings != null) {
+			named.addAll(postings);
+		    }
+		}
+		countHits(hits, named);
+	    }
+	    for (Map.Entry<DeviceEventSubscription, Integer> hit : hits.entrySet()) {
+		if (hit.getValue() == hit.getKey().getFilter().getCriteriaCount()) {
+		    matches.add(hit.getKey());
+		}
+	    }
+	    return matches;
+	} finally {
+	    lock.readLock().unlock();
+	}
+    }
+
+    /**
+     * Get number of subscriptions in index.
+     *
+     * @return
+     */
+    public int size() {
+	lock.readLock().lock();
+	try {
+	    return size;
+	} finally {
+	    lock.readLock().unlock();
+	}
+    }
+
+    /**
+     * Increment hit count for each subscription in a posting list.
+     *
+     * @param hits
+     * @param postings
+     */
+    protected void countHits(Map<DeviceEventSubscription, Integer> hits, Set<DeviceEventSubscription> postings) {
+	if (postings == null) {
+	    return;
+	}
+	for (DeviceEventSubscription subscription : postings) {
+	    hits.merge(subscription, 1, Integer::sum);
+	}
+    }
+
+    /**
+     * Add subscription to posting list for each value.
+     *
+     * @param index
+     * @param values
+     * @param subscription
+     */
+    protected void addPostings(Map<Object, Set<DeviceEventSubscription>> index, Collection<?> values,
+	    DeviceEventSubscription subscription) {
+	for (Object value : values) {
+	    index.computeIfAbsent(value, k -> new HashSet<DeviceEventSubscription>()).add(subscription);
+	}
+    }
+
+    /**
+     * Remove subscription from posting list for each value.
+     *
+     * @param index
+     * @param values
+     * @param subscription
+     */
+    protected void removePostings(Map<Object, Set<DeviceEventSubscription>> index, Collection<?> values,
+	    DeviceEventSubscription subscription) {
+	for (Object value : values) {
+	    Set<DeviceEventSubscription> postings = index.get(value);
+	    if (postings != null) {
+		postings.remove(subscription);
+		if (postings.isEmpty()) {
+		    index.remove(value);
+		}
+	    }
+	}
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.ws.components.events;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sitewhere.grpc.kafka.model.KafkaModel.GEnrichedEventPayload;
+import com.sitewhere.grpc.model.converter.KafkaModelConverter;
+import com.sitewhere.grpc.model.marshaling.KafkaModelMarshaler;
+import com.sitewhere.microservice.kafka.MicroserviceKafkaConsumer;
+import com.sitewhere.rest.model.microservice.kafka.payload.EnrichedEventPayload;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.microservice.IMicroservice;
+import com.sitewhere.spi.tenant.ITenant;
+
+/**
+ * Consumes the enriched events topic for a single tenant on behalf of live
+ * WebSocket subscriptions. Each Web/REST instance uses its own consumer group
+ * so that every instance sees every event, and starts from the latest offset
+ * since only live events are of interest.
+ *
+ * @author Derek
+ */
+public class TenantEnrichedEventsConsumer extends MicroserviceKafkaConsumer {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Consumer id */
+    private static String CONSUMER_ID = UUID.randomUUID().toString();
+
+    /** Unique group id suffix as each instance should see all messages */
+    private static String GROUP_ID_SUFFIX = "websocket-events-" + UUID.randomUUID().toString();
+
+    /** Tenant whose events are consumed */
+    private ITenant tenant;
+
+    /** Broadcaster that routes events to subscriptions */
+    private DeviceEventBroadcaster broadcaster;
+
+    public TenantEnrichedEventsConsumer(IMicroservice microservice, ITenant tenant,
+	    DeviceEventBroadcaster broadcaster) {
+	super(microservice, null);
+	this.tenant = tenant;
+	this.broadcaster = broadcaster;
+    }
+
+    /*
+     * @see com.sitewhere.spi.microservice.kafka.IMicroserviceKafkaConsumer#
+     * getConsumerId()
+     */
+    @Override
+    public String getConsumerId() throws SiteWhereException {
+	return CONSUMER_ID + "-" + getTenant().getId();
+    }
+
+    /*
+     * @see com.sitewhere.spi.microservice.kafka.IMicroserviceKafkaConsumer#
+     * getConsumerGroupId()
+     */
+    @Override
+    public String getConsumerGroupId() throws SiteWhereException {
+	return getMicroservice().getKafkaTopicNaming().getTenantPrefix(getTenant()) + GROUP_ID_SUFFIX;
+    }
+
+    /*
+     * @see com.sitewhere.spi.microservice.kafka.IMicroserviceKafkaConsumer#
+     * getSourceTopicNames()
+     */
+    @Override
+    public List<String> getSourceTopicNames() throws SiteWhereException {
+	return Collections
+		.singletonList(getMicroservice().getKafkaTopicNaming().getInboundEnrichedEventsTopic(getTenant()));
+    }
+
+    /*
+     * @see com.sitewhere.microservice.kafka.MicroserviceKafkaConsumer#
+     * buildConfiguration()
+     */
+    @Override
+    protected Properties buildConfiguration() throws SiteWhereException {
+	Properties config = super.buildConfiguration();
+	config.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+	return config;
+    }
+
+    /*
+     * @see
+     * com.sitewhere.spi.microservice.kafka.IMicroserviceKafkaConsumer#received(
+     * java.lang.String, byte[])
+     */
+    @Override
+    public void received(String key, byte[] message) throws SiteWhereException {
+	try {
+	    GEnrichedEventPayload grpc = KafkaModelMarshaler.parseEnrichedEventPayloadMessage(message);
+	    EnrichedEventPayload payload = KafkaModelConverter.asApiEnrichedEventPayload(grpc);
+	    getBroadcaster().onEvent(getTenant().getId(), payload.getEventContext(), payload.getEvent());
+	} catch (SiteWhereException e) {
+	    getLogger().warn("Unable to route enriched event to WebSocket subscribers.", e);
+	}
+    }
+
+    /*
+     * @see com.sitewhere.spi.server.lifecycle.ILifecycleComponent#getLogger()
+     */
+    @Override
+    public Logger getLogger() {
+	return LOGGER;
+    }
+
+    public ITenant getTenant() {
+	return tenant;
+    }
+
+    public void setTenant(ITenant tenant) {
+	this.tenant = tenant;
+    }
+
+    public DeviceEventBroadcaster getBroadcaster() {
+	return broadcaster;
+    }
+
+    public void setBroadcaster(DeviceEventBroadcaster broadcaster) {
+	this.broadcaster = broadcaster;
+    }
+}
@@ -0,0 +1,444 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.rest.controllers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.regex.Matcher;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+
+import com.sitewhere.grpc.client.event.DeviceStreamDataReader;
+import com.sitewhere.grpc.model.converter.EventModelConverter;
+import com.sitewhere.grpc.service.GReadStreamDataForAssignmentResponse;
+import com.sitewhere.rest.model.device.DeviceAssignment;
+import com.sitewhere.rest.model.device.event.DeviceStreamData;
+import com.sitewhere.rest.model.device.streaming.DeviceStream;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.DeviceAssignmentType;
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.streaming.IDeviceStream;
+
+public class AssignmentsTest {
+
+    /** Chunks stored for the test stream */
+    private static final String[] CHUNKS = { "abcd", "efgh", "ijkl" };
+
+    /** Complete stream content */
+    private static final String CONTENT = "abcdefghijkl";
+
+    /** ETag for the test stream */
+    private static final String ETAG = "\"3-3\"";
+
+    @Test
+    public void testResolveSingleRange() throws Exception {
+	assertRange(0, 0, "bytes=0-0", 12);
+	assertRange(2, 5, "bytes=2-5", 12);
+	assertRange(5, 11, "bytes=5-100", 12);
+	assertRange(11, 11, "bytes=11-11", 12);
+    }
+
+    @Test
+    public void testResolveSuffixRange() throws Exception {
+	assertRange(9, 11, "bytes=-3", 12);
+	assertRange(0, 11, "bytes=-12", 12);
+	assertRange(0, 11, "bytes=-20", 12);
+    }
+
+    @Test
+    public void testResolveOpenEndedRange() throws Exception {
+	assertRange(0, 11, "bytes=0-", 12);
+	assertRange(7, 11, "bytes=7-", 12);
+	assertRange(11, 11, "bytes=11-", 12);
+    }
+
+    @Test
+    public void testResolveUnsatisfiableRange() throws Exception {
+	assertNull(Assignments.resolveByteRange(range("bytes=12-"), 12));
+	assertNull(Assignments.resolveByteRange(range("bytes=20-30"), 12));
+	assertNull(Assignments.resolveByteRange(range("bytes=5-2"), 12));
+	assertNull(Assignments.resolveByteRange(range("bytes=-0"), 12));
+	assertNull(Assignments.resolveByteRange(range("bytes=-5"), 0));
+	assertNull(Assignments.resolveByteRange(range("bytes=0-"), 0));
+    }
+
+    @Test
+    public void testUnsupportedRangesIgnored() throws Exception {
+	assertNull(Assignments.getByteRange(request()));
+	assertNull(Assignments.getByteRange(request(HttpHeaders.RANGE, "bytes=-")));
+	assertNull(Assignments.getByteRange(request(HttpHeaders.RANGE, "bytes=0-1,4-5")));
+	assertNull(Assignments.getByteRange(request(HttpHeaders.RANGE, "items=0-1")));
+	assertNull(Assignments.getByteRange(request(HttpHeaders.RANGE, "bytes=99999999999999999999-")));
+	assertNotNull(Assignments.getByteRange(request(HttpHeaders.RANGE, " bytes=0-1 ")));
+    }
+
+    @Test
+    public void testFullStreamHasETag() throws Exception {
+	TestAssignments controller = new TestAssignments();
+	TestResponse response = get(controller, request());
+	assertEquals(HttpServletResponse.SC_OK, response.status);
+	assertEquals(CONTENT, response.body());
+	assertEquals(ETAG, response.headers.get(HttpHeaders.ETAG));
+	assertEquals("bytes", response.headers.get(HttpHeaders.ACCEPT_RANGES));
+	assertNull(response.headers.get(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    public void testNotModified() throws Exception {
+	TestResponse response = get(new TestAssignments(), request(HttpHeaders.IF_NONE_MATCH, ETAG));
+	assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.status);
+	assertEquals("", response.body());
+    }
+
+    @Test
+    public void testSingleRange() throws Exception {
+	TestResponse response = get(new TestAssignments(), request(HttpHeaders.RANGE, "bytes=2-5"));
+	assertPartial(response, "cdef", "bytes 2-5/12");
+    }
+
+    @Test
+    public void testSuffixRange() throws Exception {
+	TestAssignments controller = new TestAssignments();
+	TestResponse response = get(controller, request(HttpHeaders.RANGE, "bytes=-6"));
+	assertPartial(response, "ghijkl", "bytes 6-11/12");
+	assertEquals(6, controller.opened.get(0).getSuffixLength());
+    }
+
+    @Test
+    public void testOpenEndedRange() throws Exception {
+	TestAssignments controller = new TestAssignments();
+	TestResponse response = get(controller, request(HttpHeaders.RANGE, "bytes=9-"));
+	assertPartial(response, "jkl", "bytes 9-11/12");
+	assertEquals(9, controller.opened.get(0).getStartOffset());
+    }
+
+    @Test
+    public void testUnsatisfiableRange() throws Exception {
+	TestResponse response = get(new TestAssignments(), request(HttpHeaders.RANGE, "bytes=12-"));
+	assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.status);
+	assertEquals("bytes */12", response.headers.get(HttpHeaders.CONTENT_RANGE));
+	assertEquals("", response.body());
+    }
+
+    @Test
+    public void testIfRangeMatching() throws Exception {
+	TestAssignments controller = new TestAssignments();
+	TestResponse response = get(controller, request(HttpHeaders.RANGE, "bytes=4-7", HttpHeaders.IF_RANGE, ETAG));
+	assertPartial(response, "efgh", "bytes 4-7/12");
+	assertEquals(1, controller.opened.size());
+    }
+
+    @Test
+    public void testIfRangeStale() throws Exception {
+	TestAssignments controller = new TestAssignments();
+	TestResponse response = get(controller,
+		request(HttpHeaders.RANGE, "bytes=4-7", HttpHeaders.IF_RANGE, "\"2-2\""));
+	assertEquals(HttpServletResponse.SC_OK, response.status);
+	assertEquals(CONTENT, response.body());
+	assertEquals(ETAG, response.headers.get(HttpHeaders.ETAG));
+	assertNull(response.headers.get(HttpHeaders.CONTENT_RANGE));
+	assertEquals(2, controller.opened.size());
+	assertEquals(0, controller.opened.get(1).getStartOffset());
+	assertEquals(0, controller.opened.get(1).getSuffixLength());
+    }
+
+    /**
+     * Assert that a range resolves to the given inclusive bounds.
+     *
+     * @param start
+     * @param end
+     * @param header
+     * @param total
+     */
+    protected static void assertRange(long start, long end, String header, long total) {
+	assertArrayEquals(header, new long[] { start, end }, Assignments.resolveByteRange(range(header), total));
+    }
+
+    /**
+     * Assert that a response carries part of the stream.
+     *
+     * @param response
+     * @param body
+     * @param contentRange
+     */
+    protected static void assertPartial(TestResponse response, String body, String contentRange) {
+	assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.status);
+	assertEquals(body, response.body());
+	assertEquals(contentRange, response.headers.get(HttpHeaders.CONTENT_RANGE));
+	assertEquals(Long.valueOf(body.length()), response.contentLength);
+	assertEquals(ETAG, response.headers.get(HttpHeaders.ETAG));
+    }
+
+    /**
+     * Parse a range header.
+     *
+     * @param header
+     * @return
+     */
+    protected static Matcher range(String header) {
+	Matcher range = Assignments.getByteRange(request(HttpHeaders.RANGE, header));
+	assertNotNull(header, range);
+	return range;
+    }
+
+    /**
+     * Get stream data through the controller.
+     *
+     * @param controller
+     * @param request
+     * @return
+     * @throws SiteWhereException
+     */
+    protected static TestResponse get(Assignments controller, HttpServletRequest request) throws SiteWhereException {
+	TestResponse response = new TestResponse();
+	controller.listDeviceStreamData("assignment", "stream", request, response.asResponse());
+	return response;
+    }
+
+    /**
+     * Create a request with the given header names and values.
+     *
+     * @param headers
+     * @return
+     */
+    protected static HttpServletRequest request(String... headers) {
+	Map<String, String> values = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+	for (int i = 0; i < headers.length; i += 2) {
+	    values.put(headers[i], headers[i + 1]);
+	}
+	return (HttpServletRequest) Proxy.newProxyInstance(AssignmentsTest.class.getClassLoader(),
+		new Class<?>[] { HttpServletRequest.class }, new InvocationHandler() {
+
+		    @Override
+		    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if ("getHeader".equals(method.getName())) {
+			    return values.get(args[0]);
+			}
+			throw new UnsupportedOperationException(method.getName());
+		    }
+		});
+    }
+
+    /**
+     * Controller that reads stream data from memory instead of event management.
+     *
+     * @author Derek
+     */
+    private static class TestAssignments extends Assignments {
+
+	/** Parameters of each reader opened */
+	private List<OpenedReader> opened = new ArrayList<OpenedReader>();
+
+	/*
+	 * @see com.sitewhere.web.rest.controllers.Assignments#
+	 * assertDeviceAssignment(java.lang.String)
+	 */
+	@Override
+	protected IDeviceAssignment assertDeviceAssignment(String token) throws SiteWhereException {
+	    DeviceAssignment assignment = new DeviceAssignment();
+	    assignment.setId(UUID.randomUUID());
+	    assignment.setToken(token);
+	    return assignment;
+	}
+
+	/*
+	 * @see
+	 * com.sitewhere.web.rest.controllers.Assignments#assertDeviceStream(java.
+	 * util.UUID, java.lang.String)
+	 */
+	@Override
+	protected IDeviceStream assertDeviceStream(UUID assignmentId, String id) throws SiteWhereException {
+	    DeviceStream stream = new DeviceStream();
+	    stream.setAssignmentId(assignmentId);
+	    stream.setStreamId(id);
+	    stream.setContentType("application/octet-stream");
+	    return stream;
+	}
+
+	/*
+	 * @see com.sitewhere.web.rest.controllers.Assignments#openStreamDataReader(
+	 * com.sitewhere.spi.device.IDeviceAssignment, java.lang.String,
+	 * java.util.regex.Matcher, boolean)
+	 */
+	@Override
+	protected DeviceStreamDataReader openStreamDataReader(IDeviceAssignment assignment, String streamId,
+		Matcher range, boolean headerOnly) throws SiteWhereException {
+	    long startOffset = 0;
+	    long suffixLength = 0;
+	    if (range != null) {
+		if (range.group(1).isEmpty()) {
+		    suffixLength = Long.parseLong(range.group(2));
+		} else {
+		    startOffset = Long.parseLong(range.group(1));
+		}
+	    }
+	    opened.add(new OpenedReader(startOffset, suffixLength));
+
+	    // Send chunks the way the event management service does.
+	    List<GReadStreamDataForAssignmentResponse> responses = new ArrayList<GReadStreamDataForAssignmentResponse>();
+	    responses.add(GReadStreamDataForAssignmentResponse.newBuilder().setChunkCount(CHUNKS.length)
+		    .setLastSequenceNumber(CHUNKS.length).setTotalSize(CONTENT.length()).build());
+	    long start = (suffixLength > 0) ? Math.max(0, CONTENT.length() - suffixLength) : startOffset;
+	    long offset = 0;
+	    for (int i = 0; (i < CHUNKS.length) && !headerOnly; i++) {
+		if ((offset + CHUNKS[i].length()) > start) {
+		    responses.add(GReadStreamDataForAssignmentResponse.newBuilder().setChunkOffset(offset)
+			    .setStreamData(EventModelConverter.asGrpcDeviceStreamData(chunk(streamId, i))).build());
+		}
+		offset += CHUNKS[i].length();
+	    }
+	    return new DeviceStreamDataReader(responses.iterator()) {
+	    };
+	}
+
+	/**
+	 * Create a stored chunk.
+	 *
+	 * @param streamId
+	 * @param index
+	 * @return
+	 */
+	protected static DeviceStreamData chunk(String streamId, int index) {
+	    DeviceStreamData chunk = new DeviceStreamData();
+	    chunk.setId("chunk-" + index);
+	    chunk.setSiteId(UUID.randomUUID());
+	    chunk.setDeviceAssignmentId(UUID.randomUUID());
+	    chunk.setAssignmentType(DeviceAssignmentType.Unassociated);
+	    chunk.setStreamId(streamId);
+	    chunk.setSequenceNumber((long) (index + 1));
+	    chunk.setData(CHUNKS[index].getBytes(StandardCharsets.UTF_8));
+	    return chunk;
+	}
+    }
+
+    /**
+     * Offsets requested when a reader was opened.
+     *
+     * @author Derek
+     */
+    private static class OpenedReader {
+
+	/** Start offset */
+	private long startOffset;
+
+	/** Suffix length */
+	private long suffixLength;
+
+	public OpenedReader(long startOffset, long suffixLength) {
+	    this.startOffset = startOffset;
+	    this.suffixLength = suffixLength;
+	}
+
+	public long getStartOffset() {
+	    return startOffset;
+	}
+
+	public long getSuffixLength() {
+	    return suffixLength;
+	}
+    }
+
+    /**
+     * Records what the controller writes to a servlet response.
+     *
+     * @author Derek
+     */
+    private static class TestResponse implements InvocationHandler {
+
+	/** Response status */
+	private int status = HttpServletResponse.SC_OK;
+
+	/** Response headers */
+	private Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+
+	/** Content length if set */
+	private Long contentLength;
+
+	/** Response body */
+	private ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+	/**
+	 * Create servlet response backed by this recorder.
+	 *
+	 * @return
+	 */
+	public HttpServletResponse asResponse() {
+	    return (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+		    new Class<?>[] { HttpServletResponse.class }, this);
+	}
+
+	/**
+	 * Get body as a string.
+	 *
+	 * @return
+	 */
+	public String body() {
+	    return new String(body.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/*
+	 * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object,
+	 * java.lang.reflect.Method, java.lang.Object[])
+	 */
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+	    switch (method.getName()) {
+	    case "setStatus":
+		status = (Integer) args[0];
+		return null;
+	    case "setHeader":
+		headers.put((String) args[0], (String) args[1]);
+		return null;
+	    case "setContentType":
+		headers.put(HttpHeaders.CONTENT_TYPE, (String) args[0]);
+		return null;
+	    case "setContentLengthLong":
+		contentLength = (Long) args[0];
+		return null;
+	    case "getOutputStream":
+		return new ServletOutputStream() {
+
+		    @Override
+		    public void write(int b) {
+			body.write(b);
+		    }
+
+		    @Override
+		    public boolean isReady() {
+			return true;
+		    }
+
+		    @Override
+		    public void setWriteListener(WriteListener listener) {
+		    }
+		};
+	    default:
+		throw new UnsupportedOperationException(method.getName());
+	    }
+	}
+    }
+}
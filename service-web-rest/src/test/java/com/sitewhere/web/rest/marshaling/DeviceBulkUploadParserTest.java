@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.rest.marshaling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sitewhere.rest.model.device.request.DeviceCreateRequest;
+import com.sitewhere.spi.device.IDeviceBulkCreateError;
+
+public class DeviceBulkUploadParserTest {
+
+    @Test
+    public void testSplitPlain() {
+	assertEquals(Arrays.asList("a", "b", "c"), DeviceBulkUploadParser.splitCsv("a,b,c"));
+	assertEquals(Arrays.asList("a", "", "c"), DeviceBulkUploadParser.splitCsv("a,,c"));
+	assertEquals(Arrays.asList("a", "b", ""), DeviceBulkUploadParser.splitCsv("a,b,"));
+	assertEquals(Arrays.asList("a", "b"), DeviceBulkUploadParser.splitCsv(" a , b "));
+    }
+
+    @Test
+    public void testSplitQuotedComma() {
+	assertEquals(Arrays.asList("a", "b,c", "d"), DeviceBulkUploadParser.splitCsv("a,\"b,c\",d"));
+	assertEquals(Arrays.asList(",", ""), DeviceBulkUploadParser.splitCsv("\",\","));
+    }
+
+    @Test
+    public void testSplitEscapedQuote() {
+	assertEquals(Arrays.asList("say \"hi\"", "x"), DeviceBulkUploadParser.splitCsv("\"say \"\"hi\"\"\",x"));
+	assertEquals(Arrays.asList("\""), DeviceBulkUploadParser.splitCsv("\"\"\"\""));
+	assertEquals(Arrays.asList(""), DeviceBulkUploadParser.splitCsv("\"\""));
+    }
+
+    @Test
+    public void testCsvRows() throws Exception {
+	String csv = "hardwareId,deviceTypeToken,comments,location\n" + "dev-1,sensor,\"first, with comma\",\n"
+		+ "\n" + "   \n" + "dev-2,sensor,\"quote \"\"here\"\"\",lobby\n";
+	DeviceBulkUploadParser parser = parser(csv, true);
+	List<DeviceCreateRequest> rows = new ArrayList<DeviceCreateRequest>();
+	List<Integer> indexes = new ArrayList<Integer>();
+	List<IDeviceBulkCreateError> errors = new ArrayList<IDeviceBulkCreateError>();
+	assertFalse(parser.readBatch(10, rows, indexes, errors));
+
+	assertEquals(0, errors.size());
+	assertEquals(2, rows.size());
+	assertEquals(Arrays.asList(0, 1), indexes);
+	assertEquals("dev-1", rows.get(0).getHardwareId());
+	assertEquals("sensor", rows.get(0).getDeviceTypeToken());
+	assertEquals("first, with comma", rows.get(0).getComments());
+	assertNull(rows.get(0).getMetadata().get("location"));
+	assertEquals("quote \"here\"", rows.get(1).getComments());
+	assertEquals("lobby", rows.get(1).getMetadata().get("location"));
+    }
+
+    @Test
+    public void testCsvBadRowReported() throws Exception {
+	String csv = "hardwareId,comments\n" + "dev-1,ok\n" + "dev-2\n" + "dev-3,ok\n";
+	DeviceBulkUploadParser parser = parser(csv, true);
+	List<DeviceCreateRequest> rows = new ArrayList<DeviceCreateRequest>();
+	List<Integer> indexes = new ArrayList<Integer>();
+	List<IDeviceBulkCreateError> errors = new ArrayList<IDeviceBulkCreateError>();
+	assertFalse(parser.readBatch(10, rows, indexes, errors));
+
+	assertEquals(Arrays.asList(0, 2), indexes);
+	assertEquals(1, errors.size());
+	assertEquals(1, errors.get(0).getIndex());
+    }
+
+    @Test
+    public void testBatchesSkipBlankLines() throws Exception {
+	String json = "{\"hardwareId\":\"dev-1\"}\n\n{\"hardwareId\":\"dev-2\"}\n\n\n{\"hardwareId\":\"dev-3\"}\n";
+	DeviceBulkUploadParser parser = parser(json, false);
+	List<DeviceCreateRequest> rows = new ArrayList<DeviceCreateRequest>();
+	List<Integer> indexes = new ArrayList<Integer>();
+	List<IDeviceBulkCreateError> errors = new ArrayList<IDeviceBulkCreateError>();
+	assertTrue(parser.readBatch(2, rows, indexes, errors));
+	assertEquals(2, rows.size());
+	assertFalse(parser.readBatch(2, rows, indexes, errors));
+
+	assertEquals(3, rows.size());
+	assertEquals(Arrays.asList(0, 1, 2), indexes);
+	assertEquals("dev-3", rows.get(2).getHardwareId());
+	assertEquals(0, errors.size());
+    }
+
+    @Test
+    public void testEmptyCsv() throws Exception {
+	DeviceBulkUploadParser parser = parser("", true);
+	List<DeviceCreateRequest> rows = new ArrayList<DeviceCreateRequest>();
+	assertFalse(parser.readBatch(10, rows, new ArrayList<Integer>(), new ArrayList<IDeviceBulkCreateError>()));
+	assertEquals(0, rows.size());
+    }
+
+    /**
+     * Create a parser over an in-memory upload.
+     *
+     * @param content
+     * @param csv
+     * @return
+     */
+    protected DeviceBulkUploadParser parser(String content, boolean csv) {
+	return new DeviceBulkUploadParser(new BufferedReader(new StringReader(content)), csv);
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.rest.marshaling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sitewhere.common.MarshalUtils;
+import com.sitewhere.rest.model.device.event.DeviceAlert;
+import com.sitewhere.rest.model.device.event.DeviceEvent;
+import com.sitewhere.rest.model.device.event.DeviceLocation;
+import com.sitewhere.rest.model.device.event.DeviceMeasurements;
+import com.sitewhere.spi.device.DeviceAssignmentType;
+import com.sitewhere.spi.device.event.AlertLevel;
+import com.sitewhere.spi.device.event.AlertSource;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+
+public class DeviceEventExportWriterTest {
+
+    /** Number of flush intervals written by each format in the streaming test */
+    private static final int STREAMED_INTERVALS = 5;
+
+    @Test
+    public void testNdjson() throws Exception {
+	ByteArrayOutputStream output = new ByteArrayOutputStream();
+	DeviceEventExportWriter writer = new DeviceEventExportWriter(output,
+		DeviceEventExportWriter.Format.getByName("ndjson"));
+	assertEquals(3, writer.write(source(sampleEvents())));
+
+	String[] lines = new String(output.toByteArray(), StandardCharsets.UTF_8).split("\n", -1);
+	assertEquals(4, lines.length);
+	assertEquals("", lines[3]);
+	JsonNode measurements = MarshalUtils.MAPPER.readTree(lines[0]);
+	assertEquals("Measurements", measurements.get("eventType").asText());
+	assertEquals(21.5, measurements.get("measurements").get("temp").asDouble(), 0.0);
+	assertEquals("Location", MarshalUtils.MAPPER.readTree(lines[1]).get("eventType").asText());
+	assertEquals("line1\nline2", MarshalUtils.MAPPER.readTree(lines[2]).get("message").asText());
+    }
+
+    @Test
+    public void testCsv() throws Exception {
+	ByteArrayOutputStream output = new ByteArrayOutputStream();
+	DeviceEventExportWriter writer = new DeviceEventExportWriter(output,
+		DeviceEventExportWriter.Format.getByName("CSV"));
+	assertEquals(3, writer.write(source(sampleEvents())));
+
+	String csv = new String(output.toByteArray(), StandardCharsets.UTF_8);
+	String[] rows = csv.split("\r\n");
+	assertEquals("id,alternateId,eventType,siteId,deviceAssignmentId,eventDate,receivedDate,name,value,latitude,"
+		+ "longitude,elevation,message", rows[0]);
+
+	// Header, two measurement rows, location and alert.
+	assertEquals(5, rows.length);
+	assertTrue(rows[1].startsWith("e0,,Measurements,"));
+	assertTrue(rows[1].endsWith(",temp,21.5,,,,") || rows[2].endsWith(",temp,21.5,,,,"));
+	assertTrue(rows[3].endsWith(",,,33.75,-84.39,300.0,"));
+	assertTrue(rows[4].endsWith(",\"engine,overheat\",Critical,,,,\"line1\nline2 \"\"hot\"\"\""));
+    }
+
+    @Test
+    public void testPeriodicFlush() throws Exception {
+	CountingOutputStream output = new CountingOutputStream();
+	long count = (DeviceEventExportWriter.FLUSH_INTERVAL * 5) + 1;
+	new DeviceEventExportWriter(output, DeviceEventExportWriter.Format.Ndjson).write(generator(count, null, null));
+	assertTrue(output.flushes >= 6);
+    }
+
+    @Test
+    public void testNdjsonExportIsStreamed() throws Exception {
+	verifyStreamed(DeviceEventExportWriter.Format.Ndjson);
+    }
+
+    @Test
+    public void testCsvExportIsStreamed() throws Exception {
+	verifyStreamed(DeviceEventExportWriter.Format.Csv);
+    }
+
+    /**
+     * Export generated events to a stream that discards output and check that
+     * output reaches the stream at every flush interval rather than being held
+     * until the source is exhausted.
+     * 
+     * @param format
+     * @throws Exception
+     */
+    protected void verifyStreamed(DeviceEventExportWriter.Format format) throws Exception {
+	CountingOutputStream output = new CountingOutputStream();
+	List<Long> samples = new ArrayList<Long>();
+	long total = DeviceEventExportWriter.FLUSH_INTERVAL * STREAMED_INTERVALS;
+	long count = new DeviceEventExportWriter(output, format).write(generator(total, samples, output));
+
+	assertEquals(total, count);
+	assertEquals(STREAMED_INTERVALS, samples.size());
+	long previous = -1;
+	for (long sample : samples) {
+	    assertTrue("Output did not grow between flush intervals.", sample > previous);
+	    previous = sample;
+	}
+	assertTrue(output.bytes > previous);
+    }
+
+    /**
+     * Create a source for a list of events.
+     * 
+     * @param events
+     * @return
+     */
+    protected DeviceEventExportWriter.EventSource source(List<IDeviceEvent> events) {
+	Iterator<IDeviceEvent> it = events.iterator();
+	return () -> it.hasNext() ? it.next() : null;
+    }
+
+    /**
+     * Create a source that generates events on demand, in the same way the
+     * export reader produces them from a gRPC stream. If samples are requested,
+     * bytes written to the output are recorded at each flush interval.
+     * 
+     * @param count
+     * @param samples
+     * @param output
+     * @return
+     */
+    protected DeviceEventExportWriter.EventSource generator(long count, List<Long> samples,
+	    CountingOutputStream output) {
+	UUID site = UUID.randomUUID();
+	UUID assignment = UUID.randomUUID();
+	long[] generated = new long[1];
+	return () -> {
+	    if (generated[0] == count) {
+		return null;
+	    }
+	    if ((samples != null) && ((generated[0] % DeviceEventExportWriter.FLUSH_INTERVAL) == 0)) {
+		samples.add(output.bytes);
+	    }
+	    DeviceMeasurements event = new DeviceMeasurements();
+	    populate(event, "e" + generated[0], site, assignment);
+	    event.addOrReplaceMeasurement("temp", (double) (generated[0] % 100));
+	    event.addOrReplaceMeasurement("humidity", 50.0);
+	    generated[0]++;
+	    return event;
+	};
+    }
+
+    /**
+     * Create one event of each of several types.
+     * 
+     * @return
+     * @throws Exception
+     */
+    protected List<IDeviceEvent> sampleEvents() throws Exception {
+	UUID site = UUID.randomUUID();
+	UUID assignment = UUID.randomUUID();
+	List<IDeviceEvent> events = new ArrayList<IDeviceEvent>();
+
+	DeviceMeasurements measurements = new DeviceMeasurements();
+	populate(measurements, "e0", site, assignment);
+	measurements.addOrReplaceMeasurement("temp", 21.5);
+	measurements.addOrReplaceMeasurement("humidity", 40.0);
+	events.add(measurements);
+
+	DeviceLocation location = new DeviceLocation();
+	populate(location, "e1", site, assignment);
+	location.setLatitude(33.75);
+	location.setLongitude(-84.39);
+	location.setElevation(300.0);
+	events.add(location);
+
+	DeviceAlert alert = new DeviceAlert();
+	populate(alert, "e2", site, assignment);
+	alert.setSource(AlertSource.Device);
+	alert.setLevel(AlertLevel.Critical);
+	alert.setType("engine,overheat");
+	alert.setMessage("line1\nline2 \"hot\"");
+	events.add(alert);
+	return events;
+    }
+
+    /**
+     * Set common event fields.
+     * 
+     * @param event
+     * @param id
+     * @param site
+     * @param assignment
+     */
+    protected void populate(DeviceEvent event, String id, UUID site, UUID assignment) {
+	event.setId(id);
+	event.setSiteId(site);
+	event.setDeviceAssignmentId(assignment);
+	event.setAssignmentType(DeviceAssignmentType.Unassociated);
+	event.setEventDate(new Date());
+	event.setReceivedDate(new Date());
+    }
+
+    /**
+     * Output stream that discards data and counts bytes and flushes.
+     */
+    private static class CountingOutputStream extends OutputStream {
+
+	/** Bytes written */
+	private long bytes;
+
+	/** Number of flushes */
+	private int flushes;
+
+	@Override
+	public void write(int b) {
+	    bytes++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+	    bytes += len;
+	}
+
+	@Override
+	public void flush() {
+	    flushes++;
+	}
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.security.jwt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.sitewhere.rest.model.tenant.Tenant;
+import com.sitewhere.rest.model.user.User;
+import com.sitewhere.security.SitewhereAuthentication;
+import com.sitewhere.security.SitewhereUserDetails;
+import com.sitewhere.spi.tenant.ITenant;
+import com.sitewhere.spi.user.IGrantedAuthority;
+
+public class TokenAuthenticationCacheTest {
+
+    /** Number of lookups per thread in concurrency and repeat tests */
+    private static final int LOOKUPS = 100000;
+
+    @Test
+    public void testCachedAuthentication() throws Exception {
+	TokenAuthenticationCache cache = new TokenAuthenticationCache();
+	AtomicInteger loads = new AtomicInteger();
+	SitewhereAuthentication first = cache.getAuthentication("jwt", loader("user", loads, Long.MAX_VALUE));
+	SitewhereAuthentication second = cache.getAuthentication("jwt", loader("user", loads, Long.MAX_VALUE));
+	assertEquals(1, loads.get());
+	assertEquals("user", first.getName());
+	assertEquals("jwt", second.getCredentials());
+	assertSame(first.getDetails(), second.getDetails());
+
+	// Tenant set for one request is not visible to the next.
+	assertNotSame(first, second);
+	first.setTenant(tenant("t1", "auth"));
+	assertNull(second.getTenant());
+    }
+
+    @Test
+    public void testExpiredTokenReverified() throws Exception {
+	TokenAuthenticationCache cache = new TokenAuthenticationCache();
+	AtomicInteger loads = new AtomicInteger();
+	long expired = System.currentTimeMillis() - 1000;
+	cache.getAuthentication("jwt", loader("user", loads, expired));
+	cache.getAuthentication("jwt", loader("user", loads, expired));
+	assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void testTenantInvalidation() throws Exception {
+	TokenAuthenticationCache cache = new TokenAuthenticationCache();
+	AtomicInteger loads = new AtomicInteger();
+	Callable<ITenant> loader = () -> {
+	    loads.incrementAndGet();
+	    return tenant("t1", "auth" + loads.get());
+	};
+	assertEquals("auth1", cache.getTenant("t1", loader).getAuthenticationToken());
+	assertEquals("auth1", cache.getTenant("t1", loader).getAuthenticationToken());
+	cache.invalidateTenant("t1");
+	assertEquals("auth2", cache.getTenant("t1", loader).getAuthenticationToken());
+
+	// Missing tenants are not cached.
+	assertNull(cache.getTenant("missing", () -> null));
+	assertEquals(1, cache.getTenantCount());
+    }
+
+    @Test
+    public void testTenantAuthComparison() {
+	ITenant tenant = tenant("t1", "secret");
+	assertTrue(TokenAuthenticationCache.isTenantAuthValid(tenant, "secret"));
+	assertFalse(TokenAuthenticationCache.isTenantAuthValid(tenant, "secreT"));
+	assertFalse(TokenAuthenticationCache.isTenantAuthValid(tenant, "secret2"));
+	assertFalse(TokenAuthenticationCache.isTenantAuthValid(tenant, null));
+	assertFalse(TokenAuthenticationCache.isTenantAuthValid(null, "secret"));
+    }
+
+    @Test
+    public void testBoundedSize() throws Exception {
+	TokenAuthenticationCache cache = new TokenAuthenticationCache(10, 10,
+		TokenAuthenticationCache.DEFAULT_MAX_LIFETIME_MS);
+	AtomicInteger loads = new AtomicInteger();
+	for (int i = 0; i < 50; i++) {
+	    cache.getAuthentication("jwt" + i, loader("user" + i, loads, Long.MAX_VALUE));
+	}
+	assertTrue(cache.getTokenCount() <= 10);
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+	int threads = 16;
+	int tokens = 8;
+	TokenAuthenticationCache cache = new TokenAuthenticationCache();
+	AtomicInteger loads = new AtomicInteger();
+	AtomicInteger tenantLoads = new AtomicInteger();
+	ExecutorService executor = Executors.newFixedThreadPool(threads);
+	try {
+	    List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+	    for (int t = 0; t < threads; t++) {
+		results.add(executor.submit(() -> {
+		    int ok = 0;
+		    for (int i = 0; i < LOOKUPS; i++) {
+			String jwt = "jwt" + (i % tokens);
+			SitewhereAuthentication auth = cache.getAuthentication(jwt,
+				loader("user" + (i % tokens), loads, Long.MAX_VALUE));
+			ITenant tenant = cache.getTenant("t1", () -> {
+			    tenantLoads.incrementAndGet();
+			    return tenant("t1", "auth");
+			});
+			if (TokenAuthenticationCache.isTenantAuthValid(tenant, "auth")) {
+			    auth.setTenant(tenant);
+			}
+			if (jwt.equals(auth.getCredentials()) && (auth.getTenant() == tenant)) {
+			    ok++;
+			}
+		    }
+		    return ok;
+		}));
+	    }
+	    for (Future<Integer> result : results) {
+		assertEquals(LOOKUPS, result.get().intValue());
+	    }
+	} finally {
+	    executor.shutdown();
+	}
+
+	// Concurrent misses for the same key share a single load.
+	assertEquals(tokens, loads.get());
+	assertEquals(1, tenantLoads.get());
+    }
+
+    @Test
+    public void testCachedLookupsDoNotReload() throws Exception {
+	TokenAuthenticationCache cache = new TokenAuthenticationCache();
+	AtomicInteger loads = new AtomicInteger();
+	Callable<TokenAuthenticationCache.VerifiedToken> loader = loader("user", loads, Long.MAX_VALUE);
+	Callable<ITenant> tenantLoader = () -> tenant("t1", "auth");
+	String jwt = "eyJhbGciOiJIUzUxMiJ9.eyJzdWIiOiJhZG1pbiIsImF1dGgiOlsiUkVTVCJdfQ.signature";
+
+	// Repeat the work done by the filter for a cached request.
+	for (int i = 0; i < LOOKUPS; i++) {
+	    lookup(cache, jwt, loader, tenantLoader);
+	}
+	assertEquals(1, loads.get());
+	assertEquals(1, cache.getTokenCount());
+	assertEquals(1, cache.getTenantCount());
+    }
+
+    /**
+     * Perform the lookups done by the filter for a request.
+     *
+     * @param cache
+     * @param jwt
+     * @param loader
+     * @param tenantLoader
+     * @throws Exception
+     */
+    protected void lookup(TokenAuthenticationCache cache, String jwt,
+	    Callable<TokenAuthenticationCache.VerifiedToken> loader, Callable<ITenant> tenantLoader) throws Exception {
+	SitewhereAuthentication auth = cache.getAuthentication(jwt, loader);
+	ITenant tenant = cache.getTenant("t1", tenantLoader);
+	assertTrue(TokenAuthenticationCache.isTenantAuthValid(tenant, "auth"));
+	auth.setTenant(tenant);
+    }
+
+    /**
+     * Create a loader that counts invocations.
+     *
+     * @param username
+     * @param loads
+     * @param expiration
+     * @return
+     */
+    protected Callable<TokenAuthenticationCache.VerifiedToken> loader(String username, AtomicInteger loads,
+	    long expiration) {
+	return () -> {
+	    loads.incrementAndGet();
+	    User user = new User();
+	    user.setUsername(username);
+	    SitewhereUserDetails details = new SitewhereUserDetails(user, new ArrayList<IGrantedAuthority>());
+	    return new TokenAuthenticationCache.VerifiedToken(details, expiration);
+	};
+    }
+
+    /**
+     * Create a tenant.
+     *
+     * @param id
+     * @param auth
+     * @return
+     */
+    protected ITenant tenant(String id, String auth) {
+	Tenant tenant = new Tenant();
+	tenant.setId(id);
+	tenant.setAuthenticationToken(auth);
+	return tenant;
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.security.jwt;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.sitewhere.microservice.security.TokenManagement;
+import com.sitewhere.rest.ISiteWhereWebConstants;
+import com.sitewhere.rest.model.tenant.Tenant;
+import com.sitewhere.rest.model.user.GrantedAuthority;
+import com.sitewhere.rest.model.user.User;
+import com.sitewhere.security.SitewhereAuthentication;
+import com.sitewhere.security.SitewhereUserDetails;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.tenant.ITenant;
+import com.sitewhere.spi.user.IGrantedAuthority;
+import com.sitewhere.web.spi.microservice.IWebRestMicroservice;
+
+/**
+ * Measures the cost of {@link TokenAuthenticationFilter#doFilterInternal} per
+ * request when the token and tenant are cached versus when every request
+ * carries a token that has not been seen. Tokens are signed and parsed with
+ * {@link TokenManagement} so misses include JWT verification. User and tenant
+ * lookups are in memory, so remote calls made on a miss in production are not
+ * included.
+ *
+ * Not part of the unit tests. Run with:
+ *
+ * <pre>
+ * gradle :service-web-rest:tokenFilterBenchmark
+ * </pre>
+ *
+ * @author Derek
+ */
+public class TokenAuthenticationFilterBenchmark {
+
+    /** Number of distinct tokens used per round */
+    private static final int TOKENS = 5000;
+
+    /** Number of rounds run before measuring */
+    private static final int WARMUP_ROUNDS = 5;
+
+    /** Number of rounds measured */
+    private static final int MEASURED_ROUNDS = 10;
+
+    /** Tenant id sent with each request */
+    private static final String TENANT_ID = "default";
+
+    /** Tenant auth sent with each request */
+    private static final String TENANT_AUTH = "sitewhere1234567890";
+
+    /** Used to sign and verify tokens */
+    private TokenManagement tokenManagement = new TokenManagement();
+
+    /** Cache used by the filter */
+    private TokenAuthenticationCache cache = new TokenAuthenticationCache();
+
+    /** Filter being measured */
+    private TokenAuthenticationFilter filter;
+
+    /** Does nothing with the request */
+    private FilterChain chain = (request, response) -> {
+    };
+
+    public static void main(String[] args) throws Exception {
+	new TokenAuthenticationFilterBenchmark().run();
+    }
+
+    /**
+     * Run warmup and measured rounds for cache hits and misses.
+     *
+     * @throws Exception
+     */
+    public void run() throws Exception {
+	this.filter = new BenchmarkFilter(createMicroservice(), createAuthenticationManager());
+	List<HttpServletRequest> hits = createRequests("hit", 16);
+	List<HttpServletRequest> misses = createRequests("miss", TOKENS);
+
+	for (int i = 0; i < WARMUP_ROUNDS; i++) {
+	    runRound(hits, false);
+	    runRound(misses, true);
+	}
+	long hitNanos = 0;
+	long missNanos = 0;
+	for (int i = 0; i < MEASURED_ROUNDS; i++) {
+	    hitNanos += runRound(hits, false);
+	    missNanos += runRound(misses, true);
+	}
+	long requests = (long) MEASURED_ROUNDS * TOKENS;
+	System.out.println(String.format("Cache hit:  %,d ns/request", hitNanos / requests));
+	System.out.println(String.format("Cache miss: %,d ns/request", missNanos / requests));
+    }
+
+    /**
+     * Filter {@link #TOKENS} requests, cycling through the given requests.
+     *
+     * @param requests
+     * @param clear
+     *            start with an empty cache so every distinct token misses
+     * @return elapsed nanoseconds
+     * @throws Exception
+     */
+    protected long runRound(List<HttpServletRequest> requests, boolean clear) throws Exception {
+	if (clear) {
+	    cache.invalidateAll();
+	}
+	long start = System.nanoTime();
+	for (int i = 0; i < TOKENS; i++) {
+	    filter.doFilterInternal(requests.get(i % requests.size()), null, chain);
+	    SecurityContextHolder.clearContext();
+	}
+	return System.nanoTime() - start;
+    }
+
+    /**
+     * Create requests carrying distinct tokens.
+     *
+     * @param prefix
+     * @param count
+     * @return
+     * @throws SiteWhereException
+     */
+    protected List<HttpServletRequest> createRequests(String prefix, int count) throws SiteWhereException {
+	List<HttpServletRequest> requests = new ArrayList<HttpServletRequest>();
+	for (int i = 0; i < count; i++) {
+	    User user = new User();
+	    user.setUsername(prefix + i);
+	    user.setAuthorities(Arrays.asList("REST", "ADMINISTER_USERS"));
+	    Map<String, String> headers = new HashMap<String, String>();
+	    headers.put("Authorization", "Bearer " + tokenManagement.generateToken(user, 60));
+	    headers.put(ISiteWhereWebConstants.HEADER_TENANT_ID, TENANT_ID);
+	    headers.put(ISiteWhereWebConstants.HEADER_TENANT_AUTH, TENANT_AUTH);
+	    requests.add((HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+		    new Class<?>[] { HttpServletRequest.class }, new InvocationHandler() {
+
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			    if ("getHeader".equals(method.getName())) {
+				return headers.get(args[0]);
+			    }
+			    throw new UnsupportedOperationException(method.getName());
+			}
+		    }));
+	}
+	return requests;
+    }
+
+    /**
+     * Create microservice that supplies the cache and token management.
+     *
+     * @return
+     */
+    protected IWebRestMicroservice createMicroservice() {
+	return (IWebRestMicroservice) Proxy.newProxyInstance(getClass().getClassLoader(),
+		new Class<?>[] { IWebRestMicroservice.class }, new InvocationHandler() {
+
+		    @Override
+		    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "getTokenAuthenticationCache":
+			    return cache;
+			case "getTokenManagement":
+			    return tokenManagement;
+			default:
+			    throw new UnsupportedOperationException(method.getName());
+			}
+		    }
+		});
+    }
+
+    /**
+     * Create authentication manager that builds user details from the token
+     * rather than loading the user.
+     *
+     * @return
+     */
+    protected AuthenticationManager createAuthenticationManager() {
+	return (authentication) -> {
+	    User user = new User();
+	    user.setUsername(authentication.getName());
+	    List<IGrantedAuthority> auths = new ArrayList<IGrantedAuthority>();
+	    for (org.springframework.security.core.GrantedAuthority spring : authentication.getAuthorities()) {
+		GrantedAuthority auth = new GrantedAuthority();
+		auth.setAuthority(spring.getAuthority());
+		auths.add(auth);
+	    }
+	    return new SitewhereAuthentication(new SitewhereUserDetails(user, auths),
+		    (String) authentication.getCredentials());
+	};
+    }
+
+    /**
+     * Filter that loads the tenant from memory.
+     *
+     * @author Derek
+     */
+    private static class BenchmarkFilter extends TokenAuthenticationFilter {
+
+	public BenchmarkFilter(IWebRestMicroservice microservice, AuthenticationManager authenticationManager) {
+	    super(microservice, authenticationManager);
+	}
+
+	/*
+	 * @see
+	 * com.sitewhere.web.security.jwt.TokenAuthenticationFilter#loadTenant(java.
+	 * lang.String)
+	 */
+	@Override
+	protected ITenant loadTenant(String tenantId) throws SiteWhereException {
+	    Tenant tenant = new Tenant();
+	    tenant.setId(tenantId);
+	    tenant.setAuthenticationToken(TENANT_AUTH);
+	    return tenant;
+	}
+    }
+}
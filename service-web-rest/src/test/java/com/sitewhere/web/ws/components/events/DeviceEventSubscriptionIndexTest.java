@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.web.ws.components.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import com.sitewhere.rest.model.device.event.DeviceAlert;
+import com.sitewhere.rest.model.device.event.DeviceEventContext;
+import com.sitewhere.rest.model.device.event.DeviceMeasurements;
+import com.sitewhere.spi.device.event.DeviceEventType;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+
+public class DeviceEventSubscriptionIndexTest {
+
+    /** Number of simulated subscriptions */
+    private static final int SUBSCRIPTION_COUNT = 5000;
+
+    /** Number of events routed in throughput test */
+    private static final int EVENT_COUNT = 100000;
+
+    @Test
+    public void testMatchByCriteria() {
+	UUID assignment = UUID.randomUUID();
+	UUID deviceType = UUID.randomUUID();
+	DeviceEventSubscriptionIndex index = new DeviceEventSubscriptionIndex();
+
+	DeviceEventSubscription all = subscription("all", new DeviceEventSubscriptionFilter());
+	index.add(all);
+
+	DeviceEventSubscriptionFilter byAssignment = new DeviceEventSubscriptionFilter();
+	byAssignment.getAssignmentIds().add(assignment);
+	DeviceEventSubscription assignmentSub = subscription("assignment", byAssignment);
+	index.add(assignmentSub);
+
+	DeviceEventSubscriptionFilter temperature = new DeviceEventSubscriptionFilter();
+	temperature.getDeviceTypeIds().add(deviceType);
+	temperature.getMeasurementNames().add("temp");
+	DeviceEventSubscription temperatureSub = subscription("temperature", temperature);
+	index.add(temperatureSub);
+
+	DeviceEventSubscriptionFilter alerts = new DeviceEventSubscriptionFilter();
+	alerts.getEventTypes().add(DeviceEventType.Alert);
+	DeviceEventSubscription alertSub = subscription("alerts", alerts);
+	index.add(alertSub);
+
+	List<DeviceEventSubscription> matches = index.match(context(deviceType), measurements(assignment, "temp"));
+	assertEquals(3, matches.size());
+	assertTrue(matches.contains(all));
+	assertTrue(matches.contains(assignmentSub));
+	assertTrue(matches.contains(temperatureSub));
+
+	matches = index.match(context(deviceType), measurements(UUID.randomUUID(), "humidity"));
+	assertEquals(1, matches.size());
+
+	DeviceAlert alert = new DeviceAlert();
+	alert.setDeviceAssignmentId(assignment);
+	matches = index.match(context(deviceType), alert);
+	assertEquals(3, matches.size());
+	assertTrue(matches.contains(alertSub));
+
+	index.remove(all);
+	index.remove(assignmentSub);
+	assertEquals(2, index.size());
+	assertEquals(1, index.match(context(deviceType), alert).size());
+    }
+
+    @Test
+    public void testConflation() {
+	UUID assignment = UUID.randomUUID();
+	ConflatingEventQueue queue = new ConflatingEventQueue(3);
+	for (int i = 0; i < 10; i++) {
+	    queue.offer(measurements(assignment, "temp"));
+	}
+	assertEquals(1, queue.size());
+	assertEquals(9, queue.getConflatedCount());
+
+	for (int i = 0; i < 5; i++) {
+	    queue.offer(new DeviceAlert());
+	}
+	assertEquals(3, queue.size());
+	assertEquals(3, queue.getDroppedCount());
+	assertEquals(2, queue.drain(2).size());
+	assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void testRoutingWithManySubscriptions() {
+	DeviceEventSubscriptionIndex index = new DeviceEventSubscriptionIndex();
+	List<UUID> assignments = new ArrayList<UUID>();
+	for (int i = 0; i < SUBSCRIPTION_COUNT; i++) {
+	    UUID assignment = UUID.randomUUID();
+	    assignments.add(assignment);
+	    DeviceEventSubscriptionFilter filter = new DeviceEventSubscriptionFilter();
+	    filter.getAssignmentIds().add(assignment);
+	    index.add(subscription("session-" + i, filter));
+	}
+
+	DeviceEventContext context = context(UUID.randomUUID());
+	int delivered = 0;
+	for (int i = 0; i < EVENT_COUNT; i++) {
+	    IDeviceEvent event = measurements(assignments.get(i % SUBSCRIPTION_COUNT), "temp");
+	    for (DeviceEventSubscription subscription : index.match(context, event)) {
+		subscription.getQueue().offer(event);
+		delivered++;
+	    }
+	}
+	assertEquals(EVENT_COUNT, delivered);
+    }
+
+    protected DeviceEventSubscription subscription(String sessionId, DeviceEventSubscriptionFilter filter) {
+	return new DeviceEventSubscription(sessionId, "sub-0", "/events/default", "default", filter,
+		new ConflatingEventQueue(100));
+    }
+
+    protected DeviceEventContext context(UUID deviceType) {
+	DeviceEventContext context = new DeviceEventContext();
+	context.setDeviceTypeId(deviceType);
+	return context;
+    }
+
+    protected DeviceMeasurements measurements(UUID assignment, String name) {
+	DeviceMeasurements mxs = new DeviceMeasurements();
+	mxs.setDeviceAssignmentId(assignment);
+	mxs.addOrReplaceMeasurement(name, 1.0);
+	return mxs;
+    }
+}
@@ -11,6 +11,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.UUID;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
@@ -36,6 +37,12 @@ public class DeviceAssignmentState implements IDeviceAssignmentState, Serializab
     /** Serialization version identifier */
     private static final long serialVersionUID = -8536671667872805013L;
 
+    /** Assignment id */
+    private UUID deviceAssignmentId;
+
+    /** Site id */
+    private UUID siteId;
+
     /** Date of last interaction with assignment */
     private Date lastInteractionDate;
 
@@ -51,6 +58,31 @@ public class DeviceAssignmentState implements IDeviceAssignmentState, Serializab
     /** Last alert event for each alert type */
     private List<DeviceAlert> latestAlerts = new ArrayList<DeviceAlert>();
 
+    /*
+     * @see
+     * com.sitewhere.spi.device.IDeviceAssignmentState#getDeviceAssignmentId()
+     */
+    @Override
+    public UUID getDeviceAssignmentId() {
+	return deviceAssignmentId;
+    }
+
+    public void setDeviceAssignmentId(UUID deviceAssignmentId) {
+	this.deviceAssignmentId = deviceAssignmentId;
+    }
+
+    /*
+     * @see com.sitewhere.spi.device.IDeviceAssignmentState#getSiteId()
+     */
+    @Override
+    public UUID getSiteId() {
+	return siteId;
+    }
+
+    public void setSiteId(UUID siteId) {
+	this.siteId = siteId;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -129,6 +161,8 @@ public class DeviceAssignmentState implements IDeviceAssignmentState, Serializab
 
     public static DeviceAssignmentState copy(IDeviceAssignmentState source) throws SiteWhereException {
 	DeviceAssignmentState target = new DeviceAssignmentState();
+	target.setDeviceAssignmentId(source.getDeviceAssignmentId());
+	target.setSiteId(source.getSiteId());
 	target.setLastInteractionDate(source.getLastInteractionDate());
 	target.setPresenceMissingDate(source.getPresenceMissingDate());
 	if (source.getLastLocation() != null) {
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.rest.model.device;
+
+import java.io.Serializable;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.sitewhere.spi.device.IDeviceBulkCreateError;
+
+/**
+ * Error for a single row in a bulk device create operation.
+ * 
+ * @author Derek
+ */
+@JsonInclude(Include.NON_NULL)
+public class DeviceBulkCreateError implements IDeviceBulkCreateError, Serializable {
+
+    /** Serialization version identifier */
+    private static final long serialVersionUID = 4061529184063128730L;
+
+    /** Index of row in request */
+    private int index;
+
+    /** Hardware id for row */
+    private String hardwareId;
+
+    /** Error message */
+    private String message;
+
+    public DeviceBulkCreateError() {
+    }
+
+    public DeviceBulkCreateError(int index, String hardwareId, String message) {
+	this.index = index;
+	this.hardwareId = hardwareId;
+	this.message = message;
+    }
+
+    /*
+     * @see com.sitewhere.spi.device.IDeviceBulkCreateError#getIndex()
+     */
+    @Override
+    public int getIndex() {
+	return index;
+    }
+
+    public void setIndex(int index) {
+	this.index = index;
+    }
+
+    /*
+     * @see com.sitewhere.spi.device.IDeviceBulkCreateError#getHardwareId()
+     */
+    @Override
+    public String getHardwareId() {
+	return hardwareId;
+    }
+
+    public void setHardwareId(String hardwareId) {
+	this.hardwareId = hardwareId;
+    }
+
+    /*
+     * @see com.sitewhere.spi.device.IDeviceBulkCreateError#getMessage()
+     */
+    @Override
+    public String getMessage() {
+	return message;
+    }
+
+    public void setMessage(String message) {
+	this.message = message;
+    }
+}
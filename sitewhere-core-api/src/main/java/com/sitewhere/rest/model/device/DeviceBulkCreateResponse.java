@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.rest.model.device;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sitewhere.spi.device.IDeviceBulkCreateError;
+import com.sitewhere.spi.device.IDeviceBulkCreateResponse;
+
+/**
+ * Response from bulk device create operation.
+ * 
+ * @author Derek
+ */
+public class DeviceBulkCreateResponse implements IDeviceBulkCreateResponse, Serializable {
+
+    /** Serialization version identifier */
+    private static final long serialVersionUID = -1793820648183629406L;
+
+    /** Number of devices created */
+    private int createdCount;
+
+    /** Number of existing devices updated */
+    private int updatedCount;
+
+    /** Number of assignments created */
+    private int assignmentsCreated;
+
+    /** Errors for rows that could not be processed */
+    private List<DeviceBulkCreateError> errors = new ArrayList<DeviceBulkCreateError>();
+
+    /**
+     * Add totals and errors from another response. Error indexes are shifted by
+     * the given offset.
+     * 
+     * @param other
+     * @param offset
+     */
+    public void merge(IDeviceBulkCreateResponse other, int offset) {
+	setCreatedCount(getCreatedCount() + other.getCreatedCount());
+	setUpdatedCount(getUpdatedCount() + other.getUpdatedCount());
+	setAssignmentsCreated(getAssignmentsCreated() + other.getAssignmentsCreated());
+	for (IDeviceBulkCreateError error : other.getErrors()) {
+	    errors.add(new DeviceBulkCreateError(error.getIndex() + offset, error.getHardwareId(), error.getMessage()));
+	}
+    }
+
+    /*
+     * @see com.sitewhere.spi.device.IDeviceBulkCreateResponse#getCreatedCount()
+     */
+    @Override
+    public int getCreatedCount() {
+	return createdCount;
+    }
+
+    public void setCreatedCount(int createdCount) {
+	this.createdCount = createdCount;
+    }
+
+    /*
+     * @see com.sitewhere.spi.device.IDeviceBulkCreateResponse#getUpdatedCount()
+     */
+    @Override
+    public int getUpdatedCount() {
+	return updatedCount;
+    }
+
+    public void setUpdatedCount(int updatedCount) {
+	this.updatedCount = updatedCount;
+    }
+
+    /*
+     * @see
+     * com.sitewhere.spi.device.IDeviceBulkCreateResponse#getAssignmentsCreated()
+     */
+    @Override
+    public int getAssignmentsCreated() {
+	return assignmentsCreated;
+    }
+
+    public void setAssignmentsCreated(int assignmentsCreated) {
+	this.assignmentsCreated = assignmentsCreated;
+    }
+
+    /*
+     * @see com.sitewhere.spi.device.IDeviceBulkCreateResponse#getErrors()
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<IDeviceBulkCreateError> getErrors() {
+	return (List<IDeviceBulkCreateError>) (List<? extends IDeviceBulkCreateError>) errors;
+    }
+
+    public void setErrors(List<DeviceBulkCreateError> errors) {
+	this.errors = errors;
+    }
+}
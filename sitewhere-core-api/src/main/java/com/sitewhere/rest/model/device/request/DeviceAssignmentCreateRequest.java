@@ -116,6 +116,27 @@ public class DeviceAssignmentCreateRequest implements IDeviceAssignmentCreateReq
 	this.metadata = metadata;
     }
 
+    /**
+     * Create a copy of a template request for the given device. The template
+     * token is not copied so a new one is generated for each assignment.
+     * 
+     * @param template
+     * @param hardwareId
+     * @return
+     */
+    public static DeviceAssignmentCreateRequest copy(IDeviceAssignmentCreateRequest template, String hardwareId) {
+	DeviceAssignmentCreateRequest result = new DeviceAssignmentCreateRequest();
+	result.setDeviceHardwareId(hardwareId);
+	result.setAssignmentType(template.getAssignmentType());
+	if (template.getAssetReference() != null) {
+	    result.setAssetReference(new AssetReference.Builder(template.getAssetReference()).build());
+	}
+	if (template.getMetadata() != null) {
+	    result.setMetadata(new HashMap<String, String>(template.getMetadata()));
+	}
+	return result;
+    }
+
     public static class Builder {
 
 	/** Request being built */
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.rest.model.device.request;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.sitewhere.spi.device.request.IDeviceBulkCreateRequest;
+import com.sitewhere.spi.device.request.IDeviceCreateRequest;
+
+/**
+ * Holds fields needed to create a batch of devices.
+ * 
+ * @author Derek
+ */
+@JsonInclude(Include.NON_NULL)
+public class DeviceBulkCreateRequest implements IDeviceBulkCreateRequest, Serializable {
+
+    /** Serialization version identifier */
+    private static final long serialVersionUID = -2389462637719347513L;
+
+    /** Requests for devices to be created */
+    private List<DeviceCreateRequest> devices = new ArrayList<DeviceCreateRequest>();
+
+    /** Indicates whether existing devices should be updated */
+    private boolean updateExisting;
+
+    /** Template for assignments created for new devices */
+    private DeviceAssignmentCreateRequest assignmentTemplate;
+
+    /*
+     * @see
+     * com.sitewhere.spi.device.request.IDeviceBulkCreateRequest#getDevices()
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<IDeviceCreateRequest> getDevices() {
+	return (List<IDeviceCreateRequest>) (List<? extends IDeviceCreateRequest>) devices;
+    }
+
+    public void setDevices(List<DeviceCreateRequest> devices) {
+	this.devices = devices;
+    }
+
+    /*
+     * @see
+     * com.sitewhere.spi.device.request.IDeviceBulkCreateRequest#isUpdateExisting()
+     */
+    @Override
+    public boolean isUpdateExisting() {
+	return updateExisting;
+    }
+
+    public void setUpdateExisting(boolean updateExisting) {
+	this.updateExisting = updateExisting;
+    }
+
+    /*
+     * @see com.sitewhere.spi.device.request.IDeviceBulkCreateRequest#
+     * getAssignmentTemplate()
+     */
+    @Override
+    public DeviceAssignmentCreateRequest getAssignmentTemplate() {
+	return assignmentTemplate;
+    }
+
+    public void setAssignmentTemplate(DeviceAssignmentCreateRequest assignmentTemplate) {
+	this.assignmentTemplate = assignmentTemplate;
+    }
+}
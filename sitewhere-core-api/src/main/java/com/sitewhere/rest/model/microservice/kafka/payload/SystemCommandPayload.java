@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.rest.model.microservice.kafka.payload;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonSubTypes.Type;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.sitewhere.rest.model.device.command.DeviceMappingAckCommand;
+import com.sitewhere.rest.model.device.command.DeviceStreamAckCommand;
+import com.sitewhere.rest.model.device.command.RegistrationAckCommand;
+import com.sitewhere.rest.model.device.command.RegistrationFailureCommand;
+import com.sitewhere.rest.model.device.command.SendDeviceStreamDataCommand;
+import com.sitewhere.spi.device.command.ISystemCommand;
+import com.sitewhere.spi.microservice.kafka.payload.ISystemCommandPayload;
+
+/**
+ * Payload for a system command that should be delivered to a device. The
+ * command type is used to resolve the concrete command class when unmarshaled.
+ * 
+ * @author Derek
+ */
+public class SystemCommandPayload implements ISystemCommandPayload {
+
+    /** Hardware id of target device */
+    private String hardwareId;
+
+    /** System command */
+    @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.EXISTING_PROPERTY, property = "type",
+	    visible = true)
+    @JsonSubTypes({ @Type(value = RegistrationAckCommand.class, name = "RegistrationAck"),
+	    @Type(value = RegistrationFailureCommand.class, name = "RegistrationFailure"),
+	    @Type(value = DeviceStreamAckCommand.class, name = "DeviceStreamAck"),
+	    @Type(value = SendDeviceStreamDataCommand.class, name = "SendDeviceStreamData"),
+	    @Type(value = DeviceMappingAckCommand.class, name = "DeviceMappingAck") })
+    private ISystemCommand command;
+
+    public SystemCommandPayload() {
+    }
+
+    public SystemCommandPayload(String hardwareId, ISystemCommand command) {
+	this.hardwareId = hardwareId;
+	this.command = command;
+    }
+
+    /*
+     * @see com.sitewhere.spi.microservice.kafka.payload.ISystemCommandPayload#
+     * getHardwareId()
+     */
+    @Override
+    public String getHardwareId() {
+	return hardwareId;
+    }
+
+    public void setHardwareId(String hardwareId) {
+	this.hardwareId = hardwareId;
+    }
+
+    /*
+     * @see com.sitewhere.spi.microservice.kafka.payload.ISystemCommandPayload#
+     * getCommand()
+     */
+    @Override
+    public ISystemCommand getCommand() {
+	return command;
+    }
+
+    public void setCommand(ISystemCommand command) {
+	this.command = command;
+    }
+}
@@ -20,9 +20,25 @@ import com.sitewhere.spi.microservice.state.IInstanceTopologySnapshot;
  */
 public class InstanceTopologySnapshot implements IInstanceTopologySnapshot {
 
+    /** Snapshot version */
+    private long version;
+
     /** Topology entries by module identifier */
     private Map<String, IInstanceTopologyEntry> topologyEntriesByIdentifier = new ConcurrentHashMap<>();
 
+    /*
+     * @see
+     * com.sitewhere.spi.microservice.state.IInstanceTopologySnapshot#getVersion()
+     */
+    @Override
+    public long getVersion() {
+	return version;
+    }
+
+    public void setVersion(long version) {
+	this.version = version;
+    }
+
     /*
      * @see com.sitewhere.spi.microservice.state.IInstanceTopologySnapshot#
      * getTopologyEntriesByIdentifier()
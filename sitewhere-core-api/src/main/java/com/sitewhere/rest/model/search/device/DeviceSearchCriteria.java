@@ -7,7 +7,9 @@
  */
 package com.sitewhere.rest.model.search.device;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 import com.sitewhere.rest.model.search.DateRangeSearchCriteria;
 import com.sitewhere.spi.search.device.IDeviceSearchCriteria;
@@ -31,6 +33,9 @@ public class DeviceSearchCriteria extends DateRangeSearchCriteria implements IDe
     /** Indicates if assigned devices should be excluded */
     private boolean excludeAssigned = true;
 
+    /** Hardware ids to match in filter (empty for all) */
+    private List<String> hardwareIds = new ArrayList<String>();
+
     public DeviceSearchCriteria(int pageNumber, int pageSize, Date startDate, Date endDate) {
 	super(pageNumber, pageSize, startDate, endDate);
     }
@@ -84,4 +89,16 @@ public class DeviceSearchCriteria extends DateRangeSearchCriteria implements IDe
     public void setExcludeAssigned(boolean excludeAssigned) {
 	this.excludeAssigned = excludeAssigned;
     }
+
+    /*
+     * @see com.sitewhere.spi.search.device.IDeviceSearchCriteria#getHardwareIds()
+     */
+    @Override
+    public List<String> getHardwareIds() {
+	return hardwareIds;
+    }
+
+    public void setHardwareIds(List<String> hardwareIds) {
+	this.hardwareIds = hardwareIds;
+    }
 }
\ No newline at end of file
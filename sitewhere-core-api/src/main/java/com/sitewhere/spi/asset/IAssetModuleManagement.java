@@ -10,6 +10,8 @@ package com.sitewhere.spi.asset;
 import java.util.List;
 
 import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.search.ISearchCriteria;
+import com.sitewhere.spi.search.ISearchResults;
 import com.sitewhere.spi.server.lifecycle.ITenantEngineLifecycleComponent;
 
 /**
@@ -38,14 +40,17 @@ public interface IAssetModuleManagement extends ITenantEngineLifecycleComponent
     public IAssetModuleDescriptor getAssetModuleDescriptor(String moduleId) throws SiteWhereException;
 
     /**
-     * Search asset module for assets matching criteria.
+     * Search asset module for assets matching criteria. Results are ranked by
+     * how closely they match and paged.
      * 
      * @param moduleId
      * @param criteria
+     * @param paging
      * @return
      * @throws SiteWhereException
      */
-    public List<IAsset> searchAssetModule(String moduleId, String criteria) throws SiteWhereException;
+    public ISearchResults<IAsset> searchAssetModule(String moduleId, String criteria, ISearchCriteria paging)
+	    throws SiteWhereException;
 
     /**
      * Get referenced asset.
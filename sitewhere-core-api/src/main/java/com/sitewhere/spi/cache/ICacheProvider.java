@@ -51,6 +51,14 @@ public interface ICacheProvider<K, V> {
      */
     public void removeCacheEntry(ITenant tenant, K key) throws SiteWhereException;
 
+    /**
+     * Remove all entries from the cache.
+     * 
+     * @param tenant
+     * @throws SiteWhereException
+     */
+    public void removeAllCacheEntries(ITenant tenant) throws SiteWhereException;
+
     /**
      * Get logger for cache.
      * 
@@ -9,6 +9,7 @@ package com.sitewhere.spi.device;
 
 import java.util.Date;
 import java.util.List;
+import java.util.UUID;
 
 import com.sitewhere.spi.device.event.IDeviceAlert;
 import com.sitewhere.spi.device.event.IDeviceLocation;
@@ -22,6 +23,20 @@ import com.sitewhere.spi.device.event.IDeviceMeasurement;
  */
 public interface IDeviceAssignmentState {
 
+    /**
+     * Get id of assignment the state belongs to.
+     * 
+     * @return
+     */
+    public UUID getDeviceAssignmentId();
+
+    /**
+     * Get id of site the assignment belongs to.
+     * 
+     * @return
+     */
+    public UUID getSiteId();
+
     /**
      * Date of last interaction with device.
      * 
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.spi.device;
+
+/**
+ * Error for a single row in a bulk device create operation.
+ * 
+ * @author Derek
+ */
+public interface IDeviceBulkCreateError {
+
+    /**
+     * Get index of row in request.
+     * 
+     * @return
+     */
+    public int getIndex();
+
+    /**
+     * Get hardware id for row (if available).
+     * 
+     * @return
+     */
+    public String getHardwareId();
+
+    /**
+     * Get error message.
+     * 
+     * @return
+     */
+    public String getMessage();
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.spi.device;
+
+import java.util.List;
+
+/**
+ * Response generated when a batch of devices has been processed.
+ * 
+ * @author Derek
+ */
+public interface IDeviceBulkCreateResponse {
+
+    /**
+     * Get number of devices that were created.
+     * 
+     * @return
+     */
+    public int getCreatedCount();
+
+    /**
+     * Get number of existing devices that were updated.
+     * 
+     * @return
+     */
+    public int getUpdatedCount();
+
+    /**
+     * Get number of assignments created for new devices.
+     * 
+     * @return
+     */
+    public int getAssignmentsCreated();
+
+    /**
+     * Get errors for rows that could not be processed.
+     * 
+     * @return
+     */
+    public List<IDeviceBulkCreateError> getErrors();
+}
@@ -18,6 +18,7 @@ import com.sitewhere.spi.device.event.request.IDeviceStreamCreateRequest;
 import com.sitewhere.spi.device.group.IDeviceGroup;
 import com.sitewhere.spi.device.group.IDeviceGroupElement;
 import com.sitewhere.spi.device.request.IDeviceAssignmentCreateRequest;
+import com.sitewhere.spi.device.request.IDeviceBulkCreateRequest;
 import com.sitewhere.spi.device.request.IDeviceCommandCreateRequest;
 import com.sitewhere.spi.device.request.IDeviceCreateRequest;
 import com.sitewhere.spi.device.request.IDeviceGroupCreateRequest;
@@ -231,6 +232,16 @@ public interface IDeviceManagement extends ITenantEngineLifecycleComponent {
      */
     public IDevice createDevice(IDeviceCreateRequest device) throws SiteWhereException;
 
+    /**
+     * Create (or optionally update) a batch of devices. Rows that fail are
+     * reported in the response rather than failing the whole batch.
+     * 
+     * @param request
+     * @return
+     * @throws SiteWhereException
+     */
+    public IDeviceBulkCreateResponse createDevices(IDeviceBulkCreateRequest request) throws SiteWhereException;
+
     /**
      * Get device by unique id.
      * 
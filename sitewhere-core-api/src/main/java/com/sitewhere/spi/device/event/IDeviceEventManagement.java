@@ -7,8 +7,11 @@
  */
 package com.sitewhere.spi.device.event;
 
+import java.util.UUID;
+
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceAssignmentState;
 import com.sitewhere.spi.device.ISite;
 import com.sitewhere.spi.device.event.request.IDeviceAlertCreateRequest;
 import com.sitewhere.spi.device.event.request.IDeviceCommandInvocationCreateRequest;
@@ -243,11 +246,12 @@ public interface IDeviceEventManagement extends ITenantEngineLifecycleComponent
      * List responses associated with a command invocation.
      * 
      * @param invocationId
+     * @param criteria
      * @return
      * @throws SiteWhereException
      */
-    public ISearchResults<IDeviceCommandResponse> listDeviceCommandInvocationResponses(String invocationId)
-	    throws SiteWhereException;
+    public ISearchResults<IDeviceCommandResponse> listDeviceCommandInvocationResponses(String invocationId,
+	    IDateRangeSearchCriteria criteria) throws SiteWhereException;
 
     /**
      * Adds a new device command response event.
@@ -315,6 +319,28 @@ public interface IDeviceEventManagement extends ITenantEngineLifecycleComponent
     public ISearchResults<IDeviceStateChange> listDeviceStateChangesForSite(ISite site,
 	    IDateRangeSearchCriteria criteria) throws SiteWhereException;
 
+    /**
+     * Get last known state (most recent location, measurements and alerts) for
+     * an assignment. Returns null if no events have been recorded.
+     * 
+     * @param assignmentId
+     * @return
+     * @throws SiteWhereException
+     */
+    public IDeviceAssignmentState getDeviceAssignmentState(UUID assignmentId) throws SiteWhereException;
+
+    /**
+     * List last known state for assignments in a site, most recently active
+     * first. Date range criteria are applied to the last interaction date.
+     * 
+     * @param site
+     * @param criteria
+     * @return
+     * @throws SiteWhereException
+     */
+    public ISearchResults<IDeviceAssignmentState> listDeviceAssignmentStatesForSite(ISite site,
+	    IDateRangeSearchCriteria criteria) throws SiteWhereException;
+
     /**
      * Update information for an existing event.
      * 
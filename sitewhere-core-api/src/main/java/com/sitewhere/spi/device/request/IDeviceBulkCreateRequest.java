@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.spi.device.request;
+
+import java.util.List;
+
+/**
+ * Arguments needed to create (or update) a batch of devices in a single call.
+ * 
+ * @author Derek
+ */
+public interface IDeviceBulkCreateRequest {
+
+    /**
+     * Get requests for devices to be created.
+     * 
+     * @return
+     */
+    public List<IDeviceCreateRequest> getDevices();
+
+    /**
+     * Indicates whether devices with an existing hardware id should be updated
+     * rather than reported as errors.
+     * 
+     * @return
+     */
+    public boolean isUpdateExisting();
+
+    /**
+     * Get template used to create an assignment for each new device. The device
+     * hardware id and token in the template are ignored. If null, no assignments
+     * are created.
+     * 
+     * @return
+     */
+    public IDeviceAssignmentCreateRequest getAssignmentTemplate();
+}
@@ -17,6 +17,7 @@ import com.sitewhere.spi.microservice.grpc.IMicroserviceManagementGrpcServer;
 import com.sitewhere.spi.microservice.hazelcast.IHazelcastManager;
 import com.sitewhere.spi.microservice.instance.IInstanceSettings;
 import com.sitewhere.spi.microservice.kafka.IKafkaTopicNaming;
+import com.sitewhere.spi.microservice.kafka.ISharedTenantKafkaConsumers;
 import com.sitewhere.spi.microservice.security.ISystemUser;
 import com.sitewhere.spi.microservice.security.ITokenManagement;
 import com.sitewhere.spi.microservice.state.IMicroserviceDetails;
@@ -165,6 +166,14 @@ public interface IMicroservice extends ILifecycleComponent, ITracerProvider {
      */
     public ITopologyStateAggregator getTopologyStateAggregator();
 
+    /**
+     * Get manager for Kafka consumers shared by tenant engines. Only used when
+     * shared consumers are enabled in instance settings.
+     * 
+     * @return
+     */
+    public ISharedTenantKafkaConsumers getSharedTenantKafkaConsumers();
+
     /**
      * Code executed after microservice has been started.
      */
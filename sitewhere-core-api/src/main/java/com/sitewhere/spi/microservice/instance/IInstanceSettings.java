@@ -76,4 +76,22 @@ public interface IInstanceSettings {
      * @return
      */
     public String getTracerServer();
+
+    /**
+     * Indicates whether tenant Kafka consumers should share a single consumer per
+     * microservice rather than each tenant engine connecting separately. Shared
+     * consumers use their own consumer group. When switching to shared mode, each
+     * partition without an offset in that group starts from the offset committed
+     * by the tenant consumer group it replaces.
+     * 
+     * @return
+     */
+    public boolean isKafkaSharedConsumers();
+
+    /**
+     * Get number of threads each shared consumer uses to process tenant records.
+     * 
+     * @return
+     */
+    public int getKafkaSharedConsumerThreads();
 }
\ No newline at end of file
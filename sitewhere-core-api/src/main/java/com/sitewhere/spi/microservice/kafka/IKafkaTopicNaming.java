@@ -7,6 +7,8 @@
  */
 package com.sitewhere.spi.microservice.kafka;
 
+import java.util.regex.Pattern;
+
 import com.sitewhere.spi.tenant.ITenant;
 
 /**
@@ -38,6 +40,23 @@ public interface IKafkaTopicNaming {
      */
     public String getTenantPrefix(ITenant tenant);
 
+    /**
+     * Get pattern that matches a tenant topic with the given suffix for any
+     * tenant.
+     * 
+     * @param suffix
+     * @return
+     */
+    public Pattern getTenantTopicPattern(String suffix);
+
+    /**
+     * Get id of tenant a topic belongs to or null if not a tenant topic.
+     * 
+     * @param topic
+     * @return
+     */
+    public String getTenantIdForTopic(String topic);
+
     /**
      * Get topic name for tracking tenant model updates.
      * 
@@ -120,4 +139,21 @@ public interface IKafkaTopicNaming {
      * @return
      */
     public String getInboundEnrichedCommandInvocationsTopic(ITenant tenant);
+
+    /**
+     * Get topic for system commands (registration acks, etc.) that should be
+     * delivered to devices.
+     * 
+     * @param tenant
+     * @return
+     */
+    public String getOutboundSystemCommandsTopic(ITenant tenant);
+
+    /**
+     * Get topic for outcomes (delivered, failed, expired) of command deliveries.
+     * 
+     * @param tenant
+     * @return
+     */
+    public String getCommandDeliveryOutcomesTopic(ITenant tenant);
 }
\ No newline at end of file
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.spi.microservice.kafka;
+
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.server.lifecycle.ILifecycleComponent;
+import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
+
+/**
+ * Manages Kafka consumers shared by all tenant engines in a microservice. Tenant
+ * consumers register rather than connecting to Kafka themselves and receive
+ * records for their tenant via {@link IMicroserviceKafkaConsumer#received}.
+ *
+ * @author Derek
+ */
+public interface ISharedTenantKafkaConsumers extends ILifecycleComponent {
+
+    /**
+     * Start delivering records to a tenant consumer.
+     *
+     * @param consumer
+     * @param monitor
+     * @throws SiteWhereException
+     */
+    public void register(IMicroserviceKafkaConsumer consumer, ILifecycleProgressMonitor monitor)
+	    throws SiteWhereException;
+
+    /**
+     * Stop delivering records to a tenant consumer.
+     *
+     * @param consumer
+     * @throws SiteWhereException
+     */
+    public void unregister(IMicroserviceKafkaConsumer consumer) throws SiteWhereException;
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.spi.microservice.kafka.payload;
+
+import com.sitewhere.spi.device.command.ISystemCommand;
+
+/**
+ * Payload for a system command (registration ack, mapping ack, etc.) that
+ * should be delivered to a device.
+ * 
+ * @author Derek
+ */
+public interface ISystemCommandPayload {
+
+    /**
+     * Get hardware id of device command is addressed to.
+     * 
+     * @return
+     */
+    public String getHardwareId();
+
+    /**
+     * Get system command.
+     * 
+     * @return
+     */
+    public ISystemCommand getCommand();
+}
@@ -10,12 +10,21 @@ package com.sitewhere.spi.microservice.state;
 import java.util.Map;
 
 /**
- * Snapshot of instance topology at a given point in time.
+ * Snapshot of instance topology at a given point in time. Published snapshots
+ * are not modified, so they may be iterated safely while newer versions are
+ * being built.
  * 
  * @author Derek
  */
 public interface IInstanceTopologySnapshot {
 
+    /**
+     * Get version of snapshot. Incremented each time a new snapshot is published.
+     * 
+     * @return
+     */
+    public long getVersion();
+
     /**
      * Get map of topology entries by module identifier.
      * 
@@ -7,6 +7,8 @@
  */
 package com.sitewhere.spi.search.device;
 
+import java.util.List;
+
 import com.sitewhere.spi.search.IDateRangeSearchCriteria;
 
 /**
@@ -36,4 +38,11 @@ public interface IDeviceSearchCriteria extends IDateRangeSearchCriteria {
      * @return
      */
     public boolean isExcludeAssigned();
+
+    /**
+     * Get hardware ids if filtered to a set of devices (empty for all).
+     * 
+     * @return
+     */
+    public List<String> getHardwareIds();
 }
\ No newline at end of file
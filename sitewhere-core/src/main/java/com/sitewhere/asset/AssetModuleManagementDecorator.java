@@ -17,6 +17,8 @@ import com.sitewhere.spi.asset.IAssetModuleDescriptor;
 import com.sitewhere.spi.asset.IAssetModuleManagement;
 import com.sitewhere.spi.asset.IAssetReference;
 import com.sitewhere.spi.microservice.multitenant.IMicroserviceTenantEngine;
+import com.sitewhere.spi.search.ISearchCriteria;
+import com.sitewhere.spi.search.ISearchResults;
 
 /**
  * Wraps an asset module management implementation. Subclasses can implement
@@ -73,11 +75,12 @@ public class AssetModuleManagementDecorator extends LifecycleComponentDecorator<
     /*
      * @see
      * com.sitewhere.spi.asset.IAssetModuleManagement#searchAssetModule(java.lang.
-     * String, java.lang.String)
+     * String, java.lang.String, com.sitewhere.spi.search.ISearchCriteria)
      */
     @Override
-    public List<IAsset> searchAssetModule(String moduleId, String criteria) throws SiteWhereException {
-	return getDelegate().searchAssetModule(moduleId, criteria);
+    public ISearchResults<IAsset> searchAssetModule(String moduleId, String criteria, ISearchCriteria paging)
+	    throws SiteWhereException {
+	return getDelegate().searchAssetModule(moduleId, criteria, paging);
     }
 
     /*
@@ -17,6 +17,7 @@ import com.sitewhere.spi.asset.IAssetReference;
 import com.sitewhere.spi.device.DeviceAssignmentStatus;
 import com.sitewhere.spi.device.IDevice;
 import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceBulkCreateResponse;
 import com.sitewhere.spi.device.IDeviceElementMapping;
 import com.sitewhere.spi.device.IDeviceManagement;
 import com.sitewhere.spi.device.IDeviceStatus;
@@ -28,6 +29,7 @@ import com.sitewhere.spi.device.event.request.IDeviceStreamCreateRequest;
 import com.sitewhere.spi.device.group.IDeviceGroup;
 import com.sitewhere.spi.device.group.IDeviceGroupElement;
 import com.sitewhere.spi.device.request.IDeviceAssignmentCreateRequest;
+import com.sitewhere.spi.device.request.IDeviceBulkCreateRequest;
 import com.sitewhere.spi.device.request.IDeviceCommandCreateRequest;
 import com.sitewhere.spi.device.request.IDeviceCreateRequest;
 import com.sitewhere.spi.device.request.IDeviceGroupCreateRequest;
@@ -258,6 +260,16 @@ public class DeviceManagementDecorator extends LifecycleComponentDecorator<IDevi
 	return getDelegate().createDevice(device);
     }
 
+    /*
+     * @see
+     * com.sitewhere.spi.device.IDeviceManagement#createDevices(com.sitewhere.spi.
+     * device.request.IDeviceBulkCreateRequest)
+     */
+    @Override
+    public IDeviceBulkCreateResponse createDevices(IDeviceBulkCreateRequest request) throws SiteWhereException {
+	return getDelegate().createDevices(request);
+    }
+
     /*
      * @see com.sitewhere.spi.device.IDeviceManagement#getDevice(java.util.UUID)
      */
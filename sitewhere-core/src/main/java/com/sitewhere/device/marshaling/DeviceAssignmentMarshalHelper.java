@@ -54,8 +54,16 @@ public class DeviceAssignmentMarshalHelper {
     /** Used to control marshaling of devices */
     private DeviceMarshalHelper deviceHelper;
 
+    /** Cache to prevent repeated lookups of referenced entities */
+    private MarshalingCache cache;
+
     public DeviceAssignmentMarshalHelper(IDeviceManagement deviceManagement) {
+	this(deviceManagement, new MarshalingCache(deviceManagement));
+    }
+
+    public DeviceAssignmentMarshalHelper(IDeviceManagement deviceManagement, MarshalingCache cache) {
 	this.deviceManagement = deviceManagement;
+	this.cache = cache;
     }
 
     /**
@@ -81,7 +89,7 @@ public class DeviceAssignmentMarshalHelper {
 	if (source.getAssignmentType() != DeviceAssignmentType.Unassociated) {
 
 	    // Look up asset and handle case where not found.
-	    IAsset asset = assetResolver.getAssetModuleManagement().getAsset(source.getAssetReference());
+	    IAsset asset = getCache().getAsset(assetResolver, source.getAssetReference());
 	    if (asset == null) {
 		LOGGER.warn("Device assignment has reference to non-existent asset.");
 		asset = new InvalidAsset();
@@ -100,12 +108,12 @@ public class DeviceAssignmentMarshalHelper {
 	}
 	result.setSiteId(source.getSiteId());
 	if (isIncludeSite()) {
-	    ISite site = getDeviceManagement().getSite(source.getSiteId());
+	    ISite site = getCache().getSite(source.getSiteId());
 	    result.setSite((Site) site);
 	}
 	result.setDeviceId(source.getDeviceId());
 	if (isIncludeDevice()) {
-	    IDevice device = getDeviceManagement().getDevice(source.getDeviceId());
+	    IDevice device = getCache().getDevice(source.getDeviceId());
 	    if (device != null) {
 		result.setDevice(getDeviceHelper().convert(device, assetResolver));
 	    } else {
@@ -122,7 +130,7 @@ public class DeviceAssignmentMarshalHelper {
      */
     protected DeviceMarshalHelper getDeviceHelper() {
 	if (deviceHelper == null) {
-	    deviceHelper = new DeviceMarshalHelper(getDeviceManagement());
+	    deviceHelper = new DeviceMarshalHelper(getDeviceManagement(), getCache());
 	    deviceHelper.setIncludeAsset(false);
 	    deviceHelper.setIncludeAssignment(false);
 	    deviceHelper.setIncludeDeviceType(isIncludeDeviceType());
@@ -166,6 +174,10 @@ public class DeviceAssignmentMarshalHelper {
 	return this;
     }
 
+    public MarshalingCache getCache() {
+	return cache;
+    }
+
     public IDeviceManagement getDeviceManagement() {
 	return deviceManagement;
     }
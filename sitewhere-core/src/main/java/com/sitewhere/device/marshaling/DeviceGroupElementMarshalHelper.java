@@ -44,10 +44,14 @@ public class DeviceGroupElementMarshalHelper {
     /** Helper class for enriching device information */
     private DeviceMarshalHelper deviceHelper;
 
+    /** Cache to prevent repeated lookups of referenced entities */
+    private MarshalingCache cache;
+
     public DeviceGroupElementMarshalHelper(IDeviceManagement deviceManagement) {
 	this.deviceManagement = deviceManagement;
-	this.deviceHelper = new DeviceMarshalHelper(deviceManagement).setIncludeDeviceType(true).setIncludeAsset(true)
-		.setIncludeAssignment(true);
+	this.cache = new MarshalingCache(deviceManagement);
+	this.deviceHelper = new DeviceMarshalHelper(deviceManagement, cache).setIncludeDeviceType(true)
+		.setIncludeAsset(true).setIncludeAssignment(true);
     }
 
     /**
@@ -69,7 +73,7 @@ public class DeviceGroupElementMarshalHelper {
 	if (isIncludeDetails()) {
 	    switch (source.getType()) {
 	    case Device: {
-		IDevice device = deviceManagement.getDevice(source.getElementId());
+		IDevice device = cache.getDevice(source.getElementId());
 		if (device != null) {
 		    Device inflated = deviceHelper.convert(device, assets);
 		    result.setDevice(inflated);
@@ -79,7 +83,7 @@ public class DeviceGroupElementMarshalHelper {
 		break;
 	    }
 	    case Group: {
-		IDeviceGroup group = deviceManagement.getDeviceGroup(source.getElementId());
+		IDeviceGroup group = cache.getDeviceGroup(source.getElementId());
 		if (group != null) {
 		    DeviceGroup inflated = DeviceGroup.copy(group);
 		    result.setDeviceGroup(inflated);
@@ -65,8 +65,16 @@ public class DeviceMarshalHelper {
     /** Helper for marshaling nested devices */
     private DeviceMarshalHelper nestedHelper;
 
+    /** Cache to prevent repeated lookups of referenced entities */
+    private MarshalingCache cache;
+
     public DeviceMarshalHelper(IDeviceManagement deviceManagement) {
+	this(deviceManagement, new MarshalingCache(deviceManagement));
+    }
+
+    public DeviceMarshalHelper(IDeviceManagement deviceManagement, MarshalingCache cache) {
 	this.deviceManagement = deviceManagement;
+	this.cache = cache;
     }
 
     /**
@@ -100,15 +108,15 @@ public class DeviceMarshalHelper {
 
 	// Look up device type information.
 	if (source.getDeviceTypeId() != null) {
-	    IDeviceType deviceType = getDeviceManagement().getDeviceType(source.getDeviceTypeId());
+	    IDeviceType deviceType = getCache().getDeviceType(source.getDeviceTypeId());
 	    if (deviceType == null) {
 		throw new SiteWhereException("Device references non-existent device type.");
 	    }
 	    if (isIncludeDeviceType()) {
 		result.setDeviceType(getDeviceTypeHelper().convert(deviceType, assetResolver));
 	    } else {
-		HardwareAsset asset = (HardwareAsset) assetResolver.getAssetModuleManagement()
-			.getAsset(deviceType.getAssetReference());
+		HardwareAsset asset = (HardwareAsset) getCache().getAsset(assetResolver,
+			deviceType.getAssetReference());
 		if (asset != null) {
 		    result.setAssetId(asset.getId());
 		    result.setAssetName(asset.getName());
@@ -120,8 +128,7 @@ public class DeviceMarshalHelper {
 	}
 	if ((source.getDeviceAssignmentId() != null) && (isIncludeAssignment())) {
 	    try {
-		IDeviceAssignment assignment = getDeviceManagement()
-			.getDeviceAssignment(source.getDeviceAssignmentId());
+		IDeviceAssignment assignment = getCache().getDeviceAssignment(source.getDeviceAssignmentId());
 		if (assignment == null) {
 		    throw new SiteWhereException("Device contains an invalid assignment reference.");
 		}
@@ -132,7 +139,7 @@ public class DeviceMarshalHelper {
 	}
 	if ((source.getSiteId() != null) && (isIncludeSite())) {
 	    if (includeSite) {
-		ISite site = getDeviceManagement().getSite(source.getSiteId());
+		ISite site = getCache().getSite(source.getSiteId());
 		if (site == null) {
 		    throw new SiteWhereException("Device contains an invalid site reference.");
 		}
@@ -149,7 +156,7 @@ public class DeviceMarshalHelper {
      */
     protected DeviceTypeMarshalHelper getDeviceTypeHelper() {
 	if (deviceTypeHelper == null) {
-	    deviceTypeHelper = new DeviceTypeMarshalHelper(getDeviceManagement());
+	    deviceTypeHelper = new DeviceTypeMarshalHelper(getDeviceManagement(), getCache());
 	    deviceTypeHelper.setIncludeAsset(isIncludeAsset());
 	}
 	return deviceTypeHelper;
@@ -162,7 +169,7 @@ public class DeviceMarshalHelper {
      */
     protected DeviceAssignmentMarshalHelper getAssignmentHelper() {
 	if (assignmentHelper == null) {
-	    assignmentHelper = new DeviceAssignmentMarshalHelper(getDeviceManagement());
+	    assignmentHelper = new DeviceAssignmentMarshalHelper(getDeviceManagement(), getCache());
 	    assignmentHelper.setIncludeAsset(false);
 	    assignmentHelper.setIncludeDevice(false);
 	    assignmentHelper.setIncludeSite(false);
@@ -177,7 +184,7 @@ public class DeviceMarshalHelper {
      */
     protected DeviceMarshalHelper getNestedHelper() {
 	if (nestedHelper == null) {
-	    nestedHelper = new DeviceMarshalHelper(getDeviceManagement());
+	    nestedHelper = new DeviceMarshalHelper(getDeviceManagement(), getCache());
 	}
 	return nestedHelper;
     }
@@ -225,6 +232,10 @@ public class DeviceMarshalHelper {
 	this.includeNested = includeNested;
     }
 
+    public MarshalingCache getCache() {
+	return cache;
+    }
+
     public IDeviceManagement getDeviceManagement() {
 	return deviceManagement;
     }
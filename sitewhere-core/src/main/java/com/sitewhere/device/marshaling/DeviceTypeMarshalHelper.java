@@ -39,8 +39,16 @@ public class DeviceTypeMarshalHelper {
      */
     private boolean includeAsset = true;
 
+    /** Cache to prevent repeated lookups of referenced entities */
+    private MarshalingCache cache;
+
     public DeviceTypeMarshalHelper(IDeviceManagement deviceManagement) {
+	this(deviceManagement, new MarshalingCache(deviceManagement));
+    }
+
+    public DeviceTypeMarshalHelper(IDeviceManagement deviceManagement, MarshalingCache cache) {
 	this.deviceManagement = deviceManagement;
+	this.cache = cache;
     }
 
     /**
@@ -60,8 +68,7 @@ public class DeviceTypeMarshalHelper {
 	deviceType.setAssetReference(source.getAssetReference());
 
 	// Look up asset reference and handle asset not found.
-	HardwareAsset asset = (HardwareAsset) assetResolver.getAssetModuleManagement()
-		.getAsset(source.getAssetReference());
+	HardwareAsset asset = (HardwareAsset) getCache().getAsset(assetResolver, source.getAssetReference());
 	if (asset == null) {
 	    LOGGER.warn("Device specification has reference to non-existent asset.");
 	    asset = new InvalidAsset();
@@ -86,6 +93,10 @@ public class DeviceTypeMarshalHelper {
 	return this;
     }
 
+    public MarshalingCache getCache() {
+	return cache;
+    }
+
     public IDeviceManagement getDeviceManagement() {
 	return deviceManagement;
     }
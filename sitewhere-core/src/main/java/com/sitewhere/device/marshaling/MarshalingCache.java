@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.marshaling;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.asset.IAsset;
+import com.sitewhere.spi.asset.IAssetReference;
+import com.sitewhere.spi.asset.IAssetResolver;
+import com.sitewhere.spi.device.IDevice;
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceManagement;
+import com.sitewhere.spi.device.IDeviceType;
+import com.sitewhere.spi.device.ISite;
+import com.sitewhere.spi.device.group.IDeviceGroup;
+
+/**
+ * Request-scoped memo of entities referenced while marshaling a page of
+ * results. Marshal helpers share a single instance so that each distinct
+ * device, device type, site, assignment, group or asset is looked up at most
+ * once per page rather than once per item. Misses are remembered as well so
+ * that dangling references do not cause repeated lookups.
+ *
+ * Instances are not thread-safe and are intended to live only as long as the
+ * helper (usually a single REST call) that created them.
+ *
+ * @author Derek
+ */
+public class MarshalingCache {
+
+    /** Device management */
+    private IDeviceManagement deviceManagement;
+
+    /** Devices by id */
+    private Map<UUID, IDevice> devices = new HashMap<UUID, IDevice>();
+
+    /** Device types by id */
+    private Map<UUID, IDeviceType> deviceTypes = new HashMap<UUID, IDeviceType>();
+
+    /** Sites by id */
+    private Map<UUID, ISite> sites = new HashMap<UUID, ISite>();
+
+    /** Device assignments by id */
+    private Map<UUID, IDeviceAssignment> assignments = new HashMap<UUID, IDeviceAssignment>();
+
+    /** Device groups by id */
+    private Map<UUID, IDeviceGroup> groups = new HashMap<UUID, IDeviceGroup>();
+
+    /** Assets by module and id */
+    private Map<String, IAsset> assets = new HashMap<String, IAsset>();
+
+    public MarshalingCache(IDeviceManagement deviceManagement) {
+	this.deviceManagement = deviceManagement;
+    }
+
+    /**
+     * Get device by id.
+     *
+     * @param id
+     * @return
+     * @throws SiteWhereException
+     */
+    public IDevice getDevice(UUID id) throws SiteWhereException {
+	if (devices.containsKey(id)) {
+	    return devices.get(id);
+	}
+	IDevice device = getDeviceManagement().getDevice(id);
+	devices.put(id, device);
+	return device;
+    }
+
+    /**
+     * Get device type by id.
+     *
+     * @param id
+     * @return
+     * @throws SiteWhereException
+     */
+    public IDeviceType getDeviceType(UUID id) throws SiteWhereException {
+	if (deviceTypes.containsKey(id)) {
+	    return deviceTypes.get(id);
+	}
+	IDeviceType deviceType = getDeviceManagement().getDeviceType(id);
+	deviceTypes.put(id, deviceType);
+	return deviceType;
+    }
+
+    /**
+     * Get site by id.
+     *
+     * @param id
+     * @return
+     * @throws SiteWhereException
+     */
+    public ISite getSite(UUID id) throws SiteWhereException {
+	if (sites.containsKey(id)) {
+	    return sites.get(id);
+	}
+	ISite site = getDeviceManagement().getSite(id);
+	sites.put(id, site);
+	return site;
+    }
+
+    /**
+     * Get device assignment by id.
+     *
+     * @param id
+     * @return
+     * @throws SiteWhereException
+     */
+    public IDeviceAssignment getDeviceAssignment(UUID id) throws SiteWhereException {
+	if (assignments.containsKey(id)) {
+	    return assignments.get(id);
+	}
+	IDeviceAssignment assignment = getDeviceManagement().getDeviceAssignment(id);
+	assignments.put(id, assignment);
+	return assignment;
+    }
+
+    /**
+     * Get device group by id.
+     *
+     * @param id
+     * @return
+     * @throws SiteWhereException
+     */
+    public IDeviceGroup getDeviceGroup(UUID id) throws SiteWhereException {
+	if (groups.containsKey(id)) {
+	    return groups.get(id);
+	}
+	IDeviceGroup group = getDeviceManagement().getDeviceGroup(id);
+	groups.put(id, group);
+	return group;
+    }
+
+    /**
+     * Get asset for the given reference.
+     *
+     * @param assetResolver
+     * @param reference
+     * @return
+     * @throws SiteWhereException
+     */
+    public IAsset getAsset(IAssetResolver assetResolver, IAssetReference reference) throws SiteWhereException {
+	if (reference == null) {
+	    return assetResolver.getAssetModuleManagement().getAsset(reference);
+	}
+	String key = reference.getModule() + ":" + reference.getId();
+	if (assets.containsKey(key)) {
+	    return assets.get(key);
+	}
+	IAsset asset = assetResolver.getAssetModuleManagement().getAsset(reference);
+	assets.put(key, asset);
+	return asset;
+    }
+
+    public IDeviceManagement getDeviceManagement() {
+	return deviceManagement;
+    }
+
+    public void setDeviceManagement(IDeviceManagement deviceManagement) {
+	this.deviceManagement = deviceManagement;
+    }
+}
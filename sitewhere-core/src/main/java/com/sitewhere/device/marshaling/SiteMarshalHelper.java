@@ -63,7 +63,8 @@ public class SiteMarshalHelper {
 	this.deviceManagement = deviceManagement;
 	this.assetResolver = assetResolver;
 
-	this.assignmentHelper = new DeviceAssignmentMarshalHelper(deviceManagement);
+	this.assignmentHelper = new DeviceAssignmentMarshalHelper(deviceManagement,
+		new MarshalingCache(deviceManagement));
 	assignmentHelper.setIncludeDevice(true);
 	assignmentHelper.setIncludeAsset(true);
 	assignmentHelper.setIncludeSite(false);
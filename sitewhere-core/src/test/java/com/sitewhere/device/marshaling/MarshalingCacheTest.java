@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.device.marshaling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sitewhere.rest.model.asset.Asset;
+import com.sitewhere.rest.model.asset.AssetReference;
+import com.sitewhere.rest.model.device.Device;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.asset.IAsset;
+import com.sitewhere.spi.asset.IAssetModuleManagement;
+import com.sitewhere.spi.asset.IAssetResolver;
+import com.sitewhere.spi.device.IDevice;
+import com.sitewhere.spi.device.IDeviceManagement;
+
+public class MarshalingCacheTest {
+
+    /** Number of calls by method name */
+    private Map<String, Integer> calls;
+
+    /** Devices known to stub device management */
+    private Map<UUID, IDevice> devices;
+
+    /** Cache being tested */
+    private MarshalingCache cache;
+
+    @Before
+    public void setup() {
+	this.calls = new HashMap<String, Integer>();
+	this.devices = new HashMap<UUID, IDevice>();
+	IDeviceManagement deviceManagement = (IDeviceManagement) Proxy.newProxyInstance(
+		getClass().getClassLoader(), new Class<?>[] { IDeviceManagement.class }, (proxy, method, args) -> {
+		    count(method.getName());
+		    if (method.getName().equals("getDevice")) {
+			return devices.get(args[0]);
+		    }
+		    return null;
+		});
+	this.cache = new MarshalingCache(deviceManagement);
+    }
+
+    @Test
+    public void testRepeatedLookupHitsOnce() throws SiteWhereException {
+	Device device = new Device();
+	device.setId(UUID.randomUUID());
+	devices.put(device.getId(), device);
+	for (int i = 0; i < 10; i++) {
+	    assertSame(device, cache.getDevice(device.getId()));
+	}
+	assertEquals(1, getCount("getDevice"));
+    }
+
+    @Test
+    public void testDistinctIdsLookedUpSeparately() throws SiteWhereException {
+	for (int i = 0; i < 5; i++) {
+	    Device device = new Device();
+	    device.setId(UUID.randomUUID());
+	    devices.put(device.getId(), device);
+	    cache.getDevice(device.getId());
+	    cache.getDevice(device.getId());
+	}
+	assertEquals(5, getCount("getDevice"));
+    }
+
+    @Test
+    public void testMissIsRemembered() throws SiteWhereException {
+	UUID missing = UUID.randomUUID();
+	assertNull(cache.getDevice(missing));
+	assertNull(cache.getDevice(missing));
+	assertEquals(1, getCount("getDevice"));
+    }
+
+    @Test
+    public void testEntityTypesCachedIndependently() throws SiteWhereException {
+	UUID id = UUID.randomUUID();
+	cache.getSite(id);
+	cache.getSite(id);
+	cache.getDeviceType(id);
+	cache.getDeviceAssignment(id);
+	cache.getDeviceGroup(id);
+	assertEquals(1, getCount("getSite"));
+	assertEquals(1, getCount("getDeviceType"));
+	assertEquals(1, getCount("getDeviceAssignment"));
+	assertEquals(1, getCount("getDeviceGroup"));
+    }
+
+    @Test
+    public void testAssetsKeyedByModuleAndId() throws SiteWhereException {
+	IAsset asset = new Asset();
+	IAssetModuleManagement modules = (IAssetModuleManagement) Proxy.newProxyInstance(getClass().getClassLoader(),
+		new Class<?>[] { IAssetModuleManagement.class }, (proxy, method, args) -> {
+		    count(method.getName());
+		    return asset;
+		});
+	IAssetResolver resolver = (IAssetResolver) Proxy.newProxyInstance(getClass().getClassLoader(),
+		new Class<?>[] { IAssetResolver.class }, (proxy, method, args) -> modules);
+
+	assertSame(asset, cache.getAsset(resolver, createReference("people", "1")));
+	assertSame(asset, cache.getAsset(resolver, createReference("people", "1")));
+	cache.getAsset(resolver, createReference("people", "2"));
+	cache.getAsset(resolver, createReference("devices", "1"));
+	assertEquals(3, getCount("getAsset"));
+    }
+
+    /**
+     * Create an asset reference.
+     * 
+     * @param module
+     * @param id
+     * @return
+     */
+    protected AssetReference createReference(String module, String id) {
+	AssetReference reference = new AssetReference();
+	reference.setModule(module);
+	reference.setId(id);
+	return reference;
+    }
+
+    /**
+     * Count a call to a stub method.
+     * 
+     * @param method
+     */
+    protected void count(String method) {
+	calls.put(method, getCount(method) + 1);
+    }
+
+    /**
+     * Get number of calls to a stub method.
+     * 
+     * @param method
+     * @return
+     */
+    protected int getCount(String method) {
+	Integer count = calls.get(method);
+	return (count != null) ? count : 0;
+    }
+}
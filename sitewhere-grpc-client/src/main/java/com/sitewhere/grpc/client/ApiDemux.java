@@ -9,8 +9,13 @@ package com.sitewhere.grpc.client;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.sitewhere.grpc.client.spi.IApiChannel;
 import com.sitewhere.grpc.client.spi.IApiDemux;
@@ -40,18 +45,30 @@ import com.sitewhere.spi.server.lifecycle.LifecycleStatus;
 public abstract class ApiDemux<T extends IApiChannel> extends TenantEngineLifecycleComponent
 	implements IApiDemux<T>, IInstanceTopologyUpdatesListener {
 
-    /** Amount of time to wait between check for available API channel */
+    /** Interval at which waiting for an API channel is logged */
     private static final int API_CHANNEL_WAIT_INTERVAL_IN_SECS = 3;
 
+    /** Initial delay between attempts to choose an API channel */
+    private static final long API_CHANNEL_INITIAL_BACKOFF_MS = 100;
+
+    /** Maximum delay between attempts to choose an API channel */
+    private static final long API_CHANNEL_MAX_BACKOFF_MS = 3 * 1000;
+
     /** Microservice */
     private IMicroservice microservice;
 
     /** List of API channels */
-    private List<T> apiChannels = new ArrayList<>();
+    private List<T> apiChannels = new CopyOnWriteArrayList<>();
 
     /** Routing strategy */
     @SuppressWarnings("unchecked")
-    private IApiDemuxRoutingStrategy<T> routingStrategy = new RoundRobinDemuxRoutingStrategy();
+    private IApiDemuxRoutingStrategy<T> routingStrategy = new LeastLoadedDemuxRoutingStrategy();
+
+    /** Lock used to signal channel availability */
+    private Lock channelLock = new ReentrantLock();
+
+    /** Signaled when an API channel is added */
+    private Condition channelAdded = channelLock.newCondition();
 
     /** Executor service */
     private ExecutorService executor;
@@ -109,24 +126,82 @@ public abstract class ApiDemux<T extends IApiChannel> extends TenantEngineLifecy
     }
 
     /*
+     * Waits without limit, since callers rely on this to block startup until the
+     * dependent microservice is running.
+     * 
      * @see com.sitewhere.grpc.client.spi.IApiDemux#waitForApiChannel()
      */
     @Override
     public T waitForApiChannel() {
+	return awaitApiChannel(-1);
+    }
+
+    /*
+     * @see com.sitewhere.grpc.client.spi.IApiDemux#waitForApiChannel(long,
+     * java.util.concurrent.TimeUnit)
+     */
+    @Override
+    public T waitForApiChannel(long duration, TimeUnit unit) {
+	return awaitApiChannel(unit.toMillis(duration));
+    }
+
+    /**
+     * Wait for an API channel, backing off between attempts.
+     * 
+     * @param timeoutMs
+     *            maximum time to wait or a negative value to wait indefinitely
+     * @return
+     */
+    protected T awaitApiChannel(long timeoutMs) {
+	long deadline = System.currentTimeMillis() + timeoutMs;
+	long logAfter = 0;
+	long backoff = API_CHANNEL_INITIAL_BACKOFF_MS;
 	while (true) {
 	    try {
 		return getApiChannel();
 	    } catch (ApiChannelNotAvailableException e) {
-		getLogger().info("Waiting for '" + getTargetIdentifier() + "' API channel to become available.");
-	    }
-	    try {
-		Thread.sleep(API_CHANNEL_WAIT_INTERVAL_IN_SECS * 1000);
-	    } catch (InterruptedException e) {
-		return null;
+		long now = System.currentTimeMillis();
+		if ((timeoutMs >= 0) && ((now - deadline) >= 0)) {
+		    throw new ApiChannelNotAvailableException(
+			    "No '" + getTargetIdentifier() + "' API channel available within timeout period.");
+		}
+		if ((now - logAfter) >= 0) {
+		    getLogger().info("Waiting for '" + getTargetIdentifier() + "' API channel to become available.");
+		    logAfter = now + TimeUnit.SECONDS.toMillis(API_CHANNEL_WAIT_INTERVAL_IN_SECS);
+		}
+
+		// Channels may exist but not be usable yet, so always back off.
+		channelLock.lock();
+		try {
+		    long wait = (timeoutMs >= 0) ? Math.min(backoff, deadline - now) : backoff;
+		    channelAdded.await(wait, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ie) {
+		    Thread.currentThread().interrupt();
+		    throw new ApiChannelNotAvailableException(
+			    "Interrupted while waiting for '" + getTargetIdentifier() + "' API channel.", ie);
+		} finally {
+		    channelLock.unlock();
+		}
+		backoff = Math.min(backoff * 2, API_CHANNEL_MAX_BACKOFF_MS);
 	    }
 	}
     }
 
+    /**
+     * Add a started API channel and wake any threads waiting for one.
+     * 
+     * @param channel
+     */
+    protected void addApiChannel(T channel) {
+	channelLock.lock();
+	try {
+	    getApiChannels().add(channel);
+	    channelAdded.signalAll();
+	} finally {
+	    channelLock.unlock();
+	}
+    }
+
     /*
      * @see
      * com.sitewhere.grpc.model.spi.IApiDemux#initializeApiChannel(java.lang.String)
@@ -306,7 +381,7 @@ public abstract class ApiDemux<T extends IApiChannel> extends TenantEngineLifecy
 		    return;
 		}
 
-		getApiChannels().add(channel);
+		addApiChannel(channel);
 	    } catch (SiteWhereException e) {
 		getLogger().error("Unable to create API channel to " + getHost() + ".", e);
 	    } catch (Throwable t) {
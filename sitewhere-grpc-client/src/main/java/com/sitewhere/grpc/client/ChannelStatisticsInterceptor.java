@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.grpc.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall.SimpleForwardingClientCall;
+import io.grpc.ForwardingClientCallListener.SimpleForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.MethodDescriptor.MethodType;
+import io.grpc.Status;
+
+/**
+ * GRPC interceptor that tracks outstanding calls, an exponentially weighted
+ * moving average of call latency and consecutive transport failures for a
+ * channel. Routing strategies use the values to prefer lightly loaded, fast
+ * channels and to eject channels that keep failing until a cool-down period
+ * has passed. Only unary calls are tracked, since streaming calls stay open
+ * for their whole lifetime and would skew both load and latency.
+ *
+ * @author Derek
+ */
+public class ChannelStatisticsInterceptor implements ClientInterceptor {
+
+    /** Weight given to the most recent sample in latency average */
+    private static final double EWMA_ALPHA = 0.2;
+
+    /** Default number of consecutive failures before channel is ejected */
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    /** Default time channel stays ejected before being retried */
+    private static final long DEFAULT_EJECTION_INTERVAL_MS = 10 * 1000;
+
+    /** Number of calls started but not yet closed */
+    private AtomicInteger outstanding = new AtomicInteger();
+
+    /** Number of consecutive calls that failed at the transport level */
+    private AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    /** Moving average of call latency in nanoseconds */
+    private volatile double latencyEwmaNanos = 0;
+
+    /** Time (millis) before which channel is considered ejected */
+    private volatile long ejectedUntil = 0;
+
+    /** Number of consecutive failures before channel is ejected */
+    private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+
+    /** Time channel stays ejected before being retried */
+    private long ejectionIntervalMs = DEFAULT_EJECTION_INTERVAL_MS;
+
+    /*
+     * @see io.grpc.ClientInterceptor#interceptCall(io.grpc.MethodDescriptor,
+     * io.grpc.CallOptions, io.grpc.Channel)
+     */
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+	    CallOptions callOptions, Channel next) {
+	if (method.getType() != MethodType.UNARY) {
+	    return next.newCall(method, callOptions);
+	}
+	return new SimpleForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions)) {
+
+	    /*
+	     * @see io.grpc.ForwardingClientCall#start(io.grpc.ClientCall.Listener,
+	     * io.grpc.Metadata)
+	     */
+	    @Override
+	    public void start(Listener<RespT> responseListener, Metadata headers) {
+		final long start = System.nanoTime();
+		outstanding.incrementAndGet();
+		try {
+		    super.start(new SimpleForwardingClientCallListener<RespT>(responseListener) {
+
+			/*
+			 * @see io.grpc.ForwardingClientCallListener#onClose(io.grpc.Status,
+			 * io.grpc.Metadata)
+			 */
+			@Override
+			public void onClose(Status status, Metadata trailers) {
+			    onCallCompleted(status, System.nanoTime() - start);
+			    super.onClose(status, trailers);
+			}
+		    }, headers);
+		} catch (RuntimeException e) {
+		    onCallCompleted(Status.UNAVAILABLE, System.nanoTime() - start);
+		    throw e;
+		}
+	    }
+	};
+    }
+
+    /**
+     * Update statistics based on call outcome.
+     *
+     * @param status
+     * @param elapsedNanos
+     */
+    protected void onCallCompleted(Status status, long elapsedNanos) {
+	outstanding.decrementAndGet();
+	if (isTransportFailure(status)) {
+	    if (consecutiveFailures.incrementAndGet() >= getFailureThreshold()) {
+		// Start counting again so a channel coming back from ejection gets
+		// the full threshold before it is ejected again.
+		consecutiveFailures.set(0);
+		ejectedUntil = System.currentTimeMillis() + getEjectionIntervalMs();
+	    }
+	    return;
+	}
+	consecutiveFailures.set(0);
+	recordLatency(elapsedNanos);
+    }
+
+    /**
+     * Indicates whether a status reflects a channel problem rather than an
+     * application error returned by the remote service.
+     *
+     * @param status
+     * @return
+     */
+    protected boolean isTransportFailure(Status status) {
+	switch (status.getCode()) {
+	case UNAVAILABLE:
+	case DEADLINE_EXCEEDED:
+	    return true;
+	default:
+	    return false;
+	}
+    }
+
+    /**
+     * Fold a latency sample into the moving average.
+     *
+     * @param elapsedNanos
+     */
+    protected synchronized void recordLatency(long elapsedNanos) {
+	if (latencyEwmaNanos == 0) {
+	    latencyEwmaNanos = elapsedNanos;
+	} else {
+	    latencyEwmaNanos = (EWMA_ALPHA * elapsedNanos) + ((1 - EWMA_ALPHA) * latencyEwmaNanos);
+	}
+    }
+
+    /**
+     * Indicates whether channel has been ejected due to repeated failures. Once
+     * the ejection interval passes, the channel is eligible again so that a
+     * successful call can restore it.
+     *
+     * @return
+     */
+    public boolean isEjected() {
+	return System.currentTimeMillis() < ejectedUntil;
+    }
+
+    /**
+     * Get number of calls in progress.
+     *
+     * @return
+     */
+    public int getOutstandingRequests() {
+	return outstanding.get();
+    }
+
+    /**
+     * Get moving average of call latency in the given units.
+     *
+     * @param unit
+     * @return
+     */
+    public double getAverageLatency(TimeUnit unit) {
+	return latencyEwmaNanos / TimeUnit.NANOSECONDS.convert(1, unit);
+    }
+
+    /**
+     * Get number of consecutive transport failures.
+     *
+     * @return
+     */
+    public int getConsecutiveFailures() {
+	return consecutiveFailures.get();
+    }
+
+    public int getFailureThreshold() {
+	return failureThreshold;
+    }
+
+    public void setFailureThreshold(int failureThreshold) {
+	this.failureThreshold = failureThreshold;
+    }
+
+    public long getEjectionIntervalMs() {
+	return ejectionIntervalMs;
+    }
+
+    public void setEjectionIntervalMs(long ejectionIntervalMs) {
+	this.ejectionIntervalMs = ejectionIntervalMs;
+    }
+}
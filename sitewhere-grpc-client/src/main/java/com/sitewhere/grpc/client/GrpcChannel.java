@@ -52,6 +52,9 @@ public abstract class GrpcChannel<B, A> extends TenantEngineLifecycleComponent i
     /** Client interceptor for GRPC tracing */
     protected ClientTracingInterceptor trace;
 
+    /** Client interceptor for tracking load, latency and failures */
+    protected ChannelStatisticsInterceptor statistics;
+
     public GrpcChannel(ITracerProvider tracerProvider, String hostname, int port) {
 	this.tracerProvider = tracerProvider;
 	this.hostname = hostname;
@@ -59,6 +62,7 @@ public abstract class GrpcChannel<B, A> extends TenantEngineLifecycleComponent i
 
 	this.jwt = new JwtClientInterceptor();
 	this.trace = new ClientTracingInterceptor(tracerProvider.getTracer());
+	this.statistics = new ChannelStatisticsInterceptor();
     }
 
     /*
@@ -69,7 +73,7 @@ public abstract class GrpcChannel<B, A> extends TenantEngineLifecycleComponent i
     @Override
     public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
 	this.channel = ManagedChannelBuilder.forAddress(getHostname(), getPort()).usePlaintext(true).intercept(jwt)
-		.intercept(trace).build();
+		.intercept(trace).intercept(statistics).build();
 	this.blockingStub = createBlockingStub();
 	this.asyncStub = createAsyncStub();
     }
@@ -98,6 +102,14 @@ public abstract class GrpcChannel<B, A> extends TenantEngineLifecycleComponent i
 	this.channel = channel;
     }
 
+    /*
+     * @see com.sitewhere.grpc.client.spi.IGrpcChannel#getStatistics()
+     */
+    @Override
+    public ChannelStatisticsInterceptor getStatistics() {
+	return statistics;
+    }
+
     /*
      * @see com.sitewhere.grpc.model.spi.IGrpcChannel#getBlockingStub()
      */
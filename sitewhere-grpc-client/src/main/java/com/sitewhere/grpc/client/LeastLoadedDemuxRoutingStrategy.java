@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.grpc.client;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sitewhere.grpc.client.spi.IApiDemuxRoutingStrategy;
+
+import io.grpc.ConnectivityState;
+import io.grpc.ManagedChannel;
+
+/**
+ * Routing strategy that sends each call to the healthy channel with the lowest
+ * expected cost, computed as (outstanding calls + 1) multiplied by the moving
+ * average of call latency. Channels that have been ejected for repeated
+ * failures or whose connection is in a failure state are skipped. If no channel
+ * is healthy, all channels are considered so that calls still have a chance to
+ * succeed while replicas recover. Ties are broken in round-robin order so that
+ * idle channels share traffic evenly.
+ *
+ * @author Derek
+ */
+@SuppressWarnings("rawtypes")
+public class LeastLoadedDemuxRoutingStrategy<T extends ApiChannel> implements IApiDemuxRoutingStrategy<T> {
+
+    /** Rotating start index used to break ties */
+    private AtomicLong index = new AtomicLong(0);
+
+    /*
+     * @see
+     * com.sitewhere.grpc.client.spi.IApiDemuxRoutingStrategy#chooseApiChannel(java
+     * .util.List)
+     */
+    @Override
+    public T chooseApiChannel(List<T> apiChannels) {
+	int size = apiChannels.size();
+	if (size == 0) {
+	    throw new ApiChannelNotAvailableException();
+	}
+	T chosen = chooseLeastLoaded(apiChannels, size, true);
+	if (chosen == null) {
+	    chosen = chooseLeastLoaded(apiChannels, size, false);
+	}
+	if (chosen == null) {
+	    throw new ApiChannelNotAvailableException();
+	}
+	return chosen;
+    }
+
+    /**
+     * Choose the channel with the lowest expected cost.
+     *
+     * @param apiChannels
+     * @param size
+     * @param healthyOnly
+     * @return
+     */
+    protected T chooseLeastLoaded(List<T> apiChannels, int size, boolean healthyOnly) {
+	int offset = (int) (index.incrementAndGet() % size);
+	T best = null;
+	double bestCost = Double.MAX_VALUE;
+	for (int i = 0; i < size; i++) {
+	    T channel;
+	    try {
+		channel = apiChannels.get((offset + i) % size);
+	    } catch (IndexOutOfBoundsException e) {
+		// Channel removed concurrently.
+		continue;
+	    }
+	    GrpcChannel<?, ?> grpc = channel.getGrpcChannel();
+	    if ((grpc == null) || (grpc.getStatistics() == null)) {
+		continue;
+	    }
+	    if (healthyOnly && !isHealthy(grpc)) {
+		continue;
+	    }
+	    double cost = getCost(grpc.getStatistics());
+	    if (cost < bestCost) {
+		best = channel;
+		bestCost = cost;
+	    }
+	}
+	return best;
+    }
+
+    /**
+     * Indicates whether a channel is eligible for traffic.
+     *
+     * @param grpc
+     * @return
+     */
+    protected boolean isHealthy(GrpcChannel<?, ?> grpc) {
+	if (grpc.getStatistics().isEjected()) {
+	    return false;
+	}
+	ManagedChannel managed = grpc.getChannel();
+	if ((managed == null) || managed.isShutdown()) {
+	    return false;
+	}
+	return managed.getState(false) != ConnectivityState.TRANSIENT_FAILURE;
+    }
+
+    /**
+     * Compute expected cost of routing a call to a channel.
+     *
+     * @param statistics
+     * @return
+     */
+    protected double getCost(ChannelStatisticsInterceptor statistics) {
+	double latency = Math.max(statistics.getAverageLatency(TimeUnit.MICROSECONDS), 1.0);
+	return (statistics.getOutstandingRequests() + 1) * latency;
+    }
+}
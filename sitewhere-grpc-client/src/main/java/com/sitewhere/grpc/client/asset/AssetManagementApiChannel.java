@@ -18,9 +18,9 @@ import com.sitewhere.grpc.client.GrpcChannel;
 import com.sitewhere.grpc.client.GrpcUtils;
 import com.sitewhere.grpc.client.spi.IApiDemux;
 import com.sitewhere.grpc.client.spi.client.IAssetManagementApiChannel;
-import com.sitewhere.grpc.model.AssetModel.GAnyAsset;
 import com.sitewhere.grpc.model.AssetModel.GAssetModuleDescriptor;
 import com.sitewhere.grpc.model.converter.AssetModelConverter;
+import com.sitewhere.grpc.model.converter.CommonModelConverter;
 import com.sitewhere.grpc.service.AssetManagementGrpc;
 import com.sitewhere.grpc.service.GCreateAssetCategoryRequest;
 import com.sitewhere.grpc.service.GCreateAssetCategoryResponse;
@@ -507,22 +507,23 @@ public class AssetManagementApiChannel extends ApiChannel<AssetManagementGrpcCha
     /*
      * @see
      * com.sitewhere.spi.asset.IAssetModuleManagement#searchAssetModule(java.lang.
-     * String, java.lang.String)
+     * String, java.lang.String, com.sitewhere.spi.search.ISearchCriteria)
      */
     @Override
-    public List<IAsset> searchAssetModule(String moduleId, String criteria) throws SiteWhereException {
+    public ISearchResults<IAsset> searchAssetModule(String moduleId, String criteria, ISearchCriteria paging)
+	    throws SiteWhereException {
 	try {
 	    GrpcUtils.logClientMethodEntry(this, AssetManagementGrpc.METHOD_GET_ASSET_MODULE_ASSETS_BY_CRITERIA);
 	    GGetAssetModuleAssetsByCriteriaRequest.Builder grequest = GGetAssetModuleAssetsByCriteriaRequest
 		    .newBuilder();
 	    grequest.setModuleId(moduleId);
 	    grequest.setCriteria(criteria);
+	    if (paging != null) {
+		grequest.setPaging(CommonModelConverter.asGrpcPaging(paging));
+	    }
 	    GGetAssetModuleAssetsByCriteriaResponse gresponse = getGrpcChannel().getBlockingStub()
 		    .getAssetModuleAssetsByCriteria(grequest.build());
-	    List<IAsset> results = new ArrayList<IAsset>();
-	    for (GAnyAsset asset : gresponse.getAssetList()) {
-		results.add(AssetModelConverter.asApiGenericAsset(asset));
-	    }
+	    ISearchResults<IAsset> results = AssetModelConverter.asApiAssetSearchResults(gresponse.getResults());
 	    GrpcUtils.logClientMethodResponse(AssetManagementGrpc.METHOD_GET_ASSET_MODULE_ASSETS_BY_CRITERIA, results);
 	    return results;
 	} catch (Throwable t) {
@@ -91,6 +91,18 @@ public abstract class CacheProvider<K, V> implements ICacheProvider<K, V> {
 	}
     }
 
+    /*
+     * @see
+     * com.sitewhere.spi.cache.ICacheProvider#removeAllCacheEntries(com.sitewhere.
+     * spi.tenant.ITenant)
+     */
+    @Override
+    public void removeAllCacheEntries(ITenant tenant) throws SiteWhereException {
+	if (getCache(tenant) != null) {
+	    getCache(tenant).clear();
+	}
+    }
+
     /**
      * Get cache (create if not found).
      * 
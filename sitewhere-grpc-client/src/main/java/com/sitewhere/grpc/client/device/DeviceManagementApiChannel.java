@@ -10,6 +10,10 @@ package com.sitewhere.grpc.client.device;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -19,6 +23,7 @@ import com.sitewhere.grpc.client.GrpcChannel;
 import com.sitewhere.grpc.client.GrpcUtils;
 import com.sitewhere.grpc.client.spi.IApiDemux;
 import com.sitewhere.grpc.client.spi.client.IDeviceManagementApiChannel;
+import com.sitewhere.grpc.model.DeviceModel.GDeviceBulkCreateRequest;
 import com.sitewhere.grpc.model.converter.CommonModelConverter;
 import com.sitewhere.grpc.model.converter.DeviceModelConverter;
 import com.sitewhere.grpc.service.*;
@@ -27,6 +32,7 @@ import com.sitewhere.spi.asset.IAssetReference;
 import com.sitewhere.spi.device.DeviceAssignmentStatus;
 import com.sitewhere.spi.device.IDevice;
 import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceBulkCreateResponse;
 import com.sitewhere.spi.device.IDeviceElementMapping;
 import com.sitewhere.spi.device.IDeviceStatus;
 import com.sitewhere.spi.device.IDeviceType;
@@ -37,6 +43,7 @@ import com.sitewhere.spi.device.event.request.IDeviceStreamCreateRequest;
 import com.sitewhere.spi.device.group.IDeviceGroup;
 import com.sitewhere.spi.device.group.IDeviceGroupElement;
 import com.sitewhere.spi.device.request.IDeviceAssignmentCreateRequest;
+import com.sitewhere.spi.device.request.IDeviceBulkCreateRequest;
 import com.sitewhere.spi.device.request.IDeviceCommandCreateRequest;
 import com.sitewhere.spi.device.request.IDeviceCreateRequest;
 import com.sitewhere.spi.device.request.IDeviceGroupCreateRequest;
@@ -54,6 +61,10 @@ import com.sitewhere.spi.search.device.IAssignmentsForAssetSearchCriteria;
 import com.sitewhere.spi.search.device.IDeviceSearchCriteria;
 import com.sitewhere.spi.tracing.ITracerProvider;
 
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+
 /**
  * Supports SiteWhere device management APIs on top of a
  * {@link DeviceManagementGrpcChannel}.
@@ -70,6 +81,18 @@ public class DeviceManagementApiChannel extends ApiChannel<DeviceManagementGrpcC
     /** Static logger instance */
     private static Logger LOGGER = LogManager.getLogger();
 
+    /** Number of devices sent in each message of a bulk create stream */
+    private static final int BULK_CREATE_BATCH_SIZE = 1000;
+
+    /** Interval at which a bulk create re-checks transport readiness */
+    private static final long BULK_CREATE_READY_WAIT_MS = 100;
+
+    /** Default maximum time to wait for a bulk create response */
+    private static final long DEFAULT_BULK_CREATE_TIMEOUT_MS = 5 * 60 * 1000;
+
+    /** Maximum time to wait for a bulk create response */
+    private long bulkCreateTimeoutMs = DEFAULT_BULK_CREATE_TIMEOUT_MS;
+
     public DeviceManagementApiChannel(IApiDemux<?> demux, IMicroservice microservice, String host) {
 	super(demux, microservice, host);
     }
@@ -501,6 +524,121 @@ public class DeviceManagementApiChannel extends ApiChannel<DeviceManagementGrpcC
 	}
     }
 
+    /*
+     * @see
+     * com.sitewhere.spi.device.IDeviceManagement#createDevices(com.sitewhere.spi.
+     * device.request.IDeviceBulkCreateRequest)
+     */
+    @Override
+    public IDeviceBulkCreateResponse createDevices(IDeviceBulkCreateRequest request) throws SiteWhereException {
+	try {
+	    GrpcUtils.logClientMethodEntry(this, DeviceManagementGrpc.METHOD_CREATE_DEVICES);
+	    long deadline = System.currentTimeMillis() + getBulkCreateTimeoutMs();
+	    CompletableFuture<GCreateDevicesResponse> result = new CompletableFuture<GCreateDevicesResponse>();
+	    Object ready = new Object();
+	    StreamObserver<GCreateDevicesRequest> stream = getGrpcChannel().getAsyncStub()
+		    .withDeadlineAfter(getBulkCreateTimeoutMs(), TimeUnit.MILLISECONDS)
+		    .createDevices(new ClientResponseObserver<GCreateDevicesRequest, GCreateDevicesResponse>() {
+
+			@Override
+			public void beforeStart(ClientCallStreamObserver<GCreateDevicesRequest> requestStream) {
+			    requestStream.setOnReadyHandler(() -> signal(ready));
+			}
+
+			@Override
+			public void onNext(GCreateDevicesResponse value) {
+			    result.complete(value);
+			    signal(ready);
+			}
+
+			@Override
+			public void onError(Throwable t) {
+			    result.completeExceptionally(t);
+			    signal(ready);
+			}
+
+			@Override
+			public void onCompleted() {
+			}
+		    });
+
+	    // Stream devices in batches so large uploads are not sent as one message.
+	    // Each batch waits for the transport so batches are not buffered in memory.
+	    List<IDeviceCreateRequest> devices = request.getDevices();
+	    int start = 0;
+	    do {
+		if (!awaitReady((ClientCallStreamObserver<?>) stream, ready, result, deadline)) {
+		    break;
+		}
+		GDeviceBulkCreateRequest.Builder batch = GDeviceBulkCreateRequest.newBuilder();
+		int end = Math.min(start + BULK_CREATE_BATCH_SIZE, devices.size());
+		for (IDeviceCreateRequest device : devices.subList(start, end)) {
+		    batch.addDevices(DeviceModelConverter.asGrpcDeviceCreateRequest(device));
+		}
+		batch.setUpdateExisting(request.isUpdateExisting());
+		if (request.getAssignmentTemplate() != null) {
+		    batch.setAssignmentTemplate(
+			    DeviceModelConverter.asGrpcDeviceAssignmentCreateRequest(request.getAssignmentTemplate()));
+		}
+		stream.onNext(GCreateDevicesRequest.newBuilder().setRequest(batch).build());
+		start = end;
+	    } while ((start < devices.size()) && (!result.isDone()));
+	    stream.onCompleted();
+
+	    GCreateDevicesResponse gresponse = result.get(getBulkCreateTimeoutMs(), TimeUnit.MILLISECONDS);
+	    IDeviceBulkCreateResponse response = DeviceModelConverter
+		    .asApiDeviceBulkCreateResponse(gresponse.getResponse());
+	    GrpcUtils.logClientMethodResponse(DeviceManagementGrpc.METHOD_CREATE_DEVICES, response);
+	    return response;
+	} catch (ExecutionException e) {
+	    throw GrpcUtils.handleClientMethodException(DeviceManagementGrpc.METHOD_CREATE_DEVICES, e.getCause());
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new SiteWhereException("Interrupted while streaming bulk device create request.", e);
+	} catch (TimeoutException e) {
+	    throw new SiteWhereException(
+		    "Timed out after " + getBulkCreateTimeoutMs() + "ms waiting for bulk device create response.", e);
+	} catch (Throwable t) {
+	    throw GrpcUtils.handleClientMethodException(DeviceManagementGrpc.METHOD_CREATE_DEVICES, t);
+	}
+    }
+
+    /**
+     * Wait until the call can accept another message without buffering it.
+     * 
+     * @param stream
+     * @param ready
+     * @param result
+     * @param deadline
+     * @return false if the call has already completed
+     * @throws InterruptedException
+     * @throws TimeoutException
+     */
+    protected static boolean awaitReady(ClientCallStreamObserver<?> stream, Object ready, CompletableFuture<?> result,
+	    long deadline) throws InterruptedException, TimeoutException {
+	synchronized (ready) {
+	    while (!stream.isReady() && !result.isDone()) {
+		long remaining = deadline - System.currentTimeMillis();
+		if (remaining <= 0) {
+		    throw new TimeoutException();
+		}
+		ready.wait(Math.min(remaining, BULK_CREATE_READY_WAIT_MS));
+	    }
+	}
+	return !result.isDone();
+    }
+
+    /**
+     * Wake threads waiting for a bulk create call.
+     * 
+     * @param ready
+     */
+    protected static void signal(Object ready) {
+	synchronized (ready) {
+	    ready.notifyAll();
+	}
+    }
+
     /*
      * @see com.sitewhere.spi.device.IDeviceManagement#getDevice(java.util.UUID)
      */
@@ -1467,4 +1605,12 @@ public class DeviceManagementApiChannel extends ApiChannel<DeviceManagementGrpcC
     public Logger getLogger() {
 	return LOGGER;
     }
+
+    public long getBulkCreateTimeoutMs() {
+	return bulkCreateTimeoutMs;
+    }
+
+    public void setBulkCreateTimeoutMs(long bulkCreateTimeoutMs) {
+	this.bulkCreateTimeoutMs = bulkCreateTimeoutMs;
+    }
 }
\ No newline at end of file
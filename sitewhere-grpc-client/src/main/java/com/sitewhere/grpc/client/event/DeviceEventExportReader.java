@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.grpc.client.event;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.List;
+
+import com.sitewhere.grpc.client.GrpcUtils;
+import com.sitewhere.grpc.client.spi.client.IDeviceEventManagementApiChannel;
+import com.sitewhere.grpc.client.spi.client.IDeviceEventManagementApiDemux;
+import com.sitewhere.grpc.model.converter.CommonModelConverter;
+import com.sitewhere.grpc.model.converter.DeviceModelConverter;
+import com.sitewhere.grpc.model.converter.EventModelConverter;
+import com.sitewhere.grpc.service.DeviceEventManagementGrpc;
+import com.sitewhere.grpc.service.DeviceEventManagementGrpc.DeviceEventManagementBlockingStub;
+import com.sitewhere.grpc.service.GExportDeviceEventsRequest;
+import com.sitewhere.grpc.service.GExportDeviceEventsResponse;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.ISite;
+import com.sitewhere.spi.device.event.DeviceEventType;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.search.IDateRangeSearchCriteria;
+
+import io.grpc.Context;
+
+/**
+ * Reads exported device events one at a time over a server streaming call.
+ * Events are pulled from the call as they are consumed, so gRPC flow control
+ * keeps the server from reading ahead of the caller. The first event is read
+ * when the reader is opened so that errors (such as an unknown assignment) are
+ * reported before the caller starts writing output. The reader must be closed
+ * so that a partially consumed call is cancelled.
+ * 
+ * @author Derek
+ */
+public class DeviceEventExportReader implements Closeable {
+
+    /** Context used to cancel the call */
+    private Context.CancellableContext context;
+
+    /** Responses from the call */
+    private Iterator<GExportDeviceEventsResponse> responses;
+
+    /** Response read ahead of the caller */
+    private GExportDeviceEventsResponse pending;
+
+    protected DeviceEventExportReader(IDeviceEventManagementApiDemux demux, GExportDeviceEventsRequest request)
+	    throws SiteWhereException {
+	IDeviceEventManagementApiChannel channel = demux.getApiChannel();
+	this.context = Context.current().withCancellation();
+	Context previous = context.attach();
+	try {
+	    DeviceEventManagementBlockingStub stub = (DeviceEventManagementBlockingStub) channel.getGrpcChannel()
+		    .getBlockingStub();
+	    this.responses = stub.exportDeviceEvents(
+		    GrpcUtils.logGrpcClientRequest(DeviceEventManagementGrpc.METHOD_EXPORT_DEVICE_EVENTS, request));
+	    this.pending = responses.hasNext() ? responses.next() : null;
+	} catch (Throwable t) {
+	    close();
+	    throw GrpcUtils.handleClientMethodException(DeviceEventManagementGrpc.METHOD_EXPORT_DEVICE_EVENTS, t);
+	} finally {
+	    context.detach(previous);
+	}
+    }
+
+    /**
+     * Open a reader for events of an assignment.
+     * 
+     * @param demux
+     * @param assignment
+     * @param eventTypes
+     *            types to export (all if null or empty)
+     * @param measurementNames
+     *            measurement names to export (all if null or empty)
+     * @param criteria
+     *            date range and number of events read at a time
+     * @return
+     * @throws SiteWhereException
+     */
+    public static DeviceEventExportReader forAssignment(IDeviceEventManagementApiDemux demux,
+	    IDeviceAssignment assignment, List<DeviceEventType> eventTypes, List<String> measurementNames,
+	    IDateRangeSearchCriteria criteria) throws SiteWhereException {
+	GExportDeviceEventsRequest.Builder grequest = createRequest(eventTypes, measurementNames, criteria);
+	grequest.setAssignment(DeviceModelConverter.asGrpcDeviceAssignment(assignment));
+	return new DeviceEventExportReader(demux, grequest.build());
+    }
+
+    /**
+     * Open a reader for events of a site.
+     * 
+     * @param demux
+     * @param site
+     * @param eventTypes
+     *            types to export (all if null or empty)
+     * @param measurementNames
+     *            measurement names to export (all if null or empty)
+     * @param criteria
+     *            date range and number of events read at a time
+     * @return
+     * @throws SiteWhereException
+     */
+    public static DeviceEventExportReader forSite(IDeviceEventManagementApiDemux demux, ISite site,
+	    List<DeviceEventType> eventTypes, List<String> measurementNames, IDateRangeSearchCriteria criteria)
+	    throws SiteWhereException {
+	GExportDeviceEventsRequest.Builder grequest = createRequest(eventTypes, measurementNames, criteria);
+	grequest.setSite(DeviceModelConverter.asGrpcSite(site));
+	return new DeviceEventExportReader(demux, grequest.build());
+    }
+
+    /**
+     * Create request with filters common to all exports.
+     * 
+     * @param eventTypes
+     * @param measurementNames
+     * @param criteria
+     * @return
+     * @throws SiteWhereException
+     */
+    protected static GExportDeviceEventsRequest.Builder createRequest(List<DeviceEventType> eventTypes,
+	    List<String> measurementNames, IDateRangeSearchCriteria criteria) throws SiteWhereException {
+	GExportDeviceEventsRequest.Builder grequest = GExportDeviceEventsRequest.newBuilder();
+	if (eventTypes != null) {
+	    for (DeviceEventType type : eventTypes) {
+		grequest.addEventTypes(EventModelConverter.asGrpcDeviceEventType(type));
+	    }
+	}
+	if (measurementNames != null) {
+	    grequest.addAllMeasurementNames(measurementNames);
+	}
+	grequest.setCriteria(CommonModelConverter.asGrpcDateRangeSearchCriteria(criteria));
+	return grequest;
+    }
+
+    /**
+     * Get the next event or null if all events have been read.
+     * 
+     * @return
+     * @throws SiteWhereException
+     */
+    public IDeviceEvent next() throws SiteWhereException {
+	try {
+	    while (pending != null) {
+		GExportDeviceEventsResponse response = pending;
+		this.pending = responses.hasNext() ? responses.next() : null;
+		if (response.hasEvent()) {
+		    return EventModelConverter.asApiGenericDeviceEvent(response.getEvent());
+		}
+	    }
+	    return null;
+	} catch (Throwable t) {
+	    close();
+	    throw GrpcUtils.handleClientMethodException(DeviceEventManagementGrpc.METHOD_EXPORT_DEVICE_EVENTS, t);
+	}
+    }
+
+    /*
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() {
+	context.cancel(null);
+    }
+}
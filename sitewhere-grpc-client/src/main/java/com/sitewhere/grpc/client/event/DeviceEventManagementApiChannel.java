@@ -7,6 +7,8 @@
  */
 package com.sitewhere.grpc.client.event;
 
+import java.util.UUID;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -36,6 +38,8 @@ import com.sitewhere.grpc.service.GAddStateChangeForAssignmentRequest;
 import com.sitewhere.grpc.service.GAddStateChangeForAssignmentResponse;
 import com.sitewhere.grpc.service.GAddStreamDataForAssignmentRequest;
 import com.sitewhere.grpc.service.GAddStreamDataForAssignmentResponse;
+import com.sitewhere.grpc.service.GGetDeviceAssignmentStateRequest;
+import com.sitewhere.grpc.service.GGetDeviceAssignmentStateResponse;
 import com.sitewhere.grpc.service.GGetDeviceEventByAlternateIdRequest;
 import com.sitewhere.grpc.service.GGetDeviceEventByAlternateIdResponse;
 import com.sitewhere.grpc.service.GGetDeviceEventByIdRequest;
@@ -56,6 +60,8 @@ import com.sitewhere.grpc.service.GListCommandResponsesForInvocationRequest;
 import com.sitewhere.grpc.service.GListCommandResponsesForInvocationResponse;
 import com.sitewhere.grpc.service.GListCommandResponsesForSiteRequest;
 import com.sitewhere.grpc.service.GListCommandResponsesForSiteResponse;
+import com.sitewhere.grpc.service.GListDeviceAssignmentStatesForSiteRequest;
+import com.sitewhere.grpc.service.GListDeviceAssignmentStatesForSiteResponse;
 import com.sitewhere.grpc.service.GListDeviceEventsRequest;
 import com.sitewhere.grpc.service.GListDeviceEventsResponse;
 import com.sitewhere.grpc.service.GListLocationsForAssignmentRequest;
@@ -76,6 +82,7 @@ import com.sitewhere.grpc.service.GUpdateDeviceEventRequest;
 import com.sitewhere.grpc.service.GUpdateDeviceEventResponse;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceAssignmentState;
 import com.sitewhere.spi.device.ISite;
 import com.sitewhere.spi.device.event.IDeviceAlert;
 import com.sitewhere.spi.device.event.IDeviceCommandInvocation;
@@ -686,17 +693,19 @@ public class DeviceEventManagementApiChannel extends ApiChannel<DeviceEventManag
      * (non-Javadoc)
      * 
      * @see com.sitewhere.spi.device.event.IDeviceEventManagement#
-     * listDeviceCommandInvocationResponses(java.lang.String)
+     * listDeviceCommandInvocationResponses(java.lang.String,
+     * com.sitewhere.spi.search.IDateRangeSearchCriteria)
      */
     @Override
-    public ISearchResults<IDeviceCommandResponse> listDeviceCommandInvocationResponses(String invocationId)
-	    throws SiteWhereException {
+    public ISearchResults<IDeviceCommandResponse> listDeviceCommandInvocationResponses(String invocationId,
+	    IDateRangeSearchCriteria criteria) throws SiteWhereException {
 	try {
 	    GrpcUtils.logClientMethodEntry(this, DeviceEventManagementGrpc.METHOD_LIST_COMMAND_RESPONSES_FOR_INVOCATION,
-		    DebugParameter.create("Invocation Id", invocationId));
+		    DebugParameter.create("Invocation Id", invocationId), DebugParameter.create("Criteria", criteria));
 	    GListCommandResponsesForInvocationRequest.Builder grequest = GListCommandResponsesForInvocationRequest
 		    .newBuilder();
 	    grequest.setInvocationId(invocationId);
+	    grequest.setCriteria(CommonModelConverter.asGrpcDateRangeSearchCriteria(criteria));
 	    GListCommandResponsesForInvocationResponse gresponse = getGrpcChannel().getBlockingStub()
 		    .listCommandResponsesForInvocation(GrpcUtils.logGrpcClientRequest(
 			    DeviceEventManagementGrpc.METHOD_LIST_COMMAND_RESPONSES_FOR_INVOCATION, grequest.build()));
@@ -890,6 +899,62 @@ public class DeviceEventManagementApiChannel extends ApiChannel<DeviceEventManag
 	}
     }
 
+    /*
+     * @see
+     * com.sitewhere.spi.device.event.IDeviceEventManagement#getDeviceAssignmentState(
+     * java.util.UUID)
+     */
+    @Override
+    public IDeviceAssignmentState getDeviceAssignmentState(UUID assignmentId) throws SiteWhereException {
+	try {
+	    GrpcUtils.logClientMethodEntry(this, DeviceEventManagementGrpc.METHOD_GET_DEVICE_ASSIGNMENT_STATE,
+		    DebugParameter.create("Assignment Id", assignmentId));
+	    GGetDeviceAssignmentStateRequest.Builder grequest = GGetDeviceAssignmentStateRequest.newBuilder();
+	    grequest.setAssignmentId(CommonModelConverter.asGrpcUuid(assignmentId));
+	    GGetDeviceAssignmentStateResponse gresponse = getGrpcChannel().getBlockingStub().getDeviceAssignmentState(
+		    GrpcUtils.logGrpcClientRequest(DeviceEventManagementGrpc.METHOD_GET_DEVICE_ASSIGNMENT_STATE,
+			    grequest.build()));
+	    IDeviceAssignmentState response = (gresponse.hasState())
+		    ? EventModelConverter.asApiDeviceAssignmentState(gresponse.getState())
+		    : null;
+	    GrpcUtils.logClientMethodResponse(DeviceEventManagementGrpc.METHOD_GET_DEVICE_ASSIGNMENT_STATE, response);
+	    return response;
+	} catch (Throwable t) {
+	    throw GrpcUtils.handleClientMethodException(DeviceEventManagementGrpc.METHOD_GET_DEVICE_ASSIGNMENT_STATE,
+		    t);
+	}
+    }
+
+    /*
+     * @see com.sitewhere.spi.device.event.IDeviceEventManagement#
+     * listDeviceAssignmentStatesForSite(com.sitewhere.spi.device.ISite,
+     * com.sitewhere.spi.search.IDateRangeSearchCriteria)
+     */
+    @Override
+    public ISearchResults<IDeviceAssignmentState> listDeviceAssignmentStatesForSite(ISite site,
+	    IDateRangeSearchCriteria criteria) throws SiteWhereException {
+	try {
+	    GrpcUtils.logClientMethodEntry(this,
+		    DeviceEventManagementGrpc.METHOD_LIST_DEVICE_ASSIGNMENT_STATES_FOR_SITE,
+		    DebugParameter.create("Site", site), DebugParameter.create("Criteria", criteria));
+	    GListDeviceAssignmentStatesForSiteRequest.Builder grequest = GListDeviceAssignmentStatesForSiteRequest
+		    .newBuilder();
+	    grequest.setSite(DeviceModelConverter.asGrpcSite(site));
+	    grequest.setCriteria(CommonModelConverter.asGrpcDateRangeSearchCriteria(criteria));
+	    GListDeviceAssignmentStatesForSiteResponse gresponse = getGrpcChannel().getBlockingStub()
+		    .listDeviceAssignmentStatesForSite(GrpcUtils.logGrpcClientRequest(
+			    DeviceEventManagementGrpc.METHOD_LIST_DEVICE_ASSIGNMENT_STATES_FOR_SITE, grequest.build()));
+	    ISearchResults<IDeviceAssignmentState> results = EventModelConverter
+		    .asApiDeviceAssignmentStateSearchResults(gresponse.getResults());
+	    GrpcUtils.logClientMethodResponse(DeviceEventManagementGrpc.METHOD_LIST_DEVICE_ASSIGNMENT_STATES_FOR_SITE,
+		    results);
+	    return results;
+	} catch (Throwable t) {
+	    throw GrpcUtils.handleClientMethodException(
+		    DeviceEventManagementGrpc.METHOD_LIST_DEVICE_ASSIGNMENT_STATES_FOR_SITE, t);
+	}
+    }
+
     /*
      * (non-Javadoc)
      * 
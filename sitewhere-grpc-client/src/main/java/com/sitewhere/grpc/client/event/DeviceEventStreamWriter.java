@@ -0,0 +1,601 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.grpc.client.event;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.sitewhere.grpc.client.spi.client.IDeviceEventManagementApiChannel;
+import com.sitewhere.grpc.client.spi.client.IDeviceEventManagementApiDemux;
+import com.sitewhere.grpc.model.converter.DeviceModelConverter;
+import com.sitewhere.grpc.model.converter.EventModelConverter;
+import com.sitewhere.grpc.service.DeviceEventManagementGrpc;
+import com.sitewhere.grpc.service.GStreamDeviceEventRequest;
+import com.sitewhere.grpc.service.GStreamDeviceEventResponse;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.device.event.request.IDeviceEventCreateRequest;
+import com.sitewhere.spi.device.streaming.IDeviceStream;
+import com.sitewhere.spi.security.ITenantAwareAuthentication;
+import com.sitewhere.spi.tenant.ITenant;
+
+import io.grpc.Status;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+
+/**
+ * Sends device events to event management over long-lived bidirectional
+ * streams rather than one unary call per event. The number of events sent but
+ * not yet acknowledged is bounded by a window so that callers block (rather
+ * than buffering without limit) when event management falls behind, and sends
+ * wait for the transport to be ready so messages are not queued in the channel.
+ * If a stream fails, all unacknowledged events are failed and a new stream is
+ * opened on the next send.
+ *
+ * Stores are asynchronous so a caller can have many events in flight and wait
+ * for all of them at once. An event that is not acknowledged in time is failed
+ * (and retried) on its own. The stream is only aborted if it has not
+ * acknowledged any event for the whole timeout, which indicates it is stalled.
+ *
+ * Tenant and user credentials are attached when a stream is opened, so a
+ * separate stream is kept for each tenant and is reopened when the credentials
+ * of the calling thread change.
+ *
+ * @author Derek
+ */
+public class DeviceEventStreamWriter {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Default maximum number of unacknowledged events */
+    private static final int DEFAULT_WINDOW_SIZE = 256;
+
+    /** Default time to wait for an event to be acknowledged */
+    private static final long DEFAULT_ACK_TIMEOUT_MS = 30 * 1000;
+
+    /** Default number of attempts to store an event */
+    private static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+    /** Initial delay before an event is sent again */
+    private static final long INITIAL_RETRY_BACKOFF_MS = 250;
+
+    /** Maximum delay before an event is sent again */
+    private static final long MAX_RETRY_BACKOFF_MS = 5 * 1000;
+
+    /** Interval at which blocked senders re-check transport readiness */
+    private static final long READY_WAIT_MS = 100;
+
+    /** Schedules acknowledgement timeouts and retries for all writers */
+    private static ScheduledExecutorService SCHEDULER = Executors
+	    .newSingleThreadScheduledExecutor(new WriterThreadFactory("Device Event Stream Timeouts"));
+
+    /** Resends events (which may block on the window) for all writers */
+    private static ExecutorService RETRIES = Executors
+	    .newCachedThreadPool(new WriterThreadFactory("Device Event Stream Retries"));
+
+    /** Demux used to locate event management channel */
+    private IDeviceEventManagementApiDemux demux;
+
+    /** Limits number of unacknowledged events */
+    private Semaphore window;
+
+    /** Sequence number assigned to outbound events */
+    private AtomicLong sequence = new AtomicLong();
+
+    /** Open streams by tenant id */
+    private Map<String, EventStream> streams = new HashMap<String, EventStream>();
+
+    /** Time to wait for an event to be acknowledged */
+    private long ackTimeoutMs = DEFAULT_ACK_TIMEOUT_MS;
+
+    /** Number of attempts to store an event */
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    public DeviceEventStreamWriter(IDeviceEventManagementApiDemux demux) {
+	this(demux, DEFAULT_WINDOW_SIZE);
+    }
+
+    public DeviceEventStreamWriter(IDeviceEventManagementApiDemux demux, int windowSize) {
+	this.demux = demux;
+	this.window = new Semaphore(windowSize);
+    }
+
+    /**
+     * Store an event and wait for event management to acknowledge it.
+     *
+     * @param assignment
+     * @param stream
+     *            device stream (only required for stream data)
+     * @param request
+     * @return
+     * @throws SiteWhereException
+     * @see #storeAsync(IDeviceAssignment, IDeviceStream, IDeviceEventCreateRequest)
+     */
+    public IDeviceEvent store(IDeviceAssignment assignment, IDeviceStream stream, IDeviceEventCreateRequest request)
+	    throws SiteWhereException {
+	try {
+	    return storeAsync(assignment, stream, request).get();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new SiteWhereException("Interrupted while waiting for device event acknowledgement.");
+	} catch (ExecutionException e) {
+	    throw (e.getCause() instanceof SiteWhereException) ? (SiteWhereException) e.getCause()
+		    : new SiteWhereException(e.getCause());
+	}
+    }
+
+    /**
+     * Send an event for storage without waiting for it to be acknowledged. Blocks
+     * only while the in-flight window is full. The returned future completes
+     * when event management acknowledges the event. If the stream fails or the
+     * acknowledgement does not arrive in time, the event is sent again, so an
+     * event may be stored more than once. Events rejected by event management
+     * are not retried. After the last attempt the future fails.
+     *
+     * @param assignment
+     * @param stream
+     *            device stream (only required for stream data)
+     * @param request
+     * @return
+     * @throws SiteWhereException
+     */
+    public CompletableFuture<IDeviceEvent> storeAsync(IDeviceAssignment assignment, IDeviceStream stream,
+	    IDeviceEventCreateRequest request) throws SiteWhereException {
+	CompletableFuture<IDeviceEvent> result = new CompletableFuture<IDeviceEvent>();
+	Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+	attempt(result, authentication, assignment, stream, request, 1, INITIAL_RETRY_BACKOFF_MS);
+	return result;
+    }
+
+    /**
+     * Send an event and complete the result when it is acknowledged, scheduling
+     * another attempt if it fails in a way that can be retried.
+     *
+     * @param result
+     * @param authentication
+     * @param assignment
+     * @param stream
+     * @param request
+     * @param attempt
+     * @param backoff
+     * @throws SiteWhereException
+     */
+    protected void attempt(CompletableFuture<IDeviceEvent> result, Authentication authentication,
+	    IDeviceAssignment assignment, IDeviceStream stream, IDeviceEventCreateRequest request, int attempt,
+	    long backoff) throws SiteWhereException {
+	CompletableFuture<IDeviceEvent> ack = send(getStream(authentication), assignment, stream, request);
+	ack.whenComplete((event, failure) -> {
+	    if (failure == null) {
+		result.complete(event);
+		return;
+	    }
+	    if (!(failure instanceof StreamFailedException) && !(failure instanceof AckTimeoutException)) {
+		result.completeExceptionally(failure);
+		return;
+	    }
+	    if (attempt >= getMaxAttempts()) {
+		result.completeExceptionally(
+			new SiteWhereException("Device event was not stored after " + attempt + " attempts.", failure));
+		return;
+	    }
+	    LOGGER.warn("Unable to store device event (attempt " + attempt + "). Retrying in " + backoff + "ms.");
+	    Runnable retry = new Runnable() {
+
+		@Override
+		public void run() {
+		    try {
+			attempt(result, authentication, assignment, stream, request, attempt + 1,
+				Math.min(backoff * 2, MAX_RETRY_BACKOFF_MS));
+		    } catch (Throwable t) {
+			result.completeExceptionally(t);
+		    }
+		}
+	    };
+	    SCHEDULER.schedule(new Runnable() {
+
+		@Override
+		public void run() {
+		    RETRIES.execute(retry);
+		}
+	    }, backoff, TimeUnit.MILLISECONDS);
+	});
+    }
+
+    /**
+     * Send an event on the given stream.
+     *
+     * @param target
+     * @param assignment
+     * @param stream
+     * @param request
+     * @return
+     * @throws SiteWhereException
+     */
+    protected CompletableFuture<IDeviceEvent> send(EventStream target, IDeviceAssignment assignment,
+	    IDeviceStream stream, IDeviceEventCreateRequest request) throws SiteWhereException {
+	GStreamDeviceEventRequest.Builder grequest = GStreamDeviceEventRequest.newBuilder();
+	grequest.setSequence(sequence.incrementAndGet());
+	grequest.setAssignment(DeviceModelConverter.asGrpcDeviceAssignment(assignment));
+	grequest.setRequest(EventModelConverter.asGrpcDeviceEventCreateRequest(request));
+	if (stream != null) {
+	    grequest.setDeviceStream(DeviceModelConverter.asGrpcDeviceStream(stream));
+	}
+
+	try {
+	    window.acquire();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new SiteWhereException("Interrupted while waiting to stream device event.");
+	}
+	CompletableFuture<IDeviceEvent> future = new CompletableFuture<IDeviceEvent>();
+	long sequenceNumber = grequest.getSequence();
+	try {
+	    target.send(grequest.build(), future);
+	    ScheduledFuture<?> timeout = SCHEDULER.schedule(new Runnable() {
+
+		@Override
+		public void run() {
+		    target.expire(sequenceNumber);
+		}
+	    }, getAckTimeoutMs(), TimeUnit.MILLISECONDS);
+	    future.whenComplete((event, failure) -> timeout.cancel(false));
+	} catch (IllegalStateException e) {
+	    window.release();
+	    future.completeExceptionally(new StreamFailedException("Device event stream is closed.", e));
+	} catch (SiteWhereException e) {
+	    window.release();
+	    throw e;
+	} catch (RuntimeException e) {
+	    window.release();
+	    throw new SiteWhereException("Unable to stream device event.", e);
+	}
+	return future;
+    }
+
+    /**
+     * Complete all open streams. Events already sent are still acknowledged.
+     */
+    public synchronized void close() {
+	for (EventStream stream : streams.values()) {
+	    stream.complete();
+	}
+	streams.clear();
+    }
+
+    /**
+     * Get the open stream for the tenant and credentials of the given
+     * authentication, creating a new one if needed.
+     *
+     * @param authentication
+     * @return
+     */
+    protected synchronized EventStream getStream(Authentication authentication) {
+	String tenantId = "";
+	String jwt = null;
+	if (authentication != null) {
+	    jwt = (String) authentication.getCredentials();
+	    if (authentication instanceof ITenantAwareAuthentication) {
+		ITenant tenant = ((ITenantAwareAuthentication) authentication).getTenant();
+		tenantId = (tenant != null) ? tenant.getId() : "";
+	    }
+	}
+	EventStream current = streams.get(tenantId);
+	if ((current != null) && !current.isClosed() && !current.isOpenedWith(jwt)) {
+	    current.complete();
+	}
+	if ((current == null) || current.isClosed()) {
+	    IDeviceEventManagementApiChannel channel = getDemux().getApiChannel();
+	    Authentication previous = SecurityContextHolder.getContext().getAuthentication();
+	    try {
+		// Credentials are attached by client interceptors when the call starts.
+		SecurityContextHolder.getContext().setAuthentication(authentication);
+		current = new EventStream(
+			(DeviceEventManagementGrpc.DeviceEventManagementStub) channel.getGrpcChannel().getAsyncStub(),
+			jwt);
+	    } finally {
+		SecurityContextHolder.getContext().setAuthentication(previous);
+	    }
+	    streams.put(tenantId, current);
+	}
+	return current;
+    }
+
+    /**
+     * Indicates an event was not acknowledged because its stream failed.
+     *
+     * @author Derek
+     */
+    public static class StreamFailedException extends SiteWhereException {
+
+	/** Serial version UID */
+	private static final long serialVersionUID = 4319538174528765630L;
+
+	public StreamFailedException(String message) {
+	    super(message);
+	}
+
+	public StreamFailedException(String message, Throwable cause) {
+	    super(message, cause);
+	}
+    }
+
+    /**
+     * Indicates an event was not acknowledged within the timeout.
+     *
+     * @author Derek
+     */
+    public static class AckTimeoutException extends SiteWhereException {
+
+	/** Serial version UID */
+	private static final long serialVersionUID = -2873490713558290217L;
+
+	public AckTimeoutException(String message) {
+	    super(message);
+	}
+    }
+
+    /**
+     * A single bidirectional call along with the events awaiting
+     * acknowledgement on it.
+     *
+     * @author Derek
+     */
+    protected class EventStream
+	    implements ClientResponseObserver<GStreamDeviceEventRequest, GStreamDeviceEventResponse> {
+
+	/** Events awaiting acknowledgement by sequence number */
+	private Map<Long, CompletableFuture<IDeviceEvent>> pending = new ConcurrentHashMap<>();
+
+	/** Outbound side of the call */
+	private ClientCallStreamObserver<GStreamDeviceEventRequest> requests;
+
+	/** JWT attached when stream was opened */
+	private String jwt;
+
+	/** Indicates stream can no longer be used */
+	private volatile boolean closed = false;
+
+	/** Time stream was opened or last acknowledged an event */
+	private volatile long lastAckTime = System.currentTimeMillis();
+
+	public EventStream(DeviceEventManagementGrpc.DeviceEventManagementStub stub, String jwt) {
+	    this.jwt = jwt;
+	    stub.streamDeviceEvents(this);
+	}
+
+	/*
+	 * @see
+	 * io.grpc.stub.ClientResponseObserver#beforeStart(io.grpc.stub.
+	 * ClientCallStreamObserver)
+	 */
+	@Override
+	public void beforeStart(ClientCallStreamObserver<GStreamDeviceEventRequest> requestStream) {
+	    this.requests = requestStream;
+	    requestStream.setOnReadyHandler(new Runnable() {
+
+		@Override
+		public void run() {
+		    synchronized (EventStream.this) {
+			EventStream.this.notifyAll();
+		    }
+		}
+	    });
+	}
+
+	/**
+	 * Send a request on the stream, waiting until the transport is ready to
+	 * accept it.
+	 *
+	 * @param request
+	 * @param future
+	 * @throws SiteWhereException
+	 */
+	public synchronized void send(GStreamDeviceEventRequest request, CompletableFuture<IDeviceEvent> future)
+		throws SiteWhereException {
+	    while (!closed && !requests.isReady()) {
+		try {
+		    wait(READY_WAIT_MS);
+		} catch (InterruptedException e) {
+		    Thread.currentThread().interrupt();
+		    throw new SiteWhereException("Interrupted while waiting for device event stream.");
+		}
+	    }
+	    if (closed) {
+		throw new IllegalStateException("Device event stream is closed.");
+	    }
+	    pending.put(request.getSequence(), future);
+	    requests.onNext(request);
+	}
+
+	/**
+	 * Indicate no more requests will be sent.
+	 */
+	public synchronized void complete() {
+	    if (!closed) {
+		closed = true;
+		requests.onCompleted();
+	    }
+	}
+
+	/**
+	 * Cancel the call and fail any events that were not acknowledged.
+	 *
+	 * @param reason
+	 */
+	public void abort(String reason) {
+	    synchronized (this) {
+		if (!closed) {
+		    closed = true;
+		    requests.onError(Status.CANCELLED.withDescription(reason).asRuntimeException());
+		}
+	    }
+	    failPending(new StreamFailedException(reason));
+	}
+
+	/**
+	 * Fail an event that was not acknowledged in time. The stream is only
+	 * aborted if it has not acknowledged anything for the whole timeout.
+	 *
+	 * @param sequenceNumber
+	 */
+	public void expire(long sequenceNumber) {
+	    CompletableFuture<IDeviceEvent> future = pending.remove(sequenceNumber);
+	    if (future == null) {
+		return;
+	    }
+	    window.release();
+	    String reason = "Device event was not acknowledged within " + getAckTimeoutMs() + "ms.";
+	    future.completeExceptionally(new AckTimeoutException(reason));
+	    if ((System.currentTimeMillis() - lastAckTime) >= getAckTimeoutMs()) {
+		abort(reason);
+	    }
+	}
+
+	/*
+	 * @see io.grpc.stub.StreamObserver#onNext(java.lang.Object)
+	 */
+	@Override
+	public void onNext(GStreamDeviceEventResponse response) {
+	    lastAckTime = System.currentTimeMillis();
+	    CompletableFuture<IDeviceEvent> future = pending.remove(response.getSequence());
+	    if (future == null) {
+		// Late acknowledgement for an event that already timed out.
+		LOGGER.debug("Received acknowledgement for unknown event sequence " + response.getSequence() + ".");
+		return;
+	    }
+	    window.release();
+	    if (response.hasErrorMessage()) {
+		future.completeExceptionally(new SiteWhereException(response.getErrorMessage().getValue()));
+		return;
+	    }
+	    try {
+		future.complete(
+			response.hasEvent() ? EventModelConverter.asApiGenericDeviceEvent(response.getEvent()) : null);
+	    } catch (SiteWhereException e) {
+		future.completeExceptionally(e);
+	    }
+	}
+
+	/*
+	 * @see io.grpc.stub.StreamObserver#onError(java.lang.Throwable)
+	 */
+	@Override
+	public void onError(Throwable t) {
+	    LOGGER.warn("Device event stream failed with " + pending.size() + " unacknowledged events.", t);
+	    failPending(new StreamFailedException("Device event stream failed.", t));
+	}
+
+	/*
+	 * @see io.grpc.stub.StreamObserver#onCompleted()
+	 */
+	@Override
+	public void onCompleted() {
+	    failPending(new StreamFailedException("Device event stream closed before event was acknowledged."));
+	}
+
+	/**
+	 * Mark stream closed and fail any events that were not acknowledged.
+	 *
+	 * @param e
+	 */
+	protected void failPending(SiteWhereException e) {
+	    synchronized (this) {
+		closed = true;
+		notifyAll();
+	    }
+	    for (Long key : pending.keySet()) {
+		CompletableFuture<IDeviceEvent> future = pending.remove(key);
+		if (future != null) {
+		    window.release();
+		    future.completeExceptionally(e);
+		}
+	    }
+	}
+
+	/**
+	 * Indicates whether the stream was opened with the given credentials.
+	 *
+	 * @param jwt
+	 * @return
+	 */
+	public boolean isOpenedWith(String jwt) {
+	    return (this.jwt == null) ? (jwt == null) : this.jwt.equals(jwt);
+	}
+
+	public boolean isClosed() {
+	    return closed;
+	}
+    }
+
+    /** Used for naming writer threads */
+    private static class WriterThreadFactory implements ThreadFactory {
+
+	/** Thread name prefix */
+	private String prefix;
+
+	/** Counts threads */
+	private AtomicInteger counter = new AtomicInteger();
+
+	public WriterThreadFactory(String prefix) {
+	    this.prefix = prefix;
+	}
+
+	/*
+	 * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+	 */
+	@Override
+	public Thread newThread(Runnable r) {
+	    Thread thread = new Thread(r, prefix + " " + counter.incrementAndGet());
+	    thread.setDaemon(true);
+	    return thread;
+	}
+    }
+
+    public IDeviceEventManagementApiDemux getDemux() {
+	return demux;
+    }
+
+    public void setDemux(IDeviceEventManagementApiDemux demux) {
+	this.demux = demux;
+    }
+
+    public long getAckTimeoutMs() {
+	return ackTimeoutMs;
+    }
+
+    public void setAckTimeoutMs(long ackTimeoutMs) {
+	this.ackTimeoutMs = ackTimeoutMs;
+    }
+
+    public int getMaxAttempts() {
+	return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+	this.maxAttempts = maxAttempts;
+    }
+}
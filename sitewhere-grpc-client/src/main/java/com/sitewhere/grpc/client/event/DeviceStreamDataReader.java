@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.grpc.client.event;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+import com.sitewhere.grpc.client.GrpcUtils;
+import com.sitewhere.grpc.client.spi.client.IDeviceEventManagementApiChannel;
+import com.sitewhere.grpc.client.spi.client.IDeviceEventManagementApiDemux;
+import com.sitewhere.grpc.model.converter.DeviceModelConverter;
+import com.sitewhere.grpc.model.converter.EventModelConverter;
+import com.sitewhere.grpc.service.DeviceEventManagementGrpc;
+import com.sitewhere.grpc.service.DeviceEventManagementGrpc.DeviceEventManagementBlockingStub;
+import com.sitewhere.grpc.service.GReadStreamDataForAssignmentRequest;
+import com.sitewhere.grpc.service.GReadStreamDataForAssignmentResponse;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.event.IDeviceStreamData;
+
+import io.grpc.Context;
+
+/**
+ * Reads the data for a device stream one chunk at a time over a server
+ * streaming call. The header (chunk count, last sequence number and total size)
+ * is available as soon as the reader is opened and describes exactly the
+ * chunks returned by the same reader. Chunks are pulled
+ * from the call as they are consumed, so gRPC flow control keeps the server
+ * from reading ahead of the caller. The reader must be closed so that a
+ * partially consumed call is cancelled.
+ *
+ * @author Derek
+ */
+public class DeviceStreamDataReader implements Closeable {
+
+    /** Context used to cancel the call */
+    private Context.CancellableContext context;
+
+    /** Responses from the call */
+    private Iterator<GReadStreamDataForAssignmentResponse> responses;
+
+    /** Header response */
+    private GReadStreamDataForAssignmentResponse header;
+
+    /** Offset of the last chunk returned */
+    private long chunkOffset;
+
+    /**
+     * Open a reader for a stream.
+     *
+     * @param demux
+     * @param assignment
+     * @param streamId
+     * @param startOffset
+     *            chunks that end before this byte offset are skipped
+     * @param suffixLength
+     *            if greater than zero, start this many bytes before the end of
+     *            the stream instead of at the start offset
+     * @param headerOnly
+     *            only read the header
+     * @throws SiteWhereException
+     */
+    public DeviceStreamDataReader(IDeviceEventManagementApiDemux demux, IDeviceAssignment assignment,
+	    String streamId, long startOffset, long suffixLength, boolean headerOnly) throws SiteWhereException {
+	GReadStreamDataForAssignmentRequest.Builder grequest = GReadStreamDataForAssignmentRequest.newBuilder();
+	grequest.setAssignment(DeviceModelConverter.asGrpcDeviceAssignment(assignment));
+	grequest.setStreamId(streamId);
+	grequest.setStartOffset(startOffset);
+	grequest.setSuffixLength(suffixLength);
+	grequest.setHeaderOnly(headerOnly);
+
+	IDeviceEventManagementApiChannel channel = demux.getApiChannel();
+	this.context = Context.current().withCancellation();
+	Context previous = context.attach();
+	try {
+	    DeviceEventManagementBlockingStub stub = (DeviceEventManagementBlockingStub) channel.getGrpcChannel()
+		    .getBlockingStub();
+	    this.responses = stub.readStreamDataForAssignment(GrpcUtils.logGrpcClientRequest(
+		    DeviceEventManagementGrpc.METHOD_READ_STREAM_DATA_FOR_ASSIGNMENT, grequest.build()));
+	    this.header = responses.next();
+	} catch (Throwable t) {
+	    close();
+	    throw GrpcUtils
+		    .handleClientMethodException(DeviceEventManagementGrpc.METHOD_READ_STREAM_DATA_FOR_ASSIGNMENT, t);
+	} finally {
+	    context.detach(previous);
+	}
+    }
+
+    /**
+     * Create a reader over responses from a call that has already been made.
+     * The first response must be the header.
+     *
+     * @param responses
+     */
+    protected DeviceStreamDataReader(Iterator<GReadStreamDataForAssignmentResponse> responses) {
+	this.context = Context.current().withCancellation();
+	this.responses = responses;
+	this.header = responses.next();
+    }
+
+    /**
+     * Get the next chunk or null if all chunks have been read.
+     *
+     * @return
+     * @throws SiteWhereException
+     */
+    public IDeviceStreamData next() throws SiteWhereException {
+	try {
+	    while (responses.hasNext()) {
+		GReadStreamDataForAssignmentResponse response = responses.next();
+		if (response.hasStreamData()) {
+		    this.chunkOffset = response.getChunkOffset();
+		    return EventModelConverter.asApiDeviceStreamData(response.getStreamData());
+		}
+	    }
+	    return null;
+	} catch (Throwable t) {
+	    close();
+	    throw GrpcUtils
+		    .handleClientMethodException(DeviceEventManagementGrpc.METHOD_READ_STREAM_DATA_FOR_ASSIGNMENT, t);
+	}
+    }
+
+    /*
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() {
+	context.cancel(null);
+    }
+
+    /**
+     * Get number of chunks in the stream.
+     *
+     * @return
+     */
+    public long getChunkCount() {
+	return header.getChunkCount();
+    }
+
+    /**
+     * Get sequence number of the last chunk in the stream.
+     *
+     * @return
+     */
+    public long getLastSequenceNumber() {
+	return header.getLastSequenceNumber();
+    }
+
+    /**
+     * Get total size of the stream in bytes.
+     *
+     * @return
+     */
+    public long getTotalSize() {
+	return header.getTotalSize();
+    }
+
+    /**
+     * Get byte offset within the stream of the last chunk returned by
+     * {@link #next()}.
+     *
+     * @return
+     */
+    public long getChunkOffset() {
+	return chunkOffset;
+    }
+}
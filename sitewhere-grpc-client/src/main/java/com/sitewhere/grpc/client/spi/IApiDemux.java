@@ -8,8 +8,10 @@
 package com.sitewhere.grpc.client.spi;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import com.sitewhere.grpc.client.ApiChannel;
+import com.sitewhere.grpc.client.ApiChannelNotAvailableException;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.microservice.IMicroservice;
 import com.sitewhere.spi.server.lifecycle.ITenantEngineLifecycleComponent;
@@ -52,12 +54,24 @@ public interface IApiDemux<T extends IApiChannel> extends ITenantEngineLifecycle
     public T getApiChannel();
 
     /**
-     * Wait for an API channel to become available.
+     * Wait for an API channel to become available. Blocks until one is
+     * available, however long that takes.
      * 
      * @return
      */
     public T waitForApiChannel();
 
+    /**
+     * Wait up to the given duration for an API channel to become available.
+     * Throws {@link ApiChannelNotAvailableException} if none is available before
+     * the timeout expires.
+     * 
+     * @param duration
+     * @param unit
+     * @return
+     */
+    public T waitForApiChannel(long duration, TimeUnit unit);
+
     /**
      * Create an API channel to the given host.
      * 
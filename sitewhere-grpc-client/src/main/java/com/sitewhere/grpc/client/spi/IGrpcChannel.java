@@ -7,6 +7,7 @@
  */
 package com.sitewhere.grpc.client.spi;
 
+import com.sitewhere.grpc.client.ChannelStatisticsInterceptor;
 import com.sitewhere.spi.server.lifecycle.ITenantEngineLifecycleComponent;
 import com.sitewhere.spi.tracing.ITracerProvider;
 
@@ -29,6 +30,13 @@ public interface IGrpcChannel<B, A> extends ITenantEngineLifecycleComponent, ITr
      */
     public ManagedChannel getChannel();
 
+    /**
+     * Get statistics collected for calls made on the channel.
+     * 
+     * @return
+     */
+    public ChannelStatisticsInterceptor getStatistics();
+
     /**
      * Create blocking version of stub.
      * 
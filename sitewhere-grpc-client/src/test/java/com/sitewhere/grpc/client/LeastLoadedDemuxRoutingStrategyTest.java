@@ -0,0 +1,420 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.grpc.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sitewhere.spi.tracing.ITracerProvider;
+
+import io.grpc.CallOptions;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ClientCalls;
+import io.grpc.stub.ServerCalls;
+import io.grpc.stub.StreamObserver;
+
+public class LeastLoadedDemuxRoutingStrategyTest {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** In-process server name */
+    private static final String SERVER_NAME = "routing-test";
+
+    /** Unary method that echoes a string */
+    private static final MethodDescriptor<String, String> ECHO = MethodDescriptor.<String, String> newBuilder()
+	    .setType(MethodDescriptor.MethodType.UNARY)
+	    .setFullMethodName(MethodDescriptor.generateFullMethodName("test.Echo", "Echo"))
+	    .setRequestMarshaller(new StringMarshaller()).setResponseMarshaller(new StringMarshaller()).build();
+
+    /** Bidirectional streaming method that echoes each message */
+    private static final MethodDescriptor<String, String> ECHO_STREAM = MethodDescriptor.<String, String> newBuilder()
+	    .setType(MethodDescriptor.MethodType.BIDI_STREAMING)
+	    .setFullMethodName(MethodDescriptor.generateFullMethodName("test.Echo", "EchoStream"))
+	    .setRequestMarshaller(new StringMarshaller()).setResponseMarshaller(new StringMarshaller()).build();
+
+    /** Indicates whether server should fail calls as unavailable */
+    private AtomicBoolean failing = new AtomicBoolean();
+
+    /** In-process server */
+    private Server server;
+
+    /** Channels created by test */
+    private List<ManagedChannel> channels = new ArrayList<ManagedChannel>();
+
+    @Before
+    public void setUp() throws IOException {
+	ServerServiceDefinition service = ServerServiceDefinition.builder("test.Echo")
+		.addMethod(ECHO, ServerCalls.asyncUnaryCall(new ServerCalls.UnaryMethod<String, String>() {
+
+		    @Override
+		    public void invoke(String request, StreamObserver<String> responseObserver) {
+			if (failing.get()) {
+			    responseObserver.onError(Status.UNAVAILABLE.asRuntimeException());
+			} else {
+			    responseObserver.onNext(request);
+			    responseObserver.onCompleted();
+			}
+		    }
+		})).addMethod(ECHO_STREAM, ServerCalls.asyncBidiStreamingCall(new EchoStreamMethod())).build();
+	server = InProcessServerBuilder.forName(SERVER_NAME).directExecutor().addService(service).build().start();
+    }
+
+    @After
+    public void tearDown() {
+	for (ManagedChannel channel : channels) {
+	    channel.shutdownNow();
+	}
+	server.shutdownNow();
+    }
+
+    @Test
+    public void testEjectedAfterConsecutiveFailures() {
+	TestGrpcChannel grpc = createChannel(3, 60 * 1000);
+	failing.set(true);
+	call(grpc, 2);
+	assertFalse(grpc.getStatistics().isEjected());
+	assertEquals(2, grpc.getStatistics().getConsecutiveFailures());
+	call(grpc, 1);
+	assertTrue(grpc.getStatistics().isEjected());
+    }
+
+    @Test
+    public void testSuccessResetsFailures() {
+	TestGrpcChannel grpc = createChannel(3, 60 * 1000);
+	failing.set(true);
+	call(grpc, 2);
+	failing.set(false);
+	call(grpc, 1);
+	assertEquals(0, grpc.getStatistics().getConsecutiveFailures());
+	failing.set(true);
+	call(grpc, 2);
+	assertFalse(grpc.getStatistics().isEjected());
+    }
+
+    @Test
+    public void testRecoveredChannelNeedsFullThreshold() throws InterruptedException {
+	TestGrpcChannel grpc = createChannel(3, 50);
+	failing.set(true);
+	call(grpc, 3);
+	assertTrue(grpc.getStatistics().isEjected());
+	assertEquals(0, grpc.getStatistics().getConsecutiveFailures());
+	Thread.sleep(100);
+	assertFalse(grpc.getStatistics().isEjected());
+	call(grpc, 1);
+	assertFalse(grpc.getStatistics().isEjected());
+	call(grpc, 2);
+	assertTrue(grpc.getStatistics().isEjected());
+    }
+
+    @Test
+    public void testEjectedChannelSkipped() {
+	TestGrpcChannel bad = createChannel(2, 60 * 1000);
+	TestGrpcChannel good = createChannel(2, 60 * 1000);
+	failing.set(true);
+	call(bad, 2);
+	failing.set(false);
+	call(good, 1);
+
+	LeastLoadedDemuxRoutingStrategy<TestApiChannel> strategy = new LeastLoadedDemuxRoutingStrategy<TestApiChannel>();
+	List<TestApiChannel> apis = Arrays.asList(new TestApiChannel(bad), new TestApiChannel(good));
+	for (int i = 0; i < 10; i++) {
+	    assertSame(good, strategy.chooseApiChannel(apis).getGrpcChannel());
+	}
+    }
+
+    @Test
+    public void testFallbackWhenAllEjected() {
+	TestGrpcChannel first = createChannel(1, 60 * 1000);
+	TestGrpcChannel second = createChannel(1, 60 * 1000);
+	failing.set(true);
+	call(first, 1);
+	call(second, 1);
+
+	LeastLoadedDemuxRoutingStrategy<TestApiChannel> strategy = new LeastLoadedDemuxRoutingStrategy<TestApiChannel>();
+	List<TestApiChannel> apis = Arrays.asList(new TestApiChannel(first), new TestApiChannel(second));
+	TestGrpcChannel chosen = strategy.chooseApiChannel(apis).getGrpcChannel();
+	assertTrue((chosen == first) || (chosen == second));
+    }
+
+    @Test
+    public void testLowerLatencyPreferred() {
+	TestGrpcChannel slow = createChannel(5, 60 * 1000);
+	TestGrpcChannel fast = createChannel(5, 60 * 1000);
+	slow.getStatistics().recordLatency(TimeUnit.MILLISECONDS.toNanos(50));
+	fast.getStatistics().recordLatency(TimeUnit.MILLISECONDS.toNanos(1));
+
+	LeastLoadedDemuxRoutingStrategy<TestApiChannel> strategy = new LeastLoadedDemuxRoutingStrategy<TestApiChannel>();
+	List<TestApiChannel> apis = Arrays.asList(new TestApiChannel(slow), new TestApiChannel(fast));
+	for (int i = 0; i < 10; i++) {
+	    assertSame(fast, strategy.chooseApiChannel(apis).getGrpcChannel());
+	}
+    }
+
+    @Test(expected = ApiChannelNotAvailableException.class)
+    public void testNoUsableChannel() {
+	LeastLoadedDemuxRoutingStrategy<TestApiChannel> strategy = new LeastLoadedDemuxRoutingStrategy<TestApiChannel>();
+	strategy.chooseApiChannel(Arrays.asList(new TestApiChannel(null), new TestApiChannel(null)));
+    }
+
+    @Test
+    public void testWaitForUnusableChannelIsBounded() {
+	TestApiDemux demux = new TestApiDemux();
+	demux.getApiChannels().add(new TestApiChannel(null));
+	long start = System.currentTimeMillis();
+	try {
+	    demux.waitForApiChannel(500, TimeUnit.MILLISECONDS);
+	    fail("Expected no channel to be available.");
+	} catch (ApiChannelNotAvailableException e) {
+	    long elapsed = System.currentTimeMillis() - start;
+	    assertTrue(elapsed >= 500);
+	    assertTrue(elapsed < 5000);
+	}
+    }
+
+    @Test
+    public void testStreamingCallsNotTracked() {
+	TestGrpcChannel grpc = createChannel(3, 60 * 1000);
+	List<String> received = new ArrayList<String>();
+	StreamObserver<String> requests = ClientCalls.asyncBidiStreamingCall(
+		grpc.getChannel().newCall(ECHO_STREAM, CallOptions.DEFAULT), new StreamObserver<String>() {
+
+		    @Override
+		    public void onNext(String value) {
+			received.add(value);
+		    }
+
+		    @Override
+		    public void onError(Throwable t) {
+		    }
+
+		    @Override
+		    public void onCompleted() {
+		    }
+		});
+	requests.onNext("ping");
+	assertEquals(Arrays.asList("ping"), received);
+	assertEquals(0, grpc.getStatistics().getOutstandingRequests());
+	requests.onCompleted();
+	assertEquals(0, grpc.getStatistics().getOutstandingRequests());
+	assertEquals(0.0, grpc.getStatistics().getAverageLatency(TimeUnit.NANOSECONDS), 0.0);
+    }
+
+    @Test
+    public void testWaitWithoutTimeoutIsUnbounded() throws Exception {
+	TestApiDemux demux = new TestApiDemux();
+	demux.getApiChannels().add(new TestApiChannel(null));
+	CompletableFuture<TestApiChannel> waiter = CompletableFuture.supplyAsync(() -> demux.waitForApiChannel());
+	Thread.sleep(500);
+	assertFalse(waiter.isDone());
+
+	TestApiChannel usable = new TestApiChannel(createChannel(3, 60 * 1000));
+	demux.addApiChannel(usable);
+	assertSame(usable, waiter.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Create a channel connected to the in-process server that records
+     * statistics.
+     *
+     * @param failureThreshold
+     * @param ejectionIntervalMs
+     * @return
+     */
+    protected TestGrpcChannel createChannel(int failureThreshold, long ejectionIntervalMs) {
+	TestGrpcChannel grpc = new TestGrpcChannel();
+	grpc.getStatistics().setFailureThreshold(failureThreshold);
+	grpc.getStatistics().setEjectionIntervalMs(ejectionIntervalMs);
+	ManagedChannel channel = InProcessChannelBuilder.forName(SERVER_NAME).directExecutor()
+		.intercept(grpc.getStatistics()).build();
+	channels.add(channel);
+	grpc.setChannel(channel);
+	return grpc;
+    }
+
+    /**
+     * Make a number of calls on a channel, ignoring failures.
+     *
+     * @param grpc
+     * @param count
+     */
+    protected void call(TestGrpcChannel grpc, int count) {
+	for (int i = 0; i < count; i++) {
+	    try {
+		ClientCalls.blockingUnaryCall(grpc.getChannel(), ECHO, CallOptions.DEFAULT, "ping");
+	    } catch (StatusRuntimeException e) {
+		// Expected when server is failing calls.
+	    }
+	}
+    }
+
+    /**
+     * GRPC channel wrapper around an in-process channel.
+     */
+    protected static class TestGrpcChannel extends GrpcChannel<Object, Object> {
+
+	public TestGrpcChannel() {
+	    super(new ITracerProvider() {
+
+		@Override
+		public io.opentracing.Tracer getTracer() {
+		    return null;
+		}
+	    }, "localhost", 0);
+	}
+
+	@Override
+	public Object createBlockingStub() {
+	    return null;
+	}
+
+	@Override
+	public Object createAsyncStub() {
+	    return null;
+	}
+
+	@Override
+	public Logger getLogger() {
+	    return LOGGER;
+	}
+    }
+
+    /**
+     * API channel that wraps an existing GRPC channel.
+     */
+    protected static class TestApiChannel extends ApiChannel<TestGrpcChannel> {
+
+	/** Wrapped channel */
+	private TestGrpcChannel grpc;
+
+	public TestApiChannel(TestGrpcChannel grpc) {
+	    super(null, null, "localhost", 0);
+	    this.grpc = grpc;
+	}
+
+	@Override
+	public TestGrpcChannel createGrpcChannel(ITracerProvider tracerProvider, String host, int port) {
+	    return grpc;
+	}
+
+	@Override
+	public TestGrpcChannel getGrpcChannel() {
+	    return grpc;
+	}
+
+	@Override
+	public Logger getLogger() {
+	    return LOGGER;
+	}
+    }
+
+    /**
+     * Demux that routes across manually added channels.
+     */
+    protected static class TestApiDemux extends ApiDemux<TestApiChannel> {
+
+	public TestApiDemux() {
+	    super(null);
+	}
+
+	@Override
+	public String getTargetIdentifier() {
+	    return "test";
+	}
+
+	@Override
+	public TestApiChannel createApiChannel(String host) {
+	    return new TestApiChannel(null);
+	}
+
+	@Override
+	public Logger getLogger() {
+	    return LOGGER;
+	}
+    }
+
+    /**
+     * Streaming method that echoes each message back to the client.
+     */
+    protected static class EchoStreamMethod implements ServerCalls.BidiStreamingMethod<String, String> {
+
+	@Override
+	public StreamObserver<String> invoke(StreamObserver<String> responseObserver) {
+	    return new StreamObserver<String>() {
+
+		@Override
+		public void onNext(String value) {
+		    responseObserver.onNext(value);
+		}
+
+		@Override
+		public void onError(Throwable t) {
+		}
+
+		@Override
+		public void onCompleted() {
+		    responseObserver.onCompleted();
+		}
+	    };
+	}
+    }
+
+    /**
+     * Marshals strings as UTF-8 bytes.
+     */
+    protected static class StringMarshaller implements MethodDescriptor.Marshaller<String> {
+
+	@Override
+	public InputStream stream(String value) {
+	    return new ByteArrayInputStream(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public String parse(InputStream stream) {
+	    try {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[256];
+		int read;
+		while ((read = stream.read(buffer)) != -1) {
+		    out.write(buffer, 0, read);
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	    } catch (IOException e) {
+		throw new RuntimeException(e);
+	    }
+	}
+    }
+}
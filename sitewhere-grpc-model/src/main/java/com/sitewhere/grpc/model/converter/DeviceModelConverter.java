@@ -29,6 +29,9 @@ import com.sitewhere.grpc.model.DeviceModel.GDeviceAssignmentCreateRequest;
 import com.sitewhere.grpc.model.DeviceModel.GDeviceAssignmentHistoryCriteria;
 import com.sitewhere.grpc.model.DeviceModel.GDeviceAssignmentSearchCriteria;
 import com.sitewhere.grpc.model.DeviceModel.GDeviceAssignmentSearchResults;
+import com.sitewhere.grpc.model.DeviceModel.GDeviceBulkCreateError;
+import com.sitewhere.grpc.model.DeviceModel.GDeviceBulkCreateRequest;
+import com.sitewhere.grpc.model.DeviceModel.GDeviceBulkCreateResponse;
 import com.sitewhere.grpc.model.DeviceModel.GDeviceCommand;
 import com.sitewhere.grpc.model.DeviceModel.GDeviceCommandCreateRequest;
 import com.sitewhere.grpc.model.DeviceModel.GDeviceCommandSearchCriteria;
@@ -71,6 +74,8 @@ import com.sitewhere.grpc.model.DeviceModel.GZoneSearchCriteria;
 import com.sitewhere.grpc.model.DeviceModel.GZoneSearchResults;
 import com.sitewhere.rest.model.device.Device;
 import com.sitewhere.rest.model.device.DeviceAssignment;
+import com.sitewhere.rest.model.device.DeviceBulkCreateError;
+import com.sitewhere.rest.model.device.DeviceBulkCreateResponse;
 import com.sitewhere.rest.model.device.DeviceElementMapping;
 import com.sitewhere.rest.model.device.DeviceStatus;
 import com.sitewhere.rest.model.device.DeviceType;
@@ -85,6 +90,7 @@ import com.sitewhere.rest.model.device.element.DeviceUnit;
 import com.sitewhere.rest.model.device.group.DeviceGroup;
 import com.sitewhere.rest.model.device.group.DeviceGroupElement;
 import com.sitewhere.rest.model.device.request.DeviceAssignmentCreateRequest;
+import com.sitewhere.rest.model.device.request.DeviceBulkCreateRequest;
 import com.sitewhere.rest.model.device.request.DeviceCommandCreateRequest;
 import com.sitewhere.rest.model.device.request.DeviceCreateRequest;
 import com.sitewhere.rest.model.device.request.DeviceGroupCreateRequest;
@@ -105,6 +111,8 @@ import com.sitewhere.spi.device.DeviceAssignmentType;
 import com.sitewhere.spi.device.DeviceContainerPolicy;
 import com.sitewhere.spi.device.IDevice;
 import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceBulkCreateError;
+import com.sitewhere.spi.device.IDeviceBulkCreateResponse;
 import com.sitewhere.spi.device.IDeviceElementMapping;
 import com.sitewhere.spi.device.IDeviceStatus;
 import com.sitewhere.spi.device.IDeviceType;
@@ -122,6 +130,7 @@ import com.sitewhere.spi.device.group.GroupElementType;
 import com.sitewhere.spi.device.group.IDeviceGroup;
 import com.sitewhere.spi.device.group.IDeviceGroupElement;
 import com.sitewhere.spi.device.request.IDeviceAssignmentCreateRequest;
+import com.sitewhere.spi.device.request.IDeviceBulkCreateRequest;
 import com.sitewhere.spi.device.request.IDeviceCommandCreateRequest;
 import com.sitewhere.spi.device.request.IDeviceCreateRequest;
 import com.sitewhere.spi.device.request.IDeviceGroupCreateRequest;
@@ -975,6 +984,98 @@ public class DeviceModelConverter {
 	return grpc.build();
     }
 
+    /**
+     * Convert device bulk create request from GRPC to API.
+     * 
+     * @param grpc
+     * @return
+     * @throws SiteWhereException
+     */
+    public static DeviceBulkCreateRequest asApiDeviceBulkCreateRequest(GDeviceBulkCreateRequest grpc)
+	    throws SiteWhereException {
+	DeviceBulkCreateRequest api = new DeviceBulkCreateRequest();
+	List<DeviceCreateRequest> devices = new ArrayList<DeviceCreateRequest>();
+	for (GDeviceCreateRequest device : grpc.getDevicesList()) {
+	    devices.add(DeviceModelConverter.asApiDeviceCreateRequest(device));
+	}
+	api.setDevices(devices);
+	api.setUpdateExisting(grpc.getUpdateExisting());
+	if (grpc.hasAssignmentTemplate()) {
+	    api.setAssignmentTemplate(
+		    DeviceModelConverter.asApiDeviceAssignmentCreateRequest(grpc.getAssignmentTemplate()));
+	}
+	return api;
+    }
+
+    /**
+     * Convert device bulk create request from API to GRPC.
+     * 
+     * @param api
+     * @return
+     * @throws SiteWhereException
+     */
+    public static GDeviceBulkCreateRequest asGrpcDeviceBulkCreateRequest(IDeviceBulkCreateRequest api)
+	    throws SiteWhereException {
+	GDeviceBulkCreateRequest.Builder grpc = GDeviceBulkCreateRequest.newBuilder();
+	for (IDeviceCreateRequest device : api.getDevices()) {
+	    grpc.addDevices(DeviceModelConverter.asGrpcDeviceCreateRequest(device));
+	}
+	grpc.setUpdateExisting(api.isUpdateExisting());
+	if (api.getAssignmentTemplate() != null) {
+	    grpc.setAssignmentTemplate(
+		    DeviceModelConverter.asGrpcDeviceAssignmentCreateRequest(api.getAssignmentTemplate()));
+	}
+	return grpc.build();
+    }
+
+    /**
+     * Convert device bulk create response from GRPC to API.
+     * 
+     * @param grpc
+     * @return
+     * @throws SiteWhereException
+     */
+    public static DeviceBulkCreateResponse asApiDeviceBulkCreateResponse(GDeviceBulkCreateResponse grpc)
+	    throws SiteWhereException {
+	DeviceBulkCreateResponse api = new DeviceBulkCreateResponse();
+	api.setCreatedCount(grpc.getCreatedCount());
+	api.setUpdatedCount(grpc.getUpdatedCount());
+	api.setAssignmentsCreated(grpc.getAssignmentsCreated());
+	List<DeviceBulkCreateError> errors = new ArrayList<DeviceBulkCreateError>();
+	for (GDeviceBulkCreateError error : grpc.getErrorsList()) {
+	    errors.add(new DeviceBulkCreateError(error.getIndex(), error.getHardwareId(), error.getMessage()));
+	}
+	api.setErrors(errors);
+	return api;
+    }
+
+    /**
+     * Convert device bulk create response from API to GRPC.
+     * 
+     * @param api
+     * @return
+     * @throws SiteWhereException
+     */
+    public static GDeviceBulkCreateResponse asGrpcDeviceBulkCreateResponse(IDeviceBulkCreateResponse api)
+	    throws SiteWhereException {
+	GDeviceBulkCreateResponse.Builder grpc = GDeviceBulkCreateResponse.newBuilder();
+	grpc.setCreatedCount(api.getCreatedCount());
+	grpc.setUpdatedCount(api.getUpdatedCount());
+	grpc.setAssignmentsCreated(api.getAssignmentsCreated());
+	for (IDeviceBulkCreateError error : api.getErrors()) {
+	    GDeviceBulkCreateError.Builder gerror = GDeviceBulkCreateError.newBuilder();
+	    gerror.setIndex(error.getIndex());
+	    if (error.getHardwareId() != null) {
+		gerror.setHardwareId(error.getHardwareId());
+	    }
+	    if (error.getMessage() != null) {
+		gerror.setMessage(error.getMessage());
+	    }
+	    grpc.addErrors(gerror.build());
+	}
+	return grpc.build();
+    }
+
     /**
      * Convert device from GRPC to API.
      * 
@@ -1051,6 +1152,7 @@ public class DeviceModelConverter {
 	api.setExcludeAssigned(grpc.hasExcludeAssigned() ? grpc.getExcludeAssigned().getValue() : false);
 	api.setDeviceTypeToken(grpc.hasDeviceType() ? grpc.getDeviceType().getToken() : null);
 	api.setSiteToken(grpc.hasSite() ? grpc.getSite().getToken() : null);
+	api.setHardwareIds(new ArrayList<String>(grpc.getHardwareIdsList()));
 	return api;
     }
 
@@ -1080,6 +1182,9 @@ public class DeviceModelConverter {
 	if (api.isExcludeAssigned()) {
 	    grpc.setExcludeAssigned(GOptionalBoolean.newBuilder().setValue(true));
 	}
+	if (api.getHardwareIds() != null) {
+	    grpc.addAllHardwareIds(api.getHardwareIds());
+	}
 	return grpc.build();
     }
 
@@ -1562,8 +1667,12 @@ public class DeviceModelConverter {
 	    grpc.setToken(GOptionalString.newBuilder().setValue(api.getToken()));
 	}
 	grpc.setAssignmentType(DeviceModelConverter.asGrpcDeviceAssignmentType(api.getAssignmentType()));
-	grpc.setDeviceHardwareId(api.getDeviceHardwareId());
-	grpc.setAssetReference(AssetModelConverter.asGrpcAssetReference(api.getAssetReference()));
+	if (api.getDeviceHardwareId() != null) {
+	    grpc.setDeviceHardwareId(api.getDeviceHardwareId());
+	}
+	if (api.getAssetReference() != null) {
+	    grpc.setAssetReference(AssetModelConverter.asGrpcAssetReference(api.getAssetReference()));
+	}
 	if (api.getMetadata() != null) {
 	    grpc.putAllMetadata(api.getMetadata());
 	}
@@ -8,6 +8,7 @@
 package com.sitewhere.grpc.model.converter;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 
 import com.google.protobuf.ByteString;
@@ -26,6 +27,8 @@ import com.sitewhere.grpc.model.DeviceEventModel.GAnyDeviceEventCreateRequest;
 import com.sitewhere.grpc.model.DeviceEventModel.GDeviceAlert;
 import com.sitewhere.grpc.model.DeviceEventModel.GDeviceAlertCreateRequest;
 import com.sitewhere.grpc.model.DeviceEventModel.GDeviceAlertSearchResults;
+import com.sitewhere.grpc.model.DeviceEventModel.GDeviceAssignmentState;
+import com.sitewhere.grpc.model.DeviceEventModel.GDeviceAssignmentStateSearchResults;
 import com.sitewhere.grpc.model.DeviceEventModel.GDeviceCommandInvocation;
 import com.sitewhere.grpc.model.DeviceEventModel.GDeviceCommandInvocationCreateRequest;
 import com.sitewhere.grpc.model.DeviceEventModel.GDeviceCommandInvocationSearchResults;
@@ -43,6 +46,7 @@ import com.sitewhere.grpc.model.DeviceEventModel.GDeviceEventType;
 import com.sitewhere.grpc.model.DeviceEventModel.GDeviceLocation;
 import com.sitewhere.grpc.model.DeviceEventModel.GDeviceLocationCreateRequest;
 import com.sitewhere.grpc.model.DeviceEventModel.GDeviceLocationSearchResults;
+import com.sitewhere.grpc.model.DeviceEventModel.GDeviceMeasurement;
 import com.sitewhere.grpc.model.DeviceEventModel.GDeviceMeasurements;
 import com.sitewhere.grpc.model.DeviceEventModel.GDeviceMeasurementsCreateRequest;
 import com.sitewhere.grpc.model.DeviceEventModel.GDeviceMeasurementsSearchResults;
@@ -52,6 +56,7 @@ import com.sitewhere.grpc.model.DeviceEventModel.GDeviceStateChangeSearchResults
 import com.sitewhere.grpc.model.DeviceEventModel.GDeviceStreamData;
 import com.sitewhere.grpc.model.DeviceEventModel.GDeviceStreamDataCreateRequest;
 import com.sitewhere.grpc.model.DeviceEventModel.GDeviceStreamDataSearchResults;
+import com.sitewhere.rest.model.device.DeviceAssignmentState;
 import com.sitewhere.rest.model.device.event.DeviceAlert;
 import com.sitewhere.rest.model.device.event.DeviceCommandInvocation;
 import com.sitewhere.rest.model.device.event.DeviceCommandResponse;
@@ -60,6 +65,7 @@ import com.sitewhere.rest.model.device.event.DeviceEventBatch;
 import com.sitewhere.rest.model.device.event.DeviceEventBatchResponse;
 import com.sitewhere.rest.model.device.event.DeviceEventContext;
 import com.sitewhere.rest.model.device.event.DeviceLocation;
+import com.sitewhere.rest.model.device.event.DeviceMeasurement;
 import com.sitewhere.rest.model.device.event.DeviceMeasurements;
 import com.sitewhere.rest.model.device.event.DeviceStateChange;
 import com.sitewhere.rest.model.device.event.DeviceStreamData;
@@ -73,6 +79,7 @@ import com.sitewhere.rest.model.device.event.request.DeviceStateChangeCreateRequ
 import com.sitewhere.rest.model.device.event.request.DeviceStreamDataCreateRequest;
 import com.sitewhere.rest.model.search.SearchResults;
 import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.IDeviceAssignmentState;
 import com.sitewhere.spi.device.event.AlertLevel;
 import com.sitewhere.spi.device.event.AlertSource;
 import com.sitewhere.spi.device.event.CommandInitiator;
@@ -87,6 +94,7 @@ import com.sitewhere.spi.device.event.IDeviceEventBatch;
 import com.sitewhere.spi.device.event.IDeviceEventBatchResponse;
 import com.sitewhere.spi.device.event.IDeviceEventContext;
 import com.sitewhere.spi.device.event.IDeviceLocation;
+import com.sitewhere.spi.device.event.IDeviceMeasurement;
 import com.sitewhere.spi.device.event.IDeviceMeasurements;
 import com.sitewhere.spi.device.event.IDeviceStateChange;
 import com.sitewhere.spi.device.event.IDeviceStreamData;
@@ -1515,6 +1523,7 @@ public class EventModelConverter {
 	DeviceStateChangeCreateRequest api = new DeviceStateChangeCreateRequest(
 		EventModelConverter.asApiStateChangeCategory(grpc.getCategory()),
 		EventModelConverter.asApiStateChangeType(grpc.getType()), grpc.getPreviousState(), grpc.getNewState());
+	api.setData(new HashMap<String, String>(grpc.getDataMap()));
 	EventModelConverter.copyApiDeviceEventCreateRequest(grpc.getEvent(), api);
 	return api;
     }
@@ -1533,6 +1542,9 @@ public class EventModelConverter {
 	grpc.setType(EventModelConverter.asGrpcStateChangeType(api.getType()));
 	grpc.setPreviousState(api.getPreviousState());
 	grpc.setNewState(api.getNewState());
+	if (api.getData() != null) {
+	    grpc.putAllData(api.getData());
+	}
 	grpc.setEvent(EventModelConverter.createGrpcDeviceEventCreateRequest(api));
 	return grpc.build();
     }
@@ -1651,6 +1663,109 @@ public class EventModelConverter {
 	return grpcs;
     }
 
+    /**
+     * Convert single device measurement from GRPC to API.
+     * 
+     * @param grpc
+     * @return
+     * @throws SiteWhereException
+     */
+    public static DeviceMeasurement asApiDeviceMeasurement(GDeviceMeasurement grpc) throws SiteWhereException {
+	DeviceMeasurement api = new DeviceMeasurement();
+	api.setName(grpc.getName());
+	api.setValue(grpc.getValue());
+	EventModelConverter.copyApiDeviceEvent(grpc.getEvent(), api);
+	return api;
+    }
+
+    /**
+     * Convert single device measurement from API to GRPC.
+     * 
+     * @param api
+     * @return
+     * @throws SiteWhereException
+     */
+    public static GDeviceMeasurement asGrpcDeviceMeasurement(IDeviceMeasurement api) throws SiteWhereException {
+	GDeviceMeasurement.Builder grpc = GDeviceMeasurement.newBuilder();
+	grpc.setName(api.getName());
+	grpc.setValue(api.getValue());
+	grpc.setEvent(EventModelConverter.createGrpcDeviceEvent(api));
+	return grpc.build();
+    }
+
+    /**
+     * Convert device assignment state from GRPC to API.
+     * 
+     * @param grpc
+     * @return
+     * @throws SiteWhereException
+     */
+    public static DeviceAssignmentState asApiDeviceAssignmentState(GDeviceAssignmentState grpc)
+	    throws SiteWhereException {
+	DeviceAssignmentState api = new DeviceAssignmentState();
+	api.setDeviceAssignmentId(CommonModelConverter.asApiUuid(grpc.getDeviceAssignmentId()));
+	api.setSiteId(grpc.hasSiteId() ? CommonModelConverter.asApiUuid(grpc.getSiteId()) : null);
+	api.setLastInteractionDate(
+		grpc.hasLastInteractionDate() ? CommonModelConverter.asDate(grpc.getLastInteractionDate()) : null);
+	api.setPresenceMissingDate(
+		grpc.hasPresenceMissingDate() ? CommonModelConverter.asDate(grpc.getPresenceMissingDate()) : null);
+	api.setLastLocation(
+		grpc.hasLastLocation() ? EventModelConverter.asApiDeviceLocation(grpc.getLastLocation()) : null);
+	List<DeviceMeasurement> measurements = new ArrayList<DeviceMeasurement>();
+	for (GDeviceMeasurement gmx : grpc.getLatestMeasurementsList()) {
+	    measurements.add(EventModelConverter.asApiDeviceMeasurement(gmx));
+	}
+	api.setLatestMeasurements(measurements);
+	api.setLatestAlerts(EventModelConverter.asApiDeviceAlerts(grpc.getLatestAlertsList()));
+	return api;
+    }
+
+    /**
+     * Convert device assignment state from API to GRPC.
+     * 
+     * @param api
+     * @return
+     * @throws SiteWhereException
+     */
+    public static GDeviceAssignmentState asGrpcDeviceAssignmentState(IDeviceAssignmentState api)
+	    throws SiteWhereException {
+	GDeviceAssignmentState.Builder grpc = GDeviceAssignmentState.newBuilder();
+	grpc.setDeviceAssignmentId(CommonModelConverter.asGrpcUuid(api.getDeviceAssignmentId()));
+	if (api.getSiteId() != null) {
+	    grpc.setSiteId(CommonModelConverter.asGrpcUuid(api.getSiteId()));
+	}
+	if (api.getLastInteractionDate() != null) {
+	    grpc.setLastInteractionDate(CommonModelConverter.asGrpcTimestamp(api.getLastInteractionDate()));
+	}
+	if (api.getPresenceMissingDate() != null) {
+	    grpc.setPresenceMissingDate(CommonModelConverter.asGrpcTimestamp(api.getPresenceMissingDate()));
+	}
+	if (api.getLastLocation() != null) {
+	    grpc.setLastLocation(EventModelConverter.asGrpcDeviceLocation(api.getLastLocation()));
+	}
+	for (IDeviceMeasurement mx : api.getLatestMeasurements()) {
+	    grpc.addLatestMeasurements(EventModelConverter.asGrpcDeviceMeasurement(mx));
+	}
+	grpc.addAllLatestAlerts(EventModelConverter.asGrpcDeviceAlerts(api.getLatestAlerts()));
+	return grpc.build();
+    }
+
+    /**
+     * Convert device assignment state search results from GRPC to API.
+     * 
+     * @param response
+     * @return
+     * @throws SiteWhereException
+     */
+    public static ISearchResults<IDeviceAssignmentState> asApiDeviceAssignmentStateSearchResults(
+	    GDeviceAssignmentStateSearchResults response) throws SiteWhereException {
+	List<IDeviceAssignmentState> results = new ArrayList<IDeviceAssignmentState>();
+	for (GDeviceAssignmentState grpc : response.getStatesList()) {
+	    results.add(EventModelConverter.asApiDeviceAssignmentState(grpc));
+	}
+	return new SearchResults<IDeviceAssignmentState>(results, response.getCount());
+    }
+
     /**
      * Convert device event batch from GRPC to API.
      * 
@@ -1841,6 +1956,44 @@ public class EventModelConverter {
 	throw new SiteWhereException("Unable to convert event to API. " + grpc.getEventCase().toString());
     }
 
+    /**
+     * Get the common event information from a generic GRPC event without
+     * converting the rest of the event to the API model.
+     * 
+     * @param grpc
+     * @return
+     * @throws SiteWhereException
+     */
+    public static GDeviceEvent getGrpcDeviceEventCommon(GAnyDeviceEvent grpc) throws SiteWhereException {
+	switch (grpc.getEventCase()) {
+	case ALERT: {
+	    return grpc.getAlert().getEvent();
+	}
+	case LOCATION: {
+	    return grpc.getLocation().getEvent();
+	}
+	case MEASUREMENTS: {
+	    return grpc.getMeasurements().getEvent();
+	}
+	case STREAMDATA: {
+	    return grpc.getStreamData().getEvent();
+	}
+	case COMMANDINVOCATION: {
+	    return grpc.getCommandInvocation().getEvent();
+	}
+	case COMMANDRESPONSE: {
+	    return grpc.getCommandResponse().getEvent();
+	}
+	case STATECHANGE: {
+	    return grpc.getStateChange().getEvent();
+	}
+	case EVENT_NOT_SET: {
+	    break;
+	}
+	}
+	throw new SiteWhereException("Unable to find common event information. " + grpc.getEventCase().toString());
+    }
+
     /**
      * Convert device event results from GRPC to API.
      * 
@@ -7,13 +7,6 @@
  */
 package com.sitewhere.grpc.model.marshaling;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
-
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.sitewhere.grpc.kafka.model.KafkaModel.GEnrichedEventPayload;
 import com.sitewhere.grpc.kafka.model.KafkaModel.GInboundEventPayload;
@@ -34,9 +27,6 @@ import com.sitewhere.spi.tenant.ITenant;
  */
 public class KafkaModelMarshaler {
 
-    /** Static logger instance */
-    private static Logger LOGGER = LogManager.getLogger();
-
     /**
      * Build message that reflects a tenant model update.
      * 
@@ -50,15 +40,7 @@ public class KafkaModelMarshaler {
 	GTenantModelUpdate.Builder update = GTenantModelUpdate.newBuilder();
 	update.setType(type);
 	update.setTenant(TenantModelConverter.asGrpcTenant(tenant));
-	ByteArrayOutputStream output = new ByteArrayOutputStream();
-	try {
-	    update.build().writeTo(output);
-	    return output.toByteArray();
-	} catch (IOException e) {
-	    throw new SiteWhereException("Unable to build tenant update message.", e);
-	} finally {
-	    closeQuietly(output);
-	}
+	return update.build().toByteArray();
     }
 
     /**
@@ -96,15 +78,7 @@ public class KafkaModelMarshaler {
      * @throws SiteWhereException
      */
     public static byte[] buildInboundEventPayloadMessage(GInboundEventPayload grpc) throws SiteWhereException {
-	ByteArrayOutputStream output = new ByteArrayOutputStream();
-	try {
-	    grpc.writeTo(output);
-	    return output.toByteArray();
-	} catch (IOException e) {
-	    throw new SiteWhereException("Unable to build inbound event payload message.", e);
-	} finally {
-	    closeQuietly(output);
-	}
+	return grpc.toByteArray();
     }
 
     /**
@@ -130,15 +104,7 @@ public class KafkaModelMarshaler {
      * @throws SiteWhereException
      */
     public static byte[] buildPersistedEventPayloadMessage(GPersistedEventPayload grpc) throws SiteWhereException {
-	ByteArrayOutputStream output = new ByteArrayOutputStream();
-	try {
-	    grpc.writeTo(output);
-	    return output.toByteArray();
-	} catch (IOException e) {
-	    throw new SiteWhereException("Unable to build persisted event payload message.", e);
-	} finally {
-	    closeQuietly(output);
-	}
+	return grpc.toByteArray();
     }
 
     /**
@@ -164,15 +130,7 @@ public class KafkaModelMarshaler {
      * @throws SiteWhereException
      */
     public static byte[] buildEnrichedEventPayloadMessage(GEnrichedEventPayload grpc) throws SiteWhereException {
-	ByteArrayOutputStream output = new ByteArrayOutputStream();
-	try {
-	    grpc.writeTo(output);
-	    return output.toByteArray();
-	} catch (IOException e) {
-	    throw new SiteWhereException("Unable to build enriched event payload message.", e);
-	} finally {
-	    closeQuietly(output);
-	}
+	return grpc.toByteArray();
     }
 
     /**
@@ -198,15 +156,7 @@ public class KafkaModelMarshaler {
      * @throws SiteWhereException
      */
     public static byte[] buildStateUpdateMessage(GStateUpdate grpc) throws SiteWhereException {
-	ByteArrayOutputStream output = new ByteArrayOutputStream();
-	try {
-	    grpc.writeTo(output);
-	    return output.toByteArray();
-	} catch (IOException e) {
-	    throw new SiteWhereException("Unable to build state update message.", e);
-	} finally {
-	    closeQuietly(output);
-	}
+	return grpc.toByteArray();
     }
 
     /**
@@ -223,14 +173,4 @@ public class KafkaModelMarshaler {
 	    throw new SiteWhereException("Unable to parse state update message.", e);
 	}
     }
-
-    protected static void closeQuietly(OutputStream output) {
-	if (output != null) {
-	    try {
-		output.close();
-	    } catch (IOException e) {
-		LOGGER.error(e);
-	    }
-	}
-    }
 }
\ No newline at end of file
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.common;
+
+import org.apache.hadoop.hbase.client.Scan;
+
+import com.sitewhere.spi.search.ISearchCriteria;
+
+/**
+ * Tracks the position of a scan relative to the page requested in the search
+ * criteria. Unlike {@link com.sitewhere.rest.model.search.Pager}, matches that
+ * fall before the page are counted without needing the record, so callers can
+ * skip decoding payloads for them and can stop the scan as soon as the page
+ * has been filled.
+ *
+ * @author Derek
+ */
+public class ScanPageWindow {
+
+    /** Max number of rows fetched per scanner RPC */
+    private static final int MAX_CACHING = 1000;
+
+    /** Number of matches to skip before page */
+    private long toSkip;
+
+    /** Page size (zero for all matches) */
+    private int pageSize;
+
+    /** Number of matches seen */
+    private long matched;
+
+    /** Number of matches in page */
+    private long accepted;
+
+    public ScanPageWindow(ISearchCriteria criteria) {
+	this.pageSize = (criteria.getPageSize() != null) ? criteria.getPageSize() : 0;
+	if ((criteria.getPageNumber() != null) && (criteria.getPageNumber() >= 1)) {
+	    this.toSkip = (long) (criteria.getPageNumber() - 1) * pageSize;
+	}
+    }
+
+    /**
+     * Count a matching row and indicate whether it belongs in the requested page.
+     * Only rows that return true need to be decoded.
+     *
+     * @return
+     */
+    public boolean accept() {
+	matched++;
+	if (toSkip > 0) {
+	    toSkip--;
+	    return false;
+	}
+	if (isFilled()) {
+	    return false;
+	}
+	accepted++;
+	return true;
+    }
+
+    /**
+     * Indicates whether the requested page has been filled and the scan can
+     * stop.
+     *
+     * @return
+     */
+    public boolean isFilled() {
+	return (pageSize > 0) && (accepted >= pageSize);
+    }
+
+    /**
+     * Set scanner caching so that a page can usually be filled in a single RPC
+     * without pulling large numbers of unneeded rows.
+     *
+     * @param scan
+     */
+    public void configure(Scan scan) {
+	if (pageSize > 0) {
+	    scan.setCaching((int) Math.min(MAX_CACHING, toSkip + pageSize));
+	} else {
+	    scan.setCaching(MAX_CACHING);
+	}
+    }
+
+    /**
+     * Get number of matches seen. When the scan stopped early this is a lower
+     * bound on the total number of matches.
+     *
+     * @return
+     */
+    public long getMatched() {
+	return matched;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.hbase.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.hbase.client.Scan;
+import org.junit.Test;
+
+import com.sitewhere.rest.model.search.SearchCriteria;
+
+public class ScanPageWindowTest {
+
+    @Test
+    public void testFirstPage() {
+	ScanPageWindow window = new ScanPageWindow(new SearchCriteria(1, 3));
+	assertTrue(window.accept());
+	assertTrue(window.accept());
+	assertFalse(window.isFilled());
+	assertTrue(window.accept());
+	assertTrue(window.isFilled());
+	assertFalse(window.accept());
+	assertEquals(4, window.getMatched());
+    }
+
+    @Test
+    public void testLaterPageSkipsEarlierMatches() {
+	ScanPageWindow window = new ScanPageWindow(new SearchCriteria(3, 2));
+	for (int i = 0; i < 4; i++) {
+	    assertFalse(window.accept());
+	    assertFalse(window.isFilled());
+	}
+	assertTrue(window.accept());
+	assertTrue(window.accept());
+	assertTrue(window.isFilled());
+	assertEquals(6, window.getMatched());
+    }
+
+    @Test
+    public void testPartialLastPage() {
+	ScanPageWindow window = new ScanPageWindow(new SearchCriteria(2, 5));
+	int accepted = 0;
+	for (int i = 0; i < 7; i++) {
+	    if (window.accept()) {
+		accepted++;
+	    }
+	}
+	assertEquals(2, accepted);
+	assertFalse(window.isFilled());
+	assertEquals(7, window.getMatched());
+    }
+
+    @Test
+    public void testZeroPageSizeAcceptsAll() {
+	ScanPageWindow window = new ScanPageWindow(SearchCriteria.ALL);
+	for (int i = 0; i < 5000; i++) {
+	    assertTrue(window.accept());
+	}
+	assertFalse(window.isFilled());
+	assertEquals(5000, window.getMatched());
+    }
+
+    @Test
+    public void testMissingPageNumberStartsAtFirstPage() {
+	SearchCriteria criteria = new SearchCriteria(1, 2);
+	criteria.setPageNumber(null);
+	ScanPageWindow window = new ScanPageWindow(criteria);
+	assertTrue(window.accept());
+	assertTrue(window.accept());
+	assertTrue(window.isFilled());
+    }
+
+    @Test
+    public void testScannerCaching() {
+	Scan scan = new Scan();
+	new ScanPageWindow(new SearchCriteria(2, 10)).configure(scan);
+	assertEquals(20, scan.getCaching());
+
+	scan = new Scan();
+	new ScanPageWindow(new SearchCriteria(500, 100)).configure(scan);
+	assertEquals(1000, scan.getCaching());
+
+	scan = new Scan();
+	new ScanPageWindow(SearchCriteria.ALL).configure(scan);
+	assertEquals(1000, scan.getCaching());
+    }
+}
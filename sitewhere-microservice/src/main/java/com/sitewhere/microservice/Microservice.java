@@ -18,6 +18,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import com.sitewhere.Version;
+import com.sitewhere.microservice.kafka.SharedTenantKafkaConsumers;
 import com.sitewhere.microservice.management.MicroserviceManagementGrpcServer;
 import com.sitewhere.microservice.state.MicroserviceStateUpdatesKafkaProducer;
 import com.sitewhere.microservice.state.TopologyStateAggregator;
@@ -37,6 +38,7 @@ import com.sitewhere.spi.microservice.grpc.IMicroserviceManagementGrpcServer;
 import com.sitewhere.spi.microservice.hazelcast.IHazelcastManager;
 import com.sitewhere.spi.microservice.instance.IInstanceSettings;
 import com.sitewhere.spi.microservice.kafka.IKafkaTopicNaming;
+import com.sitewhere.spi.microservice.kafka.ISharedTenantKafkaConsumers;
 import com.sitewhere.spi.microservice.security.ISystemUser;
 import com.sitewhere.spi.microservice.security.ITokenManagement;
 import com.sitewhere.spi.microservice.state.IMicroserviceDetails;
@@ -69,7 +71,7 @@ public abstract class Microservice extends LifecycleComponent implements IMicros
     private static final String INSTANCE_BOOTSTRAP_MARKER = "/bootstrapped";
 
     /** Heartbeat interval in seconds */
-    private static final int HEARTBEAT_INTERVAL_SECS = 20;
+    public static final int HEARTBEAT_INTERVAL_SECS = 20;
 
     /** Instance settings */
     @Autowired
@@ -114,6 +116,9 @@ public abstract class Microservice extends LifecycleComponent implements IMicros
     /** Kafka consumer for aggregating microservice/tenant engine state updates */
     private ITopologyStateAggregator topologyStateAggregator;
 
+    /** Kafka consumers shared by tenant engines */
+    private ISharedTenantKafkaConsumers sharedTenantKafkaConsumers;
+
     /** Lifecycle operations thread pool */
     private ExecutorService microserviceOperationsService;
 
@@ -165,6 +170,12 @@ public abstract class Microservice extends LifecycleComponent implements IMicros
 	// Start Kafka consumer for aggregating state.
 	initialize.addStartStep(this, getTopologyStateAggregator(), true);
 
+	// Initialize shared tenant Kafka consumers.
+	initialize.addInitializeStep(this, getSharedTenantKafkaConsumers(), true);
+
+	// Start shared tenant Kafka consumers.
+	initialize.addStartStep(this, getSharedTenantKafkaConsumers(), true);
+
 	// Initialize Kafka producer for reporting state.
 	initialize.addInitializeStep(this, getStateUpdatesKafkaProducer(), true);
 
@@ -191,6 +202,7 @@ public abstract class Microservice extends LifecycleComponent implements IMicros
     protected void initializeStateManagement() {
 	this.stateUpdatesKafkaProducer = new MicroserviceStateUpdatesKafkaProducer(this);
 	this.topologyStateAggregator = new TopologyStateAggregator(this);
+	this.sharedTenantKafkaConsumers = new SharedTenantKafkaConsumers(this);
 	this.microserviceHeartbeatService = Executors.newSingleThreadExecutor(new MicroserviceHeartbeatThreadFactory());
     }
 
@@ -229,6 +241,9 @@ public abstract class Microservice extends LifecycleComponent implements IMicros
 	// Stop Kafka consumer for aggregating state.
 	terminate.addStopStep(this, getTopologyStateAggregator());
 
+	// Stop shared tenant Kafka consumers.
+	terminate.addStopStep(this, getSharedTenantKafkaConsumers());
+
 	// Terminate Zk manager.
 	terminate.addStopStep(this, getZookeeperManager());
 
@@ -525,6 +540,19 @@ public abstract class Microservice extends LifecycleComponent implements IMicros
 	this.topologyStateAggregator = topologyStateAggregator;
     }
 
+    /*
+     * @see
+     * com.sitewhere.spi.microservice.IMicroservice#getSharedTenantKafkaConsumers()
+     */
+    @Override
+    public ISharedTenantKafkaConsumers getSharedTenantKafkaConsumers() {
+	return sharedTenantKafkaConsumers;
+    }
+
+    public void setSharedTenantKafkaConsumers(ISharedTenantKafkaConsumers sharedTenantKafkaConsumers) {
+	this.sharedTenantKafkaConsumers = sharedTenantKafkaConsumers;
+    }
+
     /*
      * @see com.sitewhere.microservice.spi.IMicroservice#getInstanceSettings()
      */
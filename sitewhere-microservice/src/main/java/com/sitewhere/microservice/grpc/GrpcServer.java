@@ -60,7 +60,7 @@ public class GrpcServer extends TenantEngineLifecycleComponent implements IGrpcS
 	this.serviceImplementation = serviceImplementation;
 	this.port = port;
 
-	this.jwt = new JwtServerInterceptor(microservice, serviceImplementation.getClass());
+	this.jwt = new JwtServerInterceptor(microservice, serviceImplementation);
 	this.trace = new ServerTracingInterceptor(microservice.getTracer());
     }
 
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.microservice.grpc;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import com.sitewhere.microservice.security.HashedTokenCache;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.microservice.security.ITokenManagement;
+import com.sitewhere.spi.user.IGrantedAuthority;
+
+import io.jsonwebtoken.Claims;
+
+/**
+ * Thread-safe, size-bounded cache of decoded JWT claims. Storage, hashing and
+ * expiration are handled by {@link HashedTokenCache}.
+ * 
+ * @author Derek
+ */
+public class JwtClaimsCache {
+
+    /** Default max number of cached tokens */
+    public static final long DEFAULT_MAX_ENTRIES = 10000;
+
+    /** Default max time an entry is kept regardless of token expiration */
+    public static final long DEFAULT_MAX_LIFETIME_MS = 10 * 60 * 1000;
+
+    /** Supplies token management used to decode tokens */
+    private Supplier<ITokenManagement> tokenManagement;
+
+    /** Cached claims by token hash */
+    private HashedTokenCache<CachedClaims> cache;
+
+    public JwtClaimsCache(Supplier<ITokenManagement> tokenManagement) {
+	this(tokenManagement, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_LIFETIME_MS);
+    }
+
+    public JwtClaimsCache(Supplier<ITokenManagement> tokenManagement, long maxEntries, long maxLifetimeMs) {
+	this.tokenManagement = tokenManagement;
+	this.cache = new HashedTokenCache<CachedClaims>(maxEntries, maxLifetimeMs);
+    }
+
+    /**
+     * Get claims for a token, decoding and validating it if not already cached.
+     * 
+     * @param jwt
+     * @return
+     * @throws SiteWhereException
+     */
+    public CachedClaims getClaims(String jwt) throws SiteWhereException {
+	return cache.get(jwt, () -> decode(jwt));
+    }
+
+    /**
+     * Decode and validate a token.
+     * 
+     * @param jwt
+     * @return
+     * @throws SiteWhereException
+     */
+    protected CachedClaims decode(String jwt) throws SiteWhereException {
+	ITokenManagement tokens = tokenManagement.get();
+	Claims claims = tokens.getClaimsForToken(jwt);
+	Set<String> auths = new HashSet<String>();
+	for (IGrantedAuthority auth : tokens.getGrantedAuthoritiesFromClaims(claims)) {
+	    auths.add(auth.getAuthority());
+	}
+	Date expiration = claims.getExpiration();
+	return new CachedClaims(tokens.getUsernameFromClaims(claims), Collections.unmodifiableSet(auths),
+		(expiration != null) ? expiration.getTime() : Long.MAX_VALUE);
+    }
+
+    /**
+     * Get approximate number of cached entries.
+     * 
+     * @return
+     */
+    public long size() {
+	return cache.size();
+    }
+
+    /**
+     * Information extracted from a validated token.
+     * 
+     * @author Derek
+     */
+    public static class CachedClaims implements HashedTokenCache.IExpiring {
+
+	/** Username from token subject */
+	private String username;
+
+	/** Granted authorities */
+	private Set<String> authorities;
+
+	/** Token expiration (millis) */
+	private long expiration;
+
+	public CachedClaims(String username, Set<String> authorities, long expiration) {
+	    this.username = username;
+	    this.authorities = authorities;
+	    this.expiration = expiration;
+	}
+
+	public String getUsername() {
+	    return username;
+	}
+
+	public Set<String> getAuthorities() {
+	    return authorities;
+	}
+
+	/*
+	 * @see com.sitewhere.microservice.security.HashedTokenCache.IExpiring#
+	 * getExpiration()
+	 */
+	@Override
+	public long getExpiration() {
+	    return expiration;
+	}
+    }
+}
@@ -8,10 +8,11 @@
 package com.sitewhere.microservice.grpc;
 
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -21,7 +22,6 @@ import com.sitewhere.grpc.client.JwtClientInterceptor;
 import com.sitewhere.microservice.security.annotations.GrpcSecured;
 import com.sitewhere.spi.SiteWhereException;
 import com.sitewhere.spi.microservice.IMicroservice;
-import com.sitewhere.spi.user.IGrantedAuthority;
 import com.sitewhere.spi.user.SiteWhereAuthority;
 
 import io.grpc.BindableService;
@@ -32,11 +32,13 @@ import io.grpc.ServerCall.Listener;
 import io.grpc.ServerCallHandler;
 import io.grpc.ServerInterceptor;
 import io.grpc.Status;
-import io.jsonwebtoken.Claims;
 
 /**
  * Interceptor that enforces JWT authentication constraints before invoking
- * service methods.
+ * service methods. Authorities required by each method are computed once when
+ * the interceptor is created and decoded tokens are held in a
+ * {@link JwtClaimsCache}, so the per-call work is a cache lookup and a set
+ * comparison.
  * 
  * @author Derek
  */
@@ -51,15 +53,17 @@ public class JwtServerInterceptor implements ServerInterceptor {
     /** Service implementation */
     private Class<? extends BindableService> implementation;
 
-    /** Map of implementation methods indexed by full name from descriptor */
-    private Map<String, Method> methodsByFullName = new HashMap<String, Method>();
+    /** Authorities required by each method indexed by full name from descriptor */
+    private Map<String, List<String>> requiredAuthoritiesByFullName;
 
-    /** Hashmap of JWT to decoded claims */
-    private Map<String, Claims> jwtToClaims = new HashMap<String, Claims>();
+    /** Cache of decoded claims */
+    private JwtClaimsCache claimsCache;
 
-    public JwtServerInterceptor(IMicroservice microservice, Class<? extends BindableService> implementation) {
+    public JwtServerInterceptor(IMicroservice microservice, BindableService implementation) {
 	this.microservice = microservice;
-	this.implementation = implementation;
+	this.implementation = implementation.getClass();
+	this.requiredAuthoritiesByFullName = computeRequiredAuthorities(implementation);
+	this.claimsCache = new JwtClaimsCache(() -> getMicroservice().getTokenManagement());
     }
 
     /*
@@ -73,22 +77,14 @@ public class JwtServerInterceptor implements ServerInterceptor {
 	    ServerCallHandler<ReqT, RespT> next) {
 	if (headers.containsKey(JwtClientInterceptor.JWT_KEY)) {
 	    String jwt = headers.get(JwtClientInterceptor.JWT_KEY);
-	    long start = System.currentTimeMillis();
 	    try {
-		Claims claims = getClaimsForJwt(jwt);
-		String username = getMicroservice().getTokenManagement().getUsernameFromClaims(claims);
-		List<IGrantedAuthority> gauths = getMicroservice().getTokenManagement()
-			.getGrantedAuthoritiesFromClaims(claims);
-		List<String> auths = gauths.stream().map(g -> g.getAuthority()).collect(Collectors.toList());
-		Method implMethod = locateMethod(call.getMethodDescriptor());
-		return processAuthAnnotations(call, headers, next, username, auths, implMethod);
+		JwtClaimsCache.CachedClaims claims = getClaimsCache().getClaims(jwt);
+		checkAuthorities(call.getMethodDescriptor(), claims);
+		return next.startCall(call, headers);
 	    } catch (SiteWhereException e) {
 		call.close(Status.PERMISSION_DENIED.withDescription(e.getMessage()), headers);
 		return new ServerCall.Listener<ReqT>() {
 		};
-	    } finally {
-		LOGGER.trace("GRPC call for " + call.getMethodDescriptor().getFullMethodName() + " took "
-			+ (System.currentTimeMillis() - start) + "ms.");
 	    }
 	} else {
 	    call.close(Status.UNAUTHENTICATED.withDescription("JWT not passed in metadata."), headers);
@@ -98,101 +94,65 @@ public class JwtServerInterceptor implements ServerInterceptor {
     }
 
     /**
-     * Get cached claims for JWT.
-     * 
-     * @param jwt
-     * @return
-     * @throws SiteWhereException
-     */
-    protected Claims getClaimsForJwt(String jwt) throws SiteWhereException {
-	// TODO: Swap to expiring cache and put limits on number of cached JWTs.
-	Claims claims = jwtToClaims.get(jwt);
-	if (claims == null) {
-	    claims = getMicroservice().getTokenManagement().getClaimsForToken(jwt);
-	    jwtToClaims.put(jwt, claims);
-	}
-	return claims;
-    }
-
-    /**
-     * Process authentication annotations on the implementation method.
-     * 
-     * @param call
-     * @param headers
-     * @param next
-     * @param username
-     * @param auths
-     * @param method
-     * @return
-     * @throws SiteWhereException
-     */
-    protected <ReqT, RespT> Listener<ReqT> processAuthAnnotations(ServerCall<ReqT, RespT> call, Metadata headers,
-	    ServerCallHandler<ReqT, RespT> next, String username, List<String> auths, Method method)
-	    throws SiteWhereException {
-	processGrpcSecured(call, headers, next, username, auths, method);
-	return next.startCall(call, headers);
-    }
-
-    /**
-     * Process {@link GrpcSecured} annotation.
+     * Verify that the token grants all authorities required by the method.
      * 
-     * @param call
-     * @param headers
-     * @param next
-     * @param username
-     * @param auths
-     * @param method
-     * @return
+     * @param descriptor
+     * @param claims
      * @throws SiteWhereException
      */
-    protected <ReqT, RespT> void processGrpcSecured(ServerCall<ReqT, RespT> call, Metadata headers,
-	    ServerCallHandler<ReqT, RespT> next, String username, List<String> auths, Method method)
+    protected void checkAuthorities(MethodDescriptor<?, ?> descriptor, JwtClaimsCache.CachedClaims claims)
 	    throws SiteWhereException {
-	GrpcSecured secured = method.getAnnotation(GrpcSecured.class);
-	if (secured != null) {
-	    if (LOGGER.isDebugEnabled()) {
-		LOGGER.debug("Found @GrpcSecured annotation on " + method.toGenericString());
-	    }
-	    SiteWhereAuthority[] roles = secured.value();
-	    for (SiteWhereAuthority role : roles) {
-		if (!auths.contains(role.getName())) {
-		    throw new SiteWhereException("User '" + username + "' not authenticated for '" + role
-			    + "' authority.\n\n" + MarshalUtils.marshalJsonAsPrettyString(auths));
-		} else {
-		    LOGGER.info("SECURITY CHECK PASSED FOR " + role);
-		}
+	String fullName = descriptor.getFullMethodName();
+	List<String> required = getRequiredAuthoritiesByFullName().get(fullName);
+	if (required == null) {
+	    throw new SiteWhereException(
+		    "Unable to locate method for '" + fullName + "' on " + getImplementation().getName() + ".");
+	}
+	for (String role : required) {
+	    if (!claims.getAuthorities().contains(role)) {
+		throw new SiteWhereException("User '" + claims.getUsername() + "' not authenticated for '" + role
+			+ "' authority.\n\n" + MarshalUtils.marshalJsonAsPrettyString(claims.getAuthorities()));
 	    }
 	}
     }
 
     /**
-     * Locate implementation method based on name from descriptor.
+     * Compute authorities required for each method exposed by the service based
+     * on {@link GrpcSecured} annotations on the implementation methods.
      * 
-     * @param descriptor
+     * @param implementation
      * @return
-     * @throws SiteWhereException
      */
-    protected Method locateMethod(MethodDescriptor<?, ?> descriptor) throws SiteWhereException {
-	String fullName = descriptor.getFullMethodName();
-	Method match = getMethodsByFullName().get(fullName);
-	if (match == null) {
-	    String[] parts = fullName.split("/");
-	    String camelName = parts[1];
+    protected Map<String, List<String>> computeRequiredAuthorities(BindableService implementation) {
+	Map<String, Method> methodsByName = new HashMap<String, Method>();
+	for (Method method : implementation.getClass().getDeclaredMethods()) {
+	    methodsByName.putIfAbsent(method.getName(), method);
+	}
+	Map<String, List<String>> required = new HashMap<String, List<String>>();
+	for (MethodDescriptor<?, ?> descriptor : implementation.bindService().getServiceDescriptor().getMethods()) {
+	    String fullName = descriptor.getFullMethodName();
+	    String camelName = fullName.split("/")[1];
 
 	    // Lowercase first letter.
 	    String realName = camelName.substring(0, 1).toLowerCase() + camelName.substring(1);
-	    Method[] methods = getImplementation().getDeclaredMethods();
-	    for (Method method : methods) {
-		if (method.getName().equals(realName)) {
-		    getMethodsByFullName().put(fullName, method);
-		    return method;
-		}
+	    Method method = methodsByName.get(realName);
+	    if (method == null) {
+		LOGGER.warn("Unable to locate method '" + realName + "' on " + implementation.getClass().getName()
+			+ ". Calls will be rejected.");
+		continue;
 	    }
-	    throw new SiteWhereException(
-		    "Unable to locate method '" + realName + "' on " + getImplementation().getName() + ".");
-	} else {
-	    return match;
+	    GrpcSecured secured = method.getAnnotation(GrpcSecured.class);
+	    if (secured == null) {
+		required.put(fullName, Collections.emptyList());
+		continue;
+	    }
+	    String[] roles = Arrays.stream(secured.value()).map(SiteWhereAuthority::getName).toArray(String[]::new);
+	    if (LOGGER.isDebugEnabled()) {
+		LOGGER.debug("Method " + method.toGenericString() + " requires " + Arrays.toString(roles) + ".");
+	    }
+	    required.put(fullName, Collections.unmodifiableList(Arrays.asList(roles)));
 	}
+	return Collections.unmodifiableMap(required);
     }
 
     public IMicroservice getMicroservice() {
@@ -211,11 +171,11 @@ public class JwtServerInterceptor implements ServerInterceptor {
 	this.implementation = implementation;
     }
 
-    public Map<String, Method> getMethodsByFullName() {
-	return methodsByFullName;
+    public Map<String, List<String>> getRequiredAuthoritiesByFullName() {
+	return requiredAuthoritiesByFullName;
     }
 
-    public void setMethodsByFullName(Map<String, Method> methodsByFullName) {
-	this.methodsByFullName = methodsByFullName;
+    public JwtClaimsCache getClaimsCache() {
+	return claimsCache;
     }
 }
\ No newline at end of file
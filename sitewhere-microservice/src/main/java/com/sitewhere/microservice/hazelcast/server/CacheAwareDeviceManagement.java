@@ -19,10 +19,12 @@ import com.sitewhere.spi.cache.ICacheProvider;
 import com.sitewhere.spi.device.DeviceAssignmentStatus;
 import com.sitewhere.spi.device.IDevice;
 import com.sitewhere.spi.device.IDeviceAssignment;
+import com.sitewhere.spi.device.IDeviceBulkCreateResponse;
 import com.sitewhere.spi.device.IDeviceManagement;
 import com.sitewhere.spi.device.IDeviceType;
 import com.sitewhere.spi.device.ISite;
 import com.sitewhere.spi.device.request.IDeviceAssignmentCreateRequest;
+import com.sitewhere.spi.device.request.IDeviceBulkCreateRequest;
 import com.sitewhere.spi.device.request.IDeviceCreateRequest;
 import com.sitewhere.spi.device.request.IDeviceTypeCreateRequest;
 import com.sitewhere.spi.device.request.ISiteCreateRequest;
@@ -164,6 +166,52 @@ public class CacheAwareDeviceManagement extends DeviceManagementDecorator {
 	return result;
     }
 
+    /*
+     * Bulk creation may update existing devices and assign new ones, so cached
+     * entries for every device in the request are removed along with their
+     * assignments.
+     * 
+     * @see
+     * com.sitewhere.device.DeviceManagementDecorator#createDevices(com.sitewhere.
+     * spi.device.request.IDeviceBulkCreateRequest)
+     */
+    @Override
+    public IDeviceBulkCreateResponse createDevices(IDeviceBulkCreateRequest request) throws SiteWhereException {
+	ITenant tenant = UserContextManager.getCurrentTenant(true);
+	IDeviceBulkCreateResponse result = super.createDevices(request);
+	for (IDeviceCreateRequest device : request.getDevices()) {
+	    removeCachedDevice(tenant, device.getHardwareId());
+	}
+	return result;
+    }
+
+    /**
+     * Remove a device from the caches along with its current assignment. Device
+     * entries are always cached by hardware id and id together, so the entry
+     * cached by hardware id locates the others.
+     * 
+     * @param tenant
+     * @param hardwareId
+     * @throws SiteWhereException
+     */
+    protected void removeCachedDevice(ITenant tenant, String hardwareId) throws SiteWhereException {
+	IDevice cached = getDeviceCache().getCacheEntry(tenant, hardwareId);
+	if (cached == null) {
+	    return;
+	}
+	getDeviceCache().removeCacheEntry(tenant, hardwareId);
+	getDeviceByIdCache().removeCacheEntry(tenant, cached.getId());
+	if (cached.getDeviceAssignmentId() != null) {
+	    IDeviceAssignment assignment = getDeviceAssignmentByIdCache().getCacheEntry(tenant,
+		    cached.getDeviceAssignmentId());
+	    getDeviceAssignmentByIdCache().removeCacheEntry(tenant, cached.getDeviceAssignmentId());
+	    if (assignment != null) {
+		getDeviceAssignmentCache().removeCacheEntry(tenant, assignment.getToken());
+	    }
+	}
+	CacheUtils.logCacheRemoved(hardwareId);
+    }
+
     /*
      * @see
      * com.sitewhere.device.DeviceManagementDecorator#getDeviceByHardwareId(java.
@@ -16,6 +16,7 @@ import com.sitewhere.spi.microservice.IMicroservice;
 import com.sitewhere.spi.user.IGrantedAuthority;
 import com.sitewhere.spi.user.IUser;
 import com.sitewhere.spi.user.IUserManagement;
+import com.sitewhere.spi.user.request.IGrantedAuthorityCreateRequest;
 import com.sitewhere.spi.user.request.IUserCreateRequest;
 import com.sitewhere.user.UserManagementDecorator;
 
@@ -100,14 +101,72 @@ public class CacheAwareUserManagement extends UserManagementDecorator {
      */
     @Override
     public List<IGrantedAuthority> getGrantedAuthorities(String username) throws SiteWhereException {
+	List<IGrantedAuthority> cached = getGrantedAuthorityCache().getCacheEntry(null, username);
+	if (cached != null) {
+	    return cached;
+	}
 	List<IGrantedAuthority> result = super.getGrantedAuthorities(username);
-	if ((result != null) && (getGrantedAuthorityCache().getCacheEntry(null, username) == null)) {
+	if (result != null) {
 	    getGrantedAuthorityCache().setCacheEntry(null, username, result);
 	    getLogger().trace("Added granted authorities to cache.");
 	}
 	return result;
     }
 
+    /*
+     * @see
+     * com.sitewhere.user.UserManagementDecorator#addGrantedAuthorities(java.lang.
+     * String, java.util.List)
+     */
+    @Override
+    public List<IGrantedAuthority> addGrantedAuthorities(String username, List<String> authorities)
+	    throws SiteWhereException {
+	List<IGrantedAuthority> result = super.addGrantedAuthorities(username, authorities);
+	getGrantedAuthorityCache().removeCacheEntry(null, username);
+	return result;
+    }
+
+    /*
+     * @see
+     * com.sitewhere.user.UserManagementDecorator#removeGrantedAuthorities(java.
+     * lang.String, java.util.List)
+     */
+    @Override
+    public List<IGrantedAuthority> removeGrantedAuthorities(String username, List<String> authorities)
+	    throws SiteWhereException {
+	List<IGrantedAuthority> result = super.removeGrantedAuthorities(username, authorities);
+	getGrantedAuthorityCache().removeCacheEntry(null, username);
+	return result;
+    }
+
+    /*
+     * @see
+     * com.sitewhere.user.UserManagementDecorator#updateGrantedAuthority(java.lang.
+     * String, com.sitewhere.spi.user.request.IGrantedAuthorityCreateRequest)
+     */
+    @Override
+    public IGrantedAuthority updateGrantedAuthority(String name, IGrantedAuthorityCreateRequest request)
+	    throws SiteWhereException {
+	IGrantedAuthority result = super.updateGrantedAuthority(name, request);
+	// Cache is keyed by user, so any user holding the authority may be stale.
+	getGrantedAuthorityCache().removeAllCacheEntries(null);
+	getLogger().trace("Cleared granted authorities cache after authority update.");
+	return result;
+    }
+
+    /*
+     * @see
+     * com.sitewhere.user.UserManagementDecorator#deleteGrantedAuthority(java.lang.
+     * String)
+     */
+    @Override
+    public void deleteGrantedAuthority(String authority) throws SiteWhereException {
+	super.deleteGrantedAuthority(authority);
+	// Cache is keyed by user, so any user holding the authority may be stale.
+	getGrantedAuthorityCache().removeAllCacheEntries(null);
+	getLogger().trace("Cleared granted authorities cache after authority delete.");
+    }
+
     protected ICacheProvider<String, IUser> getUserCache() {
 	return userCache;
     }
@@ -54,6 +54,14 @@ public class InstanceSettings implements IInstanceSettings {
     @Value("${sitewhere.tracer.server:jaeger}")
     private String tracerServer;
 
+    /** Indicates if tenant Kafka consumers are multiplexed over shared consumers */
+    @Value("${sitewhere.kafka.shared.consumers:false}")
+    private boolean kafkaSharedConsumers;
+
+    /** Number of threads used by each shared consumer to process records */
+    @Value("${sitewhere.kafka.shared.consumer.threads:4}")
+    private int kafkaSharedConsumerThreads;
+
     /*
      * (non-Javadoc)
      * 
@@ -185,4 +193,30 @@ public class InstanceSettings implements IInstanceSettings {
     public void setTracerServer(String tracerServer) {
 	this.tracerServer = tracerServer;
     }
+
+    /*
+     * @see com.sitewhere.spi.microservice.instance.IInstanceSettings#
+     * isKafkaSharedConsumers()
+     */
+    @Override
+    public boolean isKafkaSharedConsumers() {
+	return kafkaSharedConsumers;
+    }
+
+    public void setKafkaSharedConsumers(boolean kafkaSharedConsumers) {
+	this.kafkaSharedConsumers = kafkaSharedConsumers;
+    }
+
+    /*
+     * @see com.sitewhere.spi.microservice.instance.IInstanceSettings#
+     * getKafkaSharedConsumerThreads()
+     */
+    @Override
+    public int getKafkaSharedConsumerThreads() {
+	return kafkaSharedConsumerThreads;
+    }
+
+    public void setKafkaSharedConsumerThreads(int kafkaSharedConsumerThreads) {
+	this.kafkaSharedConsumerThreads = kafkaSharedConsumerThreads;
+    }
 }
\ No newline at end of file
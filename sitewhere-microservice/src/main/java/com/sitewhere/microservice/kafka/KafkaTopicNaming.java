@@ -7,6 +7,8 @@
  */
 package com.sitewhere.microservice.kafka;
 
+import java.util.regex.Pattern;
+
 import org.springframework.beans.factory.annotation.Autowired;
 
 import com.sitewhere.spi.microservice.instance.IInstanceSettings;
@@ -62,6 +64,12 @@ public class KafkaTopicNaming implements IKafkaTopicNaming {
     /** Topic suffix for persisted and enriched command invocations */
     protected static final String TENANT_TOPIC_INBOUND_ENRICHED_COMMAND_INVOCATIONS = "inbound-enriched-command-invocations";
 
+    /** Topic suffix for system commands to be delivered to devices */
+    protected static final String TENANT_TOPIC_OUTBOUND_SYSTEM_COMMANDS = "outbound-system-commands";
+
+    /** Topic suffix for outcomes of command deliveries */
+    protected static final String TENANT_TOPIC_COMMAND_DELIVERY_OUTCOMES = "command-delivery-outcomes";
+
     @Autowired
     private IInstanceSettings instanceSettings;
 
@@ -93,6 +101,30 @@ public class KafkaTopicNaming implements IKafkaTopicNaming {
 	return getInstancePrefix() + SEPARATOR + TENANT_INDICATOR + SEPARATOR + tenant.getId() + SEPARATOR;
     }
 
+    /*
+     * @see com.sitewhere.spi.microservice.kafka.IKafkaTopicNaming#
+     * getTenantTopicPattern(java.lang.String)
+     */
+    @Override
+    public Pattern getTenantTopicPattern(String suffix) {
+	return Pattern.compile(Pattern.quote(getInstancePrefix() + SEPARATOR + TENANT_INDICATOR + SEPARATOR) + "[^.]+"
+		+ Pattern.quote(SEPARATOR + suffix));
+    }
+
+    /*
+     * @see com.sitewhere.spi.microservice.kafka.IKafkaTopicNaming#
+     * getTenantIdForTopic(java.lang.String)
+     */
+    @Override
+    public String getTenantIdForTopic(String topic) {
+	String prefix = getInstancePrefix() + SEPARATOR + TENANT_INDICATOR + SEPARATOR;
+	if (!topic.startsWith(prefix)) {
+	    return null;
+	}
+	int end = topic.indexOf(SEPARATOR, prefix.length());
+	return (end > prefix.length()) ? topic.substring(prefix.length(), end) : null;
+    }
+
     /*
      * @see com.sitewhere.spi.microservice.kafka.IKafkaTopicNaming#
      * getMicroserviceStateUpdatesTopic()
@@ -185,6 +217,24 @@ public class KafkaTopicNaming implements IKafkaTopicNaming {
 	return getTenantPrefix(tenant) + TENANT_TOPIC_INBOUND_ENRICHED_COMMAND_INVOCATIONS;
     }
 
+    /*
+     * @see com.sitewhere.spi.microservice.kafka.IKafkaTopicNaming#
+     * getOutboundSystemCommandsTopic(com.sitewhere.spi.tenant.ITenant)
+     */
+    @Override
+    public String getOutboundSystemCommandsTopic(ITenant tenant) {
+	return getTenantPrefix(tenant) + TENANT_TOPIC_OUTBOUND_SYSTEM_COMMANDS;
+    }
+
+    /*
+     * @see com.sitewhere.spi.microservice.kafka.IKafkaTopicNaming#
+     * getCommandDeliveryOutcomesTopic(com.sitewhere.spi.tenant.ITenant)
+     */
+    @Override
+    public String getCommandDeliveryOutcomesTopic(ITenant tenant) {
+	return getTenantPrefix(tenant) + TENANT_TOPIC_COMMAND_DELIVERY_OUTCOMES;
+    }
+
     protected IInstanceSettings getInstanceSettings() {
 	return instanceSettings;
     }
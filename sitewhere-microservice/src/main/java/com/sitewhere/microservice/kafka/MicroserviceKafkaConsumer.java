@@ -7,13 +7,17 @@
  */
 package com.sitewhere.microservice.kafka;
 
-import java.util.Collections;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
@@ -29,6 +33,7 @@ import com.sitewhere.spi.microservice.IMicroservice;
 import com.sitewhere.spi.microservice.kafka.IMicroserviceKafkaConsumer;
 import com.sitewhere.spi.microservice.multitenant.IMicroserviceTenantEngine;
 import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
+import com.sitewhere.spi.server.lifecycle.LifecycleStatus;
 
 /**
  * Base class for components that consume messages from a Kafka topic.
@@ -38,6 +43,9 @@ import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 public abstract class MicroserviceKafkaConsumer extends TenantEngineLifecycleComponent
 	implements IMicroserviceKafkaConsumer {
 
+    /** Timeout used when polling with paused partitions */
+    private static final long PAUSED_POLL_TIMEOUT_MS = 100;
+
     /** Consumer */
     private KafkaConsumer<String, byte[]> consumer;
 
@@ -64,6 +72,10 @@ public abstract class MicroserviceKafkaConsumer extends TenantEngineLifecycleCom
      */
     @Override
     public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	if (isSharedMode()) {
+	    getLogger().info("Will be consuming messages from " + getSourceTopicNames() + " via shared consumer.");
+	    return;
+	}
 	getLogger().info(
 		"Consumer connecting to Kafka: " + getMicroservice().getInstanceSettings().getKafkaBootstrapServers());
 	getLogger().info("Will be consuming messages from: " + getSourceTopicNames());
@@ -72,6 +84,28 @@ public abstract class MicroserviceKafkaConsumer extends TenantEngineLifecycleCom
 	executor.execute(new MessageConsumer());
     }
 
+    /*
+     * @see
+     * com.sitewhere.server.lifecycle.LifecycleComponent#lifecycleStart(com.
+     * sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void lifecycleStart(ILifecycleProgressMonitor monitor) {
+	super.lifecycleStart(monitor);
+
+	// Register after subclasses have finished starting so records are not
+	// delivered before they are ready.
+	if (isSharedMode() && (getLifecycleStatus() == LifecycleStatus.Started)) {
+	    try {
+		getMicroservice().getSharedTenantKafkaConsumers().register(this, monitor);
+	    } catch (SiteWhereException e) {
+		setLifecycleError(e);
+		setLifecycleStatus(LifecycleStatus.LifecycleError);
+		getLogger().error("Unable to register with shared consumer.", e);
+	    }
+	}
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -81,6 +115,10 @@ public abstract class MicroserviceKafkaConsumer extends TenantEngineLifecycleCom
      */
     @Override
     public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	if (isSharedMode()) {
+	    getMicroservice().getSharedTenantKafkaConsumers().unregister(this);
+	    return;
+	}
 	if (getConsumer() != null) {
 	    getConsumer().wakeup();
 	}
@@ -89,6 +127,82 @@ public abstract class MicroserviceKafkaConsumer extends TenantEngineLifecycleCom
 	}
     }
 
+    /**
+     * Called after records from a poll have been passed to
+     * {@link #received(String, byte[])} and before their offsets are committed.
+     * Consumers that hand records to other threads should block until those
+     * records have been processed so that offsets are not committed for records
+     * that could still be lost. In shared mode, called after each record.
+     * 
+     * @throws SiteWhereException
+     */
+    protected void awaitReceived() throws SiteWhereException {
+    }
+
+    /**
+     * Called by the shared consumer dispatcher for each record. The record only
+     * counts as processed (and its offset may only be committed) once this
+     * returns.
+     * 
+     * @param key
+     * @param message
+     * @throws SiteWhereException
+     */
+    protected void receivedShared(String key, byte[] message) throws SiteWhereException {
+	received(key, message);
+	awaitReceived();
+    }
+
+    /**
+     * Called for each record along with the partition it was read from. By
+     * default the record is passed to {@link #received(String, byte[])}. Not
+     * used in shared mode.
+     * 
+     * @param partition
+     * @param key
+     * @param message
+     * @throws SiteWhereException
+     */
+    protected void received(TopicPartition partition, String key, byte[] message) throws SiteWhereException {
+	received(key, message);
+    }
+
+    /**
+     * Indicates whether the consumer can take more records. While false, all
+     * assigned partitions are paused and polling continues with a short timeout
+     * so that the consumer stays in its group. Consumers that queue records for
+     * other threads should use this rather than blocking in
+     * {@link #received(String, byte[])}. Not used in shared mode.
+     * 
+     * @return
+     */
+    protected boolean canAccept() {
+	return true;
+    }
+
+    /**
+     * Called on the polling thread before partitions are taken away from this
+     * consumer, after offsets for all records received from them have been
+     * committed. Not called in shared mode.
+     * 
+     * @param partitions
+     * @throws SiteWhereException
+     */
+    protected void onPartitionsRevoked(Collection<TopicPartition> partitions) throws SiteWhereException {
+    }
+
+    /**
+     * Indicates whether records are delivered by a consumer shared across tenant
+     * engines rather than a dedicated consumer. In shared mode,
+     * {@link #received(String, byte[])} is called from a dispatcher worker thread
+     * and may process the record inline.
+     * 
+     * @return
+     */
+    protected boolean isSharedMode() {
+	return (getTenantEngine() != null) && getMicroservice().getInstanceSettings().isKafkaSharedConsumers();
+    }
+
     /**
      * Build configuration settings used by Kafka streams.
      * 
@@ -147,19 +261,47 @@ public abstract class MicroserviceKafkaConsumer extends TenantEngineLifecycleCom
 	@Override
 	public void run() {
 	    try {
-		getConsumer().subscribe(getSourceTopicNames());
+		getConsumer().subscribe(getSourceTopicNames(), new ConsumerRebalanceListener() {
+
+		    @Override
+		    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+			try {
+			    MicroserviceKafkaConsumer.this.onPartitionsRevoked(partitions);
+			} catch (SiteWhereException e) {
+			    getLogger().error("Unable to release revoked partitions.", e);
+			}
+		    }
+
+		    @Override
+		    public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+		    }
+		});
 		while (true) {
-		    ConsumerRecords<String, byte[]> records = consumer.poll(Long.MAX_VALUE);
+		    boolean accepting = canAccept();
+		    Set<TopicPartition> paused = getConsumer().paused();
+		    if (!accepting) {
+			getConsumer().pause(getConsumer().assignment());
+		    } else if (!paused.isEmpty()) {
+			getConsumer().resume(paused);
+		    }
+		    ConsumerRecords<String, byte[]> records = consumer
+			    .poll(accepting ? Long.MAX_VALUE : PAUSED_POLL_TIMEOUT_MS);
 
+		    Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<TopicPartition, OffsetAndMetadata>();
 		    for (TopicPartition topicPartition : records.partitions()) {
 			List<ConsumerRecord<String, byte[]>> topicRecords = records.records(topicPartition);
 			for (ConsumerRecord<String, byte[]> record : topicRecords) {
-			    received(record.key(), record.value());
+			    received(topicPartition, record.key(), record.value());
 			}
 
 			long lastPartitionOffset = topicRecords.get(topicRecords.size() - 1).offset();
-			getConsumer().commitSync(Collections.singletonMap(topicPartition,
-				new OffsetAndMetadata(lastPartitionOffset + 1)));
+			offsets.put(topicPartition, new OffsetAndMetadata(lastPartitionOffset + 1));
+		    }
+
+		    // Only commit once records handed off for processing are done.
+		    awaitReceived();
+		    if (!offsets.isEmpty()) {
+			getConsumer().commitSync(offsets);
 		    }
 		}
 	    } catch (WakeupException e) {
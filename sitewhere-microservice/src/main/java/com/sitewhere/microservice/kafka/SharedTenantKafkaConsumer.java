@@ -0,0 +1,415 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.microservice.kafka;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+
+import com.sitewhere.server.lifecycle.LifecycleComponent;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.microservice.IMicroservice;
+import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
+
+/**
+ * Single Kafka consumer that reads a topic for every tenant (matched by
+ * pattern) on behalf of all tenant engines in the microservice. Records are
+ * handed to a {@link TenantRecordDispatcher}. Partitions for tenants that are
+ * not running or whose queue is full are paused until the tenant can accept
+ * records again. Offsets are only committed once the dispatcher reports the
+ * records as processed. When a tenant is unregistered, records it had queued
+ * are discarded and its partitions are rewound to the last committed offset so
+ * they are delivered again once the tenant is restarted.
+ *
+ * The shared consumer uses a group id that differs from the per-tenant groups
+ * used otherwise. When a partition is assigned that has no committed offset in
+ * the shared group, the offset committed by the tenant group is used instead,
+ * so switching to shared mode does not skip or replay records.
+ *
+ * @author Derek
+ */
+public class SharedTenantKafkaConsumer extends LifecycleComponent {
+
+    /** Number of threads used if an invalid count is configured */
+    public static final int DEFAULT_WORKER_COUNT = 4;
+
+    /** Timeout used when polling so paused partitions are re-evaluated */
+    private static final long POLL_TIMEOUT_MS = 100;
+
+    /** Interval at which topic metadata is refreshed to discover new tenants */
+    private static final int METADATA_MAX_AGE_MS = 30 * 1000;
+
+    /** Consumer id */
+    private static String CONSUMER_ID = UUID.randomUUID().toString();
+
+    /** Parent microservice */
+    private IMicroservice microservice;
+
+    /** Suffix shared by tenant consumer group ids */
+    private String groupSuffix;
+
+    /** Suffixes shared by tenant topic names */
+    private List<String> topicSuffixes;
+
+    /** Consumer */
+    private KafkaConsumer<String, byte[]> consumer;
+
+    /** Executor for polling thread */
+    private ExecutorService executor;
+
+    /** Dispatches records to tenants */
+    private TenantRecordDispatcher dispatcher;
+
+    /** Last offset committed for each assigned partition (polling thread only) */
+    private Map<TopicPartition, Long> committedOffsets = new HashMap<>();
+
+    public SharedTenantKafkaConsumer(IMicroservice microservice, String groupSuffix, List<String> topicSuffixes) {
+	this.microservice = microservice;
+	this.groupSuffix = groupSuffix;
+	this.topicSuffixes = topicSuffixes;
+    }
+
+    /*
+     * @see
+     * com.sitewhere.server.lifecycle.LifecycleComponent#start(com.sitewhere.spi.
+     * server.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	getLogger().info("Shared consumer for '" + getGroupSuffix() + "' consuming topics matching: "
+		+ getTopicPattern().pattern());
+	int workers = getMicroservice().getInstanceSettings().getKafkaSharedConsumerThreads();
+	this.dispatcher = new TenantRecordDispatcher((workers > 0) ? workers : DEFAULT_WORKER_COUNT);
+	dispatcher.start(new TenantRecordDispatcher.WorkerThreadFactory("Shared " + getGroupSuffix()));
+	this.consumer = new KafkaConsumer<>(buildConfiguration());
+	this.executor = Executors.newSingleThreadExecutor();
+	executor.execute(new MessageConsumer());
+    }
+
+    /*
+     * @see
+     * com.sitewhere.server.lifecycle.LifecycleComponent#stop(com.sitewhere.spi.
+     * server.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	if (consumer != null) {
+	    consumer.wakeup();
+	}
+	if (executor != null) {
+	    executor.shutdown();
+	}
+	if (dispatcher != null) {
+	    dispatcher.stop();
+	}
+    }
+
+    /**
+     * Start delivering records for a tenant.
+     *
+     * @param tenantId
+     * @param handler
+     */
+    public void register(String tenantId, TenantRecordDispatcher.RecordHandler handler) {
+	getDispatcher().register(tenantId, handler);
+    }
+
+    /**
+     * Stop delivering records for a tenant. Blocks until any record being
+     * processed for the tenant has been handled. Partitions for the tenant are
+     * paused and rewound to the last committed offset on the next poll.
+     *
+     * @param tenantId
+     */
+    public void unregister(String tenantId) {
+	getDispatcher().unregister(tenantId);
+    }
+
+    /**
+     * Get pattern that matches topics for all tenants.
+     *
+     * @return
+     */
+    protected Pattern getTopicPattern() {
+	StringBuilder regex = new StringBuilder();
+	for (String suffix : getTopicSuffixes()) {
+	    if (regex.length() > 0) {
+		regex.append("|");
+	    }
+	    regex.append(getMicroservice().getKafkaTopicNaming().getTenantTopicPattern(suffix).pattern());
+	}
+	return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Build consumer configuration.
+     *
+     * @return
+     * @throws SiteWhereException
+     */
+    protected Properties buildConfiguration() throws SiteWhereException {
+	Properties config = new Properties();
+	config.put(ConsumerConfig.CLIENT_ID_CONFIG, CONSUMER_ID);
+	config.put(ConsumerConfig.GROUP_ID_CONFIG,
+		getMicroservice().getKafkaTopicNaming().getGlobalPrefix() + "shared." + getGroupSuffix());
+	addCommonConfiguration(config);
+	config.put(ConsumerConfig.METADATA_MAX_AGE_CONFIG, METADATA_MAX_AGE_MS);
+	return config;
+    }
+
+    /**
+     * Build configuration for a consumer used only to read offsets committed by a
+     * tenant consumer group. It never subscribes, so it does not join the group.
+     *
+     * @param groupId
+     * @return
+     */
+    protected Properties buildTenantGroupConfiguration(String groupId) {
+	Properties config = new Properties();
+	config.put(ConsumerConfig.CLIENT_ID_CONFIG, CONSUMER_ID + "-migration");
+	config.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+	addCommonConfiguration(config);
+	return config;
+    }
+
+    /**
+     * Add settings common to all consumers.
+     *
+     * @param config
+     */
+    protected void addCommonConfiguration(Properties config) {
+	config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG,
+		getMicroservice().getInstanceSettings().getKafkaBootstrapServers());
+	config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+	config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+	config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+    }
+
+    /**
+     * Get the tenant consumer group id that consumed a topic before shared mode
+     * was enabled.
+     *
+     * @param topic
+     * @return
+     */
+    protected String getTenantGroupId(String topic) {
+	for (String suffix : getTopicSuffixes()) {
+	    if (topic.endsWith(suffix)) {
+		return topic.substring(0, topic.length() - suffix.length()) + getGroupSuffix();
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * For assigned partitions with no offset committed by the shared group, start
+     * from the offset committed by the tenant group that previously consumed
+     * them. Must be called from the polling thread.
+     *
+     * @param partitions
+     */
+    protected void migrateTenantGroupOffsets(Collection<TopicPartition> partitions) {
+	Map<String, List<TopicPartition>> byGroupId = new HashMap<>();
+	for (TopicPartition partition : partitions) {
+	    if (consumer.committed(partition) != null) {
+		continue;
+	    }
+	    String groupId = getTenantGroupId(partition.topic());
+	    if (groupId != null) {
+		byGroupId.computeIfAbsent(groupId, group -> new ArrayList<>()).add(partition);
+	    }
+	}
+	for (Map.Entry<String, List<TopicPartition>> entry : byGroupId.entrySet()) {
+	    try (KafkaConsumer<String, byte[]> tenantGroup = new KafkaConsumer<>(
+		    buildTenantGroupConfiguration(entry.getKey()))) {
+		for (TopicPartition partition : entry.getValue()) {
+		    OffsetAndMetadata committed = tenantGroup.committed(partition);
+		    if (committed != null) {
+			consumer.seek(partition, committed.offset());
+			getLogger().info("Resuming " + partition + " at offset " + committed.offset()
+				+ " committed by group '" + entry.getKey() + "'.");
+		    }
+		}
+	    } catch (Exception e) {
+		getLogger().warn("Unable to read offsets committed by group '" + entry.getKey() + "'.", e);
+	    }
+	}
+    }
+
+    /**
+     * Record the current position of newly assigned partitions as committed.
+     * Must be called from the polling thread.
+     *
+     * @param partitions
+     */
+    protected void trackAssignedPartitions(Collection<TopicPartition> partitions) {
+	for (TopicPartition partition : partitions) {
+	    committedOffsets.put(partition, consumer.position(partition));
+	}
+    }
+
+    /**
+     * Commit offsets for assigned partitions whose records have been processed
+     * since the last commit. Must be called from the polling thread.
+     */
+    protected void commitProcessedOffsets() {
+	Map<TopicPartition, OffsetAndMetadata> commit = new HashMap<>();
+	for (Map.Entry<TopicPartition, Long> entry : committedOffsets.entrySet()) {
+	    Long processed = getDispatcher().getProcessedOffsets().get(entry.getKey());
+	    if ((processed != null) && (processed > entry.getValue())) {
+		commit.put(entry.getKey(), new OffsetAndMetadata(processed));
+	    }
+	}
+	if (!commit.isEmpty()) {
+	    consumer.commitSync(commit);
+	    for (Map.Entry<TopicPartition, OffsetAndMetadata> entry : commit.entrySet()) {
+		committedOffsets.put(entry.getKey(), entry.getValue().offset());
+	    }
+	}
+    }
+
+    /**
+     * Seek partitions of tenants unregistered since the last poll back to the
+     * last committed offset, since records they had queued were discarded. Must
+     * be called from the polling thread after processed offsets are committed.
+     */
+    protected void rewindUnregisteredTenants() {
+	List<String> tenantIds = getDispatcher().takeUnregistered();
+	if (tenantIds.isEmpty()) {
+	    return;
+	}
+	for (TopicPartition partition : consumer.assignment()) {
+	    String tenantId = getMicroservice().getKafkaTopicNaming().getTenantIdForTopic(partition.topic());
+	    Long committed = committedOffsets.get(partition);
+	    if ((committed != null) && tenantIds.contains(tenantId)) {
+		consumer.seek(partition, committed);
+	    }
+	}
+    }
+
+    /**
+     * Pause partitions for tenants that can not accept records and resume those
+     * that can. Must be called from the polling thread.
+     */
+    protected void updatePausedPartitions() {
+	Set<TopicPartition> paused = consumer.paused();
+	List<TopicPartition> pause = new ArrayList<>();
+	List<TopicPartition> resume = new ArrayList<>();
+	for (TopicPartition partition : consumer.assignment()) {
+	    String tenantId = getMicroservice().getKafkaTopicNaming().getTenantIdForTopic(partition.topic());
+	    boolean accepting = (tenantId != null) && getDispatcher().canAccept(tenantId);
+	    if (accepting && paused.contains(partition)) {
+		resume.add(partition);
+	    } else if (!accepting && !paused.contains(partition)) {
+		pause.add(partition);
+	    }
+	}
+	if (!pause.isEmpty()) {
+	    consumer.pause(pause);
+	}
+	if (!resume.isEmpty()) {
+	    consumer.resume(resume);
+	}
+    }
+
+    public IMicroservice getMicroservice() {
+	return microservice;
+    }
+
+    public String getGroupSuffix() {
+	return groupSuffix;
+    }
+
+    public List<String> getTopicSuffixes() {
+	return topicSuffixes;
+    }
+
+    public TenantRecordDispatcher getDispatcher() {
+	return dispatcher;
+    }
+
+    /**
+     * Thread that polls Kafka and hands records to the dispatcher.
+     *
+     * @author Derek
+     */
+    private class MessageConsumer implements Runnable {
+
+	@Override
+	public void run() {
+	    try {
+		consumer.subscribe(getTopicPattern(), new ConsumerRebalanceListener() {
+
+		    @Override
+		    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+			commitProcessedOffsets();
+			committedOffsets.keySet().removeAll(partitions);
+			getDispatcher().clearProcessedOffsets(partitions);
+		    }
+
+		    @Override
+		    public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+			migrateTenantGroupOffsets(partitions);
+			trackAssignedPartitions(partitions);
+		    }
+		});
+		while (true) {
+		    commitProcessedOffsets();
+		    rewindUnregisteredTenants();
+		    updatePausedPartitions();
+		    ConsumerRecords<String, byte[]> records = consumer.poll(POLL_TIMEOUT_MS);
+		    for (TopicPartition partition : records.partitions()) {
+			String tenantId = getMicroservice().getKafkaTopicNaming()
+				.getTenantIdForTopic(partition.topic());
+			for (ConsumerRecord<String, byte[]> record : records.records(partition)) {
+			    if ((tenantId == null) || !getDispatcher().offer(tenantId, partition, record.offset(),
+				    record.key(), record.value())) {
+				// Redeliver from this record once tenant can accept it.
+				consumer.seek(partition, record.offset());
+				consumer.pause(Collections.singletonList(partition));
+				break;
+			    }
+			}
+		    }
+		}
+	    } catch (WakeupException e) {
+		getLogger().info("Shared consumer thread received shutdown request.");
+		try {
+		    commitProcessedOffsets();
+		} catch (Exception commitError) {
+		    getLogger().warn("Unable to commit processed offsets on shutdown.", commitError);
+		}
+		consumer.unsubscribe();
+	    } catch (Exception e) {
+		getLogger().error("Error in shared consumer processing.", e);
+	    } finally {
+		consumer.close();
+	    }
+	}
+    }
+}
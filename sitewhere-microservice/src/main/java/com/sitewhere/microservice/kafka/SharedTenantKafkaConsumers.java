@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.microservice.kafka;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sitewhere.server.lifecycle.LifecycleComponent;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.microservice.IMicroservice;
+import com.sitewhere.spi.microservice.kafka.IMicroserviceKafkaConsumer;
+import com.sitewhere.spi.microservice.kafka.ISharedTenantKafkaConsumers;
+import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
+import com.sitewhere.spi.tenant.ITenant;
+
+/**
+ * Keeps one {@link SharedTenantKafkaConsumer} per tenant consumer group. Tenant
+ * consumers for the same component share a group id suffix (the part after the
+ * tenant prefix), so all tenants of a given consumer type are multiplexed over
+ * a single Kafka connection and polling thread.
+ *
+ * @author Derek
+ */
+public class SharedTenantKafkaConsumers extends LifecycleComponent implements ISharedTenantKafkaConsumers {
+
+    /** Parent microservice */
+    private IMicroservice microservice;
+
+    /** Shared consumers indexed by group id suffix */
+    private Map<String, SharedTenantKafkaConsumer> consumersByGroupSuffix = new HashMap<>();
+
+    public SharedTenantKafkaConsumers(IMicroservice microservice) {
+	this.microservice = microservice;
+    }
+
+    /*
+     * @see
+     * com.sitewhere.spi.microservice.kafka.ISharedTenantKafkaConsumers#register(
+     * com.sitewhere.spi.microservice.kafka.IMicroserviceKafkaConsumer,
+     * com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public synchronized void register(IMicroserviceKafkaConsumer consumer, ILifecycleProgressMonitor monitor)
+	    throws SiteWhereException {
+	ITenant tenant = consumer.getTenantEngine().getTenant();
+	String prefix = getMicroservice().getKafkaTopicNaming().getTenantPrefix(tenant);
+	String groupSuffix = stripPrefix(prefix, consumer.getConsumerGroupId());
+	SharedTenantKafkaConsumer shared = consumersByGroupSuffix.get(groupSuffix);
+	if (shared == null) {
+	    List<String> topicSuffixes = new ArrayList<>();
+	    for (String topic : consumer.getSourceTopicNames()) {
+		topicSuffixes.add(stripPrefix(prefix, topic));
+	    }
+	    shared = new SharedTenantKafkaConsumer(getMicroservice(), groupSuffix, topicSuffixes);
+	    startNestedComponent(shared, monitor, true);
+	    consumersByGroupSuffix.put(groupSuffix, shared);
+	}
+	if (consumer instanceof MicroserviceKafkaConsumer) {
+	    MicroserviceKafkaConsumer base = (MicroserviceKafkaConsumer) consumer;
+	    shared.register(tenant.getId(), (key, value) -> base.receivedShared(key, value));
+	} else {
+	    shared.register(tenant.getId(), (key, value) -> consumer.received(key, value));
+	}
+    }
+
+    /*
+     * @see
+     * com.sitewhere.spi.microservice.kafka.ISharedTenantKafkaConsumers#unregister(
+     * com.sitewhere.spi.microservice.kafka.IMicroserviceKafkaConsumer)
+     */
+    @Override
+    public synchronized void unregister(IMicroserviceKafkaConsumer consumer) throws SiteWhereException {
+	ITenant tenant = consumer.getTenantEngine().getTenant();
+	String prefix = getMicroservice().getKafkaTopicNaming().getTenantPrefix(tenant);
+	SharedTenantKafkaConsumer shared = consumersByGroupSuffix
+		.get(stripPrefix(prefix, consumer.getConsumerGroupId()));
+	if (shared != null) {
+	    shared.unregister(tenant.getId());
+	}
+    }
+
+    /*
+     * @see
+     * com.sitewhere.server.lifecycle.LifecycleComponent#stop(com.sitewhere.spi.
+     * server.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public synchronized void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	for (SharedTenantKafkaConsumer shared : consumersByGroupSuffix.values()) {
+	    stopNestedComponent(shared, monitor);
+	}
+	consumersByGroupSuffix.clear();
+    }
+
+    /**
+     * Remove tenant prefix from a group id or topic name.
+     *
+     * @param prefix
+     * @param value
+     * @return
+     * @throws SiteWhereException
+     */
+    protected String stripPrefix(String prefix, String value) throws SiteWhereException {
+	if (!value.startsWith(prefix)) {
+	    throw new SiteWhereException("Unable to share consumer. '" + value + "' is not a tenant-scoped name.");
+	}
+	return value.substring(prefix.length());
+    }
+
+    public IMicroservice getMicroservice() {
+	return microservice;
+    }
+
+    public void setMicroservice(IMicroservice microservice) {
+	this.microservice = microservice;
+    }
+}
@@ -0,0 +1,452 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.microservice.kafka;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Dispatches records read by a shared consumer to the tenants they belong to.
+ * Each tenant has a bounded queue so that a slow tenant fills its own queue
+ * (allowing the consumer to pause its partitions) rather than blocking others.
+ * A fixed pool of workers takes tenants from a ready queue in round-robin order
+ * and processes at most a quantum of records before moving to the next tenant.
+ *
+ * The offset following the last record processed is tracked for each
+ * partition so that the consumer only commits offsets for records that have
+ * actually been handled, not just queued.
+ *
+ * @author Derek
+ */
+public class TenantRecordDispatcher {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Default number of records queued per tenant */
+    public static final int DEFAULT_QUEUE_CAPACITY = 500;
+
+    /** Default number of records processed for a tenant before yielding */
+    public static final int DEFAULT_QUANTUM = 50;
+
+    /** Number of worker threads */
+    private int workerCount;
+
+    /** Maximum number of records queued per tenant */
+    private int queueCapacity;
+
+    /** Number of records processed for a tenant before yielding */
+    private int quantum;
+
+    /** Queues indexed by tenant id */
+    private ConcurrentHashMap<String, TenantQueue> queuesByTenantId = new ConcurrentHashMap<>();
+
+    /** Tenants with records waiting to be processed */
+    private BlockingQueue<TenantQueue> ready = new LinkedBlockingQueue<>();
+
+    /** Offset following the last record processed for each partition */
+    private ConcurrentHashMap<TopicPartition, Long> processedOffsets = new ConcurrentHashMap<>();
+
+    /** Tenants unregistered since last checked by the consumer */
+    private Set<String> unregistered = ConcurrentHashMap.newKeySet();
+
+    /** Worker threads */
+    private ExecutorService workers;
+
+    public TenantRecordDispatcher(int workerCount) {
+	this(workerCount, DEFAULT_QUEUE_CAPACITY, DEFAULT_QUANTUM);
+    }
+
+    public TenantRecordDispatcher(int workerCount, int queueCapacity, int quantum) {
+	this.workerCount = workerCount;
+	this.queueCapacity = queueCapacity;
+	this.quantum = quantum;
+    }
+
+    /**
+     * Start worker threads.
+     *
+     * @param threadFactory
+     */
+    public void start(ThreadFactory threadFactory) {
+	this.workers = Executors.newFixedThreadPool(getWorkerCount(), threadFactory);
+	for (int i = 0; i < getWorkerCount(); i++) {
+	    workers.execute(new Worker());
+	}
+    }
+
+    /**
+     * Stop worker threads.
+     */
+    public void stop() {
+	if (workers != null) {
+	    workers.shutdownNow();
+	    try {
+		workers.awaitTermination(10, TimeUnit.SECONDS);
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+	    }
+	}
+    }
+
+    /**
+     * Register handler for records belonging to a tenant.
+     *
+     * @param tenantId
+     * @param handler
+     */
+    public void register(String tenantId, RecordHandler handler) {
+	queuesByTenantId.put(tenantId, new TenantQueue(tenantId, handler, getQueueCapacity()));
+    }
+
+    /**
+     * Unregister handler for a tenant. New records are refused and records still
+     * queued are discarded without being processed. Blocks until a record being
+     * processed for the tenant has been handled. The tenant is then reported by
+     * {@link #takeUnregistered()} so the consumer can rewind its partitions to
+     * the last processed offset.
+     *
+     * @param tenantId
+     */
+    public void unregister(String tenantId) {
+	TenantQueue queue = queuesByTenantId.remove(tenantId);
+	if (queue == null) {
+	    return;
+	}
+	synchronized (queue) {
+	    queue.setClosed(true);
+	    queue.getRecords().clear();
+	}
+	unregistered.add(tenantId);
+    }
+
+    /**
+     * Get tenants unregistered since the last call. Records queued for them may
+     * have been discarded.
+     *
+     * @return
+     */
+    public List<String> takeUnregistered() {
+	List<String> tenantIds = new ArrayList<>();
+	for (String tenantId : unregistered) {
+	    if (unregistered.remove(tenantId)) {
+		tenantIds.add(tenantId);
+	    }
+	}
+	return tenantIds;
+    }
+
+    /**
+     * Indicates whether a handler is registered for the tenant.
+     *
+     * @param tenantId
+     * @return
+     */
+    public boolean isRegistered(String tenantId) {
+	return queuesByTenantId.containsKey(tenantId);
+    }
+
+    /**
+     * Indicates whether the tenant is registered and has room for more records.
+     *
+     * @param tenantId
+     * @return
+     */
+    public boolean canAccept(String tenantId) {
+	TenantQueue queue = queuesByTenantId.get(tenantId);
+	return (queue != null) && (queue.getRecords().remainingCapacity() > 0);
+    }
+
+    /**
+     * Queue a record for a tenant. Returns false if the tenant is not registered
+     * or its queue is full, in which case the caller is expected to redeliver the
+     * record later.
+     *
+     * @param tenantId
+     * @param partition
+     * @param offset
+     * @param key
+     * @param value
+     * @return
+     */
+    public boolean offer(String tenantId, TopicPartition partition, long offset, String key, byte[] value) {
+	TenantQueue queue = queuesByTenantId.get(tenantId);
+	if ((queue == null) || queue.isClosed()) {
+	    return false;
+	}
+	if (!queue.getRecords().offer(new QueuedRecord(partition, offset, key, value))) {
+	    return false;
+	}
+	schedule(queue);
+	return true;
+    }
+
+    /**
+     * Get number of records waiting to be processed for a tenant.
+     *
+     * @param tenantId
+     * @return
+     */
+    public int getPendingCount(String tenantId) {
+	TenantQueue queue = queuesByTenantId.get(tenantId);
+	return (queue != null) ? queue.getRecords().size() : 0;
+    }
+
+    /**
+     * Get offset following the last record processed for each partition.
+     *
+     * @return
+     */
+    public Map<TopicPartition, Long> getProcessedOffsets() {
+	return processedOffsets;
+    }
+
+    /**
+     * Stop tracking processed offsets for partitions no longer assigned.
+     *
+     * @param partitions
+     */
+    public void clearProcessedOffsets(Collection<TopicPartition> partitions) {
+	for (TopicPartition partition : partitions) {
+	    processedOffsets.remove(partition);
+	}
+    }
+
+    /**
+     * Add tenant to ready queue unless it is already scheduled.
+     *
+     * @param queue
+     */
+    protected void schedule(TenantQueue queue) {
+	if (queue.getScheduled().compareAndSet(false, true)) {
+	    ready.add(queue);
+	}
+    }
+
+    public int getWorkerCount() {
+	return workerCount;
+    }
+
+    public int getQueueCapacity() {
+	return queueCapacity;
+    }
+
+    public int getQuantum() {
+	return quantum;
+    }
+
+    /**
+     * Handles records for a single tenant.
+     *
+     * @author Derek
+     */
+    public static interface RecordHandler {
+
+	/**
+	 * Handle a record.
+	 *
+	 * @param key
+	 * @param value
+	 * @throws SiteWhereException
+	 */
+	public void handle(String key, byte[] value) throws SiteWhereException;
+    }
+
+    /**
+     * Record waiting to be processed.
+     *
+     * @author Derek
+     */
+    private static class QueuedRecord {
+
+	/** Partition record was read from */
+	private TopicPartition partition;
+
+	/** Record offset */
+	private long offset;
+
+	/** Record key */
+	private String key;
+
+	/** Record value */
+	private byte[] value;
+
+	public QueuedRecord(TopicPartition partition, long offset, String key, byte[] value) {
+	    this.partition = partition;
+	    this.offset = offset;
+	    this.key = key;
+	    this.value = value;
+	}
+
+	public TopicPartition getPartition() {
+	    return partition;
+	}
+
+	public long getOffset() {
+	    return offset;
+	}
+
+	public String getKey() {
+	    return key;
+	}
+
+	public byte[] getValue() {
+	    return value;
+	}
+    }
+
+    /**
+     * Bounded queue of records for a tenant.
+     *
+     * @author Derek
+     */
+    private static class TenantQueue {
+
+	/** Tenant id */
+	private String tenantId;
+
+	/** Handler for records */
+	private RecordHandler handler;
+
+	/** Records waiting to be processed */
+	private BlockingQueue<QueuedRecord> records;
+
+	/** Indicates if tenant is on ready queue or being processed */
+	private AtomicBoolean scheduled = new AtomicBoolean();
+
+	/** Indicates if tenant has been unregistered */
+	private volatile boolean closed;
+
+	public TenantQueue(String tenantId, RecordHandler handler, int capacity) {
+	    this.tenantId = tenantId;
+	    this.handler = handler;
+	    this.records = new ArrayBlockingQueue<>(capacity);
+	}
+
+	public String getTenantId() {
+	    return tenantId;
+	}
+
+	public RecordHandler getHandler() {
+	    return handler;
+	}
+
+	public BlockingQueue<QueuedRecord> getRecords() {
+	    return records;
+	}
+
+	public AtomicBoolean getScheduled() {
+	    return scheduled;
+	}
+
+	public boolean isClosed() {
+	    return closed;
+	}
+
+	public void setClosed(boolean closed) {
+	    this.closed = closed;
+	}
+    }
+
+    /**
+     * Takes tenants from the ready queue and processes up to a quantum of records
+     * for each.
+     *
+     * @author Derek
+     */
+    private class Worker implements Runnable {
+
+	@Override
+	public void run() {
+	    while (!Thread.currentThread().isInterrupted()) {
+		TenantQueue queue;
+		try {
+		    queue = ready.take();
+		} catch (InterruptedException e) {
+		    return;
+		}
+		for (int i = 0; i < getQuantum(); i++) {
+		    if (!process(queue)) {
+			break;
+		    }
+		}
+		queue.getScheduled().set(false);
+		if (!queue.isClosed() && !queue.getRecords().isEmpty()) {
+		    schedule(queue);
+		}
+	    }
+	}
+
+	/**
+	 * Process the next record for a tenant unless it has been unregistered.
+	 * Errors are logged and the record is counted as processed.
+	 *
+	 * @param queue
+	 * @return
+	 */
+	protected boolean process(TenantQueue queue) {
+	    synchronized (queue) {
+		if (queue.isClosed()) {
+		    return false;
+		}
+		QueuedRecord record = queue.getRecords().poll();
+		if (record == null) {
+		    return false;
+		}
+		try {
+		    queue.getHandler().handle(record.getKey(), record.getValue());
+		} catch (Throwable t) {
+		    LOGGER.error("Unable to process record for tenant '" + queue.getTenantId() + "'.", t);
+		}
+		processedOffsets.put(record.getPartition(), record.getOffset() + 1);
+		return true;
+	    }
+	}
+    }
+
+    /**
+     * Creates named worker threads.
+     *
+     * @author Derek
+     */
+    public static class WorkerThreadFactory implements ThreadFactory {
+
+	/** Thread name prefix */
+	private String prefix;
+
+	/** Counts threads */
+	private AtomicInteger counter = new AtomicInteger();
+
+	public WorkerThreadFactory(String prefix) {
+	    this.prefix = prefix;
+	}
+
+	public Thread newThread(Runnable r) {
+	    return new Thread(r, prefix + " " + counter.incrementAndGet());
+	}
+    }
+}
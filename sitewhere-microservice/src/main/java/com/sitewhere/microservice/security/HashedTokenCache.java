@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.microservice.security;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.sitewhere.spi.SiteWhereException;
+
+/**
+ * Thread-safe, size-bounded cache of data derived from validating a JWT.
+ * Entries are keyed by a SHA-256 hash of the token so that raw credentials are
+ * not retained, and are discarded once the token's expiration has passed so
+ * that an expired token is re-validated (and rejected) rather than served from
+ * cache. Concurrent misses for the same token share a single load.
+ * 
+ * @author Derek
+ */
+public class HashedTokenCache<V extends HashedTokenCache.IExpiring> {
+
+    /** Cached values by token hash */
+    private Cache<String, V> cache;
+
+    public HashedTokenCache(long maxEntries, long maxLifetimeMs) {
+	this.cache = CacheBuilder.newBuilder().maximumSize(maxEntries)
+		.expireAfterWrite(maxLifetimeMs, TimeUnit.MILLISECONDS).build();
+    }
+
+    /**
+     * Get the value for a token, calling the loader to validate the token if it
+     * is not cached or has expired.
+     * 
+     * @param jwt
+     * @param loader
+     * @return
+     * @throws SiteWhereException
+     */
+    public V get(String jwt, Callable<V> loader) throws SiteWhereException {
+	String key = hash(jwt);
+	V value = load(cache, key, loader);
+	if ((value != null) && (value.isExpired())) {
+	    cache.invalidate(key);
+	    value = load(cache, key, loader);
+	}
+	return value;
+    }
+
+    /**
+     * Remove all cached entries.
+     */
+    public void invalidateAll() {
+	cache.invalidateAll();
+    }
+
+    /**
+     * Get approximate number of cached entries.
+     * 
+     * @return
+     */
+    public long size() {
+	return cache.size();
+    }
+
+    /**
+     * Compute the cache key for a token.
+     * 
+     * @param jwt
+     * @return
+     */
+    public static String hash(String jwt) {
+	return Hashing.sha256().hashString(jwt, StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * Get a value from a cache, unwrapping loader exceptions. Values the loader
+     * can not find are not cached and are returned as null.
+     * 
+     * @param cache
+     * @param key
+     * @param loader
+     * @return
+     * @throws SiteWhereException
+     */
+    public static <K, T> T load(Cache<K, T> cache, K key, Callable<T> loader) throws SiteWhereException {
+	try {
+	    return cache.get(key, loader);
+	} catch (InvalidCacheLoadException e) {
+	    return null;
+	} catch (ExecutionException | UncheckedExecutionException e) {
+	    if (e.getCause() instanceof SiteWhereException) {
+		throw (SiteWhereException) e.getCause();
+	    } else if (e.getCause() instanceof RuntimeException) {
+		throw (RuntimeException) e.getCause();
+	    }
+	    throw new SiteWhereException("Unable to load cached token data.", e.getCause());
+	}
+    }
+
+    /**
+     * Cached value that expires along with the token it was derived from.
+     * 
+     * @author Derek
+     */
+    public static interface IExpiring {
+
+	/**
+	 * Get token expiration (millis).
+	 * 
+	 * @return
+	 */
+	public long getExpiration();
+
+	/**
+	 * Indicates whether token has expired.
+	 * 
+	 * @return
+	 */
+	public default boolean isExpired() {
+	    return System.currentTimeMillis() >= getExpiration();
+	}
+    }
+}
@@ -8,12 +8,26 @@
 package com.sitewhere.microservice.state;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.sitewhere.microservice.Microservice;
 import com.sitewhere.rest.model.microservice.state.InstanceMicroservice;
 import com.sitewhere.rest.model.microservice.state.InstanceTenantEngine;
 import com.sitewhere.rest.model.microservice.state.InstanceTopologyEntry;
@@ -30,6 +44,7 @@ import com.sitewhere.spi.microservice.state.IMicroserviceDetails;
 import com.sitewhere.spi.microservice.state.IMicroserviceState;
 import com.sitewhere.spi.microservice.state.ITenantEngineState;
 import com.sitewhere.spi.microservice.state.ITopologyStateAggregator;
+import com.sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor;
 import com.sitewhere.spi.server.lifecycle.LifecycleStatus;
 
 /**
@@ -43,16 +58,64 @@ public class TopologyStateAggregator extends MicroserviceStateUpdatesKafkaConsum
     /** Static logger instance */
     private static Logger LOGGER = LogManager.getLogger();
 
-    /** Latest inferred instance topology snapshot */
-    private IInstanceTopologySnapshot instanceTopologySnapshot = new InstanceTopologySnapshot();
+    /** Default number of missed heartbeats before a microservice is expired */
+    private static final int DEFAULT_MISSED_HEARTBEATS_THRESHOLD = 3;
+
+    /** Latest published topology snapshot (never modified once published) */
+    private volatile IInstanceTopologySnapshot instanceTopologySnapshot = new InstanceTopologySnapshot();
 
     /** List of listeners for topology updates */
     private List<IInstanceTopologyUpdatesListener> listeners = new CopyOnWriteArrayList<>();
 
+    /** Number of missed heartbeats before a microservice is expired */
+    private int missedHeartbeatsThreshold = DEFAULT_MISSED_HEARTBEATS_THRESHOLD;
+
+    /** Executor that periodically expires stale microservices */
+    private ScheduledExecutorService expirationService;
+
+    /** Snapshot changes (previous, current) waiting to be sent to listeners */
+    private Queue<IInstanceTopologySnapshot[]> pendingNotifications = new ConcurrentLinkedQueue<>();
+
+    /** Indicates a thread is currently notifying listeners */
+    private AtomicBoolean notifying = new AtomicBoolean();
+
     public TopologyStateAggregator(IMicroservice microservice) {
 	super(microservice);
     }
 
+    /*
+     * @see com.sitewhere.microservice.kafka.MicroserviceKafkaConsumer#start(com.
+     * sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void start(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	super.start(monitor);
+	this.expirationService = Executors.newSingleThreadScheduledExecutor(new TopologyExpirationThreadFactory());
+	expirationService.scheduleWithFixedDelay(new Runnable() {
+
+	    @Override
+	    public void run() {
+		try {
+		    expireStaleMicroservices();
+		} catch (Throwable t) {
+		    getLogger().error("Unable to expire stale microservices.", t);
+		}
+	    }
+	}, Microservice.HEARTBEAT_INTERVAL_SECS, Microservice.HEARTBEAT_INTERVAL_SECS, TimeUnit.SECONDS);
+    }
+
+    /*
+     * @see com.sitewhere.microservice.kafka.MicroserviceKafkaConsumer#stop(com.
+     * sitewhere.spi.server.lifecycle.ILifecycleProgressMonitor)
+     */
+    @Override
+    public void stop(ILifecycleProgressMonitor monitor) throws SiteWhereException {
+	if (expirationService != null) {
+	    expirationService.shutdownNow();
+	}
+	super.stop(monitor);
+    }
+
     /*
      * @see com.sitewhere.spi.microservice.state.ITopologyStateAggregator#
      * getTenantEngineState(java.lang.String, java.lang.String)
@@ -81,13 +144,32 @@ public class TopologyStateAggregator extends MicroserviceStateUpdatesKafkaConsum
      */
     @Override
     public void onMicroserviceStateUpdate(IMicroserviceState state) {
+	applyMicroserviceStateUpdate(state);
+	dispatchNotifications();
+    }
+
+    /**
+     * Publish a snapshot reflecting a microservice state update.
+     * 
+     * @param state
+     */
+    protected synchronized void applyMicroserviceStateUpdate(IMicroserviceState state) {
 	getLogger().debug("Received microservice update from '" + state.getMicroservice().getIdentifier() + "'.");
+	IInstanceTopologySnapshot current = getInstanceTopologySnapshot();
+	IMicroserviceDetails details = state.getMicroservice();
 	if ((state.getLifecycleStatus() == LifecycleStatus.Terminating)
 		|| (state.getLifecycleStatus() == LifecycleStatus.Terminated)) {
-	    removeMicroservice(state);
-	} else {
-	    getOrCreateMicroservice(state);
+	    getLogger().debug("Detected termination of microservice (" + microserviceId(state) + ").");
+	    publish(withoutMicroservice(current, details.getIdentifier(), details.getHostname()));
+	    return;
 	}
+	IInstanceMicroservice existing = getMicroservice(current, details);
+	InstanceMicroservice updated = new InstanceMicroservice();
+	updated.setLatestState(state);
+	updated.setTenantEngines((existing != null) ? existing.getTenantEngines()
+		: Collections.<String, IInstanceTenantEngine>emptyMap());
+	updated.setLastUpdated(currentTimeMillis());
+	publish(withMicroservice(current, updated));
     }
 
     /*
@@ -98,72 +180,90 @@ public class TopologyStateAggregator extends MicroserviceStateUpdatesKafkaConsum
      */
     @Override
     public void onTenantEngineStateUpdate(ITenantEngineState updated) {
-	getLogger().debug("Received tenant update from '" + updated.getMicroservice().getIdentifier() + "'.");
-	MicroserviceState placeholder = new MicroserviceState();
-	placeholder.setMicroservice(updated.getMicroservice());
-	placeholder.setLifecycleStatus(LifecycleStatus.Started);
-
-	// Get microservice and existing engine (creating if necessary.
-	IInstanceMicroservice microservice = getOrCreateMicroservice(placeholder);
-	IInstanceTenantEngine engine = microservice.getTenantEngines().get(updated.getTenantId());
-	if (engine == null) {
-	    InstanceTenantEngine created = new InstanceTenantEngine();
-	    created.setLatestState(updated);
-	    created.setLastUpdated(System.currentTimeMillis());
-	    microservice.getTenantEngines().put(updated.getTenantId(), created);
-	    engine = created;
-	    onTenantEngineAdded(microservice.getLatestState(), updated);
-	} else {
-	    ITenantEngineState existing = engine.getLatestState();
-	    ((InstanceTenantEngine) engine).setLatestState(updated);
-	    ((InstanceTenantEngine) engine).setLastUpdated(System.currentTimeMillis());
-
-	    // Handle terminated tenant engine.
-	    if ((updated.getLifecycleStatus() == LifecycleStatus.Terminating)
-		    || (updated.getLifecycleStatus() == LifecycleStatus.Terminated)) {
-		microservice.getTenantEngines().remove(existing.getTenantId());
-		onTenantEngineRemoved(microservice.getLatestState(), existing);
-	    } else if (existing.getLifecycleStatus() != updated.getLifecycleStatus()) {
-		onTenantEngineUpdated(microservice.getLatestState(), existing, updated);
-	    }
-	}
+	applyTenantEngineStateUpdate(updated);
+	dispatchNotifications();
     }
 
     /**
-     * Get microservice record for given state or create one if not already
-     * registered.
+     * Publish a snapshot reflecting a tenant engine state update.
      * 
      * @param updated
-     * @return
      */
-    protected IInstanceMicroservice getOrCreateMicroservice(IMicroserviceState updated) {
-	IInstanceMicroservice microservice = getMicroservice(updated);
-	if (microservice == null) {
-	    microservice = addMicroservice(updated);
+    protected synchronized void applyTenantEngineStateUpdate(ITenantEngineState updated) {
+	getLogger().debug("Received tenant update from '" + updated.getMicroservice().getIdentifier() + "'.");
+	IInstanceTopologySnapshot current = getInstanceTopologySnapshot();
+
+	// Use existing microservice state or a placeholder if not seen yet.
+	IInstanceMicroservice existing = getMicroservice(current, updated.getMicroservice());
+	IMicroserviceState state = (existing != null) ? existing.getLatestState() : null;
+	if (state == null) {
+	    MicroserviceState placeholder = new MicroserviceState();
+	    placeholder.setMicroservice(updated.getMicroservice());
+	    placeholder.setLifecycleStatus(LifecycleStatus.Started);
+	    state = placeholder;
+	}
+
+	Map<String, IInstanceTenantEngine> engines = new HashMap<>();
+	if (existing != null) {
+	    engines.putAll(existing.getTenantEngines());
+	}
+	if ((updated.getLifecycleStatus() == LifecycleStatus.Terminating)
+		|| (updated.getLifecycleStatus() == LifecycleStatus.Terminated)) {
+	    engines.remove(updated.getTenantId());
 	} else {
-	    IMicroserviceState existing = microservice.getLatestState();
-	    ((InstanceMicroservice) microservice).setLatestState(updated);
-	    if (existing.getLifecycleStatus() != updated.getLifecycleStatus()) {
-		onMicroserviceUpdated(existing, updated);
-	    } else {
-		getLogger().debug(
-			"Ignored update of '" + updated.getMicroservice().getIdentifier() + "' due to same status.");
+	    InstanceTenantEngine engine = new InstanceTenantEngine();
+	    engine.setLatestState(updated);
+	    engine.setLastUpdated(currentTimeMillis());
+	    engines.put(updated.getTenantId(), engine);
+	}
+
+	InstanceMicroservice microservice = new InstanceMicroservice();
+	microservice.setLatestState(state);
+	microservice.setTenantEngines(Collections.unmodifiableMap(engines));
+	microservice.setLastUpdated(currentTimeMillis());
+	publish(withMicroservice(current, microservice));
+    }
+
+    /**
+     * Remove microservices that have not sent a heartbeat within the allowed
+     * number of heartbeat intervals. Tenant engines for expired microservices are
+     * removed along with them.
+     */
+    public void expireStaleMicroservices() {
+	applyExpiration();
+	dispatchNotifications();
+    }
+
+    /**
+     * Publish a snapshot without microservices that have missed heartbeats.
+     */
+    protected synchronized void applyExpiration() {
+	long cutoff = currentTimeMillis()
+		- (getMissedHeartbeatsThreshold() * Microservice.HEARTBEAT_INTERVAL_SECS * 1000L);
+	IInstanceTopologySnapshot updated = getInstanceTopologySnapshot();
+	for (IInstanceTopologyEntry entry : getInstanceTopologySnapshot().getTopologyEntriesByIdentifier().values()) {
+	    for (IInstanceMicroservice microservice : entry.getMicroservicesByHostname().values()) {
+		if (microservice.getLastUpdated() < cutoff) {
+		    IMicroserviceDetails details = microservice.getLatestState().getMicroservice();
+		    getLogger().info("Expiring microservice (" + microserviceId(microservice.getLatestState())
+			    + ") after missing heartbeats.");
+		    updated = withoutMicroservice(updated, details.getIdentifier(), details.getHostname());
+		}
 	    }
 	}
-	((InstanceMicroservice) microservice).setLastUpdated(System.currentTimeMillis());
-	return microservice;
+	publish(updated);
     }
 
     /**
-     * Get existing microservice record from topology or null if no match.
+     * Get existing microservice record from a snapshot or null if no match.
      * 
-     * @param state
+     * @param snapshot
+     * @param microservice
      * @return
      */
-    protected IInstanceMicroservice getMicroservice(IMicroserviceState state) {
-	IMicroserviceDetails microservice = state.getMicroservice();
-	IInstanceTopologyEntry entry = getInstanceTopologySnapshot().getTopologyEntriesByIdentifier()
-		.get(microservice.getIdentifier());
+    protected IInstanceMicroservice getMicroservice(IInstanceTopologySnapshot snapshot,
+	    IMicroserviceDetails microservice) {
+	IInstanceTopologyEntry entry = snapshot.getTopologyEntriesByIdentifier().get(microservice.getIdentifier());
 	if (entry == null) {
 	    return null;
 	}
@@ -171,53 +271,194 @@ public class TopologyStateAggregator extends MicroserviceStateUpdatesKafkaConsum
     }
 
     /**
-     * Add record for microservice based on state.
+     * Create a new snapshot that adds or replaces a microservice record. Entries
+     * for other identifiers are shared with the existing snapshot.
      * 
-     * @param state
+     * @param current
+     * @param microservice
      * @return
      */
-    protected IInstanceMicroservice addMicroservice(IMicroserviceState state) {
-	IMicroserviceDetails details = state.getMicroservice();
-	IInstanceTopologyEntry entry = getInstanceTopologySnapshot().getTopologyEntriesByIdentifier()
-		.get(details.getIdentifier());
-	if (entry == null) {
-	    entry = new InstanceTopologyEntry();
-	    getInstanceTopologySnapshot().getTopologyEntriesByIdentifier().put(details.getIdentifier(), entry);
+    protected IInstanceTopologySnapshot withMicroservice(IInstanceTopologySnapshot current,
+	    IInstanceMicroservice microservice) {
+	IMicroserviceDetails details = microservice.getLatestState().getMicroservice();
+	IInstanceTopologyEntry entry = current.getTopologyEntriesByIdentifier().get(details.getIdentifier());
+	Map<String, IInstanceMicroservice> hosts = new HashMap<>();
+	if (entry != null) {
+	    hosts.putAll(entry.getMicroservicesByHostname());
 	}
+	hosts.put(details.getHostname(), microservice);
+	return withEntry(current, details.getIdentifier(), hosts);
+    }
 
-	// Create record for microservice.
-	InstanceMicroservice microservice = new InstanceMicroservice();
-	microservice.setLatestState(state);
-	entry.getMicroservicesByHostname().put(details.getHostname(), microservice);
+    /**
+     * Create a new snapshot without the given microservice. Returns the existing
+     * snapshot if the microservice is not present.
+     * 
+     * @param current
+     * @param identifier
+     * @param hostname
+     * @return
+     */
+    protected IInstanceTopologySnapshot withoutMicroservice(IInstanceTopologySnapshot current, String identifier,
+	    String hostname) {
+	IInstanceTopologyEntry entry = current.getTopologyEntriesByIdentifier().get(identifier);
+	if ((entry == null) || (!entry.getMicroservicesByHostname().containsKey(hostname))) {
+	    return current;
+	}
+	Map<String, IInstanceMicroservice> hosts = new HashMap<>(entry.getMicroservicesByHostname());
+	hosts.remove(hostname);
+	return withEntry(current, identifier, hosts);
+    }
+
+    /**
+     * Create a new snapshot with the given hosts for an identifier (removing the
+     * entry if there are no hosts).
+     * 
+     * @param current
+     * @param identifier
+     * @param hosts
+     * @return
+     */
+    protected IInstanceTopologySnapshot withEntry(IInstanceTopologySnapshot current, String identifier,
+	    Map<String, IInstanceMicroservice> hosts) {
+	Map<String, IInstanceTopologyEntry> entries = new HashMap<>(current.getTopologyEntriesByIdentifier());
+	if (hosts.isEmpty()) {
+	    entries.remove(identifier);
+	} else {
+	    InstanceTopologyEntry entry = new InstanceTopologyEntry();
+	    entry.setMicroservicesByHostname(Collections.unmodifiableMap(hosts));
+	    entries.put(identifier, entry);
+	}
+	InstanceTopologySnapshot snapshot = new InstanceTopologySnapshot();
+	snapshot.setVersion(current.getVersion() + 1);
+	snapshot.setTopologyEntriesByIdentifier(Collections.unmodifiableMap(entries));
+	return snapshot;
+    }
 
-	getLogger().debug(
-		"Detected addition of microservice (" + details.getIdentifier() + ":" + details.getHostname() + ").");
-	onMicroserviceAdded(state);
+    /**
+     * Publish a new snapshot and queue notification of differences from the
+     * previous one. Caller must hold the lock on the aggregator. Listeners are
+     * called later by {@link #dispatchNotifications()} once the lock is released.
+     * 
+     * @param updated
+     */
+    protected void publish(IInstanceTopologySnapshot updated) {
+	IInstanceTopologySnapshot previous = getInstanceTopologySnapshot();
+	if (updated == previous) {
+	    return;
+	}
+	this.instanceTopologySnapshot = updated;
+	pendingNotifications.add(new IInstanceTopologySnapshot[] { previous, updated });
+    }
 
-	return microservice;
+    /**
+     * Notify listeners of queued snapshot changes without holding the aggregator
+     * lock. Changes are delivered in the order they were published and by one
+     * thread at a time. A thread that finds another already dispatching leaves
+     * its changes for that thread to deliver.
+     */
+    protected void dispatchNotifications() {
+	while ((!pendingNotifications.isEmpty()) && (notifying.compareAndSet(false, true))) {
+	    try {
+		IInstanceTopologySnapshot[] change;
+		while ((change = pendingNotifications.poll()) != null) {
+		    fireDifferences(change[0], change[1]);
+		}
+	    } finally {
+		notifying.set(false);
+	    }
+	}
     }
 
     /**
-     * Remove a microservice that has been terminated.
+     * Notify listeners of differences between two snapshots. Since unchanged
+     * records are shared between snapshots, identity comparisons skip everything
+     * that was not touched by an update.
      * 
-     * @param state
+     * @param previous
+     * @param current
      */
-    protected void removeMicroservice(IMicroserviceState state) {
-	IMicroserviceDetails microservice = state.getMicroservice();
-	getLogger().debug("Detected termination of microservice (" + microservice.getIdentifier() + ":"
-		+ microservice.getHostname() + ").");
-	IInstanceTopologyEntry entry = getInstanceTopologySnapshot().getTopologyEntriesByIdentifier()
-		.get(microservice.getIdentifier());
-	if (entry != null) {
-	    IInstanceMicroservice removed = entry.getMicroservicesByHostname().remove(microservice.getHostname());
-	    if (removed != null) {
-		getLogger().debug("Removed terminated microservice (" + microservice.getIdentifier() + ":"
-			+ microservice.getHostname() + ").");
-		onMicroserviceRemoved(state);
+    protected void fireDifferences(IInstanceTopologySnapshot previous, IInstanceTopologySnapshot current) {
+	Set<String> identifiers = new HashSet<>(previous.getTopologyEntriesByIdentifier().keySet());
+	identifiers.addAll(current.getTopologyEntriesByIdentifier().keySet());
+	for (String identifier : identifiers) {
+	    IInstanceTopologyEntry before = previous.getTopologyEntriesByIdentifier().get(identifier);
+	    IInstanceTopologyEntry after = current.getTopologyEntriesByIdentifier().get(identifier);
+	    if (before == after) {
+		continue;
+	    }
+	    Map<String, IInstanceMicroservice> beforeHosts = (before != null) ? before.getMicroservicesByHostname()
+		    : Collections.<String, IInstanceMicroservice>emptyMap();
+	    Map<String, IInstanceMicroservice> afterHosts = (after != null) ? after.getMicroservicesByHostname()
+		    : Collections.<String, IInstanceMicroservice>emptyMap();
+	    Set<String> hostnames = new HashSet<>(beforeHosts.keySet());
+	    hostnames.addAll(afterHosts.keySet());
+	    for (String hostname : hostnames) {
+		fireMicroserviceDifferences(beforeHosts.get(hostname), afterHosts.get(hostname));
 	    }
 	}
     }
 
+    /**
+     * Notify listeners of differences between two versions of a microservice
+     * record.
+     * 
+     * @param before
+     * @param after
+     */
+    protected void fireMicroserviceDifferences(IInstanceMicroservice before, IInstanceMicroservice after) {
+	if (before == after) {
+	    return;
+	}
+	if (before == null) {
+	    onMicroserviceAdded(after.getLatestState());
+	    for (IInstanceTenantEngine engine : after.getTenantEngines().values()) {
+		onTenantEngineAdded(after.getLatestState(), engine.getLatestState());
+	    }
+	    return;
+	}
+	if (after == null) {
+	    for (IInstanceTenantEngine engine : before.getTenantEngines().values()) {
+		onTenantEngineRemoved(before.getLatestState(), engine.getLatestState());
+	    }
+	    onMicroserviceRemoved(before.getLatestState());
+	    return;
+	}
+	if (before.getLatestState().getLifecycleStatus() != after.getLatestState().getLifecycleStatus()) {
+	    onMicroserviceUpdated(before.getLatestState(), after.getLatestState());
+	}
+	if (before.getTenantEngines() == after.getTenantEngines()) {
+	    return;
+	}
+	Set<String> tenantIds = new HashSet<>(before.getTenantEngines().keySet());
+	tenantIds.addAll(after.getTenantEngines().keySet());
+	for (String tenantId : tenantIds) {
+	    IInstanceTenantEngine beforeEngine = before.getTenantEngines().get(tenantId);
+	    IInstanceTenantEngine afterEngine = after.getTenantEngines().get(tenantId);
+	    if (beforeEngine == afterEngine) {
+		continue;
+	    } else if (beforeEngine == null) {
+		onTenantEngineAdded(after.getLatestState(), afterEngine.getLatestState());
+	    } else if (afterEngine == null) {
+		onTenantEngineRemoved(after.getLatestState(), beforeEngine.getLatestState());
+	    } else if (beforeEngine.getLatestState().getLifecycleStatus() != afterEngine.getLatestState()
+		    .getLifecycleStatus()) {
+		onTenantEngineUpdated(after.getLatestState(), beforeEngine.getLatestState(),
+			afterEngine.getLatestState());
+	    }
+	}
+    }
+
+    /**
+     * Get current time. Broken out so that expiration can be tested against a
+     * simulated clock.
+     * 
+     * @return
+     */
+    protected long currentTimeMillis() {
+	return System.currentTimeMillis();
+    }
+
     /**
      * Get printable version of microservice details.
      * 
@@ -341,8 +582,12 @@ public class TopologyStateAggregator extends MicroserviceStateUpdatesKafkaConsum
 	return instanceTopologySnapshot;
     }
 
-    public void setInstanceTopologySnapshot(IInstanceTopologySnapshot instanceTopologySnapshot) {
-	this.instanceTopologySnapshot = instanceTopologySnapshot;
+    public int getMissedHeartbeatsThreshold() {
+	return missedHeartbeatsThreshold;
+    }
+
+    public void setMissedHeartbeatsThreshold(int missedHeartbeatsThreshold) {
+	this.missedHeartbeatsThreshold = missedHeartbeatsThreshold;
     }
 
     public List<IInstanceTopologyUpdatesListener> getListeners() {
@@ -362,4 +607,15 @@ public class TopologyStateAggregator extends MicroserviceStateUpdatesKafkaConsum
     public Logger getLogger() {
 	return LOGGER;
     }
+
+    /** Used for naming topology expiration thread */
+    private class TopologyExpirationThreadFactory implements ThreadFactory {
+
+	/** Counts threads */
+	private AtomicInteger counter = new AtomicInteger();
+
+	public Thread newThread(Runnable r) {
+	    return new Thread(r, "Topology Expiration " + counter.incrementAndGet());
+	}
+    }
 }
\ No newline at end of file
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.microservice.grpc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.sitewhere.microservice.security.JwtExpiredException;
+import com.sitewhere.microservice.security.TokenManagement;
+import com.sitewhere.rest.model.user.User;
+import com.sitewhere.spi.SiteWhereException;
+
+import io.jsonwebtoken.Claims;
+
+public class JwtClaimsCacheTest {
+
+    /** Username */
+    private static String USERNAME = "dadams";
+
+    /** Granted authorities */
+    private static List<String> AUTHS = Arrays.asList(new String[] { "this", "that", "other" });
+
+    @Test
+    public void testCachedClaims() throws SiteWhereException {
+	TokenManagement tokens = new TokenManagement();
+	JwtClaimsCache cache = new JwtClaimsCache(() -> tokens);
+	String jwt = generateToken(tokens, USERNAME);
+	JwtClaimsCache.CachedClaims first = cache.getClaims(jwt);
+	assertEquals(USERNAME, first.getUsername());
+	assertTrue(first.getAuthorities().containsAll(AUTHS));
+	assertSame(first, cache.getClaims(jwt));
+    }
+
+    @Test
+    public void testExpiredTokenRevalidatedAndRejected() throws Exception {
+	AtomicInteger decodes = new AtomicInteger();
+	TokenManagement tokens = new TokenManagement() {
+
+	    @Override
+	    public Date getExpirationDate(int expirationInMinutes) {
+		return new Date(System.currentTimeMillis() + 1000);
+	    }
+
+	    @Override
+	    public Claims getClaimsForToken(String token) throws SiteWhereException {
+		decodes.incrementAndGet();
+		return super.getClaimsForToken(token);
+	    }
+	};
+	JwtClaimsCache cache = new JwtClaimsCache(() -> tokens);
+	String jwt = generateToken(tokens, USERNAME);
+	JwtClaimsCache.CachedClaims first = cache.getClaims(jwt);
+	assertSame(first, cache.getClaims(jwt));
+	assertEquals(1, decodes.get());
+
+	// Expiration claim has second precision, so wait past the next second.
+	Thread.sleep(Math.max(first.getExpiration() - System.currentTimeMillis(), 0) + 1100);
+	assertTrue(first.isExpired());
+	try {
+	    cache.getClaims(jwt);
+	    fail("Expired token was served from cache.");
+	} catch (JwtExpiredException e) {
+	    // Expected.
+	}
+	assertEquals(2, decodes.get());
+	assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testBoundedSize() throws SiteWhereException {
+	TokenManagement tokens = new TokenManagement();
+	JwtClaimsCache cache = new JwtClaimsCache(() -> tokens, 10, JwtClaimsCache.DEFAULT_MAX_LIFETIME_MS);
+	for (int i = 0; i < 50; i++) {
+	    cache.getClaims(generateToken(tokens, USERNAME + i));
+	}
+	assertTrue(cache.size() <= 10);
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+	TokenManagement tokens = new TokenManagement();
+	JwtClaimsCache cache = new JwtClaimsCache(() -> tokens, 16, JwtClaimsCache.DEFAULT_MAX_LIFETIME_MS);
+	List<String> jwts = new ArrayList<String>();
+	for (int i = 0; i < 32; i++) {
+	    jwts.add(generateToken(tokens, USERNAME + i));
+	}
+	ExecutorService executor = Executors.newFixedThreadPool(8);
+	try {
+	    List<Future<Void>> results = new ArrayList<Future<Void>>();
+	    for (int t = 0; t < 8; t++) {
+		final int offset = t;
+		results.add(executor.submit(new Callable<Void>() {
+
+		    @Override
+		    public Void call() throws Exception {
+			for (int i = 0; i < 1000; i++) {
+			    int index = (offset + i) % jwts.size();
+			    assertEquals(USERNAME + index, cache.getClaims(jwts.get(index)).getUsername());
+			}
+			return null;
+		    }
+		}));
+	    }
+	    for (Future<Void> result : results) {
+		result.get();
+	    }
+	} finally {
+	    executor.shutdownNow();
+	}
+	assertTrue(cache.size() <= 16);
+    }
+
+    /**
+     * Generate a token for the given user.
+     * 
+     * @param tokens
+     * @param username
+     * @return
+     * @throws SiteWhereException
+     */
+    protected String generateToken(TokenManagement tokens, String username) throws SiteWhereException {
+	User user = new User();
+	user.setUsername(username);
+	user.setAuthorities(AUTHS);
+	return tokens.generateToken(user, 60);
+    }
+}
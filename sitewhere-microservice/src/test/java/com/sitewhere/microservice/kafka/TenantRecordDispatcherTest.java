@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.microservice.kafka;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+
+public class TenantRecordDispatcherTest {
+
+    /** Number of simulated tenants */
+    private static final int TENANT_COUNT = 500;
+
+    /** Records sent per tenant in throughput test */
+    private static final int RECORDS_PER_TENANT = 200;
+
+    /** Partition used for queued records */
+    private static final TopicPartition PARTITION = new TopicPartition("topic", 0);
+
+    @Test
+    public void testRejectsUnregisteredTenant() {
+	TenantRecordDispatcher dispatcher = new TenantRecordDispatcher(1);
+	assertFalse(dispatcher.canAccept("missing"));
+	assertFalse(dispatcher.offer("missing", PARTITION, 0, "key", new byte[0]));
+
+	dispatcher.register("tenant", (key, value) -> {
+	});
+	assertTrue(dispatcher.canAccept("tenant"));
+	dispatcher.unregister("tenant");
+	assertFalse(dispatcher.offer("tenant", PARTITION, 0, "key", new byte[0]));
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+	// Workers are not started, so queued records are never drained.
+	TenantRecordDispatcher dispatcher = new TenantRecordDispatcher(1, 10, 5);
+	dispatcher.register("slow", (key, value) -> {
+	});
+	dispatcher.register("fast", (key, value) -> {
+	});
+
+	for (int i = 0; i < 10; i++) {
+	    assertTrue(dispatcher.offer("slow", PARTITION, 0, "key", new byte[0]));
+	}
+	assertFalse(dispatcher.canAccept("slow"));
+	assertFalse(dispatcher.offer("slow", PARTITION, 0, "key", new byte[0]));
+
+	// A full queue for one tenant does not block offers for another.
+	assertTrue(dispatcher.offer("fast", PARTITION, 0, "key", new byte[0]));
+	assertEquals(1, dispatcher.getPendingCount("fast"));
+    }
+
+    @Test
+    public void testTracksProcessedOffsets() throws Exception {
+	CountDownLatch release = new CountDownLatch(1);
+	CountDownLatch blocked = new CountDownLatch(1);
+	TenantRecordDispatcher dispatcher = new TenantRecordDispatcher(1);
+	dispatcher.register("tenant", (key, value) -> {
+	    if ("block".equals(key)) {
+		blocked.countDown();
+		await(release);
+	    }
+	});
+	dispatcher.offer("tenant", PARTITION, 10, "key", new byte[0]);
+	dispatcher.offer("tenant", PARTITION, 11, "block", new byte[0]);
+	dispatcher.offer("tenant", PARTITION, 12, "key", new byte[0]);
+
+	// Queued records are not reported as processed.
+	assertNull(dispatcher.getProcessedOffsets().get(PARTITION));
+
+	dispatcher.start(new TenantRecordDispatcher.WorkerThreadFactory("Test"));
+	assertTrue(blocked.await(10, TimeUnit.SECONDS));
+	assertEquals(Long.valueOf(11), dispatcher.getProcessedOffsets().get(PARTITION));
+
+	release.countDown();
+	long deadline = System.currentTimeMillis() + 10000;
+	while ((dispatcher.getPendingCount("tenant") > 0) && (System.currentTimeMillis() < deadline)) {
+	    Thread.sleep(10);
+	}
+	Thread.sleep(50);
+	dispatcher.stop();
+	assertEquals(Long.valueOf(13), dispatcher.getProcessedOffsets().get(PARTITION));
+    }
+
+    @Test
+    public void testUnregisterDiscardsQueuedRecords() throws Exception {
+	CountDownLatch release = new CountDownLatch(1);
+	CountDownLatch blocked = new CountDownLatch(1);
+	AtomicInteger processed = new AtomicInteger();
+	TenantRecordDispatcher dispatcher = new TenantRecordDispatcher(1);
+	dispatcher.register("tenant", (key, value) -> {
+	    blocked.countDown();
+	    await(release);
+	    processed.incrementAndGet();
+	});
+	for (int i = 0; i < 5; i++) {
+	    dispatcher.offer("tenant", PARTITION, i, "key", new byte[0]);
+	}
+	dispatcher.start(new TenantRecordDispatcher.WorkerThreadFactory("Test"));
+	assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+	// Unregister waits for the record being processed.
+	Thread unregister = new Thread(() -> dispatcher.unregister("tenant"));
+	unregister.start();
+	Thread.sleep(50);
+	assertTrue(unregister.isAlive());
+	assertTrue(dispatcher.takeUnregistered().isEmpty());
+	release.countDown();
+	unregister.join(10000);
+	assertFalse(unregister.isAlive());
+
+	Thread.sleep(50);
+	dispatcher.stop();
+	assertEquals(1, processed.get());
+	assertEquals(Long.valueOf(1), dispatcher.getProcessedOffsets().get(PARTITION));
+	assertEquals(Collections.singletonList("tenant"), dispatcher.takeUnregistered());
+	assertTrue(dispatcher.takeUnregistered().isEmpty());
+    }
+
+    @Test
+    public void testFairness() throws Exception {
+	List<String> order = Collections.synchronizedList(new ArrayList<String>());
+	TenantRecordDispatcher dispatcher = new TenantRecordDispatcher(1, 1000, 10);
+	dispatcher.register("hot", (key, value) -> order.add("hot"));
+	for (int i = 0; i < 1000; i++) {
+	    dispatcher.offer("hot", PARTITION, 0, "key", new byte[0]);
+	}
+	for (int i = 0; i < TENANT_COUNT - 1; i++) {
+	    String tenantId = "cold-" + i;
+	    dispatcher.register(tenantId, (key, value) -> order.add(tenantId));
+	    dispatcher.offer(tenantId, PARTITION, 0, "key", new byte[0]);
+	}
+
+	dispatcher.start(new TenantRecordDispatcher.WorkerThreadFactory("Test"));
+	long deadline = System.currentTimeMillis() + 10000;
+	while ((order.size() < 1000 + TENANT_COUNT - 1) && (System.currentTimeMillis() < deadline)) {
+	    Thread.sleep(10);
+	}
+	dispatcher.stop();
+	assertEquals(1000 + TENANT_COUNT - 1, order.size());
+
+	// Every cold tenant is served after a single quantum of the hot tenant.
+	int lastCold = 0;
+	for (int i = 0; i < order.size(); i++) {
+	    if (!"hot".equals(order.get(i))) {
+		lastCold = i;
+	    }
+	}
+	assertEquals(10 + TENANT_COUNT - 2, lastCold);
+    }
+
+    @Test
+    public void testManyTenantsWithFixedWorkers() throws Exception {
+	int workers = 4;
+	Set<String> threads = ConcurrentHashMap.newKeySet();
+	AtomicInteger processed = new AtomicInteger();
+	TenantRecordDispatcher dispatcher = new TenantRecordDispatcher(workers);
+	for (int i = 0; i < TENANT_COUNT; i++) {
+	    dispatcher.register("tenant-" + i, (key, value) -> {
+		threads.add(Thread.currentThread().getName());
+		processed.incrementAndGet();
+	    });
+	}
+	dispatcher.start(new TenantRecordDispatcher.WorkerThreadFactory("Test"));
+
+	int total = TENANT_COUNT * RECORDS_PER_TENANT;
+	for (int r = 0; r < RECORDS_PER_TENANT; r++) {
+	    for (int i = 0; i < TENANT_COUNT; i++) {
+		while (!dispatcher.offer("tenant-" + i, PARTITION, 0, "key", new byte[0])) {
+		    TimeUnit.MILLISECONDS.sleep(1);
+		}
+	    }
+	}
+	long deadline = System.currentTimeMillis() + 30000;
+	while ((processed.get() < total) && (System.currentTimeMillis() < deadline)) {
+	    Thread.sleep(10);
+	}
+	dispatcher.stop();
+
+	assertEquals(total, processed.get());
+	assertTrue(threads.size() <= workers);
+    }
+
+    /**
+     * Wait for a latch from within a record handler.
+     *
+     * @param latch
+     */
+    private static void await(CountDownLatch latch) {
+	try {
+	    latch.await();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+    }
+}
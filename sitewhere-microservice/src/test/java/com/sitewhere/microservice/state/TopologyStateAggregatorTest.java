@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.microservice.state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.sitewhere.microservice.Microservice;
+import com.sitewhere.rest.model.microservice.state.MicroserviceDetails;
+import com.sitewhere.rest.model.microservice.state.MicroserviceState;
+import com.sitewhere.rest.model.microservice.state.TenantEngineState;
+import com.sitewhere.spi.microservice.state.IInstanceMicroservice;
+import com.sitewhere.spi.microservice.state.IInstanceTopologyEntry;
+import com.sitewhere.spi.microservice.state.IInstanceTopologySnapshot;
+import com.sitewhere.spi.microservice.state.IInstanceTopologyUpdatesListener;
+import com.sitewhere.spi.microservice.state.IMicroserviceState;
+import com.sitewhere.spi.microservice.state.ITenantEngineState;
+import com.sitewhere.spi.server.lifecycle.LifecycleStatus;
+
+public class TopologyStateAggregatorTest {
+
+    /** Number of microservice instances in churn test */
+    private static final int INSTANCE_COUNT = 300;
+
+    /** Number of tenants per instance in churn test */
+    private static final int TENANTS_PER_INSTANCE = 10;
+
+    /** Heartbeat interval in milliseconds */
+    private static final long HEARTBEAT_MS = Microservice.HEARTBEAT_INTERVAL_SECS * 1000L;
+
+    @Test
+    public void testExpiryAfterMissedHeartbeats() {
+	SimulatedClockAggregator aggregator = new SimulatedClockAggregator();
+	CountingListener listener = new CountingListener();
+	aggregator.addInstanceTopologyUpdatesListener(listener);
+
+	aggregator.onMicroserviceStateUpdate(state("device-management", "host-1", LifecycleStatus.Started));
+	aggregator.onMicroserviceStateUpdate(state("device-management", "host-2", LifecycleStatus.Started));
+	aggregator.onTenantEngineStateUpdate(
+		tenant("device-management", "host-1", "tenant-1", LifecycleStatus.Started));
+	assertEquals(2, listener.microservicesAdded.get());
+	assertEquals(1, listener.tenantsAdded.get());
+
+	// Only host-2 keeps sending heartbeats.
+	for (int i = 0; i < 3; i++) {
+	    aggregator.time += HEARTBEAT_MS;
+	    aggregator.onMicroserviceStateUpdate(state("device-management", "host-2", LifecycleStatus.Started));
+	    aggregator.expireStaleMicroservices();
+	}
+	assertEquals(0, listener.microservicesRemoved.get());
+
+	aggregator.time += HEARTBEAT_MS;
+	aggregator.onMicroserviceStateUpdate(state("device-management", "host-2", LifecycleStatus.Started));
+	aggregator.expireStaleMicroservices();
+	assertEquals(1, listener.microservicesRemoved.get());
+	assertEquals(1, listener.tenantsRemoved.get());
+	assertEquals(0, listener.microservicesUpdated.get());
+
+	IInstanceTopologyEntry entry = aggregator.getInstanceTopologySnapshot().getTopologyEntriesByIdentifier()
+		.get("device-management");
+	assertEquals(1, entry.getMicroservicesByHostname().size());
+	assertTrue(entry.getMicroservicesByHostname().containsKey("host-2"));
+    }
+
+    @Test
+    public void testPublishedSnapshotsAreImmutable() {
+	SimulatedClockAggregator aggregator = new SimulatedClockAggregator();
+	aggregator.onMicroserviceStateUpdate(state("asset-management", "host-1", LifecycleStatus.Started));
+	IInstanceTopologySnapshot first = aggregator.getInstanceTopologySnapshot();
+
+	aggregator.onTenantEngineStateUpdate(tenant("asset-management", "host-1", "tenant-1", LifecycleStatus.Started));
+	IInstanceTopologySnapshot second = aggregator.getInstanceTopologySnapshot();
+	assertNotSame(first, second);
+	assertTrue(second.getVersion() > first.getVersion());
+	assertEquals(0, first.getTopologyEntriesByIdentifier().get("asset-management").getMicroservicesByHostname()
+		.get("host-1").getTenantEngines().size());
+	assertEquals(1, second.getTopologyEntriesByIdentifier().get("asset-management").getMicroservicesByHostname()
+		.get("host-1").getTenantEngines().size());
+
+	try {
+	    second.getTopologyEntriesByIdentifier().clear();
+	    throw new AssertionError("Snapshot should not be modifiable.");
+	} catch (UnsupportedOperationException e) {
+	}
+    }
+
+    @Test
+    public void testChurnWithManyInstances() {
+	SimulatedClockAggregator aggregator = new SimulatedClockAggregator();
+	CountingListener listener = new CountingListener();
+	aggregator.addInstanceTopologyUpdatesListener(listener);
+	Random random = new Random(42);
+
+	for (int i = 0; i < INSTANCE_COUNT; i++) {
+	    String identifier = "service-" + (i % 20);
+	    aggregator.onMicroserviceStateUpdate(state(identifier, "host-" + i, LifecycleStatus.Started));
+	    for (int t = 0; t < TENANTS_PER_INSTANCE; t++) {
+		aggregator.onTenantEngineStateUpdate(
+			tenant(identifier, "host-" + i, "tenant-" + t, LifecycleStatus.Started));
+	    }
+	}
+	assertEquals(INSTANCE_COUNT, listener.microservicesAdded.get());
+	assertEquals(INSTANCE_COUNT * TENANTS_PER_INSTANCE, listener.tenantsAdded.get());
+
+	// Random tenant restarts while all but every tenth instance keep sending
+	// heartbeats.
+	int silent = INSTANCE_COUNT / 10;
+	for (int round = 0; round < 5; round++) {
+	    aggregator.time += HEARTBEAT_MS;
+	    for (int i = 0; i < INSTANCE_COUNT; i++) {
+		String identifier = "service-" + (i % 20);
+		if ((i % 10) == 0) {
+		    continue;
+		}
+		aggregator.onMicroserviceStateUpdate(state(identifier, "host-" + i, LifecycleStatus.Started));
+		if (random.nextInt(10) == 0) {
+		    aggregator.onTenantEngineStateUpdate(tenant(identifier, "host-" + i,
+			    "tenant-" + random.nextInt(TENANTS_PER_INSTANCE), LifecycleStatus.Stopped));
+		}
+	    }
+	    aggregator.expireStaleMicroservices();
+	}
+	assertEquals(silent, listener.microservicesRemoved.get());
+	assertEquals(silent * TENANTS_PER_INSTANCE, listener.tenantsRemoved.get());
+	int remaining = 0;
+	for (IInstanceTopologyEntry entry : aggregator.getInstanceTopologySnapshot().getTopologyEntriesByIdentifier()
+		.values()) {
+	    for (IInstanceMicroservice microservice : entry.getMicroservicesByHostname().values()) {
+		assertEquals(TENANTS_PER_INSTANCE, microservice.getTenantEngines().size());
+		remaining++;
+	    }
+	}
+	assertEquals(INSTANCE_COUNT - silent, remaining);
+    }
+
+    @Test
+    public void testListenersCalledWithoutLock() {
+	SimulatedClockAggregator aggregator = new SimulatedClockAggregator();
+	AtomicBoolean lockHeld = new AtomicBoolean();
+	CountingListener listener = new CountingListener() {
+
+	    @Override
+	    public void onMicroserviceAdded(IMicroserviceState microservice) {
+		super.onMicroserviceAdded(microservice);
+		lockHeld.compareAndSet(false, Thread.holdsLock(aggregator));
+
+		// Updates made from a callback are delivered after the current one.
+		if ("host-1".equals(microservice.getMicroservice().getHostname())) {
+		    aggregator.onMicroserviceStateUpdate(state("event-sources", "host-2", LifecycleStatus.Started));
+		}
+	    }
+
+	    @Override
+	    public void onMicroserviceRemoved(IMicroserviceState microservice) {
+		super.onMicroserviceRemoved(microservice);
+		lockHeld.compareAndSet(false, Thread.holdsLock(aggregator));
+	    }
+	};
+	aggregator.addInstanceTopologyUpdatesListener(listener);
+
+	aggregator.onMicroserviceStateUpdate(state("event-sources", "host-1", LifecycleStatus.Started));
+	assertEquals(2, listener.microservicesAdded.get());
+	aggregator.time += 4 * HEARTBEAT_MS;
+	aggregator.expireStaleMicroservices();
+	assertEquals(2, listener.microservicesRemoved.get());
+	assertFalse(lockHeld.get());
+    }
+
+    protected MicroserviceState state(String identifier, String hostname, LifecycleStatus status) {
+	MicroserviceState state = new MicroserviceState();
+	state.setMicroservice(details(identifier, hostname));
+	state.setLifecycleStatus(status);
+	return state;
+    }
+
+    protected TenantEngineState tenant(String identifier, String hostname, String tenantId, LifecycleStatus status) {
+	TenantEngineState state = new TenantEngineState();
+	state.setMicroservice(details(identifier, hostname));
+	state.setTenantId(tenantId);
+	state.setLifecycleStatus(status);
+	return state;
+    }
+
+    protected MicroserviceDetails details(String identifier, String hostname) {
+	MicroserviceDetails details = new MicroserviceDetails();
+	details.setIdentifier(identifier);
+	details.setHostname(hostname);
+	return details;
+    }
+
+    /**
+     * Aggregator driven by a simulated clock.
+     */
+    private static class SimulatedClockAggregator extends TopologyStateAggregator {
+
+	/** Simulated time */
+	private long time = 1000000L;
+
+	public SimulatedClockAggregator() {
+	    super(null);
+	}
+
+	@Override
+	protected long currentTimeMillis() {
+	    return time;
+	}
+    }
+
+    /**
+     * Listener that counts topology changes.
+     */
+    private static class CountingListener implements IInstanceTopologyUpdatesListener {
+
+	private AtomicInteger microservicesAdded = new AtomicInteger();
+	private AtomicInteger microservicesUpdated = new AtomicInteger();
+	private AtomicInteger microservicesRemoved = new AtomicInteger();
+	private AtomicInteger tenantsAdded = new AtomicInteger();
+	private AtomicInteger tenantsRemoved = new AtomicInteger();
+
+	@Override
+	public void onMicroserviceAdded(IMicroserviceState microservice) {
+	    microservicesAdded.incrementAndGet();
+	}
+
+	@Override
+	public void onMicroserviceUpdated(IMicroserviceState previous, IMicroserviceState updated) {
+	    microservicesUpdated.incrementAndGet();
+	}
+
+	@Override
+	public void onMicroserviceRemoved(IMicroserviceState microservice) {
+	    microservicesRemoved.incrementAndGet();
+	}
+
+	@Override
+	public void onTenantEngineAdded(IMicroserviceState microservice, ITenantEngineState tenantEngine) {
+	    tenantsAdded.incrementAndGet();
+	}
+
+	@Override
+	public void onTenantEngineUpdated(IMicroserviceState microservice, ITenantEngineState previous,
+		ITenantEngineState updated) {
+	}
+
+	@Override
+	public void onTenantEngineRemoved(IMicroserviceState microservice, ITenantEngineState tenantEngine) {
+	    tenantsRemoved.incrementAndGet();
+	}
+    }
+}
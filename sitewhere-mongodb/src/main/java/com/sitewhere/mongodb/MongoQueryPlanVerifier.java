@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.mongodb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bson.Document;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+
+/**
+ * Runs explain on representative queries and reports any whose winning plan
+ * scans the whole collection or sorts in memory. Used at startup to catch
+ * query shapes that are not covered by an index before the collections grow
+ * large enough for it to matter.
+ * 
+ * @author Derek
+ */
+public class MongoQueryPlanVerifier {
+
+    /** Static logger instance */
+    private static Logger LOGGER = LogManager.getLogger();
+
+    /** Stage that scans the full collection */
+    private static final String STAGE_COLLECTION_SCAN = "COLLSCAN";
+
+    /** Stage that sorts results in memory */
+    private static final String STAGE_SORT = "SORT";
+
+    /** Database queries are run against */
+    private MongoDatabase database;
+
+    /** Descriptions of queries with inefficient plans */
+    private List<String> problems = new ArrayList<String>();
+
+    public MongoQueryPlanVerifier(MongoDatabase database) {
+	this.database = database;
+    }
+
+    /**
+     * Explain a query and record a problem if the plan does not use an index for
+     * both filtering and sorting.
+     * 
+     * @param name
+     * @param collection
+     * @param query
+     * @param sort
+     */
+    public void verify(String name, MongoCollection<Document> collection, Document query, Document sort) {
+	Document find = new Document("find", collection.getNamespace().getCollectionName()).append("filter", query)
+		.append("limit", 1);
+	if (sort != null) {
+	    find.append("sort", sort);
+	}
+	try {
+	    Document explain = getDatabase()
+		    .runCommand(new Document("explain", find).append("verbosity", "queryPlanner"));
+	    Document planner = (Document) explain.get("queryPlanner");
+	    Document winning = (planner != null) ? (Document) planner.get("winningPlan") : null;
+	    if (winning == null) {
+		LOGGER.warn("No query plan returned for '" + name + "'.");
+		return;
+	    }
+	    List<String> stages = new ArrayList<String>();
+	    collectStages(winning, stages);
+	    if (stages.contains(STAGE_COLLECTION_SCAN) || stages.contains(STAGE_SORT)) {
+		String problem = name + " on '" + collection.getNamespace().getCollectionName() + "' uses plan "
+			+ stages;
+		problems.add(problem);
+		LOGGER.warn("Query not fully supported by an index: " + problem);
+	    } else {
+		LOGGER.debug("Query '" + name + "' uses plan " + stages);
+	    }
+	} catch (MongoException e) {
+	    LOGGER.warn("Unable to explain query '" + name + "'.", e);
+	}
+    }
+
+    /**
+     * Walk a plan tree collecting stage names from the root down.
+     * 
+     * @param plan
+     * @param stages
+     */
+    @SuppressWarnings("unchecked")
+    protected static void collectStages(Document plan, List<String> stages) {
+	stages.add(plan.getString("stage"));
+	Document input = (Document) plan.get("inputStage");
+	if (input != null) {
+	    collectStages(input, stages);
+	}
+	List<Document> inputs = (List<Document>) plan.get("inputStages");
+	if (inputs != null) {
+	    for (Document child : inputs) {
+		collectStages(child, stages);
+	    }
+	}
+    }
+
+    public MongoDatabase getDatabase() {
+	return database;
+    }
+
+    public List<String> getProblems() {
+	return problems;
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.spark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.spark.storage.StorageLevel;
+import org.apache.spark.streaming.receiver.Receiver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sitewhere.grpc.kafka.model.KafkaModel.GEnrichedEventPayload;
+import com.sitewhere.grpc.model.DeviceEventModel.GDeviceEventType;
+import com.sitewhere.grpc.model.converter.EventModelConverter;
+import com.sitewhere.grpc.model.marshaling.KafkaModelMarshaler;
+import com.sitewhere.spi.SiteWhereException;
+import com.sitewhere.spi.device.event.DeviceEventType;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.microservice.kafka.IKafkaTopicNaming;
+import com.sitewhere.spi.tenant.ITenant;
+
+/**
+ * Implements a reliable {@link Receiver} that consumes the enriched events
+ * Kafka topic for a single tenant. Each poll is decoded once, filtered by
+ * event type and handed to Spark as a single block via
+ * {@link #store(java.util.Iterator)}. Offsets are committed only after Spark
+ * has stored the block, so events published while the receiver is restarting
+ * are picked up from the last committed offset rather than lost.
+ *
+ * @author Derek
+ */
+public class SiteWhereKafkaReceiver extends Receiver<IDeviceEvent> {
+
+    /** Serial version UID */
+    private static final long serialVersionUID = -2816424013582410716L;
+
+    /** Static logger instance */
+    private static final Logger LOGGER = LoggerFactory.getLogger(SiteWhereKafkaReceiver.class);
+
+    /** Default number of milliseconds to wait in each poll */
+    private static final long DEFAULT_POLL_TIMEOUT_MS = 500;
+
+    /** Default maximum number of records returned by a poll */
+    private static final int DEFAULT_MAX_POLL_RECORDS = 1000;
+
+    /** Kafka bootstrap servers */
+    private String bootstrapServers;
+
+    /** Topic naming used to resolve topic on the driver */
+    private transient IKafkaTopicNaming kafkaTopicNaming;
+
+    /** Tenant id */
+    private String tenantId;
+
+    /** Tenant enriched events topic */
+    private String topicName;
+
+    /** Kafka consumer group id */
+    private String groupId;
+
+    /** Event types passed to Spark (empty for all) */
+    private HashSet<DeviceEventType> eventTypes = new HashSet<DeviceEventType>();
+
+    /** Number of milliseconds to wait in each poll */
+    private long pollTimeoutMs = DEFAULT_POLL_TIMEOUT_MS;
+
+    /** Maximum number of records returned by a poll */
+    private int maxPollRecords = DEFAULT_MAX_POLL_RECORDS;
+
+    /** Offset reset policy used when group has no committed offset */
+    private String autoOffsetReset = "earliest";
+
+    /** Consumer created in receiver thread */
+    private transient volatile KafkaConsumer<String, byte[]> consumer;
+
+    public SiteWhereKafkaReceiver(String bootstrapServers, IKafkaTopicNaming kafkaTopicNaming, ITenant tenant,
+	    String groupId) {
+	this(bootstrapServers, kafkaTopicNaming, tenant, groupId, Collections.<DeviceEventType> emptySet());
+    }
+
+    public SiteWhereKafkaReceiver(String bootstrapServers, IKafkaTopicNaming kafkaTopicNaming, ITenant tenant,
+	    String groupId, Set<DeviceEventType> eventTypes) {
+	super(StorageLevel.MEMORY_AND_DISK_SER_2());
+	this.bootstrapServers = bootstrapServers;
+	this.kafkaTopicNaming = kafkaTopicNaming;
+	this.tenantId = tenant.getId();
+	this.topicName = getKafkaTopicNaming().getInboundEnrichedEventsTopic(tenant);
+	this.groupId = groupId;
+	this.eventTypes.addAll(eventTypes);
+    }
+
+    /*
+     * @see org.apache.spark.streaming.receiver.Receiver#onStart()
+     */
+    @Override
+    public void onStart() {
+	new Thread("SiteWhere Kafka Receiver (" + getTopicName() + ")") {
+	    @Override
+	    public void run() {
+		receive();
+	    }
+	}.start();
+    }
+
+    /*
+     * @see org.apache.spark.streaming.receiver.Receiver#onStop()
+     */
+    @Override
+    public void onStop() {
+	KafkaConsumer<String, byte[]> current = consumer;
+	if (current != null) {
+	    current.wakeup();
+	}
+    }
+
+    /**
+     * Poll Kafka until the receiver is stopped. Each poll is stored as one
+     * block and its offsets committed once the store returns.
+     */
+    protected void receive() {
+	Set<GDeviceEventType> accepted;
+	try {
+	    accepted = getAcceptedEventTypes();
+	} catch (SiteWhereException e) {
+	    stop("Invalid event type filter for SiteWhere Kafka receiver.", e);
+	    return;
+	}
+	KafkaConsumer<String, byte[]> current = new KafkaConsumer<String, byte[]>(buildConsumerProperties());
+	this.consumer = current;
+	try {
+	    current.subscribe(Collections.singletonList(getTopicName()));
+	    LOGGER.info("Receiving SiteWhere events from Kafka topic: " + getTopicName());
+	    while (!isStopped()) {
+		ConsumerRecords<String, byte[]> records = current.poll(getPollTimeoutMs());
+		if (records.isEmpty()) {
+		    continue;
+		}
+		List<IDeviceEvent> block = decode(records, accepted);
+		if (!block.isEmpty()) {
+		    // Blocks until block has been stored (and replicated) by Spark.
+		    store(block.iterator());
+		}
+		current.commitSync();
+		LOGGER.debug("Stored " + block.size() + " of " + records.count() + " events and committed offsets.");
+	    }
+	} catch (WakeupException e) {
+	    if (!isStopped()) {
+		restart("SiteWhere Kafka receiver woken up unexpectedly.", e);
+	    }
+	} catch (Throwable t) {
+	    restart("Error receiving SiteWhere events from Kafka.", t);
+	} finally {
+	    this.consumer = null;
+	    current.close();
+	}
+    }
+
+    /**
+     * Decode a batch of records, keeping only events of accepted types. Event
+     * type is checked on the protobuf message so that filtered events are never
+     * converted to the API model.
+     *
+     * @param records
+     * @param accepted
+     * @return
+     */
+    protected List<IDeviceEvent> decode(ConsumerRecords<String, byte[]> records, Set<GDeviceEventType> accepted) {
+	List<IDeviceEvent> events = new ArrayList<IDeviceEvent>(records.count());
+	for (ConsumerRecord<String, byte[]> record : records) {
+	    try {
+		GEnrichedEventPayload payload = KafkaModelMarshaler.parseEnrichedEventPayloadMessage(record.value());
+		if (!accepted.isEmpty()) {
+		    GDeviceEventType type = EventModelConverter.getGrpcDeviceEventCommon(payload.getEvent())
+			    .getEventType();
+		    if (!accepted.contains(type)) {
+			continue;
+		    }
+		}
+		events.add(EventModelConverter.asApiGenericDeviceEvent(payload.getEvent()));
+	    } catch (SiteWhereException e) {
+		LOGGER.warn("Skipping enriched event payload that could not be decoded.", e);
+	    }
+	}
+	return events;
+    }
+
+    /**
+     * Convert event type filter into protobuf event types.
+     *
+     * @return
+     * @throws SiteWhereException
+     */
+    protected Set<GDeviceEventType> getAcceptedEventTypes() throws SiteWhereException {
+	Set<GDeviceEventType> accepted = EnumSet.noneOf(GDeviceEventType.class);
+	for (DeviceEventType type : getEventTypes()) {
+	    accepted.add(EventModelConverter.asGrpcDeviceEventType(type));
+	}
+	return accepted;
+    }
+
+    /**
+     * Build Kafka consumer configuration. Automatic commits are disabled so that
+     * offsets only advance after Spark stores each block.
+     *
+     * @return
+     */
+    protected Properties buildConsumerProperties() {
+	Properties props = new Properties();
+	props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, getBootstrapServers());
+	props.put(ConsumerConfig.GROUP_ID_CONFIG, getGroupId());
+	props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+	props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, getAutoOffsetReset());
+	props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(getMaxPollRecords()));
+	props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+	props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+	return props;
+    }
+
+    /**
+     * Get name of tenant enriched events topic. The name is resolved through
+     * {@link IKafkaTopicNaming} when the receiver is created on the driver, since
+     * the naming implementation is not shipped to workers.
+     *
+     * @return
+     */
+    public String getTopicName() {
+	return topicName;
+    }
+
+    public String getBootstrapServers() {
+	return bootstrapServers;
+    }
+
+    public void setBootstrapServers(String bootstrapServers) {
+	this.bootstrapServers = bootstrapServers;
+    }
+
+    public IKafkaTopicNaming getKafkaTopicNaming() {
+	return kafkaTopicNaming;
+    }
+
+    public String getTenantId() {
+	return tenantId;
+    }
+
+    public void setTenantId(String tenantId) {
+	this.tenantId = tenantId;
+    }
+
+    public String getGroupId() {
+	return groupId;
+    }
+
+    public void setGroupId(String groupId) {
+	this.groupId = groupId;
+    }
+
+    public Set<DeviceEventType> getEventTypes() {
+	return eventTypes;
+    }
+
+    public void setEventTypes(Set<DeviceEventType> eventTypes) {
+	this.eventTypes = new HashSet<DeviceEventType>(eventTypes);
+    }
+
+    public long getPollTimeoutMs() {
+	return pollTimeoutMs;
+    }
+
+    public void setPollTimeoutMs(long pollTimeoutMs) {
+	this.pollTimeoutMs = pollTimeoutMs;
+    }
+
+    public int getMaxPollRecords() {
+	return maxPollRecords;
+    }
+
+    public void setMaxPollRecords(int maxPollRecords) {
+	this.maxPollRecords = maxPollRecords;
+    }
+
+    public String getAutoOffsetReset() {
+	return autoOffsetReset;
+    }
+
+    public void setAutoOffsetReset(String autoOffsetReset) {
+	this.autoOffsetReset = autoOffsetReset;
+    }
+}
@@ -27,6 +27,8 @@ import com.sitewhere.spi.server.hazelcast.ISiteWhereHazelcast;
 /**
  * Implements a {@link Receiver} that listens for events on the default
  * Hazelcast topics published by SiteWhere and makes them available to Spark.
+ * Events published while the receiver is down are lost. See
+ * {@link SiteWhereKafkaReceiver} for a reliable, tenant-scoped alternative.
  * 
  * @author Derek
  */
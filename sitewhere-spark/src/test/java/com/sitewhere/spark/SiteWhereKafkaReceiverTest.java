@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) SiteWhere, LLC. All rights reserved. http://www.sitewhere.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+package com.sitewhere.spark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+
+import com.sitewhere.grpc.kafka.model.KafkaModel.GEnrichedEventPayload;
+import com.sitewhere.grpc.model.DeviceEventModel.GDeviceEventType;
+import com.sitewhere.grpc.model.converter.EventModelConverter;
+import com.sitewhere.grpc.model.marshaling.KafkaModelMarshaler;
+import com.sitewhere.rest.model.device.event.DeviceEvent;
+import com.sitewhere.rest.model.device.event.DeviceLocation;
+import com.sitewhere.rest.model.device.event.DeviceMeasurements;
+import com.sitewhere.rest.model.tenant.Tenant;
+import com.sitewhere.spi.device.DeviceAssignmentType;
+import com.sitewhere.spi.device.event.DeviceEventType;
+import com.sitewhere.spi.device.event.IDeviceEvent;
+import com.sitewhere.spi.microservice.kafka.IKafkaTopicNaming;
+
+public class SiteWhereKafkaReceiverTest {
+
+    /** Topic returned by the test topic naming */
+    private static final String TOPIC = "sitewhere.tenant1.inbound-enriched-events";
+
+    @Test
+    public void testTopicResolvedOnDriver() throws Exception {
+	SiteWhereKafkaReceiver receiver = createReceiver(Collections.<DeviceEventType> emptySet());
+	assertEquals(TOPIC, receiver.getTopicName());
+	assertEquals("tenant1", receiver.getTenantId());
+
+	// Topic naming stays on the driver, the resolved topic goes to workers.
+	SiteWhereKafkaReceiver copy = serialize(receiver);
+	assertNull(copy.getKafkaTopicNaming());
+	assertEquals(TOPIC, copy.getTopicName());
+	assertEquals(receiver.getEventTypes(), copy.getEventTypes());
+    }
+
+    @Test
+    public void testConsumerProperties() throws Exception {
+	SiteWhereKafkaReceiver receiver = createReceiver(Collections.<DeviceEventType> emptySet());
+	receiver.setMaxPollRecords(250);
+	Properties props = receiver.buildConsumerProperties();
+	assertEquals("kafka:9092", props.get(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG));
+	assertEquals("spark", props.get(ConsumerConfig.GROUP_ID_CONFIG));
+	assertEquals("false", props.get(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG));
+	assertEquals("earliest", props.get(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG));
+	assertEquals("250", props.get(ConsumerConfig.MAX_POLL_RECORDS_CONFIG));
+    }
+
+    @Test
+    public void testAcceptedEventTypes() throws Exception {
+	SiteWhereKafkaReceiver receiver = createReceiver(EnumSet.of(DeviceEventType.Location, DeviceEventType.Alert));
+	assertEquals(EnumSet.of(GDeviceEventType.EVENT_TYPE_LOCATION, GDeviceEventType.EVENT_TYPE_ALERT),
+		receiver.getAcceptedEventTypes());
+	assertTrue(createReceiver(Collections.<DeviceEventType> emptySet()).getAcceptedEventTypes().isEmpty());
+    }
+
+    @Test
+    public void testDecodeAllEvents() throws Exception {
+	SiteWhereKafkaReceiver receiver = createReceiver(Collections.<DeviceEventType> emptySet());
+	List<IDeviceEvent> events = receiver.decode(createRecords(), receiver.getAcceptedEventTypes());
+	assertEquals(3, events.size());
+	assertEquals("m1", events.get(0).getId());
+	assertEquals(DeviceEventType.Measurements, events.get(0).getEventType());
+	assertEquals(Double.valueOf(21.5), ((DeviceMeasurements) events.get(0)).getMeasurements().get("temp"));
+	assertEquals("l1", events.get(1).getId());
+	assertEquals(Double.valueOf(33.75), ((DeviceLocation) events.get(1)).getLatitude());
+	assertEquals("m2", events.get(2).getId());
+    }
+
+    @Test
+    public void testDecodeFilteredEvents() throws Exception {
+	SiteWhereKafkaReceiver receiver = createReceiver(EnumSet.of(DeviceEventType.Location));
+	List<IDeviceEvent> events = receiver.decode(createRecords(), receiver.getAcceptedEventTypes());
+	assertEquals(1, events.size());
+	assertEquals("l1", events.get(0).getId());
+	assertEquals(DeviceEventType.Location, events.get(0).getEventType());
+    }
+
+    /**
+     * Create records for two measurements and a location with a record that
+     * can not be decoded between them.
+     *
+     * @return
+     * @throws Exception
+     */
+    protected ConsumerRecords<String, byte[]> createRecords() throws Exception {
+	DeviceMeasurements first = new DeviceMeasurements();
+	first.addOrReplaceMeasurement("temp", 21.5);
+	DeviceLocation location = new DeviceLocation();
+	location.setLatitude(33.75);
+	location.setLongitude(-84.39);
+	DeviceMeasurements second = new DeviceMeasurements();
+	second.addOrReplaceMeasurement("temp", 22.0);
+
+	List<ConsumerRecord<String, byte[]>> records = new ArrayList<ConsumerRecord<String, byte[]>>();
+	records.add(record(0, encode("m1", first)));
+	records.add(record(1, encode("l1", location)));
+	records.add(record(2, new byte[] { 1, 2, 3 }));
+	records.add(record(3, encode("m2", second)));
+	return new ConsumerRecords<String, byte[]>(Collections.singletonMap(new TopicPartition(TOPIC, 0), records));
+    }
+
+    /**
+     * Create a record on the test topic.
+     *
+     * @param offset
+     * @param value
+     * @return
+     */
+    protected ConsumerRecord<String, byte[]> record(long offset, byte[] value) {
+	return new ConsumerRecord<String, byte[]>(TOPIC, 0, offset, "hw-1", value);
+    }
+
+    /**
+     * Encode an event as an enriched event payload.
+     *
+     * @param id
+     * @param event
+     * @return
+     * @throws Exception
+     */
+    protected byte[] encode(String id, DeviceEvent event) throws Exception {
+	event.setId(id);
+	event.setSiteId(UUID.randomUUID());
+	event.setDeviceAssignmentId(UUID.randomUUID());
+	event.setAssignmentType(DeviceAssignmentType.Unassociated);
+	GEnrichedEventPayload payload = GEnrichedEventPayload.newBuilder()
+		.setEvent(EventModelConverter.asGrpcGenericDeviceEvent(event)).build();
+	return KafkaModelMarshaler.buildEnrichedEventPayloadMessage(payload);
+    }
+
+    /**
+     * Create a receiver for the test tenant.
+     *
+     * @param eventTypes
+     * @return
+     */
+    protected SiteWhereKafkaReceiver createReceiver(Set<DeviceEventType> eventTypes) {
+	Tenant tenant = new Tenant();
+	tenant.setId("tenant1");
+	IKafkaTopicNaming naming = (IKafkaTopicNaming) Proxy.newProxyInstance(getClass().getClassLoader(),
+		new Class<?>[] { IKafkaTopicNaming.class }, new InvocationHandler() {
+
+		    @Override
+		    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if ("getInboundEnrichedEventsTopic".equals(method.getName())) {
+			    return TOPIC;
+			}
+			throw new UnsupportedOperationException(method.getName());
+		    }
+		});
+	return new SiteWhereKafkaReceiver("kafka:9092", naming, tenant, "spark", eventTypes);
+    }
+
+    /**
+     * Round trip a receiver through Java serialization as Spark does when
+     * shipping it to a worker.
+     *
+     * @param receiver
+     * @return
+     * @throws Exception
+     */
+    protected static SiteWhereKafkaReceiver serialize(SiteWhereKafkaReceiver receiver) throws Exception {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+	    output.writeObject(receiver);
+	}
+	try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+	    return (SiteWhereKafkaReceiver) input.readObject();
+	}
+    }
+}